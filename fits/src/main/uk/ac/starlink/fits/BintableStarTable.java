@@ -1,6 +1,8 @@
 package uk.ac.starlink.fits;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -9,9 +11,11 @@ import java.util.List;
 import nom.tam.fits.FitsException;
 import nom.tam.fits.Header;
 import uk.ac.starlink.table.AbstractStarTable;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.DescribedValue;
+import uk.ac.starlink.table.RowAccess;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.TableSink;
 import uk.ac.starlink.table.Tables;
@@ -363,6 +367,21 @@ public abstract class BintableStarTable extends AbstractStarTable
         return colReaders_[ icol ].readValue( stream );
     }
 
+    /**
+     * Reads a cell from a given column from the current position in
+     * a stream, returning its value as a double.
+     * For numeric scalar columns this avoids creating an object.
+     *
+     * @param  icol  the column index corresponding to the cell to be read
+     * @param  stream  a stream containing the byte data, positioned to
+     *                 the right place
+     * @return  numeric value, or NaN for null or non-numeric values
+     */
+    protected double readDoubleCell( BasicInput stream, int icol )
+            throws IOException {
+        return colReaders_[ icol ].readDouble( stream );
+    }
+
     /**
      * Reads a whole row of the table from the current position in a stream,
      * returning a new Object[] array.
@@ -402,6 +421,11 @@ public abstract class BintableStarTable extends AbstractStarTable
     /**
      * Returns an instance of this class given a data access instance.
      *
+     * <p>If the header indicates a table written using the FITS tiled
+     * table compression convention (<code>ZTABLE=T</code>),
+     * the returned table presents the uncompressed data,
+     * and is always random-access.
+     *
      * @param  hdr  FITS header cards
      * @param  inputFact  factory for access to the data part of the
      *                    HDU representing a FITS BINTABLE extension
@@ -411,6 +435,12 @@ public abstract class BintableStarTable extends AbstractStarTable
     public static BintableStarTable createTable( Header hdr,
                                                  InputFactory inputFact )
             throws IOException, FitsException {
+        if ( CompressedTableInputFactory.isCompressedTable( hdr ) ) {
+            CompressedTableInputFactory zfact =
+                new CompressedTableInputFactory( hdr, inputFact );
+            return new RandomBintableStarTable( zfact.getUncompressedHeader(),
+                                                zfact );
+        }
         return inputFact.isRandom()
              ? new RandomBintableStarTable( hdr, inputFact )
              : new SequentialBintableStarTable( hdr, inputFact );
@@ -428,6 +458,43 @@ public abstract class BintableStarTable extends AbstractStarTable
     public static void streamStarTable( Header hdr, BasicInput input,
                                         TableSink sink )
             throws FitsException, IOException {
+
+        /* Tile-compressed tables are read into memory and decompressed
+         * from there, since the tiles are not laid out in row order. */
+        if ( CompressedTableInputFactory.isCompressedTable( hdr ) ) {
+            long datasize = hdr.getLongValue( "NAXIS1" )
+                          * hdr.getLongValue( "NAXIS2" )
+                          + hdr.getLongValue( "PCOUNT", 0 );
+            if ( datasize > Integer.MAX_VALUE ) {
+                throw new IOException( "Compressed table too large "
+                                     + "to stream" );
+            }
+            final byte[] buf = new byte[ (int) datasize ];
+            for ( int i = 0; i < buf.length; i++ ) {
+                buf[ i ] = input.readByte();
+            }
+            input.skip( FitsConstants.getDataSize( hdr ) - datasize );
+            InputFactory bufFact = new InputFactory() {
+                public boolean isRandom() {
+                    return false;
+                }
+                public BasicInput createInput( boolean isSeq ) {
+                    return InputFactory.createSequentialInput(
+                               new DataInputStream(
+                                   new ByteArrayInputStream( buf ) ) );
+                }
+                public void close() {
+                }
+            };
+            BintableStarTable table = createTable( hdr, bufFact );
+            try {
+                Tables.streamStarTable( table, sink );
+            }
+            finally {
+                table.close();
+            }
+            return;
+        }
         InputFactory dummyFact = new InputFactory() {
             public boolean isRandom() {
                 return false;
@@ -589,18 +656,55 @@ public abstract class BintableStarTable extends AbstractStarTable
             }
         }
 
+        /**
+         * Returns a sequence which can also read column values in blocks,
+         * decoding numeric cells directly to primitives.
+         */
         public RowSequence getRowSequence() throws IOException {
             final BasicInput input = inputFact_.createInput( true );
             assert input.isRandom();
             final long endPos = getRowCount() * rowLength_;
-            return new RowSequence() {
+            return new BlockRowSequence() {
                 long pos = -rowLength_;
+                long blockPos = -1;
+                int nblock;
                 public boolean next() {
                     pos += rowLength_;
+                    blockPos = -1;
                     return pos < endPos;
                 }
+                public int nextBlock( int maxRows ) {
+                    pos += rowLength_;
+                    long nleft = rowLength_ > 0 && pos < endPos
+                               ? ( endPos - pos ) / rowLength_
+                               : 0;
+                    nblock = (int) Math.min( maxRows, nleft );
+                    blockPos = pos;
+                    pos += ( nblock - 1 ) * (long) rowLength_;
+                    return nblock;
+                }
+                public void getDoubleBlock( int icol, double[] buf, int off )
+                        throws IOException {
+                    checkBlock();
+                    long cpos = blockPos + colOffsets_[ icol ];
+                    for ( int i = 0; i < nblock; i++ ) {
+                        input.seek( cpos );
+                        buf[ off + i ] = readDoubleCell( input, icol );
+                        cpos += rowLength_;
+                    }
+                }
+                public void getObjectBlock( int icol, Object[] buf, int off )
+                        throws IOException {
+                    checkBlock();
+                    long cpos = blockPos + colOffsets_[ icol ];
+                    for ( int i = 0; i < nblock; i++ ) {
+                        input.seek( cpos );
+                        buf[ off + i ] = readCell( input, icol );
+                        cpos += rowLength_;
+                    }
+                }
                 public Object getCell( int icol ) throws IOException {
-                    if ( pos >= 0 && pos < endPos ) {
+                    if ( blockPos < 0 && pos >= 0 && pos < endPos ) {
                         input.seek( pos + colOffsets_[ icol ] );
                         return readCell( input, icol );
                     }
@@ -609,7 +713,7 @@ public abstract class BintableStarTable extends AbstractStarTable
                     }
                 }
                 public Object[] getRow() throws IOException {
-                    if ( pos >= 0 && pos < endPos ) {
+                    if ( blockPos < 0 && pos >= 0 && pos < endPos ) {
                         input.seek( pos );
                         return readRow( input );
                     }
@@ -620,6 +724,44 @@ public abstract class BintableStarTable extends AbstractStarTable
                 public void close() throws IOException {
                     input.close();
                 }
+                private void checkBlock() {
+                    if ( blockPos < 0 ) {
+                        throw new IllegalStateException( "No current block" );
+                    }
+                }
+            };
+        }
+
+        /**
+         * Returns a row access which reads through its own input,
+         * so that it does not contend for the table's shared
+         * random-access input.
+         */
+        public RowAccess getRowAccess() throws IOException {
+            final BasicInput input = inputFact_.createInput( false );
+            return new RowAccess() {
+                private long irow_ = -1;
+                public void setRowIndex( long irow ) {
+                    irow_ = irow;
+                }
+                public Object getCell( int icol ) throws IOException {
+                    checkRow();
+                    input.seek( irow_ * rowLength_ + colOffsets_[ icol ] );
+                    return readCell( input, icol );
+                }
+                public Object[] getRow() throws IOException {
+                    checkRow();
+                    input.seek( irow_ * rowLength_ );
+                    return readRow( input );
+                }
+                public void close() throws IOException {
+                    input.close();
+                }
+                private void checkRow() {
+                    if ( irow_ < 0 ) {
+                        throw new IllegalStateException( "No current row" );
+                    }
+                }
             };
         }
 
@@ -627,5 +769,6 @@ public abstract class BintableStarTable extends AbstractStarTable
             randomInput_.close();
             inputFact_.close();
         }
+
     }
 }
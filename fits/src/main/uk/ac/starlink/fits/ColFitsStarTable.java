@@ -9,7 +9,9 @@ import java.util.Arrays;
 import java.util.logging.Logger;
 import nom.tam.fits.Header;
 import uk.ac.starlink.table.AbstractStarTable;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowAccess;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.TableFormatException;
 import uk.ac.starlink.table.Tables;
@@ -326,6 +328,15 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
         return new ColFitsRowSequence();
     }
 
+    public RowAccess getRowAccess() throws IOException {
+        if ( randomColReaders_ != null ) {
+            return new ColFitsRowAccess();
+        }
+        else {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     public void close() throws IOException {
         closer_.close();
     }
@@ -461,6 +472,11 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                              ? null
                              : new Short( (short) ( val & 0xff ) );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        byte val = in.readByte();
+                        return ( hasBad && val == badval ) ? Double.NaN
+                                                           : ( val & 0xff );
+                    }
                 };
             }
 
@@ -476,6 +492,10 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                              ? null
                              : new Short( (short) val );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        byte val = in.readByte();
+                        return ( hasBad && val == badval ) ? Double.NaN : val;
+                    }
                 };
             }
 
@@ -491,6 +511,10 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                              ? null
                              : new Short( val );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        short val = in.readShort();
+                        return ( hasBad && val == badval ) ? Double.NaN : val;
+                    }
                 };
             }
 
@@ -506,6 +530,10 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                              ? null
                              : new Integer( val );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        int val = in.readInt();
+                        return ( hasBad && val == badval ) ? Double.NaN : val;
+                    }
                 };
             }
 
@@ -521,6 +549,11 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                              ? null
                              : new Long( val );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        long val = in.readLong();
+                        return ( hasBad && val == badval ) ? Double.NaN
+                                                           : (double) val;
+                    }
                 };
             }
 
@@ -530,6 +563,9 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                     Object readValue( BasicInput in ) throws IOException {
                         return new Float( in.readFloat() );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        return in.readFloat();
+                    }
                 };
             }
 
@@ -539,6 +575,9 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                     Object readValue( BasicInput in ) throws IOException {
                         return new Double( in.readDouble() );
                     }
+                    double readDouble( BasicInput in ) throws IOException {
+                        return in.readDouble();
+                    }
                 };
             }
         }
@@ -654,13 +693,13 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
 
             else if ( formatChar == 'A' ) {
                 final int sleng = itemShape[ 0 ];
-                final char[] charBuf = new char[ sleng ];
                 info.setElementSize( sleng );
                 info.setNullable( true );
                 if ( itemShape.length == 1 ) {
                     info.setContentClass( String.class );
                     return new ValueReader( info, sleng, SCALAR ) {
                         Object readValue( BasicInput in ) throws IOException {
+                            char[] charBuf = new char[ sleng ];
                             int iend = 0;
                             boolean end = false;
                             for ( int i = 0; i < sleng; i++ ) {
@@ -689,6 +728,7 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
                     assert nstring * sleng == itemSize;
                     return new ValueReader( info, sleng, sshape ) {
                         Object readValue( BasicInput in ) throws IOException {
+                            char[] charBuf = new char[ sleng ];
                             String[] val = new String[ nstring ];
                             for ( int is = 0; is < nstring; is++ ) {
                                 int iend = 0;
@@ -722,12 +762,16 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
 
     /**
      * RowSequence implementation for this table.
+     * Since the data for each column is contiguous, blocks of column
+     * values can be read efficiently.
      */
-    private class ColFitsRowSequence implements RowSequence {
+    private class ColFitsRowSequence implements BlockRowSequence {
         private final ColumnReader[] seqColReaders_;
         private final long[] cursors_;
         private final Object[] lastValues_;
         private long irow_;
+        private long blockStart_;
+        private int nblock_;
 
         /**
          * Constructor.
@@ -743,13 +787,77 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
             }
             lastValues_ = new Object[ ncol_ ];
             irow_ = -1;
+            blockStart_ = -1;
         }
 
         public boolean next() {
+            blockStart_ = -1;
             return ++irow_ < nrow_;
         }
 
+        public int nextBlock( int maxRows ) {
+            blockStart_ = irow_ + 1;
+            nblock_ = (int) Math.max( 0, Math.min( maxRows,
+                                                   nrow_ - blockStart_ ) );
+            irow_ += nblock_;
+            return nblock_;
+        }
+
+        public void getDoubleBlock( int icol, double[] buf, int off )
+                throws IOException {
+            ColumnReader colReader = startBlockColumn( icol );
+            for ( int i = 0; i < nblock_; i++ ) {
+                buf[ off + i ] = colReader.readDoubleCell();
+            }
+            endBlockColumn( icol );
+        }
+
+        public void getObjectBlock( int icol, Object[] buf, int off )
+                throws IOException {
+            ColumnReader colReader = startBlockColumn( icol );
+            for ( int i = 0; i < nblock_; i++ ) {
+                buf[ off + i ] = colReader.readCell();
+            }
+            endBlockColumn( icol );
+        }
+
+        /**
+         * Prepares to read the values of a column for the current block.
+         *
+         * @param  icol  column index
+         * @return  column reader positioned at the start of the block
+         */
+        private ColumnReader startBlockColumn( int icol ) throws IOException {
+            if ( blockStart_ < 0 ) {
+                throw new IllegalStateException( "No current block" );
+            }
+            ColumnReader colReader = seqColReaders_[ icol ];
+            long nskip = blockStart_ - cursors_[ icol ] - 1;
+            if ( nskip < 0 ) {
+                throw new IllegalStateException( "Column " + icol
+                                               + " already read" );
+            }
+            if ( nskip > 0 ) {
+                colReader.skipCells( nskip );
+            }
+            return colReader;
+        }
+
+        /**
+         * Records that the values of a column have been read for the
+         * current block.
+         *
+         * @param  icol  column index
+         */
+        private void endBlockColumn( int icol ) {
+            cursors_[ icol ] = blockStart_ + nblock_ - 1;
+            lastValues_[ icol ] = null;
+        }
+
         public Object getCell( int icol ) throws IOException {
+            if ( blockStart_ >= 0 ) {
+                throw new IllegalStateException( "No current row" );
+            }
             ColumnReader colReader = seqColReaders_[ icol ];
             long nskip = irow_ - cursors_[ icol ];
             if ( nskip > 0 ) {
@@ -780,6 +888,73 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
         }
     }
 
+    /**
+     * RowAccess implementation for this table.
+     * Each instance opens its own column readers when first required,
+     * so that instances do not contend for the table's shared
+     * random-access readers.  Consecutive rows are read without seeking.
+     */
+    private class ColFitsRowAccess implements RowAccess {
+        private final ColumnReader[] colReaders_;
+        private final long[] cursors_;
+        private final Object[] lastValues_;
+        private long irow_;
+
+        /**
+         * Constructor.
+         */
+        ColFitsRowAccess() {
+            colReaders_ = new ColumnReader[ ncol_ ];
+            cursors_ = new long[ ncol_ ];
+            Arrays.fill( cursors_, -1 );
+            lastValues_ = new Object[ ncol_ ];
+            irow_ = -1;
+        }
+
+        public void setRowIndex( long irow ) {
+            irow_ = irow;
+        }
+
+        public Object getCell( int icol ) throws IOException {
+            if ( irow_ < 0 ) {
+                throw new IllegalStateException( "No current row" );
+            }
+            ColumnReader colReader = colReaders_[ icol ];
+            if ( colReader == null ) {
+                colReader =
+                    new ColumnReader( valReaders_[ icol ],
+                                      inputFacts_[ icol ].createInput( false ) );
+                colReaders_[ icol ] = colReader;
+            }
+            long cursor = cursors_[ icol ];
+            if ( cursor != irow_ ) {
+                if ( cursor != irow_ - 1 ) {
+                    colReader.seekRow( irow_ );
+                }
+                lastValues_[ icol ] = colReader.readCell();
+                cursors_[ icol ] = irow_;
+            }
+            return lastValues_[ icol ];
+        }
+
+        public Object[] getRow() throws IOException {
+            Object[] row = new Object[ ncol_ ];
+            for ( int icol = 0; icol < ncol_; icol++ ) {
+                row[ icol ] = getCell( icol );
+            }
+            return row;
+        }
+
+        public void close() throws IOException {
+            for ( int icol = 0; icol < ncol_; icol++ ) {
+                if ( colReaders_[ icol ] != null ) {
+                    colReaders_[ icol ].close();
+                    colReaders_[ icol ] = null;
+                }
+            }
+        }
+    }
+
     /**
      * Knows how to read data items of a particular type from a byte store.
      */
@@ -813,6 +988,22 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
          */
         abstract Object readValue( BasicInput in ) throws IOException;
 
+        /**
+         * Reads a numeric value from a byte buffer as a double.
+         * The default implementation calls {@link #readValue},
+         * but readers of numeric scalars override it to avoid
+         * creating an object.
+         *
+         * @param    in   input stream, positioned at read point
+         * @return   numeric value, or NaN for null or non-numeric values
+         * @throws   IOException  in case of a read error
+         */
+        double readDouble( BasicInput in ) throws IOException {
+            Object value = readValue( in );
+            return value instanceof Number ? ((Number) value).doubleValue()
+                                           : Double.NaN;
+        }
+
         /**
          * Returns the number of bytes for a single cell of this type.
          *
@@ -871,6 +1062,15 @@ public class ColFitsStarTable extends AbstractStarTable implements Closeable {
             return valReader_.readValue( input_ );
         }
 
+        /**
+         * Reads the next cell value as a double.
+         *
+         * @return   numeric cell value, or NaN
+         */
+        double readDoubleCell() throws IOException {
+            return valReader_.readDouble( input_ );
+        }
+
         void skipCells( long nrow ) throws IOException {
             input_.skip( itemBytes_ * nrow );
         }
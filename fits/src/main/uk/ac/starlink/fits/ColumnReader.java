@@ -67,6 +67,21 @@ abstract class ColumnReader {
      */
     abstract Object readValue( BasicInput stream ) throws IOException;
 
+    /**
+     * Reads bytes from a stream to return a numeric value as a double.
+     * This has the same effect on the stream as <tt>readValue</tt>.
+     * The default implementation calls <tt>readValue</tt>, but readers
+     * of numeric scalars override it to avoid creating an object.
+     *
+     * @param  stream containing bytes to turn into a value
+     * @return  numeric value, or NaN for null or non-numeric values
+     */
+    double readDouble( BasicInput stream ) throws IOException {
+        Object value = readValue( stream );
+        return value instanceof Number ? ((Number) value).doubleValue()
+                                       : Double.NaN;
+    }
+
     /**
      * Returns the class which objects returned by <tt>readValue</tt>
      * will belong to.
@@ -401,6 +416,13 @@ abstract class ColumnReader {
                                         : new Byte( (byte)
                                                     ( val ^ (byte) 0x80 ) );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            byte val = stream.readByte();
+                            return ( hasBlank && val == (byte) blank )
+                                        ? Double.NaN
+                                        : (byte) ( val ^ (byte) 0x80 );
+                        }
                     };
                 }
                 else if ( shortable ) {
@@ -415,6 +437,13 @@ abstract class ColumnReader {
                                                      ( ( val & mask ) +
                                                          sZero ) );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            byte val = stream.readByte();
+                            return ( hasBlank && val == (byte) blank )
+                                        ? Double.NaN
+                                        : (short) ( ( val & mask ) + sZero );
+                        }
                     };
                 }
                 else if ( isScaled ) {
@@ -427,6 +456,14 @@ abstract class ColumnReader {
                                         : new Float( ( val & mask )
                                                      * scale + dZero );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            byte val = stream.readByte();
+                            return ( hasBlank && val == (byte) blank )
+                                        ? Double.NaN
+                                        : (float) ( ( val & mask )
+                                                    * scale + dZero );
+                        }
                     };
                 }
                 else {
@@ -439,6 +476,13 @@ abstract class ColumnReader {
                                         : new Short( (short)
                                                      ( val & mask ) );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            byte val = stream.readByte();
+                            return ( hasBlank && val == (byte) blank )
+                                        ? Double.NaN
+                                        : ( val & mask );
+                        }
                     };
                 }
                 return reader;
@@ -458,6 +502,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Integer( (int) ( val + iZero ) );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            short val = stream.readShort();
+                            return ( hasBlank && val == (short) blank )
+                                        ? Double.NaN
+                                        : (int) ( val + iZero );
+                        }
                     };
                 }
                 else if ( isScaled ) {
@@ -470,6 +521,13 @@ abstract class ColumnReader {
                                         : new Float( (float)
                                                    ( val * scale + dZero ) );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            short val = stream.readShort();
+                            return ( hasBlank && val == (short) blank )
+                                        ? Double.NaN
+                                        : (float) ( val * scale + dZero );
+                        }
                     };
                 }
                 else {
@@ -481,6 +539,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Short( val );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            short val = stream.readShort();
+                            return ( hasBlank && val == (short) blank )
+                                        ? Double.NaN
+                                        : val;
+                        }
                     };
                 }
                 return reader;
@@ -499,6 +564,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Long( (long) ( val + lZero ) );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            long val = stream.readInt();
+                            return ( hasBlank && val == (int) blank )
+                                        ? Double.NaN
+                                        : (double) ( val + lZero );
+                        }
                     };
                 }
                 else if ( isScaled ) {
@@ -510,6 +582,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Double( val * scale + dZero );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            int val = stream.readInt();
+                            return ( hasBlank && val == (int) blank )
+                                        ? Double.NaN
+                                        : val * scale + dZero;
+                        }
                     };
                 }
                 else {
@@ -521,6 +600,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Integer( val );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            int val = stream.readInt();
+                            return ( hasBlank && val == (int) blank )
+                                        ? Double.NaN
+                                        : val;
+                        }
                     };
                 }
                 return reader;
@@ -579,6 +665,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Double( val * scale + dZero );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            long val = stream.readLong();
+                            return ( hasBlank && val == (long) blank )
+                                        ? Double.NaN
+                                        : val * scale + dZero;
+                        }
                     };
                 }
                 else {
@@ -590,6 +683,13 @@ abstract class ColumnReader {
                                         ? null
                                         : new Long( val );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            long val = stream.readLong();
+                            return ( hasBlank && val == (long) blank )
+                                        ? Double.NaN
+                                        : (double) val;
+                        }
                     };
                 }
                 return reader;
@@ -614,6 +714,11 @@ abstract class ColumnReader {
                             float val = stream.readFloat();
                             return new Float( val * scale + dZero );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            float val = stream.readFloat();
+                            return (float) ( val * scale + dZero );
+                        }
                     };
                 }
                 else {
@@ -623,6 +728,10 @@ abstract class ColumnReader {
                             float val = stream.readFloat();
                             return new Float( val );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            return stream.readFloat();
+                        }
                     };
                 }
                 return reader;    
@@ -636,6 +745,10 @@ abstract class ColumnReader {
                             double val = stream.readDouble();
                             return new Double( val * scale + dZero );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            return stream.readDouble() * scale + dZero;
+                        }
                     };
                 }
                 else {
@@ -645,6 +758,10 @@ abstract class ColumnReader {
                             double val = stream.readDouble();
                             return new Double( val );
                         }
+                        double readDouble( BasicInput stream )
+                                throws IOException {
+                            return stream.readDouble();
+                        }
                     };
                 }
                 return reader;
@@ -0,0 +1,910 @@
+package uk.ac.starlink.fits;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.Header;
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.RandomAccess;
+import uk.ac.starlink.array.AccessImpl;
+import uk.ac.starlink.array.AccessMode;
+import uk.ac.starlink.array.ArrayImpl;
+import uk.ac.starlink.array.Order;
+import uk.ac.starlink.array.OrderedNDShape;
+import uk.ac.starlink.array.Type;
+
+/**
+ * ArrayImpl implementation for reading image data stored in a BINTABLE
+ * HDU using the FITS tiled image compression convention
+ * (<code>ZIMAGE=T</code>), as written for instance by fpack.
+ *
+ * <p>The image is divided into rectangular tiles, each of which is
+ * compressed separately and stored as one row of the table.
+ * Only the tiles covering the pixels actually requested are read and
+ * decompressed, and a few recently decompressed tiles are cached,
+ * so reading small regions of very large compressed images is
+ * reasonably cheap.  If the underlying stream is not random-access,
+ * the compressed data is read into memory.
+ *
+ * <p>The RICE_1, GZIP_1, GZIP_2 and NOCOMPRESS algorithms are supported,
+ * as are quantized floating point images (ZQUANTIZ = NO_DITHER,
+ * SUBTRACTIVE_DITHER_1 or SUBTRACTIVE_DITHER_2).
+ * HCOMPRESS_1 and PLIO_1 compressed images are not currently supported;
+ * the constructor fails with a FitsException whose message is given by
+ * {@link #getUnsupportedMessage}, rather than returning incorrect
+ * pixel values.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class CompressedFitsArrayImpl implements ArrayImpl {
+
+    private final ArrayDataInput stream_;
+    private final boolean isRandom_;
+    private final long strmBase_;
+    private final OrderedNDShape oshape_;
+    private final Type type_;
+    private final Number badValue_;
+    private final int ndim_;
+    private final long[] dims_;
+    private final int[] tileDims_;
+    private final long[] tileCounts_;
+    private final int rowLength_;
+    private final long heapStart_;
+    private final int zbitpix_;
+    private final TileCompression comp_;
+    private final RiceCodec rice_;
+    private final int quantMethod_;
+    private final int zdither0_;
+    private final double zscale_;
+    private final double zzero_;
+    private final Integer zblank_;
+    private final TableCol cdataCol_;
+    private final TableCol gdataCol_;
+    private final TableCol udataCol_;
+    private final TableCol scaleCol_;
+    private final TableCol zeroCol_;
+    private final TableCol blankCol_;
+    private final Map tileCache_;
+    private long cacheBytes_;
+    private byte[] data_;
+
+    /** Approximate maximum number of bytes of decoded tile data cached. */
+    private static final long CACHE_BYTES = 16 * 1024 * 1024;
+
+    /** Number of values in the dithering random number table. */
+    static final int N_RANDOM = 10000;
+
+    /** Integer value representing exact zero in SUBTRACTIVE_DITHER_2. */
+    private static final int ZERO_VALUE = -2147483646;
+
+    private static final int NO_QUANTIZE = 0;
+    private static final int NO_DITHER = 1;
+    private static final int SUBTRACTIVE_DITHER_1 = 2;
+    private static final int SUBTRACTIVE_DITHER_2 = 3;
+
+    private static final Pattern TFORM_REGEX =
+        Pattern.compile( "([0-9]*)([LXBIJKAEDCMPQ])([LXBIJKAEDCM]?)(.*)" );
+
+    private static float[] randomValues_;
+
+    /**
+     * Constructor.  The stream must be positioned at the start of the
+     * data part of the compressed HDU, that is just after the header.
+     *
+     * @param  hdr   header of the compressed image HDU
+     * @param  istream  stream supplying the data part
+     * @param  mode   access mode; only READ is supported
+     */
+    CompressedFitsArrayImpl( Header hdr, ArrayDataInput istream,
+                             AccessMode mode )
+            throws FitsException, IOException {
+        if ( ! isCompressedImage( hdr ) ) {
+            throw new IllegalArgumentException( "Not a compressed image" );
+        }
+        if ( mode != AccessMode.READ ) {
+            throw new IOException( "Access mode " + mode + " not supported "
+                                 + "for compressed images" );
+        }
+        stream_ = istream;
+        isRandom_ = istream instanceof RandomAccess;
+        strmBase_ = isRandom_ ? ((RandomAccess) istream).getFilePointer()
+                              : 0L;
+        HeaderCards cards = new HeaderCards( hdr );
+
+        /* Get the image shape and tiling. */
+        ndim_ = getRequiredInt( cards, "ZNAXIS" );
+        dims_ = new long[ ndim_ ];
+        tileDims_ = new int[ ndim_ ];
+        tileCounts_ = new long[ ndim_ ];
+        long ntile = 1;
+        for ( int i = 0; i < ndim_; i++ ) {
+            int jax = i + 1;
+            dims_[ i ] = getRequiredLong( cards, "ZNAXIS" + jax );
+            Integer ztile = cards.getIntValue( "ZTILE" + jax );
+            long tdim = ztile != null ? ztile.intValue()
+                                      : ( i == 0 ? dims_[ i ] : 1 );
+            if ( tdim <= 0 || tdim > Integer.MAX_VALUE ) {
+                throw new FitsException( "Bad tile dimension ZTILE" + jax
+                                       + " = " + tdim );
+            }
+            tileDims_[ i ] = (int) tdim;
+            tileCounts_[ i ] = ( dims_[ i ] + tdim - 1 ) / tdim;
+            ntile *= tileCounts_[ i ];
+        }
+        long tilePix = 1;
+        for ( int i = 0; i < ndim_; i++ ) {
+            tilePix *= tileDims_[ i ];
+        }
+        if ( tilePix > Integer.MAX_VALUE / 8 ) {
+            throw new FitsException( "Compressed image tiles too large" );
+        }
+        long[] origin = new long[ ndim_ ];
+        boolean hasOrigin = true;
+        for ( int i = 0; i < ndim_ && hasOrigin; i++ ) {
+            String cardName = FitsConstants.originCardName( i );
+            if ( hdr.containsKey( cardName ) ) {
+                origin[ i ] = hdr.getLongValue( cardName );
+            }
+            else {
+                hasOrigin = false;
+            }
+        }
+        oshape_ = hasOrigin
+                ? new OrderedNDShape( origin, dims_, Order.COLUMN_MAJOR )
+                : new OrderedNDShape( dims_, Order.COLUMN_MAJOR );
+
+        /* Get the table layout. */
+        rowLength_ = getRequiredInt( cards, "NAXIS1" );
+        long nrow = getRequiredLong( cards, "NAXIS2" );
+        if ( nrow != ntile ) {
+            throw new FitsException( "Tile count mismatch (NAXIS2=" + nrow
+                                   + ", expected " + ntile + ")" );
+        }
+        heapStart_ = cards.containsKey( "THEAP" )
+                   ? cards.getLongValue( "THEAP" ).longValue()
+                   : (long) rowLength_ * nrow;
+        int ncol = getRequiredInt( cards, "TFIELDS" );
+        Map colMap = new LinkedHashMap();
+        int coff = 0;
+        for ( int icol = 0; icol < ncol; icol++ ) {
+            int jcol = icol + 1;
+            String tform = cards.getStringValue( "TFORM" + jcol );
+            if ( tform == null ) {
+                throw new FitsException( "Missing TFORM" + jcol );
+            }
+            TableCol col = new TableCol( tform.trim(), coff );
+            String ttype = cards.getStringValue( "TTYPE" + jcol );
+            if ( ttype != null ) {
+                colMap.put( ttype.trim().toUpperCase(), col );
+            }
+            coff += col.leng_;
+        }
+        if ( coff != rowLength_ ) {
+            throw new FitsException( "Row length mismatch (NAXIS1="
+                                   + rowLength_ + ", columns total "
+                                   + coff + ")" );
+        }
+        cdataCol_ = getDescriptorColumn( colMap, "COMPRESSED_DATA" );
+        gdataCol_ = getDescriptorColumn( colMap, "GZIP_COMPRESSED_DATA" );
+        udataCol_ = getDescriptorColumn( colMap, "UNCOMPRESSED_DATA" );
+        scaleCol_ = (TableCol) colMap.get( "ZSCALE" );
+        zeroCol_ = (TableCol) colMap.get( "ZZERO" );
+        blankCol_ = (TableCol) colMap.get( "ZBLANK" );
+        if ( cdataCol_ == null ) {
+            throw new FitsException( "No COMPRESSED_DATA column" );
+        }
+
+        /* Get the compression algorithm and its parameters. */
+        String cmptype = cards.getStringValue( "ZCMPTYPE" );
+        if ( cmptype == null ) {
+            throw new FitsException( "Missing header ZCMPTYPE" );
+        }
+        comp_ = TileCompression.getCompression( cmptype );
+        if ( comp_ == null ) {
+            throw new FitsException( getUnsupportedMessage( cmptype ) );
+        }
+        int blocksize = RiceCodec.DEFAULT_BLOCKSIZE;
+        int bytepix = 4;
+        for ( int ip = 1; cards.containsKey( "ZNAME" + ip ); ip++ ) {
+            String pname = cards.getStringValue( "ZNAME" + ip ).trim();
+            Integer pval = cards.getIntValue( "ZVAL" + ip );
+            if ( pval != null ) {
+                if ( "BLOCKSIZE".equalsIgnoreCase( pname ) ) {
+                    blocksize = pval.intValue();
+                }
+                else if ( "BYTEPIX".equalsIgnoreCase( pname ) ) {
+                    bytepix = pval.intValue();
+                }
+            }
+        }
+        rice_ = comp_ == TileCompression.RICE_1
+              ? new RiceCodec( bytepix, blocksize )
+              : null;
+
+        /* Get the data type and quantization. */
+        zbitpix_ = getRequiredInt( cards, "ZBITPIX" );
+        Integer blank = cards.getIntValue( "BLANK" );
+        zblank_ = cards.getIntValue( "ZBLANK" );
+        if ( blank == null ) {
+            blank = zblank_;
+        }
+        boolean isFloat;
+        switch ( zbitpix_ ) {
+            case BasicHDU.BITPIX_BYTE:
+                type_ = Type.BYTE;
+                badValue_ = blank == null
+                          ? null : new Byte( (byte) blank.intValue() );
+                isFloat = false;
+                break;
+            case BasicHDU.BITPIX_SHORT:
+                type_ = Type.SHORT;
+                badValue_ = blank == null
+                          ? null : new Short( (short) blank.intValue() );
+                isFloat = false;
+                break;
+            case BasicHDU.BITPIX_INT:
+                type_ = Type.INT;
+                badValue_ = blank;
+                isFloat = false;
+                break;
+            case BasicHDU.BITPIX_FLOAT:
+                type_ = Type.FLOAT;
+                badValue_ = new Float( Float.NaN );
+                isFloat = true;
+                break;
+            case BasicHDU.BITPIX_DOUBLE:
+                type_ = Type.DOUBLE;
+                badValue_ = new Double( Double.NaN );
+                isFloat = true;
+                break;
+            default:
+                throw new FitsException( "Unsupported compressed image "
+                                       + "ZBITPIX " + zbitpix_ );
+        }
+        String zquant = cards.getStringValue( "ZQUANTIZ" );
+        zquant = zquant == null ? "NO_DITHER" : zquant.trim().toUpperCase();
+        boolean hasScale = scaleCol_ != null || cards.containsKey( "ZSCALE" );
+        if ( ! isFloat || ! hasScale || "NONE".equals( zquant ) ) {
+            quantMethod_ = NO_QUANTIZE;
+        }
+        else if ( "SUBTRACTIVE_DITHER_1".equals( zquant ) ) {
+            quantMethod_ = SUBTRACTIVE_DITHER_1;
+        }
+        else if ( "SUBTRACTIVE_DITHER_2".equals( zquant ) ) {
+            quantMethod_ = SUBTRACTIVE_DITHER_2;
+        }
+        else if ( "NO_DITHER".equals( zquant ) ) {
+            quantMethod_ = NO_DITHER;
+        }
+        else {
+            throw new FitsException( "Unknown quantization method "
+                                   + zquant );
+        }
+        Integer zdither0 = cards.getIntValue( "ZDITHER0" );
+        zdither0_ = zdither0 == null ? 1 : zdither0.intValue();
+        Double zscale = cards.getDoubleValue( "ZSCALE" );
+        zscale_ = zscale == null ? 1.0 : zscale.doubleValue();
+        Double zzero = cards.getDoubleValue( "ZZERO" );
+        zzero_ = zzero == null ? 0.0 : zzero.doubleValue();
+
+        /* If the input is not random access, read the data into memory. */
+        if ( ! isRandom_ ) {
+            Long pcount = cards.getLongValue( "PCOUNT" );
+            long dataLeng = (long) rowLength_ * nrow
+                          + ( pcount == null ? 0 : pcount.longValue() );
+            if ( dataLeng > Integer.MAX_VALUE ) {
+                throw new IOException( "Compressed image too large to read "
+                                     + "from non-random-access stream" );
+            }
+            data_ = new byte[ (int) dataLeng ];
+            stream_.readFully( data_ );
+        }
+        tileCache_ = new LinkedHashMap( 16, 0.75f, true );
+    }
+
+    public OrderedNDShape getShape() {
+        return oshape_;
+    }
+    public Type getType() {
+        return type_;
+    }
+    public Number getBadValue() {
+        return badValue_;
+    }
+    public boolean isReadable() {
+        return true;
+    }
+    public boolean isWritable() {
+        return false;
+    }
+    public boolean isRandom() {
+        return true;
+    }
+    public boolean canMap() {
+        return false;
+    }
+    public Object getMapped() {
+        throw new AssertionError();
+    }
+    public boolean multipleAccess() {
+        return true;
+    }
+
+    public void open() {
+    }
+
+    public AccessImpl getAccess() {
+        return new AccessImpl() {
+            private final long[] pos = new long[ ndim_ ];
+            private long offset;
+            private long lastTile = -1;
+            private Object lastData;
+
+            public void setOffset( long off ) {
+                offset = off;
+            }
+
+            public void read( Object buffer, int start, int size )
+                    throws IOException {
+                while ( size > 0 ) {
+
+                    /* Work out the pixel coordinates of the current
+                     * position. */
+                    long off = offset;
+                    for ( int i = 0; i < ndim_; i++ ) {
+                        pos[ i ] = off % dims_[ i ];
+                        off /= dims_[ i ];
+                    }
+
+                    /* Identify the tile containing it and the offset
+                     * within that tile. */
+                    long itile = 0;
+                    long toff = 0;
+                    int tdim0 = 0;
+                    for ( int i = ndim_ - 1; i >= 0; i-- ) {
+                        long tc = pos[ i ] / tileDims_[ i ];
+                        long tbase = tc * tileDims_[ i ];
+                        long tdim = Math.min( tileDims_[ i ],
+                                              dims_[ i ] - tbase );
+                        itile = itile * tileCounts_[ i ] + tc;
+                        toff = toff * tdim + ( pos[ i ] - tbase );
+                        tdim0 = (int) tdim;
+                    }
+
+                    /* Copy the run of pixels along the first axis which
+                     * lies within this tile. */
+                    int run = (int) Math.min( size, tdim0 - toff % tdim0 );
+                    if ( itile != lastTile ) {
+                        lastData = getTileData( itile );
+                        lastTile = itile;
+                    }
+                    System.arraycopy( lastData, (int) toff, buffer, start,
+                                      run );
+                    start += run;
+                    size -= run;
+                    offset += run;
+                }
+            }
+
+            public void write( Object buffer, int start, int size ) {
+                throw new UnsupportedOperationException( "Read only" );
+            }
+
+            public void close() {
+                lastData = null;
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        synchronized ( this ) {
+            tileCache_.clear();
+            cacheBytes_ = 0;
+            data_ = null;
+        }
+        stream_.close();
+    }
+
+    /**
+     * Returns the decoded pixel data for a given tile,
+     * using a cached copy if available.
+     *
+     * @param  itile  tile index
+     * @return  primitive array of this array's type containing
+     *          the pixels of the tile in column-major order
+     */
+    private synchronized Object getTileData( long itile )
+            throws IOException {
+        Long key = new Long( itile );
+        Object data = tileCache_.get( key );
+        if ( data == null ) {
+            data = decodeTile( itile );
+            tileCache_.put( key, data );
+            int nbyte = type_.getNumBytes();
+            cacheBytes_ += (long) nbyte * Array.getLength( data );
+            for ( Iterator it = tileCache_.values().iterator();
+                  cacheBytes_ > CACHE_BYTES && tileCache_.size() > 1; ) {
+                Object old = it.next();
+                it.remove();
+                cacheBytes_ -= (long) nbyte * Array.getLength( old );
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Reads and decompresses the data for a given tile.
+     *
+     * @param  itile  tile index
+     * @return  primitive array of this array's type containing
+     *          the pixels of the tile in column-major order
+     */
+    private Object decodeTile( long itile ) throws IOException {
+
+        /* Work out the number of pixels in this tile;
+         * tiles at the upper edges of the image may be truncated. */
+        int npix = 1;
+        long it = itile;
+        for ( int i = 0; i < ndim_; i++ ) {
+            long tc = it % tileCounts_[ i ];
+            it /= tileCounts_[ i ];
+            npix *= (int) Math.min( tileDims_[ i ],
+                                    dims_[ i ] - tc * tileDims_[ i ] );
+        }
+
+        /* Read the table row describing the tile. */
+        byte[] row = new byte[ rowLength_ ];
+        readBytes( itile * rowLength_, row );
+        double scale = scaleCol_ == null ? zscale_
+                                         : scaleCol_.getDouble( row );
+        double zero = zeroCol_ == null ? zzero_
+                                       : zeroCol_.getDouble( row );
+        Integer blank = blankCol_ == null
+                      ? zblank_
+                      : new Integer( (int) blankCol_.getDouble( row ) );
+
+        /* Normally the data is in the COMPRESSED_DATA column.
+         * Floating point tiles which could not be quantized may be
+         * stored in one of the other columns instead. */
+        byte[] cdata = readHeapData( row, cdataCol_ );
+        if ( cdata != null ) {
+            if ( quantMethod_ != NO_QUANTIZE ) {
+                byte[] idata = rice_ != null
+                             ? rice_.decompress( cdata, npix )
+                             : comp_.decompress( cdata, 4, npix );
+                int isize = rice_ != null ? idata.length / npix : 4;
+                return unquantize( idata, isize, npix, itile, scale, zero,
+                                   blank );
+            }
+            else {
+                int elSize = Math.abs( zbitpix_ ) / 8;
+                byte[] data = rice_ != null
+                            ? rice_.decompress( cdata, npix )
+                            : comp_.decompress( cdata, elSize, npix );
+                int dsize = rice_ != null ? data.length / npix : elSize;
+                return toTypedArray( data, dsize, zbitpix_ < 0, npix, blank );
+            }
+        }
+        byte[] gdata = readHeapData( row, gdataCol_ );
+        if ( gdata != null ) {
+            int elSize = Math.abs( zbitpix_ ) / 8;
+            byte[] data = TileCompression.GZIP_1
+                         .decompress( gdata, elSize, npix );
+            return toTypedArray( data, elSize, zbitpix_ < 0, npix, null );
+        }
+        byte[] udata = readHeapData( row, udataCol_ );
+        if ( udata != null ) {
+            char utype = udataCol_.elType_;
+            int elSize = CompressedTableInputFactory.getElementSize( utype );
+            if ( udata.length != elSize * npix ) {
+                throw new IOException( "Wrong size uncompressed tile "
+                                     + ( itile + 1 ) );
+            }
+            return toTypedArray( udata, elSize, utype == 'E' || utype == 'D',
+                                 npix, blank );
+        }
+        throw new IOException( "No data for tile " + ( itile + 1 ) );
+    }
+
+    /**
+     * Converts an array of big-endian values to a primitive array
+     * of this array's type.
+     *
+     * @param  data  big-endian data
+     * @param  elSize   number of bytes per value in <code>data</code>
+     * @param  isFloat  true if the values are IEEE floating point,
+     *                  false if they are signed integers
+     * @param  npix   number of values
+     * @param  blank  integer value representing bad pixels, or null
+     * @return   primitive array of <code>npix</code> elements
+     */
+    private Object toTypedArray( byte[] data, int elSize, boolean isFloat,
+                                 int npix, Integer blank ) {
+        boolean hasBlank = blank != null && ! isFloat;
+        long blankVal = hasBlank ? blank.longValue() : 0L;
+        double badVal = badValue_ == null ? 0.0 : badValue_.doubleValue();
+        boolean mapBlank = hasBlank && badValue_ != null
+                        && ( type_ == Type.FLOAT || type_ == Type.DOUBLE
+                             || blankVal != badValue_.longValue() );
+        Object out = type_.newArray( npix );
+        for ( int ip = 0; ip < npix; ip++ ) {
+            long lval = readValue( data, ip * elSize, elSize );
+            double dval;
+            if ( isFloat ) {
+                dval = elSize == 4 ? Float.intBitsToFloat( (int) lval )
+                                   : Double.longBitsToDouble( lval );
+            }
+            else if ( mapBlank && lval == blankVal ) {
+                dval = badVal;
+            }
+            else if ( type_ == Type.BYTE || type_ == Type.SHORT
+                                         || type_ == Type.INT ) {
+                setInteger( out, ip, lval );
+                continue;
+            }
+            else {
+                dval = lval;
+            }
+            if ( type_ == Type.FLOAT ) {
+                ((float[]) out)[ ip ] = (float) dval;
+            }
+            else if ( type_ == Type.DOUBLE ) {
+                ((double[]) out)[ ip ] = dval;
+            }
+            else {
+                setInteger( out, ip, (long) dval );
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Reverses the quantization of floating point values to integers,
+     * including removal of dithering if applicable.
+     * The algorithm follows the tiled image compression convention
+     * and CFITSIO.
+     *
+     * @param  idata   big-endian quantized integer data
+     * @param  elSize  number of bytes per value in <code>idata</code>
+     * @param  npix   number of values
+     * @param  itile   zero-based index of the tile
+     * @param  scale  quantization scale factor
+     * @param  zero   quantization zero point
+     * @param  blank  integer value representing bad pixels, or null
+     * @return   float or double array of <code>npix</code> elements
+     */
+    private Object unquantize( byte[] idata, int elSize, int npix,
+                               long itile, double scale, double zero,
+                               Integer blank ) {
+        boolean hasBlank = blank != null;
+        long blankVal = hasBlank ? blank.longValue() : 0L;
+        boolean dither = quantMethod_ == SUBTRACTIVE_DITHER_1
+                      || quantMethod_ == SUBTRACTIVE_DITHER_2;
+        boolean hasZero = quantMethod_ == SUBTRACTIVE_DITHER_2;
+        float[] rand = dither ? getRandomValues() : null;
+        int iseed = 0;
+        int nextrand = 0;
+        if ( dither ) {
+            iseed = (int) ( ( itile + zdither0_ - 1 ) % N_RANDOM );
+            nextrand = (int) ( rand[ iseed ] * 500 );
+        }
+        boolean isDouble = type_ == Type.DOUBLE;
+        float[] fout = isDouble ? null : new float[ npix ];
+        double[] dout = isDouble ? new double[ npix ] : null;
+        for ( int ip = 0; ip < npix; ip++ ) {
+            long ival = readValue( idata, ip * elSize, elSize );
+            double dval;
+            if ( hasBlank && ival == blankVal ) {
+                dval = Double.NaN;
+            }
+            else if ( hasZero && ival == ZERO_VALUE ) {
+                dval = 0.0;
+            }
+            else if ( dither ) {
+                dval = ( ival - rand[ nextrand ] + 0.5 ) * scale + zero;
+            }
+            else {
+                dval = ival * scale + zero;
+            }
+            if ( isDouble ) {
+                dout[ ip ] = dval;
+            }
+            else {
+                fout[ ip ] = (float) dval;
+            }
+            if ( dither && ++nextrand == N_RANDOM ) {
+                if ( ++iseed == N_RANDOM ) {
+                    iseed = 0;
+                }
+                nextrand = (int) ( rand[ iseed ] * 500 );
+            }
+        }
+        return isDouble ? (Object) dout : (Object) fout;
+    }
+
+    /**
+     * Stores an integer value in an element of this array's integer-typed
+     * primitive array.
+     *
+     * @param  out  byte, short or int array
+     * @param  ip   index
+     * @param  value   value
+     */
+    private void setInteger( Object out, int ip, long value ) {
+        if ( type_ == Type.BYTE ) {
+            ((byte[]) out)[ ip ] = (byte) value;
+        }
+        else if ( type_ == Type.SHORT ) {
+            ((short[]) out)[ ip ] = (short) value;
+        }
+        else {
+            ((int[]) out)[ ip ] = (int) value;
+        }
+    }
+
+    /**
+     * Reads the heap data referenced by a descriptor column of a
+     * table row.
+     *
+     * @param  row   row bytes
+     * @param  col   descriptor column, or null
+     * @return   heap data, or null if the column is absent or empty
+     */
+    private byte[] readHeapData( byte[] row, TableCol col )
+            throws IOException {
+        if ( col == null ) {
+            return null;
+        }
+        long nel;
+        long off;
+        if ( col.type_ == 'Q' ) {
+            nel = readValue( row, col.offset_, 8 );
+            off = readValue( row, col.offset_ + 8, 8 );
+        }
+        else {
+            nel = readValue( row, col.offset_, 4 ) & 0xffffffffL;
+            off = readValue( row, col.offset_ + 4, 4 ) & 0xffffffffL;
+        }
+        if ( nel <= 0 ) {
+            return null;
+        }
+        long nbyte = nel * CompressedTableInputFactory
+                          .getElementSize( col.elType_ );
+        if ( nbyte > Integer.MAX_VALUE ) {
+            throw new IOException( "Compressed tile too large" );
+        }
+        byte[] buf = new byte[ (int) nbyte ];
+        readBytes( heapStart_ + off, buf );
+        return buf;
+    }
+
+    /**
+     * Fills a buffer with bytes from the data part of the HDU.
+     *
+     * @param  pos   offset into the data part
+     * @param  buf   buffer to fill
+     */
+    private void readBytes( long pos, byte[] buf ) throws IOException {
+        synchronized ( this ) {
+            if ( data_ != null ) {
+                if ( pos + buf.length > data_.length ) {
+                    throw new IOException( "Read beyond end of data" );
+                }
+                System.arraycopy( data_, (int) pos, buf, 0, buf.length );
+            }
+            else if ( isRandom_ ) {
+                ((RandomAccess) stream_).seek( strmBase_ + pos );
+                stream_.readFully( buf );
+            }
+            else {
+                throw new IOException( "Stream closed" );
+            }
+        }
+    }
+
+    /**
+     * Reads a signed big-endian integer from a byte array.
+     *
+     * @param  buf  buffer
+     * @param  off  offset of first byte
+     * @param  nbyte  number of bytes (1-8)
+     * @return   sign-extended value
+     */
+    private static long readValue( byte[] buf, int off, int nbyte ) {
+        long val = buf[ off ];
+        for ( int i = 1; i < nbyte; i++ ) {
+            val = ( val << 8 ) | ( buf[ off + i ] & 0xff );
+        }
+        return val;
+    }
+
+    /**
+     * Returns the table of pseudo-random values used for dithering
+     * quantized floating point data.  This is the sequence defined by
+     * the tiled image compression convention, generated in the same way
+     * as by CFITSIO.
+     *
+     * @return   array of {@link #N_RANDOM} values between 0 and 1
+     */
+    static synchronized float[] getRandomValues() {
+        if ( randomValues_ == null ) {
+            double a = 16807.0;
+            double m = 2147483647.0;
+            double seed = 1;
+            float[] values = new float[ N_RANDOM ];
+            for ( int i = 0; i < N_RANDOM; i++ ) {
+                double temp = a * seed;
+                seed = temp - m * (int) ( temp / m );
+                values[ i ] = (float) ( seed / m );
+            }
+            assert (int) seed == 1043618065;
+            randomValues_ = values;
+        }
+        return randomValues_;
+    }
+
+    /**
+     * Indicates whether a given header represents an image compressed
+     * using the tiled image compression convention.
+     *
+     * @param  hdr  HDU header
+     * @return   true iff the HDU is a compressed image
+     */
+    public static boolean isCompressedImage( Header hdr ) {
+        return "BINTABLE".equals( hdr.getStringValue( "XTENSION" ) )
+            && hdr.containsKey( "ZIMAGE" )
+            && hdr.getBooleanValue( "ZIMAGE", false );
+    }
+
+    /**
+     * Returns the error message used when an image's compression
+     * algorithm is not supported.
+     * The text is quoted in the {@link FitsArrayBuilder} documentation,
+     * so the two should be kept in step.
+     * Support for HCOMPRESS_1 and PLIO_1 has been deferred;
+     * when it is added, that documentation must be updated too.
+     *
+     * @param  cmptype  ZCMPTYPE header value
+     * @return   message naming the algorithm and the supported ones
+     */
+    static String getUnsupportedMessage( String cmptype ) {
+        StringBuffer sbuf = new StringBuffer()
+            .append( "Unsupported image compression type " )
+            .append( cmptype.trim() )
+            .append( "; supported types are" );
+        TileCompression[] comps = TileCompression.getKnownCompressions();
+        for ( int i = 0; i < comps.length; i++ ) {
+            sbuf.append( i == 0 ? " " : ", " )
+                .append( comps[ i ].getName() );
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Returns a named column, which must be a heap descriptor if present.
+     *
+     * @param  colMap   map of upper-case column name to TableCol
+     * @param  name    column name
+     * @return   column, or null if absent
+     */
+    private static TableCol getDescriptorColumn( Map colMap, String name )
+            throws FitsException {
+        TableCol col = (TableCol) colMap.get( name );
+        if ( col != null && col.type_ != 'P' && col.type_ != 'Q' ) {
+            throw new FitsException( "Column " + name
+                                   + " not a heap descriptor" );
+        }
+        return col;
+    }
+
+    /**
+     * Returns a required integer header value.
+     *
+     * @param  cards  header
+     * @param  key   keyword
+     * @return  value
+     */
+    private static int getRequiredInt( HeaderCards cards, String key )
+            throws FitsException {
+        Integer value = cards.getIntValue( key );
+        if ( value == null ) {
+            throw new FitsException( "Missing header " + key );
+        }
+        return value.intValue();
+    }
+
+    /**
+     * Returns a required long integer header value.
+     *
+     * @param  cards  header
+     * @param  key   keyword
+     * @return  value
+     */
+    private static long getRequiredLong( HeaderCards cards, String key )
+            throws FitsException {
+        Long value = cards.getLongValue( key );
+        if ( value == null ) {
+            throw new FitsException( "Missing header " + key );
+        }
+        return value.longValue();
+    }
+
+    /**
+     * Describes the position and type of a column in the compressed table.
+     */
+    private static class TableCol {
+        final int offset_;
+        final int leng_;
+        final char type_;
+        final char elType_;
+
+        /**
+         * Constructor.
+         *
+         * @param  tform  TFORM value
+         * @param  offset  byte offset of column within a row
+         */
+        TableCol( String tform, int offset ) throws FitsException {
+            Matcher matcher = TFORM_REGEX.matcher( tform );
+            if ( ! matcher.lookingAt() ) {
+                throw new FitsException( "Bad TFORM " + tform );
+            }
+            String scount = matcher.group( 1 );
+            int count = scount.length() == 0 ? 1 : Integer.parseInt( scount );
+            offset_ = offset;
+            type_ = matcher.group( 2 ).charAt( 0 );
+            String eltype = matcher.group( 3 );
+            if ( type_ == 'P' || type_ == 'Q' ) {
+                if ( eltype.length() == 0 ) {
+                    throw new FitsException( "Bad descriptor TFORM " + tform );
+                }
+                elType_ = eltype.charAt( 0 );
+                leng_ = count * ( type_ == 'Q' ? 16 : 8 );
+            }
+            else {
+                elType_ = type_;
+                int elSize = CompressedTableInputFactory
+                            .getElementSize( type_ );
+                if ( type_ == 'X' ) {
+                    leng_ = ( count + 7 ) / 8;
+                }
+                else if ( type_ == 'C' || type_ == 'M' ) {
+                    leng_ = 2 * count * elSize;
+                }
+                else {
+                    leng_ = count * elSize;
+                }
+            }
+        }
+
+        /**
+         * Reads a numeric scalar value from this column of a row.
+         *
+         * @param  row  row bytes
+         * @return   value as a double
+         */
+        double getDouble( byte[] row ) {
+            switch ( type_ ) {
+                case 'E':
+                    return Float.intBitsToFloat( (int)
+                                                 readValue( row, offset_, 4 ) );
+                case 'D':
+                    return Double.longBitsToDouble( readValue( row, offset_,
+                                                               8 ) );
+                case 'B':
+                    return readValue( row, offset_, 1 ) & 0xff;
+                default:
+                    return readValue( row, offset_,
+                                      CompressedTableInputFactory
+                                     .getElementSize( type_ ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package uk.ac.starlink.fits;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import nom.tam.fits.Header;
+import nom.tam.fits.HeaderCard;
+import nom.tam.fits.HeaderCardException;
+import uk.ac.starlink.table.ByteStore;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+
+/**
+ * FitsTableSerializer which writes BINTABLEs using the FITS tiled
+ * table compression convention (<code>ZTABLE=T</code>).
+ * The rows of the table are divided into tiles, and the data for each
+ * column within each tile is compressed separately and written to the
+ * heap.  The table data part itself contains one row per tile,
+ * each cell holding the heap descriptor of one column's compressed data.
+ *
+ * <p>Since the header has to declare the heap size, the whole table
+ * is compressed at construction time, with the compressed data held
+ * in temporary storage until it is written.
+ *
+ * <p>Compression algorithms that do not apply to a given column's
+ * data type (RICE_1 only applies to integer columns of up to 4 bytes)
+ * are replaced by GZIP_2 for that column.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class CompressedFitsTableSerializer
+        extends StandardFitsTableSerializer {
+
+    private final StarTable table_;
+    private final ColumnWriter[] colWriters_;
+    private final TileCompression[] colComps_;
+    private final int ncol_;
+    private final int rowLength_;
+    private final int tileRows_;
+    private final long ntile_;
+    private final ByteStore heapStore_;
+    private final long[] descs_;
+    private final int[] maxBytes_;
+    private final boolean useQ_;
+
+    /** Default approximate size in bytes of an uncompressed tile. */
+    public static final int DEFAULT_TILE_BYTES = 256 * 1024;
+
+    /**
+     * Constructor.
+     *
+     * @param  table  table to write
+     * @param  storagePolicy  policy for acquiring temporary storage
+     *                        for the compressed data
+     * @param  allowSignedByte  if true, bytes written as FITS signed bytes
+     *         (TZERO=-128), if false bytes written as signed shorts
+     * @param  compression  compression algorithm
+     * @param  tileRows  number of rows per tile, or non-positive for
+     *                   a value based on the row length
+     */
+    public CompressedFitsTableSerializer( StarTable table,
+                                          StoragePolicy storagePolicy,
+                                          boolean allowSignedByte,
+                                          TileCompression compression,
+                                          int tileRows )
+            throws IOException {
+        super( allowSignedByte );
+        init( table );
+        table_ = table;
+
+        /* Identify the columns to be written. */
+        ColumnWriter[] allWriters = getColumnWriters();
+        List writerList = new ArrayList();
+        for ( int icol = 0; icol < allWriters.length; icol++ ) {
+            if ( allWriters[ icol ] != null ) {
+                writerList.add( allWriters[ icol ] );
+            }
+        }
+        colWriters_ = (ColumnWriter[])
+                      writerList.toArray( new ColumnWriter[ 0 ] );
+        ncol_ = colWriters_.length;
+        colComps_ = new TileCompression[ ncol_ ];
+        int rowLeng = 0;
+        for ( int ic = 0; ic < ncol_; ic++ ) {
+            ColumnWriter writer = colWriters_[ ic ];
+            rowLeng += writer.getLength();
+            colComps_[ ic ] = compression.canCompress( writer.getFormatChar() )
+                            ? compression
+                            : TileCompression.GZIP_2;
+        }
+        rowLength_ = rowLeng;
+
+        /* Work out tiling. */
+        long nrow = getRowCount();
+        tileRows_ = tileRows > 0
+                  ? tileRows
+                  : (int) Math.max( 1, Math.min( Math.max( nrow, 1 ),
+                                                 DEFAULT_TILE_BYTES
+                                               / Math.max( rowLength_, 1 ) ) );
+        ntile_ = ( nrow + tileRows_ - 1 ) / tileRows_;
+        if ( ntile_ * ncol_ * 2 > Integer.MAX_VALUE ) {
+            throw new IOException( "Too many tiles" );
+        }
+
+        /* Compress all the data to the heap. */
+        descs_ = new long[ (int) ( ntile_ * ncol_ * 2 ) ];
+        maxBytes_ = new int[ ncol_ ];
+        heapStore_ = storagePolicy.makeByteStore();
+        try {
+            compressTiles();
+        }
+        catch ( IOException e ) {
+            heapStore_.close();
+            throw e;
+        }
+        catch ( RuntimeException e ) {
+            heapStore_.close();
+            throw e;
+        }
+        useQ_ = heapStore_.getLength() > Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads the table data and writes compressed tiles to the heap store,
+     * recording their heap descriptors.
+     */
+    private void compressTiles() throws IOException {
+        int ncolTable = table_.getColumnCount();
+        ColumnWriter[] allWriters = getColumnWriters();
+        ByteArrayOutputStream[] bufs = new ByteArrayOutputStream[ ncol_ ];
+        DataOutputStream[] colOuts = new DataOutputStream[ ncol_ ];
+        for ( int ic = 0; ic < ncol_; ic++ ) {
+            int leng = colWriters_[ ic ].getLength();
+            bufs[ ic ] =
+                new ByteArrayOutputStream( (int)
+                                           Math.min( (long) tileRows_ * leng,
+                                                     DEFAULT_TILE_BYTES ) );
+            colOuts[ ic ] = new DataOutputStream( bufs[ ic ] );
+        }
+        OutputStream heapOut =
+            new BufferedOutputStream( heapStore_.getOutputStream(),
+                                      64 * 1024 );
+        long heapOff = 0;
+        int itile = 0;
+        int ntr = 0;
+        RowSequence rseq = table_.getRowSequence();
+        try {
+            long nrow = getRowCount();
+            for ( long irow = 0; irow < nrow; irow++ ) {
+                if ( ! rseq.next() ) {
+                    throw new IOException( "Table row count mismatch" );
+                }
+                Object[] row = rseq.getRow();
+                int ic = 0;
+                for ( int icol = 0; icol < ncolTable; icol++ ) {
+                    ColumnWriter writer = allWriters[ icol ];
+                    if ( writer != null ) {
+                        writer.writeValue( colOuts[ ic++ ], row[ icol ] );
+                    }
+                }
+
+                /* At the end of each tile, compress and write each
+                 * column's data. */
+                if ( ++ntr == tileRows_ || irow == nrow - 1 ) {
+                    for ( ic = 0; ic < ncol_; ic++ ) {
+                        ColumnWriter writer = colWriters_[ ic ];
+                        int elSize = CompressedTableInputFactory
+                                    .getElementSize( writer.getFormatChar() );
+                        colOuts[ ic ].flush();
+                        byte[] data = bufs[ ic ].toByteArray();
+                        bufs[ ic ].reset();
+                        byte[] cdata =
+                            colComps_[ ic ]
+                           .compress( data, elSize, data.length / elSize );
+                        heapOut.write( cdata );
+                        int idesc = ( itile * ncol_ + ic ) * 2;
+                        descs_[ idesc ] = cdata.length;
+                        descs_[ idesc + 1 ] = heapOff;
+                        heapOff += cdata.length;
+                        maxBytes_[ ic ] = Math.max( maxBytes_[ ic ],
+                                                    cdata.length );
+                    }
+                    itile++;
+                    ntr = 0;
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        heapOut.flush();
+        assert itile == ntile_;
+    }
+
+    public Header getHeader() throws HeaderCardException {
+        Header hdr = super.getHeader();
+        char pq = useQ_ ? 'Q' : 'P';
+        int descLeng = useQ_ ? 16 : 8;
+
+        /* Replace the structural cards with those for the compressed
+         * table, and record the uncompressed values in the Z-prefixed
+         * equivalents. */
+        final List cardList = new ArrayList();
+        for ( Iterator it = hdr.iterator(); it.hasNext(); ) {
+            HeaderCard card = (HeaderCard) it.next();
+            String key = card.getKey();
+            if ( "NAXIS1".equals( key ) ) {
+                cardList.add( new HeaderCard( "NAXIS1", ncol_ * descLeng,
+                                              "width of table in bytes" ) );
+            }
+            else if ( "NAXIS2".equals( key ) ) {
+                cardList.add( new HeaderCard( "NAXIS2", ntile_,
+                                              "number of tiles" ) );
+            }
+            else if ( "PCOUNT".equals( key ) ) {
+                cardList.add( new HeaderCard( "PCOUNT",
+                                              heapStore_.getLength(),
+                                              "heap size" ) );
+            }
+            else if ( "TFIELDS".equals( key ) ) {
+                cardList.add( card );
+                cardList.add( new HeaderCard( "ZTABLE", true,
+                                              "compressed table" ) );
+                cardList.add( new HeaderCard( "ZTILELEN", tileRows_,
+                                              "rows per tile" ) );
+                cardList.add( new HeaderCard( "ZNAXIS1", rowLength_,
+                                              "uncompressed row width" ) );
+                cardList.add( new HeaderCard( "ZNAXIS2", getRowCount(),
+                                              "number of rows in table" ) );
+                cardList.add( new HeaderCard( "ZPCOUNT", 0,
+                                              "uncompressed heap size" ) );
+            }
+            else if ( key != null && key.startsWith( "TFORM" ) ) {
+                String scol = key.substring( 5 );
+                int ic = Integer.parseInt( scol ) - 1;
+                String forcol = " for column " + scol;
+                cardList.add( new HeaderCard( key,
+                                              "1" + pq + "B("
+                                            + maxBytes_[ ic ] + ")",
+                                              "compressed data" + forcol ) );
+                cardList.add( new HeaderCard( "ZFORM" + scol,
+                                              card.getValue(),
+                                              "format" + forcol ) );
+                cardList.add( new HeaderCard( "ZCTYP" + scol,
+                                              colComps_[ ic ].getName(),
+                                              "compression" + forcol ) );
+            }
+            else {
+                cardList.add( card );
+            }
+        }
+        return new Header() {
+            {
+                for ( Iterator it = cardList.iterator(); it.hasNext(); ) {
+                    addLine( (HeaderCard) it.next() );
+                }
+            }
+        };
+    }
+
+    public void writeData( DataOutput out ) throws IOException {
+        try {
+
+            /* Write the heap descriptors, one row per tile. */
+            for ( int i = 0; i < descs_.length; i++ ) {
+                if ( useQ_ ) {
+                    out.writeLong( descs_[ i ] );
+                }
+                else {
+                    out.writeInt( (int) descs_[ i ] );
+                }
+            }
+
+            /* Write the heap. */
+            heapStore_.copy( VariableFitsTableSerializer.toStream( out ) );
+            long nbyte = descs_.length * ( useQ_ ? 8L : 4L )
+                       + heapStore_.getLength();
+            int over = (int) ( nbyte % 2880 );
+            if ( over > 0 ) {
+                out.write( new byte[ 2880 - over ] );
+            }
+        }
+        finally {
+            heapStore_.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.starlink.fits;
+
+import java.io.IOException;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+
+/**
+ * TableWriter which writes FITS BINTABLEs compressed using the
+ * FITS tiled table compression convention.
+ * Each column of each tile (group of rows) is compressed separately
+ * and stored in the heap, so that readers can decompress one tile
+ * at a time.
+ * Tables written like this can be read by the FITS input handler,
+ * and by other software which understands the convention.
+ *
+ * <p>Variable-length array columns are not currently written in
+ * compressed form; they are written as fixed-length arrays as
+ * for {@link FitsTableWriter}.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class CompressedFitsTableWriter extends AbstractFitsTableWriter {
+
+    private final boolean allowSignedByte_;
+    private TileCompression compression_;
+    private int tileRows_;
+    private StoragePolicy storagePolicy_;
+
+    /**
+     * Constructs a writer with default characteristics.
+     * GZIP_2 compression is used.
+     */
+    public CompressedFitsTableWriter() {
+        this( TileCompression.GZIP_2, true );
+    }
+
+    /**
+     * Constructs a writer with a given compression algorithm.
+     *
+     * @param  compression  compression algorithm
+     * @param   allowSignedByte  if true, bytes written as FITS signed bytes
+     *          (TZERO=-128), if false bytes written as signed shorts
+     */
+    public CompressedFitsTableWriter( TileCompression compression,
+                                      boolean allowSignedByte ) {
+        super( "fits-compressed" );
+        compression_ = compression;
+        allowSignedByte_ = allowSignedByte;
+        storagePolicy_ = StoragePolicy.getDefaultPolicy();
+    }
+
+    /**
+     * Sets the compression algorithm.
+     * Columns to which it does not apply will use GZIP_2 instead.
+     *
+     * @param  compression  compression algorithm
+     */
+    public void setCompression( TileCompression compression ) {
+        compression_ = compression;
+    }
+
+    /**
+     * Returns the compression algorithm.
+     *
+     * @return  compression algorithm
+     */
+    public TileCompression getCompression() {
+        return compression_;
+    }
+
+    /**
+     * Sets the number of rows in each compressed tile.
+     * Larger tiles generally compress better, but make random access
+     * to the written table more expensive.
+     * If a non-positive value is given, a value giving tiles of
+     * around {@link CompressedFitsTableSerializer#DEFAULT_TILE_BYTES}
+     * uncompressed bytes is used.
+     *
+     * @param  tileRows  rows per tile, or non-positive for a default
+     */
+    public void setTileRows( int tileRows ) {
+        tileRows_ = tileRows;
+    }
+
+    /**
+     * Returns the number of rows in each compressed tile.
+     *
+     * @return  rows per tile, or non-positive for a default
+     */
+    public int getTileRows() {
+        return tileRows_;
+    }
+
+    /**
+     * Sets the storage policy which will be used for temporary storage
+     * during writing.  Temporary storage is required for the compressed
+     * data, since its size must be known before the header is written.
+     * By default the system default storage policy is used.
+     *
+     * @param  storagePolicy   policy to use
+     */
+    public void setStoragePolicy( StoragePolicy storagePolicy ) {
+        storagePolicy_ = storagePolicy;
+    }
+
+    /**
+     * Always returns false.
+     */
+    public boolean looksLikeFile( String location ) {
+        return false;
+    }
+
+    protected FitsTableSerializer createSerializer( StarTable table )
+            throws IOException {
+        return new CompressedFitsTableSerializer( table, storagePolicy_,
+                                                  allowSignedByte_,
+                                                  compression_, tileRows_ );
+    }
+}
@@ -0,0 +1,722 @@
+package uk.ac.starlink.fits;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.Header;
+import nom.tam.fits.HeaderCard;
+import nom.tam.util.Cursor;
+
+/**
+ * InputFactory which presents the uncompressed data of a BINTABLE HDU
+ * written using the FITS tiled table compression convention
+ * (<code>ZTABLE=T</code>).
+ *
+ * <p>The compressed table has one row per tile, each cell holding a
+ * heap descriptor for the compressed bytes of one column of that tile.
+ * The inputs created by this factory look like the data part of the
+ * corresponding uncompressed table, and decompress tiles as required.
+ * They are always random-access; since only the tile containing a
+ * requested row needs to be decompressed, seeking is reasonably cheap.
+ * A few recently decompressed tiles are cached by the factory.
+ * If the underlying data is not random-access, the compressed data is
+ * read into memory.
+ *
+ * <p>Variable-length array columns in the uncompressed table
+ * (<code>ZPCOUNT&gt;0</code>) are not supported.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class CompressedTableInputFactory extends InputFactory {
+
+    private final InputFactory baseFact_;
+    private final Header uncompressedHdr_;
+    private final int ncol_;
+    private final long nrow_;
+    private final int rowLength_;
+    private final int tileRows_;
+    private final long ntile_;
+    private final long crowLength_;
+    private final long heapStart_;
+    private final long dataLength_;
+    private final ColumnTiler[] tilers_;
+    private final Map tileCache_;
+    private BasicInput baseInput_;
+
+    /** Number of decompressed tiles cached. */
+    private static final int CACHE_TILES = 4;
+
+    private static final Pattern TFORM_REGEX =
+        Pattern.compile( "([0-9]*)([LXBIJKAEDCMPQ])(.*)" );
+
+    /** Keywords in the compressed header not copied to uncompressed one. */
+    private static final Collection DROP_KEYS =
+            new HashSet( Arrays.asList( new String[] {
+        "ZTABLE", "ZTILELEN", "ZNAXIS1", "ZNAXIS2", "ZPCOUNT", "ZTHEAP",
+        "ZHEAPPTR", "ZCMPTYPE", "THEAP", "CHECKSUM", "DATASUM",
+    } ) );
+
+    /**
+     * Constructor.
+     *
+     * @param  hdr   header of the compressed BINTABLE HDU
+     * @param  baseFact  input factory for the data part of the
+     *                   compressed HDU
+     */
+    public CompressedTableInputFactory( Header hdr, InputFactory baseFact )
+            throws FitsException {
+        baseFact_ = baseFact;
+        HeaderCards cards = new HeaderCards( hdr );
+        if ( ! isCompressedTable( hdr ) ) {
+            throw new IllegalArgumentException( "Not a compressed table" );
+        }
+        ncol_ = getRequiredInt( cards, "TFIELDS" );
+        int crowLeng = getRequiredInt( cards, "NAXIS1" );
+        long ntile = getRequiredLong( cards, "NAXIS2" );
+        rowLength_ = getRequiredInt( cards, "ZNAXIS1" );
+        nrow_ = getRequiredLong( cards, "ZNAXIS2" );
+        Long zpcount = cards.getLongValue( "ZPCOUNT" );
+        if ( zpcount != null && zpcount.longValue() > 0 ) {
+            throw new FitsException( "Compressed tables with variable-length "
+                                   + "array columns not supported" );
+        }
+        tileRows_ = cards.containsKey( "ZTILELEN" )
+                  ? cards.getIntValue( "ZTILELEN" ).intValue()
+                  : (int) Math.max( 1, nrow_ );
+        if ( tileRows_ <= 0 ) {
+            throw new FitsException( "Bad ZTILELEN value " + tileRows_ );
+        }
+        ntile_ = ( nrow_ + tileRows_ - 1 ) / tileRows_;
+        if ( ntile != ntile_ ) {
+            throw new FitsException( "Tile count mismatch (NAXIS2=" + ntile
+                                   + ", expected " + ntile_ + ")" );
+        }
+        crowLength_ = crowLeng;
+        heapStart_ = cards.containsKey( "THEAP" )
+                   ? cards.getLongValue( "THEAP" ).longValue()
+                   : crowLength_ * ntile;
+        Long pcount = cards.getLongValue( "PCOUNT" );
+        dataLength_ = crowLength_ * ntile
+                    + ( pcount == null ? 0 : pcount.longValue() );
+        String dfltComp = cards.getStringValue( "ZCMPTYPE" );
+
+        /* Set up per-column tile decoders. */
+        tilers_ = new ColumnTiler[ ncol_ ];
+        int coff = 0;
+        int uoff = 0;
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            int jcol = icol + 1;
+            String zform = cards.getStringValue( "ZFORM" + jcol );
+            String tform = cards.getStringValue( "TFORM" + jcol );
+            if ( zform == null || tform == null ) {
+                throw new FitsException( "Missing ZFORM/TFORM for column "
+                                       + jcol );
+            }
+            String ctype = cards.getStringValue( "ZCTYP" + jcol );
+            if ( ctype == null ) {
+                ctype = dfltComp;
+            }
+            TileCompression comp = TileCompression.getCompression( ctype );
+            if ( comp == null ) {
+                throw new FitsException( "Unsupported tile compression "
+                                       + ctype + " for column " + jcol );
+            }
+            Matcher tmatch = TFORM_REGEX.matcher( tform.trim() );
+            char dtype = tmatch.lookingAt() ? tmatch.group( 2 ).charAt( 0 )
+                                            : '?';
+            if ( dtype != 'P' && dtype != 'Q' ) {
+                throw new FitsException( "Compressed column " + jcol
+                                       + " not a heap descriptor: TFORM"
+                                       + jcol + " = " + tform );
+            }
+            ColumnTiler tiler =
+                new ColumnTiler( zform.trim(), comp, dtype == 'Q', coff, uoff );
+            tilers_[ icol ] = tiler;
+            coff += dtype == 'Q' ? 16 : 8;
+            uoff += tiler.cellLength_;
+        }
+        if ( uoff != rowLength_ ) {
+            throw new FitsException( "Row length mismatch (ZNAXIS1="
+                                   + rowLength_ + ", columns total "
+                                   + uoff + ")" );
+        }
+        uncompressedHdr_ = createUncompressedHeader( hdr, ncol_ );
+        tileCache_ = new LinkedHashMap( CACHE_TILES + 1, 0.75f, true ) {
+            protected boolean removeEldestEntry( Map.Entry entry ) {
+                return size() > CACHE_TILES;
+            }
+        };
+    }
+
+    /**
+     * Returns a header corresponding to the uncompressed table.
+     *
+     * @return  uncompressed BINTABLE header
+     */
+    public Header getUncompressedHeader() {
+        return uncompressedHdr_;
+    }
+
+    public boolean isRandom() {
+        return true;
+    }
+
+    public BasicInput createInput( boolean isSeq ) {
+        return new TileInput();
+    }
+
+    public synchronized void close() throws IOException {
+        tileCache_.clear();
+        if ( baseInput_ != null ) {
+            baseInput_.close();
+            baseInput_ = null;
+        }
+        baseFact_.close();
+    }
+
+    /**
+     * Indicates whether a header represents a table compressed using the
+     * FITS tiled table compression convention.
+     *
+     * @param  hdr  HDU header
+     * @return  true iff hdr has ZTABLE=T
+     */
+    public static boolean isCompressedTable( Header hdr ) {
+        return "BINTABLE".equals( hdr.getStringValue( "XTENSION" ) )
+            && hdr.containsKey( "ZTABLE" )
+            && hdr.getBooleanValue( "ZTABLE", false );
+    }
+
+    /**
+     * Returns the uncompressed row data for a given tile,
+     * using a cached copy if available.
+     *
+     * @param  itile  tile index
+     * @return  row-major uncompressed bytes for all the rows in the tile
+     */
+    private synchronized byte[] getTile( long itile ) throws IOException {
+        Long key = new Long( itile );
+        byte[] tile = (byte[]) tileCache_.get( key );
+        if ( tile == null ) {
+            tile = readTile( itile );
+            tileCache_.put( key, tile );
+        }
+        return tile;
+    }
+
+    /**
+     * Reads and decompresses a tile.
+     * Must be called while synchronized on this object.
+     *
+     * @param  itile  tile index
+     * @return  row-major uncompressed bytes for all the rows in the tile
+     */
+    private byte[] readTile( long itile ) throws IOException {
+        BasicInput in = getBaseInput();
+        int nr = (int) Math.min( tileRows_, nrow_ - itile * tileRows_ );
+        byte[] tile = new byte[ nr * rowLength_ ];
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            ColumnTiler tiler = tilers_[ icol ];
+
+            /* Read the heap descriptor. */
+            in.seek( itile * crowLength_ + tiler.descOffset_ );
+            long nbyte;
+            long heapOff;
+            if ( tiler.isLongDesc_ ) {
+                nbyte = in.readLong();
+                heapOff = in.readLong();
+            }
+            else {
+                nbyte = in.readInt() & 0xffffffffL;
+                heapOff = in.readInt() & 0xffffffffL;
+            }
+            if ( nbyte > Integer.MAX_VALUE ) {
+                throw new IOException( "Compressed tile too large" );
+            }
+
+            /* Read and decompress the column data for this tile. */
+            byte[] cbuf = new byte[ (int) nbyte ];
+            in.seek( heapStart_ + heapOff );
+            readBytes( in, cbuf );
+            int cellLeng = tiler.cellLength_;
+            byte[] cdata =
+                tiler.comp_.decompress( cbuf, tiler.elSize_,
+                                        nr * ( cellLeng / tiler.elSize_ ) );
+            if ( cdata.length < nr * cellLeng ) {
+                throw new IOException( "Decompressed tile too short" );
+            }
+
+            /* The compressed data is column-major; transpose it into the
+             * tile's row-major array. */
+            int ioff = tiler.cellOffset_;
+            int joff = 0;
+            for ( int ir = 0; ir < nr; ir++ ) {
+                System.arraycopy( cdata, joff, tile, ioff, cellLeng );
+                joff += cellLeng;
+                ioff += rowLength_;
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Returns a random-access input for the compressed data.
+     * Must be called while synchronized on this object.
+     *
+     * @return  random-access input positioned anywhere
+     */
+    private BasicInput getBaseInput() throws IOException {
+        if ( baseInput_ == null ) {
+            if ( baseFact_.isRandom() ) {
+                baseInput_ = baseFact_.createInput( false );
+            }
+            else {
+                long leng = dataLength_;
+                if ( leng > Integer.MAX_VALUE ) {
+                    throw new IOException( "Compressed table too large "
+                                         + "to read from stream" );
+                }
+                byte[] buf = new byte[ (int) leng ];
+                BasicInput in = baseFact_.createInput( true );
+                try {
+                    readBytes( in, buf );
+                }
+                finally {
+                    in.close();
+                }
+                baseInput_ = new ByteArrayInput( buf );
+            }
+        }
+        return baseInput_;
+    }
+
+    /**
+     * Returns the size of the element unit used for tile compression
+     * of a given BINTABLE data type.  For complex types this is the size
+     * of each real or imaginary part.
+     *
+     * @param  type  TFORM data type character
+     * @return  element size in bytes, or -1 for variable-length types
+     */
+    static int getElementSize( char type ) {
+        switch ( type ) {
+            case 'L':
+            case 'X':
+            case 'B':
+            case 'A':
+                return 1;
+            case 'I':
+                return 2;
+            case 'J':
+            case 'E':
+            case 'C':
+                return 4;
+            case 'K':
+            case 'D':
+            case 'M':
+                return 8;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the number of compression elements in a cell of
+     * a given BINTABLE data type.
+     *
+     * @param  type  TFORM data type character, not X
+     * @param  count  TFORM repeat count
+     * @return   element count
+     */
+    private static int getElementCount( char type, int count ) {
+        return type == 'C' || type == 'M' ? 2 * count : count;
+    }
+
+    /**
+     * Returns the header for the uncompressed table corresponding to
+     * a compressed one.  Structural keywords are replaced by the values
+     * of their Z-prefixed equivalents, and compression-specific ones
+     * are removed.
+     *
+     * @param  hdr  compressed table header
+     * @param  ncol  number of columns
+     * @return  uncompressed table header
+     */
+    private static Header createUncompressedHeader( Header hdr, int ncol )
+            throws FitsException {
+        Collection dropKeys = new HashSet( DROP_KEYS );
+        for ( int jcol = 1; jcol <= ncol; jcol++ ) {
+            dropKeys.add( "ZFORM" + jcol );
+            dropKeys.add( "ZCTYP" + jcol );
+        }
+        AddableHeader uhdr = new AddableHeader();
+        for ( Cursor it = hdr.iterator(); it.hasNext(); ) {
+            HeaderCard card = (HeaderCard) it.next();
+            String key = card.getKey();
+            if ( key == null || ! dropKeys.contains( key ) ) {
+                HeaderCard ucard = card;
+                if ( "NAXIS1".equals( key ) ) {
+                    ucard = new HeaderCard( key, hdr.getIntValue( "ZNAXIS1" ),
+                                            card.getComment() );
+                }
+                else if ( "NAXIS2".equals( key ) ) {
+                    ucard = new HeaderCard( key,
+                                            hdr.getLongValue( "ZNAXIS2" ),
+                                            card.getComment() );
+                }
+                else if ( "PCOUNT".equals( key ) ) {
+                    ucard = new HeaderCard( key, 0, card.getComment() );
+                }
+                else if ( key != null && key.startsWith( "TFORM" ) ) {
+                    String zkey = "ZFORM" + key.substring( 5 );
+                    if ( hdr.containsKey( zkey ) ) {
+                        ucard = new HeaderCard( key,
+                                                hdr.getStringValue( zkey )
+                                                   .trim(),
+                                                card.getComment() );
+                    }
+                }
+                uhdr.addLine( ucard );
+            }
+        }
+        return uhdr;
+    }
+
+    /**
+     * Returns a required integer header value.
+     *
+     * @param  cards  header
+     * @param  key  keyword
+     * @return  value
+     */
+    private static int getRequiredInt( HeaderCards cards, String key )
+            throws FitsException {
+        Integer value = cards.getIntValue( key );
+        if ( value == null ) {
+            throw new FitsException( "Missing header " + key );
+        }
+        return value.intValue();
+    }
+
+    /**
+     * Returns a required long integer header value.
+     *
+     * @param  cards  header
+     * @param  key  keyword
+     * @return  value
+     */
+    private static long getRequiredLong( HeaderCards cards, String key )
+            throws FitsException {
+        Long value = cards.getLongValue( key );
+        if ( value == null ) {
+            throw new FitsException( "Missing header " + key );
+        }
+        return value.longValue();
+    }
+
+    /**
+     * Fills a byte array from the current position of an input.
+     *
+     * @param  in  input
+     * @param  buf  buffer to fill
+     */
+    private static void readBytes( BasicInput in, byte[] buf )
+            throws IOException {
+        int n = buf.length;
+        int i = 0;
+        for ( ; i + 8 <= n; i += 8 ) {
+            long v = in.readLong();
+            for ( int j = 7; j >= 0; j-- ) {
+                buf[ i + j ] = (byte) v;
+                v >>>= 8;
+            }
+        }
+        for ( ; i < n; i++ ) {
+            buf[ i ] = in.readByte();
+        }
+    }
+
+    /**
+     * Describes how one column of the uncompressed table is stored
+     * in the compressed one.
+     */
+    private static class ColumnTiler {
+        final TileCompression comp_;
+        final boolean isLongDesc_;
+        final int descOffset_;
+        final int cellOffset_;
+        final int cellLength_;
+        final int elSize_;
+
+        /**
+         * Constructor.
+         *
+         * @param  zform  TFORM value of the uncompressed column
+         * @param  comp   compression algorithm
+         * @param  isLongDesc  true for Q (64-bit) descriptors,
+         *                     false for P (32-bit)
+         * @param  descOffset  offset of descriptor in compressed row
+         * @param  cellOffset  offset of cell in uncompressed row
+         */
+        ColumnTiler( String zform, TileCompression comp, boolean isLongDesc,
+                     int descOffset, int cellOffset )
+                throws FitsException {
+            comp_ = comp;
+            isLongDesc_ = isLongDesc;
+            descOffset_ = descOffset;
+            cellOffset_ = cellOffset;
+            Matcher zmatch = TFORM_REGEX.matcher( zform );
+            if ( ! zmatch.lookingAt() ) {
+                throw new FitsException( "Error parsing ZFORM value "
+                                       + zform );
+            }
+            String scount = zmatch.group( 1 );
+            int count = scount.length() == 0 ? 1 : Integer.parseInt( scount );
+            char type = zmatch.group( 2 ).charAt( 0 );
+            elSize_ = getElementSize( type );
+            if ( elSize_ <= 0 ) {
+                throw new FitsException( "Compressed variable-length "
+                                       + "columns not supported: ZFORM "
+                                       + zform );
+            }
+            cellLength_ = type == 'X' ? ( count + 7 ) / 8
+                                      : getElementCount( type, count )
+                                        * elSize_;
+            if ( comp == TileCompression.RICE_1 &&
+                 ! comp.canCompress( type ) ) {
+                throw new FitsException( "RICE_1 compression not applicable "
+                                       + "to ZFORM " + zform );
+            }
+        }
+    }
+
+    /**
+     * BasicInput implementation that reads the uncompressed table data
+     * one tile at a time.
+     */
+    private class TileInput implements BasicInput {
+        private final long tileLength_;
+        private long itile_;
+        private byte[] tile_;
+        private int ipos_;
+
+        /**
+         * Constructor.
+         */
+        TileInput() {
+            tileLength_ = tileRows_ * (long) rowLength_;
+            itile_ = -1;
+            tile_ = new byte[ 0 ];
+        }
+
+        public byte readByte() throws IOException {
+            ensure( 1 );
+            return tile_[ ipos_++ ];
+        }
+
+        public short readShort() throws IOException {
+            ensure( 2 );
+            int i = ipos_;
+            ipos_ += 2;
+            return (short) ( ( tile_[ i ] << 8 ) | ( tile_[ i + 1 ] & 0xff ) );
+        }
+
+        public int readInt() throws IOException {
+            ensure( 4 );
+            int i = ipos_;
+            ipos_ += 4;
+            return getInt( i );
+        }
+
+        public long readLong() throws IOException {
+            ensure( 8 );
+            int i = ipos_;
+            ipos_ += 8;
+            return ( ( (long) getInt( i ) ) << 32 )
+                 | ( getInt( i + 4 ) & 0xffffffffL );
+        }
+
+        public float readFloat() throws IOException {
+            return Float.intBitsToFloat( readInt() );
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble( readLong() );
+        }
+
+        public void skip( long nbyte ) throws IOException {
+            seek( getOffset() + nbyte );
+        }
+
+        public boolean isRandom() {
+            return true;
+        }
+
+        public void seek( long offset ) throws IOException {
+            if ( offset < 0 || offset > nrow_ * rowLength_ ) {
+                throw new EOFException( "Out of bounds: " + offset );
+            }
+            if ( ntile_ == 0 ) {
+                return;
+            }
+
+            /* The end of the data counts as the end of the last tile. */
+            long itile = Math.min( offset / tileLength_, ntile_ - 1 );
+            int ipos = (int) ( offset - itile * tileLength_ );
+            if ( itile != itile_ ) {
+
+                /* Seeking to the start of the next tile from the end of
+                 * the current one does not need to read the next tile
+                 * until it is used. */
+                if ( ipos == 0 && itile == itile_ + 1 &&
+                     ipos_ == tile_.length ) {
+                    return;
+                }
+                setTile( itile );
+            }
+            ipos_ = ipos;
+        }
+
+        public long getOffset() {
+            return Math.max( itile_, 0 ) * tileLength_ + ipos_;
+        }
+
+        public void close() {
+            tile_ = null;
+        }
+
+        /**
+         * Ensures that a given number of bytes are available in the
+         * current tile array from the current position.
+         *
+         * @param  nbyte  number of bytes required
+         */
+        private void ensure( int nbyte ) throws IOException {
+            if ( ipos_ + nbyte > tile_.length ) {
+                if ( ipos_ == tile_.length && itile_ + 1 < ntile_ ) {
+                    setTile( itile_ + 1 );
+                    ipos_ = 0;
+                }
+                if ( ipos_ + nbyte > tile_.length ) {
+                    throw new EOFException();
+                }
+            }
+        }
+
+        /**
+         * Sets the current tile.
+         *
+         * @param  itile  tile index
+         */
+        private void setTile( long itile ) throws IOException {
+            tile_ = getTile( itile );
+            itile_ = itile;
+        }
+
+        /**
+         * Returns a 4-byte integer from the current tile.
+         *
+         * @param  i  offset into tile
+         * @return  integer value
+         */
+        private int getInt( int i ) {
+            byte[] t = tile_;
+            return ( ( t[ i ] & 0xff ) << 24 )
+                 | ( ( t[ i + 1 ] & 0xff ) << 16 )
+                 | ( ( t[ i + 2 ] & 0xff ) << 8 )
+                 | ( t[ i + 3 ] & 0xff );
+        }
+    }
+
+    /**
+     * Random-access BasicInput implementation based on a byte array.
+     */
+    private static class ByteArrayInput implements BasicInput {
+        private final ByteBuffer buf_;
+
+        /**
+         * Constructor.
+         *
+         * @param  data  byte content
+         */
+        ByteArrayInput( byte[] data ) {
+            buf_ = ByteBuffer.wrap( data );
+        }
+
+        public byte readByte() throws IOException {
+            try {
+                return buf_.get();
+            }
+            catch ( BufferUnderflowException e ) {
+                throw (EOFException) new EOFException().initCause( e );
+            }
+        }
+
+        public short readShort() throws IOException {
+            try {
+                return buf_.getShort();
+            }
+            catch ( BufferUnderflowException e ) {
+                throw (EOFException) new EOFException().initCause( e );
+            }
+        }
+
+        public int readInt() throws IOException {
+            try {
+                return buf_.getInt();
+            }
+            catch ( BufferUnderflowException e ) {
+                throw (EOFException) new EOFException().initCause( e );
+            }
+        }
+
+        public long readLong() throws IOException {
+            try {
+                return buf_.getLong();
+            }
+            catch ( BufferUnderflowException e ) {
+                throw (EOFException) new EOFException().initCause( e );
+            }
+        }
+
+        public float readFloat() throws IOException {
+            return Float.intBitsToFloat( readInt() );
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble( readLong() );
+        }
+
+        public void skip( long nbyte ) throws IOException {
+            seek( getOffset() + nbyte );
+        }
+
+        public boolean isRandom() {
+            return true;
+        }
+
+        public void seek( long offset ) throws IOException {
+            if ( offset < 0 || offset > buf_.limit() ) {
+                throw new EOFException( "Out of bounds: " + offset );
+            }
+            buf_.position( (int) offset );
+        }
+
+        public long getOffset() {
+            return buf_.position();
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -63,6 +63,21 @@ import uk.ac.starlink.util.URLUtils;
  * <i>hdu-num</i>, but only if this refers to the first non-existent
  * HDU in an existing FITS file.
  * <p>
+ * Images compressed using the FITS tiled image compression convention
+ * with the NOCOMPRESS, GZIP_1, GZIP_2 or RICE_1 algorithm
+ * (for instance by fpack with its default Rice compression, or with
+ * the -g option) can be read as well as ordinary image HDUs;
+ * only the tiles required are decompressed.  Such images are stored
+ * in BINTABLE extensions, so the <i>hdu-num</i> must normally be given
+ * (usually 1).  Compressed images are read-only.
+ * Support for the HCOMPRESS_1 and PLIO_1 algorithms
+ * (fpack -h and -p) is deferred; such images cannot be read, and fail
+ * with an error like "<code>Unsupported image compression type
+ * HCOMPRESS_1; supported types are NOCOMPRESS, GZIP_1, GZIP_2,
+ * RICE_1</code>".
+ * This applies only to applications which read images through this
+ * class, such as ndtools; other image readers are not affected.
+ * <p>
  * This is a singleton class; use {@link #getInstance} to get an instance.
  *
  * @author   Mark Taylor (Starlink)
@@ -196,10 +211,15 @@ public class FitsArrayBuilder implements ArrayBuilder {
     private NDArray makeNDArray( ArrayDataInput stream, AccessMode mode, 
                                  URL url ) throws IOException {
 
-        /* Make the ArrayImpl. */
+        /* Make the ArrayImpl.  Images stored using the tiled image
+         * compression convention are decompressed as required. */
         ArrayImpl impl;
+        Header hdr;
         try {
-            impl = new ReadableFitsArrayImpl( stream, mode );
+            hdr = Header.readHeader( stream );
+            impl = CompressedFitsArrayImpl.isCompressedImage( hdr )
+                 ? (ArrayImpl) new CompressedFitsArrayImpl( hdr, stream, mode )
+                 : (ArrayImpl) new ReadableFitsArrayImpl( hdr, stream, mode );
         }
         catch ( FitsException e ) {
             throw new IOException( e.getMessage() );
@@ -208,7 +228,6 @@ public class FitsArrayBuilder implements ArrayBuilder {
         /* See if we need to scale the array using BSCALE/BZERO. */
         Type type = impl.getType();
         boolean scaled = false;
-        Header hdr = ((ReadableFitsArrayImpl) impl).getHeader();
         double bscale = 1.0;
         double bzero = 0.0;
         int digits = 0;
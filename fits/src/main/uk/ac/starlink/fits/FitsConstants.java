@@ -68,6 +68,7 @@ public class FitsConstants {
     private static final String[] extensions = new String[] {
         ".fits", ".fit", ".fts",
         ".FITS", ".FIT", ".FTS",
+        ".fz", ".FZ",
         ".lilo", ".lihi", ".silo", ".sihi", ".mxlo",
         ".mxhi", ".rilo", ".rihi", ".vdlo", ".vdhi",
     };
@@ -33,16 +33,34 @@ class ReadableFitsArrayImpl implements ArrayImpl {
     private final int nByte;
     private final TypedReader rdr;
 
+    /**
+     * Constructs an array from a stream positioned at the start of an HDU.
+     *
+     * @param  istream  stream
+     * @param  mode   access mode
+     */
     ReadableFitsArrayImpl( ArrayDataInput istream, AccessMode mode ) 
             throws FitsException, IOException {
+        this( Header.readHeader( istream ), istream, mode );
+    }
+
+    /**
+     * Constructs an array from an HDU header which has already been read
+     * and a stream positioned at the start of its data part.
+     *
+     * @param  hdr  header
+     * @param  istream  stream
+     * @param  mode   access mode
+     */
+    ReadableFitsArrayImpl( Header hdr, ArrayDataInput istream,
+                           AccessMode mode )
+            throws FitsException, IOException {
 
         /* Save the stream and its starting position. */
         this.stream = istream;
         this.isRandom = stream instanceof RandomAccess;
         this.mode = mode;
-
-        /* Read the FITS header cards. */
-        hdr = Header.readHeader( stream );
+        this.hdr = hdr;
 
         /* Initialise the position in the stream for the start of array data. */
         this.strmBase = isRandom ? ((RandomAccess) stream).getFilePointer()
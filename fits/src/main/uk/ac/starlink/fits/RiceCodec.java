@@ -0,0 +1,385 @@
+package uk.ac.starlink.fits;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Implements the Rice compression algorithm as used by the FITS
+ * tiled image and tiled table compression conventions (RICE_1).
+ * The encoding is the same as that of the <code>ricecomp.c</code>
+ * routines in CFITSIO: the first value is written verbatim,
+ * and subsequent values are encoded as differences from their
+ * predecessors, in blocks of a given number of values
+ * each with its own Golomb-Rice split parameter.
+ *
+ * <p>Values are supplied and returned as big-endian signed integers
+ * of 1, 2 or 4 bytes, which is the way they are laid out in
+ * FITS data.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class RiceCodec {
+
+    private final int bytepix_;
+    private final int blockSize_;
+    private final int fsbits_;
+    private final int fsmax_;
+    private final int bbits_;
+
+    /** Default number of values per block. */
+    public static final int DEFAULT_BLOCKSIZE = 32;
+
+    /** Bit count for each byte value up to and including highest set bit. */
+    private static final int[] NONZERO_COUNT = createNonzeroCount();
+
+    /**
+     * Constructor.
+     *
+     * @param  bytepix  number of bytes per value; 1, 2 or 4
+     * @param  blockSize  number of values per block
+     */
+    public RiceCodec( int bytepix, int blockSize ) {
+        bytepix_ = bytepix;
+        blockSize_ = blockSize;
+        switch ( bytepix ) {
+            case 1:
+                fsbits_ = 3;
+                fsmax_ = 6;
+                break;
+            case 2:
+                fsbits_ = 4;
+                fsmax_ = 14;
+                break;
+            case 4:
+                fsbits_ = 5;
+                fsmax_ = 25;
+                break;
+            default:
+                throw new IllegalArgumentException( "Bad bytepix "
+                                                  + bytepix );
+        }
+        bbits_ = 1 << fsbits_;
+    }
+
+    /**
+     * Returns the number of bytes per value.
+     *
+     * @return  1, 2 or 4
+     */
+    public int getBytepix() {
+        return bytepix_;
+    }
+
+    /**
+     * Decompresses a Rice-encoded byte array.
+     *
+     * @param  in   compressed data
+     * @param  nval  number of values to decode
+     * @return   array of <code>nval*bytepix</code> bytes containing
+     *           the decoded values in big-endian order
+     * @throws  IOException  if the compressed data is not consistent
+     */
+    public byte[] decompress( byte[] in, int nval ) throws IOException {
+        byte[] out = new byte[ nval * bytepix_ ];
+        if ( nval == 0 ) {
+            return out;
+        }
+        int ileng = in.length;
+        if ( ileng < bytepix_ + 1 ) {
+            throw new IOException( "Rice compressed data too short" );
+        }
+        int mask = bytepix_ == 4 ? -1 : ( 1 << ( bytepix_ * 8 ) ) - 1;
+
+        /* The first value is stored verbatim. */
+        int ic = 0;
+        int lastpix = 0;
+        for ( int i = 0; i < bytepix_; i++ ) {
+            lastpix = ( lastpix << 8 ) | ( in[ ic++ ] & 0xff );
+        }
+        int b = in[ ic++ ] & 0xff;
+        int nbits = 8;
+        int fsmask = ( 1 << fsbits_ ) - 1;
+        try {
+            for ( int i = 0; i < nval; ) {
+
+                /* Get the split parameter for this block. */
+                nbits -= fsbits_;
+                while ( nbits < 0 ) {
+                    b = ( b << 8 ) | ( in[ ic++ ] & 0xff );
+                    nbits += 8;
+                }
+                int fs = ( ( b >>> nbits ) & fsmask ) - 1;
+                b &= ( 1 << nbits ) - 1;
+                int imax = Math.min( i + blockSize_, nval );
+
+                /* Low entropy case: all differences zero. */
+                if ( fs < 0 ) {
+                    for ( ; i < imax; i++ ) {
+                        putValue( out, i, lastpix );
+                    }
+                }
+
+                /* High entropy case: differences stored verbatim. */
+                else if ( fs == fsmax_ ) {
+                    for ( ; i < imax; i++ ) {
+                        int k = bbits_ - nbits;
+                        long diff = ( (long) b ) << k;
+                        for ( k -= 8; k >= 0; k -= 8 ) {
+                            b = in[ ic++ ] & 0xff;
+                            diff |= ( (long) b ) << k;
+                        }
+                        if ( nbits > 0 ) {
+                            b = in[ ic++ ] & 0xff;
+                            diff |= b >>> ( -k );
+                            b &= ( 1 << nbits ) - 1;
+                        }
+                        else {
+                            b = 0;
+                        }
+                        lastpix = ( undoMapping( (int) diff ) + lastpix )
+                                & mask;
+                        putValue( out, i, lastpix );
+                    }
+                }
+
+                /* Normal case: Rice coding. */
+                else {
+                    for ( ; i < imax; i++ ) {
+
+                        /* Count the leading zero bits. */
+                        while ( b == 0 ) {
+                            nbits += 8;
+                            b = in[ ic++ ] & 0xff;
+                        }
+                        int nzero = nbits - NONZERO_COUNT[ b ];
+                        nbits -= nzero + 1;
+
+                        /* Flip the leading one bit. */
+                        b ^= 1 << nbits;
+
+                        /* Get the fs trailing bits. */
+                        nbits -= fs;
+                        while ( nbits < 0 ) {
+                            b = ( b << 8 ) | ( in[ ic++ ] & 0xff );
+                            nbits += 8;
+                        }
+                        int diff = ( nzero << fs ) | ( b >>> nbits );
+                        b &= ( 1 << nbits ) - 1;
+                        lastpix = ( undoMapping( diff ) + lastpix ) & mask;
+                        putValue( out, i, lastpix );
+                    }
+                }
+            }
+        }
+        catch ( ArrayIndexOutOfBoundsException e ) {
+            throw (IOException)
+                  new IOException( "Rice compressed data truncated" )
+                 .initCause( e );
+        }
+        return out;
+    }
+
+    /**
+     * Compresses an array of values using Rice encoding.
+     *
+     * @param  data  array containing big-endian values
+     * @param  nval  number of values in <code>data</code>
+     * @return   compressed byte array
+     */
+    public byte[] compress( byte[] data, int nval ) {
+        BitOutput out = new BitOutput( nval * bytepix_ / 2 + 16 );
+        if ( nval == 0 ) {
+            return out.toByteArray();
+        }
+        int shift = 32 - bytepix_ * 8;
+
+        /* Write the first value verbatim. */
+        int lastpix = getValue( data, 0, shift );
+        out.writeBits( lastpix, bytepix_ * 8 );
+        int[] diffs = new int[ blockSize_ ];
+        for ( int i = 0; i < nval; i += blockSize_ ) {
+            int nblock = Math.min( blockSize_, nval - i );
+
+            /* Map the differences to non-negative values and work out
+             * the best split parameter. */
+            double pixelsum = 0;
+            for ( int j = 0; j < nblock; j++ ) {
+                int nextpix = getValue( data, i + j, shift );
+
+                /* Difference in the range of the value type,
+                 * then fold the sign into the lowest bit. */
+                int pdiff = ( ( nextpix - lastpix ) << shift ) >> shift;
+                int diff = pdiff < 0 ? ~( pdiff << 1 ) : ( pdiff << 1 );
+                if ( shift > 0 ) {
+                    diff &= ( 1 << ( 32 - shift ) ) - 1;
+                }
+                diffs[ j ] = diff;
+                pixelsum += diff & 0xffffffffL;
+                lastpix = nextpix;
+            }
+            double dpsum = ( pixelsum - ( nblock / 2 ) - 1 ) / nblock;
+            if ( dpsum < 0 ) {
+                dpsum = 0.0;
+            }
+            long psum = ( (long) dpsum ) >> 1;
+            int fs = 0;
+            for ( ; psum > 0; fs++ ) {
+                psum >>= 1;
+            }
+
+            /* High entropy: write the differences verbatim. */
+            if ( fs >= fsmax_ ) {
+                out.writeBits( fsmax_ + 1, fsbits_ );
+                for ( int j = 0; j < nblock; j++ ) {
+                    out.writeBits( diffs[ j ], bbits_ );
+                }
+            }
+
+            /* Low entropy: all differences are zero. */
+            else if ( fs == 0 && pixelsum == 0 ) {
+                out.writeBits( 0, fsbits_ );
+            }
+
+            /* Normal case: Rice coding. */
+            else {
+                out.writeBits( fs + 1, fsbits_ );
+                int fsmask = ( 1 << fs ) - 1;
+                for ( int j = 0; j < nblock; j++ ) {
+                    int v = diffs[ j ];
+                    int top = v >>> fs;
+                    out.writeZeros( top );
+                    out.writeBits( 1, 1 );
+                    if ( fs > 0 ) {
+                        out.writeBits( v & fsmask, fs );
+                    }
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a signed value from a big-endian byte array.
+     *
+     * @param  data  data array
+     * @param  index  value index
+     * @param  shift  32 minus the number of bits per value
+     * @return   value, sign-extended
+     */
+    private int getValue( byte[] data, int index, int shift ) {
+        int off = index * bytepix_;
+        int v = 0;
+        for ( int i = 0; i < bytepix_; i++ ) {
+            v = ( v << 8 ) | ( data[ off + i ] & 0xff );
+        }
+        return ( v << shift ) >> shift;
+    }
+
+    /**
+     * Writes a value to a big-endian byte array.
+     *
+     * @param  data  data array
+     * @param  index  value index
+     * @param  value  value to write; only the low bytes are used
+     */
+    private void putValue( byte[] data, int index, int value ) {
+        int off = index * bytepix_;
+        for ( int i = bytepix_ - 1; i >= 0; i-- ) {
+            data[ off + i ] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Reverses the mapping of signed differences to non-negative values.
+     *
+     * @param  diff  mapped value
+     * @return   signed difference
+     */
+    private static int undoMapping( int diff ) {
+        return ( diff & 1 ) == 0 ? diff >>> 1 : ~( diff >>> 1 );
+    }
+
+    /**
+     * Creates the lookup table giving the number of bits up to and
+     * including the highest set bit for each byte value.
+     *
+     * @return  256-element array
+     */
+    private static int[] createNonzeroCount() {
+        int[] counts = new int[ 256 ];
+        for ( int i = 1; i < 256; i++ ) {
+            counts[ i ] = 32 - Integer.numberOfLeadingZeros( i );
+        }
+        return counts;
+    }
+
+    /**
+     * Accumulates a stream of bits into a byte array,
+     * most significant bit first.
+     */
+    private static class BitOutput {
+        private final ByteArrayOutputStream bout_;
+        private int buffer_;
+        private int nbits_;
+
+        /**
+         * Constructor.
+         *
+         * @param  size  initial buffer size
+         */
+        BitOutput( int size ) {
+            bout_ = new ByteArrayOutputStream( size );
+        }
+
+        /**
+         * Writes the low bits of a value.
+         *
+         * @param  value  value
+         * @param  n   number of bits to write, at most 32
+         */
+        void writeBits( int value, int n ) {
+            while ( n > 0 ) {
+                int nw = Math.min( n, 8 - nbits_ );
+                int bits = ( value >>> ( n - nw ) ) & ( ( 1 << nw ) - 1 );
+                buffer_ = ( buffer_ << nw ) | bits;
+                nbits_ += nw;
+                n -= nw;
+                if ( nbits_ == 8 ) {
+                    bout_.write( buffer_ );
+                    buffer_ = 0;
+                    nbits_ = 0;
+                }
+            }
+        }
+
+        /**
+         * Writes a run of zero bits.
+         *
+         * @param  n  number of bits
+         */
+        void writeZeros( int n ) {
+            while ( n > 0 ) {
+                int nw = Math.min( n, 8 );
+                writeBits( 0, nw );
+                n -= nw;
+            }
+        }
+
+        /**
+         * Returns the bits written so far, padding the final byte
+         * with zeros.
+         *
+         * @return  byte array
+         */
+        byte[] toByteArray() {
+            if ( nbits_ > 0 ) {
+                bout_.write( buffer_ << ( 8 - nbits_ ) );
+                buffer_ = 0;
+                nbits_ = 0;
+            }
+            return bout_.toByteArray();
+        }
+    }
+}
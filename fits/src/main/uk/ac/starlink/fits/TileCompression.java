@@ -0,0 +1,262 @@
+package uk.ac.starlink.fits;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression algorithm for tiles of data in the FITS tiled compression
+ * conventions.  Instances are identified by the names used for the
+ * <code>ZCTYPn</code> (table) and <code>ZCMPTYPE</code> (image)
+ * header values.
+ *
+ * <p>Data is supplied and returned as arrays of big-endian elements
+ * of a given size, which is how it appears in an uncompressed FITS HDU.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public abstract class TileCompression {
+
+    private final String name_;
+
+    /** No compression. */
+    public static final TileCompression NOCOMPRESS =
+            new TileCompression( "NOCOMPRESS" ) {
+        public boolean canCompress( char formatChar ) {
+            return true;
+        }
+        public byte[] compress( byte[] data, int elSize, int nel ) {
+            return data;
+        }
+        public byte[] decompress( byte[] cdata, int elSize, int nel ) {
+            return cdata;
+        }
+    };
+
+    /** Gzip compression of the data bytes. */
+    public static final TileCompression GZIP_1 = new GzipCompression( false );
+
+    /**
+     * Gzip compression of the data bytes after shuffling so that
+     * all the most significant bytes come first.
+     */
+    public static final TileCompression GZIP_2 = new GzipCompression( true );
+
+    /**
+     * Rice compression with 32-element blocks;
+     * applies only to 1, 2 and 4-byte integer data.
+     */
+    public static final TileCompression RICE_1 =
+            new TileCompression( "RICE_1" ) {
+        public boolean canCompress( char formatChar ) {
+            return formatChar == 'B' || formatChar == 'I'
+                || formatChar == 'J';
+        }
+        public byte[] compress( byte[] data, int elSize, int nel ) {
+            return new RiceCodec( elSize, RiceCodec.DEFAULT_BLOCKSIZE )
+                  .compress( data, nel );
+        }
+        public byte[] decompress( byte[] cdata, int elSize, int nel )
+                throws IOException {
+            return new RiceCodec( elSize, RiceCodec.DEFAULT_BLOCKSIZE )
+                  .decompress( cdata, nel );
+        }
+    };
+
+    private static final TileCompression[] KNOWN_COMPRESSIONS = {
+        NOCOMPRESS, GZIP_1, GZIP_2, RICE_1,
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param  name  compression type name as used in FITS headers
+     */
+    protected TileCompression( String name ) {
+        name_ = name;
+    }
+
+    /**
+     * Returns the name by which this algorithm is identified in FITS headers.
+     *
+     * @return  compression type name
+     */
+    public String getName() {
+        return name_;
+    }
+
+    /**
+     * Indicates whether this algorithm can be applied to table column
+     * data of a given type.
+     *
+     * @param  formatChar  TFORM data type character
+     * @return  true iff this compression is applicable
+     */
+    public abstract boolean canCompress( char formatChar );
+
+    /**
+     * Compresses a tile of data.
+     *
+     * @param  data  uncompressed data, big-endian
+     * @param  elSize   number of bytes per element
+     * @param  nel    number of elements in <code>data</code>
+     * @return   compressed data
+     */
+    public abstract byte[] compress( byte[] data, int elSize, int nel )
+            throws IOException;
+
+    /**
+     * Decompresses a tile of data.
+     *
+     * @param  cdata  compressed data
+     * @param  elSize   number of bytes per element
+     * @param  nel    number of elements in the uncompressed tile
+     * @return   array of <code>elSize*nel</code> bytes containing the
+     *           uncompressed data, big-endian
+     */
+    public abstract byte[] decompress( byte[] cdata, int elSize, int nel )
+            throws IOException;
+
+    public String toString() {
+        return name_;
+    }
+
+    /**
+     * Returns the known compression algorithms.
+     *
+     * @return  compression array
+     */
+    public static TileCompression[] getKnownCompressions() {
+        return (TileCompression[]) KNOWN_COMPRESSIONS.clone();
+    }
+
+    /**
+     * Returns the compression algorithm with a given name.
+     * Matching is case-insensitive.
+     *
+     * @param  name  compression type name
+     * @return   compression, or null if none is known by that name
+     */
+    public static TileCompression getCompression( String name ) {
+        if ( name != null ) {
+            for ( int i = 0; i < KNOWN_COMPRESSIONS.length; i++ ) {
+                TileCompression comp = KNOWN_COMPRESSIONS[ i ];
+                if ( comp.getName().equalsIgnoreCase( name.trim() ) ) {
+                    return comp;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads all the bytes of an uncompressed stream into an array of
+     * a known size.
+     *
+     * @param  in  input stream
+     * @param  leng  expected number of bytes
+     * @return   array of <code>leng</code> bytes
+     */
+    private static byte[] readFully( InputStream in, int leng )
+            throws IOException {
+        byte[] buf = new byte[ leng ];
+        int off = 0;
+        while ( off < leng ) {
+            int n = in.read( buf, off, leng - off );
+            if ( n < 0 ) {
+                throw new IOException( "Compressed tile too short ("
+                                     + off + " < " + leng + " bytes)" );
+            }
+            off += n;
+        }
+        return buf;
+    }
+
+    /**
+     * Compression implementation for GZIP_1 and GZIP_2.
+     */
+    private static class GzipCompression extends TileCompression {
+        private final boolean shuffle_;
+
+        /**
+         * Constructor.
+         *
+         * @param  shuffle  true to shuffle bytes before compression
+         */
+        GzipCompression( boolean shuffle ) {
+            super( shuffle ? "GZIP_2" : "GZIP_1" );
+            shuffle_ = shuffle;
+        }
+
+        public boolean canCompress( char formatChar ) {
+            return true;
+        }
+
+        public byte[] compress( byte[] data, int elSize, int nel )
+                throws IOException {
+            if ( shuffle_ && elSize > 1 ) {
+                data = shuffle( data, elSize, nel );
+            }
+            ByteArrayOutputStream bout =
+                new ByteArrayOutputStream( data.length / 2 + 64 );
+            GZIPOutputStream zout = new GZIPOutputStream( bout );
+            zout.write( data );
+            zout.close();
+            return bout.toByteArray();
+        }
+
+        public byte[] decompress( byte[] cdata, int elSize, int nel )
+                throws IOException {
+            InputStream in =
+                new GZIPInputStream( new ByteArrayInputStream( cdata ) );
+            byte[] data = readFully( in, elSize * nel );
+            in.close();
+            return shuffle_ && elSize > 1 ? unshuffle( data, elSize, nel )
+                                          : data;
+        }
+
+        /**
+         * Rearranges an array of elements so that the first byte of
+         * every element comes first, then the second byte of every element,
+         * and so on.
+         *
+         * @param  data  input array
+         * @param  elSize  bytes per element
+         * @param  nel   number of elements
+         * @return   shuffled array
+         */
+        private static byte[] shuffle( byte[] data, int elSize, int nel ) {
+            byte[] out = new byte[ data.length ];
+            for ( int ib = 0; ib < elSize; ib++ ) {
+                int jo = ib * nel;
+                for ( int ie = 0; ie < nel; ie++ ) {
+                    out[ jo + ie ] = data[ ie * elSize + ib ];
+                }
+            }
+            return out;
+        }
+
+        /**
+         * Reverses the effect of {@link #shuffle}.
+         *
+         * @param  data  shuffled array
+         * @param  elSize  bytes per element
+         * @param  nel   number of elements
+         * @return   unshuffled array
+         */
+        private static byte[] unshuffle( byte[] data, int elSize, int nel ) {
+            byte[] out = new byte[ data.length ];
+            for ( int ib = 0; ib < elSize; ib++ ) {
+                int ji = ib * nel;
+                for ( int ie = 0; ie < nel; ie++ ) {
+                    out[ ie * elSize + ib ] = data[ ji + ie ];
+                }
+            }
+            return out;
+        }
+    }
+}
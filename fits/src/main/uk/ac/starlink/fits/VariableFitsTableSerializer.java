@@ -197,7 +197,7 @@ public class VariableFitsTableSerializer extends StandardFitsTableSerializer {
      * @param   dataOut  data output object
      * @return   stream which writes to the same place as <code>dataOut</code>
      */
-    private static OutputStream toStream( final DataOutput dataOut ) {
+    static OutputStream toStream( final DataOutput dataOut ) {
         if ( dataOut instanceof OutputStream ) {
             return (OutputStream) dataOut;
         }
@@ -12,6 +12,7 @@ import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCardException;
 import nom.tam.util.BufferedDataOutputStream;
 import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ColumnData;
 import uk.ac.starlink.table.ColumnStarTable;
 import uk.ac.starlink.table.RowSequence;
@@ -54,6 +55,35 @@ public class ColumnReaderTest extends TestCase {
         checkIntegersTable( inTable );
     }
 
+    /**
+     * Writes a table then reads it back a block at a time, both as
+     * a BINTABLE and as a colfits table.
+     */
+    public void testBlockRead() throws IOException, HeaderCardException {
+        File f = File.createTempFile( "table", ".fits" );
+        f.deleteOnExit();
+        OutputStream out = new FileOutputStream( f );
+        writeIntegersBintable( 23, out );
+        out.close();
+        StarTable inTable = new FitsTableBuilder()
+                           .makeStarTable( new FileDataSource( f ), true,
+                                           StoragePolicy.PREFER_MEMORY );
+        checkIntegerBlocks( inTable, 5 );
+        checkIntegerBlocks( inTable, 100 );
+
+        File cf = File.createTempFile( "table", ".colfits" );
+        cf.deleteOnExit();
+        new ColFitsTableWriter().writeStarTable( inTable, cf.toString(),
+                                                 new StarTableOutput() );
+        StarTable colTable = new ColFitsTableBuilder()
+                            .makeStarTable( new FileDataSource( cf ), true,
+                                            StoragePolicy.PREFER_MEMORY );
+        checkIntegerBlocks( colTable, 5 );
+        checkIntegerBlocks( colTable, 100 );
+        f.delete();
+        cf.delete();
+    }
+
     /**
      * Reads a table written by an earlier incarnation of this program,
      * and tests its contents.
@@ -155,6 +185,58 @@ public class ColumnReaderTest extends TestCase {
         }
     }
 
+    /**
+     * Tests the contents of a table as for {@link #checkIntegersTable},
+     * but using block reads.
+     *
+     * @param  table  specially prepared input table
+     * @param  blockRows  number of rows per block
+     */
+    private void checkIntegerBlocks( StarTable table, int blockRows )
+            throws IOException {
+        int ncol = table.getColumnCount();
+        RowSequence rseq = table.getRowSequence();
+        assertTrue( rseq instanceof BlockRowSequence );
+        BlockRowSequence bseq = (BlockRowSequence) rseq;
+        double[] dbuf = new double[ blockRows ];
+        Object[] obuf = new Object[ blockRows ];
+        long irow0 = 0;
+        for ( int n; ( n = bseq.nextBlock( blockRows ) ) > 0; ) {
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                Class clazz = table.getColumnInfo( icol ).getContentClass();
+                if ( Number.class.isAssignableFrom( clazz ) ) {
+                    bseq.getDoubleBlock( icol, dbuf, 0 );
+                    for ( int ir = 0; ir < n; ir++ ) {
+                        assertEquals( (double) ( irow0 + ir ), dbuf[ ir ] );
+                    }
+                }
+                else {
+                    bseq.getObjectBlock( icol, obuf, 0 );
+                    for ( int ir = 0; ir < n; ir++ ) {
+                        assertEquals( (double) ( irow0 + ir ),
+                                      ((Number) Array.get( obuf[ ir ], 0 ))
+                                               .doubleValue() );
+                    }
+                }
+            }
+            irow0 += n;
+
+            /* Interleave some single-row reads. */
+            if ( bseq.next() ) {
+                for ( int icol = 0; icol < ncol; icol += 3 ) {
+                    Object oval = bseq.getCell( icol );
+                    if ( oval instanceof Number ) {
+                        assertEquals( (double) irow0,
+                                      ((Number) oval).doubleValue() );
+                    }
+                }
+                irow0++;
+            }
+        }
+        assertEquals( table.getRowCount(), irow0 );
+        bseq.close();
+    }
+
     /**
      * Writes a specially prepared FITS table which exercises as much of
      * the TZERO/TSCAL code in ColumnReader as possible.
@@ -0,0 +1,448 @@
+package uk.ac.starlink.fits;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.net.URL;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.Header;
+import nom.tam.util.ArrayDataInput;
+import nom.tam.util.BufferedDataInputStream;
+import uk.ac.starlink.array.AccessMode;
+import uk.ac.starlink.array.ArrayAccess;
+import uk.ac.starlink.array.ChunkStepper;
+import uk.ac.starlink.array.NDArray;
+import uk.ac.starlink.array.NDShape;
+import uk.ac.starlink.array.Type;
+import uk.ac.starlink.util.TestCase;
+
+public class CompressedImageTest extends TestCase {
+
+    private static final int ZBLANK = -2147483647;
+    private static final int ZERO_VALUE = -2147483646;
+    private static final double QSCALE = 0.01;
+
+    public CompressedImageTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.fits" ).setLevel( Level.WARNING );
+    }
+
+    public void testRandoms() {
+        float[] rand = CompressedFitsArrayImpl.getRandomValues();
+        assertEquals( CompressedFitsArrayImpl.N_RANDOM, rand.length );
+        assertEquals( (float) ( 16807.0 / 2147483647.0 ), rand[ 0 ] );
+        for ( int i = 0; i < rand.length; i++ ) {
+            assertTrue( rand[ i ] > 0 && rand[ i ] < 1 );
+        }
+    }
+
+    public void testIntegerImages() throws IOException, FitsException {
+        long[] dims = new long[] { 37, 23, 3 };
+        int[] tdims = new int[] { 10, 7, 2 };
+        int npix = (int) new NDShape( dims ).getNumPixels();
+        int[] bitpixes = new int[] { 8, 16, 32 };
+        Type[] types = new Type[] { Type.BYTE, Type.SHORT, Type.INT };
+        TileCompression[] comps = TileCompression.getKnownCompressions();
+        Random rnd = new Random( 2331L );
+        for ( int ib = 0; ib < bitpixes.length; ib++ ) {
+            int bitpix = bitpixes[ ib ];
+            double[] data = new double[ npix ];
+            int max = bitpix == 8 ? 100 : bitpix == 16 ? 30000 : 2000000000;
+            for ( int i = 0; i < npix; i++ ) {
+                data[ i ] = i % 5 == 0 ? rnd.nextInt( max )
+                                       : ( i * 3 ) % max;
+            }
+            for ( int ic = 0; ic < comps.length; ic++ ) {
+                File file = writeImage( dims, tdims, bitpix, comps[ ic ],
+                                        null, data );
+                NDArray nda = readImage( file );
+                assertEquals( types[ ib ], nda.getType() );
+                assertTrue( nda.getShape().sameShape( new NDShape( dims ) ) );
+                checkData( nda, data, 0.0 );
+                nda.close();
+            }
+        }
+
+        /* Default tiling (one row per tile), non-random input. */
+        double[] data = new double[ npix ];
+        for ( int i = 0; i < npix; i++ ) {
+            data[ i ] = i - 1000;
+        }
+        File file = writeImage( dims, null, 16, TileCompression.RICE_1,
+                                null, data );
+        ArrayDataInput strm =
+            new BufferedDataInputStream( new FileInputStream( file ) );
+        FitsConstants.skipHDUs( strm, 1 );
+        NDArray nda = FitsArrayBuilder.getInstance()
+                     .makeNDArray( strm, AccessMode.READ );
+        assertTrue( nda.getShape().sameShape( new NDShape( dims ) ) );
+        checkData( nda, data, 0.0 );
+        nda.close();
+
+        /* Compressed images are read-only. */
+        try {
+            FitsArrayBuilder.getInstance()
+                           .makeNDArray( getURL( file ), AccessMode.UPDATE );
+            fail();
+        }
+        catch ( IOException e ) {
+            // OK
+        }
+    }
+
+    public void testFloatImages() throws IOException, FitsException {
+        long[] dims = new long[] { 50, 41 };
+        int[] tdims = new int[] { 16, 16 };
+        int npix = (int) new NDShape( dims ).getNumPixels();
+        double[] data = new double[ npix ];
+        Random rnd = new Random( 991L );
+        for ( int i = 0; i < npix; i++ ) {
+            data[ i ] = i % 29 == 0 ? Double.NaN
+                      : i % 31 == 0 ? 0.0
+                                    : (float) ( 100 * rnd.nextGaussian() );
+        }
+        String[] quants = new String[] {
+            "NO_DITHER", "SUBTRACTIVE_DITHER_1", "SUBTRACTIVE_DITHER_2",
+        };
+        TileCompression[] comps = new TileCompression[] {
+            TileCompression.RICE_1, TileCompression.GZIP_2,
+        };
+        for ( int iq = 0; iq < quants.length; iq++ ) {
+            for ( int ic = 0; ic < comps.length; ic++ ) {
+                for ( int bitpix = -32; bitpix >= -64; bitpix -= 32 ) {
+                    File file = writeImage( dims, tdims, bitpix, comps[ ic ],
+                                            quants[ iq ], data );
+                    NDArray nda = readImage( file );
+                    assertEquals( bitpix == -32 ? Type.FLOAT : Type.DOUBLE,
+                                  nda.getType() );
+                    checkData( nda, data, QSCALE * 0.5001 );
+                    if ( iq == 2 ) {
+                        Object buf = nda.getType().newArray( npix );
+                        ArrayAccess acc = nda.getAccess();
+                        acc.read( buf, 0, npix );
+                        acc.close();
+                        assertEquals( 0.0, Array.getDouble( buf, 31 ) );
+                    }
+                    nda.close();
+                }
+            }
+        }
+
+        /* Lossless compression of floating point data. */
+        for ( int bitpix = -32; bitpix >= -64; bitpix -= 32 ) {
+            File file = writeImage( dims, tdims, bitpix,
+                                    TileCompression.GZIP_1, null, data );
+            NDArray nda = readImage( file );
+            checkData( nda, data, 0.0 );
+            nda.close();
+        }
+    }
+
+    public void testUnsupported() throws IOException, FitsException {
+        long[] dims = new long[] { 20, 10 };
+        double[] data = new double[ 200 ];
+        String[] cmptypes = new String[] { "HCOMPRESS_1", "PLIO_1" };
+        for ( int ic = 0; ic < cmptypes.length; ic++ ) {
+            File file = writeImage( dims, null, 16, TileCompression.RICE_1,
+                                    cmptypes[ ic ], null, data );
+            try {
+                readImage( file );
+                fail();
+            }
+            catch ( IOException e ) {
+
+                /* This text is quoted in the FitsArrayBuilder javadocs. */
+                assertEquals( "Unsupported image compression type "
+                            + cmptypes[ ic ] + "; supported types are "
+                            + "NOCOMPRESS, GZIP_1, GZIP_2, RICE_1",
+                              getRootMessage( e ) );
+            }
+        }
+    }
+
+    private static String getRootMessage( Throwable e ) {
+        while ( e.getCause() != null ) {
+            e = e.getCause();
+        }
+        return e.getMessage();
+    }
+
+    private static URL getURL( File file ) throws IOException {
+        return new URL( file.toURI().toURL().toString() + "[1]" );
+    }
+
+    private static NDArray readImage( File file ) throws IOException {
+        NDArray nda = FitsArrayBuilder.getInstance()
+                     .makeNDArray( getURL( file ), AccessMode.READ );
+        assertTrue( nda.isRandom() );
+        assertTrue( ! nda.isWritable() );
+        return nda;
+    }
+
+    /**
+     * Checks the content of an NDArray against expected values,
+     * reading the whole array sequentially and also random sections.
+     */
+    private void checkData( NDArray nda, double[] data, double tol )
+            throws IOException {
+        int npix = data.length;
+        Type type = nda.getType();
+        Object buf = type.newArray( npix );
+        ArrayAccess acc = nda.getAccess();
+        for ( ChunkStepper cit = new ChunkStepper( npix, 23 );
+              cit.hasNext(); cit.next() ) {
+            acc.read( buf, (int) cit.getBase(), cit.getSize() );
+        }
+        for ( int i = 0; i < npix; i++ ) {
+            assertPixel( data[ i ], Array.getDouble( buf, i ), type, tol );
+        }
+        Random rnd = new Random( 55L );
+        Object sbuf = type.newArray( 100 );
+        for ( int j = 0; j < 100; j++ ) {
+            int off = rnd.nextInt( npix );
+            int n = Math.min( npix - off, rnd.nextInt( 100 ) + 1 );
+            acc.setOffset( off );
+            acc.read( sbuf, 0, n );
+            for ( int i = 0; i < n; i++ ) {
+                assertPixel( data[ off + i ], Array.getDouble( sbuf, i ),
+                             type, tol );
+            }
+        }
+        acc.close();
+    }
+
+    private void assertPixel( double expected, double actual, Type type,
+                              double tol ) {
+        if ( type == Type.BYTE ) {
+            expected = (byte) expected;
+        }
+        else if ( type == Type.SHORT ) {
+            expected = (short) expected;
+        }
+        if ( Double.isNaN( expected ) ) {
+            assertTrue( Double.isNaN( actual ) );
+        }
+        else {
+            assertEquals( expected, actual, tol );
+        }
+    }
+
+    /**
+     * Writes a FITS file containing an empty primary HDU followed by
+     * an image compressed using the tiled image compression convention.
+     *
+     * @param  dims  image dimensions
+     * @param  tdims  tile dimensions, or null for rows
+     * @param  bitpix  uncompressed image BITPIX value
+     * @param  comp   compression algorithm
+     * @param  zquant  quantization method for floating point data,
+     *                 or null for lossless
+     * @param  data   pixel values in column-major order
+     * @return  new temporary file
+     */
+    private static File writeImage( long[] dims, int[] tdims, int bitpix,
+                                    TileCompression comp, String zquant,
+                                    double[] data )
+            throws IOException, FitsException {
+        return writeImage( dims, tdims, bitpix, comp, comp.getName(),
+                           zquant, data );
+    }
+
+    /**
+     * Writes a FITS file containing a compressed image,
+     * with a given value for the ZCMPTYPE header.
+     *
+     * @param  dims  image dimensions
+     * @param  tdims  tile dimensions, or null for rows
+     * @param  bitpix  uncompressed image BITPIX value
+     * @param  comp   compression algorithm used for the tile data
+     * @param  cmptype  value written to the ZCMPTYPE header
+     * @param  zquant  quantization method for floating point data,
+     *                 or null for lossless
+     * @param  data   pixel values in column-major order
+     * @return  new temporary file
+     */
+    private static File writeImage( long[] dims, int[] tdims, int bitpix,
+                                    TileCompression comp, String cmptype,
+                                    String zquant, double[] data )
+            throws IOException, FitsException {
+        int ndim = dims.length;
+        if ( tdims == null ) {
+            tdims = new int[ ndim ];
+            tdims[ 0 ] = (int) dims[ 0 ];
+            for ( int i = 1; i < ndim; i++ ) {
+                tdims[ i ] = 1;
+            }
+        }
+        boolean quantized = zquant != null;
+        int elSize = quantized ? 4 : Math.abs( bitpix ) / 8;
+        int[] ntiles = new int[ ndim ];
+        int ntile = 1;
+        for ( int i = 0; i < ndim; i++ ) {
+            ntiles[ i ] = (int) ( ( dims[ i ] + tdims[ i ] - 1 ) / tdims[ i ] );
+            ntile *= ntiles[ i ];
+        }
+        float[] rand = CompressedFitsArrayImpl.getRandomValues();
+        int nrand = rand.length;
+        int zdither0 = 7;
+
+        /* Compress each tile. */
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        int[] descs = new int[ ntile * 2 ];
+        double[] zeros = new double[ ntile ];
+        int maxLeng = 0;
+        for ( int itile = 0; itile < ntile; itile++ ) {
+            long[] base = new long[ ndim ];
+            int[] tdim = new int[ ndim ];
+            int tpix = 1;
+            int it = itile;
+            for ( int i = 0; i < ndim; i++ ) {
+                base[ i ] = ( it % ntiles[ i ] ) * tdims[ i ];
+                it /= ntiles[ i ];
+                tdim[ i ] = (int) Math.min( tdims[ i ], dims[ i ] - base[ i ] );
+                tpix *= tdim[ i ];
+            }
+            double[] tdata = new double[ tpix ];
+            int[] pos = new int[ ndim ];
+            for ( int ip = 0; ip < tpix; ip++ ) {
+                long off = 0;
+                for ( int i = ndim - 1; i >= 0; i-- ) {
+                    off = off * dims[ i ] + base[ i ] + pos[ i ];
+                }
+                tdata[ ip ] = data[ (int) off ];
+                for ( int i = 0; i < ndim && ++pos[ i ] == tdim[ i ]; i++ ) {
+                    pos[ i ] = 0;
+                }
+            }
+            double zero = 0;
+            for ( int ip = 0; ip < tpix && quantized; ip++ ) {
+                if ( ! Double.isNaN( tdata[ ip ] ) ) {
+                    zero = tdata[ ip ];
+                    break;
+                }
+            }
+            zeros[ itile ] = zero;
+            ByteArrayOutputStream tbuf = new ByteArrayOutputStream();
+            DataOutputStream tout = new DataOutputStream( tbuf );
+            boolean dither = quantized && zquant.startsWith( "SUBTRACTIVE" );
+            int iseed = ( itile + zdither0 - 1 ) % nrand;
+            int nextrand = (int) ( rand[ iseed ] * 500 );
+            for ( int ip = 0; ip < tpix; ip++ ) {
+                double v = tdata[ ip ];
+                if ( quantized ) {
+                    double r = dither ? rand[ nextrand ] : 0.5;
+                    int iv;
+                    if ( Double.isNaN( v ) ) {
+                        iv = ZBLANK;
+                    }
+                    else if ( v == 0.0 &&
+                              "SUBTRACTIVE_DITHER_2".equals( zquant ) ) {
+                        iv = ZERO_VALUE;
+                    }
+                    else {
+                        iv = (int) Math.round( ( v - zero ) / QSCALE
+                                               + r - 0.5 );
+                    }
+                    tout.writeInt( iv );
+                    if ( dither && ++nextrand == nrand ) {
+                        iseed = ( iseed + 1 ) % nrand;
+                        nextrand = (int) ( rand[ iseed ] * 500 );
+                    }
+                }
+                else if ( bitpix == -32 ) {
+                    tout.writeFloat( (float) v );
+                }
+                else if ( bitpix == -64 ) {
+                    tout.writeDouble( v );
+                }
+                else if ( bitpix == 8 ) {
+                    tout.writeByte( (int) v );
+                }
+                else if ( bitpix == 16 ) {
+                    tout.writeShort( (int) v );
+                }
+                else {
+                    tout.writeInt( (int) v );
+                }
+            }
+            tout.flush();
+            byte[] cdata = comp.compress( tbuf.toByteArray(), elSize, tpix );
+            descs[ itile * 2 ] = cdata.length;
+            descs[ itile * 2 + 1 ] = heap.size();
+            heap.write( cdata );
+            maxLeng = Math.max( maxLeng, cdata.length );
+        }
+
+        /* Prepare the header. */
+        int rowLeng = quantized ? 24 : 8;
+        Header hdr = new Header();
+        hdr.addValue( "XTENSION", "BINTABLE", "" );
+        hdr.addValue( "BITPIX", 8, "" );
+        hdr.addValue( "NAXIS", 2, "" );
+        hdr.addValue( "NAXIS1", rowLeng, "" );
+        hdr.addValue( "NAXIS2", ntile, "" );
+        hdr.addValue( "PCOUNT", heap.size(), "" );
+        hdr.addValue( "GCOUNT", 1, "" );
+        hdr.addValue( "TFIELDS", quantized ? 3 : 1, "" );
+        hdr.addValue( "TTYPE1", "COMPRESSED_DATA", "" );
+        hdr.addValue( "TFORM1", "1PB(" + maxLeng + ")", "" );
+        if ( quantized ) {
+            hdr.addValue( "TTYPE2", "ZSCALE", "" );
+            hdr.addValue( "TFORM2", "1D", "" );
+            hdr.addValue( "TTYPE3", "ZZERO", "" );
+            hdr.addValue( "TFORM3", "1D", "" );
+        }
+        hdr.addValue( "ZIMAGE", true, "" );
+        hdr.addValue( "ZBITPIX", bitpix, "" );
+        hdr.addValue( "ZNAXIS", ndim, "" );
+        for ( int i = 0; i < ndim; i++ ) {
+            hdr.addValue( "ZNAXIS" + ( i + 1 ), dims[ i ], "" );
+        }
+        for ( int i = 0; i < ndim; i++ ) {
+            hdr.addValue( "ZTILE" + ( i + 1 ), tdims[ i ], "" );
+        }
+        hdr.addValue( "ZCMPTYPE", cmptype, "" );
+        hdr.addValue( "ZNAME1", "BLOCKSIZE", "" );
+        hdr.addValue( "ZVAL1", 32, "" );
+        hdr.addValue( "ZNAME2", "BYTEPIX", "" );
+        hdr.addValue( "ZVAL2", elSize, "" );
+        if ( quantized ) {
+            hdr.addValue( "ZQUANTIZ", zquant, "" );
+            hdr.addValue( "ZDITHER0", zdither0, "" );
+            hdr.addValue( "ZBLANK", ZBLANK, "" );
+        }
+        hdr.insertCommentStyle( "END", "" );
+
+        /* Write the file. */
+        File file = File.createTempFile( "zimage", ".fits.fz" );
+        file.deleteOnExit();
+        DataOutputStream out =
+            new DataOutputStream(
+                new BufferedOutputStream( new FileOutputStream( file ) ) );
+        FitsConstants.writeEmptyPrimary( out );
+        FitsConstants.writeHeader( out, hdr );
+        for ( int itile = 0; itile < ntile; itile++ ) {
+            out.writeInt( descs[ itile * 2 ] );
+            out.writeInt( descs[ itile * 2 + 1 ] );
+            if ( quantized ) {
+                out.writeDouble( QSCALE );
+                out.writeDouble( zeros[ itile ] );
+            }
+        }
+        heap.writeTo( out );
+        int over = ( ntile * rowLeng + heap.size() ) % 2880;
+        if ( over > 0 ) {
+            out.write( new byte[ 2880 - over ] );
+        }
+        out.close();
+        return file;
+    }
+}
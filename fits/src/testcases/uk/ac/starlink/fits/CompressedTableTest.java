@@ -0,0 +1,225 @@
+package uk.ac.starlink.fits;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowListStarTable;
+import uk.ac.starlink.table.RowStore;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StarTableOutput;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.util.FileDataSource;
+import uk.ac.starlink.util.TestCase;
+
+public class CompressedTableTest extends TestCase {
+
+    public CompressedTableTest( String name ) {
+        super( name );
+        Logger.getLogger( "uk.ac.starlink.fits" ).setLevel( Level.WARNING );
+    }
+
+    public void testRiceFormat() throws IOException {
+
+        /* Short block of zero differences. */
+        byte[] zeros = new byte[ 32 * 4 ];
+        byte[] z = new RiceCodec( 4, 32 ).compress( zeros, 32 );
+        assertArrayEquals( new byte[ 5 ], z );
+
+        /* Normal coding with fs=0: code 0001, then 1, then 001. */
+        byte[] data = new byte[] { 0, 10, 0, 11 };
+        byte[] c = new RiceCodec( 2, 32 ).compress( data, 2 );
+        assertArrayEquals( new byte[] { 0, 10, 0x19 }, c );
+        assertArrayEquals( data, new RiceCodec( 2, 32 ).decompress( c, 2 ) );
+    }
+
+    public void testRiceRoundTrip() throws IOException {
+        Random rnd = new Random( 44101L );
+        int[] bytepixes = new int[] { 1, 2, 4 };
+        int[] counts = new int[] { 1, 2, 31, 32, 33, 100, 1000 };
+        for ( int ib = 0; ib < bytepixes.length; ib++ ) {
+            int bytepix = bytepixes[ ib ];
+            RiceCodec codec = new RiceCodec( bytepix, 32 );
+            for ( int ic = 0; ic < counts.length; ic++ ) {
+                int nval = counts[ ic ];
+                for ( int mode = 0; mode < 5; mode++ ) {
+                    byte[] data = new byte[ nval * bytepix ];
+                    for ( int i = 0; i < nval; i++ ) {
+                        int v;
+                        switch ( mode ) {
+                            case 0:
+                                v = 23;
+                                break;
+                            case 1:
+                                v = i / 3;
+                                break;
+                            case 2:
+                                v = rnd.nextInt();
+                                break;
+                            case 3:
+                                v = i % 2 == 0 ? Integer.MIN_VALUE
+                                               : Integer.MAX_VALUE;
+                                break;
+                            default:
+                                v = i + rnd.nextInt( 8 ) - 4;
+                        }
+                        for ( int j = bytepix - 1; j >= 0; j-- ) {
+                            data[ i * bytepix + j ] = (byte) v;
+                            v >>= 8;
+                        }
+                    }
+                    byte[] cdata = codec.compress( data, nval );
+                    assertArrayEquals( data, codec.decompress( cdata, nval ) );
+                    if ( mode == 0 && nval >= 32 ) {
+                        assertTrue( cdata.length < data.length );
+                    }
+                }
+            }
+        }
+    }
+
+    public void testGzip() throws IOException {
+        byte[] data = new byte[ 8 * 100 ];
+        for ( int i = 0; i < data.length; i++ ) {
+            data[ i ] = (byte) ( i * 7 );
+        }
+        TileCompression[] comps = TileCompression.getKnownCompressions();
+        for ( int ic = 0; ic < comps.length; ic++ ) {
+            TileCompression comp = comps[ ic ];
+            assertEquals( comp,
+                          TileCompression.getCompression( comp.getName()
+                                                         .toLowerCase() ) );
+            int elSize = comp == TileCompression.RICE_1 ? 4 : 8;
+            int nel = data.length / elSize;
+            byte[] cdata = comp.compress( data, elSize, nel );
+            assertArrayEquals( data, comp.decompress( cdata, elSize, nel ) );
+        }
+        assertNull( TileCompression.getCompression( "HCOMPRESS_1" ) );
+    }
+
+    public void testTable() throws IOException {
+        StarTable t0 = createTable( 103 );
+        TileCompression[] comps = TileCompression.getKnownCompressions();
+        for ( int ic = 0; ic < comps.length; ic++ ) {
+            CompressedFitsTableWriter writer =
+                new CompressedFitsTableWriter( comps[ ic ], true );
+            writer.setTileRows( 10 );
+            exerciseTable( t0, writer );
+        }
+        exerciseTable( t0, new CompressedFitsTableWriter() );
+        exerciseTable( createTable( 0 ), new CompressedFitsTableWriter() );
+
+        /* Compressed output is smaller for compressible data. */
+        StarTable t1 = createTable( 5000 );
+        File zfile = writeTable( t1, new CompressedFitsTableWriter() );
+        File ufile = writeTable( t1, new FitsTableWriter() );
+        assertTrue( zfile.length() < ufile.length() );
+    }
+
+    private void exerciseTable( StarTable t0,
+                                CompressedFitsTableWriter writer )
+            throws IOException {
+        File file = writeTable( t0, writer );
+        int ncol = t0.getColumnCount();
+        long nrow = t0.getRowCount();
+
+        /* Random access read. */
+        StarTable t1 = new FitsTableBuilder()
+                      .makeStarTable( new FileDataSource( file ), false,
+                                      StoragePolicy.PREFER_MEMORY );
+        assertTrue( t1.isRandom() );
+        assertEquals( nrow, t1.getRowCount() );
+        assertEquals( ncol, t1.getColumnCount() );
+        for ( int icol = 0; icol < ncol; icol++ ) {
+            assertEquals( t0.getColumnInfo( icol ).getName(),
+                          t1.getColumnInfo( icol ).getName() );
+            assertEquals( t0.getColumnInfo( icol ).getContentClass(),
+                          t1.getColumnInfo( icol ).getContentClass() );
+        }
+        Random rnd = new Random( 901L );
+        for ( int i = 0; i < 200 && nrow > 0; i++ ) {
+            long irow = (long) rnd.nextInt( (int) nrow );
+            int icol = rnd.nextInt( ncol );
+            assertCellEquals( t0.getCell( irow, icol ),
+                              t1.getCell( irow, icol ) );
+        }
+        assertTableEquals( t0, t1 );
+        ((BintableStarTable) t1).close();
+
+        /* Streamed read. */
+        RowStore store = StoragePolicy.PREFER_MEMORY.makeRowStore();
+        InputStream in = new FileInputStream( file );
+        new FitsTableBuilder().streamStarTable( in, store, null );
+        in.close();
+        assertTableEquals( t0, store.getStarTable() );
+    }
+
+    private void assertTableEquals( StarTable t0, StarTable t1 )
+            throws IOException {
+        int ncol = t0.getColumnCount();
+        long nrow = t0.getRowCount();
+        assertEquals( nrow, t1.getRowCount() );
+        for ( long irow = 0; irow < nrow; irow++ ) {
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                assertCellEquals( t0.getCell( irow, icol ),
+                                  t1.getCell( irow, icol ) );
+            }
+        }
+    }
+
+    private void assertCellEquals( Object v0, Object v1 ) {
+        if ( v0 != null && v0.getClass().isArray() ) {
+            assertArrayEquals( v0, v1 );
+        }
+        else {
+            assertEquals( v0, v1 );
+        }
+    }
+
+    private static File writeTable( StarTable table,
+                                    AbstractFitsTableWriter writer )
+            throws IOException {
+        File file = File.createTempFile( "ztable", ".fits" );
+        file.deleteOnExit();
+        writer.writeStarTable( table, file.toString(),
+                              new StarTableOutput() );
+        return file;
+    }
+
+    private static StarTable createTable( int nrow ) {
+        ColumnInfo[] infos = new ColumnInfo[] {
+            new ColumnInfo( "b", Byte.class, null ),
+            new ColumnInfo( "s", Short.class, null ),
+            new ColumnInfo( "i", Integer.class, null ),
+            new ColumnInfo( "l", Long.class, null ),
+            new ColumnInfo( "f", Float.class, null ),
+            new ColumnInfo( "d", Double.class, null ),
+            new ColumnInfo( "z", Boolean.class, null ),
+            new ColumnInfo( "t", String.class, null ),
+            new ColumnInfo( "ia", int[].class, null ),
+        };
+        infos[ 7 ].setElementSize( 6 );
+        infos[ 8 ].setShape( new int[] { 3 } );
+        RowListStarTable table = new RowListStarTable( infos );
+        Random rnd = new Random( 23L );
+        for ( int i = 0; i < nrow; i++ ) {
+            table.addRow( new Object[] {
+                new Byte( (byte) ( i % 50 ) ),
+                new Short( (short) ( 1000 + i / 4 ) ),
+                new Integer( i % 17 == 0 ? Integer.MIN_VALUE
+                                         : i * 100 + rnd.nextInt( 10 ) ),
+                new Long( i * 1000000007L ),
+                new Float( i * 0.5f ),
+                new Double( rnd.nextGaussian() ),
+                Boolean.valueOf( i % 3 == 0 ),
+                "r" + i,
+                new int[] { i, -i, i % 5 },
+            } );
+        }
+        return table;
+    }
+}
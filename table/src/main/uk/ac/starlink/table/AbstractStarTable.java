@@ -168,6 +168,24 @@ public abstract class AbstractStarTable implements StarTable {
         return row;
     }
 
+    /**
+     * The <code>AbstractStarTable</code> implementation of this method
+     * returns the result of
+     * {@link Tables#getDefaultRowSplittable Tables.getDefaultRowSplittable}.
+     */
+    public RowSplittable getRowSplittable() throws IOException {
+        return Tables.getDefaultRowSplittable( this );
+    }
+
+    /**
+     * The <code>AbstractStarTable</code> implementation of this method
+     * returns the result of
+     * {@link Tables#getDefaultRowAccess Tables.getDefaultRowAccess}.
+     */
+    public RowAccess getRowAccess() throws IOException {
+        return Tables.getDefaultRowAccess( this );
+    }
+
     abstract public ColumnInfo getColumnInfo( int icol );
     abstract public int getColumnCount();
     abstract public long getRowCount();
@@ -0,0 +1,87 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+
+/**
+ * RowSequence which can additionally supply the values of a column
+ * for a block of consecutive rows in a single call.
+ * Implementations which have columnar or primitive-typed data
+ * available can fill primitive arrays directly, which avoids
+ * creating a wrapper object for every numeric cell.
+ *
+ * <p>This is an optional interface; a consumer can test whether
+ * a sequence acquired from {@link StarTable#getRowSequence} implements it,
+ * or use {@link Tables#getBlockRowSequence} to get an instance for
+ * any sequence.
+ * Typical usage might look like this:
+ * <pre>
+ *     BlockRowSequence bseq =
+ *         Tables.getBlockRowSequence( table.getRowSequence() );
+ *     double[] buf = new double[ 1024 ];
+ *     try {
+ *         for ( int n; ( n = bseq.nextBlock( buf.length ) ) &gt; 0; ) {
+ *             bseq.getDoubleBlock( icol, buf, 0 );
+ *             for ( int i = 0; i &lt; n; i++ ) {
+ *                 double value = buf[ i ];
+ *                    ...
+ *             }
+ *         }
+ *     }
+ *     finally {
+ *         bseq.close();
+ *     }
+ * </pre>
+ *
+ * <p>Calls to {@link #next} and {@link #nextBlock} may be freely mixed.
+ * Following a call to <code>nextBlock</code>, the block getter methods
+ * may be used but there is no current row for the purposes of
+ * {@link #getCell} and {@link #getRow} until <code>next</code>
+ * is called again.
+ * The values for any given column may be retrieved at most once
+ * for each block; the effect of retrieving them a second time is undefined.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public interface BlockRowSequence extends RowSequence {
+
+    /**
+     * Advances over a block of consecutive rows.
+     * The block starts at the row following the current one,
+     * and contains up to <code>maxRows</code> rows;
+     * it will only contain fewer if the end of the sequence is reached.
+     *
+     * @param  maxRows  maximum number of rows in the block, greater than 0
+     * @return  number of rows in the block; zero if there are no more rows
+     * @throws  IOException  if there is some error
+     */
+    int nextBlock( int maxRows ) throws IOException;
+
+    /**
+     * Copies the values of a numeric column for the rows of the current
+     * block into a double array.
+     * Null values, and values which are not numeric, are represented as NaN.
+     *
+     * @param  icol  column index
+     * @param  buf   destination array
+     * @param  off   offset into <code>buf</code> of the value for the
+     *               first row of the block
+     * @throws  IOException  if there is an error reading the data
+     * @throws  IllegalStateException  if there is no current block
+     */
+    void getDoubleBlock( int icol, double[] buf, int off ) throws IOException;
+
+    /**
+     * Copies the values of a column for the rows of the current block
+     * into an object array.  The values are the same as would be
+     * returned by {@link #getCell} for each row.
+     *
+     * @param  icol  column index
+     * @param  buf   destination array
+     * @param  off   offset into <code>buf</code> of the value for the
+     *               first row of the block
+     * @throws  IOException  if there is an error reading the data
+     * @throws  IllegalStateException  if there is no current block
+     */
+    void getObjectBlock( int icol, Object[] buf, int off ) throws IOException;
+}
@@ -0,0 +1,166 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * RowSequence which reads its data a block at a time from a
+ * {@link BlockRowSequence}, and additionally provides the values of
+ * numeric cells as primitives.
+ * The values of a column are only read when they are first requested
+ * for a row in the current block, so columns which are never requested
+ * cost nothing.
+ *
+ * <p>Columns whose values can be represented exactly as doubles
+ * (see {@link Tables#isDoubleExact}) are read into primitive buffers,
+ * so if they are retrieved using {@link #getDoubleCell} no objects are
+ * created per cell.  Other columns are read as objects.
+ * Note that as a consequence, null values in floating point columns
+ * are returned from {@link #getCell} as NaN.
+ *
+ * <p>This is intended for use by row-at-a-time consumers of tables
+ * whose sequences implement <code>BlockRowSequence</code> natively;
+ * there is no benefit in using it with a sequence obtained from
+ * {@link Tables#getBlockRowSequence} that wraps an ordinary one.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class BufferedRowSequence implements RowSequence {
+
+    private final BlockRowSequence baseSeq_;
+    private final int blockRows_;
+    private final int ncol_;
+    private final Class[] clazzes_;
+    private final boolean[] isDouble_;
+    private final double[][] dbufs_;
+    private final Object[][] obufs_;
+    private final boolean[] loaded_;
+    private int nblock_;
+    private int irow_;
+
+    /** Default number of rows read in each block. */
+    public static final int DEFAULT_BLOCK_ROWS = 1024;
+
+    /**
+     * Constructs a sequence with a given block size.
+     *
+     * @param  table  table to which the base sequence belongs
+     * @param  baseSeq  base sequence, positioned before the first row
+     * @param  blockRows  number of rows read in each block
+     */
+    public BufferedRowSequence( StarTable table, BlockRowSequence baseSeq,
+                                int blockRows ) {
+        baseSeq_ = baseSeq;
+        blockRows_ = blockRows;
+        ncol_ = table.getColumnCount();
+        clazzes_ = new Class[ ncol_ ];
+        isDouble_ = new boolean[ ncol_ ];
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            clazzes_[ icol ] = table.getColumnInfo( icol ).getContentClass();
+            isDouble_[ icol ] = Tables.isDoubleExact( clazzes_[ icol ] );
+        }
+        dbufs_ = new double[ ncol_ ][];
+        obufs_ = new Object[ ncol_ ][];
+        loaded_ = new boolean[ ncol_ ];
+    }
+
+    /**
+     * Constructs a sequence with the default block size.
+     *
+     * @param  table  table to which the base sequence belongs
+     * @param  baseSeq  base sequence, positioned before the first row
+     */
+    public BufferedRowSequence( StarTable table, BlockRowSequence baseSeq ) {
+        this( table, baseSeq, DEFAULT_BLOCK_ROWS );
+    }
+
+    public boolean next() throws IOException {
+        if ( ++irow_ < nblock_ ) {
+            return true;
+        }
+        else {
+            nblock_ = baseSeq_.nextBlock( blockRows_ );
+            irow_ = 0;
+            Arrays.fill( loaded_, false );
+            return nblock_ > 0;
+        }
+    }
+
+    /**
+     * Indicates whether a given column is buffered as primitive doubles.
+     * If so, {@link #getDoubleCell} retrieves its values without
+     * creating objects.
+     *
+     * @param  icol  column index
+     * @return   true iff column values are stored as doubles
+     */
+    public boolean isDoubleColumn( int icol ) {
+        return isDouble_[ icol ];
+    }
+
+    /**
+     * Returns the value of a numeric cell in the current row as a double.
+     * Null or non-numeric values are returned as NaN.
+     *
+     * @param  icol  column index
+     * @return  numeric value of cell <code>icol</code> in the current row
+     */
+    public double getDoubleCell( int icol ) throws IOException {
+        checkRow();
+        if ( isDouble_[ icol ] ) {
+            if ( ! loaded_[ icol ] ) {
+                if ( dbufs_[ icol ] == null ) {
+                    dbufs_[ icol ] = new double[ blockRows_ ];
+                }
+                baseSeq_.getDoubleBlock( icol, dbufs_[ icol ], 0 );
+                loaded_[ icol ] = true;
+            }
+            return dbufs_[ icol ][ irow_ ];
+        }
+        else {
+            Object value = getCell( icol );
+            return value instanceof Number ? ((Number) value).doubleValue()
+                                           : Double.NaN;
+        }
+    }
+
+    public Object getCell( int icol ) throws IOException {
+        checkRow();
+        if ( isDouble_[ icol ] ) {
+            return Tables.doubleToNumber( getDoubleCell( icol ),
+                                          clazzes_[ icol ] );
+        }
+        else {
+            if ( ! loaded_[ icol ] ) {
+                if ( obufs_[ icol ] == null ) {
+                    obufs_[ icol ] = new Object[ blockRows_ ];
+                }
+                baseSeq_.getObjectBlock( icol, obufs_[ icol ], 0 );
+                loaded_[ icol ] = true;
+            }
+            return obufs_[ icol ][ irow_ ];
+        }
+    }
+
+    public Object[] getRow() throws IOException {
+        Object[] row = new Object[ ncol_ ];
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            row[ icol ] = getCell( icol );
+        }
+        return row;
+    }
+
+    public void close() throws IOException {
+        baseSeq_.close();
+    }
+
+    /**
+     * Throws an exception if there is no current row.
+     */
+    private void checkRow() {
+        if ( irow_ >= nblock_ ) {
+            throw new IllegalStateException( "No current row" );
+        }
+    }
+}
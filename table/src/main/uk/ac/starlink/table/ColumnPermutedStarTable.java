@@ -146,6 +146,45 @@ public class ColumnPermutedStarTable extends WrapperStarTable {
                };
     }
 
+    /**
+     * Returns a splittable based on the base table's splittable,
+     * so that this table can be split wherever the base table can.
+     */
+    public RowSplittable getRowSplittable() throws IOException {
+        return new PermutedRowSplittable( baseTable.getRowSplittable() );
+    }
+
+    /**
+     * Returns a row access based on the base table's row access.
+     */
+    public RowAccess getRowAccess() throws IOException {
+        final RowAccess baseAcc = baseTable.getRowAccess();
+        return new RowAccess() {
+            public void setRowIndex( long irow ) throws IOException {
+                baseAcc.setRowIndex( irow );
+            }
+            public Object getCell( int icol ) throws IOException {
+                return baseAcc.getCell( columnMap_[ icol ] );
+            }
+            public Object[] getRow() throws IOException {
+                if ( readRow_ ) {
+                    return permuteRow( baseAcc.getRow() );
+                }
+                else {
+                    int ncol = columnMap_.length;
+                    Object[] row = new Object[ ncol ];
+                    for ( int icol = 0; icol < ncol; icol++ ) {
+                        row[ icol ] = getCell( icol );
+                    }
+                    return row;
+                }
+            }
+            public void close() throws IOException {
+                baseAcc.close();
+            }
+        };
+    }
+
     public Object getCell( long irow, int icol ) throws IOException {
         return baseTable.getCell( irow, columnMap_[ icol ] );
     }
@@ -217,4 +256,44 @@ public class ColumnPermutedStarTable extends WrapperStarTable {
         assert j == nOut;
         return new ColumnPermutedStarTable( baseTable, colMap );
     }
+
+    /**
+     * RowSplittable implementation for this table.
+     */
+    private class PermutedRowSplittable extends WrapperRowSplittable {
+
+        /**
+         * Constructor.
+         *
+         * @param  baseSplit  splittable over the base table
+         */
+        PermutedRowSplittable( RowSplittable baseSplit ) {
+            super( baseSplit );
+        }
+
+        public RowSplittable split() {
+            RowSplittable baseSplit1 = baseSplit.split();
+            return baseSplit1 == null
+                 ? null
+                 : new PermutedRowSplittable( baseSplit1 );
+        }
+
+        public Object getCell( int icol ) throws IOException {
+            return baseSplit.getCell( columnMap_[ icol ] );
+        }
+
+        public Object[] getRow() throws IOException {
+            if ( readRow_ ) {
+                return permuteRow( baseSplit.getRow() );
+            }
+            else {
+                int ncol = columnMap_.length;
+                Object[] row = new Object[ ncol ];
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    row[ icol ] = getCell( icol );
+                }
+                return row;
+            }
+        }
+    }
 }
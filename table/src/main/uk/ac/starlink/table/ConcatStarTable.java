@@ -120,6 +120,30 @@ public class ConcatStarTable extends WrapperStarTable {
         return new ConcatRowSequence( getTableIterator() );
     }
 
+    /**
+     * If all the constituent tables are known, the returned splittable
+     * is based on their splittables, so that it can be split both between
+     * and within constituent tables.
+     * Otherwise, it does not split.
+     */
+    public RowSplittable getRowSplittable() throws IOException {
+        StarTable[] tables;
+        synchronized ( this ) {
+            tables = tableIt_ == null
+                   ? (StarTable[]) tableList_.toArray( new StarTable[ 0 ] )
+                   : null;
+        }
+        if ( tables == null || nrow_ < 0 ) {
+            return new SequentialRowSplittable( this );
+        }
+        long[] offsets = new long[ tables.length + 1 ];
+        for ( int it = 0; it < tables.length; it++ ) {
+            offsets[ it + 1 ] = offsets[ it ] + tables[ it ].getRowCount();
+        }
+        return new ConcatRowSplittable( tables, offsets, 0, tables.length,
+                                        null );
+    }
+
     /**
      * Checks whether a given table is compatible with the metadata of
      * this one.  The main thing to check is that the columns have 
@@ -351,4 +375,131 @@ public class ConcatStarTable extends WrapperStarTable {
             rseq_.close();
         }
     }
+
+    /**
+     * RowSplittable implementation which covers a contiguous range of
+     * constituent tables.
+     */
+    private static class ConcatRowSplittable implements RowSplittable {
+
+        private final StarTable[] tables_;
+        private final long[] offsets_;
+        private int itab_;
+        private final int iend_;
+        private RowSplittable rsplit_;
+        private boolean started_;
+
+        /**
+         * Constructor.
+         *
+         * @param  tables  all constituent tables
+         * @param  offsets  (tables.length+1)-element array giving the
+         *                  index of the first row of each table in the
+         *                  concatenation, followed by the total row count
+         * @param  itab   index of first table covered
+         * @param  iend   index of first table after those covered
+         * @param  rsplit  splittable to use for table <code>itab</code>,
+         *                 or null to use the whole of that table
+         */
+        ConcatRowSplittable( StarTable[] tables, long[] offsets,
+                             int itab, int iend, RowSplittable rsplit ) {
+            tables_ = tables;
+            offsets_ = offsets;
+            itab_ = itab;
+            iend_ = iend;
+            rsplit_ = rsplit;
+        }
+
+        public RowSplittable split() {
+            if ( started_ || itab_ >= iend_ ) {
+                return null;
+            }
+
+            /* If there are several tables, hand over the first half
+             * of them, as long as that is worthwhile. */
+            if ( iend_ - itab_ > 1 ) {
+                long size = splittableSize();
+                if ( size >= 0 && size < 2 * RandomRowSplittable.MIN_SPLIT ) {
+                    return null;
+                }
+                int imid = ( itab_ + iend_ ) / 2;
+                RowSplittable prefix =
+                    new ConcatRowSplittable( tables_, offsets_, itab_, imid,
+                                             rsplit_ );
+                itab_ = imid;
+                rsplit_ = null;
+                return prefix;
+            }
+
+            /* Otherwise, try to split the single remaining table. */
+            else {
+                try {
+                    if ( rsplit_ == null ) {
+                        rsplit_ = tables_[ itab_ ].getRowSplittable();
+                    }
+                }
+                catch ( IOException e ) {
+                    return null;
+                }
+                RowSplittable split1 = rsplit_.split();
+                return split1 == null
+                     ? null
+                     : new ConcatRowSplittable( tables_, offsets_,
+                                                itab_, itab_ + 1, split1 );
+            }
+        }
+
+        public long splittableSize() {
+            if ( itab_ >= iend_ ) {
+                return 0;
+            }
+            long n0 = rsplit_ == null
+                    ? offsets_[ itab_ + 1 ] - offsets_[ itab_ ]
+                    : rsplit_.splittableSize();
+            return n0 < 0 ? -1
+                          : n0 + offsets_[ iend_ ] - offsets_[ itab_ + 1 ];
+        }
+
+        public long getRowIndex() {
+            long irow = rsplit_ == null ? -1 : rsplit_.getRowIndex();
+            return irow >= 0 ? offsets_[ itab_ ] + irow : -1;
+        }
+
+        public boolean next() throws IOException {
+            started_ = true;
+            while ( itab_ < iend_ ) {
+                if ( rsplit_ == null ) {
+                    rsplit_ = tables_[ itab_ ].getRowSplittable();
+                }
+                if ( rsplit_.next() ) {
+                    return true;
+                }
+                rsplit_.close();
+                rsplit_ = null;
+                itab_++;
+            }
+            return false;
+        }
+
+        public Object getCell( int icol ) throws IOException {
+            if ( rsplit_ == null ) {
+                throw new IllegalStateException( "No current row" );
+            }
+            return rsplit_.getCell( icol );
+        }
+
+        public Object[] getRow() throws IOException {
+            if ( rsplit_ == null ) {
+                throw new IllegalStateException( "No current row" );
+            }
+            return rsplit_.getRow();
+        }
+
+        public void close() throws IOException {
+            if ( rsplit_ != null ) {
+                rsplit_.close();
+                rsplit_ = null;
+            }
+        }
+    }
 }
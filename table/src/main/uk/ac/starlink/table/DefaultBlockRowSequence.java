@@ -0,0 +1,106 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+
+/**
+ * BlockRowSequence implementation which wraps an ordinary RowSequence.
+ * Blocks are assembled by reading the rows of the base sequence
+ * one at a time, so this offers no performance advantage over the
+ * base sequence; it just provides the block interface for sequences
+ * which do not have a better implementation.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ * @see      Tables#getBlockRowSequence
+ */
+class DefaultBlockRowSequence extends WrapperRowSequence
+                              implements BlockRowSequence {
+
+    private Object[][] rows_;
+    private int nblock_;
+    private boolean inBlock_;
+
+    /**
+     * Constructor.
+     *
+     * @param  baseSeq  base sequence
+     */
+    public DefaultBlockRowSequence( RowSequence baseSeq ) {
+        super( baseSeq );
+        rows_ = new Object[ 0 ][];
+    }
+
+    public boolean next() throws IOException {
+        inBlock_ = false;
+        return super.next();
+    }
+
+    public Object getCell( int icol ) throws IOException {
+        checkRow();
+        return super.getCell( icol );
+    }
+
+    public Object[] getRow() throws IOException {
+        checkRow();
+        return super.getRow();
+    }
+
+    public int nextBlock( int maxRows ) throws IOException {
+        if ( rows_.length < maxRows ) {
+            Object[][] rows = new Object[ maxRows ][];
+            System.arraycopy( rows_, 0, rows, 0, rows_.length );
+            rows_ = rows;
+        }
+        inBlock_ = true;
+        int n = 0;
+        while ( n < maxRows && baseSeq.next() ) {
+
+            /* Copy the row, since the base sequence is not obliged to
+             * return a new array each time. */
+            Object[] row = baseSeq.getRow();
+            if ( rows_[ n ] == null || rows_[ n ].length != row.length ) {
+                rows_[ n ] = new Object[ row.length ];
+            }
+            System.arraycopy( row, 0, rows_[ n ], 0, row.length );
+            n++;
+        }
+        nblock_ = n;
+        return n;
+    }
+
+    public void getDoubleBlock( int icol, double[] buf, int off ) {
+        checkBlock();
+        for ( int i = 0; i < nblock_; i++ ) {
+            Object value = rows_[ i ][ icol ];
+            buf[ off + i ] = value instanceof Number
+                           ? ((Number) value).doubleValue()
+                           : Double.NaN;
+        }
+    }
+
+    public void getObjectBlock( int icol, Object[] buf, int off ) {
+        checkBlock();
+        for ( int i = 0; i < nblock_; i++ ) {
+            buf[ off + i ] = rows_[ i ][ icol ];
+        }
+    }
+
+    /**
+     * Throws an exception if there is no current block.
+     */
+    private void checkBlock() {
+        if ( ! inBlock_ ) {
+            throw new IllegalStateException( "No current block" );
+        }
+    }
+
+    /**
+     * Throws an exception if the sequence is positioned at a block
+     * rather than a row.
+     */
+    private void checkRow() {
+        if ( inBlock_ ) {
+            throw new IllegalStateException( "No current row" );
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package uk.ac.starlink.table;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.util.DataSource;
+import uk.ac.starlink.util.FileDataSource;
+import uk.ac.starlink.util.URLUtils;
+
+/**
+ * Persistent cache which stores copies of tables in a directory on disk,
+ * so that they can be reused by later invocations of the JVM.
+ * Tables are stored in a column-oriented FITS format,
+ * which can be mapped into memory and read very efficiently,
+ * so that re-reading a cached table is usually much faster than
+ * parsing the original input.
+ *
+ * <p>Entries are identified by string keys.
+ * The key for a table read from a local file is obtained using
+ * {@link #getSourceKey}, and incorporates the file's location, size
+ * and modification time along with the input format,
+ * so that an entry is not reused if the file changes.
+ * Keys for tables derived from such a table by deterministic processing
+ * can be made using {@link #extendKey}.
+ *
+ * <p>The total size of the files in the cache directory is kept
+ * within a given limit by deleting the least recently used entries
+ * whenever a new one is added.  Several processes may safely share
+ * the same cache directory.
+ *
+ * <p>An instance configured from the system properties
+ * {@link #CACHEDIR_PROPERTY} and {@link #CACHESIZE_PROPERTY}
+ * is available from {@link #getDefaultCache}; it is used by default
+ * by the {@link StarTableFactory}.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class DiskTableCache {
+
+    private final File dir_;
+    private final long maxSize_;
+    private final TableBuilder builder_;
+    private final StarTableWriter writer_;
+    private final Map tableKeys_;
+
+    /**
+     * Name of system property giving the cache directory used by the
+     * default cache.  If not set, there is no default cache.
+     */
+    public static final String CACHEDIR_PROPERTY = "startable.cachedir";
+
+    /**
+     * Name of system property giving the maximum size in bytes of the
+     * default cache.  A suffix "k", "M" or "G" may be used.
+     */
+    public static final String CACHESIZE_PROPERTY = "startable.cachesize";
+
+    /** Default maximum cache size in bytes (16 Gbyte). */
+    public static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024 * 1024;
+
+    private static final String ENTRY_SUFFIX = ".colfits";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long TMP_AGE_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String[][] HANDLER_CLASSES = new String[][] {
+        { "uk.ac.starlink.votable.ColFitsPlusTableBuilder",
+          "uk.ac.starlink.votable.ColFitsPlusTableWriter" },
+        { "uk.ac.starlink.fits.ColFitsTableBuilder",
+          "uk.ac.starlink.fits.ColFitsTableWriter" },
+    };
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table" );
+    private static DiskTableCache defaultCache_;
+    private static boolean defaultInit_;
+
+    /**
+     * Constructor.
+     *
+     * @param  dir   cache directory; it will be created if necessary
+     * @param  maxSize  maximum total size in bytes of cached files
+     * @throws  IOException  if the directory cannot be used,
+     *          or if the required table handlers are not available
+     */
+    public DiskTableCache( File dir, long maxSize ) throws IOException {
+        dir_ = dir;
+        maxSize_ = maxSize;
+        if ( ! dir.isDirectory() && ! dir.mkdirs() ) {
+            throw new IOException( "Can't create cache directory " + dir );
+        }
+        if ( ! dir.canWrite() ) {
+            throw new IOException( "Can't write to cache directory " + dir );
+        }
+        TableBuilder builder = null;
+        StarTableWriter writer = null;
+        for ( int i = 0; i < HANDLER_CLASSES.length && writer == null; i++ ) {
+            builder = (TableBuilder)
+                      createHandler( HANDLER_CLASSES[ i ][ 0 ],
+                                     TableBuilder.class );
+            writer = builder == null
+                   ? null
+                   : (StarTableWriter)
+                     createHandler( HANDLER_CLASSES[ i ][ 1 ],
+                                    StarTableWriter.class );
+        }
+        if ( writer == null ) {
+            throw new IOException( "No column-oriented FITS handlers "
+                                 + "available for table cache" );
+        }
+        builder_ = builder;
+        writer_ = writer;
+        tableKeys_ = Collections.synchronizedMap( new WeakHashMap() );
+    }
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return  directory
+     */
+    public File getDirectory() {
+        return dir_;
+    }
+
+    /**
+     * Returns the maximum total size of cached files.
+     *
+     * @return  size limit in bytes
+     */
+    public long getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Returns the key under which a table read from a given data source
+     * would be cached.  Only data sources which represent local files
+     * are cacheable; for others null is returned.
+     *
+     * @param  datsrc  data source
+     * @param  format  name of the input handler used to read the table,
+     *                 or {@link StarTableFactory#AUTO_HANDLER}
+     * @return   cache key, or null
+     */
+    public String getSourceKey( DataSource datsrc, String format ) {
+        File file = null;
+        if ( datsrc instanceof FileDataSource ) {
+            file = ((FileDataSource) datsrc).getFile();
+        }
+        else {
+            URL url = datsrc.getURL();
+            if ( url != null && "file".equals( url.getProtocol() ) ) {
+                file = URLUtils.urlToFile( url.toString() );
+            }
+        }
+        if ( file == null || ! file.isFile() ) {
+            return null;
+        }
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        }
+        catch ( IOException e ) {
+            path = file.getAbsolutePath();
+        }
+        return new StringBuffer()
+              .append( path )
+              .append( '|' )
+              .append( file.length() )
+              .append( '|' )
+              .append( file.lastModified() )
+              .append( '|' )
+              .append( format == null ? StarTableFactory.AUTO_HANDLER
+                                      : format.toLowerCase() )
+              .append( '|' )
+              .append( datsrc.getPosition() )
+              .toString();
+    }
+
+    /**
+     * Returns a key for a table derived from a cacheable table
+     * by some processing.  The processing description must
+     * completely determine the result, so that tables derived from the
+     * same table using the same description are identical.
+     *
+     * @param  key   key of the table on which the processing is performed
+     * @param  ops   canonical description of the processing
+     * @return   key for the processed table
+     */
+    public String extendKey( String key, String ops ) {
+        return key + "|" + ops;
+    }
+
+    /**
+     * Returns the key under which a given table is cached,
+     * if it was obtained from this cache.
+     *
+     * @param  table  table
+     * @return   cache key, or null if <code>table</code> is not a table
+     *           returned by this object
+     */
+    public String getTableKey( StarTable table ) {
+        return (String) tableKeys_.get( table );
+    }
+
+    /**
+     * Returns the table cached under a given key, if there is one.
+     *
+     * @param  key   cache key
+     * @return   random-access cached table, or null if none is cached
+     */
+    public StarTable getTable( String key ) {
+        File file = getEntryFile( key );
+        if ( ! file.isFile() ) {
+            return null;
+        }
+
+        /* Record the access so that this entry is not evicted soon. */
+        file.setLastModified( System.currentTimeMillis() );
+        StarTable table;
+        try {
+            table = builder_.makeStarTable( new FileDataSource( file ), true,
+                                            StoragePolicy.PREFER_DISK );
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.WARNING,
+                         "Discarding unreadable cache file " + file, e );
+            file.delete();
+            return null;
+        }
+        logger_.info( "Using cached table " + file );
+        tableKeys_.put( table, key );
+        return table;
+    }
+
+    /**
+     * Writes a table to the cache under a given key, and returns the
+     * cached copy.  Any existing entry with the same key is replaced,
+     * and old entries are evicted as required to keep within the
+     * cache size limit.
+     *
+     * <p>The input table is read once, sequentially.
+     *
+     * @param  key  cache key
+     * @param  table  table to store
+     * @return  random-access cached copy of <code>table</code>
+     */
+    public StarTable putTable( String key, StarTable table )
+            throws IOException {
+        File file = getEntryFile( key );
+        File tmp = File.createTempFile( "table", TMP_SUFFIX, dir_ );
+        logger_.info( "Writing cached table " + file );
+        boolean ok = false;
+        try {
+            OutputStream out =
+                new BufferedOutputStream( new FileOutputStream( tmp ) );
+            try {
+                writer_.writeStarTable( table, out );
+            }
+            finally {
+                out.close();
+            }
+            if ( ! tmp.renameTo( file ) ) {
+                file.delete();
+                if ( ! tmp.renameTo( file ) ) {
+                    throw new IOException( "Failed to rename " + tmp
+                                         + " to " + file );
+                }
+            }
+            ok = true;
+        }
+        finally {
+            if ( ! ok ) {
+                tmp.delete();
+            }
+        }
+        evict( file );
+        StarTable cached = getTable( key );
+        if ( cached == null ) {
+            throw new IOException( "Failed to read back cached table "
+                                 + file );
+        }
+        return cached;
+    }
+
+    /**
+     * Deletes least recently used entries until the cache is within
+     * its size limit.  Abandoned temporary files are also removed.
+     *
+     * @param  keep  file which should not be deleted
+     */
+    private void evict( File keep ) {
+        File[] files = dir_.listFiles();
+        if ( files == null ) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for ( int i = 0; i < files.length; i++ ) {
+            File f = files[ i ];
+            if ( f.getName().endsWith( TMP_SUFFIX ) &&
+                 now - f.lastModified() > TMP_AGE_MILLIS ) {
+                f.delete();
+            }
+            else {
+                total += f.length();
+            }
+        }
+        if ( total <= maxSize_ ) {
+            return;
+        }
+        Arrays.sort( files, new Comparator() {
+            public int compare( Object o1, Object o2 ) {
+                long t1 = ((File) o1).lastModified();
+                long t2 = ((File) o2).lastModified();
+                return t1 < t2 ? -1 : ( t1 > t2 ? 1 : 0 );
+            }
+        } );
+        for ( int i = 0; i < files.length && total > maxSize_; i++ ) {
+            File f = files[ i ];
+            if ( f.getName().endsWith( ENTRY_SUFFIX ) && ! f.equals( keep ) ) {
+                long size = f.length();
+                if ( f.delete() ) {
+                    logger_.info( "Evicted cached table " + f );
+                    total -= size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file in which the entry for a given key is stored.
+     *
+     * @param  key  cache key
+     * @return  cache file
+     */
+    private File getEntryFile( String key ) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance( "SHA-1" )
+                                  .digest( key.getBytes( "UTF-8" ) );
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new RuntimeException( "No SHA-1??", e );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "No UTF-8??", e );
+        }
+        StringBuffer sbuf = new StringBuffer();
+        for ( int i = 0; i < digest.length; i++ ) {
+            sbuf.append( Integer.toHexString( ( digest[ i ] & 0xff ) | 0x100 )
+                                .substring( 1 ) );
+        }
+        return new File( dir_, sbuf.append( ENTRY_SUFFIX ).toString() );
+    }
+
+    /**
+     * Returns the cache configured by system properties.
+     * If the {@link #CACHEDIR_PROPERTY} property is not set,
+     * or the cache cannot be set up, null is returned.
+     *
+     * @return  default cache, or null
+     */
+    public static synchronized DiskTableCache getDefaultCache() {
+        if ( ! defaultInit_ ) {
+            defaultInit_ = true;
+            try {
+                String dir = System.getProperty( CACHEDIR_PROPERTY );
+                if ( dir != null && dir.trim().length() > 0 ) {
+                    String size = System.getProperty( CACHESIZE_PROPERTY );
+                    long maxSize = size == null || size.trim().length() == 0
+                                 ? DEFAULT_MAX_SIZE
+                                 : parseSize( size.trim() );
+                    defaultCache_ =
+                        new DiskTableCache( new File( dir.trim() ), maxSize );
+                }
+            }
+            catch ( SecurityException e ) {
+                logger_.config( "Can't read cache properties: " + e );
+            }
+            catch ( NumberFormatException e ) {
+                logger_.warning( "Bad value for " + CACHESIZE_PROPERTY
+                               + " - no table cache" );
+            }
+            catch ( IOException e ) {
+                logger_.warning( "No table cache: " + e.getMessage() );
+            }
+        }
+        return defaultCache_;
+    }
+
+    /**
+     * Instantiates a table handler class by name using its
+     * no-arg constructor.
+     *
+     * @param  className  name of handler class
+     * @param  type   interface which the handler must implement
+     * @return  new handler instance, or null if it is not available
+     */
+    private static Object createHandler( String className, Class type ) {
+        try {
+            Class clazz = Class.forName( className );
+            if ( type.isAssignableFrom( clazz ) ) {
+                return clazz.getDeclaredConstructor().newInstance();
+            }
+            else {
+                logger_.warning( "Cache handler " + className
+                               + " is not a " + type.getName() );
+            }
+        }
+        catch ( ClassNotFoundException e ) {
+            logger_.config( "Cache handler " + className + " not found" );
+        }
+        catch ( LinkageError e ) {
+            logger_.config( "Cache handler " + className
+                          + " not available: " + e );
+        }
+        catch ( NoSuchMethodException e ) {
+            logger_.warning( "Cache handler " + className
+                           + " has no no-arg constructor" );
+        }
+        catch ( InstantiationException e ) {
+            logger_.warning( "Can't instantiate cache handler " + className
+                           + ": " + e );
+        }
+        catch ( IllegalAccessException e ) {
+            logger_.warning( "Can't access cache handler " + className
+                           + " constructor: " + e );
+        }
+        catch ( InvocationTargetException e ) {
+            logger_.log( Level.WARNING,
+                         "Error constructing cache handler " + className,
+                         e.getCause() );
+        }
+        return null;
+    }
+
+    /**
+     * Parses a byte count which may have a k, M or G suffix.
+     *
+     * @param  txt  size string
+     * @return  size in bytes
+     * @throws  NumberFormatException  if the string can't be parsed
+     */
+    static long parseSize( String txt ) {
+        char suffix = Character.toUpperCase( txt.charAt( txt.length() - 1 ) );
+        int shift = suffix == 'K' ? 10
+                  : suffix == 'M' ? 20
+                  : suffix == 'G' ? 30
+                  : 0;
+        String num = shift > 0 ? txt.substring( 0, txt.length() - 1 ) : txt;
+        return Long.parseLong( num.trim() ) << shift;
+    }
+}
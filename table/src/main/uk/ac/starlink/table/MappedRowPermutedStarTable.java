@@ -0,0 +1,120 @@
+package uk.ac.starlink.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Wrapper table which provides a view of a base table in which the
+ * rows are permuted according to a row map stored in a file.
+ * This does the same job as {@link RowPermutedStarTable},
+ * but the row map is not restricted to 2<sup>31</sup> elements.
+ * The file contains the base table row index for each row of this table,
+ * as a sequence of big-endian 8-byte integers, and is mapped into memory.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class MappedRowPermutedStarTable extends WrapperStarTable {
+
+    private final long nrow_;
+    private final LongBuffer[] blocks_;
+
+    /** Number of row indices in each mapped block. */
+    private static final int BLOCK_SIZE = 1 << 27;
+
+    /**
+     * Constructor.
+     *
+     * @param  baseTable  random-access base table
+     * @param  mapFile   file containing the row map
+     * @param  nrow   number of entries in the row map
+     */
+    public MappedRowPermutedStarTable( StarTable baseTable, File mapFile,
+                                       long nrow )
+            throws IOException {
+        super( baseTable );
+        if ( ! baseTable.isRandom() ) {
+            throw new IllegalArgumentException( "No random access in base " +
+                                                "table " + baseTable );
+        }
+        nrow_ = nrow;
+        int nblock = (int) ( ( nrow + BLOCK_SIZE - 1 ) / BLOCK_SIZE );
+        blocks_ = new LongBuffer[ nblock ];
+        RandomAccessFile raf = new RandomAccessFile( mapFile, "r" );
+        try {
+            FileChannel chan = raf.getChannel();
+            for ( int ib = 0; ib < nblock; ib++ ) {
+                long start = (long) ib * BLOCK_SIZE;
+                long n = Math.min( BLOCK_SIZE, nrow - start );
+                blocks_[ ib ] = chan.map( FileChannel.MapMode.READ_ONLY,
+                                          start * 8, n * 8 )
+                                    .asLongBuffer();
+            }
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    public long getRowCount() {
+        return nrow_;
+    }
+
+    /**
+     * Returns true.
+     */
+    public boolean isRandom() {
+        return true;
+    }
+
+    public RowSequence getRowSequence() {
+        return new RandomRowSequence( this );
+    }
+
+    public Object getCell( long irow, int icol ) throws IOException {
+        return baseTable.getCell( getBaseRow( irow ), icol );
+    }
+
+    public Object[] getRow( long irow ) throws IOException {
+        return baseTable.getRow( getBaseRow( irow ) );
+    }
+
+    /**
+     * Returns a row access based on the base table's row access.
+     */
+    public RowAccess getRowAccess() throws IOException {
+        final RowAccess baseAcc = baseTable.getRowAccess();
+        return new RowAccess() {
+            public void setRowIndex( long irow ) throws IOException {
+                baseAcc.setRowIndex( getBaseRow( irow ) );
+            }
+            public Object getCell( int icol ) throws IOException {
+                return baseAcc.getCell( icol );
+            }
+            public Object[] getRow() throws IOException {
+                return baseAcc.getRow();
+            }
+            public void close() throws IOException {
+                baseAcc.close();
+            }
+        };
+    }
+
+    /**
+     * Returns the base table row index corresponding to a row of this table.
+     *
+     * @param  irow  row index in this table
+     * @return  row index in base table
+     */
+    private long getBaseRow( long irow ) {
+        if ( irow < 0 || irow >= nrow_ ) {
+            throw new IndexOutOfBoundsException( "Row " + irow
+                                               + " out of range" );
+        }
+        return blocks_[ (int) ( irow / BLOCK_SIZE ) ]
+              .get( (int) ( irow % BLOCK_SIZE ) );
+    }
+}
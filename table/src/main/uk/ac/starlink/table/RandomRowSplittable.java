@@ -0,0 +1,162 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+
+/**
+ * RowSplittable implementation based on the random access methods
+ * of a StarTable.  Splitting divides the range of row indices in two.
+ *
+ * <p>Data is read using a {@link RowAccess} acquired from the table
+ * when first required, so each split has its own independent
+ * random access to the data.
+ * Subclasses may override the data access methods to read data
+ * in some more efficient way; in that case they should also override
+ * {@link #createSplittable}.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class RandomRowSplittable implements RowSplittable {
+
+    private final StarTable table_;
+    private long irow_;
+    private long end_;
+    private boolean started_;
+    private RowAccess racc_;
+
+    /**
+     * Minimum number of rows in a split.  Ranges smaller than twice
+     * this size will not be split further.
+     */
+    public static final long MIN_SPLIT = 1024;
+
+    /**
+     * Constructs a splittable covering all the rows of a table.
+     *
+     * @param  table  random-access table with known row count
+     * @throws IllegalArgumentException if <tt>table.isRandom()==false</tt>
+     *                                  or <tt>table.getRowCount()&lt;0</tt>
+     */
+    public RandomRowSplittable( StarTable table ) {
+        this( table, 0, table.getRowCount() );
+        if ( ! table.isRandom() ) {
+            throw new IllegalArgumentException( "Table " + table
+                                              + " is not random access" );
+        }
+        if ( end_ < 0 ) {
+            throw new IllegalArgumentException( "Table " + table
+                                              + " row count unknown" );
+        }
+    }
+
+    /**
+     * Constructs a splittable covering a given range of rows of a table.
+     *
+     * @param  table  random-access table
+     * @param  start  index of first row in range
+     * @param  end    index of first row after range
+     */
+    protected RandomRowSplittable( StarTable table, long start, long end ) {
+        table_ = table;
+        irow_ = start - 1;
+        end_ = end;
+    }
+
+    /**
+     * Constructs a new splittable covering a given range of rows of the
+     * same table as this one.  Called by {@link #split}.
+     *
+     * @param  start  index of first row in range
+     * @param  end    index of first row after range
+     * @return  new splittable
+     */
+    protected RandomRowSplittable createSplittable( long start, long end ) {
+        return new RandomRowSplittable( table_, start, end );
+    }
+
+    /**
+     * Returns the table on which this splittable is based.
+     *
+     * @return  table
+     */
+    public StarTable getTable() {
+        return table_;
+    }
+
+    public RowSplittable split() {
+        if ( started_ ) {
+            return null;
+        }
+        long start = irow_ + 1;
+        long nrow = end_ - start;
+        if ( nrow < 2 * MIN_SPLIT ) {
+            return null;
+        }
+        long mid = start + nrow / 2;
+        RowSplittable prefix = createSplittable( start, mid );
+        irow_ = mid - 1;
+        return prefix;
+    }
+
+    public long splittableSize() {
+        return end_ - irow_ - 1;
+    }
+
+    public long getRowIndex() {
+        return irow_;
+    }
+
+    public boolean next() throws IOException {
+        started_ = true;
+        if ( irow_ < end_ - 1 ) {
+            irow_++;
+            return true;
+        }
+        else {
+            irow_ = end_;
+            return false;
+        }
+    }
+
+    public Object getCell( int icol ) throws IOException {
+        checkRow();
+        return getRowAccess().getCell( icol );
+    }
+
+    public Object[] getRow() throws IOException {
+        checkRow();
+        return getRowAccess().getRow();
+    }
+
+    public void close() throws IOException {
+        if ( racc_ != null ) {
+            racc_.close();
+            racc_ = null;
+        }
+    }
+
+    /**
+     * Returns a RowAccess positioned at the current row,
+     * acquiring it from the table if necessary.
+     *
+     * @return  row access
+     */
+    private RowAccess getRowAccess() throws IOException {
+        if ( racc_ == null ) {
+            racc_ = table_.getRowAccess();
+        }
+        racc_.setRowIndex( irow_ );
+        return racc_;
+    }
+
+    /**
+     * Checks that there is a current row.
+     *
+     * @throws  IllegalStateException  if there is no current row
+     */
+    protected void checkRow() {
+        if ( ! started_ || irow_ >= end_ ) {
+            throw new IllegalStateException( "No current row" );
+        }
+    }
+}
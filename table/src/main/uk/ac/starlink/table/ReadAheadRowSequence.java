@@ -0,0 +1,191 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * RowSequence which reads rows from a base sequence on a separate thread.
+ * Rows are passed from the reading thread in batches through a
+ * bounded queue, so the reader may get ahead of the consumer by
+ * at most a fixed number of rows.
+ *
+ * <p>The reading thread starts as soon as this object is constructed.
+ * It runs until the base sequence is exhausted, an error occurs,
+ * or this sequence is closed; the base sequence is closed on that thread
+ * when it finishes.
+ * Any error encountered by the reading thread is reported to the consumer
+ * when it reaches the point in the sequence at which the error occurred.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ * @see      ReadAheadStarTable
+ */
+class ReadAheadRowSequence implements RowSequence {
+
+    private final RowSequence baseSeq_;
+    private final int batchRows_;
+    private final BlockingQueue<Object[][]> queue_;
+    private volatile boolean closed_;
+    private volatile Throwable error_;
+    private Object[][] batch_;
+    private int irow_;
+    private boolean ended_;
+
+    private static final Object[][] NO_ROWS = new Object[ 0 ][];
+    private static final Object[][] END_ROWS = new Object[ 0 ][];
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table" );
+
+    /**
+     * Constructor.
+     *
+     * @param  baseSeq  base sequence, not used by any other thread
+     * @param  batchRows  number of rows in each batch
+     * @param  nbatch   maximum number of batches read ahead of the consumer
+     */
+    public ReadAheadRowSequence( RowSequence baseSeq, int batchRows,
+                                 int nbatch ) {
+        baseSeq_ = baseSeq;
+        batchRows_ = batchRows;
+        queue_ = new ArrayBlockingQueue<Object[][]>( nbatch );
+        batch_ = NO_ROWS;
+        Thread reader = new Thread( "Table read-ahead" ) {
+            public void run() {
+                readRows();
+            }
+        };
+        reader.setDaemon( true );
+        reader.start();
+    }
+
+    public boolean next() throws IOException {
+        if ( ++irow_ < batch_.length ) {
+            return true;
+        }
+        batch_ = NO_ROWS;
+        if ( ended_ || closed_ ) {
+            return false;
+        }
+        Object[][] batch;
+        try {
+            batch = queue_.take();
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException) new IOException( "Thread interrupted" )
+                               .initCause( e );
+        }
+        if ( batch == END_ROWS ) {
+            ended_ = true;
+            Throwable error = error_;
+            if ( error != null ) {
+                throw wrapError( error );
+            }
+            return false;
+        }
+        else {
+            batch_ = batch;
+            irow_ = 0;
+            return true;
+        }
+    }
+
+    public Object[] getRow() {
+        if ( irow_ < batch_.length ) {
+            return batch_[ irow_ ];
+        }
+        else {
+            throw new IllegalStateException( "No current row" );
+        }
+    }
+
+    public Object getCell( int icol ) {
+        return getRow()[ icol ];
+    }
+
+    /**
+     * Stops the reading thread at the next opportunity.
+     * The base sequence will be closed by that thread.
+     */
+    public void close() {
+        closed_ = true;
+        batch_ = NO_ROWS;
+
+        /* Make space in the queue so that the reader is not blocked. */
+        queue_.clear();
+    }
+
+    /**
+     * Reads rows from the base sequence and places them on the queue
+     * in batches.  Invoked on the reading thread.
+     */
+    private void readRows() {
+        try {
+            boolean more = true;
+            while ( more && ! closed_ ) {
+                Object[][] batch = new Object[ batchRows_ ][];
+                int n = 0;
+                while ( n < batchRows_ && ( more = baseSeq_.next() ) ) {
+
+                    /* Copy the row, since the base sequence is not obliged
+                     * to return a new array each time. */
+                    batch[ n++ ] = (Object[]) baseSeq_.getRow().clone();
+                }
+                if ( n > 0 ) {
+                    if ( n < batchRows_ ) {
+                        Object[][] b = new Object[ n ][];
+                        System.arraycopy( batch, 0, b, 0, n );
+                        batch = b;
+                    }
+                    queue_.put( batch );
+                }
+            }
+        }
+        catch ( Throwable e ) {
+            error_ = e;
+        }
+        finally {
+            try {
+                if ( ! closed_ ) {
+                    queue_.put( END_ROWS );
+                }
+            }
+            catch ( InterruptedException e ) {
+                closed_ = true;
+            }
+            try {
+                baseSeq_.close();
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING,
+                             "Error closing read-ahead sequence", e );
+            }
+        }
+    }
+
+    /**
+     * Returns an IOException for reporting to the consumer an error
+     * thrown on the reading thread.  Any kind of Throwable is reported,
+     * so that an Error does not look like the end of the data.
+     *
+     * @param  error  error caught by the reading thread
+     * @return   exception to throw from {@link #next}
+     */
+    private static IOException wrapError( Throwable error ) {
+        final String msg;
+        if ( error instanceof IOException ) {
+            String emsg = error.getMessage();
+            msg = emsg == null || emsg.length() == 0 ? error.toString()
+                                                     : emsg;
+        }
+        else if ( error instanceof InterruptedException ) {
+            msg = "Thread interrupted";
+        }
+        else {
+            msg = "Read error: " + error;
+        }
+        return (IOException) new IOException( msg ).initCause( error );
+    }
+}
@@ -0,0 +1,71 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+
+/**
+ * Wrapper table whose row sequences read rows from the base table
+ * on a separate thread, ahead of the point the consumer has reached.
+ * This means that input operations on the base table, such as I/O,
+ * decompression and parsing, can take place concurrently with
+ * whatever processing is done on the rows by the consumer,
+ * which can be beneficial when both are expensive.
+ *
+ * <p>Rows are transferred in batches through a bounded buffer,
+ * so that synchronization costs are not incurred on every row,
+ * and memory usage is limited to a fixed number of rows.
+ * Random access is not affected; it is passed straight through to the
+ * base table.  It is therefore only useful to wrap tables whose
+ * rows are acquired sequentially from some expensive source.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ * @see      StarTableFactory#setReadAhead
+ */
+public class ReadAheadStarTable extends WrapperStarTable {
+
+    private final int batchRows_;
+    private final int nbatch_;
+
+    /** Default number of rows in each batch passed between threads. */
+    public static final int DEFAULT_BATCH_ROWS = 256;
+
+    /** Default number of batches which may be read ahead. */
+    public static final int DEFAULT_BATCH_COUNT = 16;
+
+    /**
+     * Constructs a read-ahead table with a given buffer configuration.
+     *
+     * @param  baseTable  base table
+     * @param  batchRows  number of rows in each batch passed
+     *                    from the reading thread to the consumer
+     * @param  nbatch     maximum number of batches which may be read ahead
+     *                    of the consumer
+     */
+    public ReadAheadStarTable( StarTable baseTable, int batchRows,
+                               int nbatch ) {
+        super( baseTable );
+        if ( batchRows < 1 || nbatch < 1 ) {
+            throw new IllegalArgumentException( "Bad buffer size" );
+        }
+        batchRows_ = batchRows;
+        nbatch_ = nbatch;
+    }
+
+    /**
+     * Constructs a read-ahead table with a default buffer configuration.
+     *
+     * @param  baseTable  base table
+     */
+    public ReadAheadStarTable( StarTable baseTable ) {
+        this( baseTable, DEFAULT_BATCH_ROWS, DEFAULT_BATCH_COUNT );
+    }
+
+    /**
+     * Returns a sequence which reads the base table's rows on a
+     * separate thread.  Reading starts immediately.
+     */
+    public RowSequence getRowSequence() throws IOException {
+        return new ReadAheadRowSequence( baseTable.getRowSequence(),
+                                         batchRows_, nbatch_ );
+    }
+}
@@ -0,0 +1,62 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+
+/**
+ * Provides random access to table data.
+ * An instance of this class is obtained from a random-access table
+ * using {@link StarTable#getRowAccess}; the current row is set using
+ * {@link #setRowIndex} and then the data for that row can be retrieved.
+ *
+ * <p>A single RowAccess instance cannot be expected to be used safely
+ * from multiple threads, but it will normally carry its own read
+ * position and buffers, so that different instances obtained from the
+ * same table can be used concurrently without contending with each other.
+ * The usual pattern is therefore to acquire one instance per thread,
+ * and to {@link #close} it when it is no longer required.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public interface RowAccess {
+
+    /**
+     * Sets the row index to which subsequent data accesses will refer.
+     *
+     * @param  irow  row index
+     * @throws  IOException  if there is some error
+     */
+    void setRowIndex( long irow ) throws IOException;
+
+    /**
+     * Returns the contents of a cell in the current row.
+     * The class of the returned object should be the same as,
+     * or a subclass of, the class returned by
+     * <tt>getColumnInfo(icol).getContentClass()</tt>.
+     *
+     * @param  icol  column index
+     * @return  the contents of cell <tt>icol</tt> in the current row
+     * @throws  IOException  if there is an error reading the data
+     * @throws  IllegalStateException  if no current row has been set
+     */
+    Object getCell( int icol ) throws IOException;
+
+    /**
+     * Returns the contents of the current table row, as an array
+     * with the same number of elements as there are columns in the table.
+     *
+     * @return  an array of the objects in each cell in the current row
+     * @throws  IOException  if there is an error reading the data
+     * @throws  IllegalStateException  if no current row has been set
+     */
+    Object[] getRow() throws IOException;
+
+    /**
+     * Releases any resources associated with this object.
+     * The effect of calling any of the other methods following
+     * a call to this one is undefined.
+     *
+     * @throws  IOException  if there is some error
+     */
+    void close() throws IOException;
+}
@@ -106,4 +106,31 @@ public class RowPermutedStarTable extends WrapperStarTable {
         return baseRow >= 0 ? baseTable.getRow( baseRow )
                             : new Object[ baseTable.getColumnCount() ];
     }
+
+    /**
+     * Returns a row access based on the base table's row access.
+     */
+    public RowAccess getRowAccess() throws IOException {
+        final RowAccess baseAcc = baseTable.getRowAccess();
+        return new RowAccess() {
+            private long baseRow_ = -1;
+            public void setRowIndex( long irow ) throws IOException {
+                baseRow_ = rowMap[ checkedLongToInt( irow ) ];
+                if ( baseRow_ >= 0 ) {
+                    baseAcc.setRowIndex( baseRow_ );
+                }
+            }
+            public Object getCell( int icol ) throws IOException {
+                return baseRow_ >= 0 ? baseAcc.getCell( icol )
+                                     : null;
+            }
+            public Object[] getRow() throws IOException {
+                return baseRow_ >= 0 ? baseAcc.getRow()
+                                     : new Object[ getColumnCount() ];
+            }
+            public void close() throws IOException {
+                baseAcc.close();
+            }
+        };
+    }
 }
@@ -0,0 +1,63 @@
+package uk.ac.starlink.table;
+
+/**
+ * RowSequence which can be divided into parts for concurrent processing.
+ * The idea is similar to that of <code>java.util.Spliterator</code>:
+ * a splittable initially covers all the rows of a table, and it may be
+ * asked to hand over part of its rows to a new splittable.
+ * The parts may then be iterated over independently,
+ * each from its own thread, and split further if required.
+ *
+ * <p>Typical usage might look like this:
+ * <pre>
+ *     List splits = new ArrayList();
+ *     RowSplittable rsplit = table.getRowSplittable();
+ *     splits.add( rsplit );
+ *     for ( RowSplittable s; splits.size() &lt; nthread &amp;&amp;
+ *                            ( s = rsplit.split() ) != null; ) {
+ *         splits.add( s );
+ *     }
+ *     // now iterate over each element of splits in a different thread
+ * </pre>
+ *
+ * <p>As for RowSequence, a single RowSplittable instance
+ * cannot be expected to be used safely from multiple threads,
+ * but the instances resulting from splitting may be used concurrently
+ * with each other.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public interface RowSplittable extends RowSequence {
+
+    /**
+     * Attempts to partition the rows of this splittable.
+     * If successful, a new splittable is returned which covers
+     * an initial part of the rows currently covered by this one,
+     * and this one subsequently covers only the remaining rows.
+     * If no split is possible or worthwhile, null is returned.
+     *
+     * <p>This method may only be called before the first call to
+     * {@link #next}; if iteration has started, null is returned.
+     *
+     * @return  new splittable containing a leading part of this one's rows,
+     *          or null
+     */
+    RowSplittable split();
+
+    /**
+     * Returns an estimate of the number of rows which would be covered
+     * by iterating over this splittable from its current state.
+     *
+     * @return  approximate number of rows remaining, or -1 if not known
+     */
+    long splittableSize();
+
+    /**
+     * Returns the index within the table of the current row.
+     * Only meaningful following a successful call of {@link #next}.
+     *
+     * @return   index of the current row, or -1 if not known
+     */
+    long getRowIndex();
+}
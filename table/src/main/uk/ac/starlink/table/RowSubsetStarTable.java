@@ -91,4 +91,63 @@ public class RowSubsetStarTable extends WrapperStarTable {
             }
         };
     }
+
+    /**
+     * Returns a splittable based on the base table's splittable,
+     * so that this table can be split wherever the base table can.
+     */
+    public RowSplittable getRowSplittable() throws IOException {
+        return new SubsetRowSplittable( baseTable.getRowSplittable() );
+    }
+
+    /**
+     * RowSplittable implementation for this table.
+     */
+    private class SubsetRowSplittable extends WrapperRowSplittable {
+
+        private long irow_;
+
+        /**
+         * Constructor.
+         *
+         * @param  baseSplit  splittable over the base table
+         */
+        SubsetRowSplittable( RowSplittable baseSplit ) {
+            super( baseSplit );
+            irow_ = -1;
+        }
+
+        public RowSplittable split() {
+            RowSplittable baseSplit1 = baseSplit.split();
+            return baseSplit1 == null ? null
+                                      : new SubsetRowSplittable( baseSplit1 );
+        }
+
+        public long getRowIndex() {
+            return irow_;
+        }
+
+        public boolean next() throws IOException {
+            int leng = mask.length();
+            while ( baseSplit.next() ) {
+                long iBase = baseSplit.getRowIndex();
+                if ( iBase < 0 ) {
+                    throw new IOException( "Base row index unknown" );
+                }
+                if ( iBase >= leng ) {
+                    return false;
+                }
+                if ( mask.get( (int) iBase ) ) {
+
+                    /* The first time a row is found, work out its index
+                     * in this table; after that just count. */
+                    irow_ = irow_ < 0 ? mask.get( 0, (int) iBase )
+                                            .cardinality()
+                                      : irow_ + 1;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+
+/**
+ * RowSplittable implementation based on a table's RowSequence,
+ * which never splits.  This is suitable for tables whose data can
+ * only be read sequentially.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class SequentialRowSplittable extends WrapperRowSequence
+                                     implements RowSplittable {
+
+    private final long nrow_;
+    private long irow_;
+
+    /**
+     * Constructor.
+     *
+     * @param  table  table
+     */
+    public SequentialRowSplittable( StarTable table ) throws IOException {
+        super( table.getRowSequence() );
+        nrow_ = table.getRowCount();
+        irow_ = -1;
+    }
+
+    /**
+     * Returns null.
+     */
+    public RowSplittable split() {
+        return null;
+    }
+
+    public long splittableSize() {
+        return nrow_ >= 0 ? nrow_ - irow_ - 1 : -1;
+    }
+
+    public long getRowIndex() {
+        return irow_;
+    }
+
+    public boolean next() throws IOException {
+        if ( super.next() ) {
+            irow_++;
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+}
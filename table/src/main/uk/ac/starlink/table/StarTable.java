@@ -152,6 +152,20 @@ public interface StarTable {
      */
     RowSequence getRowSequence() throws IOException;
 
+    /**
+     * Returns an object which can iterate over all the rows in the table,
+     * and which may be split into parts for concurrent processing.
+     * If the table cannot be divided in this way, the returned object
+     * will simply decline to split.
+     * {@link Tables#getDefaultRowSplittable} provides a suitable
+     * implementation for tables with no special requirements.
+     *
+     * @return  an object providing splittable sequential access to the
+     *          table data
+     * @throws  IOException   if there is an error providing access
+     */
+    RowSplittable getRowSplittable() throws IOException;
+
     /**
      * Indicates whether random access is provided by this table.
      * Only if the result is <tt>true</tt> may the {@link #getRow}
@@ -190,4 +204,22 @@ public interface StarTable {
      *         <tt>false</tt>
      */
     Object[] getRow( long irow ) throws IOException;
+
+    /**
+     * Returns an object which can provide random access to this
+     * table's data, if random access is implemented.
+     * Each such object is intended for use from a single thread,
+     * but distinct instances may be used concurrently;
+     * unlike calls to {@link #getCell} and {@link #getRow},
+     * which may be serialized internally, reads from different
+     * instances should not in general block each other.
+     * {@link Tables#getDefaultRowAccess} provides a suitable
+     * implementation for tables with no special requirements.
+     *
+     * @return  new RowAccess
+     * @throws IOException  if there is an error providing access
+     * @throws UnsupportedOperationException  if <tt>isRandom</tt> returns
+     *         <tt>false</tt>
+     */
+    RowAccess getRowAccess() throws IOException;
 }
@@ -107,6 +107,17 @@ import uk.ac.starlink.util.URLDataSource;
  * tables were preferred.  Now setting it true guarantees that all 
  * tables returned by the factory are random.
  *
+ * <p>The factory also has a flag <tt>readAhead</tt> which, if set,
+ * causes non-random tables to be read on a separate thread
+ * ahead of their consumer (see {@link #setReadAhead}).
+ *
+ * <p>If a {@link DiskTableCache} is installed (see {@link #setTableCache}),
+ * tables read from local files are stored in it the first time they are
+ * loaded, and on later loads, including from other JVMs, the cached copy
+ * is used instead of parsing the file again.
+ * By default the cache configured by the <tt>startable.cachedir</tt>
+ * and <tt>startable.cachesize</tt> system properties is used, if any.
+ *
  * @author   Mark Taylor (Starlink)
  */
 public class StarTableFactory {
@@ -115,6 +126,8 @@ public class StarTableFactory {
     private List knownBuilders_;
     private JDBCHandler jdbcHandler_;
     private boolean requireRandom_;
+    private boolean readAhead_;
+    private DiskTableCache tableCache_;
     private StoragePolicy storagePolicy_;
 
     /**
@@ -124,6 +137,12 @@ public class StarTableFactory {
     public static final String KNOWN_BUILDERS_PROPERTY =
         "startable.readers";
 
+    /**
+     * System property which, if set to "true", determines the initial
+     * value of the <tt>readAhead</tt> flag ({@value}).
+     */
+    public static final String READAHEAD_PROPERTY = "startable.readahead";
+
     /**
      * Special handler identifier which signifies automatic format detection. 
      */
@@ -163,6 +182,14 @@ public class StarTableFactory {
      */
     public StarTableFactory( boolean requireRandom ) {
         requireRandom_ = requireRandom;
+        try {
+            readAhead_ = "true".equalsIgnoreCase(
+                             System.getProperty( READAHEAD_PROPERTY ) );
+        }
+        catch ( SecurityException e ) {
+            readAhead_ = false;
+        }
+        tableCache_ = DiskTableCache.getDefaultCache();
         defaultBuilders_ = new ArrayList();
 
         /* Attempt to add default handlers if they are available. */
@@ -218,6 +245,8 @@ public class StarTableFactory {
         knownBuilders_ = new ArrayList( fact.knownBuilders_ );
         jdbcHandler_ = fact.jdbcHandler_;
         storagePolicy_ = fact.storagePolicy_;
+        readAhead_ = fact.readAhead_;
+        tableCache_ = fact.tableCache_;
     }
 
     /**
@@ -318,6 +347,63 @@ public class StarTableFactory {
         return requireRandom_;
     }
 
+    /**
+     * Sets whether sequential tables constructed by this factory
+     * read their data ahead on a separate thread.
+     * If this flag is set <tt>true</tt>, any non-random table returned
+     * by the <tt>makeStarTable</tt> methods is wrapped in a
+     * {@link ReadAheadStarTable}, so that reading and decoding the input
+     * proceed concurrently with processing of the rows read.
+     * This may speed up processing of compressed or remote data,
+     * but it uses an additional thread for each table being read.
+     * It has no effect on random-access tables,
+     * so is not relevant if <tt>requireRandom</tt> is set.
+     *
+     * <p>The initial value is false, unless the system property
+     * {@link #READAHEAD_PROPERTY} is set to "true".
+     *
+     * @param  readAhead  whether sequential tables will read ahead
+     */
+    public void setReadAhead( boolean readAhead ) {
+        readAhead_ = readAhead;
+    }
+
+    /**
+     * Returns the <tt>readAhead</tt> flag.
+     * If true, non-random tables returned by this factory read their
+     * data ahead on a separate thread.
+     *
+     * @return  whether sequential tables will read ahead
+     */
+    public boolean getReadAhead() {
+        return readAhead_;
+    }
+
+    /**
+     * Sets the persistent cache used for tables read from local files.
+     * If non-null, the <tt>makeStarTable</tt> methods look for
+     * a cached copy of a table in <tt>cache</tt> before reading it,
+     * and store a copy there if it is not found.
+     * Cached tables are always random-access.
+     *
+     * <p>The initial value is the cache returned by
+     * {@link DiskTableCache#getDefaultCache}.
+     *
+     * @param  cache  table cache, or null for no caching
+     */
+    public void setTableCache( DiskTableCache cache ) {
+        tableCache_ = cache;
+    }
+
+    /**
+     * Returns the persistent cache used for tables read from local files.
+     *
+     * @return  table cache, or null
+     */
+    public DiskTableCache getTableCache() {
+        return tableCache_;
+    }
+
     /**
      * Sets the storage policy.  This may be used to determine what kind
      * of scratch storage is used when constructing tables.
@@ -372,6 +458,12 @@ public class StarTableFactory {
      */
     public StarTable makeStarTable( DataSource datsrc )
             throws TableFormatException, IOException {
+        if ( tableCache_ != null ) {
+            StarTable cached = makeCachedTable( datsrc, AUTO_HANDLER );
+            if ( cached != null ) {
+                return cached;
+            }
+        }
         for ( Iterator it = defaultBuilders_.iterator(); it.hasNext(); ) {
             TableBuilder builder = (TableBuilder) it.next();
             try {
@@ -547,6 +639,12 @@ public class StarTableFactory {
              handler.equals( AUTO_HANDLER ) ) {
             return makeStarTable( datsrc );
         }
+        if ( tableCache_ != null ) {
+            StarTable cached = makeCachedTable( datsrc, handler );
+            if ( cached != null ) {
+                return cached;
+            }
+        }
         TableBuilder builder = getTableBuilder( handler );
         StarTable startab;
         try {
@@ -961,16 +1059,65 @@ public class StarTableFactory {
                                       + name );
     }
 
+    /**
+     * Returns a table from the table cache, reading it from its source
+     * and storing it in the cache first if necessary.
+     * If the data source is not cacheable, or if the table cannot
+     * be written to the cache, null is returned.
+     *
+     * @param  datsrc  data source
+     * @param  handler  handler name, or {@link #AUTO_HANDLER}
+     * @return  prepared table, or null
+     */
+    private StarTable makeCachedTable( DataSource datsrc, String handler )
+            throws TableFormatException, IOException {
+        String key = tableCache_.getSourceKey( datsrc, handler );
+        if ( key == null ) {
+            return null;
+        }
+        StarTable startab = tableCache_.getTable( key );
+        if ( startab == null ) {
+
+            /* Read the source table sequentially, without caching. */
+            StarTableFactory fact = new StarTableFactory( this );
+            fact.tableCache_ = null;
+            fact.requireRandom_ = false;
+            fact.readAhead_ = false;
+            StarTable source = fact.makeStarTable( datsrc, handler );
+            try {
+                startab = tableCache_.putTable( key, source );
+            }
+            catch ( IOException e ) {
+                logger.warning( "Failed to cache table " + datsrc.getName()
+                              + ": " + e );
+                return null;
+            }
+        }
+        startab.setURL( datsrc.getURL() );
+        if ( startab.getName() == null ) {
+            startab.setName( datsrc.getName() );
+        }
+        return prepareTable( startab );
+    }
+
     /**
      * Prepares a table for return from one of the makeStarTable methods.
-     * Currently what this does is to randomise it if it needs randomising.
+     * Currently what this does is to randomise it if it needs randomising,
+     * or otherwise to add read-ahead if that has been requested.
      *
      * @param  startab  table to prepare
      * @return  prepared table - may be <tt>startab</tt> or a new one
      */
     private StarTable prepareTable( StarTable startab ) throws IOException {
-        return requireRandom() ? randomTable( startab )
-                               : startab;
+        if ( requireRandom() ) {
+            return randomTable( startab );
+        }
+        else if ( readAhead_ && ! startab.isRandom() ) {
+            return new ReadAheadStarTable( startab );
+        }
+        else {
+            return startab;
+        }
     }
 
     /**
@@ -1,11 +1,23 @@
 package uk.ac.starlink.table;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 import uk.ac.starlink.table.jdbc.JDBCStarTable;
 import uk.ac.starlink.table.storage.AdaptiveByteStore;
+import uk.ac.starlink.table.storage.BudgetStoragePolicy;
 import uk.ac.starlink.table.storage.ByteStoreStoragePolicy;
+import uk.ac.starlink.table.storage.CompressedRowStore;
 import uk.ac.starlink.table.storage.ListRowStore;
 import uk.ac.starlink.table.storage.DiscardByteStore;
 import uk.ac.starlink.table.storage.DiscardRowStore;
@@ -34,7 +46,8 @@ import uk.ac.starlink.util.Loader;
  *
  * <p>Code which wants to store data in a particular way may use one of
  * the predefined policies {@link #ADAPTIVE}, {@link #PREFER_MEMORY},
- * {@link #PREFER_DISK} {@link #SIDEWAYS} or {@link #DISCARD},
+ * {@link #PREFER_DISK}, {@link #SIDEWAYS}, {@link #COMPRESSED},
+ * {@link #BUDGET} or {@link #DISCARD},
  * or may implement their own policy by extending this class.
  * If you want more control, you can always create instances of the 
  * public {@link RowStore} implementations directly.
@@ -47,6 +60,8 @@ public abstract class StoragePolicy {
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.table.storage" );
     private static boolean defaultLogged_;
+    private static int copyParallelism_ =
+        Runtime.getRuntime().availableProcessors();
 
     /**
      * Smallest number of cells that will get written to disk by default.
@@ -59,7 +74,7 @@ public abstract class StoragePolicy {
      * Name of the system property which can be set to indicate the
      * initial setting of the default storage policy ({@value}).
      * Currently recognised values are "adaptive", "memory", "disk",
-     * "sideways", and "discard".
+     * "sideways", "compressed", "budget" and "discard".
      * Alternatively, the classname of a StoragePolicy implementation
      * with a no-arg constructor may be supplied.
      */
@@ -86,6 +101,12 @@ public abstract class StoragePolicy {
                 else if ( "sideways".equals( pref ) ) {
                     defaultInstance_ = SIDEWAYS;
                 }
+                else if ( "compressed".equals( pref ) ) {
+                    defaultInstance_ = COMPRESSED;
+                }
+                else if ( "budget".equals( pref ) ) {
+                    defaultInstance_ = BUDGET;
+                }
                 else if ( "discard".equals( pref ) ) {
                     defaultInstance_ = DISCARD;
                 }
@@ -118,6 +139,21 @@ public abstract class StoragePolicy {
         defaultInstance_ = policy;
     }
 
+    /**
+     * Sets the maximum number of threads used by {@link #copyTable}.
+     * The default is the number of available processors.
+     * A value of 1 means that tables are always copied sequentially.
+     *
+     * @param  parallelism  thread count, at least 1
+     */
+    public static void setCopyParallelism( int parallelism ) {
+        if ( parallelism < 1 ) {
+            throw new IllegalArgumentException( "Parallelism " + parallelism
+                                              + " < 1" );
+        }
+        copyParallelism_ = parallelism;
+    }
+
     /**
      * Returns a new ByteStore object which can be used to
      * provide a destination for general purpose data storage.
@@ -174,12 +210,30 @@ public abstract class StoragePolicy {
      * the resource usage or performance characteristics defined by 
      * this policy.
      *
+     * <p>If the table's {@link StarTable#getRowSplittable RowSplittable}
+     * can be split, the parts are copied concurrently into separate
+     * row stores, and the result is the concatenation of these.
+     * This relies on the documented contracts of {@link RowSplittable}
+     * and {@link RowAccess}, that the parts of a split, and distinct
+     * RowAccess instances used by them for random-access tables,
+     * can be read concurrently from different threads.
+     * Use {@link #setCopyParallelism setCopyParallelism(1)}
+     * to force sequential copying.
+     *
      * @param   table  input table
      * @return  deep copy of <code>table</code>
      */
     public StarTable copyTable( StarTable table ) throws IOException {
+        RowSplittable rsplit = table.getRowSplittable();
+        List splits = splitRows( rsplit );
+        if ( splits.size() > 1 ) {
+            return copyParallel( table, splits );
+        }
+
+        /* The single splittable is used for a sequential copy,
+         * since the table may not be able to supply its data twice. */
         RowStore store = makeConfiguredRowStore( table );
-        RowSequence rseq = table.getRowSequence();
+        RowSequence rseq = rsplit;
         try {
             while ( rseq.next() ) {
                 store.acceptRow( rseq.getRow() );
@@ -196,6 +250,112 @@ public abstract class StoragePolicy {
         return out;
     }
 
+    /**
+     * Copies the rows of a table into row stores concurrently,
+     * one for each of a list of splittables.
+     *
+     * @param  table  table supplying metadata
+     * @param  splits  list of RowSplittables covering the table's rows
+     * @return  random-access copy of table
+     */
+    private StarTable copyParallel( final StarTable table, List splits )
+            throws IOException {
+        List tasks = new ArrayList();
+        for ( Iterator it = splits.iterator(); it.hasNext(); ) {
+            final RowSplittable split = (RowSplittable) it.next();
+            tasks.add( new Callable() {
+                public Object call() throws IOException {
+                    RowStore store = makeConfiguredRowStore( table );
+                    try {
+                        while ( split.next() ) {
+                            store.acceptRow( split.getRow() );
+                        }
+                    }
+                    finally {
+                        split.close();
+                    }
+                    store.endRows();
+                    return store.getStarTable();
+                }
+            } );
+        }
+        ExecutorService executor =
+            Executors.newFixedThreadPool( splits.size(), new ThreadFactory() {
+                private int iThread_;
+                public synchronized Thread newThread( Runnable r ) {
+                    Thread thread =
+                        new Thread( r, "StoragePolicy-" + ( ++iThread_ ) );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        List parts = new ArrayList();
+        try {
+            for ( Iterator it = executor.invokeAll( tasks ).iterator();
+                  it.hasNext(); ) {
+                parts.add( ((Future) it.next()).get() );
+            }
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException) new InterruptedIOException( "Interrupted" )
+                               .initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Copy error" )
+                                   .initCause( cause );
+            }
+        }
+        finally {
+            executor.shutdown();
+            for ( Iterator it = splits.iterator(); it.hasNext(); ) {
+                ((RowSplittable) it.next()).close();
+            }
+        }
+        StarTable out =
+            new ConcatStarTable( table,
+                                 (StarTable[])
+                                 parts.toArray( new StarTable[ 0 ] ) );
+        assert out.isRandom();
+        return out;
+    }
+
+    /**
+     * Divides a splittable into parts for concurrent copying.
+     *
+     * @param  rsplit  splittable
+     * @return  list of RowSplittables covering the same rows in order
+     */
+    private static List splitRows( RowSplittable rsplit ) {
+        int nmax = copyParallelism_;
+        List splits = new ArrayList();
+        splits.add( rsplit );
+        boolean more = nmax > 1;
+        while ( more && splits.size() < nmax ) {
+            more = false;
+            for ( int is = splits.size() - 1;
+                  is >= 0 && splits.size() < nmax; is-- ) {
+                RowSplittable prefix = ((RowSplittable) splits.get( is ))
+                                      .split();
+                if ( prefix != null ) {
+                    splits.add( is, prefix );
+                    more = true;
+                }
+            }
+        }
+        return splits;
+    }
+
     /**
      * Storage policy which will always store table data in memory.
      * Table cells are stored as objects, which will be fast to write,
@@ -266,6 +426,46 @@ public abstract class StoragePolicy {
             }
         };
 
+    /**
+     * Storage policy which will normally store table data in a compressed
+     * column-oriented form in a scratch disk file.
+     * Each column is stored in chunks which are encoded according to
+     * the column's data type and then compressed, so that the
+     * disk space required, and hence the I/O cost of reading the data,
+     * is usually much less than for {@link #SIDEWAYS}.
+     * Some CPU time is needed to decompress the data when it is read,
+     * but random access is still reasonably efficient.
+     * If it's impossible for some reason to store the data in this way,
+     * or if the number of cells requested is small, it will fall back
+     * to using memory storage.
+     * A single temporary file is written in the default temporary
+     * directory, and will be deleted when the JVM exits, if not before,
+     * as for {@link #SIDEWAYS}.
+     */
+    public static final StoragePolicy COMPRESSED =
+        new DiskStoragePolicy( "COMPRESSED", MIN_DISK_CELLS ) {
+            protected RowStore makeDiskRowStore() throws IOException {
+                return new CompressedRowStore();
+            }
+        };
+
+    /**
+     * Storage policy which keeps data in memory up to a total budget
+     * shared by all the tables it stores, currently a quarter of the
+     * maximum heap size.  When the budget is exceeded, the data of
+     * the least recently used tables is moved to scratch disk files,
+     * from which it continues to be accessible.
+     * Temporary files are written in the default temporary directory,
+     * and will be deleted when the JVM exits, if not before.
+     * The budget and current memory usage may be examined by casting
+     * this object to {@link BudgetStoragePolicy}.
+     */
+    public static final StoragePolicy BUDGET = new BudgetStoragePolicy() {
+        public String toString() {
+            return "StoragePolicy.BUDGET";
+        }
+    };
+
     /**
      * Storage policy which just throws away the rows it is given.
      * Tables obtained from its row stores will have no rows.
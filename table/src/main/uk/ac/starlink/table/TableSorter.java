@@ -1,187 +1,1357 @@
 package uk.ac.starlink.table;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
 
 /**
  * Provides table sorting functionality.
  *
+ * <p>The sort keys are supplied as the columns of a key table,
+ * whose rows correspond to those of the table being sorted.
+ * The key values are first read into arrays, using several threads
+ * if the key table can be split for concurrent access.
+ * Numeric, boolean and character keys are stored as primitive
+ * <code>long</code> values encoded to preserve their natural ordering,
+ * and other keys as <code>Comparable</code> objects.
+ * An array of row indices is then sorted using a parallel stable
+ * merge sort that refers only to those arrays,
+ * so the table itself is not consulted during the sort.
+ *
+ * <p>The heap needed for an in-memory sort is estimated from the
+ * number of rows and the size of the stored keys.
+ * If that exceeds a budget, by default a quarter of the maximum heap size,
+ * and the keys can be written to a file (numeric, boolean, character
+ * and string keys), the table is sorted by an external merge instead:
+ * the table is divided into chunks each small enough to sort
+ * within the budget, each chunk is sorted in memory as above and
+ * written as a sorted run to a temporary file,
+ * and the runs are merged to give the final order,
+ * which is itself stored in a temporary file.
+ * Tables with more rows than a Java array can hold are always
+ * sorted externally.
+ *
  * @author   Mark Taylor (Starlink)
  * @since    8 Mar 2005
  * @see      Tables#sortTable
  */
 class TableSorter {
 
+    private final StarTable keyTable_;
+    private final boolean up_;
+    private final boolean nullsLast_;
+    private final int nkey_;
+    private final Class[] keyClasses_;
+    private int parallelism_;
+    private long maxMemoryRows_;
+    private long maxMemoryBytes_;
+    private int chunkSize_;
+
+    /** Largest number of rows that can be sorted in memory. */
+    public static final long MAX_MEMORY_ROWS = Integer.MAX_VALUE - 8;
+
+    /** Fraction of maximum heap size used by default for sorting. */
+    private static final float MEMORY_FRACT = 0.25f;
+
+    /** Estimated heap bytes for each non-primitive key value. */
+    private static final int OBJECT_KEY_BYTES = 48;
+
+    /** Maximum number of rows in each run of an external sort. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 26;
+
+    /** Smallest number of rows worth sorting in a separate thread. */
+    private static final int MIN_PART = 1 << 14;
+
+    /** Array size below which insertion sort is used. */
+    private static final int INSERTION_THRESHOLD = 8;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table" );
+
     /**
-     * Returns an array representing the sorted row sequence for a table.
+     * Constructor.
      *
-     * @param   table  table to sort
-     * @param   colIndices  indices of the columns which are to act as sort
-     *          keys; first element is primary key etc
-     * @param   up  true for sorting into ascending order, false for 
+     * @param   keyTable  table whose columns supply the sort keys,
+     *          first column is primary key etc
+     * @param   up  true for sorting into ascending order, false for
      *          descending order
-     * @param   nullsLast  true if blank values should be considered 
+     * @param   nullsLast  true if blank values should be considered
      *          last in the collation order, false if they should
      *          be considered first
-     * @return  an array mapping the rows in a table to their sorted order
-     * @throws  IOException  if <tt>table.isRandom()</tt> returns false
-     */ 
-    public static long[] getSortedOrder( StarTable table, int[] colIndices,
-                                         boolean up, boolean nullsLast )
+     * @throws  IOException  if any of the key columns has no defined
+     *          sort order; columns declared as <code>Object</code>
+     *          are accepted, and their values checked as they are read
+     */
+    public TableSorter( StarTable keyTable, boolean up, boolean nullsLast )
             throws IOException {
-        if ( ! table.isRandom() ) {
-            throw new IOException( "Table does not have random access" );
+        keyTable_ = keyTable;
+        up_ = up;
+        nullsLast_ = nullsLast;
+        nkey_ = keyTable.getColumnCount();
+        keyClasses_ = new Class[ nkey_ ];
+        for ( int ik = 0; ik < nkey_; ik++ ) {
+            ColumnInfo info = keyTable.getColumnInfo( ik );
+            Class clazz = info.getContentClass();
+            if ( ! Comparable.class.isAssignableFrom( clazz ) &&
+                 clazz != Object.class ) {
+                throw new IOException( "Column " + info +
+                                       " has no defined sort order" );
+            }
+            keyClasses_[ ik ] = clazz;
         }
-        int nrow = Tables.checkedLongToInt( table.getRowCount() );
-        Number[] rowMap = new Number[ nrow ];
-        for ( int i = 0; i < nrow; i++ ) {
-            rowMap[ i ] = new Integer( i );
+        parallelism_ = Runtime.getRuntime().availableProcessors();
+        maxMemoryRows_ = MAX_MEMORY_ROWS;
+        maxMemoryBytes_ =
+            (long) ( Runtime.getRuntime().maxMemory() * MEMORY_FRACT );
+        chunkSize_ = DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Sets the number of threads used for sorting.
+     *
+     * @param  parallelism  thread count, at least 1
+     */
+    public void setParallelism( int parallelism ) {
+        if ( parallelism < 1 ) {
+            throw new IllegalArgumentException( "Parallelism " + parallelism
+                                              + " < 1" );
         }
-        Comparator comp = new RowComparator( table, colIndices, up, nullsLast );
+        parallelism_ = parallelism;
+    }
+
+    /**
+     * Sets the largest number of rows that will be sorted in memory.
+     * Tables with more rows are sorted using an external merge.
+     *
+     * @param  maxMemoryRows  maximum row count for in-memory sort
+     */
+    void setMaxMemoryRows( long maxMemoryRows ) {
+        maxMemoryRows_ = Math.min( maxMemoryRows, MAX_MEMORY_ROWS );
+    }
+
+    /**
+     * Sets the approximate amount of heap memory that may be used
+     * for an in-memory sort or for each run of an external merge.
+     *
+     * @param  maxMemoryBytes  heap budget in bytes
+     */
+    void setMaxMemoryBytes( long maxMemoryBytes ) {
+        maxMemoryBytes_ = maxMemoryBytes;
+    }
+
+    /**
+     * Sets the maximum number of rows in each sorted run of an
+     * external merge.  Runs may be smaller if required by the
+     * heap budget.
+     *
+     * @param  chunkSize  rows per run
+     */
+    void setChunkSize( int chunkSize ) {
+        chunkSize_ = chunkSize;
+    }
+
+    /**
+     * Returns a sorted view of a table.
+     * The rows of the supplied table must correspond to the rows of
+     * this sorter's key table.
+     *
+     * @param  table  random-access table to sort
+     * @return   table containing the rows of <code>table</code>
+     *           in sorted order
+     */
+    public StarTable sortTable( StarTable table ) throws IOException {
+        long nrow = keyTable_.getRowCount();
+        if ( nrow < 0 ) {
+            throw new IOException( "Row count unknown" );
+        }
+        ExecutorService executor = createExecutor();
         try {
-            Arrays.sort( rowMap, comp );
+            if ( isMemorySort( nrow ) ) {
+                return new RowPermutedStarTable( table,
+                                                 getSortedOrder( executor ) );
+            }
+            else {
+                return sortExternal( table, executor );
+            }
+        }
+        catch ( ClassCastException e ) {
+            throw keyTypeError( e );
         }
-        catch ( SortException e ) {
-            throw e.asIOException();
+        finally {
+            executor.shutdownNow();
         }
+    }
+
+    /**
+     * Returns an array representing the sorted row sequence for the
+     * key table.  The whole table is sorted in memory.
+     *
+     * @return  an array mapping the rows in a table to their sorted order
+     */
+    public long[] getSortedOrder() throws IOException {
+        ExecutorService executor = createExecutor();
+        try {
+            return getSortedOrder( executor );
+        }
+        catch ( ClassCastException e ) {
+            throw keyTypeError( e );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the row indices of the first or last few rows in the
+     * sorted sequence, without performing a complete sort.
+     * The order is the same as would result from {@link #getSortedOrder}.
+     *
+     * @param  nhead  maximum number of rows to return
+     * @param  keepHead  true to return the first rows,
+     *                   false to return the last ones
+     * @return  array of row indices in sorted order
+     */
+    public long[] getHeadOrder( final int nhead, final boolean keepHead )
+            throws IOException {
+        ExecutorService executor = createExecutor();
+        try {
+
+            /* Each thread keeps its own candidates from the rows it sees. */
+            List tasks = new ArrayList();
+            for ( Iterator it = splitRows( keyTable_.getRowSplittable() )
+                               .iterator(); it.hasNext(); ) {
+                final RowSplittable rsplit = (RowSplittable) it.next();
+                tasks.add( new Callable() {
+                    public Object call() throws IOException {
+                        HeadSelector selector =
+                            new HeadSelector( nhead, keepHead );
+                        try {
+                            while ( rsplit.next() ) {
+                                selector.submit( rsplit.getRowIndex(),
+                                                 rsplit.getRow() );
+                            }
+                        }
+                        finally {
+                            rsplit.close();
+                        }
+                        return selector;
+                    }
+                } );
+            }
+
+            /* Combine the candidates and pick the best of them. */
+            HeadSelector selector = new HeadSelector( nhead, keepHead );
+            for ( Iterator it = invokeAll( executor, tasks ).iterator();
+                  it.hasNext(); ) {
+                selector.addAll( (HeadSelector) it.next() );
+            }
+            return selector.getRowIndices();
+        }
+        catch ( ClassCastException e ) {
+            throw keyTypeError( e );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Indicates whether a table with a given number of rows will be
+     * sorted in memory rather than by an external merge.
+     *
+     * @param  nrow  row count
+     * @return  true for an in-memory sort
+     */
+    private boolean isMemorySort( long nrow ) {
+        if ( nrow > maxMemoryRows_ ) {
+            return false;
+        }
+        else if ( (double) nrow * getRowBytes() <= maxMemoryBytes_ ) {
+            return true;
+        }
+        else {
+            for ( int ik = 0; ik < nkey_; ik++ ) {
+                if ( ! isExternalKey( keyClasses_[ ik ] ) ) {
+                    logger_.warning( "Sorting " + nrow + " rows in memory"
+                                   + " since " + keyClasses_[ ik ].getName()
+                                   + " keys can't be sorted externally" );
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the estimated heap usage per row of an in-memory sort.
+     * This covers the stored key values and two index arrays.
+     *
+     * @return  bytes per row
+     */
+    private int getRowBytes() {
+        int nbyte = 2 * 8;
+        for ( int ik = 0; ik < nkey_; ik++ ) {
+            nbyte += LongKeyColumn.isSupported( keyClasses_[ ik ] )
+                   ? 8
+                   : OBJECT_KEY_BYTES;
+        }
+        return nbyte;
+    }
+
+    /**
+     * Indicates whether keys of a given class can be written to the
+     * run files of an external merge.
+     *
+     * @param  clazz  key column content class
+     * @return  true iff external sorting is possible
+     */
+    private static boolean isExternalKey( Class clazz ) {
+        return LongKeyColumn.isSupported( clazz )
+            || String.class.equals( clazz );
+    }
+
+    /**
+     * Performs an in-memory sort of the key table.
+     *
+     * @param  executor  executor for worker threads
+     * @return  row map
+     */
+    private long[] getSortedOrder( ExecutorService executor )
+            throws IOException {
+        int nrow = Tables.checkedLongToInt( keyTable_.getRowCount() );
+        KeyColumn[] keys =
+            readKeys( keyTable_.getRowSplittable(), 0, nrow, executor );
         long[] order = new long[ nrow ];
         for ( int i = 0; i < nrow; i++ ) {
-            order[ i ] = rowMap[ i ].longValue();
+            order[ i ] = i;
         }
+        sortIndices( order, createIndexComparator( keys ), executor );
         return order;
     }
 
     /**
-     * Helper class which can compare objects representing the rows of
-     * a table.  The objects compared using this comparator must be
-     * <tt>Number</tt>s containing the row index of a table.
+     * Sorts a table using an external merge.
+     *
+     * @param  table  table to sort
+     * @param  executor  executor for worker threads
+     * @return  sorted table
+     */
+    private StarTable sortExternal( StarTable table, ExecutorService executor )
+            throws IOException {
+        if ( ! keyTable_.isRandom() ) {
+            throw new IOException( "Key table does not have random access" );
+        }
+        for ( int ik = 0; ik < nkey_; ik++ ) {
+            Class clazz = keyClasses_[ ik ];
+            if ( ! isExternalKey( clazz ) ) {
+                throw new IOException( "Can't sort " + clazz.getName()
+                                     + " keys for tables with more than "
+                                     + maxMemoryRows_ + " rows" );
+            }
+        }
+        long nrow = keyTable_.getRowCount();
+        int chunkSize =
+            (int) Math.min( chunkSize_,
+                            Math.max( MIN_PART,
+                                      maxMemoryBytes_ / getRowBytes() ) );
+        List runFiles = new ArrayList();
+        List runCounts = new ArrayList();
+        try {
+
+            /* Write sorted runs. */
+            for ( long start = 0; start < nrow; start += chunkSize ) {
+                int n = (int) Math.min( chunkSize, nrow - start );
+                RowSplittable rsplit =
+                    new RandomRowSplittable( keyTable_, start, start + n );
+                KeyColumn[] keys = readKeys( rsplit, start, n, executor );
+                long[] order = new long[ n ];
+                for ( int i = 0; i < n; i++ ) {
+                    order[ i ] = i;
+                }
+                sortIndices( order, createIndexComparator( keys ), executor );
+                File runFile = createTempFile( "sortrun" );
+                runFiles.add( runFile );
+                runCounts.add( new Integer( n ) );
+                DataOutputStream out =
+                    new DataOutputStream(
+                        new BufferedOutputStream(
+                            new FileOutputStream( runFile ) ) );
+                try {
+                    for ( int i = 0; i < n; i++ ) {
+                        int ir = (int) order[ i ];
+                        out.writeLong( start + ir );
+                        for ( int ik = 0; ik < nkey_; ik++ ) {
+                            keys[ ik ].writeValue( out, ir );
+                        }
+                    }
+                }
+                finally {
+                    out.close();
+                }
+            }
+            logger_.config( "Merging " + runFiles.size() + " sorted runs" );
+
+            /* Merge the runs, writing the resulting row map to a file. */
+            PriorityQueue queue =
+                new PriorityQueue( runFiles.size(), new Comparator() {
+                    public int compare( Object o1, Object o2 ) {
+                        RunReader r1 = (RunReader) o1;
+                        RunReader r2 = (RunReader) o2;
+                        int c = compareRows( r1.keys_, 0, r2.keys_, 0 );
+                        return c != 0
+                             ? c
+                             : ( r1.irow_ < r2.irow_ ? -1 : +1 );
+                    }
+                } );
+            File mapFile = createTempFile( "sortmap" );
+            DataOutputStream out =
+                new DataOutputStream(
+                    new BufferedOutputStream(
+                        new FileOutputStream( mapFile ) ) );
+            try {
+                for ( int ir = 0; ir < runFiles.size(); ir++ ) {
+                    RunReader reader =
+                        new RunReader( (File) runFiles.get( ir ),
+                                       ((Integer) runCounts.get( ir ))
+                                      .intValue() );
+                    if ( reader.next() ) {
+                        queue.add( reader );
+                    }
+                    else {
+                        reader.close();
+                    }
+                }
+                long nout = 0;
+                while ( ! queue.isEmpty() ) {
+                    RunReader reader = (RunReader) queue.poll();
+                    out.writeLong( reader.irow_ );
+                    nout++;
+                    if ( reader.next() ) {
+                        queue.add( reader );
+                    }
+                    else {
+                        reader.close();
+                    }
+                }
+                assert nout == nrow;
+            }
+            finally {
+                out.close();
+                while ( ! queue.isEmpty() ) {
+                    ((RunReader) queue.poll()).close();
+                }
+            }
+            return new MappedRowPermutedStarTable( table, mapFile, nrow );
+        }
+        finally {
+            for ( Iterator it = runFiles.iterator(); it.hasNext(); ) {
+                ((File) it.next()).delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the key values for a range of rows into key columns.
+     *
+     * @param  rsplit  splittable covering the rows to read
+     * @param  start  index of first row covered by <code>rsplit</code>
+     * @param  n    number of rows covered by <code>rsplit</code>
+     * @param  executor  executor for worker threads
+     * @return   array of key columns with <code>n</code> elements each
      */
-    private static class RowComparator implements Comparator {
+    private KeyColumn[] readKeys( RowSplittable rsplit, final long start,
+                                  final int n, ExecutorService executor )
+            throws IOException {
+        final KeyColumn[] keys = new KeyColumn[ nkey_ ];
+        for ( int ik = 0; ik < nkey_; ik++ ) {
+            keys[ ik ] = createKeyColumn( keyClasses_[ ik ], n );
+        }
+        List tasks = new ArrayList();
+        for ( Iterator it = splitRows( rsplit ).iterator(); it.hasNext(); ) {
+            final RowSplittable split = (RowSplittable) it.next();
+            tasks.add( new Callable() {
+                public Object call() throws IOException {
+                    try {
+                        while ( split.next() ) {
+                            long irow = split.getRowIndex();
+                            if ( irow < 0 ) {
+                                throw new IOException( "Row index unknown" );
+                            }
+                            int i = (int) ( irow - start );
+                            Object[] row = split.getRow();
+                            for ( int ik = 0; ik < nkey_; ik++ ) {
+                                keys[ ik ].setValue( i, row[ ik ] );
+                            }
+                        }
+                    }
+                    catch ( ClassCastException e ) {
+                        throw keyTypeError( e );
+                    }
+                    finally {
+                        split.close();
+                    }
+                    return null;
+                }
+            } );
+        }
+        invokeAll( executor, tasks );
+        return keys;
+    }
 
-        final StarTable table_;
-        final int[] colIndices_;
-        final boolean up_;
-        final boolean nullsLast_;
-        final int ncol_;
+    /**
+     * Divides a splittable into parts for processing by worker threads.
+     *
+     * @param  rsplit  splittable
+     * @return  list of RowSplittables covering the same rows
+     */
+    private List splitRows( RowSplittable rsplit ) {
+        int nmax = parallelism_ * 4;
+        List splits = new ArrayList();
+        splits.add( rsplit );
+        boolean more = parallelism_ > 1;
+        while ( more && splits.size() < nmax ) {
+            more = false;
+            for ( int is = splits.size() - 1;
+                  is >= 0 && splits.size() < nmax; is-- ) {
+                RowSplittable prefix = ((RowSplittable) splits.get( is ))
+                                      .split();
+                if ( prefix != null ) {
+                    splits.add( is, prefix );
+                    more = true;
+                }
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Sorts an array of row indices in place using a stable parallel
+     * merge sort.
+     *
+     * @param  order  array of indices to sort
+     * @param  comp   defines index ordering
+     * @param  executor  executor for worker threads
+     */
+    private void sortIndices( final long[] order, final IndexComparator comp,
+                              ExecutorService executor )
+            throws IOException {
+        int n = order.length;
+        final long[] work = (long[]) order.clone();
+
+        /* Sort separate parts of the array in different threads. */
+        int npart = (int) Math.max( 1, Math.min( parallelism_,
+                                                 n / MIN_PART ) );
+        int[] bounds = new int[ npart + 1 ];
+        for ( int ip = 0; ip <= npart; ip++ ) {
+            bounds[ ip ] = (int) ( (long) n * ip / npart );
+        }
+        List tasks = new ArrayList();
+        for ( int ip = 0; ip < npart; ip++ ) {
+            final int lo = bounds[ ip ];
+            final int hi = bounds[ ip + 1 ];
+            tasks.add( new Callable() {
+                public Object call() {
+                    mergeSort( work, order, lo, hi, comp );
+                    return null;
+                }
+            } );
+        }
+        invokeAll( executor, tasks );
+
+        /* Merge pairs of adjacent sorted parts until there is only one. */
+        long[] src = order;
+        long[] dst = work;
+        while ( bounds.length > 2 ) {
+            int np = bounds.length - 1;
+            int np1 = ( np + 1 ) / 2;
+            int[] bounds1 = new int[ np1 + 1 ];
+            tasks = new ArrayList();
+            for ( int ip1 = 0; ip1 < np1; ip1++ ) {
+                final int lo = bounds[ 2 * ip1 ];
+                final int mid = bounds[ Math.min( 2 * ip1 + 1, np ) ];
+                final int hi = bounds[ Math.min( 2 * ip1 + 2, np ) ];
+                bounds1[ ip1 + 1 ] = hi;
+                final long[] s = src;
+                final long[] d = dst;
+                tasks.add( new Callable() {
+                    public Object call() {
+                        merge( s, d, lo, mid, hi, comp );
+                        return null;
+                    }
+                } );
+            }
+            invokeAll( executor, tasks );
+            bounds = bounds1;
+            long[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if ( src != order ) {
+            System.arraycopy( src, 0, order, 0, n );
+        }
+    }
+
+    /**
+     * Returns an index comparator based on key columns.
+     *
+     * @param  keys  key columns
+     * @return  comparator for indices into <code>keys</code>
+     */
+    private IndexComparator createIndexComparator( final KeyColumn[] keys ) {
+        return new IndexComparator() {
+            public int compare( long i1, long i2 ) {
+                return compareRows( keys, (int) i1, keys, (int) i2 );
+            }
+        };
+    }
+
+    /**
+     * Compares the keys of two rows.
+     *
+     * @param  keys1  key columns for first row
+     * @param  i1    index of first row in <code>keys1</code>
+     * @param  keys2  key columns for second row
+     * @param  i2    index of second row in <code>keys2</code>
+     * @return  negative, zero or positive according to the collation order
+     */
+    private int compareRows( KeyColumn[] keys1, int i1,
+                             KeyColumn[] keys2, int i2 ) {
+        for ( int ik = 0; ik < nkey_; ik++ ) {
+            int c = keys1[ ik ].compare( i1, keys2[ ik ], i2 );
+            if ( c != 0 ) {
+                return up_ ? c : -c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a new key column suitable for values of a given class.
+     *
+     * @param  clazz  content class
+     * @param  n    number of elements
+     * @return  new key column
+     */
+    private KeyColumn createKeyColumn( Class clazz, int n ) {
+        return LongKeyColumn.isSupported( clazz )
+             ? (KeyColumn) new LongKeyColumn( clazz, n, nullsLast_ )
+             : (KeyColumn) new ObjectKeyColumn( n, nullsLast_ );
+    }
+
+    /**
+     * Returns a new executor service for worker threads.
+     * It should be shut down after use.
+     *
+     * @return  new executor
+     */
+    private ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool( parallelism_,
+                                             new ThreadFactory() {
+            private int iThread_;
+            public synchronized Thread newThread( Runnable r ) {
+                Thread thread =
+                    new Thread( r, "TableSorter-" + ( ++iThread_ ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Runs a list of tasks and waits for them all to complete.
+     *
+     * @param  executor  executor
+     * @param  tasks   list of Callables
+     * @return   list of task results in the same order as the tasks
+     */
+    private static List invokeAll( ExecutorService executor, List tasks )
+            throws IOException {
+        List results = new ArrayList();
+        try {
+            for ( Iterator it = executor.invokeAll( tasks ).iterator();
+                  it.hasNext(); ) {
+                results.add( ((Future) it.next()).get() );
+            }
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException) new InterruptedIOException( "Interrupted" )
+                               .initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Sort error" )
+                                   .initCause( cause );
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns an IOException reporting that a sort key value
+     * was not of a type that could be compared with the others.
+     * This happens if a column's values are not of its declared
+     * type, or if a column declared as <code>Object</code> contains
+     * values of mutually incomparable types.
+     *
+     * @param  e  exception thrown by the failed cast or comparison
+     * @return  I/O exception with <code>e</code> as its cause
+     */
+    private static IOException keyTypeError( ClassCastException e ) {
+        return (IOException) new IOException( "Sort key type mismatch" )
+                            .initCause( e );
+    }
+
+    /**
+     * Sorts a range of an array using a stable merge sort.
+     * On entry the given range of <code>src</code> and <code>dest</code>
+     * must have the same contents; on exit the range of
+     * <code>dest</code> is sorted.
+     *
+     * @param  src   source array
+     * @param  dest  destination array
+     * @param  lo    start of range (inclusive)
+     * @param  hi    end of range (exclusive)
+     * @param  comp  comparator
+     */
+    private static void mergeSort( long[] src, long[] dest, int lo, int hi,
+                                   IndexComparator comp ) {
+        int leng = hi - lo;
+        if ( leng < INSERTION_THRESHOLD ) {
+            for ( int i = lo; i < hi; i++ ) {
+                for ( int j = i;
+                      j > lo && comp.compare( dest[ j - 1 ], dest[ j ] ) > 0;
+                      j-- ) {
+                    long t = dest[ j ];
+                    dest[ j ] = dest[ j - 1 ];
+                    dest[ j - 1 ] = t;
+                }
+            }
+            return;
+        }
+        int mid = ( lo + hi ) >>> 1;
+        mergeSort( dest, src, lo, mid, comp );
+        mergeSort( dest, src, mid, hi, comp );
+        if ( comp.compare( src[ mid - 1 ], src[ mid ] ) <= 0 ) {
+            System.arraycopy( src, lo, dest, lo, leng );
+        }
+        else {
+            merge( src, dest, lo, mid, hi, comp );
+        }
+    }
+
+    /**
+     * Merges two adjacent sorted ranges of one array into another.
+     * Where elements compare equal, those from the lower range come first.
+     *
+     * @param  src   source array
+     * @param  dest  destination array
+     * @param  lo    start of first range (inclusive)
+     * @param  mid   end of first range and start of second
+     * @param  hi    end of second range (exclusive)
+     * @param  comp  comparator
+     */
+    private static void merge( long[] src, long[] dest, int lo, int mid,
+                               int hi, IndexComparator comp ) {
+        int p = lo;
+        int q = mid;
+        for ( int i = lo; i < hi; i++ ) {
+            if ( q >= hi ||
+                 ( p < mid && comp.compare( src[ p ], src[ q ] ) <= 0 ) ) {
+                dest[ i ] = src[ p++ ];
+            }
+            else {
+                dest[ i ] = src[ q++ ];
+            }
+        }
+    }
+
+    /**
+     * Creates a temporary file which will be deleted on exit.
+     *
+     * @param  prefix  file name prefix
+     * @return  new file
+     */
+    private static File createTempFile( String prefix ) throws IOException {
+        File file = File.createTempFile( prefix, ".tmp" );
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Defines an ordering on row indices.
+     */
+    private static interface IndexComparator {
+
+        /**
+         * Compares two row indices.
+         *
+         * @param  i1  first index
+         * @param  i2  second index
+         * @return  negative, zero or positive according to the ordering
+         */
+        int compare( long i1, long i2 );
+    }
+
+    /**
+     * Reads records from a sorted run file of an external sort.
+     */
+    private class RunReader {
+        private final DataInputStream in_;
+        private int nleft_;
+        final KeyColumn[] keys_;
+        long irow_;
 
         /**
          * Constructor.
          *
-         * @param   table  table whose rows will be compared
-         * @param   colIndices  indices of the columns which are to act as sort
-         *          keys; first element is primary key etc
-         * @param   up  true for sorting into ascending order, false for
-         *          descending order
-         * @param   nullsLast  true if blank values should be considered
-         *          last in the collation order, false if they should
-         *          be considered first
+         * @param  file  run file
+         * @param  nrec  number of records in file
          */
-        RowComparator( StarTable table, int[] colIndices, boolean up,
-                       boolean nullsLast ) throws IOException {
-            table_ = table;
-            colIndices_ = colIndices;
-            up_ = up;
-            nullsLast_ = nullsLast;
-            ncol_ = colIndices_.length;
+        RunReader( File file, int nrec ) throws IOException {
+            in_ = new DataInputStream(
+                      new BufferedInputStream(
+                          new FileInputStream( file ) ) );
+            nleft_ = nrec;
+            keys_ = new KeyColumn[ nkey_ ];
+            for ( int ik = 0; ik < nkey_; ik++ ) {
+                keys_[ ik ] = createKeyColumn( keyClasses_[ ik ], 1 );
+            }
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return  true iff a record was read
+         */
+        boolean next() throws IOException {
+            if ( nleft_ <= 0 ) {
+                return false;
+            }
+            nleft_--;
+            irow_ = in_.readLong();
+            for ( int ik = 0; ik < nkey_; ik++ ) {
+                keys_[ ik ].readValue( in_, 0 );
+            }
+            return true;
+        }
 
-            for ( int icol = 0; icol < ncol_; icol++ ) {
-                ColumnInfo info = table.getColumnInfo( icol );
-                if ( ! Comparable.class
-                      .isAssignableFrom( info.getContentClass() ) ) {
-                    throw new IOException( "Column " + info + 
-                                           " has no defined sort order" );
+        /**
+         * Releases resources.
+         */
+        void close() throws IOException {
+            in_.close();
+        }
+    }
+
+    /**
+     * Keeps the rows which come first (or last) in the sort order
+     * from those submitted to it.
+     * The rows are held in a binary heap whose root is the least
+     * favoured row retained.
+     */
+    private class HeadSelector {
+        private final int nhead_;
+        private final int sense_;
+        private final KeyColumn[] keys_;
+        private final long[] irows_;
+        private final int[] heap_;
+        private int nheap_;
+        private int spare_;
+
+        /**
+         * Constructor.
+         *
+         * @param  nhead  maximum number of rows to retain
+         * @param  keepHead  true to retain the first rows,
+         *                   false to retain the last ones
+         */
+        HeadSelector( int nhead, boolean keepHead ) {
+            nhead_ = nhead;
+            sense_ = keepHead ? +1 : -1;
+            keys_ = new KeyColumn[ nkey_ ];
+            for ( int ik = 0; ik < nkey_; ik++ ) {
+                keys_[ ik ] = createKeyColumn( keyClasses_[ ik ], nhead + 1 );
+            }
+            irows_ = new long[ nhead + 1 ];
+            heap_ = new int[ nhead ];
+            spare_ = nhead;
+        }
+
+        /**
+         * Offers a row for retention.
+         *
+         * @param  irow  row index
+         * @param  keyRow  key values for the row
+         */
+        void submit( long irow, Object[] keyRow ) throws IOException {
+            if ( irow < 0 ) {
+                throw new IOException( "Row index unknown" );
+            }
+            int slot = nheap_ < nhead_ ? nheap_ : spare_;
+            try {
+                for ( int ik = 0; ik < nkey_; ik++ ) {
+                    keys_[ ik ].setValue( slot, keyRow[ ik ] );
                 }
             }
+            catch ( ClassCastException e ) {
+                throw keyTypeError( e );
+            }
+            irows_[ slot ] = irow;
+            accept( slot );
         }
 
         /**
-         * Compares two Numbers.
+         * Offers all the rows retained by another selector.
+         *
+         * @param  other  selector with the same configuration as this one
          */
-        public int compare( Object o1, Object o2 ) {
-            long irow1 = ((Number) o1).longValue();
-            long irow2 = ((Number) o2).longValue();
-            int c = 0;
-            for ( int i = 0; i < ncol_ && c == 0; i++ ) {
-                int icol = colIndices_[ i ];
-                Object val1;
-                Object val2;
-                try {
-                    val1 = table_.getCell( irow1, icol );
-                    val2 = table_.getCell( irow2, icol );
+        void addAll( HeadSelector other ) {
+            for ( int ih = 0; ih < other.nheap_; ih++ ) {
+                int oslot = other.heap_[ ih ];
+                int slot = nheap_ < nhead_ ? nheap_ : spare_;
+                for ( int ik = 0; ik < nkey_; ik++ ) {
+                    keys_[ ik ].copy( slot, other.keys_[ ik ], oslot );
                 }
-                catch ( IOException e ) {
-                    throw new SortException( "Sort Error", e );
+                irows_[ slot ] = other.irows_[ oslot ];
+                accept( slot );
+            }
+        }
+
+        /**
+         * Returns the indices of the retained rows in sorted order.
+         *
+         * @return  row indices
+         */
+        long[] getRowIndices() {
+            long[] slots = new long[ nheap_ ];
+            for ( int ih = 0; ih < nheap_; ih++ ) {
+                slots[ ih ] = heap_[ ih ];
+            }
+            IndexComparator comp = new IndexComparator() {
+                public int compare( long s1, long s2 ) {
+                    return compareSlots( (int) s1, (int) s2 );
                 }
-                try {
-                    c = compareValues( (Comparable) val1,
-                                       (Comparable) val2 );
+            };
+            mergeSort( (long[]) slots.clone(), slots, 0, nheap_, comp );
+            long[] irows = new long[ nheap_ ];
+            for ( int ih = 0; ih < nheap_; ih++ ) {
+                irows[ ih ] = irows_[ (int) slots[ ih ] ];
+            }
+            return irows;
+        }
+
+        /**
+         * Considers a row which has been written into a given slot
+         * for retention.
+         *
+         * @param  slot  slot index
+         */
+        private void accept( int slot ) {
+            if ( nheap_ < nhead_ ) {
+                int ih = nheap_++;
+                heap_[ ih ] = slot;
+                while ( ih > 0 ) {
+                    int ip = ( ih - 1 ) / 2;
+                    if ( isWorse( heap_[ ih ], heap_[ ip ] ) ) {
+                        swap( ih, ip );
+                        ih = ip;
+                    }
+                    else {
+                        break;
+                    }
                 }
-                catch ( ClassCastException e ) {
-                    throw new SortException(
-                        "Expression comparison error during sorting", e );
+            }
+            else if ( isWorse( heap_[ 0 ], slot ) ) {
+                spare_ = heap_[ 0 ];
+                heap_[ 0 ] = slot;
+                int ih = 0;
+                while ( true ) {
+                    int ic = 2 * ih + 1;
+                    if ( ic >= nheap_ ) {
+                        break;
+                    }
+                    if ( ic + 1 < nheap_ &&
+                         isWorse( heap_[ ic + 1 ], heap_[ ic ] ) ) {
+                        ic++;
+                    }
+                    if ( isWorse( heap_[ ic ], heap_[ ih ] ) ) {
+                        swap( ih, ic );
+                        ih = ic;
+                    }
+                    else {
+                        break;
+                    }
                 }
             }
-            return c;
         }
 
         /**
-         * Compares two values.  Each value is the content of a cell in 
-         * a table - <tt>o1</tt> and <tt>o2</tt> should be from the same
-         * column.  Either or both may be null.
+         * Indicates whether one slot is less favoured than another.
+         */
+        private boolean isWorse( int slot1, int slot2 ) {
+            return sense_ * compareSlots( slot1, slot2 ) > 0;
+        }
+
+        /**
+         * Compares the rows in two slots in the full sort order,
+         * with ties resolved by row index.
+         */
+        private int compareSlots( int slot1, int slot2 ) {
+            int c = compareRows( keys_, slot1, keys_, slot2 );
+            if ( c != 0 ) {
+                return c;
+            }
+            long irow1 = irows_[ slot1 ];
+            long irow2 = irows_[ slot2 ];
+            return irow1 < irow2 ? -1 : ( irow1 > irow2 ? +1 : 0 );
+        }
+
+        /**
+         * Swaps two heap elements.
+         */
+        private void swap( int ih1, int ih2 ) {
+            int t = heap_[ ih1 ];
+            heap_[ ih1 ] = heap_[ ih2 ];
+            heap_[ ih2 ] = t;
+        }
+    }
+
+    /**
+     * Stores the values of one sort key for a number of rows.
+     */
+    private static abstract class KeyColumn {
+
+        final boolean nullsLast_;
+
+        /**
+         * Constructor.
          *
-         * @param  o1  first value
-         * @param  o2  second value
-         * @return  +1, 0, or -1 according to o1 greater than, equal to, or
-         *          less than o2
+         * @param   nullsLast  true if blank values should be considered
+         *          last in the collation order, false if they should
+         *          be considered first
          */
-        private int compareValues( Comparable o1, Comparable o2 ) {
-            boolean null1 = Tables.isBlank( o1 );
-            boolean null2 = Tables.isBlank( o2 );
-            if ( null1 && null2 ) {
+        KeyColumn( boolean nullsLast ) {
+            nullsLast_ = nullsLast;
+        }
+
+        /**
+         * Stores a value.
+         *
+         * @param  i   element index
+         * @param  value  key value
+         */
+        abstract void setValue( int i, Object value );
+
+        /**
+         * Copies a value from another column of the same type.
+         *
+         * @param  i   destination element index
+         * @param  src  source column
+         * @param  isrc  source element index
+         */
+        abstract void copy( int i, KeyColumn src, int isrc );
+
+        /**
+         * Compares a value in this column with one in another column
+         * of the same type, in ascending order.
+         *
+         * @param  i1  element index in this column
+         * @param  other  other column
+         * @param  i2  element index in other column
+         * @return  negative, zero or positive according to the
+         *          collation order
+         */
+        abstract int compare( int i1, KeyColumn other, int i2 );
+
+        /**
+         * Writes a value to an output stream.
+         *
+         * @param  out  destination
+         * @param  i   element index
+         */
+        abstract void writeValue( DataOutput out, int i ) throws IOException;
+
+        /**
+         * Reads a value written by {@link #writeValue} from an input stream.
+         *
+         * @param  in   source
+         * @param  i   element index
+         */
+        abstract void readValue( DataInput in, int i ) throws IOException;
+
+        /**
+         * Returns the ordering of a pair of values given their blankness.
+         * Only valid if at least one is blank.
+         *
+         * @param  null1  whether first value is blank
+         * @param  null2  whether second value is blank
+         * @return  comparison result
+         */
+        int compareNulls( boolean null1, boolean null2 ) {
+            if ( null1 == null2 ) {
                 return 0;
             }
-            else if ( null1 ) {
-                return ( up_ ^ nullsLast_ ) ? -1 : +1;
-            }
-            else if ( null2 ) {
-                return ( up_ ^ nullsLast_ ) ? +1 : -1;
-            }
             else {
-                return up_ ? o1.compareTo( o2 )
-                           : o2.compareTo( o1 );
+                return ( null1 ^ ! nullsLast_ ) ? +1 : -1;
             }
         }
     }
 
     /**
-     * Runtime exception which can be thrown from methods invoked by 
-     * Arrays.sort.
+     * KeyColumn implementation for values which can be encoded as longs
+     * with the same ordering.
      */
-    private static class SortException extends RuntimeException {
+    private static class LongKeyColumn extends KeyColumn {
+
+        private final int type_;
+        private final long[] vals_;
+        private final boolean[] nulls_;
+
+        private static final int INTEGER = 0;
+        private static final int DOUBLE = 1;
+        private static final int FLOAT = 2;
+        private static final int BOOLEAN = 3;
+        private static final int CHARACTER = 4;
 
         /**
          * Constructor.
          *
-         * @param  msg  message
-         * @param  e    cause
+         * @param  clazz  value class
+         * @param  n   number of elements
+         * @param   nullsLast  true if blank values should be considered
+         *          last in the collation order, false if they should
+         *          be considered first
+         */
+        LongKeyColumn( Class clazz, int n, boolean nullsLast ) {
+            super( nullsLast );
+            type_ = getType( clazz );
+            vals_ = new long[ n ];
+            nulls_ = new boolean[ n ];
+        }
+
+        void setValue( int i, Object value ) {
+            boolean isNull = value == null;
+            long lval = 0;
+            if ( ! isNull ) {
+                switch ( type_ ) {
+                    case INTEGER:
+                        lval = ((Number) value).longValue();
+                        break;
+                    case DOUBLE:
+                        double dval = ((Double) value).doubleValue();
+                        isNull = Double.isNaN( dval );
+                        lval = encodeDouble( dval );
+                        break;
+                    case FLOAT:
+                        float fval = ((Float) value).floatValue();
+                        isNull = Float.isNaN( fval );
+                        lval = encodeFloat( fval );
+                        break;
+                    case BOOLEAN:
+                        lval = ((Boolean) value).booleanValue() ? 1 : 0;
+                        break;
+                    case CHARACTER:
+                        lval = ((Character) value).charValue();
+                        break;
+                    default:
+                        throw new AssertionError();
+                }
+            }
+            nulls_[ i ] = isNull;
+            vals_[ i ] = isNull ? 0 : lval;
+        }
+
+        void copy( int i, KeyColumn src, int isrc ) {
+            LongKeyColumn lsrc = (LongKeyColumn) src;
+            nulls_[ i ] = lsrc.nulls_[ isrc ];
+            vals_[ i ] = lsrc.vals_[ isrc ];
+        }
+
+        int compare( int i1, KeyColumn other, int i2 ) {
+            LongKeyColumn o = (LongKeyColumn) other;
+            boolean null1 = nulls_[ i1 ];
+            boolean null2 = o.nulls_[ i2 ];
+            if ( null1 || null2 ) {
+                return compareNulls( null1, null2 );
+            }
+            long v1 = vals_[ i1 ];
+            long v2 = o.vals_[ i2 ];
+            return v1 < v2 ? -1 : ( v1 > v2 ? +1 : 0 );
+        }
+
+        void writeValue( DataOutput out, int i ) throws IOException {
+            if ( nulls_[ i ] ) {
+                out.writeByte( 0 );
+            }
+            else {
+                out.writeByte( 1 );
+                out.writeLong( vals_[ i ] );
+            }
+        }
+
+        void readValue( DataInput in, int i ) throws IOException {
+            boolean isNull = in.readByte() == 0;
+            nulls_[ i ] = isNull;
+            vals_[ i ] = isNull ? 0 : in.readLong();
+        }
+
+        /**
+         * Indicates whether values of a given class can be stored
+         * in a LongKeyColumn.
+         *
+         * @param  clazz  value class
+         * @return  true iff a LongKeyColumn can store values of clazz
          */
-        SortException( String msg, Throwable e ) {
-            super( msg, e );
+        static boolean isSupported( Class clazz ) {
+            return getType( clazz ) >= 0;
         }
 
         /**
-         * Returns an IOException corresponding to this exception.
+         * Returns the encoding type code for a given class.
          *
-         * @return  IOException
+         * @param  clazz  value class
+         * @return  type code, or -1 if not supported
          */
-        IOException asIOException() {
-            Throwable error = getCause();
-            return error instanceof IOException
-                 ? (IOException) error
-                 : (IOException) new IOException( getMessage() )
-                                .initCause( error );
+        private static int getType( Class clazz ) {
+            if ( clazz == Byte.class || clazz == Short.class ||
+                 clazz == Integer.class || clazz == Long.class ) {
+                return INTEGER;
+            }
+            else if ( clazz == Double.class ) {
+                return DOUBLE;
+            }
+            else if ( clazz == Float.class ) {
+                return FLOAT;
+            }
+            else if ( clazz == Boolean.class ) {
+                return BOOLEAN;
+            }
+            else if ( clazz == Character.class ) {
+                return CHARACTER;
+            }
+            else {
+                return -1;
+            }
+        }
+
+        /**
+         * Encodes a double value as a long whose natural ordering is
+         * the same as that of <code>Double.compareTo</code>.
+         *
+         * @param  dval  non-NaN value
+         * @return  encoded value
+         */
+        private static long encodeDouble( double dval ) {
+            long bits = Double.doubleToLongBits( dval );
+            return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+        }
+
+        /**
+         * Encodes a float value as a long whose natural ordering is
+         * the same as that of <code>Float.compareTo</code>.
+         *
+         * @param  fval  non-NaN value
+         * @return  encoded value
+         */
+        private static long encodeFloat( float fval ) {
+            int bits = Float.floatToIntBits( fval );
+            return bits < 0 ? bits ^ Integer.MAX_VALUE : bits;
         }
     }
 
+    /**
+     * KeyColumn implementation that stores Comparable objects.
+     */
+    private static class ObjectKeyColumn extends KeyColumn {
+
+        private final Object[] vals_;
+
+        /**
+         * Constructor.
+         *
+         * @param  n   number of elements
+         * @param   nullsLast  true if blank values should be considered
+         *          last in the collation order, false if they should
+         *          be considered first
+         */
+        ObjectKeyColumn( int n, boolean nullsLast ) {
+            super( nullsLast );
+            vals_ = new Object[ n ];
+        }
+
+        void setValue( int i, Object value ) {
+            vals_[ i ] = Tables.isBlank( value ) ? null : (Comparable) value;
+        }
+
+        void copy( int i, KeyColumn src, int isrc ) {
+            vals_[ i ] = ((ObjectKeyColumn) src).vals_[ isrc ];
+        }
+
+        int compare( int i1, KeyColumn other, int i2 ) {
+            Object v1 = vals_[ i1 ];
+            Object v2 = ((ObjectKeyColumn) other).vals_[ i2 ];
+            if ( v1 == null || v2 == null ) {
+                return compareNulls( v1 == null, v2 == null );
+            }
+            return ((Comparable) v1).compareTo( v2 );
+        }
+
+        void writeValue( DataOutput out, int i ) throws IOException {
+            Object val = vals_[ i ];
+            if ( val == null ) {
+                out.writeByte( 0 );
+            }
+            else if ( val instanceof String ) {
+                byte[] buf = ((String) val).getBytes( "UTF-8" );
+                out.writeByte( 1 );
+                out.writeInt( buf.length );
+                out.write( buf );
+            }
+            else {
+                throw new IOException( "Can't serialize sort key "
+                                     + val.getClass().getName() );
+            }
+        }
+
+        void readValue( DataInput in, int i ) throws IOException {
+            if ( in.readByte() == 0 ) {
+                vals_[ i ] = null;
+            }
+            else {
+                byte[] buf = new byte[ in.readInt() ];
+                in.readFully( buf );
+                vals_[ i ] = new String( buf, "UTF-8" );
+            }
+        }
+    }
 }
@@ -97,6 +97,84 @@ public class Tables {
         return StoragePolicy.getDefaultPolicy().randomTable( startab );
     }
 
+    /**
+     * Returns a RowSplittable for a table based on its ordinary
+     * data access methods.
+     * If the table has random access, the result splits by row index
+     * and reads data using a separate {@link RowAccess} for each split;
+     * otherwise it wraps the table's RowSequence and does not split.
+     *
+     * <p>This is suitable for use as the implementation of
+     * {@link StarTable#getRowSplittable} for most tables.
+     *
+     * @param  table  table
+     * @return  new splittable
+     */
+    public static RowSplittable getDefaultRowSplittable( StarTable table )
+            throws IOException {
+        return table.isRandom() && table.getRowCount() >= 0
+             ? (RowSplittable) new RandomRowSplittable( table )
+             : (RowSplittable) new SequentialRowSplittable( table );
+    }
+
+    /**
+     * Returns a BlockRowSequence view of a given row sequence.
+     * If the supplied sequence already implements
+     * {@link BlockRowSequence} it is returned unchanged,
+     * otherwise a wrapper is returned which assembles blocks by reading
+     * rows one at a time.
+     *
+     * @param  rseq  row sequence, positioned before the first row
+     * @return  block row sequence covering the same rows
+     */
+    public static BlockRowSequence getBlockRowSequence( RowSequence rseq ) {
+        return rseq instanceof BlockRowSequence
+             ? (BlockRowSequence) rseq
+             : new DefaultBlockRowSequence( rseq );
+    }
+
+    /**
+     * Returns a RowAccess for a table based on its
+     * <code>getCell</code> and <code>getRow</code> methods.
+     * Concurrent use of instances returned by this method is only
+     * as efficient as concurrent use of those methods.
+     *
+     * <p>This is suitable for use as the implementation of
+     * {@link StarTable#getRowAccess} for tables with no better way
+     * of providing independent random access.
+     *
+     * @param  table  table
+     * @return  new row access
+     * @throws UnsupportedOperationException  if <tt>table.isRandom()</tt>
+     *         returns <tt>false</tt>
+     */
+    public static RowAccess getDefaultRowAccess( final StarTable table ) {
+        if ( ! table.isRandom() ) {
+            throw new UnsupportedOperationException( "No random access" );
+        }
+        return new RowAccess() {
+            private long irow_ = -1;
+            public void setRowIndex( long irow ) {
+                irow_ = irow;
+            }
+            public Object getCell( int icol ) throws IOException {
+                checkRow();
+                return table.getCell( irow_, icol );
+            }
+            public Object[] getRow() throws IOException {
+                checkRow();
+                return table.getRow( irow_ );
+            }
+            public void close() {
+            }
+            private void checkRow() {
+                if ( irow_ < 0 ) {
+                    throw new IllegalStateException( "No current row" );
+                }
+            }
+        };
+    }
+
     /**
      * Convenience method to return an array of all the column headers
      * in a given table.  Modifying this array will not affect the table.
@@ -314,6 +392,61 @@ public class Tables {
             || false;
     }
 
+    /**
+     * Indicates whether every value of a given numeric class can be
+     * represented exactly by a primitive double.
+     * This is true for the wrapper classes of the primitive numeric types
+     * other than long; values of such classes can be transmitted as
+     * doubles, with NaN standing for null, and reconstructed
+     * using {@link #doubleToNumber}.
+     *
+     * @param  clazz  class
+     * @return  true iff <code>clazz</code> is Byte, Short, Integer,
+     *          Float or Double
+     */
+    public static boolean isDoubleExact( Class clazz ) {
+        return clazz == Double.class
+            || clazz == Float.class
+            || clazz == Integer.class
+            || clazz == Short.class
+            || clazz == Byte.class;
+    }
+
+    /**
+     * Converts a double value to a wrapper object of a given class.
+     * A NaN value is converted to null, except for the floating point
+     * classes.
+     *
+     * @param  dval  value
+     * @param  clazz  class for which {@link #isDoubleExact} is true
+     * @return  object of type <code>clazz</code> representing
+     *          <code>dval</code>, or null
+     */
+    public static Number doubleToNumber( double dval, Class clazz ) {
+        if ( clazz == Double.class ) {
+            return new Double( dval );
+        }
+        else if ( clazz == Float.class ) {
+            return new Float( (float) dval );
+        }
+        else if ( Double.isNaN( dval ) ) {
+            return null;
+        }
+        else if ( clazz == Integer.class ) {
+            return new Integer( (int) dval );
+        }
+        else if ( clazz == Short.class ) {
+            return new Short( (short) dval );
+        }
+        else if ( clazz == Byte.class ) {
+            return new Byte( (byte) dval );
+        }
+        else {
+            throw new IllegalArgumentException( "Not double-exact: "
+                                              + clazz.getName() );
+        }
+    }
+
     /**
      * Convenience method to consruct a TableSequence for a single table.
      *
@@ -381,8 +514,80 @@ public class Tables {
     public static StarTable sortTable( StarTable table, int[] colIndices,
                                        boolean up, boolean nullsLast )
             throws IOException {
-        long[] rowMap =
-            TableSorter.getSortedOrder( table, colIndices, up, nullsLast );
+        return sortTable( table, new ColumnPermutedStarTable( table,
+                                                              colIndices ),
+                          up, nullsLast );
+    }
+
+    /**
+     * Returns a sorted version of a table, with sort keys supplied by
+     * a second table.  Each row of <tt>keyTable</tt> holds the sort key
+     * values for the corresponding row of <tt>table</tt>;
+     * its first column is the primary sort key, but in case of a tie
+     * the second column is used, and so on.
+     * Rows with equal keys retain their original order.
+     * The original table is not affected.
+     *
+     * <p>Key values are read and sorted using multiple threads where
+     * possible, and tables too large to sort in memory are sorted
+     * using temporary files.
+     *
+     * @param   table  table to sort - must be random access
+     * @param   keyTable  table with the same row count as <tt>table</tt>
+     *          whose columns supply the sort keys
+     * @param   up  true for sorting into ascending order, false for
+     *          descending order
+     * @param   nullsLast  true if blank values should be considered
+     *          last in the collation order, false if they should
+     *          be considered first
+     * @return  a table with the same rows as <tt>table</tt> but in an
+     *          order determined by the other arguments
+     * @throws  IOException if <tt>table.isRandom</tt> is not true,
+     *          or a key column has no defined sort order
+     */
+    public static StarTable sortTable( StarTable table, StarTable keyTable,
+                                       boolean up, boolean nullsLast )
+            throws IOException {
+        if ( ! table.isRandom() ) {
+            throw new IOException( "Table to sort must have random access" );
+        }
+        return new TableSorter( keyTable, up, nullsLast ).sortTable( table );
+    }
+
+    /**
+     * Returns a table containing only the first or last few rows of a
+     * sorted version of a table.  The result is the same as that of
+     * taking the head or tail of the result of
+     * {@link #sortTable(StarTable,StarTable,boolean,boolean)},
+     * but the whole table is not sorted, so it is much cheaper
+     * when <tt>nrow</tt> is small.
+     *
+     * @param   table  table to sort - must be random access
+     * @param   keyTable  table with the same row count as <tt>table</tt>
+     *          whose columns supply the sort keys
+     * @param   nrow  maximum number of rows to retain
+     * @param   keepHead  true to retain the first rows in sorted order,
+     *          false to retain the last ones
+     * @param   up  true for sorting into ascending order, false for
+     *          descending order
+     * @param   nullsLast  true if blank values should be considered
+     *          last in the collation order, false if they should
+     *          be considered first
+     * @return  table containing at most <tt>nrow</tt> rows of
+     *          <tt>table</tt> in sorted order
+     * @throws  IOException if <tt>table.isRandom</tt> is not true,
+     *          or a key column has no defined sort order
+     */
+    public static StarTable sortHeadTable( StarTable table,
+                                           StarTable keyTable, int nrow,
+                                           boolean keepHead, boolean up,
+                                           boolean nullsLast )
+            throws IOException {
+        if ( ! table.isRandom() ) {
+            throw new IOException( "Table to sort must have random access" );
+        }
+        long[] rowMap = new TableSorter( keyTable, up, nullsLast )
+                       .getHeadOrder( nrow, keepHead );
         return new RowPermutedStarTable( table, rowMap );
     }
 
@@ -0,0 +1,43 @@
+package uk.ac.starlink.table;
+
+/**
+ * RowSplittable which wraps another RowSplittable.
+ * All methods are implemented by forwarding them to the corresponding
+ * methods of the base splittable.
+ *
+ * <p>This class is provided so that it can be extended by subclasses
+ * which modify the view of the base splittable in useful ways.
+ * Subclasses which do so will normally need to override {@link #split}
+ * so that the result is wrapped in the same way.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ * @see      WrapperStarTable#getRowSplittable
+ */
+public class WrapperRowSplittable extends WrapperRowSequence
+                                  implements RowSplittable {
+
+    protected RowSplittable baseSplit;
+
+    /**
+     * Constructor.
+     *
+     * @param  baseSplit  the base row splittable
+     */
+    public WrapperRowSplittable( RowSplittable baseSplit ) {
+        super( baseSplit );
+        this.baseSplit = baseSplit;
+    }
+
+    public RowSplittable split() {
+        return baseSplit.split();
+    }
+
+    public long splittableSize() {
+        return baseSplit.splittableSize();
+    }
+
+    public long getRowIndex() {
+        return baseSplit.getRowIndex();
+    }
+}
@@ -103,6 +103,20 @@ public class WrapperStarTable implements StarTable {
         return baseTable.getRowSequence();
     }
 
+    /**
+     * The <code>WrapperStarTable</code> implementation of this method
+     * does not forward to the base table, since subclasses frequently
+     * change the data of the base table without overriding this method.
+     * It returns the result of
+     * {@link Tables#getDefaultRowSplittable Tables.getDefaultRowSplittable},
+     * which is based on this table's own data access methods.
+     * Subclasses which do not modify the row data may wish to override it
+     * to return the base table's splittable.
+     */
+    public RowSplittable getRowSplittable() throws IOException {
+        return Tables.getDefaultRowSplittable( this );
+    }
+
     public boolean isRandom() {
         return baseTable.isRandom();
     }
@@ -115,6 +129,17 @@ public class WrapperStarTable implements StarTable {
         return baseTable.getRow( irow );
     }
 
+    /**
+     * The <code>WrapperStarTable</code> implementation of this method
+     * does not forward to the base table, for the same reasons as
+     * {@link #getRowSplittable}.
+     * It returns the result of
+     * {@link Tables#getDefaultRowAccess Tables.getDefaultRowAccess}.
+     */
+    public RowAccess getRowAccess() throws IOException {
+        return Tables.getDefaultRowAccess( this );
+    }
+
     /**
      * Convenience method to get an <tt>int</tt> value from a <tt>long</tt>.
      * Invokes {@link Tables#checkedLongToInt}.
@@ -91,36 +91,45 @@ public class AsciiStarTable extends StreamStarTable {
      */
     public AsciiStarTable( DataSource datsrc )
             throws TableFormatException, IOException {
+        this( datsrc, 0 );
+    }
+
+    /**
+     * Constructs a new AsciiStarTable from a datasource,
+     * optionally inferring column types from a sample of the rows.
+     *
+     * @param  datsrc  the data source containing the table text
+     * @param  sampleSize  number of rows to sample for type inference,
+     *                     or zero to examine all rows
+     * @throws TableFormatException  if the input stream doesn't appear to
+     *         form a ASCII-format table
+     * @throws IOException if some I/O error occurs
+     * @see    StreamStarTable#setSampleSize
+     */
+    public AsciiStarTable( DataSource datsrc, int sampleSize )
+            throws TableFormatException, IOException {
         super();
+        setSampleSize( sampleSize );
         init( datsrc );
     }
 
+    /**
+     * Returns true.  Records may be read in chunks, since comments
+     * are only significant before the first data row, and quoted
+     * strings may not contain line breaks.
+     */
+    protected boolean canReadChunks() {
+        return true;
+    }
+
     protected RowEvaluator.Metadata obtainMetadata()
             throws TableFormatException, IOException {
 
-        /* Get an input stream. */
-        PushbackInputStream in = getInputStream();
-
-        /* Look at each row in it counting cells and assessing what sort of
+        /* Look at each row counting cells and assessing what sort of
          * data they look like. */
         RowEvaluator evaluator = new RowEvaluator();
         comments_ = new ArrayList();
-        long lrow = 0;
-        try {
-            for ( List row; ( row = readRow( in ) ) != null; ) {
-                lrow++;
-                evaluator.submitRow( row );
-            }
-        }
-        catch ( TableFormatException e ) {
-            throw new TableFormatException( e.getMessage() + " at row " + lrow,
-                                            e );
-        }
-        finally {
-            if ( in != null ) {
-                in.close();
-            }
-        }
+        evaluateRows( evaluator, true );
 
         /* Get and check the metadata. */
         RowEvaluator.Metadata meta = evaluator.getMetadata();
@@ -19,6 +19,39 @@ import uk.ac.starlink.util.DataSource;
  */
 public class AsciiTableBuilder implements TableBuilder {
 
+    private int sampleSize_;
+
+    /**
+     * Constructor.
+     * The sample size is initialised from the
+     * {@link StreamStarTable#SAMPLE_PROPERTY} system property.
+     */
+    public AsciiTableBuilder() {
+        sampleSize_ = StreamStarTable.getDefaultSampleSize();
+    }
+
+    /**
+     * Sets the number of rows examined to infer column types.
+     * If zero, all rows are examined, which requires an extra pass
+     * through the data.  If positive, types are inferred from a sample
+     * of rows, and reading a later row with a value that does not fit
+     * its column's type fails with a TableFormatException.
+     *
+     * @param  sampleSize  sample size, or zero to examine all rows
+     */
+    public void setSampleSize( int sampleSize ) {
+        sampleSize_ = sampleSize;
+    }
+
+    /**
+     * Returns the number of rows examined to infer column types.
+     *
+     * @return  sample size, or zero if all rows are examined
+     */
+    public int getSampleSize() {
+        return sampleSize_;
+    }
+
     public String getFormatName() {
         return "ASCII";
     }
@@ -30,7 +63,7 @@ public class AsciiTableBuilder implements TableBuilder {
     public StarTable makeStarTable( DataSource datsrc, boolean wantRandom,
                                     StoragePolicy policy )
             throws TableFormatException, IOException {
-        return new AsciiStarTable( datsrc );
+        return new AsciiStarTable( datsrc, sampleSize_ );
     }
 
     public void streamStarTable( InputStream in, TableSink sink, String pos )
@@ -41,52 +41,65 @@ public class CsvStarTable extends StreamStarTable {
 
     private boolean hasHeading_;
 
+    /**
+     * Constructs a new CsvStarTable from a datasource,
+     * examining all rows to infer column types.
+     *
+     * @param  datsrc  the data source containing the table text
+     */
     public CsvStarTable( DataSource datsrc )
             throws TableFormatException, IOException {
+        this( datsrc, 0 );
+    }
+
+    /**
+     * Constructs a new CsvStarTable from a datasource,
+     * optionally inferring column types from a sample of the rows.
+     *
+     * @param  datsrc  the data source containing the table text
+     * @param  sampleSize  number of rows to sample for type inference,
+     *                     or zero to examine all rows
+     * @see    StreamStarTable#setSampleSize
+     */
+    public CsvStarTable( DataSource datsrc, int sampleSize )
+            throws TableFormatException, IOException {
         super();
+        setSampleSize( sampleSize );
         init( datsrc );
     }
 
-    protected PushbackInputStream getInputStream() throws IOException {
-        PushbackInputStream in = super.getInputStream();
+    protected void skipHeader( PushbackInputStream in ) throws IOException {
 
         /* If the first row is known to be a non-data row, skip it. */
         if ( hasHeading_ ) {
             readRow( in );
         }
-        return in;
     }
 
-    protected RowEvaluator.Metadata obtainMetadata()
-            throws TableFormatException, IOException {
+    /**
+     * Returns true.  Records may be read in chunks, since line breaks
+     * within quoted cells can be identified.
+     */
+    protected boolean canReadChunks() {
+        return true;
+    }
 
-        /* Get an input stream. */
-        PushbackInputStream in = super.getInputStream();
+    protected byte getRecordQuote() {
+        return (byte) '"';
+    }
 
-        /* Read and store the first column.  It could be a special header
-         * row, or it could be just data. */
-        long lrow = 0;
-        String[] row0 = (String[]) readRow( in ).toArray( new String[ 0 ] );
-        lrow++;
+    protected RowEvaluator.Metadata obtainMetadata()
+            throws TableFormatException, IOException {
 
-        /* Look at each subsequent row assessing what sort of data they
-         * look like. */
+        /* Read and store the first row.  It could be a special header
+         * row, or it could be just data.  Look at each subsequent row
+         * assessing what sort of data they look like. */
         RowEvaluator evaluator = new RowEvaluator();
-        try {
-            for ( List row; ( row = readRow( in ) ) != null; ) {
-                evaluator.submitRow( row );
-                lrow++;
-            }
-        }
-        catch ( TableFormatException e ) {
-            throw new TableFormatException( e.getMessage() + " at line "
-                                          + ( lrow + 1 ), e );
-        }
-        finally {
-            if ( in != null ) {
-                in.close();
-            }
+        List row0list = evaluateRows( evaluator, false );
+        if ( row0list == null ) {
+            throw new TableFormatException( "No rows" );
         }
+        String[] row0 = (String[]) row0list.toArray( new String[ 0 ] );
 
         /* Get a first look at the metadata (may be adjusted later). */
         RowEvaluator.Metadata meta = evaluator.getMetadata();
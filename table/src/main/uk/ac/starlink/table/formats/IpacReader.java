@@ -12,10 +12,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.logging.Logger;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.DescribedValue;
-import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.TableFormatException;
 import uk.ac.starlink.table.DomainMapper;
 import uk.ac.starlink.table.TimeMapper;
@@ -27,19 +27,26 @@ import uk.ac.starlink.table.ValueInfo;
  * <a href="http://irsa.ipac.caltech.edu/applications/DDGEN/Doc/ipac_tbl.html"
            >http://irsa.ipac.caltech.edu/applications/DDGEN/Doc/ipac_tbl.html</a>.
  *
+ * <p>Cell values are decoded directly from the text of each data line,
+ * without extracting a string for each cell.
+ * Blocks of lines may be read using the {@link BlockRowSequence}
+ * methods; numeric values from such blocks can then be retrieved
+ * without creating a wrapper object for each one.
+ *
  * @author   Mark Taylor
  * @since    7 Feb 2006
  */
-class IpacReader implements RowSequence {
+class IpacReader implements BlockRowSequence {
 
     private final InputStream in_;
     private final int[] ends_;
-    private final String[] tokens_;
     private final ColumnReader[] colReaders_;
     private final DescribedValue[] params_;
     private final LineSequence lseq_;
     private String dataLine_;
-    private String[] dataTokens_;
+    private String[] blockLines_;
+    private int nblock_;
+    private boolean inBlock_;
 
     private static final Logger logger_ =
         Logger.getLogger( "uk.ac.starlink.table.formats" );
@@ -64,7 +71,7 @@ class IpacReader implements RowSequence {
          * column in the table. */
         ends_ = readEnds( lseq_ );
         int ncol = ends_.length;
-        tokens_ = new String[ ncol ];
+        blockLines_ = new String[ 0 ];
 
         /* Read and parse the lines giving column metadata. */
         String[] hlines = readHeaderLines( lseq_ );
@@ -123,43 +130,124 @@ class IpacReader implements RowSequence {
     }
 
     public boolean next() throws IOException {
+        inBlock_ = false;
         dataLine_ = lseq_.nextLine();
-        dataTokens_ = null;
         return dataLine_ != null;
     }
 
     public Object getCell( int icol ) throws IOException {
-        return colReaders_[ icol ].readValue( getDataTokens()[ icol ] );
+        return readCell( getDataLine(), icol );
     }
 
     public Object[] getRow() throws IOException {
         int ncol = colReaders_.length;
-        String[] tokens = getDataTokens();
+        String line = getDataLine();
         Object[] row = new Object[ ncol ];
         for ( int icol = 0; icol < ncol; icol++ ) {
-            row[ icol ] = colReaders_[ icol ].readValue( tokens[ icol ] );
+            row[ icol ] = readCell( line, icol );
         }
         return row;
     }
 
+    public int nextBlock( int maxRows ) throws IOException {
+        if ( blockLines_.length < maxRows ) {
+            blockLines_ = new String[ maxRows ];
+        }
+        inBlock_ = true;
+        dataLine_ = null;
+        int n = 0;
+        for ( String line;
+              n < maxRows && ( line = lseq_.nextLine() ) != null; ) {
+            blockLines_[ n++ ] = line;
+        }
+        nblock_ = n;
+        return n;
+    }
+
+    public void getDoubleBlock( int icol, double[] buf, int off ) {
+        checkBlock();
+        ColumnReader rdr = colReaders_[ icol ];
+        for ( int i = 0; i < nblock_; i++ ) {
+            String line = blockLines_[ i ];
+            int start = getTokenStart( line, icol );
+            int end = getTokenEnd( line, icol, start );
+            buf[ off + i ] = rdr.readDouble( line, start, end );
+        }
+    }
+
+    public void getObjectBlock( int icol, Object[] buf, int off ) {
+        checkBlock();
+        for ( int i = 0; i < nblock_; i++ ) {
+            buf[ off + i ] = readCell( blockLines_[ i ], icol );
+        }
+    }
+
     public void close() throws IOException {
         in_.close();
     }
 
     /**
-     * Returns the array of per-column data tokens for the current data row,
-     * if necessary first reading it from the current row text.
+     * Returns the text of the current data row.
      *
-     * @return   data token array
+     * @return  data line
      */
-    private String[] getDataTokens() throws IOException {
-        if ( dataLine_ == null ) {
-            throw new IllegalStateException( "next() not yet called" );
+    private String getDataLine() {
+        if ( dataLine_ == null || inBlock_ ) {
+            throw new IllegalStateException( "No current row" );
         }
-        if ( dataTokens_ == null ) {
-            dataTokens_ = readDataTokens( dataLine_ );
+        return dataLine_;
+    }
+
+    /**
+     * Checks that there is a current block.
+     */
+    private void checkBlock() {
+        if ( ! inBlock_ ) {
+            throw new IllegalStateException( "No current block" );
         }
-        return dataTokens_;
+    }
+
+    /**
+     * Decodes the value of a given column from a data line.
+     *
+     * @param  line  data line
+     * @param  icol  column index
+     * @return  cell value
+     */
+    private Object readCell( String line, int icol ) {
+        int start = getTokenStart( line, icol );
+        int end = getTokenEnd( line, icol, start );
+        return colReaders_[ icol ].readValue( line, start, end );
+    }
+
+    /**
+     * Returns the index of the first non-blank character of a given
+     * column's field in a data line.
+     *
+     * @param  line  data line
+     * @param  icol  column index
+     * @return   trimmed start index of field
+     */
+    private int getTokenStart( String line, int icol ) {
+        int leng = line.length();
+        int start = Math.min( icol == 0 ? 0 : ends_[ icol - 1 ], leng );
+        int end = Math.min( ends_[ icol ], leng );
+        return NumberParser.trimStart( line, start, end );
+    }
+
+    /**
+     * Returns the index following the last non-blank character of a given
+     * column's field in a data line.
+     *
+     * @param  line  data line
+     * @param  icol  column index
+     * @param  start  trimmed start index of field
+     * @return   trimmed end index of field
+     */
+    private int getTokenEnd( String line, int icol, int start ) {
+        return NumberParser.trimEnd( line, start,
+                                     Math.min( ends_[ icol ],
+                                               line.length() ) );
     }
 
     /**
@@ -180,24 +268,6 @@ class IpacReader implements RowSequence {
         return tokens;
     }
 
-    /**
-     * Parses a data line and returns the tokens.
-     *
-     * @return  array of trimmed strings giving the per-column contents of
-     *          a data line
-     */
-    private String[] readDataTokens( String line ) {
-        int ipos = 0;
-        String[] tokens = tokens_;
-        int leng = line.length();
-        for ( int icol = 0; icol < tokens.length; icol++ ) {
-            tokens[ icol ] = 
-                line.substring( ipos, Math.min( ends_[ icol ], leng ) ).trim();
-            ipos = ends_[ icol ];
-        }
-        return tokens;
-    }
-
     /**
      * Reads all the header lines next up in a line sequence.
      * Header lines are ones that start with a '|' character.
@@ -409,87 +479,112 @@ class IpacReader implements RowSequence {
         if ( typeMatch( type, "int" ) || type.equals( "i" ) ) {
             info.setContentClass( Integer.class );
             info.setNullable( hasBlank );
-            return new ColumnReader( info ) {
-                Object readValue( String token ) {
-                    if ( hasBlank && blankVal.equals( token ) ) {
-                        return null;
-                    }
-                    else {
-                        try {
-                            return Integer.valueOf( token );
-                        }
-                        catch ( NumberFormatException e ) {
-                            return null;
-                        }
-                    }
+            return new ColumnReader( info, blankVal ) {
+                Object readValue( String line, int start, int end ) {
+                    return isInteger( line, start, end,
+                                      Integer.MIN_VALUE, Integer.MAX_VALUE )
+                         ? new Integer( (int) NumberParser
+                                             .parseInteger( line, start,
+                                                            end ) )
+                         : null;
+                }
+                double readDouble( String line, int start, int end ) {
+                    return isInteger( line, start, end,
+                                      Integer.MIN_VALUE, Integer.MAX_VALUE )
+                         ? NumberParser.parseInteger( line, start, end )
+                         : Double.NaN;
                 }
             };
         }
         else if ( typeMatch( type, "long" ) || typeMatch( type, "l" ) ) {
             info.setContentClass( Long.class );
-            return new ColumnReader( info ) {
-                Object readValue( String token ) {
-                    if ( hasBlank && blankVal.equals( token ) ) {
-                        return null;
-                    }
-                    else {
-                        try {
-                            return Long.valueOf( token );
-                        }
-                        catch ( NumberFormatException e ) {
-                            return null;
-                        }
-                    }
+            return new ColumnReader( info, blankVal ) {
+                Object readValue( String line, int start, int end ) {
+                    return isInteger( line, start, end,
+                                      Long.MIN_VALUE, Long.MAX_VALUE )
+                         ? new Long( NumberParser
+                                    .parseInteger( line, start, end ) )
+                         : null;
+                }
+                double readDouble( String line, int start, int end ) {
+                    return isInteger( line, start, end,
+                                      Long.MIN_VALUE, Long.MAX_VALUE )
+                         ? NumberParser.parseInteger( line, start, end )
+                         : Double.NaN;
                 }
             };
         }
         else if ( typeMatch( type, "double" ) || type.equals( "d" ) ) {
             info.setContentClass( Double.class );
-            return new ColumnReader( info ) {
-                Object readValue( String token ) {
-                    if ( hasBlank && blankVal.equals( token ) ) {
+            return new ColumnReader( info, blankVal ) {
+                Object readValue( String line, int start, int end ) {
+                    if ( isBlank( line, start, end ) ) {
                         return null;
                     }
+                    else if ( NumberParser.isDecimal( line, start, end,
+                                                      false ) ) {
+                        return new Double( NumberParser
+                                          .parseDecimal( line, start, end,
+                                                         false ) );
+                    }
                     else {
                         try {
-                            return Double.valueOf( token );
+                            return Double.valueOf( line.substring( start,
+                                                                   end ) );
                         }
                         catch ( NumberFormatException e ) {
                             return null;
                         }
                     }
                 }
+                double readDouble( String line, int start, int end ) {
+                    return ! isBlank( line, start, end ) &&
+                           NumberParser.isDecimal( line, start, end, false )
+                         ? NumberParser.parseDecimal( line, start, end, false )
+                         : super.readDouble( line, start, end );
+                }
             };
         }
         else if ( typeMatch( type, "float" ) || type.equals( "f" ) ||
                   typeMatch( type, "real" ) || type.equals( "r" ) ) {
             info.setContentClass( Float.class );
-            return new ColumnReader( info ) {
-                Object readValue( String token ) {
-                    if ( hasBlank && blankVal.equals( token ) ) {
+            return new ColumnReader( info, blankVal ) {
+                Object readValue( String line, int start, int end ) {
+                    if ( isBlank( line, start, end ) ) {
                         return null;
                     }
+                    else if ( NumberParser.isDecimal( line, start, end,
+                                                      false ) ) {
+                        return new Float( NumberParser
+                                         .parseDecimalFloat( line, start, end,
+                                                             false ) );
+                    }
                     else {
                         try {
-                            return Float.valueOf( token );
+                            return Float.valueOf( line.substring( start,
+                                                                  end ) );
                         }
                         catch ( NumberFormatException e ) {
                             return null;
                         }
                     }
                 }
+                double readDouble( String line, int start, int end ) {
+                    return ! isBlank( line, start, end ) &&
+                           NumberParser.isDecimal( line, start, end, false )
+                         ? NumberParser.parseDecimalFloat( line, start, end,
+                                                           false )
+                         : super.readDouble( line, start, end );
+                }
             };  
         }
         else if ( typeMatch( type, "char" ) || type.equals( "c" ) ) {
             info.setContentClass( String.class );
-            return new ColumnReader( info ) {
-                Object readValue( String token ) {
-                    if ( hasBlank && blankVal.equals( token ) ) {
-                        return null;
-                    }
-                    else {
-                        return token;
-                    }
+            return new ColumnReader( info, blankVal ) {
+                Object readValue( String line, int start, int end ) {
+                    return isBlank( line, start, end )
+                         ? null
+                         : line.substring( start, end );
                 }
             };
         }
@@ -499,14 +594,11 @@ class IpacReader implements RowSequence {
             info.setUCD( "TIME" );
             info.setDomainMappers( new DomainMapper[] { TimeMapper.ISO_8601 } );
             info.setNullable( hasBlank );
-            return new ColumnReader( info ) {
-                Object readValue( String token ) {
-                    if ( hasBlank && blankVal.equals( token ) ) {
-                        return null;
-                    }
-                    else {
-                        return token;
-                    }
+            return new ColumnReader( info, blankVal ) {
+                Object readValue( String line, int start, int end ) {
+                    return isBlank( line, start, end )
+                         ? null
+                         : line.substring( start, end );
                 }
             };
         }
@@ -554,17 +646,22 @@ class IpacReader implements RowSequence {
     /**
      * Interface for an object which can decode strings in one of the columns
      * of an IPAC table.
+     * Values are read from a region of a data line,
+     * which avoids creating a string for each numeric cell.
      */
     private static abstract class ColumnReader {
         final ColumnInfo info_;
+        final String blank_;
 
         /**
          * Constructor.
          *
          * @param   info  base metadata
+         * @param   blank  trimmed null value representation, or null
          */
-        ColumnReader( ValueInfo info ) {
+        ColumnReader( ValueInfo info, String blank ) {
             info_ = new ColumnInfo( info );
+            blank_ = blank;
         }
 
         /**
@@ -577,11 +674,66 @@ class IpacReader implements RowSequence {
         }
 
         /**
-         * Decodes a string value representation, returning an object.
+         * Decodes a value representation, returning an object.
+         *
+         * @param  line  data line
+         * @param  start  index of the first non-blank character of the
+         *                value representation in <code>line</code>
+         * @param  end    index following the last non-blank character of
+         *                the value representation in <code>line</code>
+         * @return  value object which is the decoded form of the token
+         */
+        abstract Object readValue( String line, int start, int end );
+
+        /**
+         * Decodes a value representation as a floating point value.
+         * Numeric readers override this to avoid creating wrapper
+         * objects.  The default implementation returns the numeric
+         * value of the result of {@link #readValue}, or NaN.
+         *
+         * @param  line  data line
+         * @param  start  index of the first non-blank character of the
+         *                value representation in <code>line</code>
+         * @param  end    index following the last non-blank character of
+         *                the value representation in <code>line</code>
+         * @return  numeric value of the token, or NaN if it is blank
+         *          or not numeric
+         */
+        double readDouble( String line, int start, int end ) {
+            Object value = readValue( line, start, end );
+            return value instanceof Number ? ((Number) value).doubleValue()
+                                           : Double.NaN;
+        }
+
+        /**
+         * Indicates whether a token matches this column's null value
+         * representation.
          *
-         * @param  token  trimmed string representation of a value in the column
-         * @return  value object which is the decoded form of <code>token</code>
+         * @param  line  data line
+         * @param  start  start index of token
+         * @param  end    end index of token
+         * @return  true iff the token represents a blank value
          */
-        abstract Object readValue( String token );
+        boolean isBlank( String line, int start, int end ) {
+            return blank_ != null
+                && end - start == blank_.length()
+                && line.regionMatches( start, blank_, 0, end - start );
+        }
+
+        /**
+         * Indicates whether a token is a non-blank integer in a given range.
+         *
+         * @param  line  data line
+         * @param  start  start index of token
+         * @param  end    end index of token
+         * @param  min   minimum permitted value
+         * @param  max   maximum permitted value
+         * @return  true iff the token can be decoded as an integer
+         */
+        boolean isInteger( String line, int start, int end,
+                           long min, long max ) {
+            return ! isBlank( line, start, end )
+                && NumberParser.isInteger( line, start, end, min, max );
+        }
     }
 }
@@ -0,0 +1,444 @@
+package uk.ac.starlink.table.formats;
+
+/**
+ * Parses numeric values directly from a region of a character sequence.
+ * The methods here do not create any intermediate objects for
+ * well-formed decimal input, so they can be used to examine and
+ * decode cells of a text table without allocating a String for each one.
+ * Leading and trailing whitespace within the region is ignored.
+ *
+ * <p>Integers are optionally signed sequences of ASCII digits.
+ * Decimal floating point values have the form
+ * <code>[+-]digits[.digits][e[+-]digits]</code>, where the digits
+ * either before or after the decimal point may be omitted.
+ * The exponent marker may be <code>e</code> or <code>E</code>,
+ * or optionally also <code>d</code> or <code>D</code> as written by
+ * some Fortran programs.
+ * Values are exactly as would be returned by
+ * <code>Double.parseDouble</code> or <code>Float.parseFloat</code>;
+ * where they cannot be calculated exactly using floating point
+ * arithmetic, the work is passed to those methods, so some allocation
+ * takes place in those cases.
+ * Other forms accepted by <code>Double.parseDouble</code>,
+ * such as special values and hexadecimal, are not recognised here.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class NumberParser {
+
+    /** Largest mantissa which can be represented exactly in a double. */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /** Largest mantissa which can be represented exactly in a float. */
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+
+    /** Exact powers of ten representable in a float. */
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f,
+    };
+
+    /** Exact powers of ten representable in a double. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22,
+    };
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private NumberParser() {
+    }
+
+    /**
+     * Returns the index of the first character in a region which is
+     * not whitespace.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @return   trimmed start index, or <code>end</code> if all blank
+     */
+    public static int trimStart( CharSequence text, int start, int end ) {
+        while ( start < end && isBlank( text.charAt( start ) ) ) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the index following the last character in a region which is
+     * not whitespace.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @return   trimmed end index, or <code>start</code> if all blank
+     */
+    public static int trimEnd( CharSequence text, int start, int end ) {
+        while ( end > start && isBlank( text.charAt( end - 1 ) ) ) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Indicates whether a region represents an integer in a given range.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @param  min   minimum permitted value
+     * @param  max   maximum permitted value
+     * @return   true iff the region holds an integer between
+     *           <code>min</code> and <code>max</code> inclusive
+     */
+    public static boolean isInteger( CharSequence text, int start, int end,
+                                     long min, long max ) {
+        start = trimStart( text, start, end );
+        end = trimEnd( text, start, end );
+        if ( start == end ) {
+            return false;
+        }
+        char c0 = text.charAt( start );
+        boolean neg = c0 == '-';
+        if ( neg || c0 == '+' ) {
+            start++;
+            if ( start == end ) {
+                return false;
+            }
+        }
+
+        /* Accumulate negatively, since the negative range is larger. */
+        long limit = neg ? min : -max;
+        long multmin = limit / 10;
+        long value = 0;
+        for ( int i = start; i < end; i++ ) {
+            int digit = text.charAt( i ) - '0';
+            if ( digit < 0 || digit > 9 || value < multmin ) {
+                return false;
+            }
+            value *= 10;
+            if ( value < limit + digit ) {
+                return false;
+            }
+            value -= digit;
+        }
+        return true;
+    }
+
+    /**
+     * Parses an integer from a region.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @return   integer value
+     * @throws  NumberFormatException  if the region does not represent
+     *          an integer in the range of a long
+     */
+    public static long parseInteger( CharSequence text, int start, int end ) {
+        int start0 = start;
+        int end0 = end;
+        start = trimStart( text, start, end );
+        end = trimEnd( text, start, end );
+        boolean neg = false;
+        if ( start < end ) {
+            char c0 = text.charAt( start );
+            neg = c0 == '-';
+            if ( neg || c0 == '+' ) {
+                start++;
+            }
+        }
+        if ( start == end ) {
+            throw badNumber( text, start0, end0 );
+        }
+        long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long value = 0;
+        for ( int i = start; i < end; i++ ) {
+            int digit = text.charAt( i ) - '0';
+            if ( digit < 0 || digit > 9 || value < multmin ) {
+                throw badNumber( text, start0, end0 );
+            }
+            value *= 10;
+            if ( value < limit + digit ) {
+                throw badNumber( text, start0, end0 );
+            }
+            value -= digit;
+        }
+        return neg ? value : -value;
+    }
+
+    /**
+     * Indicates whether a region represents a decimal floating point value.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @param  dExp   true if 'd' or 'D' may be used as an exponent marker
+     * @return   true iff the region can be parsed by
+     *           {@link #parseDecimal parseDecimal}
+     */
+    public static boolean isDecimal( CharSequence text, int start, int end,
+                                     boolean dExp ) {
+        start = trimStart( text, start, end );
+        end = trimEnd( text, start, end );
+        int i = start;
+        if ( i < end && ( text.charAt( i ) == '-' ||
+                          text.charAt( i ) == '+' ) ) {
+            i++;
+        }
+        int ndigit = 0;
+        while ( i < end && isDigit( text.charAt( i ) ) ) {
+            i++;
+            ndigit++;
+        }
+        if ( i < end && text.charAt( i ) == '.' ) {
+            i++;
+            while ( i < end && isDigit( text.charAt( i ) ) ) {
+                i++;
+                ndigit++;
+            }
+        }
+        if ( ndigit == 0 ) {
+            return false;
+        }
+        if ( i < end && isExponent( text.charAt( i ), dExp ) ) {
+            i++;
+            if ( i < end && ( text.charAt( i ) == '-' ||
+                              text.charAt( i ) == '+' ) ) {
+                i++;
+            }
+            int nexp = 0;
+            while ( i < end && isDigit( text.charAt( i ) ) ) {
+                i++;
+                nexp++;
+            }
+            if ( nexp == 0 ) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    /**
+     * Parses a decimal floating point value from a region.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @param  dExp   true if 'd' or 'D' may be used as an exponent marker
+     * @return   floating point value
+     * @throws  NumberFormatException  if
+     *          {@link #isDecimal isDecimal} would return false
+     */
+    public static double parseDecimal( CharSequence text, int start, int end,
+                                       boolean dExp ) {
+        return parseDecimal( text, start, end, dExp, false );
+    }
+
+    /**
+     * Parses a decimal single precision floating point value from a region.
+     * The result is exactly as would be returned by
+     * <code>Float.parseFloat</code>, which is not always the same as
+     * narrowing the result of <code>Double.parseDouble</code>.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @param  dExp   true if 'd' or 'D' may be used as an exponent marker
+     * @return   floating point value
+     * @throws  NumberFormatException  if
+     *          {@link #isDecimal isDecimal} would return false
+     */
+    public static float parseDecimalFloat( CharSequence text, int start,
+                                           int end, boolean dExp ) {
+        return (float) parseDecimal( text, start, end, dExp, true );
+    }
+
+    /**
+     * Does the work for parsing decimal values in single or
+     * double precision.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @param  dExp   true if 'd' or 'D' may be used as an exponent marker
+     * @param  isFloat  true for a single precision result
+     * @return   floating point value; if <code>isFloat</code> is true
+     *           it is exactly representable as a float
+     */
+    private static double parseDecimal( CharSequence text, int start, int end,
+                                        boolean dExp, boolean isFloat ) {
+        if ( ! isDecimal( text, start, end, dExp ) ) {
+            throw badNumber( text, start, end );
+        }
+        start = trimStart( text, start, end );
+        end = trimEnd( text, start, end );
+        int i = start;
+        boolean neg = false;
+        char c0 = text.charAt( i );
+        if ( c0 == '-' || c0 == '+' ) {
+            neg = c0 == '-';
+            i++;
+        }
+
+        /* Accumulate the significant digits into a long mantissa,
+         * keeping track of the implied power of ten. */
+        long mantissa = 0;
+        int nsig = 0;
+        int exp10 = 0;
+        boolean point = false;
+        for ( ; i < end; i++ ) {
+            char c = text.charAt( i );
+            if ( c == '.' ) {
+                point = true;
+            }
+            else if ( isDigit( c ) ) {
+                if ( mantissa == 0 && c == '0' ) {
+                    if ( point ) {
+                        exp10--;
+                    }
+                }
+                else if ( nsig < 18 ) {
+                    mantissa = mantissa * 10 + ( c - '0' );
+                    nsig++;
+                    if ( point ) {
+                        exp10--;
+                    }
+                }
+                else {
+                    nsig++;
+                    if ( ! point ) {
+                        exp10++;
+                    }
+                }
+            }
+            else {
+                break;
+            }
+        }
+        if ( i < end ) {
+            i++;
+            boolean negExp = false;
+            char ce = text.charAt( i );
+            if ( ce == '-' || ce == '+' ) {
+                negExp = ce == '-';
+                i++;
+            }
+            int exp = 0;
+            for ( ; i < end; i++ ) {
+                exp = Math.min( exp * 10 + ( text.charAt( i ) - '0' ),
+                                100000 );
+            }
+            exp10 += negExp ? -exp : exp;
+        }
+        if ( mantissa == 0 ) {
+            return neg ? -0.0 : 0.0;
+        }
+
+        /* If the mantissa and power of ten are both exactly representable,
+         * a single multiplication or division gives the correctly
+         * rounded result.  Otherwise, defer to the JDK. */
+        if ( isFloat ) {
+            if ( nsig <= 18 && mantissa <= MAX_EXACT_FLOAT_MANTISSA &&
+                 exp10 >= -10 && exp10 <= 10 ) {
+                float value = exp10 >= 0
+                            ? mantissa * FLOAT_POWERS_OF_TEN[ exp10 ]
+                            : mantissa / FLOAT_POWERS_OF_TEN[ -exp10 ];
+                return neg ? -value : value;
+            }
+        }
+        else {
+            if ( nsig <= 18 && mantissa <= MAX_EXACT_MANTISSA &&
+                 exp10 >= -22 && exp10 <= 22 ) {
+                double value = exp10 >= 0
+                             ? mantissa * POWERS_OF_TEN[ exp10 ]
+                             : mantissa / POWERS_OF_TEN[ -exp10 ];
+                return neg ? -value : value;
+            }
+        }
+        StringBuffer sbuf = new StringBuffer( end - start );
+        for ( int j = start; j < end; j++ ) {
+            char c = text.charAt( j );
+            sbuf.append( c == 'd' || c == 'D' ? 'e' : c );
+        }
+        String item = sbuf.toString();
+        return isFloat ? Float.parseFloat( item )
+                       : Double.parseDouble( item );
+    }
+
+    /**
+     * Counts the number of digits before any exponent in a region.
+     * For a decimal number this is an upper limit on the number of
+     * significant figures.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @return  number of digits in mantissa
+     */
+    public static int countMantissaDigits( CharSequence text, int start,
+                                           int end ) {
+        int n = 0;
+        for ( int i = start; i < end; i++ ) {
+            char c = text.charAt( i );
+            if ( isDigit( c ) ) {
+                n++;
+            }
+            else if ( isExponent( c, true ) ) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Indicates whether a character is an ASCII digit.
+     *
+     * @param  c  character
+     * @return  true iff <code>c</code> is in the range '0'-'9'
+     */
+    private static boolean isDigit( char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Indicates whether a character is an exponent marker.
+     *
+     * @param  c  character
+     * @param  dExp  whether 'd' and 'D' count
+     * @return  true iff <code>c</code> marks an exponent
+     */
+    private static boolean isExponent( char c, boolean dExp ) {
+        return c == 'e' || c == 'E' || ( dExp && ( c == 'd' || c == 'D' ) );
+    }
+
+    /**
+     * Indicates whether a character counts as whitespace.
+     * This uses the same definition as <code>String.trim</code>.
+     *
+     * @param  c  character
+     * @return  true iff <code>c</code> is blank
+     */
+    private static boolean isBlank( char c ) {
+        return c <= ' ';
+    }
+
+    /**
+     * Returns an exception describing a badly formed number.
+     *
+     * @param  text  character sequence
+     * @param  start  index of first character in region
+     * @param  end    index after last character in region
+     * @return  new exception
+     */
+    private static NumberFormatException badNumber( CharSequence text,
+                                                    int start, int end ) {
+        return new NumberFormatException( "Bad number \""
+                                        + text.subSequence( start, end )
+                                        + "\"" );
+    }
+}
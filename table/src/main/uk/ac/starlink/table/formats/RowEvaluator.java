@@ -2,7 +2,6 @@ package uk.ac.starlink.table.formats;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DomainMapper;
@@ -47,12 +46,6 @@ public class RowEvaluator {
     private static final Pattern DMS_REGEX = Pattern.compile(
         "[-+][ 0-9]?[0-9][:d ][ 0-6][0-9][:m ][0-6][0-9](\\.[0-9]*)?"
     );
-    private static final Pattern NAN_REGEX = Pattern.compile(
-        "NaN", Pattern.CASE_INSENSITIVE
-    );
-    private static final Pattern INFINITY_REGEX = Pattern.compile(
-        "([+-]?)(Infinity|inf)", Pattern.CASE_INSENSITIVE
-    );
 
     /** Decoder for booleans. */
     private static Decoder BOOLEAN_DECODER = new Decoder( Boolean.class ) {
@@ -80,85 +73,75 @@ public class RowEvaluator {
     /** Decoder for shorts. */
     private static Decoder SHORT_DECODER = new Decoder( Short.class ) {
         public Object decode( String value ) {
-            return new Short( Short.parseShort( value.trim() ) );
+            return new Short( (short) parseInteger( value, Short.MIN_VALUE,
+                                                    Short.MAX_VALUE ) );
+        }
+        public double decodeDouble( String value ) {
+            return parseInteger( value, Short.MIN_VALUE, Short.MAX_VALUE );
         }
         public boolean isValid( String value ) {
-            try {
-                return Short.parseShort( value ) != 0
-                    || value.charAt( 0 ) != '-';
-            }
-            catch ( NumberFormatException e ) {
-                return false;
-            }
+            return isInteger( value, Short.MIN_VALUE, Short.MAX_VALUE );
         }
     };
 
     /** Decoder for integers. */
     private static Decoder INTEGER_DECODER = new Decoder( Integer.class ) {
         public Object decode( String value ) {
-            return new Integer( Integer.parseInt( value.trim() ) );
+            return new Integer( (int) parseInteger( value, Integer.MIN_VALUE,
+                                                    Integer.MAX_VALUE ) );
+        }
+        public double decodeDouble( String value ) {
+            return parseInteger( value, Integer.MIN_VALUE, Integer.MAX_VALUE );
         }
         public boolean isValid( String value ) {
-            try {
-                return Integer.parseInt( value ) != 0
-                    || value.charAt( 0 ) != '-';
-            }
-            catch ( NumberFormatException e ) {
-                return false;
-            }
+            return isInteger( value, Integer.MIN_VALUE, Integer.MAX_VALUE );
         }
     };
 
     /** Decoder for longs. */
     private static Decoder LONG_DECODER = new Decoder( Long.class ) {
         public Object decode( String value ) {
-            return new Long( Long.parseLong( value.trim() ) );
+            return new Long( parseInteger( value, Long.MIN_VALUE,
+                                           Long.MAX_VALUE ) );
+        }
+        public double decodeDouble( String value ) {
+            return parseInteger( value, Long.MIN_VALUE, Long.MAX_VALUE );
         }
         public boolean isValid( String value ) {
-            try {
-                return Long.parseLong( value ) != 0L
-                    || value.charAt( 0 ) != '-';
-            }
-            catch ( NumberFormatException e ) {
-                return false;
-            }
+            return isInteger( value, Long.MIN_VALUE, Long.MAX_VALUE );
         }
     };
 
     /** Decoder for floats. */
     private static Decoder FLOAT_DECODER = new Decoder( Float.class ) {
         public Object decode( String value ) {
-            return new Float( (float) parseFloating( value.trim() ).dValue );
+            return new Float( (float) parseFloating( value ) );
+        }
+        public double decodeDouble( String value ) {
+            return (float) parseFloating( value );
         }
         public boolean isValid( String value ) {
-            try {
-                ParsedFloat pf = parseFloating( value );
-                if ( pf.sigFig > 6 ||
-                     ( Float.isInfinite( (float) pf.dValue ) &&
-                       ! Double.isInfinite( pf.dValue ) ) ) {
-                    return false;
-                }
-                return true;
-            }
-            catch ( NumberFormatException e ) {
+            if ( ! isFloating( value ) ||
+                 NumberParser.countMantissaDigits( value, 0, value.length() )
+                 > 6 ) {
                 return false;
             }
+            double dval = parseFloating( value );
+            return ! Float.isInfinite( (float) dval )
+                || Double.isInfinite( dval );
         }
     };
 
     /** Decoder for doubles. */
     private static Decoder DOUBLE_DECODER = new Decoder( Double.class ) {
         public Object decode( String value ) {
-            return new Double( parseFloating( value.trim() ).dValue );
+            return new Double( parseFloating( value ) );
+        }
+        public double decodeDouble( String value ) {
+            return parseFloating( value );
         }
         public boolean isValid( String value ) {
-            try {
-                parseFloating( value );
-                return true;
-            }
-            catch ( NumberFormatException e ) {
-                return false;
-            }
+            return isFloating( value );
         }
     };
 
@@ -349,6 +332,45 @@ public class RowEvaluator {
         }
     }
 
+    /**
+     * Incorporates the results of another evaluator into this one.
+     * The effect is as if all the rows submitted to <code>other</code>
+     * had been submitted to this evaluator as well.
+     * This allows different parts of a table to be evaluated
+     * concurrently by different evaluators.
+     *
+     * @param  other  evaluator whose results are to be merged;
+     *                it is not affected
+     * @throws  TableFormatException  if the two evaluators have seen
+     *          rows with different numbers of elements
+     */
+    public void merge( RowEvaluator other ) throws TableFormatException {
+        if ( other.ncol_ >= 0 ) {
+            if ( ncol_ < 0 ) {
+                init( other.ncol_ );
+            }
+            if ( other.ncol_ != ncol_ ) {
+                throw new TableFormatException(
+                    "Wrong number of columns (expecting " + ncol_
+                  + ", found " + other.ncol_ + ")" );
+            }
+            for ( int icol = 0; icol < ncol_; icol++ ) {
+                maybeBoolean_[ icol ] &= other.maybeBoolean_[ icol ];
+                maybeShort_[ icol ] &= other.maybeShort_[ icol ];
+                maybeInteger_[ icol ] &= other.maybeInteger_[ icol ];
+                maybeLong_[ icol ] &= other.maybeLong_[ icol ];
+                maybeFloat_[ icol ] &= other.maybeFloat_[ icol ];
+                maybeDouble_[ icol ] &= other.maybeDouble_[ icol ];
+                maybeDate_[ icol ] &= other.maybeDate_[ icol ];
+                maybeHms_[ icol ] &= other.maybeHms_[ icol ];
+                maybeDms_[ icol ] &= other.maybeDms_[ icol ];
+                stringLength_[ icol ] = Math.max( stringLength_[ icol ],
+                                                  other.stringLength_[ icol ] );
+            }
+        }
+        nrow_ += other.nrow_;
+    }
+
     /**
      * Returns information gleaned from previous <tt>submitRow</tt>
      * calls about the kind of data that appears to be in the columns.
@@ -401,6 +423,28 @@ public class RowEvaluator {
         return new Metadata( colInfos, decoders, nrow_ );
     }
 
+    /**
+     * Returns a decoder suitable for use with a column whose type has
+     * been inferred from a sample of its values rather than from all of
+     * them.  This may be wider than the supplied decoder, so that values
+     * outside the sample are less likely to be rejected.
+     * Currently, shorts are promoted to integers and floats to doubles.
+     *
+     * @param  decoder  decoder inferred from sample
+     * @return   decoder to use for full data
+     */
+    public static Decoder getSampledDecoder( Decoder decoder ) {
+        if ( decoder == SHORT_DECODER ) {
+            return INTEGER_DECODER;
+        }
+        else if ( decoder == FLOAT_DECODER ) {
+            return DOUBLE_DECODER;
+        }
+        else {
+            return decoder;
+        }
+    }
+
     /**
      * Returns a new <tt>ncol</tt>-element boolean array.
      *
@@ -413,81 +457,169 @@ public class RowEvaluator {
         return flags;
     }
 
+    /**
+     * Indicates whether a string represents an integer in a given range.
+     * A negative zero is not considered to be an integer.
+     *
+     * @param  value  string to test
+     * @param  min   minimum permitted value
+     * @param  max   maximum permitted value
+     * @return  true iff <code>value</code> can be parsed as an integer
+     *          in range
+     */
+    private static boolean isInteger( String value, long min, long max ) {
+        int leng = value.length();
+        return NumberParser.isInteger( value, 0, leng, min, max )
+            && ( NumberParser.parseInteger( value, 0, leng ) != 0 ||
+                 value.charAt( NumberParser.trimStart( value, 0, leng ) )
+                 != '-' );
+    }
+
+    /**
+     * Parses an integer in a given range.
+     *
+     * @param  value  string representing an integer
+     * @param  min   minimum permitted value
+     * @param  max   maximum permitted value
+     * @return   integer value
+     * @throws  NumberFormatException  if <code>value</code> is not
+     *          an integer in range
+     */
+    private static long parseInteger( String value, long min, long max ) {
+        long lval = NumberParser.parseInteger( value, 0, value.length() );
+        if ( lval < min || lval > max ) {
+            throw new NumberFormatException( "Value out of range: "
+                                           + value );
+        }
+        return lval;
+    }
+
+    /**
+     * Indicates whether a string can be parsed by
+     * {@link #parseFloating}.
+     *
+     * @param   item  string to test
+     * @return  true iff <code>item</code> represents a floating point value
+     */
+    private static boolean isFloating( String item ) {
+        int leng = item.length();
+        if ( NumberParser.isDecimal( item, 0, leng, true ) ||
+             ! Double.isNaN( parseSpecial( item ) ) ||
+             isNaN( item ) ) {
+            return true;
+        }
+
+        /* Only hand strings to the JDK that it might understand
+         * (e.g. hexadecimal or with a type suffix), to avoid the expense
+         * of exceptions for non-numeric values. */
+        int i = NumberParser.trimStart( item, 0, leng );
+        if ( i < leng && ( item.charAt( i ) == '+' ||
+                           item.charAt( i ) == '-' ) ) {
+            i++;
+        }
+        if ( i < leng && ( item.charAt( i ) == '.' ||
+                           ( item.charAt( i ) >= '0' &&
+                             item.charAt( i ) <= '9' ) ) ) {
+            try {
+                parseFloating( item );
+                return true;
+            }
+            catch ( NumberFormatException e ) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     /**
      * Parses a floating point value.  This does a couple of extra things
      * than Double.parseDouble - it understands 'd' or 'D' as the exponent
-     * signifier as well as 'e' or 'E', and it counts the number of
-     * significant figures.
+     * signifier as well as 'e' or 'E', and it recognises some
+     * non-java forms of the special values, like "nan" and "inf".
+     * Ordinary decimal values are parsed without creating any
+     * intermediate objects.
      *
      * @param   item  string representing a floating point number
-     * @return  object encapsulating information about the floating pont
-     *          value extracted from <tt>item</tt> - note it's always the
-     *          same instance returned, so don't hang onto it
+     * @return  floating point value
      * @throws  NumberFormatException  if <tt>item</tt> can't be understood
      *          as a float or double
      */
-    private static ParsedFloat parseFloating( String item ) {
+    private static double parseFloating( String item ) {
+        int leng = item.length();
+        if ( NumberParser.isDecimal( item, 0, leng, true ) ) {
+            return NumberParser.parseDecimal( item, 0, leng, true );
+        }
 
         /* Check for special values.  Although parseDouble picks up 
          * some of these, it only works with java-friendly forms like
          * "NaN" and not (e.g.) python-friendly ones like "nan". */
-        if ( NAN_REGEX.matcher( item ).matches() ) {
-            return ParsedFloat.NaN;
-        }
-        Matcher infMatcher = INFINITY_REGEX.matcher( item );
-        if ( infMatcher.matches() ) {
-            String sign = infMatcher.group( 1 );
-            return sign.length() > 0 && sign.charAt( 0 ) == '-'
-                 ? ParsedFloat.NEGATIVE_INFINITY
-                 : ParsedFloat.POSITIVE_INFINITY;
-        }
-
-        /* Do a couple of jobs by looking at the string directly:
-         * Substitute 'd' or 'D' which may indicate an exponent in
-         * FORTRAN77-style output for an 'e', and count the number of
-         * significant figures.  With some more work it would be possible
-         * to do the actual parse here, but since this probably isn't
-         * a huge bottleneck we leave it to Double.parseDouble. */
+        if ( isNaN( item ) ) {
+            return Double.NaN;
+        }
+        double special = parseSpecial( item );
+        if ( ! Double.isNaN( special ) ) {
+            return special;
+        }
+
+        /* Otherwise substitute 'd' or 'D' which may indicate an exponent
+         * in FORTRAN77-style output for an 'e', and pass it to
+         * Double.parseDouble, which knows about various unusual forms. */
+        item = item.trim();
         int nc = item.length();
-        boolean foundExp = false;
-        int sigFig = 0;
         for ( int i = 0; i < nc; i++ ) {
             char c = item.charAt( i );
-            switch ( c ) {
-                case 'd':
-                case 'D':
-                    if ( ! foundExp ) {
-                        StringBuffer sbuf = new StringBuffer( item );
-                        sbuf.setCharAt( i, 'e' );
-                        item = sbuf.toString();
-                    }
-                    foundExp = true;
-                    break;
-                case 'e':
-                case 'E':
-                    foundExp = true;
-                    break;
-                case '0':
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                    if ( ! foundExp ) {
-                        sigFig++;
-                    }
-                    break;
-                default:
+            if ( c == 'd' || c == 'D' ) {
+                StringBuffer sbuf = new StringBuffer( item );
+                sbuf.setCharAt( i, 'e' );
+                item = sbuf.toString();
+                break;
+            }
+            else if ( c == 'e' || c == 'E' ) {
+                break;
             }
         }
+        return Double.parseDouble( item );
+    }
 
-        /* Parse the number. */
-        double dvalue = Double.parseDouble( item );
-        return new ParsedFloat( sigFig, dvalue );
+    /**
+     * Indicates whether a string is a case-insensitive "NaN".
+     *
+     * @param   item  string to test
+     * @return   true iff <code>item</code> represents NaN
+     */
+    private static boolean isNaN( String item ) {
+        int leng = item.length();
+        int start = NumberParser.trimStart( item, 0, leng );
+        int end = NumberParser.trimEnd( item, start, leng );
+        return end - start == 3
+            && item.regionMatches( true, start, "NaN", 0, 3 );
+    }
+
+    /**
+     * Parses the infinite values, which may be signed and are
+     * represented case-insensitively as "Infinity" or "inf".
+     *
+     * @param   item  string to test
+     * @return   positive or negative infinity, or NaN if <code>item</code>
+     *           is not infinite
+     */
+    private static double parseSpecial( String item ) {
+        int leng = item.length();
+        int start = NumberParser.trimStart( item, 0, leng );
+        int end = NumberParser.trimEnd( item, start, leng );
+        boolean neg = false;
+        if ( start < end && ( item.charAt( start ) == '+' ||
+                              item.charAt( start ) == '-' ) ) {
+            neg = item.charAt( start ) == '-';
+            start++;
+        }
+        int n = end - start;
+        if ( ( n == 3 && item.regionMatches( true, start, "inf", 0, 3 ) ) ||
+             ( n == 8 &&
+               item.regionMatches( true, start, "Infinity", 0, 8 ) ) ) {
+            return neg ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return Double.NaN;
     }
 
     /**
@@ -527,6 +659,15 @@ public class RowEvaluator {
             clazz_ = clazz;
         }
 
+        /**
+         * Returns the class of objects returned by the decode method.
+         *
+         * @return  content class
+         */
+        public Class getContentClass() {
+            return clazz_;
+        }
+
         /**
          * Returns a new ColumnInfo suitable for the decoded values.
          *
@@ -548,6 +689,24 @@ public class RowEvaluator {
          */
         public abstract Object decode( String value );
 
+        /**
+         * Decodes a value as a floating point number.
+         * Will complete without exception under the same conditions
+         * as {@link #decode}.
+         * Numeric decoders override this method to avoid creating
+         * wrapper objects; the default implementation returns the
+         * numeric value of the result of <code>decode</code>,
+         * or NaN if that is not a number.
+         *
+         * @param  value  string to decode
+         * @return   numeric value corresponding to <code>value</code>
+         */
+        public double decodeDouble( String value ) {
+            Object obj = decode( value );
+            return obj instanceof Number ? ((Number) obj).doubleValue()
+                                         : Double.NaN;
+        }
+
         /**
          * Indicates whether this decoder is capable of decoding a 
          * given string.
@@ -573,34 +732,4 @@ public class RowEvaluator {
             return value;
         }
     }
-
-    /**
-     * Helper class to encapsulate the result of a floating point number
-     * parse.
-     */
-    private static class ParsedFloat {
-
-        /** Number of significant figures. */
-        final int sigFig;
-
-        /** Value of the number. */
-        final double dValue;
-
-        static final ParsedFloat NaN = new ParsedFloat( 0, Double.NaN );
-        static final ParsedFloat POSITIVE_INFINITY =
-            new ParsedFloat( 0, Double.POSITIVE_INFINITY );
-        static final ParsedFloat NEGATIVE_INFINITY =
-            new ParsedFloat( 0, Double.NEGATIVE_INFINITY );
-
-        /**
-         * Constructor.
-         *
-         * @param  sigFig  number of significant figures
-         * @param  dValue  floating point value
-         */
-        ParsedFloat( int sigFig, double dValue ) {
-            this.sigFig = sigFig;
-            this.dValue = dValue;
-        }
-    }
 }
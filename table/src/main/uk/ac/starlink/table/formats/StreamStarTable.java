@@ -1,15 +1,31 @@
 package uk.ac.starlink.table.formats;
 
 import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
 import uk.ac.starlink.table.AbstractStarTable;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ColumnInfo;
-import uk.ac.starlink.table.ReaderRowSequence;
 import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.RowSplittable;
 import uk.ac.starlink.table.TableFormatException;
+import uk.ac.starlink.util.Compression;
 import uk.ac.starlink.util.DataSource;
+import uk.ac.starlink.util.FileDataSource;
 
 /**
  * Abstract superclass for tables which reads a stream of characters to
@@ -20,6 +36,23 @@ import uk.ac.starlink.util.DataSource;
  * a further pass through for each required RowSequence, using the
  * metadata obtained earlier.
  *
+ * <p>Subclasses whose records can be recognised without reading the
+ * stream from the start may override {@link #canReadChunks} to
+ * permit parallel reading.  In that case, if the data comes from
+ * an uncompressed file which is large enough,
+ * {@link #evaluateRows} divides the file into chunks
+ * at record boundaries and evaluates them concurrently,
+ * and the table's {@link #getRowSplittable RowSplittable}
+ * splits between chunks, so that later passes through the data
+ * can also be done in parallel.
+ *
+ * <p>Subclasses may also call {@link #setSampleSize} to avoid the initial
+ * pass through all the data.  In that case column types are inferred
+ * from a sample of the rows.  Column metadata is never changed once
+ * the table is ready for use, so if a value is later found which does
+ * not fit its column's type, reading the row fails with a
+ * {@link TableFormatException}.
+ *
  * @author   Mark Taylor (Starlink)
  * @since    21 Sep 2004
  * @see   RowEvaluator
@@ -31,10 +64,39 @@ public abstract class StreamStarTable extends AbstractStarTable {
     private long nrow_;
     private RowEvaluator.Decoder[] decoders_;
     private ColumnInfo[] colInfos_;
+    private TextChunker chunker_;
+    private long[] chunkBounds_;
+    private long[] chunkRecords_;
+    private long[] chunkRowStarts_;
+    private int sampleSize_;
+    private boolean sampled_;
+
 
     /** Char representation of -1 (as returned end-of-stream read) */
     protected final static char END = (char) -1;
 
+    /** Default nominal size in bytes of chunks for parallel reading. */
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    private static int readParallelism_ =
+        Runtime.getRuntime().availableProcessors();
+    private static int chunkSize_ = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Name of system property giving the default sample size for
+     * type inference ({@value}).
+     * If set to a positive integer, text tables which support sampling
+     * infer their column types from that many rows plus some probes
+     * from elsewhere in the file, rather than reading all the rows.
+     */
+    public static final String SAMPLE_PROPERTY = "startable.textsample";
+
+    /** Number of random-offset probes made when sampling. */
+    private static final int NPROBE = 16;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.formats" );
+
     /**
      * Constructor.  This doesn't perform any processing; you must call
      * {@link #init} before doing anything with the constructed table.
@@ -70,6 +132,45 @@ public abstract class StreamStarTable extends AbstractStarTable {
         colInfos_ = meta.colInfos_;
         nrow_ = meta.nrow_;
         ncol_ = meta.ncol_;
+
+        /* If the types were inferred from a sample, the row count is not
+         * known, and the column types may need to be wider. */
+        if ( sampled_ ) {
+            nrow_ = -1;
+            for ( int icol = 0; icol < ncol_; icol++ ) {
+                RowEvaluator.Decoder decoder =
+                    RowEvaluator.getSampledDecoder( decoders_[ icol ] );
+                if ( decoder != decoders_[ icol ] ) {
+                    setDecoder( icol, decoder );
+                }
+                else if ( decoder.getContentClass() == String.class ) {
+                    colInfos_[ icol ].setElementSize( -1 );
+                }
+            }
+        }
+
+        /* If the rows were evaluated in chunks, work out which rows
+         * are in which chunk. */
+        if ( chunkRecords_ != null ) {
+            int nchunk = chunkRecords_.length;
+            long[] rowStarts = new long[ nchunk + 1 ];
+            rowStarts[ nchunk ] = nrow_;
+            for ( int ic = nchunk - 1; ic > 0; ic-- ) {
+                rowStarts[ ic ] = rowStarts[ ic + 1 ] - chunkRecords_[ ic ];
+            }
+
+            /* Any records in the first chunk beyond the data rows
+             * are headers, which are skipped by skipHeader. */
+            long nrow0 = rowStarts[ 1 ];
+            if ( nrow0 >= 0 && nrow0 <= chunkRecords_[ 0 ] ) {
+                chunkRowStarts_ = rowStarts;
+            }
+            else {
+                chunker_ = null;
+                chunkBounds_ = null;
+            }
+            chunkRecords_ = null;
+        }
     }
 
     public int getColumnCount() {
@@ -84,44 +185,618 @@ public abstract class StreamStarTable extends AbstractStarTable {
         return colInfos_[ icol ];
     }
 
+    /**
+     * The returned sequence is a {@link BlockRowSequence},
+     * whose numeric block reads parse the cell text straight into
+     * the supplied arrays without creating wrapper objects.
+     */
     public RowSequence getRowSequence() throws IOException {
-        final PushbackInputStream in = getInputStream();
-        final int ncol = getColumnCount();
-        return new ReaderRowSequence() {
-            protected Object[] readRow() throws IOException {
-                List cellList = StreamStarTable.this.readRow( in );
-                if ( cellList == null ) {
-                    in.close();
-                    return null;
-                }
-                else {
-                    Object[] row = new Object[ ncol ];
-                    for ( int icol = 0; icol < ncol; icol++ ) {
-                        String sval = (String) cellList.get( icol );
-                        if ( sval != null && sval.trim().length() > 0 ) {
-                            row[ icol ] = decoders_[ icol ].decode( sval );
-                        }
-                    }
-                    return row;
-                }
+        return new TextRowSequence( getInputStream() );
+    }
+
+    /**
+     * If this table was read in chunks, the returned splittable
+     * can split between chunks.  Otherwise the default implementation
+     * is used.
+     */
+    public RowSplittable getRowSplittable() throws IOException {
+        return chunkBounds_ != null
+             ? new ChunkRowSplittable( 0, chunkBounds_.length - 1 )
+             : super.getRowSplittable();
+    }
+
+    /**
+     * Sets the number of threads used for reading tables in parallel.
+     * This affects only tables subsequently constructed.
+     * A value of 1 means that tables are always read sequentially.
+     * The default is the number of available processors.
+     *
+     * @param  parallelism  thread count, at least 1
+     */
+    public static void setReadParallelism( int parallelism ) {
+        if ( parallelism < 1 ) {
+            throw new IllegalArgumentException( "Parallelism " + parallelism
+                                              + " < 1" );
+        }
+        readParallelism_ = parallelism;
+    }
+
+    /**
+     * Returns the number of threads used for reading tables in parallel.
+     *
+     * @return  thread count
+     */
+    public static int getReadParallelism() {
+        return readParallelism_;
+    }
+
+    /**
+     * Returns the default sample size for type inference.
+     * This is taken from the {@link #SAMPLE_PROPERTY} system property,
+     * or is zero (no sampling) if that is not set.
+     *
+     * @return  default sample size
+     */
+    public static int getDefaultSampleSize() {
+        String prop;
+        try {
+            prop = System.getProperty( SAMPLE_PROPERTY );
+        }
+        catch ( SecurityException e ) {
+            prop = null;
+        }
+        if ( prop != null && prop.trim().length() > 0 ) {
+            try {
+                return Math.max( 0, Integer.parseInt( prop.trim() ) );
             }
-            public void close() throws IOException {
-                in.close();
+            catch ( NumberFormatException e ) {
+                logger_.warning( "Bad " + SAMPLE_PROPERTY + " value " + prop
+                               + " - ignored" );
             }
-        };
+        }
+        return 0;
+    }
+
+    /**
+     * Sets the number of rows used to infer column types.
+     * If zero, all rows are examined before the table is ready for use.
+     * If positive, {@link #evaluateRows} examines only that many rows
+     * from the start of the data, along with some rows from randomly
+     * chosen positions if the data comes from a file.
+     * The row count is then unknown, and any later value which does not
+     * fit its column's type causes a {@link TableFormatException}
+     * when its row is read.
+     * This method must be called before {@link #init}.
+     *
+     * @param  sampleSize  number of rows to sample, or zero for all
+     */
+    protected void setSampleSize( int sampleSize ) {
+        if ( datsrc_ != null ) {
+            throw new IllegalStateException( "Already initialised" );
+        }
+        sampleSize_ = Math.max( 0, sampleSize );
+    }
+
+    /**
+     * Sets the nominal size of chunks for parallel reading.
+     * Files smaller than twice this size are read sequentially.
+     * Intended for testing.
+     *
+     * @param  chunkSize  chunk size in bytes
+     */
+    static void setChunkSize( int chunkSize ) {
+        chunkSize_ = chunkSize;
     }
 
     /**
      * Convenience method which returns a buffered pushback stream based
-     * on this table's data source.
+     * on this table's data source, positioned at the start of the
+     * data rows.  The default implementation invokes {@link #skipHeader}.
      *
      * @return  input stream containing source data
      */
     protected PushbackInputStream getInputStream() throws IOException {
+        PushbackInputStream in = openStream();
+        skipHeader( in );
+        return in;
+    }
+
+    /**
+     * Skips any header records at the start of a stream, so that the
+     * next call of {@link #readRow} returns the first data row.
+     * This is called on streams positioned at the start of the data
+     * after the metadata has been obtained.
+     * The default implementation does nothing.
+     *
+     * @param  in  input stream positioned at the start of the data
+     */
+    protected void skipHeader( PushbackInputStream in ) throws IOException {
+    }
+
+    /**
+     * Indicates whether this table's data can be parsed in chunks.
+     * If true, any sequence of complete records from the stream
+     * must be parseable by {@link #readRow} in isolation,
+     * records must be terminated by (runs of) carriage return and/or
+     * newline characters except within strings quoted by the character
+     * given by {@link #getRecordQuote},
+     * and <code>readRow</code> must be safe for concurrent use
+     * once the first record has been read.
+     * The default implementation returns false.
+     *
+     * @return   true iff chunked reading is possible
+     */
+    protected boolean canReadChunks() {
+        return false;
+    }
+
+    /**
+     * Returns the quote character within which line end characters
+     * do not terminate records.  A doubled quote character within a
+     * quoted string must represent a literal quote.
+     * Only used if {@link #canReadChunks} returns true.
+     * The default implementation returns 0, meaning that line ends
+     * always terminate records.
+     *
+     * @return  quote character, or 0
+     */
+    protected byte getRecordQuote() {
+        return 0;
+    }
+
+    /**
+     * Reads through all the records in this table's data,
+     * returning the first one and submitting the others
+     * to a given row evaluator.
+     * Subclasses may call this from their {@link #obtainMetadata}
+     * implementation.  If chunked reading is possible,
+     * the first record is read in the calling thread,
+     * and the rest of the records are then read concurrently.
+     *
+     * @param  evaluator  row evaluator, not previously used
+     * @param  submitFirst  true if the first record should be submitted
+     *                      to the evaluator as well as returned
+     * @return   list of strings for the first record,
+     *           or <code>null</code> if there are no records
+     * @throws   TableFormatException  if the data doesn't represent this
+     *           kind of table
+     * @throws   IOException   if I/O error is encountered
+     */
+    protected List evaluateRows( RowEvaluator evaluator, boolean submitFirst )
+            throws TableFormatException, IOException {
+        chunker_ = null;
+        chunkBounds_ = null;
+        chunkRecords_ = null;
+        sampled_ = false;
+        if ( sampleSize_ > 0 ) {
+            return sampleRows( evaluator, submitFirst );
+        }
+        TextChunker chunker = createChunker();
+        if ( chunker != null ) {
+            ExecutorService executor = createExecutor();
+            try {
+                long[] bounds = chunker.getBoundaries( executor );
+                if ( bounds.length > 2 ) {
+                    return evaluateChunks( chunker, bounds, evaluator,
+                                           submitFirst, executor );
+                }
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+
+        /* Sequential read. */
+        PushbackInputStream in = openStream();
+        try {
+            List row0 = readRow( in );
+            long lrow = 1;
+            try {
+                if ( row0 != null && submitFirst ) {
+                    evaluator.submitRow( row0 );
+                }
+                for ( List row; ( row = readRow( in ) ) != null; ) {
+                    lrow++;
+                    evaluator.submitRow( row );
+                }
+            }
+            catch ( TableFormatException e ) {
+                throw new TableFormatException( e.getMessage() + " at row "
+                                              + lrow, e );
+            }
+            return row0;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Turns a list of cell strings into a row of typed values
+     * using this table's decoders.
+     *
+     * @param  cellList  list of strings, one for each column
+     * @return  row data
+     */
+    private Object[] decodeRow( List cellList ) {
+        int ncol = ncol_;
+        Object[] row = new Object[ ncol ];
+        for ( int icol = 0; icol < ncol; icol++ ) {
+            String sval = (String) cellList.get( icol );
+            if ( sval != null && sval.trim().length() > 0 ) {
+                row[ icol ] = decoders_[ icol ].decode( sval );
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Turns a cell string into a floating point value
+     * using this table's decoders.
+     *
+     * @param  icol  column index
+     * @param  sval  cell string
+     * @return  numeric value, or NaN for blank or non-numeric cells
+     */
+    private double decodeDouble( int icol, String sval ) {
+        return sval != null && sval.trim().length() > 0
+             ? decoders_[ icol ].decodeDouble( sval )
+             : Double.NaN;
+    }
+
+    /**
+     * Checks that the cells of a record can be decoded using the
+     * column types inferred from a sample.
+     *
+     * @param  cellList  list of strings, one for each column
+     * @param  lrow   1-based index of the record, for error reporting
+     * @throws  TableFormatException  if a cell value does not fit
+     *          its column's type
+     */
+    private void checkSampledCells( List cellList, long lrow )
+            throws TableFormatException {
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            String sval = (String) cellList.get( icol );
+            if ( sval != null ) {
+                String tval = sval.trim();
+                RowEvaluator.Decoder decoder = decoders_[ icol ];
+                if ( tval.length() > 0 && ! decoder.isValid( tval ) ) {
+                    throw new TableFormatException(
+                        "Value \"" + tval + "\" at row " + lrow
+                      + " does not fit type "
+                      + decoder.getContentClass().getName()
+                      + " of column " + colInfos_[ icol ].getName()
+                      + " inferred from sample of " + sampleSize_ + " rows"
+                      + " - increase sample size (" + SAMPLE_PROPERTY
+                      + ") or set it to zero" );
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the decoder used for a column, and updates the column
+     * metadata to match.  The column name and description are retained.
+     * This must only be done before the table is ready for use.
+     *
+     * @param  icol  column index
+     * @param  decoder  new decoder
+     */
+    private void setDecoder( int icol, RowEvaluator.Decoder decoder ) {
+        ColumnInfo oldInfo = colInfos_[ icol ];
+        ColumnInfo info = decoder.createColumnInfo( oldInfo.getName() );
+        info.setDescription( oldInfo.getDescription() );
+        if ( info.getContentClass() == String.class ) {
+            info.setElementSize( -1 );
+        }
+        colInfos_[ icol ] = info;
+        decoders_[ icol ] = decoder;
+    }
+
+    /**
+     * Evaluates a sample of this table's records.
+     * The first records up to the sample size are read,
+     * and if the data comes from an uncompressed file,
+     * some more are read from randomly chosen positions in the file.
+     * If all the records fit in the sample, the result is the same
+     * as for a full evaluation.
+     *
+     * @param  evaluator  row evaluator, not previously used
+     * @param  submitFirst  true if the first record should be submitted
+     *                      to the evaluator as well as returned
+     * @return   list of strings for the first record,
+     *           or <code>null</code> if there are no records
+     */
+    private List sampleRows( RowEvaluator evaluator, boolean submitFirst )
+            throws IOException {
+        PushbackInputStream in = openStream();
+        List row0;
+        try {
+            row0 = readRow( in );
+            long lrow = 1;
+            try {
+                if ( row0 != null && submitFirst ) {
+                    evaluator.submitRow( row0 );
+                }
+                for ( List row; lrow <= sampleSize_ &&
+                                ( row = readRow( in ) ) != null; ) {
+                    lrow++;
+                    evaluator.submitRow( row );
+                }
+            }
+            catch ( TableFormatException e ) {
+                throw new TableFormatException( e.getMessage() + " at row "
+                                              + lrow, e );
+            }
+
+            /* If the whole table has been read, we have the full answer. */
+            if ( lrow <= sampleSize_ ) {
+                return row0;
+            }
+        }
+        finally {
+            in.close();
+        }
+        sampled_ = true;
+
+        /* Otherwise, take some more samples from elsewhere in the file
+         * if possible. */
+        if ( datsrc_ instanceof FileDataSource &&
+             datsrc_.getPosition() == null &&
+             datsrc_.getCompression() == Compression.NONE ) {
+            File file = ((FileDataSource) datsrc_).getFile();
+            long leng = file.length();
+            Random rnd = new Random( leng );
+            int nr = Math.max( 16, sampleSize_ / NPROBE );
+            for ( int ip = 0; ip < NPROBE; ip++ ) {
+                long offset = (long) ( rnd.nextDouble() * leng );
+                RowEvaluator probe = probeRows( file, offset, nr );
+                if ( probe != null ) {
+                    try {
+                        evaluator.merge( probe );
+                    }
+                    catch ( TableFormatException e ) {
+                        // probably not aligned with records; ignore
+                    }
+                }
+            }
+        }
+        return row0;
+    }
+
+    /**
+     * Evaluates a few records starting at an arbitrary position in a file.
+     * The position is advanced to the start of the next line before
+     * reading.  Since that is not necessarily the start of a record,
+     * the evaluation is discarded if there is any parse error.
+     *
+     * @param  file  file
+     * @param  offset   approximate starting position
+     * @param  nrow   maximum number of records to read
+     * @return   evaluator containing results, or null if no records
+     *           could be read
+     */
+    private RowEvaluator probeRows( File file, long offset, int nrow )
+            throws IOException {
+        FileInputStream fin = new FileInputStream( file );
+        try {
+            fin.getChannel().position( offset );
+            PushbackInputStream in =
+                new PushbackInputStream( new BufferedInputStream( fin ) );
+            boolean eol = false;
+            for ( int b; ( b = in.read() ) >= 0; ) {
+                boolean isEol = b == '\r' || b == '\n';
+                if ( eol && ! isEol ) {
+                    in.unread( b );
+                    break;
+                }
+                eol = eol || isEol;
+            }
+            RowEvaluator evaluator = new RowEvaluator();
+            try {
+                List row;
+                for ( int ir = 0; ir < nrow && ( row = readRow( in ) ) != null;
+                      ir++ ) {
+                    evaluator.submitRow( row );
+                }
+            }
+            catch ( TableFormatException e ) {
+                return null;
+            }
+            return evaluator;
+        }
+        finally {
+            fin.close();
+        }
+    }
+
+    /**
+     * Returns a buffered pushback stream containing all of this
+     * table's data.
+     *
+     * @return  input stream
+     */
+    private PushbackInputStream openStream() throws IOException {
         return new PushbackInputStream( 
                    new BufferedInputStream( datsrc_.getInputStream() ) );
     }
 
+    /**
+     * Returns a pushback stream containing one chunk of this table's data.
+     *
+     * @param  chunker  chunker
+     * @param  bounds   chunk boundaries
+     * @param  ic   chunk index
+     * @return  input stream
+     */
+    private static PushbackInputStream openChunk( TextChunker chunker,
+                                                  long[] bounds, int ic )
+            throws IOException {
+        return new PushbackInputStream(
+                   chunker.openRegion( bounds[ ic ], bounds[ ic + 1 ] ) );
+    }
+
+    /**
+     * Returns a chunker for this table's data if chunked reading
+     * is possible and worthwhile.
+     *
+     * @return  chunker, or null
+     */
+    private TextChunker createChunker() throws IOException {
+        if ( canReadChunks() &&
+             readParallelism_ > 1 &&
+             datsrc_ instanceof FileDataSource &&
+             datsrc_.getPosition() == null &&
+             datsrc_.getCompression() == Compression.NONE ) {
+            File file = ((FileDataSource) datsrc_).getFile();
+            if ( file.length() >= 2L * chunkSize_ ) {
+                return new TextChunker( file, chunkSize_, getRecordQuote() );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates the records of this table's data chunk by chunk,
+     * using concurrent tasks.
+     *
+     * @param  chunker  chunker
+     * @param  bounds   chunk boundaries
+     * @param  evaluator  evaluator which receives the merged results
+     * @param  submitFirst  whether to evaluate the first record
+     * @param  executor   executor service
+     * @return   list of strings for the first record,
+     *           or <code>null</code> if there are no records
+     */
+    private List evaluateChunks( final TextChunker chunker,
+                                 final long[] bounds, RowEvaluator evaluator,
+                                 boolean submitFirst,
+                                 ExecutorService executor )
+            throws IOException {
+        final int nchunk = bounds.length - 1;
+        final long[] counts = new long[ nchunk ];
+
+        /* Read the first record before anything else, since subclasses
+         * may do some header processing up to that point. */
+        final PushbackInputStream in0 = openChunk( chunker, bounds, 0 );
+        final List row0;
+        try {
+            row0 = readRow( in0 );
+        }
+        catch ( IOException e ) {
+            in0.close();
+            throw e;
+        }
+        counts[ 0 ] = row0 == null ? 0 : 1;
+        final boolean submit0 = submitFirst && row0 != null;
+
+        /* Evaluate the remaining records of each chunk with its own
+         * evaluator. */
+        List tasks = new ArrayList();
+        for ( int ic = 0; ic < nchunk; ic++ ) {
+            final int ic0 = ic;
+            tasks.add( new Callable() {
+                public Object call() throws IOException {
+                    RowEvaluator ev = new RowEvaluator();
+                    PushbackInputStream in =
+                        ic0 == 0 ? in0 : openChunk( chunker, bounds, ic0 );
+                    long n = counts[ ic0 ];
+                    try {
+                        if ( ic0 == 0 && submit0 ) {
+                            ev.submitRow( row0 );
+                        }
+                        for ( List row; ( row = readRow( in ) ) != null; ) {
+                            n++;
+                            ev.submitRow( row );
+                        }
+                    }
+                    catch ( TableFormatException e ) {
+                        throw new TableFormatException(
+                            e.getMessage() + " at row " + n
+                          + " of chunk at byte offset " + bounds[ ic0 ], e );
+                    }
+                    finally {
+                        in.close();
+                    }
+                    counts[ ic0 ] = n;
+                    return ev;
+                }
+            } );
+        }
+        List evs;
+        try {
+            evs = invokeAll( executor, tasks );
+        }
+        finally {
+            in0.close();
+        }
+        for ( Iterator it = evs.iterator(); it.hasNext(); ) {
+            evaluator.merge( (RowEvaluator) it.next() );
+        }
+        chunker_ = chunker;
+        chunkBounds_ = bounds;
+        chunkRecords_ = counts;
+        return row0;
+    }
+
+    /**
+     * Returns a new executor service for reading threads.
+     * It should be shut down after use.
+     *
+     * @return  new executor
+     */
+    private static ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool( readParallelism_,
+                                             new ThreadFactory() {
+            private int iThread_;
+            public synchronized Thread newThread( Runnable r ) {
+                Thread thread =
+                    new Thread( r, "StreamStarTable-" + ( ++iThread_ ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Runs a list of tasks and waits for them all to complete.
+     *
+     * @param  executor  executor
+     * @param  tasks   list of Callables
+     * @return   list of task results in the same order as the tasks
+     */
+    static List invokeAll( ExecutorService executor, List tasks )
+            throws IOException {
+        List results = new ArrayList();
+        try {
+            for ( Iterator it = executor.invokeAll( tasks ).iterator();
+                  it.hasNext(); ) {
+                results.add( ((Future) it.next()).get() );
+            }
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException) new InterruptedIOException( "Interrupted" )
+                               .initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Read error" )
+                                   .initCause( cause );
+            }
+        }
+        return results;
+    }
+
     /**
      * Obtains column metadata for this table, probably by reading through
      * the rows once and using a RowEvaluator.
@@ -148,4 +823,198 @@ public abstract class StreamStarTable extends AbstractStarTable {
      */
     protected abstract List readRow( PushbackInputStream in )
             throws TableFormatException, IOException;
+
+    /**
+     * Row sequence which reads rows from the input stream.
+     * Blocks of rows are stored as lists of cell strings,
+     * and only decoded when the column values are requested.
+     */
+    private class TextRowSequence implements BlockRowSequence {
+        private final PushbackInputStream in_;
+        private Object[] row_;
+        private boolean done_;
+        private long lrow_;
+        private List[] cellBlock_;
+        private int nblock_;
+        private boolean inBlock_;
+
+        /**
+         * Constructor.
+         *
+         * @param  in  input stream positioned at the start of the data
+         */
+        TextRowSequence( PushbackInputStream in ) {
+            in_ = in;
+            cellBlock_ = new List[ 0 ];
+        }
+
+        public boolean next() throws IOException {
+            inBlock_ = false;
+            List cellList = readCells();
+            row_ = cellList == null ? null : decodeRow( cellList );
+            return row_ != null;
+        }
+
+        public Object getCell( int icol ) {
+            return getRow()[ icol ];
+        }
+
+        public Object[] getRow() {
+            if ( row_ == null || inBlock_ ) {
+                throw new IllegalStateException( "No current row" );
+            }
+            return row_;
+        }
+
+        public int nextBlock( int maxRows ) throws IOException {
+            if ( cellBlock_.length < maxRows ) {
+                cellBlock_ = new List[ maxRows ];
+            }
+            inBlock_ = true;
+            row_ = null;
+            int n = 0;
+            for ( List cellList;
+                  n < maxRows && ( cellList = readCells() ) != null; ) {
+                cellBlock_[ n++ ] = cellList;
+            }
+            nblock_ = n;
+            return n;
+        }
+
+        public void getDoubleBlock( int icol, double[] buf, int off ) {
+            checkBlock();
+            for ( int i = 0; i < nblock_; i++ ) {
+                buf[ off + i ] =
+                    decodeDouble( icol, (String) cellBlock_[ i ].get( icol ) );
+            }
+        }
+
+        public void getObjectBlock( int icol, Object[] buf, int off ) {
+            checkBlock();
+            for ( int i = 0; i < nblock_; i++ ) {
+                String sval = (String) cellBlock_[ i ].get( icol );
+                buf[ off + i ] = sval != null && sval.trim().length() > 0
+                               ? decoders_[ icol ].decode( sval )
+                               : null;
+            }
+        }
+
+        public void close() throws IOException {
+            in_.close();
+        }
+
+        /**
+         * Reads the cell strings for the next record.
+         *
+         * @return  list of cell strings, or null at end of stream
+         */
+        private List readCells() throws IOException {
+            if ( done_ ) {
+                return null;
+            }
+            List cellList = readRow( in_ );
+            if ( cellList == null ) {
+                done_ = true;
+                in_.close();
+            }
+            else if ( sampled_ ) {
+                checkSampledCells( cellList, ++lrow_ );
+            }
+            return cellList;
+        }
+
+        /**
+         * Checks that there is a current block.
+         */
+        private void checkBlock() {
+            if ( ! inBlock_ ) {
+                throw new IllegalStateException( "No current block" );
+            }
+        }
+    }
+
+    /**
+     * RowSplittable implementation which reads a range of chunks.
+     */
+    private class ChunkRowSplittable implements RowSplittable {
+        private int ic_;
+        private int icEnd_;
+        private long irow_;
+        private PushbackInputStream in_;
+        private Object[] row_;
+        private boolean started_;
+
+        /**
+         * Constructor.
+         *
+         * @param  icStart  index of first chunk
+         * @param  icEnd    index after last chunk
+         */
+        ChunkRowSplittable( int icStart, int icEnd ) {
+            ic_ = icStart;
+            icEnd_ = icEnd;
+            irow_ = chunkRowStarts_[ icStart ] - 1;
+        }
+
+        public RowSplittable split() {
+            if ( started_ || icEnd_ - ic_ < 2 ) {
+                return null;
+            }
+            int icMid = ( ic_ + icEnd_ ) / 2;
+            RowSplittable prefix = new ChunkRowSplittable( ic_, icMid );
+            ic_ = icMid;
+            irow_ = chunkRowStarts_[ icMid ] - 1;
+            return prefix;
+        }
+
+        public long splittableSize() {
+            return chunkRowStarts_[ icEnd_ ] - irow_ - 1;
+        }
+
+        public long getRowIndex() {
+            return irow_;
+        }
+
+        public boolean next() throws IOException {
+            started_ = true;
+            while ( ic_ < icEnd_ ) {
+                if ( in_ == null ) {
+                    in_ = openChunk( chunker_, chunkBounds_, ic_ );
+                    if ( ic_ == 0 ) {
+                        skipHeader( in_ );
+                    }
+                }
+                List cellList = readRow( in_ );
+                if ( cellList != null ) {
+                    row_ = decodeRow( cellList );
+                    irow_++;
+                    return true;
+                }
+                in_.close();
+                in_ = null;
+                ic_++;
+            }
+            row_ = null;
+            return false;
+        }
+
+        public Object getCell( int icol ) {
+            return getRow()[ icol ];
+        }
+
+        public Object[] getRow() {
+            if ( row_ == null ) {
+                throw new IllegalStateException( "No current row" );
+            }
+            return row_;
+        }
+
+        public void close() throws IOException {
+            if ( in_ != null ) {
+                in_.close();
+                in_ = null;
+            }
+            ic_ = icEnd_;
+        }
+    }
 }
@@ -0,0 +1,253 @@
+package uk.ac.starlink.table.formats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Divides a text file into chunks which start on record boundaries,
+ * so that the chunks can be parsed independently and concurrently.
+ *
+ * <p>Records are taken to be terminated by runs of carriage return
+ * and/or newline characters, except where those characters appear
+ * within a quoted string.  Quoted strings are delimited by a given
+ * quote character; a doubled quote character within a quoted string
+ * is taken to represent a literal quote, as in CSV.
+ * To work out whether a given position is within a quoted string,
+ * the quote characters before it are counted; this is done
+ * concurrently for each chunk, so that the whole file is only scanned
+ * once.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class TextChunker {
+
+    private final File file_;
+    private final long size_;
+    private final int chunkSize_;
+    private final byte quote_;
+
+    /** Size of buffer used for scanning. */
+    private static final int BUFSIZ = 64 * 1024;
+
+    /**
+     * Constructor.
+     *
+     * @param  file  text file
+     * @param  chunkSize  nominal chunk size in bytes
+     * @param  quote   quote character within which line ends do not
+     *                 terminate records, or 0 if line ends always
+     *                 terminate records
+     */
+    public TextChunker( File file, int chunkSize, byte quote ) {
+        file_ = file;
+        size_ = file.length();
+        chunkSize_ = chunkSize;
+        quote_ = quote;
+    }
+
+    /**
+     * Returns the chunk boundaries for the file.
+     * The returned array starts with zero and ends with the file length,
+     * and is strictly increasing; element <code>i</code> gives the
+     * offset of the start of chunk <code>i</code>.
+     * Every chunk apart from the first starts at the beginning of a record.
+     *
+     * @param  executor  executor service used for concurrent scanning
+     * @return   (nchunk+1)-element array of chunk offsets
+     */
+    public long[] getBoundaries( ExecutorService executor )
+            throws IOException {
+        int nchunk = (int) ( ( size_ + chunkSize_ - 1 ) / chunkSize_ );
+        if ( nchunk <= 1 ) {
+            return new long[] { 0, size_ };
+        }
+
+        /* If record ends may be quoted, find out for the start of each
+         * nominal chunk whether it falls inside a quoted string. */
+        final boolean[] inQuotes = new boolean[ nchunk ];
+        if ( quote_ != 0 ) {
+            List tasks = new ArrayList();
+            for ( int ic = 0; ic < nchunk; ic++ ) {
+                final long start = ic * (long) chunkSize_;
+                final long end = Math.min( start + chunkSize_, size_ );
+                tasks.add( new Callable() {
+                    public Object call() throws IOException {
+                        return Boolean.valueOf( isOddQuotes( start, end ) );
+                    }
+                } );
+            }
+            List odds = StreamStarTable.invokeAll( executor, tasks );
+            boolean inQuote = false;
+            for ( int ic = 0; ic < nchunk; ic++ ) {
+                inQuotes[ ic ] = inQuote;
+                inQuote = inQuote ^ ((Boolean) odds.get( ic )).booleanValue();
+            }
+        }
+
+        /* Find the first record boundary after the start of each
+         * nominal chunk. */
+        List tasks = new ArrayList();
+        for ( int ic = 1; ic < nchunk; ic++ ) {
+            final long start = ic * (long) chunkSize_;
+            final boolean inQuote = inQuotes[ ic ];
+            tasks.add( new Callable() {
+                public Object call() throws IOException {
+                    return new Long( findRecordStart( start, inQuote ) );
+                }
+            } );
+        }
+        List starts = StreamStarTable.invokeAll( executor, tasks );
+
+        /* Assemble the boundaries, discarding any empty chunks. */
+        long[] bounds = new long[ nchunk + 1 ];
+        int nb = 0;
+        bounds[ nb++ ] = 0;
+        for ( int i = 0; i < starts.size(); i++ ) {
+            long start = ((Long) starts.get( i )).longValue();
+            if ( start > bounds[ nb - 1 ] && start < size_ ) {
+                bounds[ nb++ ] = start;
+            }
+        }
+        bounds[ nb++ ] = size_;
+        long[] result = new long[ nb ];
+        System.arraycopy( bounds, 0, result, 0, nb );
+        return result;
+    }
+
+    /**
+     * Returns an input stream which reads the bytes of a given region
+     * of the file.  The region is mapped into memory.
+     *
+     * @param  start  offset of start of region
+     * @param  end    offset of end of region
+     * @return  input stream
+     */
+    public InputStream openRegion( long start, long end ) throws IOException {
+        long leng = end - start;
+        if ( leng > Integer.MAX_VALUE ) {
+            throw new IOException( "Text chunk too large to map" );
+        }
+        RandomAccessFile raf = new RandomAccessFile( file_, "r" );
+        try {
+            final ByteBuffer buf =
+                raf.getChannel()
+                   .map( FileChannel.MapMode.READ_ONLY, start, leng );
+            return new InputStream() {
+                public int read() {
+                    return buf.hasRemaining() ? buf.get() & 0xff : -1;
+                }
+                public int read( byte[] b, int off, int len ) {
+                    int n = Math.min( len, buf.remaining() );
+                    if ( n <= 0 ) {
+                        return len == 0 ? 0 : -1;
+                    }
+                    buf.get( b, off, n );
+                    return n;
+                }
+                public long skip( long n ) {
+                    int k = (int) Math.max( 0, Math.min( n, buf.remaining() ));
+                    buf.position( buf.position() + k );
+                    return k;
+                }
+                public int available() {
+                    return buf.remaining();
+                }
+            };
+        }
+        finally {
+
+            /* The mapping remains valid after the channel is closed. */
+            raf.close();
+        }
+    }
+
+    /**
+     * Determines whether a region of the file contains an odd number
+     * of quote characters.
+     *
+     * @param  start  offset of start of region
+     * @param  end    offset of end of region
+     * @return   true iff the number of quote characters is odd
+     */
+    private boolean isOddQuotes( long start, long end ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file_, "r" );
+        try {
+            FileChannel chan = raf.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate( BUFSIZ );
+            byte[] bytes = buf.array();
+            boolean odd = false;
+            for ( long pos = start; pos < end; ) {
+                buf.clear();
+                buf.limit( (int) Math.min( BUFSIZ, end - pos ) );
+                int n = chan.read( buf, pos );
+                if ( n < 0 ) {
+                    break;
+                }
+                for ( int i = 0; i < n; i++ ) {
+                    if ( bytes[ i ] == quote_ ) {
+                        odd = ! odd;
+                    }
+                }
+                pos += n;
+            }
+            return odd;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the offset of the start of the first record following
+     * a given position.  That is the first character after the first
+     * unquoted run of line end characters.
+     *
+     * @param  start  offset at which to start looking
+     * @param  inQuote  whether <code>start</code> is inside a quoted string
+     * @return   offset of record start, or the file length if there is none
+     */
+    private long findRecordStart( long start, boolean inQuote )
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file_, "r" );
+        try {
+            FileChannel chan = raf.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate( BUFSIZ );
+            byte[] bytes = buf.array();
+            boolean sawEol = false;
+            for ( long pos = start; pos < size_; ) {
+                buf.clear();
+                int n = chan.read( buf, pos );
+                if ( n < 0 ) {
+                    break;
+                }
+                for ( int i = 0; i < n; i++ ) {
+                    byte b = bytes[ i ];
+                    boolean isEol = b == '\n' || b == '\r';
+                    if ( sawEol && ! isEol ) {
+                        return pos + i;
+                    }
+                    if ( quote_ != 0 && b == quote_ ) {
+                        inQuote = ! inQuote;
+                    }
+                    else if ( isEol && ! inQuote ) {
+                        sawEol = true;
+                    }
+                }
+                pos += n;
+            }
+            return size_;
+        }
+        finally {
+            raf.close();
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package uk.ac.starlink.table.join;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.DescribedValue;
 import uk.ac.starlink.table.ValueInfo;
@@ -9,16 +15,29 @@ import uk.ac.starlink.table.ValueInfo;
 /**
  * Abstract superclass for match engines working in a Cartesian space.
  *
+ * <p>Positions are binned on a regular grid whose cell size is the
+ * scale length multiplied by a bin factor.
+ * If the bin factor is set to zero, an adaptive grid is used instead.
+ * The regular grid is then refined by successive halvings of the
+ * cell size in regions where a sample of the data shows that rows are
+ * dense, choosing for each grid cell the level of refinement which
+ * minimises an estimate of the work done per row, namely the number of
+ * bins it occupies times (fixed cost per bin plus rows per bin).
+ * This avoids the very large number of pair comparisons per bin
+ * otherwise incurred in crowded regions.
+ *
  * @author   Mark Taylor
  * @since    2 Sep 2011
  */
-public abstract class AbstractCartesianMatchEngine implements MatchEngine {
+public abstract class AbstractCartesianMatchEngine
+        implements AdaptiveMatchEngine {
 
     private final int ndim_;
     private final double[] scales_;
     private final double[] rBinSizes_;
     private final DescribedValue binFactorParam_;
     private double binFactor_;
+    private volatile Map levelMap_;
 
     /**
      * Factor which determines bin size to use,
@@ -30,10 +49,27 @@ public abstract class AbstractCartesianMatchEngine implements MatchEngine {
      */
     private static final double DEFAULT_BIN_FACTOR = 8;
 
+    /** Maximum number of times a cell may be halved by adaptive binning. */
+    private static final int MAX_LEVEL = 8;
+
+    /**
+     * Cost of storing and retrieving a row reference in a bin,
+     * relative to the cost of a pair comparison,
+     * used by the adaptive binning cost model.
+     */
+    private static final double BIN_COST = 4;
+
+    /** Number of sample rows per table requested for adaptive binning. */
+    private static final int SAMPLE_SIZE = 20000;
+
     private static final DefaultValueInfo BINFACT_INFO =
         new DefaultValueInfo( "Bin Factor", Double.class,
                               "Scaling factor to adjust bin size; "
-                            + "larger values mean larger bins" );
+                            + "larger values mean larger bins; "
+                            + "zero for adaptive binning" );
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.join" );
 
     /**
      * Constructor.
@@ -60,12 +96,16 @@ public abstract class AbstractCartesianMatchEngine implements MatchEngine {
 
     /**
      * Sets a multiplier for the length scale that determines bin size.
+     * The special value zero indicates adaptive binning,
+     * in which the default multiplier determines the coarsest bin size,
+     * and bins are refined according to the data density in the sample
+     * supplied to {@link #setSample setSample}.
      *
-     * @param  binFactor  bin size multiplier
+     * @param  binFactor  bin size multiplier, or zero for adaptive binning
      */
     public void setBinFactor( double binFactor ) {
-        if ( ! ( binFactor > 0 ) ) {
-            throw new IllegalArgumentException( "Bin factor must be >0" );
+        if ( ! ( binFactor >= 0 ) ) {
+            throw new IllegalArgumentException( "Bin factor must be >=0" );
         }
         binFactor_ = binFactor;
         for ( int id = 0; id < ndim_; id++ ) {
@@ -137,7 +177,120 @@ public abstract class AbstractCartesianMatchEngine implements MatchEngine {
      * @param  idim  dimension index
      */
     private void configureScale( int idim ) {
-        rBinSizes_[ idim ] = 1.0 / ( scales_[ idim ] * binFactor_ );
+        double factor = binFactor_ > 0 ? binFactor_ : DEFAULT_BIN_FACTOR;
+        rBinSizes_[ idim ] = 1.0 / ( scales_[ idim ] * factor );
+        levelMap_ = null;
+    }
+
+    /**
+     * Indicates whether this engine is using adaptive binning.
+     *
+     * @return  true iff the bin factor is zero
+     */
+    public boolean isAdaptive() {
+        return binFactor_ == 0;
+    }
+
+    public int getSampleSize() {
+        return isAdaptive() ? SAMPLE_SIZE : 0;
+    }
+
+    /**
+     * Configures the adaptive grid refinement.
+     * This has no effect unless adaptive binning is in use.
+     */
+    public void setSample( Object[][] tuples, double[] weights ) {
+        if ( ! isAdaptive() ) {
+            return;
+        }
+
+        /* Estimate the number of rows in each cell of the unrefined grid. */
+        Map countMap = new HashMap();
+        for ( int it = 0; it < tuples.length; it++ ) {
+            double[] coords = toBinCoords( tuples[ it ] );
+            int[] label = new int[ ndim_ ];
+            boolean ok = true;
+            for ( int id = 0; id < ndim_; id++ ) {
+                double c = coords[ id ];
+                ok = ok && ! Double.isNaN( c );
+                label[ id ] = ok ? getLabelComponent( id, c ) : 0;
+            }
+            if ( ok ) {
+                Cell cell = new Cell( label );
+                double[] count = (double[]) countMap.get( cell );
+                if ( count == null ) {
+                    count = new double[ 1 ];
+                    countMap.put( cell, count );
+                }
+                count[ 0 ] += weights[ it ];
+            }
+        }
+
+        /* Number of cells per dimension covered by the radius used for
+         * binning, as a fraction of the unrefined cell size.
+         * This is only an estimate, since some engines use per-row
+         * radii. */
+        double[] rFracs = new double[ ndim_ ];
+        for ( int id = 0; id < ndim_; id++ ) {
+            rFracs[ id ] = 2 * scales_[ id ] * rBinSizes_[ id ];
+        }
+
+        /* For each cell, choose the refinement level which minimises
+         * the estimated cost. */
+        Map levelMap = new HashMap();
+        int[] levelCounts = new int[ MAX_LEVEL + 1 ];
+        for ( Iterator it = countMap.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            double count = ((double[]) entry.getValue())[ 0 ];
+            int maxLevel = getMaxLevel( ((Cell) entry.getKey()).getLabel() );
+            int bestLevel = 0;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for ( int level = 0; level <= maxLevel; level++ ) {
+                double nbin = 1;
+                for ( int id = 0; id < ndim_; id++ ) {
+                    nbin *= 1 + ( 1 << level ) * rFracs[ id ];
+                }
+                double perBin = count / Math.pow( 2, level * ndim_ );
+                double cost = nbin * ( BIN_COST + perBin );
+                if ( cost < bestCost ) {
+                    bestCost = cost;
+                    bestLevel = level;
+                }
+            }
+            levelCounts[ bestLevel ]++;
+            if ( bestLevel > 0 ) {
+                levelMap.put( entry.getKey(), new Integer( bestLevel ) );
+            }
+        }
+        levelMap_ = levelMap;
+
+        /* Report. */
+        StringBuffer sbuf = new StringBuffer( "Adaptive bin levels:" );
+        for ( int level = 0; level <= MAX_LEVEL; level++ ) {
+            if ( levelCounts[ level ] > 0 ) {
+                sbuf.append( ' ' )
+                    .append( level )
+                    .append( ':' )
+                    .append( levelCounts[ level ] );
+            }
+        }
+        logger_.info( sbuf.toString() );
+    }
+
+    /**
+     * Returns the Cartesian position of a match tuple in the space
+     * used for binning.  This is used to assess the data density for
+     * adaptive binning.
+     * The default implementation returns the first <code>ndim</code>
+     * elements of the tuple as numeric values.
+     *
+     * @param  tuple  match tuple
+     * @return  ndim-element coordinate array
+     */
+    protected double[] toBinCoords( Object[] tuple ) {
+        double[] coords = new double[ ndim_ ];
+        toDoubles( tuple, ndim_, coords, 0 );
+        return coords;
     }
 
     public DescribedValue[] getTuningParameters() {
@@ -227,10 +380,121 @@ public abstract class AbstractCartesianMatchEngine implements MatchEngine {
         assert new HashSet<Cell>( Arrays.asList( cells ) ).size()
                == cells.length;
 
+        /* If some cells have been refined, replace them. */
+        Map levelMap = levelMap_;
+        if ( levelMap != null && levelMap.size() > 0 ) {
+            double[] los = new double[ ndim_ ];
+            double[] his = new double[ ndim_ ];
+            for ( int id = 0; id < ndim_; id++ ) {
+                double r = useScale ? scales_[ id ] : radius;
+                los[ id ] = coords[ id ] - r;
+                his[ id ] = coords[ id ] + r;
+            }
+            return refineCells( cells, levelMap, los, his );
+        }
+
         /* Return the list of cells. */
         return cells;
     }
 
+    /**
+     * Replaces cells of the unrefined grid by the refined cells
+     * they contain, where adaptive binning requires it.
+     * Only refined cells overlapping a given range are included.
+     * Refined cells are labelled by their indices on the refined grid
+     * followed by the refinement level, so they are distinct from
+     * unrefined cells and from cells at other levels.
+     *
+     * @param  cells  cells on the unrefined grid
+     * @param  levelMap  map from unrefined cell to Integer
+     *                   refinement level, for refined cells only
+     * @param  los   lower bound of range in each dimension
+     * @param  his   upper bound of range in each dimension
+     * @return   bin objects
+     */
+    private Object[] refineCells( Cell[] cells, Map levelMap,
+                                  double[] los, double[] his ) {
+        List binList = new ArrayList( cells.length );
+        for ( int ic = 0; ic < cells.length; ic++ ) {
+            Cell cell = cells[ ic ];
+            Integer levelObj = (Integer) levelMap.get( cell );
+            if ( levelObj == null ) {
+                binList.add( cell );
+            }
+            else {
+                int level = levelObj.intValue();
+                int[] clabel = cell.getLabel();
+                assert level <= getMaxLevel( clabel );
+                long nsub = 1L << level;
+                int[] flo = new int[ ndim_ ];
+                int[] fhi = new int[ ndim_ ];
+                for ( int id = 0; id < ndim_; id++ ) {
+                    long base = clabel[ id ] * nsub;
+                    long top = base + nsub - 1;
+                    double rb = rBinSizes_[ id ] * nsub;
+                    long lo = (long) Math.floor( los[ id ] * rb );
+                    long hi = (long) Math.floor( his[ id ] * rb );
+                    flo[ id ] = (int) clamp( lo, base, top );
+                    fhi[ id ] = (int) clamp( hi, base, top );
+                }
+                int[] flabel = (int[]) flo.clone();
+                boolean done = false;
+                while ( ! done ) {
+                    int[] blabel = new int[ ndim_ + 1 ];
+                    System.arraycopy( flabel, 0, blabel, 0, ndim_ );
+                    blabel[ ndim_ ] = level;
+                    binList.add( new Cell( blabel ) );
+                    done = true;
+                    for ( int jd = 0; jd < ndim_ && done; jd++ ) {
+                        if ( ++flabel[ jd ] <= fhi[ jd ] ) {
+                            done = false;
+                        }
+                        else {
+                            flabel[ jd ] = flo[ jd ];
+                        }
+                    }
+                }
+            }
+        }
+        return binList.toArray();
+    }
+
+    /**
+     * Returns the highest refinement level that may be used for a cell
+     * of the unrefined grid.  This is normally <code>MAX_LEVEL</code>,
+     * but may be lower far from the origin, since the labels of
+     * the refined cells must be representable as <code>int</code>s.
+     *
+     * @param  label  label of a cell on the unrefined grid
+     * @return  maximum permitted refinement level for the cell
+     */
+    private static int getMaxLevel( int[] label ) {
+        for ( int level = MAX_LEVEL; level > 0; level-- ) {
+            boolean ok = true;
+            for ( int id = 0; id < label.length && ok; id++ ) {
+                long lo = ( (long) label[ id ] ) << level;
+                long hi = lo + ( 1L << level ) - 1;
+                ok = lo >= Integer.MIN_VALUE && hi <= Integer.MAX_VALUE;
+            }
+            if ( ok ) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Clamps a value to a given range.
+     *
+     * @param  value  value
+     * @param  lo   lower bound
+     * @param  hi   upper bound
+     * @return  value, or the nearest bound if it lies outside the range
+     */
+    private static long clamp( long value, long lo, long hi ) {
+        return Math.max( lo, Math.min( hi, value ) );
+    }
+
     /** 
      * Returns the integer label of a cell position in a given dimension.
      * This identifies one of the coordinates of the discrete cube 
@@ -258,10 +522,28 @@ public abstract class AbstractCartesianMatchEngine implements MatchEngine {
      */
     static double matchScore( int ndim, double[] coords1, double[] coords2,
                               double err ) {
+        return matchScore( ndim, coords1, 0, coords2, 0, err );
+    }
+
+    /**
+     * Utility method to calculate a match score using an isotropic error
+     * radius between two Cartesian positions stored in buffers.
+     *
+     * @param  ndim  coordinate dimensionality
+     * @param  buf1  buffer containing position 1
+     * @param  off1  offset into <code>buf1</code> of position 1
+     * @param  buf2  buffer containing position 2
+     * @param  off2  offset into <code>buf2</code> of position 2
+     * @param  err  maximum separation for match
+     * @return   Pythagoras distance between positions 1 and 2 if they are
+     *           within err of each other, otherwise -1
+     */
+    static double matchScore( int ndim, double[] buf1, int off1,
+                              double[] buf2, int off2, double err ) {
         double err2 = err * err;
         double dist2 = 0;
         for ( int id = 0; id < ndim; id++ ) {
-            double d = coords2[ id ] - coords1[ id ];
+            double d = buf2[ off2 + id ] - buf1[ off1 + id ];
             dist2 += d * d;
             if ( ! ( dist2 <= err2 ) ) {
                 return -1;
@@ -272,6 +554,21 @@ public abstract class AbstractCartesianMatchEngine implements MatchEngine {
         return score;
     }
 
+    /**
+     * Writes the numeric values of the first few elements of a tuple
+     * into a buffer.
+     *
+     * @param  tuple  input tuple
+     * @param  n   number of elements to convert
+     * @param  buf  output buffer
+     * @param  off  offset into <code>buf</code> at which to write
+     */
+    static void toDoubles( Object[] tuple, int n, double[] buf, int off ) {
+        for ( int i = 0; i < n; i++ ) {
+            buf[ off + i ] = getNumberValue( tuple[ i ] );
+        }
+    }
+
     /**
      * Utility method to return output tuple bounds based on given
      * input bounds, but with some coordinates extended
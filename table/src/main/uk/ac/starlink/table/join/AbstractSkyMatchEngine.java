@@ -15,6 +15,12 @@ public abstract class AbstractSkyMatchEngine implements MatchEngine {
 
     static final double INVERSE_ARC_SECOND = ( 180. * 60. * 60. ) / Math.PI;
 
+    /** Relative tolerance for the chord length prefilter. */
+    private static final double CHORD_REL_TOL = 1e-6;
+
+    /** Absolute tolerance in radians for the chord length prefilter. */
+    private static final double CHORD_ABS_TOL = 1e-14;
+
     /**
      * Constructor.
      *
@@ -44,6 +50,15 @@ public abstract class AbstractSkyMatchEngine implements MatchEngine {
         return pixellator_.getScale();
     }
 
+    /**
+     * Returns the pixellator used by this engine to assign bins.
+     *
+     * @return  pixellator
+     */
+    public SkyPixellator getPixellator() {
+        return pixellator_;
+    }
+
     public DescribedValue[] getTuningParameters() {
         return new DescribedValue[] { pixellator_.getTuningParameter() };
     }
@@ -90,6 +105,54 @@ public abstract class AbstractSkyMatchEngine implements MatchEngine {
         return INVERSE_ARC_SECOND * maxerr;
     }
 
+    /**
+     * Writes the Cartesian unit vector corresponding to a sky position
+     * into a buffer.
+     *
+     * @param   alpha  right ascension in radians
+     * @param   delta  declination in radians
+     * @param   buf   output buffer
+     * @param   off   offset into <code>buf</code> at which the
+     *                (x,y,z) components are written
+     */
+    static void toUnitVector( double alpha, double delta,
+                              double[] buf, int off ) {
+        double cd = Math.cos( delta );
+        buf[ off + 0 ] = Math.cos( alpha ) * cd;
+        buf[ off + 1 ] = Math.sin( alpha ) * cd;
+        buf[ off + 2 ] = Math.sin( delta );
+    }
+
+    /**
+     * Indicates whether two points on the sphere given as unit vectors
+     * are definitely further apart than a given limit.
+     * The test uses the chord length alone, so no trigonometric
+     * functions are evaluated.  It is only a prefilter:
+     * pairs which pass it must still be scored using the same
+     * {@link #calculateSeparation} code as <code>matchScore</code>,
+     * so that vector and tuple scoring give identical results.
+     * The chord is never longer than the arc; a small tolerance
+     * ensures that rounding errors in the unit vectors cannot
+     * cause a pair within the limit to be rejected.
+     *
+     * @param   buf1  buffer containing unit vector for point 1
+     * @param   off1  offset into <code>buf1</code>
+     * @param   buf2  buffer containing unit vector for point 2
+     * @param   off2  offset into <code>buf2</code>
+     * @param   maxerr  maximum permitted separation in radians
+     * @return  true if the points are certainly separated by more
+     *          than <code>maxerr</code>, or if the data are blank
+     */
+    static boolean isChordTooLong( double[] buf1, int off1,
+                                   double[] buf2, int off2, double maxerr ) {
+        double dx = buf2[ off2 + 0 ] - buf1[ off1 + 0 ];
+        double dy = buf2[ off2 + 1 ] - buf1[ off1 + 1 ];
+        double dz = buf2[ off2 + 2 ] - buf1[ off1 + 2 ];
+        double chord2 = dx * dx + dy * dy + dz * dz;
+        double lim = maxerr * ( 1 + CHORD_REL_TOL ) + CHORD_ABS_TOL;
+        return ! ( chord2 <= lim * lim );
+    }
+
     /**
      * Uses the pixellator to get a list of bin objects for a given
      * small circle.
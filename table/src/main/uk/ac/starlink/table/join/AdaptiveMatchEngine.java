@@ -0,0 +1,39 @@
+package uk.ac.starlink.table.join;
+
+/**
+ * MatchEngine which can adapt its binning to the distribution of the
+ * data to be matched, given a sample of that data.
+ *
+ * <p>A {@link RowMatcher} will supply a sample of rows from its input
+ * tables, if the engine asks for one, before any bins are calculated.
+ * The sample only affects which rows are compared, not the outcome
+ * of any comparison, so match results do not depend on it.
+ * However, since the result of {@link #getBins getBins} changes when
+ * a new sample is supplied, the same sample must be in effect for
+ * all the tables taking part in a given match.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public interface AdaptiveMatchEngine extends MatchEngine {
+
+    /**
+     * Returns the number of sample rows per table that this engine
+     * would like to receive.  Zero indicates that in its current
+     * configuration the engine does not make use of a sample.
+     *
+     * @return  preferred sample size per table, or 0
+     */
+    int getSampleSize();
+
+    /**
+     * Configures this engine's binning according to a sample of the
+     * data to be matched.  Each sample tuple comes with a weight giving
+     * the number of rows it represents.
+     *
+     * @param  tuples  sample of match tuples from all input tables
+     * @param  weights  array of the same length as <code>tuples</code>
+     *                  giving the number of rows each tuple represents
+     */
+    void setSample( Object[][] tuples, double[] weights );
+}
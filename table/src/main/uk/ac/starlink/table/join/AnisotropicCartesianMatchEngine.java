@@ -100,6 +100,34 @@ public class AnisotropicCartesianMatchEngine
         return Math.sqrt( normDist2 );
     }
 
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != AnisotropicCartesianMatchEngine.class ) {
+            return null;
+        }
+        final int ndim = ndim_;
+        final double[] err2rs = (double[]) err2rs_.clone();
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return ndim;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                toDoubles( tuple, ndim, buf, off );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                double normDist2 = 0;
+                for ( int id = 0; id < ndim; id++ ) {
+                    double d = buf2[ off2 + id ] - buf1[ off1 + id ];
+                    normDist2 += d * d * err2rs[ id ];
+                    if ( ! ( normDist2 <= 1.0 ) ) {
+                        return -1.0;
+                    }
+                }
+                return Math.sqrt( normDist2 );
+            }
+        };
+    }
+
     public double getScoreScale() {
         return 1.0;
     }
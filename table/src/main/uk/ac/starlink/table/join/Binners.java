@@ -45,15 +45,31 @@ class Binners {
         return new StorageListObjectBinner();
     }
 
+    /**
+     * Returns a new binner whose items are all {@link RowRef}s.
+     * Bins with <code>Long</code> keys, as used by the sky pixellators,
+     * are stored compactly in primitive arrays; other keys are
+     * handled as for {@link #createObjectBinner}.
+     *
+     * @return   new binner for RowRef items
+     */
+    public static ObjectBinner createRowRefBinner() {
+        return new RowRefObjectBinner( new CombinationObjectBinner() );
+    }
+
     /**
      * Returns a new binner for storing long integer values.
+     * Bins with <code>Long</code> keys, as used by the sky pixellators,
+     * are stored compactly in primitive arrays.
      *
+     * @param  nrow  number of rows to be binned, or -1 if not known
      * @return   new LongBinner
      */
     public static LongBinner createLongBinner( long nrow ) {
-        return nrow >= 0 && nrow < Integer.MAX_VALUE
-             ? (LongBinner) new CombinationIntLongBinner()
-             : (LongBinner) new LongListLongBinner();
+        LongBinner otherBinner = nrow >= 0 && nrow < Integer.MAX_VALUE
+                               ? (LongBinner) new CombinationIntLongBinner()
+                               : (LongBinner) new LongListLongBinner();
+        return new PrimitiveLongBinner( otherBinner );
     }
 
     /**
@@ -96,6 +112,10 @@ class Binners {
             return map_.size();
         }
 
+        public void close() {
+            map_.clear();
+        }
+
         /**
          * Takes an existing listable, adds an item to it, and returns 
          * a new listable containing the concatenation.
@@ -209,6 +229,10 @@ class Binners {
             return map_.size();
         }
 
+        public void close() {
+            map_.clear();
+        }
+
         /**
          * Takes an existing listable, adds an item to it, and returns 
          * a new listable containing the concatenation.
@@ -354,6 +378,207 @@ class Binners {
         }
     }
 
+    /**
+     * LongBinner implementation which stores bins with <code>Long</code>
+     * keys in a {@link LongListMap}, and delegates other bins to
+     * another binner.  The key iterator supports <code>remove</code>.
+     */
+    private static class PrimitiveLongBinner implements LongBinner {
+        private final LongListMap map_;
+        private final LongBinner otherBinner_;
+
+        /**
+         * Constructor.
+         *
+         * @param  otherBinner  binner for non-Long keys
+         */
+        PrimitiveLongBinner( LongBinner otherBinner ) {
+            map_ = new LongListMap();
+            otherBinner_ = otherBinner;
+        }
+
+        public void addItem( Object key, long item ) {
+            if ( key instanceof Long ) {
+                map_.add( ((Long) key).longValue(), item );
+            }
+            else {
+                otherBinner_.addItem( key, item );
+            }
+        }
+
+        public long[] getLongs( Object key ) {
+            return key instanceof Long
+                 ? map_.get( ((Long) key).longValue() )
+                 : otherBinner_.getLongs( key );
+        }
+
+        public Iterator getKeyIterator() {
+            return new ConcatIterator( map_.keyIterator(),
+                                       otherBinner_.getKeyIterator() );
+        }
+
+        public long getBinCount() {
+            return map_.getKeyCount() + otherBinner_.getBinCount();
+        }
+
+        public void close() {
+            map_.close();
+            otherBinner_.close();
+        }
+    }
+
+    /**
+     * ObjectBinner implementation for {@link RowRef} items which stores
+     * bins with <code>Long</code> keys in a {@link LongListMap},
+     * and delegates other bins to another binner.
+     * RowRefs are packed into a single <code>long</code> value,
+     * which limits the table index to 15 bits and the row index to 48 bits.
+     */
+    private static class RowRefObjectBinner implements ObjectBinner {
+        private final LongListMap map_;
+        private final ObjectBinner otherBinner_;
+
+        private static final int ROW_BITS = 48;
+        private static final long ROW_MASK = ( 1L << ROW_BITS ) - 1;
+        private static final int MAX_TABLE = ( 1 << 15 ) - 1;
+
+        /**
+         * Constructor.
+         *
+         * @param  otherBinner  binner for non-Long keys
+         */
+        RowRefObjectBinner( ObjectBinner otherBinner ) {
+            map_ = new LongListMap();
+            otherBinner_ = otherBinner;
+        }
+
+        public void addItem( Object key, Object item ) {
+            if ( key instanceof Long ) {
+                map_.add( ((Long) key).longValue(), pack( (RowRef) item ) );
+            }
+            else {
+                otherBinner_.addItem( key, item );
+            }
+        }
+
+        public List getList( Object key ) {
+            if ( key instanceof Long ) {
+                long[] packs = map_.get( ((Long) key).longValue() );
+                if ( packs == null ) {
+                    return null;
+                }
+                else {
+                    int n = packs.length;
+                    RowRef[] refs = new RowRef[ n ];
+                    for ( int i = 0; i < n; i++ ) {
+                        refs[ i ] = unpack( packs[ i ] );
+                    }
+                    return Arrays.asList( refs );
+                }
+            }
+            else {
+                return otherBinner_.getList( key );
+            }
+        }
+
+        public void remove( Object key ) {
+            if ( key instanceof Long ) {
+                map_.remove( ((Long) key).longValue() );
+            }
+            else {
+                otherBinner_.remove( key );
+            }
+        }
+
+        public Iterator getKeyIterator() {
+            return new ConcatIterator( map_.keyIterator(),
+                                       otherBinner_.getKeyIterator() );
+        }
+
+        public boolean containsKey( Object key ) {
+            return key instanceof Long
+                 ? map_.containsKey( ((Long) key).longValue() )
+                 : otherBinner_.containsKey( key );
+        }
+
+        public long getItemCount() {
+            return map_.getItemCount() + otherBinner_.getItemCount();
+        }
+
+        public long getBinCount() {
+            return map_.getKeyCount() + otherBinner_.getBinCount();
+        }
+
+        public void close() {
+            map_.close();
+            otherBinner_.close();
+        }
+
+        /**
+         * Packs a RowRef into a long.
+         *
+         * @param  ref  row ref
+         * @return  packed value
+         */
+        private static long pack( RowRef ref ) {
+            int itab = ref.getTableIndex();
+            long irow = ref.getRowIndex();
+            if ( itab < 0 || itab > MAX_TABLE || irow < 0 || irow > ROW_MASK ) {
+                throw new IllegalArgumentException( "RowRef " + ref
+                                                  + " out of range" );
+            }
+            return ( ( (long) itab ) << ROW_BITS ) | irow;
+        }
+
+        /**
+         * Unpacks a long into a RowRef.
+         *
+         * @param  pack  packed value
+         * @return  row ref
+         */
+        private static RowRef unpack( long pack ) {
+            return new RowRef( (int) ( pack >>> ROW_BITS ), pack & ROW_MASK );
+        }
+    }
+
+    /**
+     * Iterator which concatenates two other iterators.
+     * The <code>remove</code> method is supported if it is supported
+     * by the underlying iterators.
+     */
+    private static class ConcatIterator implements Iterator {
+        private final Iterator it1_;
+        private final Iterator it2_;
+        private Iterator lastIt_;
+
+        /**
+         * Constructor.
+         *
+         * @param  it1  first iterator
+         * @param  it2  second iterator
+         */
+        ConcatIterator( Iterator it1, Iterator it2 ) {
+            it1_ = it1;
+            it2_ = it2;
+        }
+
+        public boolean hasNext() {
+            return it1_.hasNext() || it2_.hasNext();
+        }
+
+        public Object next() {
+            lastIt_ = it1_.hasNext() ? it1_ : it2_;
+            return lastIt_.next();
+        }
+
+        public void remove() {
+            if ( lastIt_ == null ) {
+                throw new IllegalStateException();
+            }
+            lastIt_.remove();
+        }
+    }
+
     /**
      * Utility class used for the list storage implementation.
      * It has to be private for use here, so that we can distinguish
@@ -22,12 +22,24 @@ class Cell {
         label_ = label;
     }
 
+    /**
+     * Returns the array determining the content of this cell.
+     *
+     * @return  label array; not a copy, so should not be modified
+     */
+    public int[] getLabel() {
+        return label_;
+    }
+
     @Override
     public boolean equals( Object o ) {
         if ( o instanceof Cell ) {
             Cell other = (Cell) o;
             int[] otherLabel = other.label_;
             int ndim = label_.length;
+            if ( otherLabel.length != ndim ) {
+                return false;
+            }
             for ( int i = 0; i < ndim; i++ ) {
                 if ( otherLabel[ i ] != label_[ i ] ) {
                     return false;
@@ -23,7 +23,7 @@ import uk.ac.starlink.table.ValueInfo;
  *
  * @author   Mark Taylor (Starlink)
  */
-public class CombinedMatchEngine implements MatchEngine {
+public class CombinedMatchEngine implements AdaptiveMatchEngine {
 
     private final boolean inSphere;
     private final MatchEngine[] engines;
@@ -34,10 +34,9 @@ public class CombinedMatchEngine implements MatchEngine {
 
     // Some work arrays for holding subtuples - benchmarking shows that
     // there actually is a bottleneck if you create new empty arrays
-    // every time you need one.
-    private final Object[][] work0;
-    private final Object[][] work1;
-    private final Object[][] work2;
+    // every time you need one.  They are held per thread, since
+    // getBins and matchScore may be called concurrently.
+    private final ThreadLocal workLocal;
 
     private static final ValueInfo SCORE_INFO =
         new DefaultValueInfo( "Separation", Double.class,
@@ -62,16 +61,15 @@ public class CombinedMatchEngine implements MatchEngine {
         }
         tupleStarts = new int[ nPart ];
         int ts = 0;
-        work0 = new Object[ nPart ][];
-        work1 = new Object[ nPart ][];
-        work2 = new Object[ nPart ][];
         for ( int i = 0; i < nPart; i++ ) {
             tupleStarts[ i ] = ts;
             ts += tupleSizes[ i ];
-            work0[ i ] = new Object[ tupleSizes[ i ] ];
-            work1[ i ] = new Object[ tupleSizes[ i ] ];
-            work2[ i ] = new Object[ tupleSizes[ i ] ];
         }
+        workLocal = new ThreadLocal() {
+            protected Object initialValue() {
+                return new WorkArrays( tupleSizes );
+            }
+        };
 
         /* Set the name. */
         StringBuffer buf = new StringBuffer( "(" );
@@ -86,10 +84,11 @@ public class CombinedMatchEngine implements MatchEngine {
     }
 
     public double matchScore( Object[] tuple1, Object[] tuple2 ) {
+        WorkArrays work = (WorkArrays) workLocal.get();
         double sum2 = 0.0;
         for ( int i = 0; i < nPart; i++ ) {
-            Object[] subTuple1 = work1[ i ];
-            Object[] subTuple2 = work2[ i ];
+            Object[] subTuple1 = work.work1_[ i ];
+            Object[] subTuple2 = work.work2_[ i ];
             System.arraycopy( tuple1, tupleStarts[ i ], 
                               subTuple1, 0, tupleSizes[ i ] );
             System.arraycopy( tuple2, tupleStarts[ i ],
@@ -112,6 +111,73 @@ public class CombinedMatchEngine implements MatchEngine {
         }
     }
 
+    /**
+     * Returns a scorer which combines the vector scorers of the
+     * constituent engines, if they all provide one.
+     * Null is returned for subclasses.
+     *
+     * @return  combined scorer, or null if any constituent engine
+     *          cannot provide a vector scorer
+     */
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != CombinedMatchEngine.class ) {
+            return null;
+        }
+        final VectorScorer[] scorers = new VectorScorer[ nPart ];
+        final double[] scales = new double[ nPart ];
+        final int[] vecStarts = new int[ nPart ];
+        int vl = 0;
+        for ( int i = 0; i < nPart; i++ ) {
+            scorers[ i ] = engines[ i ].getVectorScorer();
+            if ( scorers[ i ] == null ) {
+                return null;
+            }
+            scales[ i ] = engines[ i ].getScoreScale();
+            vecStarts[ i ] = vl;
+            vl += scorers[ i ].getVectorLength();
+        }
+        final int vecLeng = vl;
+        final int[] tStarts = (int[]) tupleStarts.clone();
+        final int[] tSizes = (int[]) tupleSizes.clone();
+        final boolean inSph = inSphere;
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return vecLeng;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                for ( int i = 0; i < nPart; i++ ) {
+                    Object[] subTuple = new Object[ tSizes[ i ] ];
+                    System.arraycopy( tuple, tStarts[ i ],
+                                      subTuple, 0, tSizes[ i ] );
+                    scorers[ i ].toVector( subTuple, buf,
+                                           off + vecStarts[ i ] );
+                }
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                double sum2 = 0.0;
+                for ( int i = 0; i < nPart; i++ ) {
+                    double score =
+                        scorers[ i ].score( buf1, off1 + vecStarts[ i ],
+                                            buf2, off2 + vecStarts[ i ] );
+                    if ( score < 0 ) {
+                        return -1.;
+                    }
+                    double scale = scales[ i ];
+                    double d1 = scale > 0 ? ( score / scale ) : score;
+                    sum2 += d1 * d1;
+                }
+                double sum1 = Math.sqrt( sum2 );
+                if ( inSph ) {
+                    return sum1 <= 1 ? sum1 : -1.0;
+                }
+                else {
+                    return sum1;
+                }
+            }
+        };
+    }
+
     /**
      * Returns the square root of the number of constituent matchers
      * if they all have definite score scaling values.
@@ -134,9 +200,10 @@ public class CombinedMatchEngine implements MatchEngine {
 
         /* Work out the bin set for each region of the tuple handled by a
          * different match engine. */
+        WorkArrays work = (WorkArrays) workLocal.get();
         Object[][] binBag = new Object[ nPart ][];
         for ( int i = 0; i < nPart; i++ ) {
-            Object[] subTuple = work0[ i ];
+            Object[] subTuple = work.work0_[ i ];
             System.arraycopy( tuple, tupleStarts[ i ], 
                               subTuple, 0, tupleSizes[ i ] );
             binBag[ i ] = engines[ i ].getBins( subTuple );
@@ -209,6 +276,43 @@ public class CombinedMatchEngine implements MatchEngine {
         return (DescribedValue[]) params.toArray( new DescribedValue[ 0 ] );
     }
 
+    /**
+     * Returns the largest sample size requested by any of the
+     * constituent engines.
+     */
+    public int getSampleSize() {
+        int size = 0;
+        for ( int i = 0; i < nPart; i++ ) {
+            if ( engines[ i ] instanceof AdaptiveMatchEngine ) {
+                size = Math.max( size, ((AdaptiveMatchEngine) engines[ i ])
+                                      .getSampleSize() );
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Passes the relevant parts of the sample tuples to any adaptive
+     * constituent engines.
+     */
+    public void setSample( Object[][] tuples, double[] weights ) {
+        for ( int i = 0; i < nPart; i++ ) {
+            if ( engines[ i ] instanceof AdaptiveMatchEngine ) {
+                AdaptiveMatchEngine engine = (AdaptiveMatchEngine) engines[ i ];
+                if ( engine.getSampleSize() > 0 ) {
+                    Object[][] subTuples = new Object[ tuples.length ][];
+                    for ( int it = 0; it < tuples.length; it++ ) {
+                        subTuples[ it ] = new Object[ tupleSizes[ i ] ];
+                        System.arraycopy( tuples[ it ], tupleStarts[ i ],
+                                          subTuples[ it ], 0,
+                                          tupleSizes[ i ] );
+                    }
+                    engine.setSample( subTuples, weights );
+                }
+            }
+        }
+    }
+
     public boolean canBoundMatch() {
         for ( int i = 0; i < nPart; i++ ) {
             if ( engines[ i ].canBoundMatch() ) {
@@ -255,4 +359,30 @@ public class CombinedMatchEngine implements MatchEngine {
     public String toString() {
         return name;
     }
+
+    /**
+     * Holds per-thread work arrays for subtuples.
+     */
+    private static class WorkArrays {
+        final Object[][] work0_;
+        final Object[][] work1_;
+        final Object[][] work2_;
+
+        /**
+         * Constructor.
+         *
+         * @param  tupleSizes  sizes of the subtuples for each part
+         */
+        WorkArrays( int[] tupleSizes ) {
+            int n = tupleSizes.length;
+            work0_ = new Object[ n ][];
+            work1_ = new Object[ n ][];
+            work2_ = new Object[ n ][];
+            for ( int i = 0; i < n; i++ ) {
+                work0_[ i ] = new Object[ tupleSizes[ i ] ];
+                work1_[ i ] = new Object[ tupleSizes[ i ] ];
+                work2_[ i ] = new Object[ tupleSizes[ i ] ];
+            }
+        }
+    }
 }
@@ -0,0 +1,831 @@
+package uk.ac.starlink.table.join;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * LinkSet implementation which stores pair links in compact form.
+ * Links with exactly two entries (plain {@link RowLink}s or
+ * {@link RowLink2}s) are held as parallel primitive arrays of
+ * table index, row index and score, rather than as objects;
+ * this uses several times less memory than the object-based
+ * implementations.  RowLink objects are only created as required
+ * during iteration.  Any other links are stored in a
+ * {@link TreeSetLinkSet}.
+ *
+ * <p>Pairs added are not checked for uniqueness until the set
+ * is next queried; at that point duplicates are discarded, the first
+ * added being retained.  Thereafter a hash index is maintained
+ * if lookups are required.  Removed entries are just flagged
+ * until the next sort.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class CompactLinkSet implements LinkSet {
+
+    private short[] tabs1_;
+    private long[] rows1_;
+    private short[] tabs2_;
+    private long[] rows2_;
+    private double[] scores_;
+    private BitSet plain_;
+    private int n_;
+    private int nRemoved_;
+    private boolean dirty_;
+    private boolean sorted_;
+    private int[] index_;
+    private int nIndexUsed_;
+    private final LinkSet others_;
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int MAX_INDEX = 1 << 30;
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    private static final short REMOVED = -1;
+
+    /**
+     * Constructor.
+     */
+    public CompactLinkSet() {
+        tabs1_ = new short[ 0 ];
+        rows1_ = new long[ 0 ];
+        tabs2_ = new short[ 0 ];
+        rows2_ = new long[ 0 ];
+        scores_ = new double[ 0 ];
+        plain_ = new BitSet();
+        others_ = new TreeSetLinkSet();
+        sorted_ = true;
+    }
+
+    public void addLink( RowLink link ) {
+        if ( isCompactable( link ) ) {
+            RowRef ref1 = link.getRef( 0 );
+            RowRef ref2 = link.getRef( 1 );
+            int tab1 = ref1.getTableIndex();
+            long row1 = ref1.getRowIndex();
+            int tab2 = ref2.getTableIndex();
+            long row2 = ref2.getRowIndex();
+            if ( index_ != null ) {
+                if ( findSlot( tab1, row1, tab2, row2 ) >= 0 ) {
+                    return;
+                }
+            }
+            else {
+                dirty_ = true;
+            }
+            ensureCapacity( n_ + 1 );
+            int ipos = n_++;
+            tabs1_[ ipos ] = (short) tab1;
+            rows1_[ ipos ] = row1;
+            tabs2_[ ipos ] = (short) tab2;
+            rows2_[ ipos ] = row2;
+            if ( link instanceof RowLink2 ) {
+                scores_[ ipos ] = ((RowLink2) link).getScore();
+            }
+            else {
+                scores_[ ipos ] = Double.NaN;
+                plain_.set( ipos );
+            }
+            sorted_ = false;
+            if ( index_ != null ) {
+                addToIndex( ipos );
+            }
+        }
+        else {
+            others_.addLink( link );
+        }
+    }
+
+    public boolean containsLink( RowLink link ) {
+        if ( isCompactable( link ) ) {
+            prepareIndex();
+            return findSlot( link ) >= 0;
+        }
+        else {
+            return others_.containsLink( link );
+        }
+    }
+
+    public boolean removeLink( RowLink link ) {
+        if ( isCompactable( link ) ) {
+            prepareIndex();
+            int islot = findSlot( link );
+            if ( islot >= 0 ) {
+                removeEntry( index_[ islot ] );
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+        else {
+            return others_.removeLink( link );
+        }
+    }
+
+    public Iterator iterator() {
+        consolidate();
+        Iterator pairIt = new PairIterator();
+        return others_.size() == 0
+             ? pairIt
+             : new MergeIterator( pairIt, others_.iterator() );
+    }
+
+    public int size() {
+        consolidate();
+        return n_ - nRemoved_ + others_.size();
+    }
+
+    public boolean sort() {
+        if ( ! sorted_ || nRemoved_ > 0 ) {
+            try {
+                sortPairs();
+            }
+            catch ( OutOfMemoryError e ) {
+                return false;
+            }
+        }
+        return others_.sort();
+    }
+
+    /**
+     * Indicates whether all the links in this set are held in
+     * compact form.
+     *
+     * @return   true iff there are no non-pair links
+     */
+    public boolean isPairsOnly() {
+        return others_.size() == 0;
+    }
+
+    /**
+     * Discards links from this set so that no RowRef appears in more
+     * than one pair, favouring pairs with lower scores.
+     * This has the same effect as
+     * {@link RowMatcher#eliminateMultipleRowEntries}, but operates
+     * in place.  The links in this set must all be
+     * <code>RowLink2</code>s with non-negative scores
+     * linking a row from table 0 and one from table 1.
+     *
+     * @param  indicator  progress indicator; only the
+     *                    <code>setLevel</code> method is called
+     */
+    public void eliminateMultipleRowEntries( ProgressIndicator indicator )
+            throws InterruptedException {
+        eliminateMultipleRowEntries( true, true, indicator );
+    }
+
+    /**
+     * Discards links from this set so that rows from one or both
+     * tables appear in at most one pair, favouring pairs with lower scores.
+     * The links in this set must all be
+     * <code>RowLink2</code>s with non-negative scores
+     * linking a row from table 0 and one from table 1.
+     *
+     * @param  unique0  whether rows from table 0 must be unique
+     * @param  unique1  whether rows from table 1 must be unique
+     * @param  indicator  progress indicator; only the
+     *                    <code>setLevel</code> method is called
+     */
+    public void eliminateMultipleRowEntries( boolean unique0, boolean unique1,
+                                             ProgressIndicator indicator )
+            throws InterruptedException {
+        if ( ! isPairsOnly() ) {
+            throw new IllegalStateException( "Non-pair links present" );
+        }
+        consolidate();
+        final int[] order = getLivePositions();
+        mergeSort( order, new IntComparator() {
+            public int compare( int ip1, int ip2 ) {
+                double score1 = scores_[ ip1 ];
+                double score2 = scores_[ ip2 ];
+                if ( score1 < score2 ) {
+                    return -1;
+                }
+                else if ( score1 > score2 ) {
+                    return +1;
+                }
+                else {
+                    return comparePairs( ip1, ip2 );
+                }
+            }
+        } );
+        BitSet[] seenBits = new BitSet[] { new BitSet(), new BitSet() };
+        Set seenRefs = new HashSet();
+        int nPair = order.length;
+        for ( int i = 0; i < nPair; i++ ) {
+            int ipos = order[ i ];
+            double score = scores_[ ipos ];
+            if ( plain_.get( ipos ) || Double.isNaN( score ) || score < 0 ||
+                 tabs1_[ ipos ] != 0 || tabs2_[ ipos ] != 1 ) {
+                throw new IllegalArgumentException();
+            }
+            boolean seen1 = unique0
+                         && ! markSeen( 0, rows1_[ ipos ], seenBits, seenRefs );
+            boolean seen2 = unique1
+                         && ! markSeen( 1, rows2_[ ipos ], seenBits, seenRefs );
+            if ( seen1 || seen2 ) {
+                removeEntry( ipos );
+            }
+            indicator.setLevel( ( i + 1 ) / (double) nPair );
+        }
+    }
+
+    /**
+     * Records that a given row has been encountered.
+     *
+     * @param  itab  table index
+     * @param  irow  row index
+     * @param  seenBits  per-table bit sets for int-sized row indices
+     * @param  seenRefs  set of RowRefs for other row indices
+     * @return  true iff the row had not been seen before
+     */
+    private static boolean markSeen( int itab, long irow, BitSet[] seenBits,
+                                     Set seenRefs ) {
+        if ( irow < Integer.MAX_VALUE ) {
+            BitSet bits = seenBits[ itab ];
+            int ibit = (int) irow;
+            boolean wasSeen = bits.get( ibit );
+            bits.set( ibit );
+            return ! wasSeen;
+        }
+        else {
+            return seenRefs.add( new RowRef( itab, irow ) );
+        }
+    }
+
+    /**
+     * Indicates whether a given link can be stored in compact form.
+     *
+     * @param  link  link
+     * @return   true iff link is a pair that can be stored in the arrays
+     */
+    private static boolean isCompactable( RowLink link ) {
+        Class clazz = link.getClass();
+        return ( clazz == RowLink2.class || clazz == RowLink.class )
+            && link.size() == 2
+            && isShort( link.getRef( 0 ).getTableIndex() )
+            && isShort( link.getRef( 1 ).getTableIndex() );
+    }
+
+    /**
+     * Indicates whether a table index can be stored in a short.
+     *
+     * @param  itab  table index
+     * @return  true iff itab is non-negative and fits in a short
+     */
+    private static boolean isShort( int itab ) {
+        return itab >= 0 && itab <= Short.MAX_VALUE;
+    }
+
+    /**
+     * Ensures that the pair arrays are large enough to hold a given
+     * number of entries.
+     *
+     * @param  size  required capacity
+     */
+    private void ensureCapacity( int size ) {
+        int cap = tabs1_.length;
+        if ( size > cap ) {
+            int newCap = (int) Math.min( Integer.MAX_VALUE - 8,
+                                         Math.max( INITIAL_SIZE,
+                                                   cap * 3L / 2 + 1 ) );
+            if ( newCap < size ) {
+                throw new OutOfMemoryError( "Too many links" );
+            }
+            short[] tabs1 = new short[ newCap ];
+            long[] rows1 = new long[ newCap ];
+            short[] tabs2 = new short[ newCap ];
+            long[] rows2 = new long[ newCap ];
+            double[] scores = new double[ newCap ];
+            System.arraycopy( tabs1_, 0, tabs1, 0, n_ );
+            System.arraycopy( rows1_, 0, rows1, 0, n_ );
+            System.arraycopy( tabs2_, 0, tabs2, 0, n_ );
+            System.arraycopy( rows2_, 0, rows2, 0, n_ );
+            System.arraycopy( scores_, 0, scores, 0, n_ );
+            tabs1_ = tabs1;
+            rows1_ = rows1;
+            tabs2_ = tabs2;
+            rows2_ = rows2;
+            scores_ = scores;
+        }
+    }
+
+    /**
+     * Flags an entry as removed.
+     *
+     * @param  ipos  array position of entry
+     */
+    private void removeEntry( int ipos ) {
+        assert tabs1_[ ipos ] != REMOVED;
+        if ( index_ != null ) {
+            int islot = findSlot( tabs1_[ ipos ], rows1_[ ipos ],
+                                  tabs2_[ ipos ], rows2_[ ipos ] );
+            assert index_[ islot ] == ipos;
+            index_[ islot ] = DELETED;
+        }
+        tabs1_[ ipos ] = REMOVED;
+        nRemoved_++;
+    }
+
+    /**
+     * Ensures that no duplicate entries are present.
+     */
+    private void consolidate() {
+        if ( dirty_ ) {
+            sortPairs();
+        }
+        assert ! dirty_;
+    }
+
+    /**
+     * Ensures that this set is consolidated and has a hash index.
+     */
+    private void prepareIndex() {
+        consolidate();
+        if ( index_ == null ) {
+            int nlive = n_ - nRemoved_;
+            index_ = new int[ indexCapacity( nlive ) ];
+            Arrays.fill( index_, EMPTY );
+            nIndexUsed_ = 0;
+            for ( int ipos = 0; ipos < n_; ipos++ ) {
+                if ( tabs1_[ ipos ] != REMOVED ) {
+                    addToIndex( ipos );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a suitable hash index size for a given number of entries.
+     *
+     * @param  nentry  number of entries
+     * @return   power of two index size
+     */
+    private static int indexCapacity( int nentry ) {
+        int cap = 16;
+        while ( cap < MAX_INDEX && cap < 2L * ( nentry + 1 ) ) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    /**
+     * Adds an existing entry to the hash index, which must not already
+     * contain it.
+     *
+     * @param  ipos  array position of entry
+     */
+    private void addToIndex( int ipos ) {
+        if ( 2L * ( nIndexUsed_ + 1 ) > index_.length &&
+             index_.length < MAX_INDEX ) {
+            assert ipos < n_;
+            index_ = null;
+            prepareIndex();
+            return;
+        }
+        int mask = index_.length - 1;
+        int islot = hash( tabs1_[ ipos ], rows1_[ ipos ],
+                          tabs2_[ ipos ], rows2_[ ipos ] ) & mask;
+        while ( index_[ islot ] != EMPTY ) {
+            islot = ( islot + 1 ) & mask;
+        }
+        index_[ islot ] = ipos;
+        nIndexUsed_++;
+    }
+
+    /**
+     * Locates the hash index slot for a given link.
+     *
+     * @param  link  compactable pair link
+     * @return   index slot, or -1 if not present
+     */
+    private int findSlot( RowLink link ) {
+        RowRef ref1 = link.getRef( 0 );
+        RowRef ref2 = link.getRef( 1 );
+        return findSlot( ref1.getTableIndex(), ref1.getRowIndex(),
+                         ref2.getTableIndex(), ref2.getRowIndex() );
+    }
+
+    /**
+     * Locates the hash index slot for a given pair.
+     *
+     * @param  tab1  first table index
+     * @param  row1  first row index
+     * @param  tab2  second table index
+     * @param  row2  second row index
+     * @return   index slot, or -1 if not present
+     */
+    private int findSlot( int tab1, long row1, int tab2, long row2 ) {
+        int mask = index_.length - 1;
+        int islot = hash( tab1, row1, tab2, row2 ) & mask;
+        for ( int iv; ( iv = index_[ islot ] ) != EMPTY;
+              islot = ( islot + 1 ) & mask ) {
+            if ( iv >= 0 &&
+                 rows1_[ iv ] == row1 && rows2_[ iv ] == row2 &&
+                 tabs1_[ iv ] == tab1 && tabs2_[ iv ] == tab2 ) {
+                return islot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hash function for pairs.
+     *
+     * @param  tab1  first table index
+     * @param  row1  first row index
+     * @param  tab2  second table index
+     * @param  row2  second row index
+     * @return   hash code
+     */
+    private static int hash( int tab1, long row1, int tab2, long row2 ) {
+        long h = row1 * 0x9e3779b97f4a7c15L + row2;
+        h = h * 0x9e3779b97f4a7c15L + ( ( tab1 << 16 ) | tab2 );
+        h *= 0x9e3779b97f4a7c15L;
+        return (int) ( h ^ ( h >>> 32 ) );
+    }
+
+    /**
+     * Returns the array positions of all the non-removed entries.
+     *
+     * @return  array of positions in ascending order
+     */
+    private int[] getLivePositions() {
+        int[] positions = new int[ n_ - nRemoved_ ];
+        int ip = 0;
+        for ( int ipos = 0; ipos < n_; ipos++ ) {
+            if ( tabs1_[ ipos ] != REMOVED ) {
+                positions[ ip++ ] = ipos;
+            }
+        }
+        assert ip == positions.length;
+        return positions;
+    }
+
+    /**
+     * Sorts the pair entries into natural order, discarding removed and
+     * duplicate entries.  Where there are duplicates, the one added
+     * first is retained.
+     */
+    private void sortPairs() {
+        int[] perm = getLivePositions();
+        mergeSort( perm, new IntComparator() {
+            public int compare( int ip1, int ip2 ) {
+                return comparePairs( ip1, ip2 );
+            }
+        } );
+
+        /* Identify duplicates.  Equal entries compare as equal, but
+         * so may some unequal ones, so check within each run. */
+        int np = perm.length;
+        int nkeep = 0;
+        for ( int irun = 0; irun < np; ) {
+            int jrun = irun + 1;
+            while ( jrun < np && comparePairs( perm[ irun ],
+                                               perm[ jrun ] ) == 0 ) {
+                jrun++;
+            }
+            int keep0 = nkeep;
+            for ( int i = irun; i < jrun; i++ ) {
+                int ipos = perm[ i ];
+                boolean isDup = false;
+                for ( int k = keep0; k < nkeep && ! isDup; k++ ) {
+                    isDup = pairEquals( ipos, perm[ k ] );
+                }
+                if ( ! isDup ) {
+                    perm[ nkeep++ ] = ipos;
+                }
+            }
+            irun = jrun;
+        }
+
+        /* Rearrange the arrays accordingly. */
+        short[] tabs1 = new short[ nkeep ];
+        for ( int i = 0; i < nkeep; i++ ) {
+            tabs1[ i ] = tabs1_[ perm[ i ] ];
+        }
+        tabs1_ = tabs1;
+        short[] tabs2 = new short[ nkeep ];
+        for ( int i = 0; i < nkeep; i++ ) {
+            tabs2[ i ] = tabs2_[ perm[ i ] ];
+        }
+        tabs2_ = tabs2;
+        long[] rows1 = new long[ nkeep ];
+        for ( int i = 0; i < nkeep; i++ ) {
+            rows1[ i ] = rows1_[ perm[ i ] ];
+        }
+        rows1_ = rows1;
+        long[] rows2 = new long[ nkeep ];
+        for ( int i = 0; i < nkeep; i++ ) {
+            rows2[ i ] = rows2_[ perm[ i ] ];
+        }
+        rows2_ = rows2;
+        double[] scores = new double[ nkeep ];
+        for ( int i = 0; i < nkeep; i++ ) {
+            scores[ i ] = scores_[ perm[ i ] ];
+        }
+        scores_ = scores;
+        BitSet plain = new BitSet();
+        for ( int i = 0; i < nkeep; i++ ) {
+            if ( plain_.get( perm[ i ] ) ) {
+                plain.set( i );
+            }
+        }
+        plain_ = plain;
+        n_ = nkeep;
+        nRemoved_ = 0;
+        index_ = null;
+        dirty_ = false;
+        sorted_ = true;
+    }
+
+    /**
+     * Indicates whether two entries represent the same pair.
+     *
+     * @param  ip1  array position of first entry
+     * @param  ip2  array position of second entry
+     * @return   true iff the entries are equal
+     */
+    private boolean pairEquals( int ip1, int ip2 ) {
+        return rows1_[ ip1 ] == rows1_[ ip2 ]
+            && rows2_[ ip1 ] == rows2_[ ip2 ]
+            && tabs1_[ ip1 ] == tabs1_[ ip2 ]
+            && tabs2_[ ip1 ] == tabs2_[ ip2 ];
+    }
+
+    /**
+     * Compares two entries.  The ordering is the same as that of
+     * {@link RowLink#compareTo} applied to the corresponding links.
+     *
+     * @param  ip1  array position of first entry
+     * @param  ip2  array position of second entry
+     * @return   comparison result
+     */
+    private int comparePairs( int ip1, int ip2 ) {
+        int ntab = Math.max( tabs2_[ ip1 ], tabs2_[ ip2 ] ) + 1;
+        for ( int it = 0; it < ntab; it++ ) {
+            long r1 = getMinRow( ip1, it );
+            long r2 = getMinRow( ip2, it );
+            if ( r1 < r2 ) {
+                return -1;
+            }
+            else if ( r1 > r2 ) {
+                return +1;
+            }
+        }
+        int h1 = linkHash( ip1 );
+        int h2 = linkHash( ip2 );
+        return h1 < h2 ? -1 : ( h1 > h2 ? +1 : 0 );
+    }
+
+    /**
+     * Returns the lowest row index in a given entry for a given table,
+     * as used by the RowLink comparison.
+     *
+     * @param  ipos  array position of entry
+     * @param  itab  table index
+     * @return   lowest row index from table itab, or Long.MAX_VALUE
+     */
+    private long getMinRow( int ipos, int itab ) {
+        if ( tabs1_[ ipos ] == itab ) {
+            return rows1_[ ipos ];
+        }
+        else if ( tabs2_[ ipos ] == itab ) {
+            return rows2_[ ipos ];
+        }
+        else {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns the value of {@link RowLink#hashCode} for the link
+     * corresponding to an entry.
+     *
+     * @param  ipos  array position of entry
+     * @return   link hash code
+     */
+    private int linkHash( int ipos ) {
+        int result = 37;
+        result = 23 * result + refHash( tabs1_[ ipos ], rows1_[ ipos ] );
+        result = 23 * result + refHash( tabs2_[ ipos ], rows2_[ ipos ] );
+        return result;
+    }
+
+    /**
+     * Returns the value of {@link RowRef#hashCode} for a given row.
+     *
+     * @param  itab  table index
+     * @param  irow  row index
+     * @return   ref hash code
+     */
+    private static int refHash( int itab, long irow ) {
+        int result = 37;
+        result = 23 * result + itab;
+        result = 23 * result + (int) irow;
+        return result;
+    }
+
+    /**
+     * Returns a RowLink object corresponding to an entry.
+     *
+     * @param  ipos  array position of entry
+     * @return  new link
+     */
+    private RowLink createLink( int ipos ) {
+        RowRef ref1 = new RowRef( tabs1_[ ipos ], rows1_[ ipos ] );
+        RowRef ref2 = new RowRef( tabs2_[ ipos ], rows2_[ ipos ] );
+        if ( plain_.get( ipos ) ) {
+            return new RowLink( new RowRef[] { ref1, ref2 } );
+        }
+        else {
+            RowLink2 link = new RowLink2( ref1, ref2 );
+            link.setScore( scores_[ ipos ] );
+            return link;
+        }
+    }
+
+    /**
+     * Sorts an array of ints using a custom comparator.
+     * The sort is stable.
+     *
+     * @param  a  array to sort in place
+     * @param  comparator  comparator
+     */
+    private static void mergeSort( int[] a, IntComparator comparator ) {
+        mergeSort( (int[]) a.clone(), a, 0, a.length, comparator );
+    }
+
+    /**
+     * Recursive merge sort step.  On entry src and dest contain the
+     * same values in the given range; on exit dest is sorted.
+     *
+     * @param  src  source array
+     * @param  dest  destination array
+     * @param  lo   inclusive lower bound of range
+     * @param  hi   exclusive upper bound of range
+     * @param  comparator  comparator
+     */
+    private static void mergeSort( int[] src, int[] dest, int lo, int hi,
+                                   IntComparator comparator ) {
+        int len = hi - lo;
+        if ( len < 8 ) {
+            for ( int i = lo + 1; i < hi; i++ ) {
+                for ( int j = i; j > lo &&
+                      comparator.compare( dest[ j - 1 ], dest[ j ] ) > 0;
+                      j-- ) {
+                    int t = dest[ j ];
+                    dest[ j ] = dest[ j - 1 ];
+                    dest[ j - 1 ] = t;
+                }
+            }
+            return;
+        }
+        int mid = ( lo + hi ) >>> 1;
+        mergeSort( dest, src, lo, mid, comparator );
+        mergeSort( dest, src, mid, hi, comparator );
+        if ( comparator.compare( src[ mid - 1 ], src[ mid ] ) <= 0 ) {
+            System.arraycopy( src, lo, dest, lo, len );
+            return;
+        }
+        for ( int i = lo, p = lo, q = mid; i < hi; i++ ) {
+            if ( q >= hi ||
+                 ( p < mid &&
+                   comparator.compare( src[ p ], src[ q ] ) <= 0 ) ) {
+                dest[ i ] = src[ p++ ];
+            }
+            else {
+                dest[ i ] = src[ q++ ];
+            }
+        }
+    }
+
+    /**
+     * Comparator for integer values.
+     */
+    private interface IntComparator {
+
+        /**
+         * Compares two values.
+         *
+         * @param  i1  first value
+         * @param  i2  second value
+         * @return   negative, zero or positive as for a Comparator
+         */
+        int compare( int i1, int i2 );
+    }
+
+    /**
+     * Iterator over the compact pair entries.
+     */
+    private class PairIterator implements Iterator {
+        private int ipos_;
+        private int lastPos_ = -1;
+
+        PairIterator() {
+            ipos_ = nextLive( 0 );
+        }
+
+        public boolean hasNext() {
+            return ipos_ < n_;
+        }
+
+        public Object next() {
+            if ( ipos_ >= n_ ) {
+                throw new NoSuchElementException();
+            }
+            lastPos_ = ipos_;
+            ipos_ = nextLive( ipos_ + 1 );
+            return createLink( lastPos_ );
+        }
+
+        public void remove() {
+            if ( lastPos_ < 0 || tabs1_[ lastPos_ ] == REMOVED ) {
+                throw new IllegalStateException();
+            }
+            removeEntry( lastPos_ );
+        }
+
+        /**
+         * Returns the first non-removed position at or after a given one.
+         *
+         * @param  ipos  start position
+         * @return   next live position, or n_
+         */
+        private int nextLive( int ipos ) {
+            while ( ipos < n_ && tabs1_[ ipos ] == REMOVED ) {
+                ipos++;
+            }
+            return ipos;
+        }
+    }
+
+    /**
+     * Iterator which merges the output of two iterators over RowLinks,
+     * using natural ordering.  If the inputs are sorted,
+     * so is the output.  The <code>remove</code> operation is delegated
+     * to the underlying iterators.
+     */
+    private static class MergeIterator implements Iterator {
+        private final Iterator it1_;
+        private final Iterator it2_;
+        private RowLink head1_;
+        private RowLink head2_;
+        private Iterator lastIt_;
+
+        /**
+         * Constructor.
+         *
+         * @param  it1  first iterator
+         * @param  it2  second iterator
+         */
+        MergeIterator( Iterator it1, Iterator it2 ) {
+            it1_ = it1;
+            it2_ = it2;
+        }
+
+        public boolean hasNext() {
+            return head1_ != null || head2_ != null
+                || it1_.hasNext() || it2_.hasNext();
+        }
+
+        public Object next() {
+            if ( head1_ == null && it1_.hasNext() ) {
+                head1_ = (RowLink) it1_.next();
+            }
+            if ( head2_ == null && it2_.hasNext() ) {
+                head2_ = (RowLink) it2_.next();
+            }
+            final RowLink link;
+            if ( head1_ != null &&
+                 ( head2_ == null || head1_.compareTo( head2_ ) <= 0 ) ) {
+                link = head1_;
+                head1_ = null;
+                lastIt_ = it1_;
+            }
+            else if ( head2_ != null ) {
+                link = head2_;
+                head2_ = null;
+                lastIt_ = it2_;
+            }
+            else {
+                throw new NoSuchElementException();
+            }
+            return link;
+        }
+
+        public void remove() {
+            if ( lastIt_ == null ) {
+                throw new IllegalStateException();
+            }
+            lastIt_.remove();
+            lastIt_ = null;
+        }
+    }
+}
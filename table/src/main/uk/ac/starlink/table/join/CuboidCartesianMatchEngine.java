@@ -113,6 +113,35 @@ public class CuboidCartesianMatchEngine extends AbstractCartesianMatchEngine {
         return true;
     }
 
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != CuboidCartesianMatchEngine.class ) {
+            return null;
+        }
+        final int ndim = ndim_;
+        final double[] err2s = (double[]) err2s_.clone();
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return ndim;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                toDoubles( tuple, ndim, buf, off );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                double dist2 = 0;
+                for ( int id = 0; id < ndim; id++ ) {
+                    double d = buf2[ off2 + id ] - buf1[ off1 + id ];
+                    double d2 = d * d;
+                    if ( d2 > err2s[ id ] ) {
+                        return -1;
+                    }
+                    dist2 += d2;
+                }
+                return Math.sqrt( dist2 );
+            }
+        };
+    }
+
     public double getScoreScale() {
         return scoreScale_;
     }
@@ -116,6 +116,15 @@ public class EllipseCartesianMatchEngine extends AbstractCartesianMatchEngine {
         return SCORE_INFO;
     }
 
+    /**
+     * Returns null; vector scoring is not implemented for ellipses.
+     *
+     * @return  null
+     */
+    public VectorScorer getVectorScorer() {
+        return null;
+    }
+
     public double getScoreScale() {
         return 1.0;
     }
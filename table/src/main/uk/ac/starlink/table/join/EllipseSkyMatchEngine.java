@@ -164,6 +164,15 @@ public class EllipseSkyMatchEngine extends AbstractSkyMatchEngine {
         return match == null ? -1 : match.score_;
     }
 
+    /**
+     * Returns null; vector scoring is not implemented for ellipses.
+     *
+     * @return  null
+     */
+    public VectorScorer getVectorScorer() {
+        return null;
+    }
+
     public double getScoreScale() {
         return 2.0;
     }
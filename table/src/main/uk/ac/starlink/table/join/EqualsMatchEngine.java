@@ -31,6 +31,15 @@ public class EqualsMatchEngine implements MatchEngine {
         return isEqual( tuple1[ 0 ], tuple2[ 0 ] ) ? 0.0 : -1.0;
     }
 
+    /**
+     * Returns null; tuple elements are not in general numeric.
+     *
+     * @return  null
+     */
+    public VectorScorer getVectorScorer() {
+        return null;
+    }
+
     public double getScoreScale() {
         return 1.0;
     }
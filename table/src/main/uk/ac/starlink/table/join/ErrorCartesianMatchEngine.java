@@ -106,6 +106,35 @@ public class ErrorCartesianMatchEngine extends AbstractCartesianMatchEngine {
         return score;
     }
 
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != ErrorCartesianMatchEngine.class ) {
+            return null;
+        }
+        final int ndim = ndim_;
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return ndim + 1;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                toDoubles( tuple, ndim + 1, buf, off );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                double err = buf1[ off1 + ndim ] + buf2[ off2 + ndim ];
+                double err2 = err * err;
+                double dist2 = 0;
+                for ( int id = 0; id < ndim; id++ ) {
+                    double d = buf2[ off2 + id ] - buf1[ off1 + id ];
+                    dist2 += d * d;
+                    if ( ! ( dist2 <= err2 ) ) {
+                        return -1;
+                    }
+                }
+                return err2 > 0 ? Math.sqrt( dist2 / err2 ) : 0.0;
+            }
+        };
+    }
+
     /**
      * Returns unity.
      */
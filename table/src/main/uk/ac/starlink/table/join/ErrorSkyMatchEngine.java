@@ -96,9 +96,26 @@ public class ErrorSkyMatchEngine extends AbstractSkyMatchEngine {
     }
 
     public double matchScore( Object[] tuple1, Object[] tuple2 ) {
-        double delta1 = getDelta( tuple1 );
-        double delta2 = getDelta( tuple2 );
-        double maxerr = getError( tuple1 ) + getError( tuple2 );
+        return scaledScore( getAlpha( tuple1 ), getDelta( tuple1 ),
+                            getAlpha( tuple2 ), getDelta( tuple2 ),
+                            getError( tuple1 ) + getError( tuple2 ) );
+    }
+
+    /**
+     * Returns the match score for two positions given a maximum
+     * permitted separation.
+     *
+     * @param   alpha1  right ascension of point 1 in radians
+     * @param   delta1  declination of point 1 in radians
+     * @param   alpha2  right ascension of point 2 in radians
+     * @param   delta2  declination of point 2 in radians
+     * @param   maxerr  sum of the error radii of points 1 and 2
+     * @return  separation as a fraction of <code>maxerr</code>,
+     *          or -1 if the points do not match
+     */
+    private static double scaledScore( double alpha1, double delta1,
+                                       double alpha2, double delta2,
+                                       double maxerr ) {
 
         /* Cheap test which will throw out most comparisons straight away:
          * see if the separation in declination is greater than the maximum
@@ -108,8 +125,6 @@ public class ErrorSkyMatchEngine extends AbstractSkyMatchEngine {
         }
 
         /* Otherwise declinations at least are close; do a proper test. */
-        double alpha1 = getAlpha( tuple1 );
-        double alpha2 = getAlpha( tuple2 );
         double sep = calculateSeparation( alpha1, delta1, alpha2, delta2 );
         if ( sep <= maxerr ) {
             return maxerr > 0 ? sep / maxerr : 0.0;
@@ -119,6 +134,41 @@ public class ErrorSkyMatchEngine extends AbstractSkyMatchEngine {
         }
     }
 
+    /**
+     * Returns a scorer whose vectors hold the unit vector, used for a
+     * cheap chord length prefilter, followed by the original RA, Dec
+     * and error, used to calculate the score exactly as
+     * {@link #matchScore} does.
+     * Null is returned for subclasses, which may score differently.
+     */
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != ErrorSkyMatchEngine.class ) {
+            return null;
+        }
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return 6;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                double alpha = getAlpha( tuple );
+                double delta = getDelta( tuple );
+                toUnitVector( alpha, delta, buf, off );
+                buf[ off + 3 ] = alpha;
+                buf[ off + 4 ] = delta;
+                buf[ off + 5 ] = getError( tuple );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                double maxerr = buf1[ off1 + 5 ] + buf2[ off2 + 5 ];
+                return isChordTooLong( buf1, off1, buf2, off2, maxerr )
+                     ? -1.0
+                     : scaledScore( buf1[ off1 + 3 ], buf1[ off1 + 4 ],
+                                    buf2[ off2 + 3 ], buf2[ off2 + 4 ],
+                                    maxerr );
+            }
+        };
+    }
+
     /**
      * Returns unity.
      */
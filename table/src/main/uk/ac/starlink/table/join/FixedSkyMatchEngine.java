@@ -86,6 +86,39 @@ public class FixedSkyMatchEngine extends AbstractSkyMatchEngine {
                            getSeparation() );
     }
 
+    /**
+     * Returns a scorer whose vectors hold the unit vector, used for a
+     * cheap chord length prefilter, followed by the original RA and Dec,
+     * used to calculate the score exactly as {@link #matchScore} does.
+     * Null is returned for subclasses, which may score differently.
+     */
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != FixedSkyMatchEngine.class ) {
+            return null;
+        }
+        final double maxerr = getSeparation();
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return 5;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                double alpha = getAlpha( tuple );
+                double delta = getDelta( tuple );
+                toUnitVector( alpha, delta, buf, off );
+                buf[ off + 3 ] = alpha;
+                buf[ off + 4 ] = delta;
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                return isChordTooLong( buf1, off1, buf2, off2, maxerr )
+                     ? -1.0
+                     : matchScore( buf1[ off1 + 3 ], buf1[ off1 + 4 ],
+                                   buf2[ off2 + 3 ], buf2[ off2 + 4 ],
+                                   maxerr );
+            }
+        };
+    }
+
     public double getScoreScale() {
         return maxScore( getSeparation() );
     }
@@ -84,6 +84,26 @@ public class IsotropicCartesianMatchEngine
                            getError() );
     }
 
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != IsotropicCartesianMatchEngine.class ) {
+            return null;
+        }
+        final int ndim = ndim_;
+        final double err = getError();
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return ndim;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                toDoubles( tuple, ndim, buf, off );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                return matchScore( ndim, buf1, off1, buf2, off2, err );
+            }
+        };
+    }
+
     public double getScoreScale() {
         return getError();
     }
@@ -0,0 +1,625 @@
+package uk.ac.starlink.table.join;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+/**
+ * Map from <code>long</code> keys to lists of <code>long</code> values,
+ * stored using primitive arrays.
+ *
+ * <p>The keys are held in an open-addressed hash table, and the values
+ * in a pool of nodes forming a singly-linked list for each key.
+ * No objects are created per key or per value, so the storage cost is
+ * around 40 bytes per key and 16 bytes per value, compared with
+ * something like 100 bytes per key and per value for a
+ * <code>HashMap</code> of boxed <code>Long</code>s pointing to
+ * <code>List</code>s.
+ *
+ * <p>The node pool is paged.  Once the pages allocated on the heap
+ * exceed a given limit, further pages are allocated from memory-mapped
+ * temporary files, so that the number of values that can be stored
+ * is not limited by the size of the heap.
+ * Maps constructed with the default heap limit share a single
+ * heap budget, so that many maps in use at once, for instance by
+ * concurrent matches, do not between them exceed that limit.
+ * Mapped files are closed and deleted, and heap pages are returned to
+ * the budget, by the {@link #close} method,
+ * which should be called when the map is no longer required.
+ *
+ * <p>Instances of this class are not thread-safe for writing,
+ * but may be read concurrently from multiple threads
+ * as long as no modifications are taking place.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class LongListMap {
+
+    private final NodePool pool_;
+    private long[] keys_;
+    private long[] heads_;
+    private int[] counts_;
+    private int mask_;
+    private int nSlotUsed_;
+    private long nKey_;
+    private long nItem_;
+
+    /** Count value denoting an unused hash table slot. */
+    private static final int FREE = -1;
+
+    /** Initial hash table capacity (must be a power of 2). */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Fraction of total maximum memory for default heap page limit. */
+    private static final float MAX_FRACT = 0.25f;
+
+    /** Heap budget shared by all maps with the default limit. */
+    private static final HeapBudget SHARED_BUDGET =
+        new HeapBudget( (long) ( Runtime.getRuntime().maxMemory()
+                                 * MAX_FRACT ) );
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.join" );
+
+    /**
+     * Constructs a map with a default limit on heap usage.
+     * The limit applies to all such maps together,
+     * not to each one separately.
+     */
+    public LongListMap() {
+        this( SHARED_BUDGET );
+    }
+
+    /**
+     * Constructs a map with a given limit on the heap memory used for
+     * value storage.  Value storage beyond this limit is provided by
+     * memory-mapped temporary files.
+     *
+     * @param  heapLimit  approximate maximum number of bytes of heap
+     *                    to use for value nodes
+     */
+    public LongListMap( long heapLimit ) {
+        this( new HeapBudget( heapLimit ) );
+    }
+
+    /**
+     * Constructs a map drawing heap pages from a given budget,
+     * which may be shared with other maps.
+     *
+     * @param  budget  heap budget for value nodes
+     */
+    LongListMap( HeapBudget budget ) {
+        pool_ = new NodePool( budget );
+        allocate( INITIAL_CAPACITY );
+    }
+
+    /**
+     * Appends a value to the list associated with a given key.
+     *
+     * @param  key  key
+     * @param  value  value to add
+     */
+    public void add( long key, long value ) {
+        int islot = findSlot( key );
+        if ( counts_[ islot ] == FREE ) {
+            if ( ( nSlotUsed_ + 1 ) * 2 > keys_.length ) {
+                rehash( keys_.length * 2 );
+                islot = findSlot( key );
+            }
+            keys_[ islot ] = key;
+            counts_[ islot ] = 0;
+            nSlotUsed_++;
+        }
+        if ( counts_[ islot ] == 0 ) {
+            heads_[ islot ] = 0;
+            nKey_++;
+        }
+        heads_[ islot ] = pool_.addNode( value, heads_[ islot ] );
+        counts_[ islot ]++;
+        nItem_++;
+    }
+
+    /**
+     * Returns the values associated with a given key,
+     * in the order they were added.
+     *
+     * @param  key  key
+     * @return   array of values, or null if there are none
+     */
+    public long[] get( long key ) {
+        int islot = findSlot( key );
+        return counts_[ islot ] > 0 ? getValues( islot ) : null;
+    }
+
+    /**
+     * Returns the number of values associated with a given key.
+     *
+     * @param  key  key
+     * @return  value count, zero if the key is not present
+     */
+    public int getCount( long key ) {
+        return Math.max( 0, counts_[ findSlot( key ) ] );
+    }
+
+    /**
+     * Indicates whether any values are associated with a given key.
+     *
+     * @param  key  key
+     * @return  true iff <code>getCount(key)&gt;0</code>
+     */
+    public boolean containsKey( long key ) {
+        return counts_[ findSlot( key ) ] > 0;
+    }
+
+    /**
+     * Removes all the values associated with a given key.
+     * The storage used by those values is not reclaimed.
+     *
+     * @param  key  key
+     */
+    public void remove( long key ) {
+        removeSlot( findSlot( key ) );
+    }
+
+    /**
+     * Returns the number of keys which have values associated with them.
+     *
+     * @return  key count
+     */
+    public long getKeyCount() {
+        return nKey_;
+    }
+
+    /**
+     * Returns the total number of values added to this map.
+     * Removals do not affect this value.
+     *
+     * @return  value count
+     */
+    public long getItemCount() {
+        return nItem_;
+    }
+
+    /**
+     * Releases resources held by this map.
+     * Any temporary file used for value storage is closed and deleted,
+     * and heap used for value storage is returned to the heap budget.
+     * The map must not be used following a call to this method.
+     */
+    public void close() {
+        pool_.close();
+    }
+
+    /**
+     * Returns an iterator over the keys of this map.
+     * The <code>next</code> method returns <code>Long</code> objects
+     * and the <code>remove</code> method is supported.
+     * Behaviour is undefined if values are added while
+     * the iteration is in progress.
+     *
+     * @return  key iterator
+     */
+    public Iterator keyIterator() {
+        return new Iterator() {
+            private int iNext_ = nextUsed( 0 );
+            private int iLast_ = -1;
+            public boolean hasNext() {
+                return iNext_ < keys_.length;
+            }
+            public Object next() {
+                if ( ! hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                iLast_ = iNext_;
+                iNext_ = nextUsed( iNext_ + 1 );
+                return new Long( keys_[ iLast_ ] );
+            }
+            public void remove() {
+                if ( iLast_ < 0 || counts_[ iLast_ ] <= 0 ) {
+                    throw new IllegalStateException();
+                }
+                removeSlot( iLast_ );
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the first slot at or after a given index
+     * which has values associated with it.
+     *
+     * @param  islot  starting slot index
+     * @return  index of next used slot, or the table size if none
+     */
+    private int nextUsed( int islot ) {
+        int nslot = keys_.length;
+        while ( islot < nslot && counts_[ islot ] <= 0 ) {
+            islot++;
+        }
+        return islot;
+    }
+
+    /**
+     * Clears the values associated with a given slot.
+     * The key stays in place, so that probe sequences are not disrupted.
+     *
+     * @param  islot  slot index
+     */
+    private void removeSlot( int islot ) {
+        if ( counts_[ islot ] > 0 ) {
+            counts_[ islot ] = 0;
+            heads_[ islot ] = 0;
+            nKey_--;
+        }
+    }
+
+    /**
+     * Returns the values stored in a given slot.
+     *
+     * @param  islot  slot index, which must be in use
+     * @return  values in insertion order
+     */
+    private long[] getValues( int islot ) {
+        int n = counts_[ islot ];
+        long[] values = new long[ n ];
+        long inode = heads_[ islot ];
+        for ( int i = n - 1; i >= 0; i-- ) {
+            values[ i ] = pool_.getValue( inode );
+            inode = pool_.getNext( inode );
+        }
+        assert inode == 0;
+        return values;
+    }
+
+    /**
+     * Locates the hash table slot for a given key.  This is either the
+     * slot containing the key, or the free slot at which it should
+     * be inserted.
+     *
+     * @param  key  key
+     * @return  slot index
+     */
+    private int findSlot( long key ) {
+        int islot = hash( key ) & mask_;
+        while ( counts_[ islot ] != FREE && keys_[ islot ] != key ) {
+            islot = ( islot + 1 ) & mask_;
+        }
+        return islot;
+    }
+
+    /**
+     * Resizes the hash table.  Removed keys are discarded in the process.
+     *
+     * @param  capacity  new capacity, a power of 2
+     */
+    private void rehash( int capacity ) {
+        long[] keys = keys_;
+        long[] heads = heads_;
+        int[] counts = counts_;
+        allocate( capacity );
+        for ( int i = 0; i < keys.length; i++ ) {
+            if ( counts[ i ] > 0 ) {
+                int islot = findSlot( keys[ i ] );
+                keys_[ islot ] = keys[ i ];
+                heads_[ islot ] = heads[ i ];
+                counts_[ islot ] = counts[ i ];
+                nSlotUsed_++;
+            }
+        }
+    }
+
+    /**
+     * Allocates empty hash table arrays.
+     *
+     * @param  capacity  slot count, a power of 2
+     */
+    private void allocate( int capacity ) {
+        if ( capacity <= 0 ) {
+            throw new IllegalStateException( "Too many keys" );
+        }
+        keys_ = new long[ capacity ];
+        heads_ = new long[ capacity ];
+        counts_ = new int[ capacity ];
+        Arrays.fill( counts_, FREE );
+        mask_ = capacity - 1;
+        nSlotUsed_ = 0;
+    }
+
+    /**
+     * Hash function for keys.
+     *
+     * @param  key  key
+     * @return  well-mixed hash code
+     */
+    private static int hash( long key ) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) ( h ^ ( h >>> 32 ) );
+    }
+
+    /**
+     * Pool of linked-list nodes stored in primitive pages.
+     * Each node has a value and a pointer to the next node.
+     * Node pointers are 1-based, so that 0 can represent the list end.
+     */
+    private static class NodePool {
+
+        private final HeapBudget budget_;
+        private final List valuePages_;
+        private final List nextPages_;
+        private long nNode_;
+        private long heapBytes_;
+        private MappedFile mapFile_;
+
+        /** Number of nodes in a page (must be a power of 2). */
+        private static final int PAGE_SIZE = 1 << 16;
+        private static final int PAGE_SHIFT = 16;
+        private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+        /**
+         * Constructor.
+         *
+         * @param  budget  heap budget from which pages are allocated
+         *                 before switching to mapped files
+         */
+        NodePool( HeapBudget budget ) {
+            budget_ = budget;
+            valuePages_ = new ArrayList();
+            nextPages_ = new ArrayList();
+        }
+
+        /**
+         * Adds a new node.
+         *
+         * @param  value  node value
+         * @param  next   pointer to next node, or 0
+         * @return  pointer to new node
+         */
+        long addNode( long value, long next ) {
+            long inode = nNode_++;
+            int ipage = (int) ( inode >>> PAGE_SHIFT );
+            int ioff = (int) ( inode & PAGE_MASK );
+            if ( ipage == valuePages_.size() ) {
+                addPage();
+            }
+            else if ( ipage == 0 ) {
+                growFirstPage( ioff + 1 );
+            }
+            getPage( valuePages_, ipage ).put( ioff, value );
+            getPage( nextPages_, ipage ).put( ioff, next );
+            return inode + 1;
+        }
+
+        /**
+         * Returns the value of a node.
+         *
+         * @param  pointer  node pointer
+         * @return  value
+         */
+        long getValue( long pointer ) {
+            long inode = pointer - 1;
+            return getPage( valuePages_, (int) ( inode >>> PAGE_SHIFT ) )
+                  .get( (int) ( inode & PAGE_MASK ) );
+        }
+
+        /**
+         * Returns the successor of a node.
+         *
+         * @param  pointer  node pointer
+         * @return  pointer to next node, or 0
+         */
+        long getNext( long pointer ) {
+            long inode = pointer - 1;
+            return getPage( nextPages_, (int) ( inode >>> PAGE_SHIFT ) )
+                  .get( (int) ( inode & PAGE_MASK ) );
+        }
+
+        /**
+         * Discards all pages and closes the mapped file, if any.
+         */
+        void close() {
+            valuePages_.clear();
+            nextPages_.clear();
+            budget_.release( heapBytes_ );
+            heapBytes_ = 0;
+            if ( mapFile_ != null ) {
+                mapFile_.close();
+                mapFile_ = null;
+            }
+        }
+
+        /**
+         * Returns a page from a page list.
+         *
+         * @param  pages  page list
+         * @param  ipage  page index
+         * @return   page buffer
+         */
+        private static LongBuffer getPage( List pages, int ipage ) {
+            return (LongBuffer) pages.get( ipage );
+        }
+
+        /**
+         * Ensures that the first page, which starts small to keep the
+         * footprint of small maps down, can hold a given number of nodes.
+         *
+         * @param  n  required node count
+         */
+        private void growFirstPage( int n ) {
+            LongBuffer vbuf = getPage( valuePages_, 0 );
+            int cap = vbuf.capacity();
+            if ( n > cap ) {
+                int cap1 = Math.min( PAGE_SIZE, cap * 2 );
+                valuePages_.set( 0, copyPage( vbuf, cap1 ) );
+                nextPages_.set( 0, copyPage( getPage( nextPages_, 0 ),
+                                             cap1 ) );
+                long nbyte = 2 * 8 * ( cap1 - cap );
+                budget_.reserve( nbyte, true );
+                heapBytes_ += nbyte;
+            }
+        }
+
+        /**
+         * Appends a new page to each of the value and next page lists.
+         */
+        private void addPage() {
+            if ( valuePages_.isEmpty() ) {
+                int cap = 256;
+                valuePages_.add( LongBuffer.wrap( new long[ cap ] ) );
+                nextPages_.add( LongBuffer.wrap( new long[ cap ] ) );
+                budget_.reserve( 2 * 8 * cap, true );
+                heapBytes_ += 2 * 8 * cap;
+                return;
+            }
+            long pageBytes = 8L * PAGE_SIZE;
+            if ( mapFile_ == null && budget_.reserve( 2 * pageBytes, false ) ) {
+                valuePages_.add( LongBuffer.wrap( new long[ PAGE_SIZE ] ) );
+                nextPages_.add( LongBuffer.wrap( new long[ PAGE_SIZE ] ) );
+                heapBytes_ += 2 * pageBytes;
+            }
+            else {
+                try {
+                    if ( mapFile_ == null ) {
+                        mapFile_ = new MappedFile();
+                        logger_.info( "Bin storage exceeds " + budget_.limit_
+                                    + " bytes of heap - using mapped file "
+                                    + mapFile_.file_ );
+                    }
+                    valuePages_.add( mapFile_.mapPage( pageBytes ) );
+                    nextPages_.add( mapFile_.mapPage( pageBytes ) );
+                }
+                catch ( IOException e ) {
+                    throw (OutOfMemoryError)
+                          new OutOfMemoryError( "Failed to map bin storage" )
+                         .initCause( e );
+                }
+            }
+        }
+
+        /**
+         * Returns a heap copy of a page with a new capacity.
+         *
+         * @param  buf  page
+         * @param  cap  new capacity
+         * @return  new page
+         */
+        private static LongBuffer copyPage( LongBuffer buf, int cap ) {
+            long[] array = new long[ cap ];
+            System.arraycopy( buf.array(), 0, array, 0, buf.capacity() );
+            return LongBuffer.wrap( array );
+        }
+    }
+
+    /**
+     * Keeps track of the heap used by one or more maps.
+     */
+    static class HeapBudget {
+        final long limit_;
+        private long used_;
+
+        /**
+         * Constructor.
+         *
+         * @param  limit  approximate maximum number of heap bytes
+         */
+        HeapBudget( long limit ) {
+            limit_ = limit;
+        }
+
+        /**
+         * Attempts to reserve some bytes from this budget.
+         *
+         * @param  nbyte  number of bytes required
+         * @param  force  if true, the bytes are reserved even if
+         *                that exceeds the limit
+         * @return  true iff the bytes were reserved
+         */
+        synchronized boolean reserve( long nbyte, boolean force ) {
+            if ( force || used_ + nbyte <= limit_ ) {
+                used_ += nbyte;
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+
+        /**
+         * Returns some previously reserved bytes to this budget.
+         *
+         * @param  nbyte  number of bytes no longer required
+         */
+        synchronized void release( long nbyte ) {
+            used_ -= nbyte;
+        }
+
+        /**
+         * Returns the number of bytes currently reserved.
+         *
+         * @return  bytes in use
+         */
+        synchronized long getUsed() {
+            return used_;
+        }
+    }
+
+    /**
+     * Temporary file from which page buffers can be mapped.
+     */
+    private static class MappedFile {
+        final File file_;
+        private final RandomAccessFile raf_;
+        private final FileChannel channel_;
+        private long length_;
+
+        /**
+         * Constructor.
+         */
+        MappedFile() throws IOException {
+            file_ = File.createTempFile( "LongListMap", ".bin" );
+            file_.deleteOnExit();
+            raf_ = new RandomAccessFile( file_, "rw" );
+            channel_ = raf_.getChannel();
+        }
+
+        /**
+         * Extends the file and maps the new region.
+         *
+         * @param  nbyte  size of region
+         * @return   buffer mapping the new region
+         */
+        LongBuffer mapPage( long nbyte ) throws IOException {
+            MappedByteBuffer bbuf =
+                channel_.map( FileChannel.MapMode.READ_WRITE, length_, nbyte );
+            length_ += nbyte;
+            bbuf.order( ByteOrder.nativeOrder() );
+            return bbuf.asLongBuffer();
+        }
+
+        /**
+         * Closes the file and deletes it.
+         * Buffers previously mapped from it must not be used afterwards.
+         */
+        void close() {
+            try {
+                raf_.close();
+            }
+            catch ( IOException e ) {
+                logger_.warning( "Failed to close " + file_ + ": " + e );
+            }
+            if ( ! file_.delete() ) {
+                logger_.info( "Failed to delete " + file_
+                            + " - will try again on exit" );
+            }
+        }
+    }
+}
@@ -96,6 +96,26 @@ public interface MatchEngine {
      */
     double matchScore( Object[] tuple1, Object[] tuple2 );
 
+    /**
+     * Returns an object which can calculate match scores from tuples
+     * converted in advance to primitive vectors.
+     * This permits an allocation-free alternative to the
+     * {@link #matchScore} method for use in inner loops.
+     * The returned object reflects the current state of this engine,
+     * so should be obtained again if the match parameters are changed.
+     *
+     * <p>This is an optional capability; engines for which it is
+     * not implemented may return null.
+     * Since the scorer duplicates the logic of <code>matchScore</code>,
+     * implementations should return null when invoked on a subclass,
+     * which might have overridden that method, unless they know
+     * the subclass scores the same way.
+     *
+     * @return  vector scorer giving the same results as this engine's
+     *          <code>matchScore</code> method, or null
+     */
+    VectorScorer getVectorScorer();
+
     /**
      * Returns a description of the value returned by the 
      * {@link #matchScore} method.  The content class should be numeric
@@ -0,0 +1,471 @@
+package uk.ac.starlink.table.join;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates structured performance measurements for crossmatches.
+ * An instance can be attached to a {@link RowMatcher} or
+ * {@link PartitionMatcher}, which will report to it as the match
+ * proceeds.  The following quantities are recorded:
+ * <ul>
+ * <li>wall-clock and CPU time for each named processing phase;
+ *     the phases are the stages reported to the matcher's
+ *     {@link ProgressIndicator}, and phases with the same name
+ *     are aggregated</li>
+ * <li>number of bins created, and a histogram of bin occupancy</li>
+ * <li>number of candidate row pairs tested by the match engine,
+ *     and the number of those accepted as matches</li>
+ * <li>peak heap usage</li>
+ * </ul>
+ *
+ * <p>CPU time for a phase is the difference in the summed CPU time of
+ * all the live threads in the JVM between its start and end,
+ * so it includes work done by worker threads in a multi-threaded match.
+ * It is not available on platforms which do not support thread CPU
+ * time measurement.
+ * Peak heap usage is the sum of the peak usages of the JVM's heap
+ * memory pools since the first match was started;
+ * since the pools do not necessarily peak at the same time this is
+ * an upper bound.
+ *
+ * <p>Pair counts may be updated from multiple threads,
+ * but phase timing and bin counting are expected to be done
+ * from the thread running the match.
+ * Metrics accumulate over all the matches performed while an instance
+ * is attached.
+ * Matches which fail part way through, for instance because of an
+ * I/O error or interruption, are counted separately; the work they
+ * did up to the failure is included in the other figures,
+ * and any phases left open by the failure are closed at that point.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class MatchMetrics {
+
+    private final ThreadMXBean threadBean_;
+    private final Map phaseMap_;
+    private final LinkedList openPhases_;
+    private final long[] occupancy_;
+    private final AtomicLong nTested_;
+    private final AtomicLong nAccepted_;
+    private long nBin_;
+    private long nRef_;
+    private int nMatch_;
+    private int nFail_;
+    private int matchDepth_;
+    private long matchStart_;
+    private long matchMillis_;
+
+    /**
+     * Constructor.
+     */
+    public MatchMetrics() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        threadBean_ = threadBean.isThreadCpuTimeSupported()
+                    ? threadBean
+                    : null;
+        phaseMap_ = new LinkedHashMap();
+        openPhases_ = new LinkedList();
+        occupancy_ = new long[ 64 ];
+        nTested_ = new AtomicLong();
+        nAccepted_ = new AtomicLong();
+    }
+
+    /**
+     * Returns a progress indicator which forwards all calls to a given
+     * base indicator, and also records stage timings as phases of
+     * this object.
+     *
+     * @param  base  indicator to which calls are forwarded
+     * @return  timing indicator
+     */
+    public ProgressIndicator createIndicator( final ProgressIndicator base ) {
+        return new ProgressIndicator() {
+            public void startStage( String stage ) {
+                startPhase( stage );
+                base.startStage( stage );
+            }
+            public void setLevel( double level ) throws InterruptedException {
+                base.setLevel( level );
+            }
+            public void endStage() {
+                base.endStage();
+                endPhase();
+            }
+            public void logMessage( String msg ) {
+                base.logMessage( msg );
+            }
+        };
+    }
+
+    /**
+     * Signals the start of a match.  Calls may be nested,
+     * for instance by a matcher which delegates to other matchers;
+     * only the outermost call counts as a distinct match.
+     */
+    void startMatch() {
+        if ( matchDepth_++ == 0 ) {
+            if ( nMatch_ == 0 ) {
+                for ( Iterator it = getHeapPools().iterator();
+                      it.hasNext(); ) {
+                    ((MemoryPoolMXBean) it.next()).resetPeakUsage();
+                }
+            }
+            matchStart_ = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Signals the end of a match started by {@link #startMatch}.
+     * This must be called, for instance from a <code>finally</code>
+     * block, whether or not the match succeeded.
+     *
+     * @param  completed  true if the match completed normally,
+     *                    false if it failed
+     */
+    void endMatch( boolean completed ) {
+        if ( --matchDepth_ == 0 ) {
+            while ( ! openPhases_.isEmpty() ) {
+                endPhase();
+            }
+            matchMillis_ += System.currentTimeMillis() - matchStart_;
+            if ( completed ) {
+                nMatch_++;
+            }
+            else {
+                nFail_++;
+            }
+        }
+    }
+
+    /**
+     * Records the start of a named processing phase.
+     *
+     * @param  name  phase name
+     */
+    void startPhase( String name ) {
+        openPhases_.addLast( new Object[] {
+            name,
+            new Long( System.currentTimeMillis() ),
+            new Long( getCpuNanos() ),
+        } );
+    }
+
+    /**
+     * Records the end of the most recently started processing phase.
+     */
+    void endPhase() {
+        if ( openPhases_.isEmpty() ) {
+            return;
+        }
+        Object[] open = (Object[]) openPhases_.removeLast();
+        String name = (String) open[ 0 ];
+        long wall = System.currentTimeMillis()
+                  - ((Long) open[ 1 ]).longValue();
+        long cpu0 = ((Long) open[ 2 ]).longValue();
+        long cpu1 = getCpuNanos();
+        long cpu = cpu0 >= 0 && cpu1 >= 0
+                 ? Math.max( 0, ( cpu1 - cpu0 ) / 1000000 )
+                 : -1;
+        Phase phase = (Phase) phaseMap_.get( name );
+        if ( phase == null ) {
+            phase = new Phase( name );
+            phaseMap_.put( name, phase );
+        }
+        phase.count_++;
+        phase.wallMillis_ += wall;
+        if ( cpu >= 0 && phase.cpuMillis_ >= 0 ) {
+            phase.cpuMillis_ += cpu;
+        }
+        else {
+            phase.cpuMillis_ = -1;
+        }
+    }
+
+    /**
+     * Records the creation of a bin with a given number of entries.
+     *
+     * @param  nentry  number of row references in the bin
+     */
+    void addBin( long nentry ) {
+        nBin_++;
+        nRef_ += nentry;
+        occupancy_[ nentry > 0 ? 63 - Long.numberOfLeadingZeros( nentry )
+                               : 0 ]++;
+    }
+
+    /**
+     * Records the result of scoring a number of candidate row pairs.
+     * This method may be called from any thread.
+     *
+     * @param  ntested  number of pairs submitted to the match engine
+     * @param  naccepted  number of those pairs which matched
+     */
+    void addPairs( long ntested, long naccepted ) {
+        if ( ntested > 0 ) {
+            nTested_.addAndGet( ntested );
+        }
+        if ( naccepted > 0 ) {
+            nAccepted_.addAndGet( naccepted );
+        }
+    }
+
+    /**
+     * Returns the number of matches that have been completed.
+     *
+     * @return  match count
+     */
+    public int getMatchCount() {
+        return nMatch_;
+    }
+
+    /**
+     * Returns the number of matches that failed before completion.
+     *
+     * @return  failed match count
+     */
+    public int getFailedCount() {
+        return nFail_;
+    }
+
+    /**
+     * Returns the total wall-clock time spent in matches,
+     * including failed ones.
+     *
+     * @return  elapsed time in milliseconds
+     */
+    public long getMatchMillis() {
+        return matchMillis_;
+    }
+
+    /**
+     * Returns the processing phases recorded so far,
+     * in order of first completion.
+     *
+     * @return  array of phases
+     */
+    public Phase[] getPhases() {
+        return (Phase[]) phaseMap_.values().toArray( new Phase[ 0 ] );
+    }
+
+    /**
+     * Returns the number of bins created.
+     *
+     * @return  bin count
+     */
+    public long getBinCount() {
+        return nBin_;
+    }
+
+    /**
+     * Returns the total number of row references in all the bins created.
+     *
+     * @return  row reference count
+     */
+    public long getBinRefCount() {
+        return nRef_;
+    }
+
+    /**
+     * Returns a histogram of bin occupancy.
+     * Element <code>i</code> of the result gives the number of bins
+     * containing between <code>2<sup>i</sup></code> and
+     * <code>2<sup>i+1</sup>-1</code> row references inclusive.
+     * Trailing zero elements are omitted.
+     *
+     * @return  logarithmic occupancy histogram
+     */
+    public long[] getOccupancyHistogram() {
+        int n = occupancy_.length;
+        while ( n > 0 && occupancy_[ n - 1 ] == 0 ) {
+            n--;
+        }
+        long[] hist = new long[ n ];
+        System.arraycopy( occupancy_, 0, hist, 0, n );
+        return hist;
+    }
+
+    /**
+     * Returns the number of candidate row pairs submitted to the
+     * match engine for scoring.
+     *
+     * @return  tested pair count
+     */
+    public long getTestedPairCount() {
+        return nTested_.get();
+    }
+
+    /**
+     * Returns the number of tested row pairs which were found to match.
+     *
+     * @return  accepted pair count
+     */
+    public long getAcceptedPairCount() {
+        return nAccepted_.get();
+    }
+
+    /**
+     * Returns the peak heap usage since the first match was started.
+     *
+     * @return  peak heap usage in bytes
+     */
+    public long getPeakHeapBytes() {
+        long peak = 0;
+        for ( Iterator it = getHeapPools().iterator(); it.hasNext(); ) {
+            peak += ((MemoryPoolMXBean) it.next()).getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Returns the contents of this object as a structure made of
+     * Maps, Lists, Strings and Numbers, suitable for serialization
+     * as JSON or similar.
+     *
+     * @return  map giving metrics by name
+     */
+    public Map toMap() {
+        Map map = new LinkedHashMap();
+        map.put( "matchCount", new Integer( nMatch_ ) );
+        map.put( "failedCount", new Integer( nFail_ ) );
+        map.put( "wallMillis", new Long( matchMillis_ ) );
+        List phaseList = new ArrayList();
+        Phase[] phases = getPhases();
+        for ( int i = 0; i < phases.length; i++ ) {
+            Phase phase = phases[ i ];
+            Map pmap = new LinkedHashMap();
+            pmap.put( "name", phase.getName() );
+            pmap.put( "count", new Integer( phase.getCount() ) );
+            pmap.put( "wallMillis", new Long( phase.getWallMillis() ) );
+            if ( phase.getCpuMillis() >= 0 ) {
+                pmap.put( "cpuMillis", new Long( phase.getCpuMillis() ) );
+            }
+            phaseList.add( pmap );
+        }
+        map.put( "phases", phaseList );
+        Map binMap = new LinkedHashMap();
+        binMap.put( "count", new Long( nBin_ ) );
+        binMap.put( "refs", new Long( nRef_ ) );
+        List histList = new ArrayList();
+        long[] hist = getOccupancyHistogram();
+        for ( int i = 0; i < hist.length; i++ ) {
+            Map hmap = new LinkedHashMap();
+            hmap.put( "min", new Long( 1L << i ) );
+            hmap.put( "max", new Long( ( 2L << i ) - 1 ) );
+            hmap.put( "bins", new Long( hist[ i ] ) );
+            histList.add( hmap );
+        }
+        binMap.put( "occupancy", histList );
+        map.put( "bins", binMap );
+        Map pairMap = new LinkedHashMap();
+        pairMap.put( "tested", new Long( getTestedPairCount() ) );
+        pairMap.put( "accepted", new Long( getAcceptedPairCount() ) );
+        map.put( "pairs", pairMap );
+        map.put( "peakHeapBytes", new Long( getPeakHeapBytes() ) );
+        return map;
+    }
+
+    /**
+     * Returns the summed CPU time of all live threads.
+     *
+     * @return  CPU time in nanoseconds, or -1 if not available
+     */
+    private long getCpuNanos() {
+        if ( threadBean_ == null ) {
+            return -1;
+        }
+        long[] ids = threadBean_.getAllThreadIds();
+        long nanos = 0;
+        for ( int i = 0; i < ids.length; i++ ) {
+            long t = threadBean_.getThreadCpuTime( ids[ i ] );
+            if ( t > 0 ) {
+                nanos += t;
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Returns the JVM's heap memory pools.
+     *
+     * @return  list of MemoryPoolMXBeans
+     */
+    private static List getHeapPools() {
+        List pools = new ArrayList();
+        for ( Iterator it = ManagementFactory.getMemoryPoolMXBeans()
+                                             .iterator();
+              it.hasNext(); ) {
+            MemoryPoolMXBean pool = (MemoryPoolMXBean) it.next();
+            if ( pool.getType() == MemoryType.HEAP && pool.isValid() ) {
+                pools.add( pool );
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * Aggregated measurements for a named processing phase.
+     */
+    public static class Phase {
+        private final String name_;
+        private int count_;
+        private long wallMillis_;
+        private long cpuMillis_;
+
+        /**
+         * Constructor.
+         *
+         * @param  name  phase name
+         */
+        Phase( String name ) {
+            name_ = name;
+        }
+
+        /**
+         * Returns the phase name.
+         *
+         * @return  name
+         */
+        public String getName() {
+            return name_;
+        }
+
+        /**
+         * Returns the number of times this phase has been executed.
+         *
+         * @return  execution count
+         */
+        public int getCount() {
+            return count_;
+        }
+
+        /**
+         * Returns the total wall-clock time spent in this phase.
+         *
+         * @return  elapsed time in milliseconds
+         */
+        public long getWallMillis() {
+            return wallMillis_;
+        }
+
+        /**
+         * Returns the total CPU time spent in this phase.
+         *
+         * @return  CPU time in milliseconds, or -1 if not available
+         */
+        public long getCpuMillis() {
+            return cpuMillis_;
+        }
+    }
+}
@@ -70,4 +70,10 @@ interface ObjectBinner {
      * @return   bin count
      */
     long getBinCount();
+
+    /**
+     * Releases any resources, such as temporary files, held by this binner.
+     * The binner must not be used following a call to this method.
+     */
+    void close();
 }
@@ -0,0 +1,118 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Queue of tasks executed by a thread pool whose results are retrieved
+ * in the order in which they were submitted.
+ * This is used to farm out work on blocks of rows to multiple threads
+ * while consuming the results on a single thread in a deterministic order.
+ * The number of uncollected tasks is limited by the user checking
+ * {@link #isFull} before submission, which bounds the amount of memory
+ * tied up in pending work.
+ *
+ * <p>Instances of this class are not themselves thread-safe;
+ * all methods should be called from the same thread.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class OrderedTaskQueue {
+
+    private final ExecutorService executor_;
+    private final int maxPending_;
+    private final LinkedList futureList_;
+
+    /**
+     * Constructor.
+     *
+     * @param  executor  executor service which will run the tasks
+     * @param  maxPending  maximum number of tasks which should be
+     *                     pending at any one time
+     */
+    public OrderedTaskQueue( ExecutorService executor, int maxPending ) {
+        executor_ = executor;
+        maxPending_ = Math.max( 1, maxPending );
+        futureList_ = new LinkedList();
+    }
+
+    /**
+     * Submits a task for execution.
+     *
+     * @param  task  task whose result will be available from a later
+     *               call of {@link #takeResult}
+     */
+    public void submit( Callable task ) {
+        futureList_.add( executor_.submit( task ) );
+    }
+
+    /**
+     * Indicates whether the number of pending tasks has reached the
+     * maximum.  If so, {@link #takeResult} should be called before
+     * any more tasks are submitted.
+     *
+     * @return  true iff the queue is full
+     */
+    public boolean isFull() {
+        return futureList_.size() >= maxPending_;
+    }
+
+    /**
+     * Indicates whether there are no pending tasks.
+     *
+     * @return  true iff all submitted results have been taken
+     */
+    public boolean isEmpty() {
+        return futureList_.isEmpty();
+    }
+
+    /**
+     * Waits for the earliest-submitted uncollected task to complete,
+     * and returns its result.  If the task failed, its exception
+     * is rethrown here.
+     *
+     * @return   result of oldest pending task
+     */
+    public Object takeResult() throws IOException, InterruptedException {
+        Future future = (Future) futureList_.removeFirst();
+        try {
+            return future.get();
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof InterruptedException ) {
+                throw (InterruptedException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Task failed: " + cause )
+                                   .initCause( cause );
+            }
+        }
+    }
+
+    /**
+     * Cancels any tasks which have not yet been collected.
+     * This is harmless if the queue is already empty.
+     */
+    public void cancel() {
+        for ( Iterator it = futureList_.iterator(); it.hasNext(); ) {
+            ((Future) it.next()).cancel( true );
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+
+/**
+ * Receives matched pairs as they are found by a streaming matcher.
+ * This allows match results to be passed on directly without
+ * accumulating them in a {@link LinkSet}.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ * @see      SortMergeMatcher
+ */
+public interface PairSink {
+
+    /**
+     * Accepts a matched pair.
+     *
+     * @param  irow1  row index in the first table
+     * @param  irow2  row index in the second table
+     * @param  score  match score as returned by the match engine
+     */
+    void acceptPair( long irow1, long irow2, double score ) throws IOException;
+}
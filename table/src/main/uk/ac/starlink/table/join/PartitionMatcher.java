@@ -0,0 +1,784 @@
+package uk.ac.starlink.table.join;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.ValueInfo;
+
+/**
+ * Performs pair matching between two tables without holding all the
+ * match data in memory at once.
+ *
+ * <p>Both input tables are read sequentially and each row is written
+ * to temporary files according to the sky partitions covered by
+ * its match bins.  Partitions are HEALPix pixels at a coarse resolution
+ * if the match bins come from a {@link PixtoolsHealpixSkyPixellator},
+ * otherwise bins are assigned to partitions by hashing.
+ * Adjacent partitions are grouped so that each group contains no more
+ * than a given number of rows, and each group is then matched in
+ * memory using a {@link RowMatcher}.  Since a row is written to every
+ * group that any of its bins fall in, pairs straddling partition
+ * boundaries are found; a pair present in more than one group
+ * is only reported from the first of them.
+ * The results are finally merged into a single {@link CompactLinkSet}.
+ * An {@link AdaptiveMatchEngine} is given a sample of the whole input
+ * before partitioning, and is not resampled for the individual groups.
+ *
+ * <p>Memory usage is therefore governed by the group size, which is
+ * set at construction time, and by the size of the result,
+ * rather than by the size of the inputs.
+ * The match engine's tuple elements must all be numeric.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class PartitionMatcher {
+
+    private final MatchEngine engine_;
+    private final SkyPixellator pixellator_;
+    private final StarTable[] tables_;
+    private final long maxGroupRows_;
+    private final ValueInfo[] tupleInfos_;
+    private final int ncol_;
+    private ProgressIndicator baseIndicator_;
+    private ProgressIndicator indicator_;
+    private MatchMetrics metrics_;
+    private int parallelism_;
+
+    /** Maximum HEALPix order used for partitioning. */
+    private static final int PARTITION_K = 8;
+
+    /** Number of partitions used when partitioning by hash. */
+    private static final int HASH_PARTITIONS = 1 << 16;
+
+    /** Maximum number of bytes buffered before writing to disk. */
+    private static final int SPILL_BUFFER = 8 * 1024 * 1024;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.join" );
+
+    /**
+     * Constructs a matcher for a given engine.
+     * If the engine is an {@link AbstractSkyMatchEngine}, its pixellator
+     * is used to define partitions.
+     *
+     * @param  engine  match engine
+     * @param  tables  two-element array of tables containing the
+     *                 match tuples; sequential access is sufficient
+     * @param  maxGroupRows  maximum number of rows, from both tables
+     *                       together, matched in memory at once
+     */
+    public PartitionMatcher( MatchEngine engine, StarTable[] tables,
+                             long maxGroupRows ) {
+        this( engine,
+              engine instanceof AbstractSkyMatchEngine
+                  ? ((AbstractSkyMatchEngine) engine).getPixellator()
+                  : null,
+              tables, maxGroupRows );
+    }
+
+    /**
+     * Constructs a matcher for an engine whose bins are generated by
+     * a given pixellator.  This is useful where the engine wraps
+     * a sky match engine.
+     *
+     * @param  engine  match engine
+     * @param  pixellator  pixellator supplying the engine's bins,
+     *                     or null if unknown
+     * @param  tables  two-element array of tables containing the
+     *                 match tuples; sequential access is sufficient
+     * @param  maxGroupRows  maximum number of rows, from both tables
+     *                       together, matched in memory at once
+     */
+    public PartitionMatcher( MatchEngine engine, SkyPixellator pixellator,
+                             StarTable[] tables, long maxGroupRows ) {
+        if ( tables.length != 2 ) {
+            throw new IllegalArgumentException( "Two tables required" );
+        }
+        if ( maxGroupRows < 1 ) {
+            throw new IllegalArgumentException( "Group size "
+                                              + maxGroupRows + " < 1" );
+        }
+        tupleInfos_ = engine.getTupleInfos();
+        ncol_ = tupleInfos_.length;
+        for ( int ic = 0; ic < ncol_; ic++ ) {
+            if ( ! Number.class
+                  .isAssignableFrom( tupleInfos_[ ic ].getContentClass() ) ) {
+                throw new IllegalArgumentException( "Non-numeric tuple element "
+                                                  + tupleInfos_[ ic ] );
+            }
+        }
+        engine_ = engine;
+        pixellator_ = pixellator;
+        tables_ = (StarTable[]) tables.clone();
+        maxGroupRows_ = maxGroupRows;
+        baseIndicator_ = new NullProgressIndicator();
+        indicator_ = baseIndicator_;
+        parallelism_ = 1;
+    }
+
+    /**
+     * Sets the progress indicator for this matcher.
+     *
+     * @param  indicator  progress indicator
+     */
+    public void setIndicator( ProgressIndicator indicator ) {
+        baseIndicator_ = indicator;
+        updateIndicator();
+    }
+
+    /**
+     * Sets an object to which performance measurements will be reported
+     * during subsequent matches.  It is passed on to the matchers
+     * used for each group.
+     *
+     * @param  metrics  metrics accumulator, or null for no measurements
+     * @see  RowMatcher#setMetrics
+     */
+    public void setMetrics( MatchMetrics metrics ) {
+        metrics_ = metrics;
+        updateIndicator();
+    }
+
+    /**
+     * Sets the number of threads used when matching each group.
+     *
+     * @param  parallelism  worker thread count
+     * @see  RowMatcher#setParallelism
+     */
+    public void setParallelism( int parallelism ) {
+        parallelism_ = parallelism;
+    }
+
+    /**
+     * Returns the maximum number of rows matched in memory at once.
+     *
+     * @return  group row count limit
+     */
+    public long getMaxGroupRows() {
+        return maxGroupRows_;
+    }
+
+    /**
+     * Returns a set of RowLink2 objects representing a pair match
+     * between this matcher's two tables.  The result is the same as
+     * that of {@link RowMatcher#findPairMatches} with the same
+     * engine and tables, except possibly for rounding errors in the
+     * scores and for the choice between candidates with identical scores
+     * in the best-match modes.
+     *
+     * @param  pairMode  matching mode to determine which rows appear
+     *         in the result
+     * @return  links representing matched rows
+     */
+    public LinkSet findPairMatches( PairMode pairMode )
+            throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        if ( metrics_ != null ) {
+            metrics_.startMatch();
+        }
+        boolean done = false;
+        try {
+
+            /* Adapt the bins to the whole of the input once, and keep
+             * them fixed for the rest of the match: the groups written
+             * by the partitioning step, and the deduplication of pairs
+             * found in more than one group, both rely on every call of
+             * getBins giving the same answer. */
+            if ( engine_ instanceof AdaptiveMatchEngine ) {
+                RowMatcher.sampleTables( (AdaptiveMatchEngine) engine_,
+                                         tables_, indicator_ );
+            }
+            Partitioner partitioner = createPartitioner();
+            int npart = partitioner.getPartitionCount();
+
+            /* Count the number of rows falling in each partition. */
+            long[] counts = new long[ npart ];
+            for ( int itab = 0; itab < 2; itab++ ) {
+                countPartitions( itab, partitioner, counts );
+            }
+
+            /* Assign adjacent partitions to groups. */
+            int[] groups = new int[ npart ];
+            int ngroup = assignGroups( counts, groups );
+            counts = null;
+            indicator_.logMessage( "Partitioned into " + ngroup + " groups of "
+                                 + "at most " + maxGroupRows_ + " rows" );
+
+            /* Write each table's rows to disk by group. */
+            SpillStore[] stores = new SpillStore[ 2 ];
+            CompactLinkSet links = new CompactLinkSet();
+            try {
+                for ( int itab = 0; itab < 2; itab++ ) {
+                    stores[ itab ] = new SpillStore( ngroup, ncol_ );
+                    spillTable( itab, partitioner, groups, stores[ itab ] );
+                }
+
+                /* Match each group in turn. */
+                indicator_.startStage( "Matching " + ngroup + " groups" );
+                for ( int ig = 0; ig < ngroup; ig++ ) {
+                    matchGroup( ig, stores, partitioner, groups, links );
+                    indicator_.setLevel( ( ig + 1 ) / (double) ngroup );
+                }
+                indicator_.endStage();
+            }
+            finally {
+                for ( int itab = 0; itab < 2; itab++ ) {
+                    if ( stores[ itab ] != null ) {
+                        stores[ itab ].dispose();
+                    }
+                }
+            }
+
+            /* Select best matches if required. */
+            boolean unique0 = pairMode == PairMode.BEST
+                           || pairMode == PairMode.BEST1;
+            boolean unique1 = pairMode == PairMode.BEST
+                           || pairMode == PairMode.BEST2;
+            if ( unique0 || unique1 ) {
+                indicator_.startStage( "Eliminating multiple row references" );
+                links.eliminateMultipleRowEntries( unique0, unique1,
+                                                   indicator_ );
+                indicator_.endStage();
+            }
+            indicator_.logMessage( "Elapsed time for match: "
+                                 + ( System.currentTimeMillis() - startTime )
+                                   / 1000 + " seconds" );
+            done = true;
+            return links;
+        }
+        finally {
+            if ( metrics_ != null ) {
+                metrics_.endMatch( done );
+            }
+        }
+    }
+
+    /**
+     * Sets the progress indicator used internally according to
+     * the current indicator and metrics settings.
+     */
+    private void updateIndicator() {
+        indicator_ = metrics_ == null
+                   ? baseIndicator_
+                   : metrics_.createIndicator( baseIndicator_ );
+    }
+
+    /**
+     * Reads a table and accumulates the number of rows that will be
+     * written to each partition.
+     *
+     * @param  itab  table index
+     * @param  partitioner  partitioner
+     * @param  counts  per-partition row counts, updated on exit
+     */
+    private void countPartitions( int itab, Partitioner partitioner,
+                                  long[] counts )
+            throws IOException, InterruptedException {
+        ProgressRowSequence rseq =
+            new ProgressRowSequence( tables_[ itab ], indicator_,
+                                     "Counting partitions for table "
+                                   + ( itab + 1 ) );
+        try {
+            while ( rseq.nextProgress() ) {
+                int[] parts =
+                    partitioner.getPartitions( engine_.getBins( rseq
+                                                               .getRow() ) );
+                for ( int ip = 0; ip < parts.length; ip++ ) {
+                    counts[ parts[ ip ] ]++;
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+    }
+
+    /**
+     * Assigns runs of adjacent partitions to groups so that the total
+     * count in each group does not exceed the group size where possible.
+     *
+     * @param  counts  per-partition row counts
+     * @param  groups  per-partition group index, filled on exit
+     * @return  number of groups
+     */
+    private int assignGroups( long[] counts, int[] groups ) {
+        int npart = counts.length;
+        int igroup = 0;
+        long ngroupRows = 0;
+        for ( int ip = 0; ip < npart; ip++ ) {
+            long count = counts[ ip ];
+            if ( ngroupRows > 0 && ngroupRows + count > maxGroupRows_ ) {
+                igroup++;
+                ngroupRows = 0;
+            }
+            if ( count > maxGroupRows_ ) {
+                logger_.warning( "Partition " + ip + " contains " + count
+                               + " rows, more than group size "
+                               + maxGroupRows_ );
+            }
+            groups[ ip ] = igroup;
+            ngroupRows += count;
+        }
+        return igroup + 1;
+    }
+
+    /**
+     * Reads a table and writes its rows to a spill store according to
+     * the groups in which its bins fall.
+     *
+     * @param  itab  table index
+     * @param  partitioner  partitioner
+     * @param  groups  per-partition group index
+     * @param  store  destination store
+     */
+    private void spillTable( int itab, Partitioner partitioner, int[] groups,
+                             SpillStore store )
+            throws IOException, InterruptedException {
+        ProgressRowSequence rseq =
+            new ProgressRowSequence( tables_[ itab ], indicator_,
+                                     "Partitioning table " + ( itab + 1 ) );
+        double[] tuple = new double[ ncol_ ];
+        try {
+            for ( long irow = 0; rseq.nextProgress(); irow++ ) {
+                Object[] row = rseq.getRow();
+                int[] rowGroups =
+                    getGroups( partitioner, groups, engine_.getBins( row ) );
+                int ng = rowGroups.length;
+                if ( ng > 0 ) {
+                    for ( int ic = 0; ic < ncol_; ic++ ) {
+                        tuple[ ic ] =
+                            AbstractSkyMatchEngine.getNumberValue( row[ ic ] );
+                    }
+                    for ( int i = 0; i < ng; i++ ) {
+                        store.write( rowGroups[ i ], irow, ng > 1, tuple );
+                    }
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        store.flush();
+    }
+
+    /**
+     * Performs an in-memory match of the rows in one group,
+     * adding the resulting pairs to a link set.
+     *
+     * @param  igroup  group index
+     * @param  stores  two-element array of spill stores
+     * @param  partitioner  partitioner
+     * @param  groups  per-partition group index
+     * @param  links   link set to which pairs are added
+     */
+    private void matchGroup( int igroup, SpillStore[] stores,
+                             Partitioner partitioner, int[] groups,
+                             LinkSet links )
+            throws IOException, InterruptedException {
+        GroupTable[] gtables = new GroupTable[ 2 ];
+        for ( int itab = 0; itab < 2; itab++ ) {
+            gtables[ itab ] = stores[ itab ].readGroup( igroup, tupleInfos_ );
+            if ( gtables[ itab ].getRowCount() == 0 ) {
+                return;
+            }
+        }
+        RowMatcher matcher = new RowMatcher( engine_, gtables );
+        matcher.setAdaptiveSampling( false );
+        matcher.setParallelism( parallelism_ );
+        matcher.setMetrics( metrics_ );
+        LinkSet pairs = matcher.findPairMatches( PairMode.ALL );
+        for ( Iterator it = pairs.iterator(); it.hasNext(); ) {
+            RowLink2 pair = (RowLink2) it.next();
+            it.remove();
+            RowRef ref0 = pair.getRef( 0 );
+            RowRef ref1 = pair.getRef( 1 );
+            assert ref0.getTableIndex() == 0 && ref1.getTableIndex() == 1;
+            int lrow0 = (int) ref0.getRowIndex();
+            int lrow1 = (int) ref1.getRowIndex();
+
+            /* If both rows appear in more than one group, only report
+             * the pair from the lowest group they have in common. */
+            if ( gtables[ 0 ].multi_[ lrow0 ] &&
+                 gtables[ 1 ].multi_[ lrow1 ] &&
+                 firstCommonGroup( partitioner, groups,
+                                   gtables[ 0 ].getRow( lrow0 ),
+                                   gtables[ 1 ].getRow( lrow1 ) )
+                 != igroup ) {
+                continue;
+            }
+            RowLink2 link =
+                new RowLink2( new RowRef( 0, gtables[ 0 ].rows_[ lrow0 ] ),
+                              new RowRef( 1, gtables[ 1 ].rows_[ lrow1 ] ) );
+            link.setScore( pair.getScore() );
+            links.addLink( link );
+        }
+    }
+
+    /**
+     * Returns the lowest group index shared by two tuples.
+     *
+     * @param  partitioner  partitioner
+     * @param  groups  per-partition group index
+     * @param  tuple0  first tuple
+     * @param  tuple1  second tuple
+     * @return  lowest common group, or -1 if none
+     */
+    private int firstCommonGroup( Partitioner partitioner, int[] groups,
+                                  Object[] tuple0, Object[] tuple1 ) {
+        int[] groups0 =
+            getGroups( partitioner, groups, engine_.getBins( tuple0 ) );
+        int[] groups1 =
+            getGroups( partitioner, groups, engine_.getBins( tuple1 ) );
+        for ( int i0 = 0, i1 = 0;
+              i0 < groups0.length && i1 < groups1.length; ) {
+            if ( groups0[ i0 ] == groups1[ i1 ] ) {
+                return groups0[ i0 ];
+            }
+            else if ( groups0[ i0 ] < groups1[ i1 ] ) {
+                i0++;
+            }
+            else {
+                i1++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the distinct groups into which a set of bins falls.
+     *
+     * @param  partitioner  partitioner
+     * @param  groups  per-partition group index
+     * @param  bins  bin objects
+     * @return  sorted array of distinct group indices
+     */
+    private static int[] getGroups( Partitioner partitioner, int[] groups,
+                                    Object[] bins ) {
+        int[] parts = partitioner.getPartitions( bins );
+        int np = parts.length;
+        for ( int ip = 0; ip < np; ip++ ) {
+            parts[ ip ] = groups[ parts[ ip ] ];
+        }
+        return distinct( parts, np );
+    }
+
+    /**
+     * Returns a sorted array of the distinct values in the first
+     * elements of a given array.  The input array may be modified.
+     *
+     * @param  values  values
+     * @param  n   number of elements of interest
+     * @return  sorted distinct values
+     */
+    private static int[] distinct( int[] values, int n ) {
+        Arrays.sort( values, 0, n );
+        int nd = 0;
+        for ( int i = 0; i < n; i++ ) {
+            if ( nd == 0 || values[ i ] != values[ nd - 1 ] ) {
+                values[ nd++ ] = values[ i ];
+            }
+        }
+        if ( nd == values.length ) {
+            return values;
+        }
+        else {
+            int[] result = new int[ nd ];
+            System.arraycopy( values, 0, result, 0, nd );
+            return result;
+        }
+    }
+
+    /**
+     * Returns a partitioner suitable for this matcher's engine.
+     *
+     * @return  partitioner
+     */
+    private Partitioner createPartitioner() {
+        if ( pixellator_ instanceof PixtoolsHealpixSkyPixellator ) {
+            PixtoolsHealpixSkyPixellator hpixer =
+                (PixtoolsHealpixSkyPixellator) pixellator_;
+            int k = hpixer.getHealpixK();
+            if ( k >= 0 ) {
+                return new HealpixPartitioner( hpixer, k,
+                                               Math.min( k, PARTITION_K ) );
+            }
+        }
+        return new HashPartitioner( HASH_PARTITIONS );
+    }
+
+    /**
+     * Maps match bins to partitions.
+     */
+    private static abstract class Partitioner {
+
+        /**
+         * Returns the number of partitions.
+         *
+         * @return  partition count
+         */
+        abstract int getPartitionCount();
+
+        /**
+         * Returns the partition in which a given bin falls.
+         *
+         * @param  bin  bin object
+         * @return  partition index
+         */
+        abstract int getPartition( Object bin );
+
+        /**
+         * Returns the distinct partitions in which a set of bins fall.
+         *
+         * @param  bins  bin objects
+         * @return  new sorted array of distinct partition indices
+         */
+        int[] getPartitions( Object[] bins ) {
+            int nb = bins.length;
+            int[] parts = new int[ nb ];
+            for ( int ib = 0; ib < nb; ib++ ) {
+                parts[ ib ] = getPartition( bins[ ib ] );
+            }
+            return distinct( parts, nb );
+        }
+    }
+
+    /**
+     * Partitioner which uses coarse HEALPix pixels in the NESTED scheme,
+     * so that adjacent partitions are close on the sky.
+     */
+    private static class HealpixPartitioner extends Partitioner {
+        private final PixtoolsHealpixSkyPixellator pixer_;
+        private final int shift_;
+        private final int npart_;
+
+        /**
+         * Constructor.
+         *
+         * @param  pixer  pixellator which supplies the bins
+         * @param  k   HEALPix order of bins
+         * @param  partK  HEALPix order of partitions, not greater than k
+         */
+        HealpixPartitioner( PixtoolsHealpixSkyPixellator pixer, int k,
+                            int partK ) {
+            pixer_ = pixer;
+            shift_ = 2 * ( k - partK );
+            npart_ = 12 << ( 2 * partK );
+        }
+
+        int getPartitionCount() {
+            return npart_;
+        }
+
+        int getPartition( Object bin ) {
+            long nest = pixer_.toNestedIndex( ((Number) bin).longValue() );
+            return (int) ( nest >> shift_ );
+        }
+    }
+
+    /**
+     * Partitioner which assigns bins to partitions using their hash codes.
+     * This works for any bin type, but does not keep nearby bins together.
+     */
+    private static class HashPartitioner extends Partitioner {
+        private final int npart_;
+
+        /**
+         * Constructor.
+         *
+         * @param  npart  number of partitions, must be a power of 2
+         */
+        HashPartitioner( int npart ) {
+            npart_ = npart;
+        }
+
+        int getPartitionCount() {
+            return npart_;
+        }
+
+        int getPartition( Object bin ) {
+            int h = bin.hashCode() * 0x9e3779b9;
+            return ( h ^ ( h >>> 16 ) ) & ( npart_ - 1 );
+        }
+    }
+
+    /**
+     * Stores rows to temporary files according to group.
+     * Each record contains the row index, a flag indicating whether the
+     * row appears in more than one group, and the tuple values.
+     */
+    private static class SpillStore {
+        private final int ncol_;
+        private final File[] files_;
+        private final ByteArrayOutputStream[] bufs_;
+        private final DataOutputStream[] douts_;
+        private long nbuf_;
+
+        /**
+         * Constructor.
+         *
+         * @param  ngroup  number of groups
+         * @param  ncol   number of tuple elements
+         */
+        SpillStore( int ngroup, int ncol ) {
+            ncol_ = ncol;
+            files_ = new File[ ngroup ];
+            bufs_ = new ByteArrayOutputStream[ ngroup ];
+            douts_ = new DataOutputStream[ ngroup ];
+        }
+
+        /**
+         * Writes a record.
+         *
+         * @param  igroup  group index
+         * @param  irow   row index in the input table
+         * @param  multi  whether the row is written to multiple groups
+         * @param  tuple  tuple values
+         */
+        void write( int igroup, long irow, boolean multi, double[] tuple )
+                throws IOException {
+            DataOutputStream dout = douts_[ igroup ];
+            if ( dout == null ) {
+                bufs_[ igroup ] = new ByteArrayOutputStream();
+                dout = new DataOutputStream( bufs_[ igroup ] );
+                douts_[ igroup ] = dout;
+            }
+            dout.writeLong( irow );
+            dout.writeBoolean( multi );
+            for ( int ic = 0; ic < ncol_; ic++ ) {
+                dout.writeDouble( tuple[ ic ] );
+            }
+            nbuf_ += 9 + 8 * ncol_;
+            if ( nbuf_ > SPILL_BUFFER ) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes all buffered records to disk.
+         */
+        void flush() throws IOException {
+            for ( int ig = 0; ig < bufs_.length; ig++ ) {
+                ByteArrayOutputStream buf = bufs_[ ig ];
+                if ( buf != null && buf.size() > 0 ) {
+                    if ( files_[ ig ] == null ) {
+                        File file = File.createTempFile( "part", ".tmp" );
+                        file.deleteOnExit();
+                        files_[ ig ] = file;
+                    }
+                    OutputStream out =
+                        new FileOutputStream( files_[ ig ], true );
+                    try {
+                        buf.writeTo( out );
+                    }
+                    finally {
+                        out.close();
+                    }
+                    buf.reset();
+                }
+            }
+            nbuf_ = 0;
+        }
+
+        /**
+         * Reads all the records for a group into a table.
+         * The group file is deleted.
+         *
+         * @param  igroup  group index
+         * @param  infos   tuple element metadata
+         * @return  table containing records
+         */
+        GroupTable readGroup( int igroup, ValueInfo[] infos )
+                throws IOException {
+            flush();
+            File file = files_[ igroup ];
+            int recSize = 9 + 8 * ncol_;
+            long nrec = file == null ? 0 : file.length() / recSize;
+            if ( nrec > Integer.MAX_VALUE ) {
+                throw new IOException( "Too many rows in group" );
+            }
+            int nr = (int) nrec;
+            long[] rows = new long[ nr ];
+            boolean[] multi = new boolean[ nr ];
+            double[][] data = new double[ ncol_ ][ nr ];
+            if ( nr > 0 ) {
+                InputStream in =
+                    new BufferedInputStream( new FileInputStream( file ) );
+                DataInputStream din = new DataInputStream( in );
+                try {
+                    for ( int ir = 0; ir < nr; ir++ ) {
+                        rows[ ir ] = din.readLong();
+                        multi[ ir ] = din.readBoolean();
+                        for ( int ic = 0; ic < ncol_; ic++ ) {
+                            data[ ic ][ ir ] = din.readDouble();
+                        }
+                    }
+                }
+                finally {
+                    din.close();
+                }
+                file.delete();
+                files_[ igroup ] = null;
+            }
+            bufs_[ igroup ] = null;
+            douts_[ igroup ] = null;
+            GroupTable table = new GroupTable( rows, multi );
+            for ( int ic = 0; ic < ncol_; ic++ ) {
+                ColumnInfo cinfo = new ColumnInfo( infos[ ic ] );
+                cinfo.setContentClass( Double.class );
+                table.addColumn( ArrayColumn.makeColumn( cinfo, data[ ic ] ) );
+            }
+            return table;
+        }
+
+        /**
+         * Deletes any remaining temporary files.
+         */
+        void dispose() {
+            for ( int ig = 0; ig < files_.length; ig++ ) {
+                if ( files_[ ig ] != null ) {
+                    files_[ ig ].delete();
+                    files_[ ig ] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * In-memory table holding the tuples for a group, along with
+     * their row indices in the original table.
+     */
+    private static class GroupTable extends ColumnStarTable {
+        final long[] rows_;
+        final boolean[] multi_;
+
+        /**
+         * Constructor.
+         *
+         * @param  rows  original row index for each row
+         * @param  multi  whether each row appears in more than one group
+         */
+        GroupTable( long[] rows, boolean[] multi ) {
+            rows_ = rows;
+            multi_ = multi;
+        }
+
+        public long getRowCount() {
+            return rows_.length;
+        }
+    }
+}
@@ -0,0 +1,784 @@
+package uk.ac.starlink.table.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import uk.ac.starlink.table.DescribedValue;
+import uk.ac.starlink.table.StarTable;
+
+/**
+ * Persistent on-disk index giving the rows of a table which fall in
+ * each match bin.
+ *
+ * <p>This is intended for repeated matching against a large static
+ * catalogue.  Binning the rows of a table is normally done from scratch
+ * at the start of each match; if the bins for one table are written
+ * to an index file once using {@link #writeIndex writeIndex},
+ * subsequent matches can {@link #open open} that file and
+ * pass it to {@link RowMatcher#setPixelIndex} so that only the
+ * bins touched by the other table are ever read.
+ *
+ * <p>The index records the bins returned by the match engine's
+ * {@link MatchEngine#getBins getBins} method, so it is only valid for
+ * use with a match engine configured identically to the one used to
+ * write it, and for a table with the same rows.
+ * To help callers check this, the index stores a signature string
+ * supplied at write time; {@link #createSignature createSignature}
+ * provides a suitable value.
+ * Bins must be integers in a known range, as for instance the
+ * HEALPix pixel indices used by the sky match engines;
+ * in that case the rows are stored in HEALPix pixel order.
+ *
+ * <p>The file is memory-mapped for reading, so lookups are cheap
+ * and the index does not need to fit in the heap.
+ * Instances are safe for concurrent use from multiple threads.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class PixelIndex {
+
+    private final File file_;
+    private final long nrow_;
+    private final long npix_;
+    private final long nref_;
+    private final long dirOffset_;
+    private final String signature_;
+    private final ByteBuffer[] bufs_;
+
+    private static final byte[] MAGIC = new byte[] {
+        (byte) 'P', (byte) 'I', (byte) 'X', (byte) 'I',
+        (byte) 'D', (byte) 'X', (byte) '0', (byte) '1',
+    };
+    private static final int HEADER_SIZE = 56;
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = ( 1L << CHUNK_BITS ) - 1;
+    private static final int MAX_BUCKETS = 64;
+    private static final int SORT_BYTES_PER_REF = 32;
+
+    /**
+     * Constructor.
+     *
+     * @param  file  index file
+     * @param  nrow  number of rows in the indexed table
+     * @param  npix  number of non-empty bins
+     * @param  nref  total number of row references
+     * @param  dirOffset  file offset of the bin directory
+     * @param  signature  signature string
+     * @param  bufs   mapped buffers covering the file
+     */
+    private PixelIndex( File file, long nrow, long npix, long nref,
+                        long dirOffset, String signature, ByteBuffer[] bufs ) {
+        file_ = file;
+        nrow_ = nrow;
+        npix_ = npix;
+        nref_ = nref;
+        dirOffset_ = dirOffset;
+        signature_ = signature;
+        bufs_ = bufs;
+    }
+
+    /**
+     * Returns the file from which this index was read.
+     *
+     * @return  index file
+     */
+    public File getFile() {
+        return file_;
+    }
+
+    /**
+     * Returns the number of rows in the table for which this index
+     * was written.
+     *
+     * @return  table row count
+     */
+    public long getTableRowCount() {
+        return nrow_;
+    }
+
+    /**
+     * Returns the number of distinct non-empty bins in this index.
+     *
+     * @return  bin count
+     */
+    public long getBinCount() {
+        return npix_;
+    }
+
+    /**
+     * Returns the total number of row references in this index.
+     *
+     * @return  sum over bins of the number of rows in each bin
+     */
+    public long getRefCount() {
+        return nref_;
+    }
+
+    /**
+     * Returns the signature string written with this index.
+     *
+     * @return  signature
+     */
+    public String getSignature() {
+        return signature_;
+    }
+
+    /**
+     * Returns the row indices which fall in a given bin.
+     *
+     * @param  pixel  bin index
+     * @return  sorted array of row indices, or null if the bin is empty
+     */
+    public long[] getRows( long pixel ) {
+        long lo = 0;
+        long hi = npix_ - 1;
+        while ( lo <= hi ) {
+            long mid = ( lo + hi ) >>> 1;
+            long pmid = getLong( dirOffset_ + mid * 16 );
+            if ( pmid < pixel ) {
+                lo = mid + 1;
+            }
+            else if ( pmid > pixel ) {
+                hi = mid - 1;
+            }
+            else {
+                long start = getLong( dirOffset_ + mid * 16 + 8 );
+                long end = getLong( dirOffset_ + mid * 16 + 24 );
+                int n = (int) ( end - start );
+                long[] rows = new long[ n ];
+                long off = HEADER_SIZE + start * 8;
+                for ( int i = 0; i < n; i++ ) {
+                    rows[ i ] = getLong( off + i * 8L );
+                }
+                return rows;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a read-only LongBinner view of this index.
+     *
+     * @return  binner whose keys are Long bin indices
+     */
+    LongBinner createBinner() {
+        return new LongBinner() {
+            public void addItem( Object key, long item ) {
+                throw new UnsupportedOperationException( "Read-only" );
+            }
+            public long[] getLongs( Object key ) {
+                return key instanceof Number
+                     ? getRows( ((Number) key).longValue() )
+                     : null;
+            }
+            public long getBinCount() {
+                return npix_;
+            }
+            public Iterator getKeyIterator() {
+                return new Iterator() {
+                    long ipix_;
+                    public boolean hasNext() {
+                        return ipix_ < npix_;
+                    }
+                    public Object next() {
+                        if ( ipix_ < npix_ ) {
+                            return new Long( getLong( dirOffset_
+                                                    + 16 * ipix_++ ) );
+                        }
+                        else {
+                            throw new NoSuchElementException();
+                        }
+                    }
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+            public void close() {
+                // no-op; the mapped storage belongs to the index
+            }
+        };
+    }
+
+    /**
+     * Reads a long value from the mapped file.
+     *
+     * @param  offset  file offset, which must be a multiple of 8
+     * @return  value
+     */
+    private long getLong( long offset ) {
+        return bufs_[ (int) ( offset >>> CHUNK_BITS ) ]
+              .getLong( (int) ( offset & CHUNK_MASK ) );
+    }
+
+    /**
+     * Opens an existing index file.
+     *
+     * @param  file  file written by {@link #writeIndex writeIndex}
+     * @return  index
+     * @throws  IOException  if the file cannot be read or
+     *          is not an index file
+     */
+    public static PixelIndex open( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try {
+            byte[] magic = new byte[ MAGIC.length ];
+            raf.readFully( magic );
+            for ( int i = 0; i < MAGIC.length; i++ ) {
+                if ( magic[ i ] != MAGIC[ i ] ) {
+                    throw new IOException( "Not a pixel index file: " + file );
+                }
+            }
+            raf.readInt();
+            raf.readInt();
+            long nrow = raf.readLong();
+            long npix = raf.readLong();
+            long nref = raf.readLong();
+            long dirOffset = raf.readLong();
+            long sigOffset = raf.readLong();
+            if ( sigOffset != dirOffset + ( npix + 1 ) * 16 ||
+                 dirOffset != HEADER_SIZE + nref * 8 ) {
+                throw new IOException( "Corrupted pixel index file: " + file );
+            }
+            raf.seek( sigOffset );
+            String signature = raf.readUTF();
+            FileChannel chan = raf.getChannel();
+            int nchunk = (int) ( ( sigOffset + CHUNK_MASK ) >>> CHUNK_BITS );
+            ByteBuffer[] bufs = new ByteBuffer[ nchunk ];
+            for ( int ic = 0; ic < nchunk; ic++ ) {
+                long start = ( (long) ic ) << CHUNK_BITS;
+                long leng = Math.min( sigOffset - start, CHUNK_MASK + 1 );
+                MappedByteBuffer buf =
+                    chan.map( FileChannel.MapMode.READ_ONLY, start, leng );
+                bufs[ ic ] = buf;
+            }
+            return new PixelIndex( file, nrow, npix, nref, dirOffset,
+                                   signature, bufs );
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns a signature string characterising a match engine
+     * configuration.  Two engines with the same signature will
+     * generate the same bins for the same input tuples.
+     *
+     * @param  engine  match engine
+     * @param  extra   additional text, for instance describing how the
+     *                 tuples are derived from the table; may be null
+     * @return  signature string
+     */
+    public static String createSignature( MatchEngine engine, String extra ) {
+        StringBuffer sbuf = new StringBuffer();
+        sbuf.append( engine.toString() );
+        appendParams( sbuf, engine.getMatchParameters() );
+        appendParams( sbuf, engine.getTuningParameters() );
+        if ( extra != null ) {
+            sbuf.append( "; " )
+                .append( extra );
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Appends name=value pairs for some parameters to a buffer.
+     *
+     * @param  sbuf  buffer
+     * @param  params  parameters
+     */
+    private static void appendParams( StringBuffer sbuf,
+                                      DescribedValue[] params ) {
+        for ( int i = 0; i < params.length; i++ ) {
+            sbuf.append( "; " )
+                .append( params[ i ].getInfo().getName() )
+                .append( '=' )
+                .append( params[ i ].getValue() );
+        }
+    }
+
+    /**
+     * Bins all the rows of a table and writes the result as an
+     * index file.
+     * The bins generated by the match engine must be
+     * {@link java.lang.Number}s with integer values
+     * in the range 0 &lt;= bin &lt; <code>nbin</code>.
+     * Sorting is done in a number of passes over temporary files,
+     * each sorting in memory only as many records as fit in
+     * a quarter of the maximum heap size,
+     * so large tables do not require large amounts of memory.
+     * The index is written to a temporary file in the same directory
+     * as the destination file, and renamed when it is complete,
+     * so that an interrupted write does not leave a truncated index.
+     *
+     * @param  table  table to index; its rows are the engine's tuples
+     * @param  engine  match engine
+     * @param  nbin   upper bound on the bin indices; for HEALPix pixels
+     *                this is the number of pixels, 12*4^k
+     * @param  signature  signature string to store in the index
+     * @param  file   destination file
+     * @param  indicator  progress indicator, or null
+     */
+    public static void writeIndex( StarTable table, MatchEngine engine,
+                                   long nbin, String signature, File file,
+                                   ProgressIndicator indicator )
+            throws IOException, InterruptedException {
+        long budget = Runtime.getRuntime().maxMemory() / 4;
+        long sortLimit =
+            Math.min( Integer.MAX_VALUE,
+                      Math.max( 1024, budget / SORT_BYTES_PER_REF ) );
+        writeIndex( table, engine, nbin, signature, file, indicator,
+                    (int) sortLimit );
+    }
+
+    /**
+     * Writes an index file with a given limit on the number of
+     * records sorted in memory at once.
+     *
+     * @param  table  table to index; its rows are the engine's tuples
+     * @param  engine  match engine
+     * @param  nbin   upper bound on the bin indices
+     * @param  signature  signature string to store in the index
+     * @param  file   destination file
+     * @param  indicator  progress indicator, or null
+     * @param  sortLimit  maximum number of (bin, row) records
+     *                    to sort in memory at once
+     */
+    static void writeIndex( StarTable table, MatchEngine engine,
+                            long nbin, String signature, File file,
+                            ProgressIndicator indicator, int sortLimit )
+            throws IOException, InterruptedException {
+        if ( indicator == null ) {
+            indicator = new NullProgressIndicator();
+        }
+
+        /* Read the table, writing (bin, row) records to temporary files
+         * each of which covers a contiguous range of bins. */
+        long nrow0 = table.getRowCount();
+        int nbucket = nrow0 > 0
+                    ? (int) Math.min( MAX_BUCKETS, nrow0 / sortLimit + 1 )
+                    : MAX_BUCKETS;
+        nbucket = (int) Math.max( 1, Math.min( nbucket, nbin ) );
+        long bucketWidth = ( nbin + nbucket - 1 ) / nbucket;
+        File[] bucketFiles = new File[ nbucket ];
+        DataOutputStream[] bucketOuts = new DataOutputStream[ nbucket ];
+        File dirFile = null;
+        File tmpFile = null;
+        try {
+            long[] bucketCounts = new long[ nbucket ];
+            createBuckets( bucketFiles, bucketOuts );
+            ProgressRowSequence rseq =
+                new ProgressRowSequence( table, indicator,
+                                         "Binning rows for index" );
+            long nrow = 0;
+            try {
+                for ( long lrow = 0; rseq.nextProgress(); lrow++ ) {
+                    Object[] keys = engine.getBins( rseq.getRow() );
+                    for ( int ik = 0; ik < keys.length; ik++ ) {
+                        long pix = toBin( keys[ ik ], nbin );
+                        int ib = (int) ( pix / bucketWidth );
+                        bucketOuts[ ib ].writeLong( pix );
+                        bucketOuts[ ib ].writeLong( lrow );
+                        bucketCounts[ ib ]++;
+                    }
+                    nrow++;
+                }
+            }
+            finally {
+                rseq.close();
+            }
+            for ( int ib = 0; ib < nbucket; ib++ ) {
+                bucketOuts[ ib ].close();
+                bucketOuts[ ib ] = null;
+            }
+
+            /* Sort each bucket in turn, appending its row indices to
+             * the output file and its bin directory to a temporary file. */
+            dirFile = File.createTempFile( "pixdir", ".tmp" );
+            dirFile.deleteOnExit();
+            File dir = file.getAbsoluteFile().getParentFile();
+            tmpFile = File.createTempFile( "pixidx", ".tmp", dir );
+            tmpFile.deleteOnExit();
+            DataOutputStream dirOut = new DataOutputStream(
+                new BufferedOutputStream( new FileOutputStream( dirFile ),
+                                          64 * 1024 ) );
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream( new FileOutputStream( tmpFile ),
+                                          64 * 1024 ) );
+            BucketSorter sorter = new BucketSorter( out, dirOut, sortLimit );
+            try {
+                out.write( new byte[ HEADER_SIZE ] );
+                indicator.startStage( "Sorting index" );
+                for ( int ib = 0; ib < nbucket; ib++ ) {
+                    long pixLo = ib * bucketWidth;
+                    long pixHi = Math.min( nbin, pixLo + bucketWidth );
+                    sorter.addBucket( bucketFiles[ ib ], bucketCounts[ ib ],
+                                      pixLo, pixHi );
+                    indicator.setLevel( ( ib + 1.0 ) / nbucket );
+                }
+                indicator.endStage();
+                dirOut.writeLong( Long.MAX_VALUE );
+                dirOut.writeLong( sorter.nref_ );
+                dirOut.close();
+                copy( dirFile, out );
+                out.writeUTF( signature );
+            }
+            finally {
+                dirOut.close();
+                out.close();
+            }
+
+            /* Fill in the header. */
+            long nref = sorter.nref_;
+            long npix = sorter.npix_;
+            long dirOffset = HEADER_SIZE + nref * 8;
+            long sigOffset = dirOffset + ( npix + 1 ) * 16;
+            RandomAccessFile raf = new RandomAccessFile( tmpFile, "rw" );
+            try {
+                raf.write( MAGIC );
+                raf.writeInt( 0 );
+                raf.writeInt( 0 );
+                raf.writeLong( nrow );
+                raf.writeLong( npix );
+                raf.writeLong( nref );
+                raf.writeLong( dirOffset );
+                raf.writeLong( sigOffset );
+            }
+            finally {
+                raf.close();
+            }
+
+            /* Move the complete index into place.  Some platforms will
+             * not rename over an existing file. */
+            if ( ! tmpFile.renameTo( file ) &&
+                 ! ( file.delete() && tmpFile.renameTo( file ) ) ) {
+                throw new IOException( "Failed to rename " + tmpFile
+                                     + " to " + file );
+            }
+            tmpFile = null;
+            indicator.logMessage( "Wrote index " + file + ": "
+                                + nref + " row refs for " + nrow + " rows in "
+                                + npix + " bins" );
+        }
+        finally {
+            deleteBuckets( bucketFiles, bucketOuts );
+            if ( dirFile != null ) {
+                dirFile.delete();
+            }
+            if ( tmpFile != null ) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates temporary files for (bin, row) records, and opens
+     * output streams to them.
+     *
+     * @param  files  array to receive the new files
+     * @param  outs   array to receive output streams, one for each file
+     */
+    private static void createBuckets( File[] files, DataOutputStream[] outs )
+            throws IOException {
+        for ( int ib = 0; ib < files.length; ib++ ) {
+            files[ ib ] = File.createTempFile( "pixidx", ".tmp" );
+            files[ ib ].deleteOnExit();
+            OutputStream out = new FileOutputStream( files[ ib ] );
+            outs[ ib ] = new DataOutputStream(
+                new BufferedOutputStream( out, 64 * 1024 ) );
+        }
+    }
+
+    /**
+     * Closes any open streams and deletes any files created by
+     * {@link #createBuckets}.
+     *
+     * @param  files  bucket files, some of which may be null
+     * @param  outs   bucket output streams, some of which may be null
+     */
+    private static void deleteBuckets( File[] files, DataOutputStream[] outs )
+            throws IOException {
+        for ( int ib = 0; ib < files.length; ib++ ) {
+            if ( outs[ ib ] != null ) {
+                outs[ ib ].close();
+            }
+            if ( files[ ib ] != null ) {
+                files[ ib ].delete();
+            }
+        }
+    }
+
+    /**
+     * Converts a bin object to an integer bin index.
+     *
+     * @param  key  bin object from match engine
+     * @param  nbin  upper bound on bin index
+     * @return  bin index
+     * @throws  IllegalArgumentException  if the bin is not suitable
+     */
+    private static long toBin( Object key, long nbin ) {
+        if ( key instanceof Number ) {
+            long pix = ((Number) key).longValue();
+            if ( pix >= 0 && pix < nbin ) {
+                return pix;
+            }
+            else {
+                throw new IllegalArgumentException( "Bin " + pix
+                                                  + " out of range 0.."
+                                                  + ( nbin - 1 ) );
+            }
+        }
+        else {
+            throw new IllegalArgumentException( "Match bins are not integers"
+                                              + " - can't index" );
+        }
+    }
+
+    /**
+     * Reads (bin, row) records from a temporary file.
+     *
+     * @param  file  file
+     * @param  pixs  array to receive bin indices
+     * @param  rows  array to receive row indices
+     */
+    private static void readBucket( File file, long[] pixs, long[] rows )
+            throws IOException {
+        DataInputStream in = openBucket( file );
+        try {
+            int n = pixs.length;
+            for ( int i = 0; i < n; i++ ) {
+                pixs[ i ] = in.readLong();
+                rows[ i ] = in.readLong();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens a temporary file of (bin, row) records for reading.
+     *
+     * @param  file  file
+     * @return  input stream
+     */
+    private static DataInputStream openBucket( File file )
+            throws IOException {
+        return new DataInputStream(
+            new BufferedInputStream( new FileInputStream( file ),
+                                     64 * 1024 ) );
+    }
+
+    /**
+     * Copies the content of a file to an output stream.
+     *
+     * @param  file  input file
+     * @param  out   destination stream
+     */
+    private static void copy( File file, OutputStream out )
+            throws IOException {
+        InputStream in = new FileInputStream( file );
+        try {
+            byte[] buf = new byte[ 64 * 1024 ];
+            for ( int n; ( n = in.read( buf ) ) >= 0; ) {
+                out.write( buf, 0, n );
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sorts a pair of parallel arrays by the values of the first.
+     * The sort is stable, so since bucket records are written in
+     * row order, rows within each bin end up sorted too.
+     *
+     * @param  keys  sort keys
+     * @param  values  values to keep aligned with keys
+     */
+    static void sortPairs( long[] keys, long[] values ) {
+        int n = keys.length;
+        long[] keys1 = new long[ n ];
+        long[] values1 = new long[ n ];
+        long[] ka = keys;
+        long[] va = values;
+        long[] kb = keys1;
+        long[] vb = values1;
+        for ( int width = 1; width < n; width *= 2 ) {
+            for ( int lo = 0; lo < n; lo += 2 * width ) {
+                int mid = Math.min( lo + width, n );
+                int hi = Math.min( lo + 2 * width, n );
+                int i = lo;
+                int j = mid;
+                for ( int k = lo; k < hi; k++ ) {
+                    if ( i < mid && ( j >= hi || ka[ i ] <= ka[ j ] ) ) {
+                        kb[ k ] = ka[ i ];
+                        vb[ k ] = va[ i++ ];
+                    }
+                    else {
+                        kb[ k ] = ka[ j ];
+                        vb[ k ] = va[ j++ ];
+                    }
+                }
+            }
+            long[] kt = ka;
+            ka = kb;
+            kb = kt;
+            long[] vt = va;
+            va = vb;
+            vb = vt;
+        }
+        if ( ka != keys ) {
+            System.arraycopy( ka, 0, keys, 0, n );
+            System.arraycopy( va, 0, values, 0, n );
+        }
+    }
+
+    /**
+     * Writes the sorted row references and bin directory for
+     * buckets of (bin, row) records.
+     * Buckets too large to sort in memory are split by bin range
+     * into smaller ones.
+     */
+    private static class BucketSorter {
+        final DataOutputStream out_;
+        final DataOutputStream dirOut_;
+        final int sortLimit_;
+        long nref_;
+        long npix_;
+        long lastPix_;
+
+        /**
+         * Constructor.
+         *
+         * @param  out  destination stream for row indices
+         * @param  dirOut  destination stream for the bin directory
+         * @param  sortLimit  maximum number of records to sort in memory
+         */
+        BucketSorter( DataOutputStream out, DataOutputStream dirOut,
+                      int sortLimit ) {
+            out_ = out;
+            dirOut_ = dirOut;
+            sortLimit_ = Math.max( 1, sortLimit );
+            lastPix_ = -1;
+        }
+
+        /**
+         * Writes the records from a bucket file, which is deleted.
+         * Buckets must be added in order of bin range.
+         *
+         * @param  file  file of (bin, row) records in row order
+         * @param  count  number of records in file
+         * @param  pixLo  lower bound (inclusive) of bins in file
+         * @param  pixHi  upper bound (exclusive) of bins in file
+         */
+        void addBucket( File file, long count, long pixLo, long pixHi )
+                throws IOException {
+
+            /* Small enough to sort in memory. */
+            if ( count <= sortLimit_ ) {
+                int n = (int) count;
+                long[] pixs = new long[ n ];
+                long[] rows = new long[ n ];
+                readBucket( file, pixs, rows );
+                file.delete();
+                sortPairs( pixs, rows );
+                for ( int i = 0; i < n; i++ ) {
+                    addRef( pixs[ i ], rows[ i ] );
+                }
+            }
+
+            /* A single bin; the records are already in row order. */
+            else if ( pixHi - pixLo <= 1 ) {
+                DataInputStream in = openBucket( file );
+                try {
+                    for ( long i = 0; i < count; i++ ) {
+                        long pix = in.readLong();
+                        addRef( pix, in.readLong() );
+                    }
+                }
+                finally {
+                    in.close();
+                }
+                file.delete();
+            }
+
+            /* Otherwise split by bin range and deal with the parts
+             * in turn. */
+            else {
+                int nsub =
+                    (int) Math.min( Math.min( MAX_BUCKETS, pixHi - pixLo ),
+                                    count / sortLimit_ + 1 );
+                long width = ( pixHi - pixLo + nsub - 1 ) / nsub;
+                File[] subFiles = new File[ nsub ];
+                DataOutputStream[] subOuts = new DataOutputStream[ nsub ];
+                try {
+                    long[] subCounts = new long[ nsub ];
+                    createBuckets( subFiles, subOuts );
+                    DataInputStream in = openBucket( file );
+                    try {
+                        for ( long i = 0; i < count; i++ ) {
+                            long pix = in.readLong();
+                            long row = in.readLong();
+                            int is = (int) ( ( pix - pixLo ) / width );
+                            subOuts[ is ].writeLong( pix );
+                            subOuts[ is ].writeLong( row );
+                            subCounts[ is ]++;
+                        }
+                    }
+                    finally {
+                        in.close();
+                    }
+                    file.delete();
+                    for ( int is = 0; is < nsub; is++ ) {
+                        subOuts[ is ].close();
+                        subOuts[ is ] = null;
+                    }
+                    for ( int is = 0; is < nsub; is++ ) {
+                        long lo = pixLo + is * width;
+                        addBucket( subFiles[ is ], subCounts[ is ], lo,
+                                   Math.min( pixHi, lo + width ) );
+                    }
+                }
+                finally {
+                    deleteBuckets( subFiles, subOuts );
+                }
+            }
+        }
+
+        /**
+         * Writes a single row reference.
+         * References must be added in order of bin, and within each
+         * bin in order of row.
+         *
+         * @param  pix  bin index
+         * @param  row  row index
+         */
+        private void addRef( long pix, long row ) throws IOException {
+            if ( pix != lastPix_ ) {
+                dirOut_.writeLong( pix );
+                dirOut_.writeLong( nref_ );
+                lastPix_ = pix;
+                npix_++;
+            }
+            out_.writeLong( row );
+            nref_++;
+        }
+    }
+}
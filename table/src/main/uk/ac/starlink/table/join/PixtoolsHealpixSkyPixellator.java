@@ -64,6 +64,26 @@ public class PixtoolsHealpixSkyPixellator extends HealpixSkyPixellator {
         nside_ = 1 << k;
     }
 
+    /**
+     * Indicates whether this pixellator uses the NESTED scheme.
+     *
+     * @return  true for NESTED, false for RING
+     */
+    public boolean isNested() {
+        return scheme_ == 1;
+    }
+
+    /**
+     * Returns the NESTED scheme index of a pixel returned by
+     * {@link #getPixels}, at the currently configured resolution.
+     *
+     * @param  ipix  pixel index in this pixellator's scheme
+     * @return  pixel index in the NESTED scheme
+     */
+    public long toNestedIndex( long ipix ) {
+        return isNested() ? ipix : pixTools_.ring2nest( nside_, ipix );
+    }
+
     /**
      * Determines a default value to use for the HEALPix k parameter
      * based on a given scale.
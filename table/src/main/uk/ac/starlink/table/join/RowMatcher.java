@@ -12,12 +12,18 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import uk.ac.starlink.table.DescribedValue;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.ValueInfo;
+import uk.ac.starlink.table.WrapperStarTable;
 
 /**
  * Performs matching on the rows of one or more tables.
@@ -40,9 +46,21 @@ public class RowMatcher {
     private final MatchEngine engine;
     private final StarTable[] tables;
     private final int nTable;
-    private ProgressIndicator indicator = new NullProgressIndicator();
+    private ProgressIndicator baseIndicator = new NullProgressIndicator();
+    private ProgressIndicator indicator = baseIndicator;
+    private MatchMetrics metrics;
+    private int parallelism = 1;
+    private long compactThreshold = COMPACT_THRESHOLD;
+    private final PixelIndex[] pixelIndexes;
+    private boolean adaptiveSampling = true;
     private long startTime;
 
+    /** Number of rows in each block passed to a worker thread. */
+    private static final int BLOCK_SIZE = 1024;
+
+    /** Default total row count above which compact link sets are used. */
+    public static final long COMPACT_THRESHOLD = 1000000;
+
     /**
      * Constructs a new matcher with match characteristics defined by
      * a given matching engine.
@@ -54,6 +72,7 @@ public class RowMatcher {
         this.engine = engine;
         this.tables = tables;
         this.nTable = tables.length;
+        this.pixelIndexes = new PixelIndex[ nTable ];
     }
 
     /**
@@ -62,7 +81,8 @@ public class RowMatcher {
      * @param  indicator  new indicator
      */
     public void setIndicator( ProgressIndicator indicator ) {
-        this.indicator = indicator;
+        this.baseIndicator = indicator;
+        updateIndicator();
     }
 
     /**
@@ -71,19 +91,141 @@ public class RowMatcher {
      * @return   indicator
      */
     public ProgressIndicator getIndicator() {
-        return indicator;
+        return baseIndicator;
+    }
+
+    /**
+     * Sets an object to which performance measurements will be reported
+     * during subsequent matches.
+     *
+     * @param  metrics  metrics accumulator, or null for no measurements
+     */
+    public void setMetrics( MatchMetrics metrics ) {
+        this.metrics = metrics;
+        updateIndicator();
+    }
+
+    /**
+     * Returns the object to which performance measurements are reported.
+     *
+     * @return  metrics accumulator, or null
+     */
+    public MatchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the number of threads used for matching.
+     * If the value is greater than 1, then the binning and scoring
+     * phases of pair matches will be distributed between that number
+     * of worker threads.  The result is the same as for single-threaded
+     * operation; the only difference is in speed.
+     * In multi-threaded mode the match engine's
+     * {@link MatchEngine#getBins getBins} and
+     * {@link MatchEngine#matchScore matchScore} methods
+     * will be called concurrently, so they must be thread-safe.
+     * The default value is 1.
+     *
+     * @param  parallelism  number of worker threads, at least 1
+     */
+    public void setParallelism( int parallelism ) {
+        if ( parallelism < 1 ) {
+            throw new IllegalArgumentException( "Parallelism " + parallelism
+                                              + " < 1" );
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads used for matching.
+     *
+     * @return  worker thread count
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the total number of input rows at or above which this matcher
+     * stores links in a compact form rather than as objects.
+     * The compact form uses much less memory for pair matches.
+     * A value of zero means always use compact storage, and
+     * <code>Long.MAX_VALUE</code> means never use it.
+     *
+     * @param  nrow  total row count threshold for compact link storage
+     */
+    public void setCompactThreshold( long nrow ) {
+        compactThreshold = nrow;
+    }
+
+    /**
+     * Returns the total number of input rows at or above which this matcher
+     * stores links in a compact form.
+     *
+     * @return   total row count threshold for compact link storage
+     */
+    public long getCompactThreshold() {
+        return compactThreshold;
+    }
+
+    /**
+     * Determines whether an adaptive match engine is supplied with a
+     * sample of this matcher's tables at the start of each match.
+     * This is true by default.  It should be set false if the engine's
+     * bins must stay the same as those used earlier, for instance
+     * when this matcher is matching one of several groups of rows
+     * that were partitioned according to those bins.
+     *
+     * @param  adaptiveSampling  true to sample the tables for
+     *                           adaptive binning before each match
+     */
+    void setAdaptiveSampling( boolean adaptiveSampling ) {
+        this.adaptiveSampling = adaptiveSampling;
+    }
+
+    /**
+     * Supplies a pre-built bin index for one of this matcher's tables.
+     * If present, pair matches will use the index in place of
+     * binning that table's rows, and will prefer it as the table
+     * accessed randomly, so that only the rows in bins touched by
+     * the other table are read.
+     * The index must have been written for the same table using
+     * a match engine which generates the same bins as this matcher's;
+     * only the row count can be checked here.
+     *
+     * @param  itable  index of table
+     * @param  index   index for table <code>itable</code>,
+     *                 or null to bin the rows as usual
+     * @throws  IllegalArgumentException  if the index is for a table
+     *          with a different row count
+     */
+    public void setPixelIndex( int itable, PixelIndex index ) {
+        if ( index != null &&
+             index.getTableRowCount() != tables[ itable ].getRowCount() ) {
+            throw new IllegalArgumentException(
+                "Index row count " + index.getTableRowCount()
+              + " does not match table " + ( itable + 1 ) + " row count "
+              + tables[ itable ].getRowCount() );
+        }
+        pixelIndexes[ itable ] = index;
     }
 
     /**
      * Constructs a new empty LinkSet for use by this matcher.
-     * The current implementation returns one based on a SortedSet,
-     * but future implementations may provide the option of LinkSet
-     * implementations backed by disk.
+     * For small inputs the returned set is based on a SortedSet;
+     * if the total row count of the input tables reaches the
+     * {@link #setCompactThreshold compact threshold}, an implementation
+     * which stores pairs in primitive arrays is used instead.
      *
      * @return  new LinkSet
      */
     public LinkSet createLinkSet() {
-        return new TreeSetLinkSet();
+        long nrow = 0;
+        for ( int i = 0; i < nTable; i++ ) {
+            nrow += Math.max( 0, tables[ i ].getRowCount() );
+        }
+        return nrow >= compactThreshold ? (LinkSet) new CompactLinkSet()
+                                        : (LinkSet) new TreeSetLinkSet();
     }
 
     /**
@@ -102,10 +244,16 @@ public class RowMatcher {
             throw new IllegalStateException( "findPairMatches only makes sense"
                                            + " for 2 tables" );
         }
-        startMatch();
-        LinkSet pairs = pairMode.findPairMatches( this );
-        endMatch();
-        return pairs;
+        boolean done = false;
+        try {
+            startMatch();
+            LinkSet pairs = pairMode.findPairMatches( this );
+            done = true;
+            return pairs;
+        }
+        finally {
+            endMatch( done );
+        }
     }
 
     /**
@@ -138,6 +286,22 @@ public class RowMatcher {
             throw new IllegalArgumentException( "Neither table random-access" );
         }
 
+        /* If a random-access table has a pre-built index, use that as
+         * table R.  No range calculation is done, since that would
+         * require a scan of the indexed table; rows outside the
+         * range cannot match in any case. */
+        else if ( isIndexed( index1 ) || isIndexed( index2 ) ) {
+            if ( isIndexed( index1 ) ) {
+                indexR = index1;
+                indexS = index2;
+            }
+            else {
+                indexR = index2;
+                indexS = index1;
+            }
+            range = new NdRange( ncol );
+        }
+
         /* If only one table has random access, use that as table R. */
         else if ( ! tables[ index1 ].isRandom() ) {
             assert tables[ index2 ].isRandom();
@@ -183,6 +347,39 @@ public class RowMatcher {
         return scanForPairs( indexR, indexS, range, bestOnly );
     }
 
+    /**
+     * Indicates whether a table has a usable pre-built bin index.
+     *
+     * @param  itable  table index
+     * @return  true iff table <code>itable</code> is random-access and
+     *          has a pixel index
+     */
+    private boolean isIndexed( int itable ) {
+        return pixelIndexes[ itable ] != null && tables[ itable ].isRandom();
+    }
+
+    /**
+     * Returns a binner based on the pre-built index for a given table,
+     * if there is one, and logs the fact.
+     *
+     * @param  itable  table index
+     * @return  read-only binner, or null if there is no index
+     */
+    private LongBinner getIndexBinner( int itable ) {
+        PixelIndex index = pixelIndexes[ itable ];
+        if ( index == null ) {
+            return null;
+        }
+        else {
+            indicator.logMessage( "Using bin index " + index.getFile()
+                                + " for table " + ( itable + 1 ) );
+            indicator.logMessage( index.getRefCount() + " row refs for "
+                                + index.getTableRowCount() + " rows in "
+                                + index.getBinCount() + " bins" );
+            return index.createBinner();
+        }
+    }
+
     /**
      * Processes one table using random access and another using sequential
      * access within a given range to locate matched inter-table pairs.
@@ -198,8 +395,102 @@ public class RowMatcher {
     LinkSet scanForPairs( int indexR, int indexS, NdRange range,
                           boolean bestOnly )
             throws IOException, InterruptedException {
+        if ( parallelism > 1 ) {
+            return scanForPairsParallel( indexR, indexS, range, bestOnly );
+        }
+
+        /* Bin the row indices for the random table, unless that has
+         * already been done.  If binning is done here, prepare
+         * primitive vector representations of the binned rows
+         * at the same time where possible. */
+        VectorScorer scorer = engine.getVectorScorer();
+        double[] rvecs = null;
+        LongBinner binner = getIndexBinner( indexR );
+        if ( binner == null ) {
+            rvecs = createVectorStore( indexR, scorer );
+            binner = binRandomRows( indexR, range, scorer, rvecs );
+        }
+        double[] svec = rvecs == null
+                      ? null
+                      : new double[ scorer.getVectorLength() ];
+
+        /* Scan the rows for the sequential table. */
+        try {
+            LinkSet linkSet = createLinkSet();
+            ProgressRowSequence sseq =
+                new ProgressRowSequence( tables[ indexS ], indicator,
+                                         "Scanning rows for table "
+                                       + ( indexS + 1 ) );
+            try {
+                for ( long isrow = 0; sseq.nextProgress(); isrow++ ) {
+                    Object[] srowData = sseq.getRow();
+                    if ( range.isInside( srowData ) ) {
+                        List linkList =
+                            matchScannedRow( isrow, srowData, indexS, indexR,
+                                             tables[ indexR ], binner,
+                                             scorer, rvecs, svec, bestOnly );
+
+                        /* Add matched links to output set. */
+                        for ( Iterator it = linkList.iterator();
+                              it.hasNext(); ) {
+                            RowLink2 pairLink = (RowLink2) it.next();
+                            assert ! linkSet.containsLink( pairLink );
+                            linkSet.addLink( pairLink );
+                        }
+                    }
+                }
+            }
+            finally {
+                sseq.close();
+            }
+            return linkSet;
+        }
+        finally {
+            binner.close();
+        }
+    }
+
+    /**
+     * Returns an array suitable for storing the vector representations
+     * of all the rows of a table, if that is possible and sensible.
+     *
+     * @param  itable  table index
+     * @param  scorer  vector scorer, or null
+     * @return  array with one vector for each row of table
+     *          <code>itable</code>, or null
+     */
+    private double[] createVectorStore( int itable, VectorScorer scorer ) {
+        if ( scorer == null ) {
+            return null;
+        }
+        long nel = tables[ itable ].getRowCount() * scorer.getVectorLength();
+        long maxMem = Runtime.getRuntime().maxMemory();
+        if ( nel >= 0 && nel <= Integer.MAX_VALUE &&
+             nel * 8 <= maxMem / 4 ) {
+            return new double[ (int) nel ];
+        }
+        else {
+            indicator.logMessage( "Too many rows in table " + ( itable + 1 )
+                                + " for vector scoring" );
+            return null;
+        }
+    }
 
-        /* Bin the row indices for the random table. */
+    /**
+     * Bins the row indices of a table within a given range.
+     * Optionally the vector representation of each binned row is
+     * recorded as well.
+     *
+     * @param  indexR  index of table to bin
+     * @param  range   range outside which rows can be ignored
+     * @param  scorer  vector scorer, or null
+     * @param  rvecs   array to populate with one vector per table row,
+     *                 or null
+     * @return  populated binner
+     */
+    private LongBinner binRandomRows( int indexR, NdRange range,
+                                      VectorScorer scorer, double[] rvecs )
+            throws IOException, InterruptedException {
         ProgressRowSequence rseq =
             new ProgressRowSequence( tables[ indexR ], indicator,
                                      "Binning rows for table "
@@ -209,6 +500,7 @@ public class RowMatcher {
         long nrow = 0;
         long nref = 0;
         long nexclude = 0;
+        boolean done = false;
         try {
             for ( long lrow = 0; rseq.nextProgress(); lrow++ ) {
                 Object[] row = rseq.getRow();
@@ -219,6 +511,11 @@ public class RowMatcher {
                         binner.addItem( keys[ ikey ], lrow );
                     }
                     nref += nkey;
+                    if ( rvecs != null ) {
+                        scorer.toVector( row, rvecs,
+                                         (int) lrow
+                                         * scorer.getVectorLength() );
+                    }
                 }
                 else {
                     nexclude++;
@@ -226,85 +523,404 @@ public class RowMatcher {
                 nrow++;
             }
             assert nrow == tables[ indexR ].getRowCount();
+            done = true;
         }
         finally {
             rseq.close();
+            if ( ! done ) {
+                binner.close();
+            }
         }
         if ( nexclude > 0 ) {
             indicator.logMessage( nexclude + "/" + nrow + " rows excluded "
                                 + "(out of match region)" );
         }
         long nbin = binner.getBinCount();
+        recordBins( binner );
         indicator.logMessage( nref + " row refs for " + nrow + " rows in "
                             + nbin + " bins" );
         indicator.logMessage( "(average bin occupancy " +
                               ( (float) nref / (float) nbin ) + ")" );
+        return binner;
+    }
 
-        /* Scan the rows for the sequential table. */
-        LinkSet linkSet = createLinkSet();
-        ProgressRowSequence sseq =
-            new ProgressRowSequence( tables[ indexS ], indicator,
-                                     "Scanning rows for table "
-                                   + ( indexS + 1 ) );
+    /**
+     * Multi-threaded implementation of {@link #scanForPairs}.
+     * Rows are read from both tables on the calling thread in blocks,
+     * and the blocks are passed to a pool of worker threads for
+     * bin calculation and match scoring.
+     * Results are consumed in the order in which the blocks were read,
+     * so the output is identical to that of the single-threaded
+     * implementation.
+     *
+     * @param  indexR  index of table which will be accessed randomly
+     * @param  indexS  index of table which will be accessed sequentially
+     * @param  range   range outside which pairs can be ignored
+     * @param  bestOnly  if false, all matches will be included in the result;
+     *         if true, for each row in the sequential table, only the best
+     *         match in the random table will be included
+     * @return  links representing pair matches
+     */
+    private LinkSet scanForPairsParallel( final int indexR, final int indexS,
+                                          final NdRange range,
+                                          final boolean bestOnly )
+            throws IOException, InterruptedException {
+        ExecutorService executor = createExecutor();
+        LongBinner binner = null;
         try {
-            for ( long isrow = 0; sseq.nextProgress(); isrow++ ) {
-                Object[] srowData = sseq.getRow();
-                if ( range.isInside( srowData ) ) {
 
-                    /* Identify rows from table R which may match table S. */
-                    Object[] keys = engine.getBins( srowData );
-                    int nkey = keys.length;
-                    Set rrowSet = new HashSet();
-                    for ( int ikey = 0; ikey < nkey; ikey++ ) {
-                        long[] rrows = binner.getLongs( keys[ ikey ] );
-                        if ( rrows != null ) {
-                            for ( int ir = 0; ir < rrows.length; ir++ ) {
-                                rrowSet.add( new Long( rrows[ ir ] ) );
+            /* Bin the row indices for the random table, unless that has
+             * already been done. */
+            final VectorScorer scorer = engine.getVectorScorer();
+            double[] vecs = null;
+            binner = getIndexBinner( indexR );
+            if ( binner == null ) {
+                vecs = createVectorStore( indexR, scorer );
+                binner = binRandomRowsParallel( executor, indexR, range,
+                                                scorer, vecs );
+            }
+            final double[] rvecs = vecs;
+
+            /* Scan the rows for the sequential table.  The binner is
+             * read-only from here on, so can be shared between threads.
+             * Random access to the binned table is serialized, since
+             * StarTable implementations are not in general thread-safe. */
+            final LongBinner rbinner = binner;
+            final StarTable tableR = new WrapperStarTable( tables[ indexR ] ) {
+                public synchronized Object[] getRow( long irow )
+                        throws IOException {
+                    return super.getRow( irow );
+                }
+            };
+            LinkSet linkSet = createLinkSet();
+            ProgressRowSequence sseq =
+                new ProgressRowSequence( tables[ indexS ], indicator,
+                                         "Scanning rows for table "
+                                       + ( indexS + 1 ) );
+            OrderedTaskQueue scanQueue =
+                new OrderedTaskQueue( executor, 2 * parallelism );
+            try {
+                long isrow0 = 0;
+                Object[][] rows;
+                while ( ( rows = readBlock( sseq ) ) != null ) {
+                    if ( scanQueue.isFull() ) {
+                        addLinks( (List) scanQueue.takeResult(), linkSet );
+                    }
+                    final Object[][] srows = rows;
+                    final long is0 = isrow0;
+                    scanQueue.submit( new Callable() {
+                        public Object call() throws IOException {
+                            List links = new ArrayList();
+                            double[] svec =
+                                rvecs == null
+                                    ? null
+                                    : new double[ scorer.getVectorLength() ];
+                            int nr = srows.length;
+                            for ( int ir = 0; ir < nr; ir++ ) {
+                                Object[] srowData = srows[ ir ];
+                                if ( range.isInside( srowData ) ) {
+                                    links.addAll(
+                                        matchScannedRow( is0 + ir, srowData,
+                                                         indexS, indexR,
+                                                         tableR, rbinner,
+                                                         scorer, rvecs, svec,
+                                                         bestOnly ) );
+                                }
                             }
+                            return links;
                         }
-                    }
-                    long[] rrows = new long[ rrowSet.size() ];
-                    int ir = 0;
-                    for ( Iterator it = rrowSet.iterator(); it.hasNext(); ) {
-                        rrows[ ir++ ] = ((Long) it.next()).longValue();
-                    }
-                    Arrays.sort( rrows );
-
-                    /* Score and accumulate matched links. */
-                    List linkList = new ArrayList( 1 );
-                    double bestScore = Double.MAX_VALUE;
-                    for ( ir = 0; ir < rrows.length; ir++ ) {
-                        long irrow = rrows[ ir ];
-                        Object[] rrowData = tables[ indexR ].getRow( irrow );
-                        double score = engine.matchScore( srowData, rrowData );
-                        if ( score >= 0 &&
-                             ( ! bestOnly || score < bestScore ) ) {
-                            RowRef rref = new RowRef( indexR, irrow );
-                            RowRef sref = new RowRef( indexS, isrow );
-                            RowLink2 pairLink = new RowLink2( rref, sref );
-                            pairLink.setScore( score );
-                            if ( bestOnly ) {
-                                bestScore = score;
-                                linkList.clear();
+                    } );
+                    isrow0 += rows.length;
+                }
+                while ( ! scanQueue.isEmpty() ) {
+                    addLinks( (List) scanQueue.takeResult(), linkSet );
+                }
+            }
+            finally {
+                scanQueue.cancel();
+                sseq.close();
+            }
+            return linkSet;
+        }
+        finally {
+            executor.shutdownNow();
+            if ( binner != null ) {
+                binner.close();
+            }
+        }
+    }
+
+    /**
+     * Multi-threaded implementation of {@link #binRandomRows}.
+     *
+     * @param  executor  executor service for worker threads
+     * @param  indexR  index of table to bin
+     * @param  range   range outside which rows can be ignored
+     * @param  scorer  vector scorer, or null
+     * @param  rvecs   array to populate with one vector per table row,
+     *                 or null
+     * @return  populated binner
+     */
+    private LongBinner binRandomRowsParallel( ExecutorService executor,
+                                              int indexR,
+                                              final NdRange range,
+                                              final VectorScorer scorer,
+                                              final double[] rvecs )
+            throws IOException, InterruptedException {
+        /* Bin calculation is done by the worker threads, but the binner
+         * itself is only touched from this thread. */
+        ProgressRowSequence rseq =
+            new ProgressRowSequence( tables[ indexR ], indicator,
+                                     "Binning rows for table "
+                                     + ( indexR + 1 ) );
+        LongBinner binner =
+            Binners.createLongBinner( tables[ indexR ].getRowCount() );
+        OrderedTaskQueue binQueue =
+            new OrderedTaskQueue( executor, 2 * parallelism );
+        BinCounts counts = new BinCounts();
+        boolean done = false;
+        try {
+            long irow0 = 0;
+            Object[][] rows;
+            while ( ( rows = readBlock( rseq ) ) != null ) {
+                if ( binQueue.isFull() ) {
+                    addBinnedBlock( (Object[][]) binQueue.takeResult(),
+                                    binner, counts );
+                }
+                final Object[][] rows0 = rows;
+                final long ir0 = irow0;
+                binQueue.submit( new Callable() {
+                    public Object call() {
+                        int nr = rows0.length;
+                        Object[][] keys = new Object[ nr ][];
+                        for ( int ir = 0; ir < nr; ir++ ) {
+                            Object[] row = rows0[ ir ];
+                            if ( range.isInside( row ) ) {
+                                keys[ ir ] = engine.getBins( row );
+                                if ( rvecs != null ) {
+                                    int vlen = scorer.getVectorLength();
+                                    scorer.toVector( row, rvecs,
+                                                     (int) ( ir0 + ir )
+                                                     * vlen );
+                                }
                             }
-                            linkList.add( pairLink );
-                            assert ( ! bestOnly ) || ( linkList.size() == 1 );
                         }
+                        return keys;
                     }
+                } );
+                irow0 += rows.length;
+            }
+            while ( ! binQueue.isEmpty() ) {
+                addBinnedBlock( (Object[][]) binQueue.takeResult(),
+                                binner, counts );
+            }
+            assert counts.nrow_ == tables[ indexR ].getRowCount();
+            done = true;
+        }
+        finally {
+            binQueue.cancel();
+            rseq.close();
+            if ( ! done ) {
+                binner.close();
+            }
+        }
+        if ( counts.nexclude_ > 0 ) {
+            indicator.logMessage( counts.nexclude_ + "/" + counts.nrow_
+                                + " rows excluded "
+                                + "(out of match region)" );
+        }
+        long nbin = binner.getBinCount();
+        recordBins( binner );
+        indicator.logMessage( counts.nref_ + " row refs for "
+                            + counts.nrow_ + " rows in "
+                            + nbin + " bins" );
+        indicator.logMessage( "(average bin occupancy " +
+                              ( (float) counts.nref_ / (float) nbin )
+                            + ")" );
+        return binner;
+    }
 
-                    /* Add matched links to output set. */
-                    for ( Iterator it = linkList.iterator(); it.hasNext(); ) {
-                        RowLink2 pairLink = (RowLink2) it.next();
-                        assert ! linkSet.containsLink( pairLink );
-                        linkSet.addLink( pairLink );
-                    }
+    /**
+     * Identifies and scores the rows of a binned random-access table
+     * which match a given row of a sequentially-scanned table.
+     * This method does not modify any state of this matcher,
+     * and may be called concurrently from multiple threads
+     * as long as the supplied table's <code>getRow</code> method
+     * is thread-safe.
+     *
+     * @param  isrow  row index of the scanned row in table S
+     * @param  srowData  tuple for the scanned row
+     * @param  indexS  index of table which is accessed sequentially
+     * @param  indexR  index of table which is accessed randomly
+     * @param  tableR  random-access table supplying the data for table R
+     * @param  binner  binner containing row indices of table R;
+     *                 it is not modified
+     * @param  scorer  vector scorer, used only if <code>rvecs</code>
+     *                 is non-null
+     * @param  rvecs   vector representations of all the binned rows
+     *                 of table R, or null to score using row data
+     * @param  svec    workspace for the vector representation of the
+     *                 scanned row; ignored if <code>rvecs</code> is null
+     * @param  bestOnly  if true, only the best match will be returned
+     * @return  list of {@link RowLink2} objects representing matches
+     *          for the scanned row, ordered by table R row index
+     */
+    private List matchScannedRow( long isrow, Object[] srowData,
+                                  int indexS, int indexR, StarTable tableR,
+                                  LongBinner binner, VectorScorer scorer,
+                                  double[] rvecs, double[] svec,
+                                  boolean bestOnly )
+            throws IOException {
+
+        /* Identify rows from table R which may match table S.
+         * Since a row may appear in more than one bin, candidates are
+         * sorted and duplicates skipped below. */
+        Object[] keys = engine.getBins( srowData );
+        int nkey = keys.length;
+        long[][] keyRows = new long[ nkey ][];
+        int ncand = 0;
+        for ( int ikey = 0; ikey < nkey; ikey++ ) {
+            keyRows[ ikey ] = binner.getLongs( keys[ ikey ] );
+            if ( keyRows[ ikey ] != null ) {
+                ncand += keyRows[ ikey ].length;
+            }
+        }
+        long[] rrows = new long[ ncand ];
+        int icand = 0;
+        for ( int ikey = 0; ikey < nkey; ikey++ ) {
+            long[] krows = keyRows[ ikey ];
+            if ( krows != null ) {
+                System.arraycopy( krows, 0, rrows, icand, krows.length );
+                icand += krows.length;
+            }
+        }
+        if ( nkey > 1 ) {
+            Arrays.sort( rrows );
+        }
+
+        /* Prepare for scoring. */
+        int vlen = 0;
+        if ( rvecs != null ) {
+            vlen = scorer.getVectorLength();
+            scorer.toVector( srowData, svec, 0 );
+        }
+
+        /* Score and accumulate matched links. */
+        List linkList = new ArrayList( 1 );
+        double bestScore = Double.MAX_VALUE;
+        long ntest = 0;
+        long naccept = 0;
+        for ( int ir = 0; ir < ncand; ir++ ) {
+            long irrow = rrows[ ir ];
+            if ( ir > 0 && irrow == rrows[ ir - 1 ] ) {
+                continue;
+            }
+            double score =
+                rvecs == null
+                    ? engine.matchScore( srowData, tableR.getRow( irrow ) )
+                    : scorer.score( svec, 0, rvecs, (int) irrow * vlen );
+            ntest++;
+            if ( score >= 0 ) {
+                naccept++;
+            }
+            if ( score >= 0 &&
+                 ( ! bestOnly || score < bestScore ) ) {
+                RowRef rref = new RowRef( indexR, irrow );
+                RowRef sref = new RowRef( indexS, isrow );
+                RowLink2 pairLink = new RowLink2( rref, sref );
+                pairLink.setScore( score );
+                if ( bestOnly ) {
+                    bestScore = score;
+                    linkList.clear();
                 }
+                linkList.add( pairLink );
+                assert ( ! bestOnly ) || ( linkList.size() == 1 );
             }
         }
-        finally {
-            sseq.close();
+        if ( metrics != null ) {
+            metrics.addPairs( ntest, naccept );
+        }
+        return linkList;
+    }
+
+    /**
+     * Adds the bin keys calculated for a block of rows to a binner.
+     *
+     * @param  keys  per-row array of bin keys, with a null element for
+     *               rows which are outside the match region
+     * @param  binner  binner to populate
+     * @param  counts  running totals, updated by this method
+     */
+    private static void addBinnedBlock( Object[][] keys, LongBinner binner,
+                                        BinCounts counts ) {
+        int nr = keys.length;
+        for ( int ir = 0; ir < nr; ir++ ) {
+            long lrow = counts.nrow_++;
+            Object[] rowKeys = keys[ ir ];
+            if ( rowKeys != null ) {
+                int nkey = rowKeys.length;
+                for ( int ikey = 0; ikey < nkey; ikey++ ) {
+                    binner.addItem( rowKeys[ ikey ], lrow );
+                }
+                counts.nref_ += nkey;
+            }
+            else {
+                counts.nexclude_++;
+            }
+        }
+    }
+
+    /**
+     * Adds a list of pair links to a link set.
+     *
+     * @param  linkList  list of {@link RowLink2} objects
+     * @param  linkSet   destination link set
+     */
+    private static void addLinks( List linkList, LinkSet linkSet ) {
+        for ( Iterator it = linkList.iterator(); it.hasNext(); ) {
+            RowLink2 pairLink = (RowLink2) it.next();
+            assert ! linkSet.containsLink( pairLink );
+            linkSet.addLink( pairLink );
+        }
+    }
+
+    /**
+     * Reads the next block of rows from a row sequence.
+     * Each returned row is a copy, so is safe for use after the
+     * sequence has advanced.
+     *
+     * @param  rseq  row sequence
+     * @return  array of up to {@link #BLOCK_SIZE} rows,
+     *          or null if the sequence is exhausted
+     */
+    private static Object[][] readBlock( ProgressRowSequence rseq )
+            throws IOException, InterruptedException {
+        List rowList = new ArrayList();
+        while ( rowList.size() < BLOCK_SIZE && rseq.nextProgress() ) {
+            rowList.add( rseq.getRow().clone() );
         }
-        return linkSet;
+        return rowList.isEmpty()
+             ? null
+             : (Object[][]) rowList.toArray( new Object[ 0 ][] );
+    }
+
+    /**
+     * Returns a new executor service for use by the worker threads
+     * of a multi-threaded match.  It should be shut down after use.
+     *
+     * @return   new executor with a thread count given by this
+     *           matcher's parallelism
+     */
+    private ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool( parallelism, new ThreadFactory() {
+            private int iThread_;
+            public synchronized Thread newThread( Runnable r ) {
+                Thread thread =
+                    new Thread( r, "RowMatcher-" + ( ++iThread_ ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
     }
 
     /**
@@ -329,47 +945,55 @@ public class RowMatcher {
                 "Options length " + joinTypes.length +
                 " differs from table count " + nTable );
         }
-        startMatch();
-
-        /* Get all the possible candidates for inter-table links containing
-         * the reference table. */
-        LinkSet possibleLinks = getPossibleMultiPairLinks( index0 );
-
-        /* Get the actual matches based on this set. */
-        LinkSet multiLinks =
-            findMultiPairMatches( possibleLinks, index0, bestOnly );
-
-        /* We now have a set of links corresponding to all the matches
-         * with one entry for each row of the reference table which has
-         * one or more matches.  In the case that we want to output 
-         * some links with unmatched parts, add new singleton row 
-         * links as necessary. */
-        LinkSet[] missing = new LinkSet[ nTable ];
-        for ( int i = 0; i < nTable; i++ ) {
-            if ( joinTypes[ i ] == MultiJoinType.ALWAYS ) {
-                missing[ i ] = missingSingles( multiLinks, i );
+        boolean done = false;
+        try {
+            startMatch();
+
+            /* Get all the possible candidates for inter-table links containing
+             * the reference table. */
+            LinkSet possibleLinks = getPossibleMultiPairLinks( index0 );
+
+            /* Get the actual matches based on this set. */
+            LinkSet multiLinks =
+                findMultiPairMatches( possibleLinks, index0, bestOnly );
+
+            /* We now have a set of links corresponding to all the matches
+             * with one entry for each row of the reference table which has
+             * one or more matches.  In the case that we want to output 
+             * some links with unmatched parts, add new singleton row 
+             * links as necessary. */
+            LinkSet[] missing = new LinkSet[ nTable ];
+            for ( int i = 0; i < nTable; i++ ) {
+                if ( joinTypes[ i ] == MultiJoinType.ALWAYS ) {
+                    missing[ i ] = missingSingles( multiLinks, i );
+                }
             }
-        }
-        for ( int i = 0; i < nTable; i++ ) {
-            if ( missing[ i ] != null ) {
-                for ( Iterator it = missing[ i ].iterator(); it.hasNext(); ) {
-                    multiLinks.addLink( (RowLink) it.next() );
+            for ( int i = 0; i < nTable; i++ ) {
+                if ( missing[ i ] != null ) {
+                    for ( Iterator it = missing[ i ].iterator();
+                          it.hasNext(); ) {
+                        multiLinks.addLink( (RowLink) it.next() );
+                    }
+                    missing[ i ] = null;
                 }
-                missing[ i ] = null;
             }
-        }
 
-        /* Filter the links to contain only those rows we're interested in. */
-        for ( Iterator it = multiLinks.iterator(); it.hasNext(); ) {
-            RowLink link = (RowLink) it.next();
-            if ( ! acceptRow( link, joinTypes ) ) {
-                it.remove();
+            /* Filter the links to contain only those rows we're
+             * interested in. */
+            for ( Iterator it = multiLinks.iterator(); it.hasNext(); ) {
+                RowLink link = (RowLink) it.next();
+                if ( ! acceptRow( link, joinTypes ) ) {
+                    it.remove();
+                }
             }
-        }
 
-        /* Return. */
-        endMatch();
-        return multiLinks;
+            /* Return. */
+            done = true;
+            return multiLinks;
+        }
+        finally {
+            endMatch( done );
+        }
     }
 
     /**
@@ -400,55 +1024,417 @@ public class RowMatcher {
                 "Options length " + joinTypes.length +
                 " differs from table count " + nTable );
         }
-        startMatch();
+        boolean done = false;
+        try {
+            startMatch();
 
-        /* Get all the possible pairs. */
-        LinkSet pairs = findPairs( getAllPossibleLinks() );
+            /* Get all the inter-table pairs and join them up into larger
+             * groupings. */
+            LinkSet links;
+            if ( parallelism > 1 && getTotalRowCount() <= Integer.MAX_VALUE ) {
+                links = findGroupLinksParallel();
+            }
+            else {
 
-        /* Exclude any pairs which represent links between different rows
-         * of the same table. */
-        eliminateInternalLinks( pairs );
+                /* Get all the possible pairs. */
+                LinkSet pairs = findPairs( getAllPossibleLinks() );
 
-        /* Join up pairs into larger groupings. */
-        LinkSet links = agglomerateLinks( pairs );
-        pairs = null;
+                /* Exclude any pairs which represent links between
+                 * different rows of the same table. */
+                eliminateInternalLinks( pairs );
 
-        /* This could introduce more internal links - get rid of them. */
-        eliminateInternalLinks( links );
+                /* Join up pairs into larger groupings. */
+                links = agglomerateLinks( pairs );
+                pairs = null;
+            }
 
-        /* We now have a set of links corresponding to all the matches
-         * with one entry for each of two or more of the input tables.
-         * In the case that we want to output some links with unmatched
-         * parts, add new singleton row links as necessary. */
-        LinkSet[] missing = new LinkSet[ nTable ];
-        for ( int i = 0; i < nTable; i++ ) {
-            if ( joinTypes[ i ] == MultiJoinType.ALWAYS ) {
-                missing[ i ] = missingSingles( links, i );
+            /* This could introduce more internal links - get rid of them. */
+            eliminateInternalLinks( links );
+
+            /* We now have a set of links corresponding to all the matches
+             * with one entry for each of two or more of the input tables.
+             * In the case that we want to output some links with unmatched
+             * parts, add new singleton row links as necessary. */
+            LinkSet[] missing = new LinkSet[ nTable ];
+            for ( int i = 0; i < nTable; i++ ) {
+                if ( joinTypes[ i ] == MultiJoinType.ALWAYS ) {
+                    missing[ i ] = missingSingles( links, i );
+                }
+            }
+            for ( int i = 0; i < nTable; i++ ) {
+                if ( missing[ i ] != null ) {
+                    for ( Iterator it = missing[ i ].iterator();
+                          it.hasNext(); ) {
+                        links.addLink( (RowLink) it.next() );
+                    }
+                    missing[ i ] = null;
+                }
             }
+
+            /* Now filter the links to contain only those composite rows we're
+             * interested in. */
+            for ( Iterator it = links.iterator(); it.hasNext(); ) {
+                RowLink link = (RowLink) it.next();
+                if ( ! acceptRow( link, joinTypes ) ) {
+                    it.remove();
+                }
+            }
+
+            /* Return the matched list. */
+            done = true;
+            return links;
         }
-        for ( int i = 0; i < nTable; i++ ) {
-            if ( missing[ i ] != null ) {
-                for ( Iterator it = missing[ i ].iterator(); it.hasNext(); ) {
-                    links.addLink( (RowLink) it.next() );
+        finally {
+            endMatch( done );
+        }
+    }
+
+    /**
+     * Multi-threaded equivalent of locating all the inter-table pairs
+     * and agglomerating them into groups, as used by
+     * {@link #findGroupMatches}.
+     * The tables are binned concurrently, one task per table.
+     * Candidate pairs from different tables sharing a bin are then
+     * scored by worker threads, which record matches in a lock-free
+     * {@link UnionFind} over primitive row identifiers.
+     * Pairs whose rows are already known to be in the same group
+     * do not need to be scored at all.
+     * Finally the groups are read off as RowLinks.
+     *
+     * <p>The result is the same as the single-threaded implementation,
+     * except that links may contain more than one row from the same
+     * table, which must be dealt with by the caller.
+     * The total number of rows in all tables must not exceed
+     * <code>Integer.MAX_VALUE</code>.
+     *
+     * @return  set of {@link RowLink}s each representing a group of
+     *          two or more rows linked by inter-table pair matches
+     */
+    private LinkSet findGroupLinksParallel()
+            throws IOException, InterruptedException {
+        long[] offsets = new long[ nTable + 1 ];
+        for ( int it = 0; it < nTable; it++ ) {
+            offsets[ it + 1 ] = offsets[ it ] + tables[ it ].getRowCount();
+        }
+        final int[] toffs = new int[ nTable ];
+        for ( int it = 0; it < nTable; it++ ) {
+            toffs[ it ] = (int) offsets[ it ];
+        }
+        final int nrow = (int) offsets[ nTable ];
+
+        /* Decide whether primitive vectors can be stored for all rows;
+         * if not, rows will be read from the tables for scoring. */
+        final VectorScorer scorer = engine.getVectorScorer();
+        final int vlen = scorer == null ? 0 : scorer.getVectorLength();
+        long nel = (long) nrow * vlen;
+        boolean useVecs = scorer != null
+                       && nel <= Integer.MAX_VALUE
+                       && nel * 8 <= Runtime.getRuntime().maxMemory() / 4;
+        final double[][] vecs = new double[ nTable ][];
+        final StarTable[] rtables = new StarTable[ nTable ];
+        for ( int it = 0; it < nTable; it++ ) {
+            if ( useVecs ) {
+                vecs[ it ] = new double[ (int) tables[ it ].getRowCount()
+                                         * vlen ];
+            }
+            else {
+                rtables[ it ] = new WrapperStarTable( tables[ it ] ) {
+                    public synchronized Object[] getRow( long irow )
+                            throws IOException {
+                        return super.getRow( irow );
+                    }
+                };
+            }
+        }
+
+        ExecutorService executor = createExecutor();
+        final LongBinner[] binners = new LongBinner[ nTable ];
+        try {
+
+            /* Bin the rows of each table concurrently. */
+            indicator.startStage( "Binning rows for " + nTable + " tables" );
+            OrderedTaskQueue binQueue =
+                new OrderedTaskQueue( executor, nTable );
+            try {
+                for ( int it = 0; it < nTable; it++ ) {
+                    final int itab = it;
+                    binQueue.submit( new Callable() {
+                        public Object call() throws IOException {
+                            return binTableRows( itab, scorer, vecs[ itab ] );
+                        }
+                    } );
+                }
+                for ( int it = 0; it < nTable; it++ ) {
+                    binners[ it ] = (LongBinner) binQueue.takeResult();
+                    indicator.setLevel( ( it + 1 ) / (double) nTable );
+                }
+            }
+            finally {
+                binQueue.cancel();
+            }
+            indicator.endStage();
+            long nbin = 0;
+            for ( int it = 0; it < nTable; it++ ) {
+                nbin += binners[ it ].getBinCount();
+                recordBins( binners[ it ] );
+            }
+            indicator.logMessage( nrow + " rows in " + nbin
+                                + " bins (summed over tables)" );
+
+            /* Score candidate pairs between each table and all the later
+             * ones, recording connections as they are found. */
+            final UnionFind groups = new UnionFind( nrow );
+            long npair = 0;
+            indicator.startStage( "Locating pairs" );
+            OrderedTaskQueue pairQueue =
+                new OrderedTaskQueue( executor, 2 * parallelism );
+            try {
+                for ( int it = 0; it < nTable - 1; it++ ) {
+                    final int itab = it;
+                    LongBinner binner = binners[ it ];
+                    List keyList = new ArrayList( BLOCK_SIZE );
+                    for ( Iterator kit = binner.getKeyIterator();
+                          kit.hasNext(); ) {
+                        keyList.add( kit.next() );
+                        if ( keyList.size() == BLOCK_SIZE || ! kit.hasNext() ) {
+                            if ( pairQueue.isFull() ) {
+                                npair += ((Long) pairQueue.takeResult())
+                                        .longValue();
+                            }
+                            final Object[] keys = keyList.toArray();
+                            keyList.clear();
+                            pairQueue.submit( new Callable() {
+                                public Object call() throws IOException {
+                                    return new Long(
+                                        linkBinnedPairs( itab, keys, binners,
+                                                         toffs, scorer, vecs,
+                                                         rtables, groups ) );
+                                }
+                            } );
+                        }
+                    }
+                    indicator.setLevel( ( it + 1 ) / (double) ( nTable - 1 ) );
+                }
+                while ( ! pairQueue.isEmpty() ) {
+                    npair += ((Long) pairQueue.takeResult()).longValue();
+                }
+            }
+            finally {
+                pairQueue.cancel();
+            }
+            indicator.endStage();
+            indicator.logMessage( npair + " linking pairs found" );
+
+            /* Read off the groups. */
+            return groupsToLinks( groups, offsets );
+        }
+        finally {
+            executor.shutdownNow();
+            for ( int it = 0; it < nTable; it++ ) {
+                if ( binners[ it ] != null ) {
+                    binners[ it ].close();
                 }
-                missing[ i ] = null;
             }
         }
+    }
 
-        /* Now filter the links to contain only those composite rows we're
-         * interested in. */
-        for ( Iterator it = links.iterator(); it.hasNext(); ) {
-            RowLink link = (RowLink) it.next();
-            if ( ! acceptRow( link, joinTypes ) ) {
-                it.remove();
+    /**
+     * Bins all the rows of one of this matcher's tables into a new binner,
+     * reading it sequentially.  Optionally the vector representation
+     * of each row is recorded as well.
+     * This method does not modify any state of this matcher, and may
+     * be called concurrently for different tables.
+     *
+     * @param  itab  table index
+     * @param  scorer  vector scorer, or null
+     * @param  vecs   array to populate with one vector per table row,
+     *                or null
+     * @return  binner mapping bin keys to row indices of table
+     *          <code>itab</code>
+     */
+    private LongBinner binTableRows( int itab, VectorScorer scorer,
+                                     double[] vecs )
+            throws IOException {
+        StarTable table = tables[ itab ];
+        LongBinner binner = Binners.createLongBinner( table.getRowCount() );
+        int vlen = vecs == null ? 0 : scorer.getVectorLength();
+        boolean done = false;
+        try {
+            RowSequence rseq = table.getRowSequence();
+            try {
+                for ( long lrow = 0; rseq.next(); lrow++ ) {
+                    Object[] row = rseq.getRow();
+                    Object[] keys = engine.getBins( row );
+                    int nkey = keys.length;
+                    for ( int ikey = 0; ikey < nkey; ikey++ ) {
+                        binner.addItem( keys[ ikey ], lrow );
+                    }
+                    if ( vecs != null ) {
+                        scorer.toVector( row, vecs, (int) lrow * vlen );
+                    }
+                }
+            }
+            finally {
+                rseq.close();
             }
+            done = true;
         }
+        finally {
+            if ( ! done ) {
+                binner.close();
+            }
+        }
+        return binner;
+    }
 
-        /* Return the matched list. */
-        endMatch();
+    /**
+     * Scores all the candidate pairs between rows of one table and
+     * rows of later tables which share any of a given list of bins,
+     * and records the matches in a union-find structure.
+     * This method does not modify any state of this matcher,
+     * and may be called concurrently from multiple threads.
+     *
+     * @param  itab   index of the table whose bins are being processed
+     * @param  keys   bin keys present in <code>binners[itab]</code>
+     * @param  binners  per-table binners; not modified
+     * @param  toffs  per-table offsets of the first row identifier
+     *                in <code>groups</code>
+     * @param  scorer  vector scorer, used only if <code>vecs</code>
+     *                 elements are non-null
+     * @param  vecs   per-table vector representations of all rows,
+     *                with null elements if rows must be read instead
+     * @param  rtables  per-table thread-safe random access tables,
+     *                  used where <code>vecs</code> elements are null
+     * @param  groups  union-find structure to which matched pairs are added
+     * @return  number of matched pairs which merged two groups
+     */
+    private long linkBinnedPairs( int itab, Object[] keys,
+                                  LongBinner[] binners, int[] toffs,
+                                  VectorScorer scorer, double[][] vecs,
+                                  StarTable[] rtables, UnionFind groups )
+            throws IOException {
+        int vlen = scorer == null ? 0 : scorer.getVectorLength();
+        long nlink = 0;
+        long ntest = 0;
+        long naccept = 0;
+        for ( int ik = 0; ik < keys.length; ik++ ) {
+            Object key = keys[ ik ];
+            long[] rows1 = binners[ itab ].getLongs( key );
+            for ( int jtab = itab + 1; jtab < nTable; jtab++ ) {
+                long[] rows2 = binners[ jtab ].getLongs( key );
+                if ( rows2 != null ) {
+                    for ( int i1 = 0; i1 < rows1.length; i1++ ) {
+                        long irow1 = rows1[ i1 ];
+                        int id1 = toffs[ itab ] + (int) irow1;
+                        Object[] row1 = null;
+                        for ( int i2 = 0; i2 < rows2.length; i2++ ) {
+                            long irow2 = rows2[ i2 ];
+                            int id2 = toffs[ jtab ] + (int) irow2;
+
+                            /* No need to score the pair if the rows are
+                             * already known to be in the same group. */
+                            if ( groups.find( id1 ) != groups.find( id2 ) ) {
+                                double score;
+                                if ( vecs[ itab ] != null ) {
+                                    score = scorer.score( vecs[ itab ],
+                                                          (int) irow1 * vlen,
+                                                          vecs[ jtab ],
+                                                          (int) irow2 * vlen );
+                                }
+                                else {
+                                    if ( row1 == null ) {
+                                        row1 = rtables[ itab ].getRow( irow1 );
+                                    }
+                                    score = engine.matchScore(
+                                                row1,
+                                                rtables[ jtab ]
+                                               .getRow( irow2 ) );
+                                }
+                                ntest++;
+                                if ( score >= 0 ) {
+                                    naccept++;
+                                    if ( groups.union( id1, id2 ) ) {
+                                        nlink++;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if ( metrics != null ) {
+            metrics.addPairs( ntest, naccept );
+        }
+        return nlink;
+    }
+
+    /**
+     * Converts the non-trivial groups recorded in a union-find structure
+     * to a set of RowLinks.
+     *
+     * @param  groups  union-find structure whose identifiers are
+     *                 row identifiers for this matcher's tables
+     * @param  offsets  (nTable+1)-element array giving the identifier
+     *                  of the first row in each table, and the total count
+     * @return  set containing one {@link RowLink} for each group
+     *          with more than one member
+     */
+    private LinkSet groupsToLinks( UnionFind groups, long[] offsets )
+            throws InterruptedException {
+        indicator.startStage( "Grouping rows" );
+        int nrow = groups.getSize();
+        Map groupMap = new HashMap();
+        int itab = 0;
+        for ( int id = 0; id < nrow; id++ ) {
+            while ( id >= offsets[ itab + 1 ] ) {
+                itab++;
+            }
+            int root = groups.find( id );
+
+            /* Since each group is represented by its smallest member,
+             * the representative has always been seen before any other
+             * member of the group. */
+            if ( root != id ) {
+                Integer rootKey = new Integer( root );
+                List refList = (List) groupMap.get( rootKey );
+                if ( refList == null ) {
+                    refList = new ArrayList( 2 );
+                    int rtab = itab;
+                    while ( root < offsets[ rtab ] ) {
+                        rtab--;
+                    }
+                    refList.add( new RowRef( rtab, root - offsets[ rtab ] ) );
+                    groupMap.put( rootKey, refList );
+                }
+                refList.add( new RowRef( itab, id - offsets[ itab ] ) );
+            }
+            if ( id % BLOCK_SIZE == 0 ) {
+                indicator.setLevel( id / (double) nrow );
+            }
+        }
+        LinkSet links = createLinkSet();
+        for ( Iterator it = groupMap.values().iterator(); it.hasNext(); ) {
+            links.addLink( new RowLink( (List) it.next() ) );
+            it.remove();
+        }
+        indicator.endStage();
         return links;
     }
 
+    /**
+     * Returns the total number of rows in all this matcher's tables.
+     *
+     * @return  summed row count
+     */
+    private long getTotalRowCount() {
+        long nrow = 0;
+        for ( int it = 0; it < nTable; it++ ) {
+            nrow += tables[ it ].getRowCount();
+        }
+        return nrow;
+    }
+
     /**
      * Returns a list of RowLink objects corresponding to all the internal
      * matches in this matcher's sole table using its match engine.
@@ -467,26 +1453,32 @@ public class RowMatcher {
             throw new IllegalStateException( "Internal matches only make sense "
                                            + "with a single table" );
         }
-        startMatch();
+        boolean done = false;
+        try {
+            startMatch();
 
-        /* Locate all the pairs. */
-        LinkSet links = findPairs( getAllPossibleInternalLinks( 0 ) );
+            /* Locate all the pairs. */
+            LinkSet links = findPairs( getAllPossibleInternalLinks( 0 ) );
 
-        /* Join up pairs into larger groupings. */
-        links = agglomerateLinks( links );
+            /* Join up pairs into larger groupings. */
+            links = agglomerateLinks( links );
 
-        /* Add unmatched rows if required. */
-        if ( includeSingles ) {
-            for ( Iterator it = missingSingles( links, 0 ).iterator();
-                  it.hasNext(); ) {
-                links.addLink( (RowLink) it.next() );
-                it.remove();
+            /* Add unmatched rows if required. */
+            if ( includeSingles ) {
+                for ( Iterator it = missingSingles( links, 0 ).iterator();
+                      it.hasNext(); ) {
+                    links.addLink( (RowLink) it.next() );
+                    it.remove();
+                }
             }
-        }
 
-        /* Return the list. */
-        endMatch();
-        return links;
+            /* Return the list. */
+            done = true;
+            return links;
+        }
+        finally {
+            endMatch( done );
+        }
     }
 
     /**
@@ -507,6 +1499,7 @@ public class RowMatcher {
         LinkSet pairs = createLinkSet();
         double nLink = (double) possibleLinks.size();
         int iLink = 0;
+        long ntest = 0;
         indicator.startStage( "Locating pairs" );
         for ( Iterator it = possibleLinks.iterator(); it.hasNext(); ) {
 
@@ -537,6 +1530,7 @@ public class RowMatcher {
                         if ( ! pairs.containsLink( pair ) ) {
                             double score = engine.matchScore( binnedRows[ i ],
                                                               binnedRows[ j ] );
+                            ntest++;
                             if ( score >= 0 ) {
                                 pair.setScore( score );
                                 pairs.addLink( pair );
@@ -548,6 +1542,9 @@ public class RowMatcher {
             indicator.setLevel( ++iLink / nLink );
         }
         indicator.endStage();
+        if ( metrics != null ) {
+            metrics.addPairs( ntest, pairs.size() );
+        }
         return pairs;
     }
 
@@ -562,18 +1559,24 @@ public class RowMatcher {
     private LinkSet getAllPossibleLinks()
             throws IOException, InterruptedException {
         NdRange range = new NdRange( tables[ 0 ].getColumnCount() );
-        ObjectBinner binner = Binners.createObjectBinner();
-        long totalRows = 0;
-        for ( int itab = 0; itab < nTable; itab++ ) {
-            binRows( itab, range, binner, true );
-            totalRows += tables[ itab ].getRowCount();
-        }
-        long nBin = binner.getBinCount();
-        indicator.logMessage( "Average bin count per row: " +
-                              (float) ( nBin / (double) totalRows ) );
-        LinkSet links = createLinkSet();
-        binsToLinks( binner, links );
-        return links;
+        ObjectBinner binner = Binners.createRowRefBinner();
+        try {
+            long totalRows = 0;
+            for ( int itab = 0; itab < nTable; itab++ ) {
+                binRows( itab, range, binner, true );
+                totalRows += tables[ itab ].getRowCount();
+            }
+            long nBin = binner.getBinCount();
+            recordBins( binner );
+            indicator.logMessage( "Average bin count per row: " +
+                                  (float) ( nBin / (double) totalRows ) );
+            LinkSet links = createLinkSet();
+            binsToLinks( binner, links );
+            return links;
+        }
+        finally {
+            binner.close();
+        }
     }
 
     /**
@@ -589,28 +1592,34 @@ public class RowMatcher {
         StarTable table = tables[ itable ];
         long nRow = table.getRowCount();
         LongBinner binner = Binners.createLongBinner( nRow );
-        ProgressRowSequence rseq =
-            new ProgressRowSequence( table, indicator, "Binning rows" );
         try {
-            for ( long lrow = 0; rseq.nextProgress(); lrow++ ) {
-                Object[] row = rseq.getRow();
-                Object[] keys = engine.getBins( row );
-                int nkey = keys.length;
-                for ( int ikey = 0; ikey < nkey; ikey++ ) {
-                    binner.addItem( keys[ ikey ], lrow );
+            ProgressRowSequence rseq =
+                new ProgressRowSequence( table, indicator, "Binning rows" );
+            try {
+                for ( long lrow = 0; rseq.nextProgress(); lrow++ ) {
+                    Object[] row = rseq.getRow();
+                    Object[] keys = engine.getBins( row );
+                    int nkey = keys.length;
+                    for ( int ikey = 0; ikey < nkey; ikey++ ) {
+                        binner.addItem( keys[ ikey ], lrow );
+                    }
                 }
             }
+            finally {
+                rseq.close();
+            }
+            long nBin = binner.getBinCount();
+            recordBins( binner );
+            indicator.logMessage( "Average bin count per row: " +
+                                  (float) ( nBin / (double) nRow ) );
+
+            LinkSet links = createLinkSet();
+            binsToInternalLinks( binner, links, itable );
+            return links;
         }
         finally {
-            rseq.close();
+            binner.close();
         }
-        long nBin = binner.getBinCount();
-        indicator.logMessage( "Average bin count per row: " +
-                              (float) ( nBin / (double) nRow ) );
-
-        LinkSet links = createLinkSet();
-        binsToInternalLinks( binner, links, itable );
-        return links;
     }
 
     /**
@@ -859,22 +1868,28 @@ public class RowMatcher {
         }
 
         /* Bin all the rows in the interesting region of the reference table. */
-        ObjectBinner binner = Binners.createObjectBinner();
-        binRows( index0, range, binner, true );
-
-        /* Bin any rows in the other tables which have entries in the bins
-         * we have already created for the reference table.  Rows without
-         * such entries can be ignored. */
-        for ( int itab = 0; itab < nTable; itab++ ) {
-            if ( itab != index0 ) {
-                binRows( itab, range, binner, false );
+        ObjectBinner binner = Binners.createRowRefBinner();
+        try {
+            binRows( index0, range, binner, true );
+
+            /* Bin any rows in the other tables which have entries in the
+             * bins we have already created for the reference table.
+             * Rows without such entries can be ignored. */
+            for ( int itab = 0; itab < nTable; itab++ ) {
+                if ( itab != index0 ) {
+                    binRows( itab, range, binner, false );
+                }
             }
-        }
 
-        /* Convert the result to a link set and return. */
-        LinkSet linkSet = createLinkSet();
-        binsToLinks( binner, linkSet );
-        return linkSet;
+            /* Convert the result to a link set and return. */
+            recordBins( binner );
+            LinkSet linkSet = createLinkSet();
+            binsToLinks( binner, linkSet );
+            return linkSet;
+        }
+        finally {
+            binner.close();
+        }
     }
 
     /**
@@ -905,6 +1920,7 @@ public class RowMatcher {
         LinkSet pairs = createLinkSet();
         double nLink = (double) possibleLinks.size();
         int iLink = 0;
+        long ntest = 0;
         indicator.startStage( "Locating pair matches between " + index0
                             + " and other tables");
         for ( Iterator it = possibleLinks.iterator(); it.hasNext(); ) {
@@ -955,6 +1971,7 @@ public class RowMatcher {
                                     double score =
                                         engine.matchScore( binnedRows[ i0 ],
                                                            binnedRows[ i1 ] );
+                                    ntest++;
                                     if ( score >= 0 ) {
                                         pair.setScore( score );
                                         pairs.addLink( pair );
@@ -968,6 +1985,9 @@ public class RowMatcher {
             indicator.setLevel( ++iLink / nLink );
         }
         indicator.endStage();
+        if ( metrics != null ) {
+            metrics.addPairs( ntest, pairs.size() );
+        }
 
         /* Store all the pairs in a map keyed by row reference of the reference
          * table. */
@@ -1056,6 +2076,15 @@ public class RowMatcher {
     LinkSet eliminateMultipleRowEntries( LinkSet pairs ) 
             throws InterruptedException {
 
+        /* If the pairs are stored compactly, do the work in place. */
+        if ( pairs instanceof CompactLinkSet &&
+             ((CompactLinkSet) pairs).isPairsOnly() ) {
+            indicator.startStage( "Eliminating multiple row references" );
+            ((CompactLinkSet) pairs).eliminateMultipleRowEntries( indicator );
+            indicator.endStage();
+            return pairs;
+        }
+
         /* Sort the input pairs in ascending score order.  In this way,
          * better links will be favoured (inserted into the output set)
          * over worse ones. */
@@ -1598,12 +2627,105 @@ public class RowMatcher {
     /**
      * Signals the start of a user-visible matching process.
      */
-    private void startMatch() {
+    private void startMatch() throws IOException {
         startTime = new Date().getTime();
+        if ( metrics != null ) {
+            metrics.startMatch();
+        }
         indicator.logMessage( "Params:"
                             + formatParams( engine.getMatchParameters() ) );
         indicator.logMessage( "Tuning:"
                             + formatParams( engine.getTuningParameters() ) );
+        if ( adaptiveSampling && engine instanceof AdaptiveMatchEngine ) {
+            sampleTables( (AdaptiveMatchEngine) engine, tables, indicator );
+        }
+    }
+
+    /**
+     * Supplies an adaptive match engine with a sample of rows from
+     * some tables, if it wants one.
+     * Rows are sampled at random from tables with random access;
+     * tables without random access are not sampled.
+     *
+     * @param  aEngine  match engine
+     * @param  tables   tables to sample
+     * @param  indicator  progress indicator for log messages
+     */
+    static void sampleTables( AdaptiveMatchEngine aEngine,
+                              StarTable[] tables,
+                              ProgressIndicator indicator )
+            throws IOException {
+        int nsamp = aEngine.getSampleSize();
+        if ( nsamp <= 0 ) {
+            return;
+        }
+        Random rnd = new Random( 2300319L );
+        List tupleList = new ArrayList();
+        List weightList = new ArrayList();
+        for ( int itab = 0; itab < tables.length; itab++ ) {
+            StarTable table = tables[ itab ];
+            long nrow = table.getRowCount();
+            if ( ! table.isRandom() ) {
+                indicator.logMessage( "Table " + ( itab + 1 ) + " not sampled"
+                                    + " for adaptive binning (not random)" );
+            }
+            else if ( nrow > 0 ) {
+                boolean all = nrow <= nsamp;
+                int ns = all ? (int) nrow : nsamp;
+                Double weight = new Double( nrow / (double) ns );
+                for ( int is = 0; is < ns; is++ ) {
+                    long irow = all ? is
+                                    : (long) ( rnd.nextDouble() * nrow );
+                    tupleList.add( table.getRow( irow ) );
+                    weightList.add( weight );
+                }
+            }
+        }
+        int ntup = tupleList.size();
+        double[] weights = new double[ ntup ];
+        for ( int i = 0; i < ntup; i++ ) {
+            weights[ i ] = ((Double) weightList.get( i )).doubleValue();
+        }
+        aEngine.setSample( (Object[][]) tupleList.toArray( new Object[ 0 ][] ),
+                           weights );
+        indicator.logMessage( "Bins adapted using " + ntup + " sample rows" );
+    }
+
+    /**
+     * Sets the progress indicator used internally according to
+     * the current indicator and metrics settings.
+     */
+    private void updateIndicator() {
+        indicator = metrics == null ? baseIndicator
+                                    : metrics.createIndicator( baseIndicator );
+    }
+
+    /**
+     * Records the bins in a populated binner with this matcher's
+     * metrics object, if there is one.
+     *
+     * @param  binner  binner
+     */
+    private void recordBins( LongBinner binner ) {
+        if ( metrics != null ) {
+            for ( Iterator it = binner.getKeyIterator(); it.hasNext(); ) {
+                metrics.addBin( binner.getLongs( it.next() ).length );
+            }
+        }
+    }
+
+    /**
+     * Records the bins in a populated binner with this matcher's
+     * metrics object, if there is one.
+     *
+     * @param  binner  binner
+     */
+    private void recordBins( ObjectBinner binner ) {
+        if ( metrics != null ) {
+            for ( Iterator it = binner.getKeyIterator(); it.hasNext(); ) {
+                metrics.addBin( binner.getList( it.next() ).size() );
+            }
+        }
     }
 
     /**
@@ -1623,11 +2745,19 @@ public class RowMatcher {
 
     /**
      * Signals the end of a user-visible matching process.
+     * This must be called following {@link #startMatch} whether or not
+     * the match succeeded.
+     *
+     * @param  completed  true iff the match completed normally
      */
-    private void endMatch() {
+    private void endMatch( boolean completed ) {
         long millis = new Date().getTime() - startTime;
-        indicator.logMessage( "Elapsed time for match: " + ( millis / 1000 ) + 
-                              " seconds" );
+        indicator.logMessage( ( completed ? "Elapsed time for match: "
+                                          : "Match failed after: " )
+                            + ( millis / 1000 ) + " seconds" );
+        if ( metrics != null ) {
+            metrics.endMatch( completed );
+        }
     }
 
     /**
@@ -1657,6 +2787,15 @@ public class RowMatcher {
         }
     }
 
+    /**
+     * Helper class which accumulates counts during binning.
+     */
+    private static class BinCounts {
+        long nrow_;
+        long nref_;
+        long nexclude_;
+    }
+
     /**
      * Encapsulates information about a range intersection of multiple tables.
      */
@@ -0,0 +1,426 @@
+package uk.ac.starlink.table.join;
+
+import gov.fnal.eag.healpix.PixTools;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+
+/**
+ * Performs a streaming pair match between two sky tables which are
+ * already sorted by HEALPix pixel index.
+ *
+ * <p>Both tables are read once, sequentially and in step with each other.
+ * Since the HEALPix RING scheme numbers pixels in order of
+ * colatitude band, rows arrive in approximately increasing colatitude,
+ * and any row can only match rows which arrive within a narrow band
+ * either side of it.  A sliding window of recent rows from each table
+ * is kept, binned using the match engine's bins, and each incoming row
+ * is scored against the window of the other table.
+ * Rows drop out of the window as soon as the sweep has passed
+ * the point at which they could match anything, so memory usage
+ * depends on the width of the band rather than the size of the tables,
+ * and neither table needs to provide random access.
+ *
+ * <p>All matching pairs are found (as for {@link PairMode#ALL}),
+ * and are passed to a {@link PairSink} as they are found rather than
+ * being accumulated.
+ * The tuples must be those of one of the sky match engines in this
+ * package, that is with right ascension and declination in radians as
+ * the first two elements, and no pair may match with a separation
+ * greater than a given maximum.
+ *
+ * <p>The input order is checked as the tables are read;
+ * if a row is found out of order an IOException is thrown.
+ * Note that the NESTED scheme does not order rows by position
+ * in a way that permits this kind of sweep, so inputs must be
+ * sorted by RING-scheme index.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class SortMergeMatcher {
+
+    private final MatchEngine engine_;
+    private final double maxSep_;
+    private final long nside_;
+    private final StarTable[] tables_;
+    private final PixTools pixTools_;
+    private ProgressIndicator indicator_;
+
+    /**
+     * Constructor.
+     *
+     * @param  engine  sky match engine
+     * @param  maxSep  maximum separation in radians at which the engine
+     *                 may report a match
+     * @param  sortK   HEALPix order (log2 of nside) of the RING-scheme
+     *                 pixel indices by which the input tables are sorted
+     * @param  tables  2-element array of input tables
+     */
+    public SortMergeMatcher( MatchEngine engine, double maxSep, int sortK,
+                             StarTable[] tables ) {
+        if ( tables.length != 2 ) {
+            throw new IllegalArgumentException( "Two tables required" );
+        }
+        if ( sortK < 0 || sortK > 29 ) {
+            throw new IllegalArgumentException( "Bad HEALPix order " + sortK );
+        }
+        engine_ = engine;
+        maxSep_ = maxSep;
+        nside_ = 1L << sortK;
+        tables_ = tables;
+        pixTools_ = PixTools.getInstance();
+        indicator_ = new NullProgressIndicator();
+    }
+
+    /**
+     * Sets the progress indicator for this matcher.
+     *
+     * @param  indicator  new indicator
+     */
+    public void setIndicator( ProgressIndicator indicator ) {
+        indicator_ = indicator;
+    }
+
+    /**
+     * Returns the progress indicator for this matcher.
+     *
+     * @return  indicator
+     */
+    public ProgressIndicator getIndicator() {
+        return indicator_;
+    }
+
+    /**
+     * Performs the match, passing each matched pair to a given sink.
+     * Pairs are delivered in order of the row at which they were
+     * found, that is the later of the two rows in the merged sequence.
+     *
+     * @param  sink  destination for matched pairs
+     * @return  number of pairs found
+     * @throws  IOException  if there is a read error, or if either
+     *          input table is not sorted as required
+     */
+    public long findPairMatches( PairSink sink )
+            throws IOException, InterruptedException {
+        ProgressIndicator indicator = indicator_;
+        Stream[] streams = new Stream[] {
+            new Stream( 0 ),
+            new Stream( 1 ),
+        };
+        long ntot = 0;
+        for ( int i = 0; i < 2; i++ ) {
+            long nr = tables_[ i ].getRowCount();
+            ntot = ntot >= 0 && nr >= 0 ? ntot + nr : -1;
+        }
+        long npair = 0;
+        long nread = 0;
+        int maxWindow = 0;
+        long maxRing = 0;
+        indicator.startStage( "Sort-merge matching" );
+        try {
+            streams[ 0 ].advance();
+            streams[ 1 ].advance();
+            while ( streams[ 0 ].next_ != null ||
+                    streams[ 1 ].next_ != null ) {
+
+                /* Take the next row from whichever table is further
+                 * behind in the sweep. */
+                int is = streams[ 1 ].next_ == null ||
+                         ( streams[ 0 ].next_ != null &&
+                           streams[ 0 ].next_.ring_ <=
+                           streams[ 1 ].next_.ring_ )
+                       ? 0 : 1;
+                Stream stream = streams[ is ];
+                Stream other = streams[ 1 - is ];
+                WindowRow row = stream.next_;
+                stream.advance();
+
+                /* Discard rows from both windows which are too far behind
+                 * to match this one or any later one.  Every later row
+                 * lies south of the ring before the current one;
+                 * a few rings of slack allow for rounding differences
+                 * in the pixel calculation used for the input sort. */
+                maxRing = Math.max( maxRing, row.ring_ );
+                double thetaMin = ringTheta( maxRing - 4 ) - maxSep_;
+                stream.evict( thetaMin );
+                other.evict( thetaMin );
+
+                /* Score the row against the other table's window. */
+                WindowRow[] cands = other.getCandidates( row.bins_ );
+                for ( int ic = 0; ic < cands.length; ic++ ) {
+                    WindowRow cand = cands[ ic ];
+                    double score = is == 0
+                                 ? engine_.matchScore( row.tuple_,
+                                                       cand.tuple_ )
+                                 : engine_.matchScore( cand.tuple_,
+                                                       row.tuple_ );
+                    if ( score >= 0 ) {
+                        if ( is == 0 ) {
+                            sink.acceptPair( row.irow_, cand.irow_, score );
+                        }
+                        else {
+                            sink.acceptPair( cand.irow_, row.irow_, score );
+                        }
+                        npair++;
+                    }
+                }
+
+                /* Add it to its own table's window. */
+                stream.add( row );
+                maxWindow = Math.max( maxWindow, stream.size() );
+                if ( ++nread % 1024 == 0 && ntot > 0 ) {
+                    indicator.setLevel( nread / (double) ntot );
+                }
+            }
+        }
+        finally {
+            streams[ 0 ].close();
+            streams[ 1 ].close();
+        }
+        indicator.endStage();
+        indicator.logMessage( npair + " pairs found; maximum window size "
+                            + maxWindow + " rows" );
+        return npair;
+    }
+
+    /**
+     * Returns the HEALPix ring index for a RING-scheme pixel index.
+     * Rings are numbered from 1 at the north pole to 4*nside-1 at
+     * the south pole.
+     *
+     * @param  ipix  RING-scheme pixel index
+     * @return  ring index
+     */
+    long pixelRing( long ipix ) {
+        long npix = 12 * nside_ * nside_;
+        long ncap = 2 * nside_ * ( nside_ - 1 );
+        if ( ipix < ncap ) {
+            return (long) ( 0.5 * ( 1 + Math.sqrt( 1 + 2 * ipix ) ) );
+        }
+        else if ( ipix < npix - ncap ) {
+            return ( ipix - ncap ) / ( 4 * nside_ ) + nside_;
+        }
+        else {
+            long ip = npix - ipix - 1;
+            return 4 * nside_
+                 - (long) ( 0.5 * ( 1 + Math.sqrt( 1 + 2 * ip ) ) );
+        }
+    }
+
+    /**
+     * Returns the colatitude of the pixel centres in a HEALPix ring.
+     *
+     * @param  ring  ring index; out of range values are clipped
+     * @return  colatitude in radians
+     */
+    double ringTheta( long ring ) {
+        if ( ring <= 0 ) {
+            return 0;
+        }
+        else if ( ring >= 4 * nside_ ) {
+            return Math.PI;
+        }
+        double fn = nside_;
+        final double z;
+        if ( ring < nside_ ) {
+            z = 1 - ring * (double) ring / ( 3 * fn * fn );
+        }
+        else if ( ring <= 3 * nside_ ) {
+            z = ( 2 * nside_ - ring ) * 2 / ( 3 * fn );
+        }
+        else {
+            long ir = 4 * nside_ - ring;
+            z = -( 1 - ir * (double) ir / ( 3 * fn * fn ) );
+        }
+        return Math.acos( z );
+    }
+
+    /**
+     * Returns the value of a tuple element as a double.
+     *
+     * @param  tuple  tuple
+     * @param  i   element index
+     * @return  numeric value, or NaN
+     */
+    private static double getDouble( Object[] tuple, int i ) {
+        Object val = tuple.length > i ? tuple[ i ] : null;
+        return val instanceof Number ? ((Number) val).doubleValue()
+                                     : Double.NaN;
+    }
+
+    /**
+     * Represents a row which has been read from one of the input tables.
+     */
+    private static class WindowRow {
+        final long irow_;
+        final Object[] tuple_;
+        final double theta_;
+        final long ring_;
+        final Object[] bins_;
+
+        /**
+         * Constructor.
+         *
+         * @param  irow  row index
+         * @param  tuple  match tuple
+         * @param  theta  colatitude in radians
+         * @param  ring   HEALPix ring index
+         * @param  bins   match engine bins
+         */
+        WindowRow( long irow, Object[] tuple, double theta, long ring,
+                   Object[] bins ) {
+            irow_ = irow;
+            tuple_ = tuple;
+            theta_ = theta;
+            ring_ = ring;
+            bins_ = bins;
+        }
+    }
+
+    /**
+     * Reads rows from one input table and manages its window.
+     */
+    private class Stream {
+        private final int itable_;
+        private final RowSequence rseq_;
+        private final LinkedList window_;
+        private final Map binMap_;
+        private long irow_;
+        private long lastRing_;
+        WindowRow next_;
+
+        /**
+         * Constructor.
+         *
+         * @param  itable  table index
+         */
+        Stream( int itable ) throws IOException {
+            itable_ = itable;
+            rseq_ = tables_[ itable ].getRowSequence();
+            window_ = new LinkedList();
+            binMap_ = new HashMap();
+            irow_ = -1;
+        }
+
+        /**
+         * Reads the next usable row into the <code>next_</code> member,
+         * or sets it null at the end of the table.
+         * Rows with blank positions are skipped.
+         */
+        void advance() throws IOException {
+            while ( rseq_.next() ) {
+                irow_++;
+                Object[] tuple = rseq_.getRow();
+                double ra = getDouble( tuple, 0 );
+                double dec = getDouble( tuple, 1 );
+                if ( ! Double.isNaN( ra ) && ! Double.isNaN( dec ) ) {
+                    double theta = 0.5 * Math.PI - dec;
+                    long pix = pixTools_.ang2pix_ring( nside_, theta, ra );
+                    long ring = pixelRing( pix );
+                    if ( ring < lastRing_ - 1 ) {
+                        throw new IOException( "Table " + ( itable_ + 1 )
+                                             + " not sorted by HEALPix RING "
+                                             + "index at row " + irow_ );
+                    }
+                    lastRing_ = Math.max( lastRing_, ring );
+                    next_ = new WindowRow( irow_, tuple, theta, ring,
+                                           engine_.getBins( tuple ) );
+                    return;
+                }
+            }
+            next_ = null;
+        }
+
+        /**
+         * Adds a row to the window.
+         *
+         * @param  row  row to add
+         */
+        void add( WindowRow row ) {
+            window_.addLast( row );
+            Object[] bins = row.bins_;
+            for ( int ib = 0; ib < bins.length; ib++ ) {
+                List list = (List) binMap_.get( bins[ ib ] );
+                if ( list == null ) {
+                    list = new ArrayList( 2 );
+                    binMap_.put( bins[ ib ], list );
+                }
+                list.add( row );
+            }
+        }
+
+        /**
+         * Removes rows from the start of the window which lie north of
+         * a given colatitude.
+         *
+         * @param  thetaMin  minimum colatitude of rows to retain
+         */
+        void evict( double thetaMin ) {
+            while ( ! window_.isEmpty() &&
+                    ((WindowRow) window_.getFirst()).theta_ < thetaMin ) {
+                WindowRow row = (WindowRow) window_.removeFirst();
+                Object[] bins = row.bins_;
+                for ( int ib = 0; ib < bins.length; ib++ ) {
+                    List list = (List) binMap_.get( bins[ ib ] );
+                    list.remove( row );
+                    if ( list.isEmpty() ) {
+                        binMap_.remove( bins[ ib ] );
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the rows in the window which share at least one bin
+         * with a given list.
+         *
+         * @param  bins  match bins
+         * @return  distinct window rows, sorted by row index
+         */
+        WindowRow[] getCandidates( Object[] bins ) {
+            Set cands = new HashSet();
+            for ( int ib = 0; ib < bins.length; ib++ ) {
+                List list = (List) binMap_.get( bins[ ib ] );
+                if ( list != null ) {
+                    cands.addAll( list );
+                }
+            }
+            WindowRow[] rows =
+                (WindowRow[]) cands.toArray( new WindowRow[ 0 ] );
+            Arrays.sort( rows, new Comparator() {
+                public int compare( Object o1, Object o2 ) {
+                    long r1 = ((WindowRow) o1).irow_;
+                    long r2 = ((WindowRow) o2).irow_;
+                    return r1 < r2 ? -1 : ( r1 > r2 ? 1 : 0 );
+                }
+            } );
+            return rows;
+        }
+
+        /**
+         * Returns the number of rows currently in the window.
+         *
+         * @return  window size
+         */
+        int size() {
+            return window_.size();
+        }
+
+        /**
+         * Releases resources.
+         */
+        void close() throws IOException {
+            rseq_.close();
+        }
+    }
+}
@@ -80,6 +80,30 @@ public class SphericalPolarMatchEngine extends AbstractCartesianMatchEngine {
         return matchScore( 3, toXyz( tuple1 ), toXyz( tuple2 ), getError() );
     }
 
+    public VectorScorer getVectorScorer() {
+        if ( getClass() != SphericalPolarMatchEngine.class ) {
+            return null;
+        }
+        final double err = getError();
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return 3;
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                toXyz( tuple, buf, off );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                return matchScore( 3, buf1, off1, buf2, off2, err );
+            }
+        };
+    }
+
+    @Override
+    protected double[] toBinCoords( Object[] tuple ) {
+        return toXyz( tuple );
+    }
+
     public double getScoreScale() {
         return getError();
     }
@@ -111,6 +135,21 @@ public class SphericalPolarMatchEngine extends AbstractCartesianMatchEngine {
      * @return  (x,y,z) array
      */
     private static double[] toXyz( Object[] tuple ) {
+        double[] xyz = new double[ 3 ];
+        toXyz( tuple, xyz, 0 );
+        return xyz;
+    }
+
+    /**
+     * Converts a submitted match tuple to Cartesian coordinates
+     * written into a buffer.
+     *
+     * @param   tuple  (alpha,delta,r) array
+     * @param   buf   output buffer
+     * @param   off   offset into <code>buf</code> at which
+     *                (x,y,z) are written
+     */
+    private static void toXyz( Object[] tuple, double[] buf, int off ) {
         double ra = getNumberValue( tuple[ 0 ] );
         double dec = getNumberValue( tuple[ 1 ] );
         double r = getNumberValue( tuple[ 2 ] );
@@ -124,6 +163,8 @@ public class SphericalPolarMatchEngine extends AbstractCartesianMatchEngine {
         double y = r * sr * cd;
         double z = r * sd;
 
-        return new double[] { x, y, z };
+        buf[ off + 0 ] = x;
+        buf[ off + 1 ] = y;
+        buf[ off + 2 ] = z;
     }
 }
@@ -0,0 +1,87 @@
+package uk.ac.starlink.table.join;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Disjoint-set forest over a fixed range of integer identifiers,
+ * which may be used concurrently from multiple threads without locking.
+ *
+ * <p>Each set is represented by its smallest member.
+ * A union always attaches the root with the larger identifier to the one
+ * with the smaller, so parent pointers only ever decrease and no cycles
+ * can form even when several threads are merging sets at once.
+ * Paths are shortened during lookup by compare-and-set path halving.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class UnionFind {
+
+    private final AtomicIntegerArray parents_;
+
+    /**
+     * Constructs an instance in which every element is in its own set.
+     *
+     * @param  n  number of elements; identifiers run from 0 to n-1
+     */
+    public UnionFind( int n ) {
+        parents_ = new AtomicIntegerArray( n );
+        for ( int i = 0; i < n; i++ ) {
+            parents_.set( i, i );
+        }
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return  element count
+     */
+    public int getSize() {
+        return parents_.length();
+    }
+
+    /**
+     * Returns the representative element of the set containing a given
+     * element.  This is the smallest member of the set at the time
+     * of the call.
+     *
+     * @param  i  element identifier
+     * @return  set representative
+     */
+    public int find( int i ) {
+        while ( true ) {
+            int p = parents_.get( i );
+            if ( p == i ) {
+                return i;
+            }
+            int gp = parents_.get( p );
+            if ( gp != p ) {
+                parents_.compareAndSet( i, p, gp );
+            }
+            i = gp;
+        }
+    }
+
+    /**
+     * Merges the sets containing two elements.
+     *
+     * @param  i  first element identifier
+     * @param  j  second element identifier
+     * @return  true if the sets were merged, false if the elements
+     *          were already in the same set
+     */
+    public boolean union( int i, int j ) {
+        while ( true ) {
+            int ri = find( i );
+            int rj = find( j );
+            if ( ri == rj ) {
+                return false;
+            }
+            int rlo = Math.min( ri, rj );
+            int rhi = Math.max( ri, rj );
+            if ( parents_.compareAndSet( rhi, rhi, rlo ) ) {
+                return true;
+            }
+        }
+    }
+}
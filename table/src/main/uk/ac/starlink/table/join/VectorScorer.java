@@ -0,0 +1,59 @@
+package uk.ac.starlink.table.join;
+
+/**
+ * Performs match scoring on tuples which have been converted in advance
+ * to arrays of primitive values.
+ *
+ * <p>The {@link MatchEngine#matchScore matchScore} method of
+ * a MatchEngine works on <code>Object[]</code> tuples, so it has to unbox
+ * the tuple elements, and typically perform some coordinate conversion
+ * such as trigonometry, for every pair which is compared.
+ * Since each tuple is generally compared with many others,
+ * it is much cheaper to do that work once per tuple, storing the
+ * result as a short vector of doubles, and then compare the vectors.
+ * Vectors for many tuples can be packed into a single <code>double[]</code>
+ * array, so that scoring involves no object allocation at all.
+ *
+ * <p>Instances are obtained from {@link MatchEngine#getVectorScorer}
+ * and reflect the match engine's configuration at the time they
+ * were obtained.  They must be safe for concurrent use from
+ * multiple threads.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public interface VectorScorer {
+
+    /**
+     * Returns the number of array elements used to store each tuple.
+     *
+     * @return  vector length
+     */
+    int getVectorLength();
+
+    /**
+     * Converts a tuple to vector form.
+     * Blank tuple elements will typically be represented as NaNs.
+     *
+     * @param  tuple  match tuple as supplied to the match engine
+     * @param  buf   buffer into which the vector will be written
+     * @param  off   offset into <code>buf</code> of the first element
+     *               to write; <code>getVectorLength</code> elements
+     *               are written
+     */
+    void toVector( Object[] tuple, double[] buf, int off );
+
+    /**
+     * Returns the match score for two tuples given in vector form.
+     * The result is the same as {@link MatchEngine#matchScore}
+     * would return for the corresponding tuples, so that match results
+     * do not depend on which of the two is used.
+     *
+     * @param  buf1  buffer containing first vector
+     * @param  off1  offset into <code>buf1</code> of first vector
+     * @param  buf2  buffer containing second vector
+     * @param  off2  offset into <code>buf2</code> of second vector
+     * @return  match score; negative for no match
+     */
+    double score( double[] buf1, int off1, double[] buf2, int off2 );
+}
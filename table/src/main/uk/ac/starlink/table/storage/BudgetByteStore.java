@@ -0,0 +1,359 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ByteStore;
+
+/**
+ * ByteStore which keeps its data in memory as long as the
+ * {@link BudgetStoragePolicy} that created it has sufficient
+ * memory budget, and moves it to a temporary file when asked to by
+ * the policy.
+ *
+ * <p>Data may be spilled to disk either while it is being written,
+ * or afterwards while it is being read.  In the latter case,
+ * readers obtained from the package-private {@link #createAccess}
+ * method switch to a memory-mapped view of the file when they next
+ * seek.  Buffers obtained from {@link #toByteBuffers} on the other hand
+ * cannot be redirected, so once that method has been called on
+ * a store held in memory, its data is never spilled.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class BudgetByteStore implements ByteStore {
+
+    private final BudgetStoragePolicy policy_;
+    private final BudgetStoragePolicy.StoreRef ref_;
+    private final OutputStream out_;
+    private BytesOutputStream memOut_;
+    private OutputStream baseOut_;
+    private File file_;
+    private ByteBuffer[] mappedBufs_;
+    private long length_;
+    private boolean pinned_;
+    private boolean closed_;
+    private volatile int generation_;
+    private volatile long lastAccess_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.storage" );
+
+    /**
+     * Constructor.  Should only be invoked by the owning policy.
+     *
+     * @param  policy  policy managing the memory budget
+     */
+    BudgetByteStore( BudgetStoragePolicy policy ) {
+        policy_ = policy;
+        memOut_ = new BytesOutputStream();
+        baseOut_ = memOut_;
+        lastAccess_ = System.nanoTime();
+        ref_ = policy.register( this );
+        out_ = new BudgetOutputStream();
+    }
+
+    public OutputStream getOutputStream() {
+        return out_;
+    }
+
+    public synchronized long getLength() {
+        return length_;
+    }
+
+    public synchronized void copy( OutputStream out ) throws IOException {
+        baseOut_.flush();
+        if ( file_ == null ) {
+            memOut_.writeTo( out );
+        }
+        else {
+            FileByteStore.copy( file_, out );
+        }
+    }
+
+    /**
+     * Returns buffers containing the data.
+     * If the data is currently held in memory, it will remain there
+     * until this store is closed.
+     */
+    public synchronized ByteBuffer[] toByteBuffers() throws IOException {
+        baseOut_.flush();
+        if ( file_ == null ) {
+            pinned_ = true;
+        }
+        return getBuffers();
+    }
+
+    public void close() {
+        synchronized ( this ) {
+            if ( closed_ ) {
+                return;
+            }
+            closed_ = true;
+            try {
+                baseOut_.close();
+            }
+            catch ( IOException e ) {
+                logger_.warning( "close error: " + e );
+            }
+            memOut_ = null;
+            mappedBufs_ = null;
+            if ( file_ != null ) {
+                if ( file_.delete() ) {
+                    logger_.info( "Deleting temporary file: " + file_ );
+                }
+                else if ( file_.exists() ) {
+                    logger_.warning( "Failed to delete temporary file "
+                                   + file_ );
+                }
+            }
+        }
+        policy_.unregister( ref_ );
+    }
+
+    /**
+     * Returns a new reader for the data in this store.
+     * Unlike buffers acquired from {@link #toByteBuffers}, the reader
+     * does not prevent the data from being spilled to disk;
+     * if that happens it transparently switches to reading the file.
+     * Reading also marks this store as recently used.
+     *
+     * @return  new reader
+     */
+    ByteStoreAccess createAccess() throws IOException {
+        synchronized ( this ) {
+            baseOut_.flush();
+        }
+        return new SpillableAccess();
+    }
+
+    /**
+     * Returns the time at which this store was last written or read,
+     * in units of <code>System.nanoTime</code>.
+     *
+     * @return  last access time
+     */
+    long getLastAccess() {
+        return lastAccess_;
+    }
+
+    /**
+     * Moves the data in this store from memory to a temporary file,
+     * if it is currently held in memory and is not pinned there.
+     * Should only be invoked by the owning policy.
+     *
+     * @return   number of bytes of memory released
+     */
+    long spill() throws IOException {
+        long nbyte;
+        synchronized ( this ) {
+            if ( file_ != null || pinned_ || closed_ ) {
+                return 0;
+            }
+            nbyte = memOut_.size();
+            File file = File.createTempFile( "BudgetByteStore", ".bin" );
+            file.deleteOnExit();
+            OutputStream fout = new FileOutputStream( file );
+            try {
+                memOut_.writeTo( fout );
+            }
+            catch ( IOException e ) {
+                fout.close();
+                file.delete();
+                throw e;
+            }
+            logger_.info( "BudgetByteStore: spilling " + nbyte
+                        + " bytes to temp file " + file );
+            file_ = file;
+            baseOut_ = fout;
+            memOut_ = null;
+            generation_++;
+        }
+        policy_.uncharge( ref_, nbyte );
+        return nbyte;
+    }
+
+    /**
+     * Indicates whether this store's data is currently held in memory.
+     * This package-private method is only intended for testing.
+     *
+     * @return  true iff data has not been spilled to disk
+     */
+    synchronized boolean isInMemory() {
+        return file_ == null;
+    }
+
+    /**
+     * Returns the generation number of the data buffers.
+     * This changes when the data moves from memory to disk.
+     *
+     * @return  generation number
+     */
+    private int getGeneration() {
+        return generation_;
+    }
+
+    /**
+     * Returns the current buffers containing this store's data.
+     *
+     * @return  buffer array
+     */
+    private synchronized ByteBuffer[] getBuffers() throws IOException {
+        if ( closed_ ) {
+            throw new IOException( "Store closed" );
+        }
+        if ( file_ == null ) {
+            return new ByteBuffer[] {
+                ByteBuffer.wrap( memOut_.getBuf(), 0, memOut_.size() ),
+            };
+        }
+        else {
+            baseOut_.flush();
+            if ( mappedBufs_ == null ) {
+                mappedBufs_ =
+                    FileByteStore.toByteBuffers( file_, Integer.MAX_VALUE );
+            }
+            ByteBuffer[] bufs = new ByteBuffer[ mappedBufs_.length ];
+            for ( int ib = 0; ib < bufs.length; ib++ ) {
+                bufs[ ib ] = mappedBufs_[ ib ].duplicate();
+            }
+            return bufs;
+        }
+    }
+
+    /**
+     * Writes bytes to the current destination, having obtained
+     * budget for them if they are going to memory.
+     *
+     * @param  bs   byte buffer
+     * @param  off  offset of first byte to write
+     * @param  len  number of bytes to write
+     */
+    private void write( byte[] bs, int off, int len ) throws IOException {
+        lastAccess_ = System.nanoTime();
+        boolean inMemory;
+        synchronized ( this ) {
+            inMemory = file_ == null;
+        }
+        if ( inMemory ) {
+            policy_.charge( ref_, len );
+        }
+        synchronized ( this ) {
+            if ( file_ == null ) {
+                memOut_.write( bs, off, len );
+            }
+            else {
+                if ( inMemory ) {
+                    policy_.uncharge( ref_, len );
+                }
+                baseOut_.write( bs, off, len );
+            }
+            length_ += len;
+            mappedBufs_ = null;
+        }
+    }
+
+    /**
+     * OutputStream implementation returned to the user of this ByteStore.
+     */
+    private class BudgetOutputStream extends OutputStream {
+
+        public void write( int b ) throws IOException {
+            BudgetByteStore.this.write( new byte[] { (byte) b }, 0, 1 );
+        }
+
+        public void write( byte[] bs, int off, int len ) throws IOException {
+            BudgetByteStore.this.write( bs, off, len );
+        }
+
+        public void flush() throws IOException {
+            synchronized ( BudgetByteStore.this ) {
+                baseOut_.flush();
+            }
+        }
+
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * ByteStoreAccess which reads from this store's current buffers,
+     * switching buffers if the data is spilled to disk.
+     * The check is made on each seek.
+     */
+    private class SpillableAccess implements ByteStoreAccess {
+
+        private int gen_;
+        private ByteStoreAccess base_;
+
+        /**
+         * Constructor.
+         */
+        SpillableAccess() throws IOException {
+            gen_ = getGeneration();
+            base_ = NioByteStoreAccess.createAccess( getBuffers() );
+        }
+
+        public void seek( long pos ) throws IOException {
+            lastAccess_ = System.nanoTime();
+            int gen = getGeneration();
+            if ( gen != gen_ ) {
+                base_ = NioByteStoreAccess.createAccess( getBuffers() );
+                gen_ = gen;
+            }
+            base_.seek( pos );
+        }
+
+        public byte readByte() throws IOException {
+            return base_.readByte();
+        }
+
+        public short readShort() throws IOException {
+            return base_.readShort();
+        }
+
+        public char readChar() throws IOException {
+            return base_.readChar();
+        }
+
+        public int readInt() throws IOException {
+            return base_.readInt();
+        }
+
+        public long readLong() throws IOException {
+            return base_.readLong();
+        }
+
+        public float readFloat() throws IOException {
+            return base_.readFloat();
+        }
+
+        public double readDouble() throws IOException {
+            return base_.readDouble();
+        }
+
+        public void readBytes( byte[] b, int off, int len )
+                throws IOException {
+            base_.readBytes( b, off, len );
+        }
+
+        public void skip( int len ) throws IOException {
+            base_.skip( len );
+        }
+    }
+
+    /**
+     * Extension of ByteArrayOutputStream which publicises its buffer.
+     */
+    private static class BytesOutputStream extends ByteArrayOutputStream {
+        public byte[] getBuf() {
+            return buf;
+        }
+    }
+}
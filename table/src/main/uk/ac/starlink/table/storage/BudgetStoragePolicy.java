@@ -0,0 +1,292 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ByteStore;
+
+/**
+ * StoragePolicy which keeps data in memory subject to a fixed budget
+ * shared between all the stores it has created.
+ * Each store holds its data in memory until the total held by all
+ * live stores exceeds the budget; at that point the stores which have
+ * been least recently written or read are moved to temporary files,
+ * until usage falls comfortably below the budget again.
+ * Tables read from spilled stores continue to work,
+ * using memory-mapped access to the files.
+ *
+ * <p>Compared to {@link uk.ac.starlink.table.StoragePolicy#ADAPTIVE},
+ * which makes the memory/disk decision separately for each store,
+ * this means that many moderately sized tables cannot between them
+ * exhaust the heap, while recently used tables stay in memory.
+ * Row stores are covered through the byte stores that back them.
+ *
+ * <p>The current memory usage may be monitored using the
+ * {@link #getMemoryUsage} and related methods.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class BudgetStoragePolicy extends ByteStoreStoragePolicy {
+
+    private final long budget_;
+    private final long lowWater_;
+    private final Set refs_;
+    private final ReferenceQueue queue_;
+    private long usage_;
+    private long spillCount_;
+
+    /** Fraction of the maximum heap size used for the default budget. */
+    public static final double DEFAULT_HEAP_FRACTION = 0.25;
+
+    /** Fraction of the budget to which usage is reduced by spilling. */
+    private static final double LOW_WATER_FRACTION = 0.75;
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.storage" );
+
+    /**
+     * Constructs a policy with a given budget.
+     *
+     * @param  budget  maximum number of bytes held in memory by all
+     *                 the stores created by this policy together
+     */
+    public BudgetStoragePolicy( long budget ) {
+        if ( budget < 0 ) {
+            throw new IllegalArgumentException( "Negative budget " + budget );
+        }
+        budget_ = budget;
+        lowWater_ = (long) ( budget * LOW_WATER_FRACTION );
+        refs_ = new HashSet();
+        queue_ = new ReferenceQueue();
+    }
+
+    /**
+     * Constructs a policy with a default budget,
+     * which is a fixed fraction {@link #DEFAULT_HEAP_FRACTION}
+     * of the maximum heap size.
+     */
+    public BudgetStoragePolicy() {
+        this( getDefaultBudget() );
+    }
+
+    protected ByteStore attemptMakeByteStore() {
+        return new BudgetByteStore( this );
+    }
+
+    /**
+     * Returns the memory budget for this policy.
+     *
+     * @return  maximum number of bytes held in memory
+     */
+    public long getBudget() {
+        return budget_;
+    }
+
+    /**
+     * Returns the number of bytes currently held in memory by stores
+     * created by this policy.
+     *
+     * @return  memory usage in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        expunge();
+        return usage_;
+    }
+
+    /**
+     * Returns the number of stores created by this policy which are
+     * still live, whether their data is held in memory or on disk.
+     *
+     * @return  live store count
+     */
+    public synchronized int getStoreCount() {
+        expunge();
+        return refs_.size();
+    }
+
+    /**
+     * Returns the number of times a store created by this policy
+     * has been moved from memory to disk.
+     *
+     * @return  spill count
+     */
+    public synchronized long getSpillCount() {
+        return spillCount_;
+    }
+
+    public String toString() {
+        return "BudgetStoragePolicy(" + budget_ + ")";
+    }
+
+    /**
+     * Registers a newly created store with this policy.
+     *
+     * @param  store  new store
+     * @return   handle to be used for further interactions with this policy
+     */
+    synchronized StoreRef register( BudgetByteStore store ) {
+        expunge();
+        StoreRef ref = new StoreRef( store, queue_ );
+        refs_.add( ref );
+        return ref;
+    }
+
+    /**
+     * Deregisters a store, releasing any budget it holds.
+     *
+     * @param  ref  store handle
+     */
+    synchronized void unregister( StoreRef ref ) {
+        if ( refs_.remove( ref ) ) {
+            usage_ -= ref.charged_;
+            ref.charged_ = 0;
+        }
+    }
+
+    /**
+     * Records that a store is about to hold more bytes in memory.
+     * If that takes usage over budget, the least recently used stores
+     * are spilled to disk, possibly including the one making the request.
+     * Must not be called while holding the lock on any store.
+     *
+     * @param  ref  store handle
+     * @param  nbyte  number of additional bytes
+     */
+    void charge( StoreRef ref, long nbyte ) {
+        Victim[] victims;
+        synchronized ( this ) {
+            expunge();
+            ref.charged_ += nbyte;
+            usage_ += nbyte;
+            if ( usage_ <= budget_ ) {
+                return;
+            }
+            victims = getVictims();
+        }
+
+        /* Spill outside the policy lock, since spilling requires the
+         * store's lock, and stores call this policy without their
+         * locks held. */
+        for ( int iv = 0; iv < victims.length &&
+                          getMemoryUsage() > lowWater_; iv++ ) {
+            try {
+                if ( victims[ iv ].store_.spill() > 0 ) {
+                    synchronized ( this ) {
+                        spillCount_++;
+                    }
+                }
+            }
+            catch ( IOException e ) {
+                logger_.warning( "Failed to spill store to disk: " + e
+                               + " - keeping in memory" );
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records that a store no longer holds some bytes in memory.
+     *
+     * @param  ref  store handle
+     * @param  nbyte  number of bytes released
+     */
+    synchronized void uncharge( StoreRef ref, long nbyte ) {
+        if ( refs_.contains( ref ) ) {
+            ref.charged_ -= nbyte;
+            usage_ -= nbyte;
+        }
+    }
+
+    /**
+     * Returns the live stores holding memory, in order of least
+     * recent access.  Must be called with the lock held.
+     *
+     * @return  spill candidates, first is best
+     */
+    private Victim[] getVictims() {
+        List vlist = new ArrayList();
+        for ( Iterator it = refs_.iterator(); it.hasNext(); ) {
+            StoreRef ref = (StoreRef) it.next();
+            BudgetByteStore store = (BudgetByteStore) ref.get();
+            if ( store != null && ref.charged_ > 0 ) {
+                vlist.add( new Victim( store ) );
+            }
+        }
+        Victim[] victims = (Victim[]) vlist.toArray( new Victim[ 0 ] );
+        Arrays.sort( victims );
+        return victims;
+    }
+
+    /**
+     * Releases the budget held by stores which have been garbage collected
+     * without being closed.  Must be called with the lock held.
+     */
+    private void expunge() {
+        for ( Reference r; ( r = queue_.poll() ) != null; ) {
+            unregister( (StoreRef) r );
+        }
+    }
+
+    /**
+     * Returns the budget used by the no-arg constructor.
+     *
+     * @return  default budget in bytes
+     */
+    private static long getDefaultBudget() {
+        long maxMem = Runtime.getRuntime().maxMemory();
+        return maxMem == Long.MAX_VALUE
+             ? 256L * 1024 * 1024
+             : (long) ( maxMem * DEFAULT_HEAP_FRACTION );
+    }
+
+    /**
+     * Weak reference to a store, which records the number of bytes
+     * charged to it.
+     */
+    static class StoreRef extends WeakReference {
+        long charged_;
+
+        /**
+         * Constructor.
+         *
+         * @param  store  store
+         * @param  queue  queue for notification of collection
+         */
+        StoreRef( BudgetByteStore store, ReferenceQueue queue ) {
+            super( store, queue );
+        }
+    }
+
+    /**
+     * Aggregates a store with its access time at the moment of selection,
+     * so that candidates can be sorted consistently.
+     */
+    private static class Victim implements Comparable {
+        final BudgetByteStore store_;
+        final long lastAccess_;
+
+        /**
+         * Constructor.
+         *
+         * @param  store  store
+         */
+        Victim( BudgetByteStore store ) {
+            store_ = store;
+            lastAccess_ = store.getLastAccess();
+        }
+
+        public int compareTo( Object o ) {
+            long diff = lastAccess_ - ((Victim) o).lastAccess_;
+            return diff < 0 ? -1 : ( diff > 0 ? 1 : 0 );
+        }
+    }
+}
@@ -3,7 +3,6 @@ package uk.ac.starlink.table.storage;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 import uk.ac.starlink.table.ByteStore;
 import uk.ac.starlink.table.ColumnInfo;
@@ -131,15 +130,20 @@ public class ByteStoreRowStore implements RowStore {
         logger_.config( "Offset type is "
                       + ( offsets_.isFixed() ? "fixed" : "variable" ) );
 
-        /* Create a new StarTable instance based on the data we've cached. */
-        ByteBuffer[] bbufs = byteStore_.toByteBuffers();
-        long nbyte = 0;
-        for ( int ib = 0; ib < bbufs.length; ib++ ) {
-            nbyte += bbufs[ ib ].limit();
+        /* Create a new StarTable instance based on the data we've cached.
+         * A budgeted store may move its data after this point,
+         * so read it using an access object which can follow it. */
+        final ByteStoreAccess access;
+        if ( byteStore_ instanceof BudgetByteStore ) {
+            access = ((BudgetByteStore) byteStore_).createAccess();
         }
-        logger_.config( nrow_ + " rows stored in " + nbyte + " bytes" );
-        ByteStoreAccess access = NioByteStoreAccess.createAccess( bbufs );
-        storedTable_ = new ByteStoreStarTable( template_, nrow_, codecs_,
+        else {
+            access = NioByteStoreAccess
+                    .createAccess( byteStore_.toByteBuffers() );
+        }
+        logger_.config( nrow_ + " rows stored in " + byteStore_.getLength()
+                      + " bytes" );
+        storedTable_ = new ByteStoreStarTable( this, template_, nrow_, codecs_,
                                                offsets_, access );
     }
 
@@ -171,6 +175,7 @@ public class ByteStoreRowStore implements RowStore {
      * StarTable implementation based on a ByteBuffer.
      */
     private static class ByteStoreStarTable extends WrapperStarTable {
+        private final ByteStoreRowStore rowStore_;
         private final ByteStoreAccess access_;
         private final long nrow_;
         private final int ncol_;
@@ -180,16 +185,20 @@ public class ByteStoreRowStore implements RowStore {
         /**
          * Constructor.
          *
+         * @param  rowStore  row store owning the data; a reference is kept
+         *                   so that the storage is not released while
+         *                   this table is in use
          * @param  template  template table giving column metadata etc
          * @param  nrow    row count
          * @param  codecs  per-column de/serializer array
          * @param  offsets  information about row offsets into the byte store
          * @param  access  byte store reader
-         * @param  bbufs   buffers holding byte data
          */
-        ByteStoreStarTable( StarTable template, long nrow, Codec[] codecs,
-                            Offsets offsets, ByteStoreAccess access ) {
+        ByteStoreStarTable( ByteStoreRowStore rowStore, StarTable template,
+                            long nrow, Codec[] codecs, Offsets offsets,
+                            ByteStoreAccess access ) {
             super( template );
+            rowStore_ = rowStore;
             nrow_ = nrow;
             ncol_ = template.getColumnCount();
             codecs_ = codecs;
@@ -0,0 +1,559 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import uk.ac.starlink.table.ValueInfo;
+
+/**
+ * Serializes and deserializes a chunk of values from a single column.
+ * Unlike {@link Codec}, which writes each value independently,
+ * this works on a block of values at once, and can therefore use
+ * encodings which take advantage of the relationships between them,
+ * for instance writing differences between successive integer values
+ * or using a dictionary for repeated strings.
+ * The output is also arranged so that it compresses well
+ * with a general purpose compressor.
+ *
+ * <p>Obtain an instance from the static {@link #getChunkCodec} method.
+ * Instances are stateless and may be used from multiple threads.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+abstract class ChunkCodec {
+
+    /**
+     * Serializes a chunk of values to a stream.
+     *
+     * @param  values  array of values
+     * @param  n   number of values from the start of <code>values</code>
+     *             to write
+     * @param  out  destination stream
+     */
+    public abstract void encodeChunk( Object[] values, int n, DataOutput out )
+            throws IOException;
+
+    /**
+     * Deserializes a chunk of values from a buffer.
+     *
+     * @param  buf  buffer positioned at the start of the serialized chunk
+     * @param  n   number of values in the chunk
+     * @return  array of <code>n</code> values
+     */
+    public abstract Object[] decodeChunk( ByteBuffer buf, int n )
+            throws IOException;
+
+    /**
+     * Returns a chunk codec suitable for serializing/deserializing
+     * the contents of a given ValueInfo.  If no codec can be supplied
+     * to match <code>info</code>, <code>null</code> is returned.
+     *
+     * @param  info  object describing the kind of item which is required
+     *               to be de/serialized
+     * @return  chunk codec for the job, or null
+     */
+    public static ChunkCodec getChunkCodec( ValueInfo info ) {
+        Class clazz = info.getContentClass();
+        if ( clazz == Byte.class ) {
+            return new IntegerChunkCodec( IntegerChunkCodec.BYTE );
+        }
+        else if ( clazz == Short.class ) {
+            return new IntegerChunkCodec( IntegerChunkCodec.SHORT );
+        }
+        else if ( clazz == Integer.class ) {
+            return new IntegerChunkCodec( IntegerChunkCodec.INT );
+        }
+        else if ( clazz == Long.class ) {
+            return new IntegerChunkCodec( IntegerChunkCodec.LONG );
+        }
+        else if ( clazz == Character.class ) {
+            return new IntegerChunkCodec( IntegerChunkCodec.CHAR );
+        }
+        else if ( clazz == Float.class ) {
+            return new FloatingChunkCodec( false );
+        }
+        else if ( clazz == Double.class ) {
+            return new FloatingChunkCodec( true );
+        }
+        else if ( clazz == Boolean.class ) {
+            return new BooleanChunkCodec();
+        }
+        else if ( clazz == String.class ) {
+            return new StringChunkCodec();
+        }
+        else {
+            Codec codec = Codec.getCodec( info );
+            return codec == null ? null
+                                 : new GenericChunkCodec( codec );
+        }
+    }
+
+    /**
+     * Writes an unsigned variable-length integer.
+     * Seven bits are written per byte, with the top bit set on all
+     * but the last byte.
+     *
+     * @param  out  destination stream
+     * @param  value  value, treated as unsigned
+     */
+    static void writeVarLong( DataOutput out, long value )
+            throws IOException {
+        while ( ( value & ~0x7fL ) != 0 ) {
+            out.writeByte( (int) ( ( value & 0x7f ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    /**
+     * Reads an unsigned variable-length integer written by
+     * {@link #writeVarLong}.
+     *
+     * @param  buf  source buffer
+     * @return  value
+     */
+    static long readVarLong( ByteBuffer buf ) {
+        long value = 0;
+        for ( int shift = 0; ; shift += 7 ) {
+            byte b = buf.get();
+            value |= ( b & 0x7fL ) << shift;
+            if ( b >= 0 ) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Writes an array of booleans as a bit mask.
+     *
+     * @param  out  destination stream
+     * @param  flags  flag array
+     * @param  n   number of flags to write
+     */
+    static void writeFlags( DataOutput out, boolean[] flags, int n )
+            throws IOException {
+        for ( int i = 0; i < n; i += 8 ) {
+            int b = 0;
+            for ( int j = 0; j < 8 && i + j < n; j++ ) {
+                if ( flags[ i + j ] ) {
+                    b |= 1 << j;
+                }
+            }
+            out.writeByte( b );
+        }
+    }
+
+    /**
+     * Reads an array of booleans written by {@link #writeFlags}.
+     *
+     * @param  buf  source buffer
+     * @param  n   number of flags to read
+     * @return  flag array
+     */
+    static boolean[] readFlags( ByteBuffer buf, int n ) {
+        boolean[] flags = new boolean[ n ];
+        for ( int i = 0; i < n; i += 8 ) {
+            int b = buf.get();
+            for ( int j = 0; j < 8 && i + j < n; j++ ) {
+                flags[ i + j ] = ( b & ( 1 << j ) ) != 0;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * ChunkCodec for integer-like values.
+     * Values are written as variable-length integers, either as
+     * differences between successive values if the chunk is
+     * non-decreasing (as for instance for a sorted ID column),
+     * or otherwise as offsets from the chunk minimum.
+     */
+    private static class IntegerChunkCodec extends ChunkCodec {
+
+        private final int type_;
+
+        static final int BYTE = 0;
+        static final int SHORT = 1;
+        static final int INT = 2;
+        static final int LONG = 3;
+        static final int CHAR = 4;
+
+        private static final byte DELTA = 1;
+        private static final byte OFFSET = 2;
+
+        /**
+         * Constructor.
+         *
+         * @param  type  value type code
+         */
+        IntegerChunkCodec( int type ) {
+            type_ = type;
+        }
+
+        public void encodeChunk( Object[] values, int n, DataOutput out )
+                throws IOException {
+
+            /* Get long values, and note nulls.  Null entries take the
+             * value of their predecessor, so they do not disturb
+             * runs of sorted values. */
+            long[] lvals = new long[ n ];
+            boolean[] nulls = new boolean[ n ];
+            boolean hasNulls = false;
+            boolean sorted = true;
+            long min = Long.MAX_VALUE;
+            long last = 0;
+            for ( int i = 0; i < n; i++ ) {
+                Object value = values[ i ];
+                long lval;
+                if ( value == null ) {
+                    nulls[ i ] = true;
+                    hasNulls = true;
+                    lval = last;
+                }
+                else {
+                    lval = value instanceof Character
+                         ? (long) ((Character) value).charValue()
+                         : ((Number) value).longValue();
+                    min = Math.min( min, lval );
+                }
+                if ( i > 0 && lval < last ) {
+                    sorted = false;
+                }
+                lvals[ i ] = lval;
+                last = lval;
+            }
+            out.writeBoolean( hasNulls );
+            if ( hasNulls ) {
+                writeFlags( out, nulls, n );
+            }
+            if ( n == 0 ) {
+                return;
+            }
+            if ( sorted ) {
+                out.writeByte( DELTA );
+                out.writeLong( lvals[ 0 ] );
+                for ( int i = 1; i < n; i++ ) {
+                    writeVarLong( out, lvals[ i ] - lvals[ i - 1 ] );
+                }
+            }
+            else {
+                out.writeByte( OFFSET );
+                out.writeLong( min );
+                for ( int i = 0; i < n; i++ ) {
+                    writeVarLong( out, nulls[ i ] ? 0 : lvals[ i ] - min );
+                }
+            }
+        }
+
+        public Object[] decodeChunk( ByteBuffer buf, int n )
+                throws IOException {
+            boolean[] nulls = buf.get() != 0 ? readFlags( buf, n ) : null;
+            Object[] values = new Object[ n ];
+            if ( n == 0 ) {
+                return values;
+            }
+            byte mode = buf.get();
+            long base = buf.getLong();
+            long lval = base;
+            for ( int i = 0; i < n; i++ ) {
+                if ( mode == DELTA ) {
+                    if ( i > 0 ) {
+                        lval += readVarLong( buf );
+                    }
+                }
+                else if ( mode == OFFSET ) {
+                    lval = base + readVarLong( buf );
+                }
+                else {
+                    throw new IOException( "Corrupt chunk" );
+                }
+                if ( nulls == null || ! nulls[ i ] ) {
+                    values[ i ] = toObject( lval );
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Converts a long value to an object of this codec's type.
+         *
+         * @param  lval  value
+         * @return  wrapper object
+         */
+        private Object toObject( long lval ) {
+            switch ( type_ ) {
+                case BYTE:
+                    return new Byte( (byte) lval );
+                case SHORT:
+                    return new Short( (short) lval );
+                case INT:
+                    return new Integer( (int) lval );
+                case LONG:
+                    return new Long( lval );
+                case CHAR:
+                    return new Character( (char) lval );
+                default:
+                    throw new AssertionError();
+            }
+        }
+    }
+
+    /**
+     * ChunkCodec for floating point values.
+     * The bytes of the values are shuffled, so that all the most
+     * significant bytes come first, then all the next most significant
+     * bytes, and so on.  Since sign, exponent and leading mantissa bits
+     * tend to be similar between neighbouring values, this gives
+     * output which is much more compressible than the unshuffled bytes.
+     * Null values are stored as NaN, as for {@link Codec}.
+     */
+    private static class FloatingChunkCodec extends ChunkCodec {
+
+        private final boolean isDouble_;
+        private final int nbyte_;
+
+        /**
+         * Constructor.
+         *
+         * @param  isDouble  true for double precision, false for single
+         */
+        FloatingChunkCodec( boolean isDouble ) {
+            isDouble_ = isDouble;
+            nbyte_ = isDouble ? 8 : 4;
+        }
+
+        public void encodeChunk( Object[] values, int n, DataOutput out )
+                throws IOException {
+            long[] bits = new long[ n ];
+            for ( int i = 0; i < n; i++ ) {
+                Number value = (Number) values[ i ];
+                if ( isDouble_ ) {
+                    double dval = value == null ? Double.NaN
+                                                : value.doubleValue();
+                    bits[ i ] = Double.doubleToRawLongBits( dval );
+                }
+                else {
+                    float fval = value == null ? Float.NaN
+                                               : value.floatValue();
+                    bits[ i ] = Float.floatToRawIntBits( fval );
+                }
+            }
+            byte[] plane = new byte[ n ];
+            for ( int ib = 0; ib < nbyte_; ib++ ) {
+                int shift = 8 * ( nbyte_ - 1 - ib );
+                for ( int i = 0; i < n; i++ ) {
+                    plane[ i ] = (byte) ( bits[ i ] >>> shift );
+                }
+                out.write( plane );
+            }
+        }
+
+        public Object[] decodeChunk( ByteBuffer buf, int n ) {
+            long[] bits = new long[ n ];
+            byte[] plane = new byte[ n ];
+            for ( int ib = 0; ib < nbyte_; ib++ ) {
+                int shift = 8 * ( nbyte_ - 1 - ib );
+                buf.get( plane );
+                for ( int i = 0; i < n; i++ ) {
+                    bits[ i ] |= ( plane[ i ] & 0xffL ) << shift;
+                }
+            }
+            Object[] values = new Object[ n ];
+            for ( int i = 0; i < n; i++ ) {
+                long b = bits[ i ];
+                values[ i ] =
+                    isDouble_ ? (Object) new Double( Double
+                                                    .longBitsToDouble( b ) )
+                              : (Object) new Float( Float
+                                                   .intBitsToFloat( (int) b ) );
+            }
+            return values;
+        }
+    }
+
+    /**
+     * ChunkCodec for boolean values.  One byte is written per value.
+     */
+    private static class BooleanChunkCodec extends ChunkCodec {
+
+        public void encodeChunk( Object[] values, int n, DataOutput out )
+                throws IOException {
+            for ( int i = 0; i < n; i++ ) {
+                Object value = values[ i ];
+                out.writeByte( value == null
+                             ? 2
+                             : ( ((Boolean) value).booleanValue() ? 1 : 0 ) );
+            }
+        }
+
+        public Object[] decodeChunk( ByteBuffer buf, int n ) {
+            Object[] values = new Object[ n ];
+            for ( int i = 0; i < n; i++ ) {
+                switch ( buf.get() ) {
+                    case 0:
+                        values[ i ] = Boolean.FALSE;
+                        break;
+                    case 1:
+                        values[ i ] = Boolean.TRUE;
+                        break;
+                    default:
+                        values[ i ] = null;
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * ChunkCodec for string values.
+     * If the chunk contains only a few distinct values they are
+     * written once each as a dictionary, followed by a dictionary index
+     * for each value; otherwise each value is written in full.
+     */
+    private static class StringChunkCodec extends ChunkCodec {
+
+        private static final byte PLAIN = 1;
+        private static final byte DICT = 2;
+
+        /** Largest dictionary size as a fraction of the chunk size. */
+        private static final int DICT_FRACTION = 4;
+
+        public void encodeChunk( Object[] values, int n, DataOutput out )
+                throws IOException {
+            int maxDict = n / DICT_FRACTION;
+            Map dictMap = new HashMap();
+            List dictList = new ArrayList();
+            for ( int i = 0; i < n && dictList.size() <= maxDict; i++ ) {
+                Object value = values[ i ];
+                if ( value != null && ! dictMap.containsKey( value ) ) {
+                    dictMap.put( value, new Integer( dictList.size() + 1 ) );
+                    dictList.add( value );
+                }
+            }
+            if ( dictList.size() <= maxDict ) {
+                out.writeByte( DICT );
+                int ndict = dictList.size();
+                writeVarLong( out, ndict );
+                for ( int id = 0; id < ndict; id++ ) {
+                    writeString( out, (String) dictList.get( id ) );
+                }
+                for ( int i = 0; i < n; i++ ) {
+                    Object value = values[ i ];
+                    writeVarLong( out, value == null
+                                     ? 0
+                                     : ((Integer) dictMap.get( value ))
+                                      .intValue() );
+                }
+            }
+            else {
+                out.writeByte( PLAIN );
+                for ( int i = 0; i < n; i++ ) {
+                    writeString( out, (String) values[ i ] );
+                }
+            }
+        }
+
+        public Object[] decodeChunk( ByteBuffer buf, int n )
+                throws IOException {
+            Object[] values = new Object[ n ];
+            byte mode = buf.get();
+            if ( mode == DICT ) {
+                int ndict = (int) readVarLong( buf );
+                String[] dict = new String[ ndict + 1 ];
+                for ( int id = 1; id <= ndict; id++ ) {
+                    dict[ id ] = readString( buf );
+                }
+                for ( int i = 0; i < n; i++ ) {
+                    values[ i ] = dict[ (int) readVarLong( buf ) ];
+                }
+            }
+            else if ( mode == PLAIN ) {
+                for ( int i = 0; i < n; i++ ) {
+                    values[ i ] = readString( buf );
+                }
+            }
+            else {
+                throw new IOException( "Corrupt chunk" );
+            }
+            return values;
+        }
+
+        /**
+         * Writes a string as its UTF-8 byte count plus one
+         * (or zero for null) followed by its bytes.
+         *
+         * @param  out  destination stream
+         * @param  str  string, may be null
+         */
+        private static void writeString( DataOutput out, String str )
+                throws IOException {
+            if ( str == null ) {
+                writeVarLong( out, 0 );
+            }
+            else {
+                byte[] bytes = str.getBytes( "UTF-8" );
+                writeVarLong( out, bytes.length + 1 );
+                out.write( bytes );
+            }
+        }
+
+        /**
+         * Reads a string written by {@link #writeString}.
+         *
+         * @param  buf  source buffer
+         * @return  string, may be null
+         */
+        private static String readString( ByteBuffer buf )
+                throws IOException {
+            int leng1 = (int) readVarLong( buf );
+            if ( leng1 == 0 ) {
+                return null;
+            }
+            else {
+                byte[] bytes = new byte[ leng1 - 1 ];
+                buf.get( bytes );
+                return new String( bytes, "UTF-8" );
+            }
+        }
+    }
+
+    /**
+     * ChunkCodec which writes values one after another using
+     * a per-value {@link Codec}.
+     */
+    private static class GenericChunkCodec extends ChunkCodec {
+
+        private final Codec codec_;
+
+        /**
+         * Constructor.
+         *
+         * @param  codec  codec for individual values
+         */
+        GenericChunkCodec( Codec codec ) {
+            codec_ = codec;
+        }
+
+        public void encodeChunk( Object[] values, int n, DataOutput out )
+                throws IOException {
+            for ( int i = 0; i < n; i++ ) {
+                codec_.encode( values[ i ], out );
+            }
+        }
+
+        public Object[] decodeChunk( ByteBuffer buf, int n )
+                throws IOException {
+            ByteStoreAccess in = new SingleNioAccess( buf );
+            Object[] values = new Object[ n ];
+            for ( int i = 0; i < n; i++ ) {
+                values[ i ] = codec_.decode( in );
+            }
+            return values;
+        }
+    }
+}
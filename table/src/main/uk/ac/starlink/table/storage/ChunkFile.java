@@ -0,0 +1,128 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scratch file to which blocks of bytes are appended, and from which
+ * they can subsequently be read back by position.
+ * Blocks are written sequentially, then after a call to {@link #endWrite}
+ * they may be read back concurrently from any number of threads.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class ChunkFile {
+
+    private final File file_;
+    private OutputStream out_;
+    private long length_;
+    private RandomAccessFile raf_;
+    private FileChannel chan_;
+
+    /**
+     * Constructor.
+     *
+     * @param  file  scratch file;
+     *               it is the caller's responsibility to clear this up
+     */
+    public ChunkFile( File file ) throws IOException {
+        file_ = file;
+        out_ = new BufferedOutputStream( new FileOutputStream( file ),
+                                         64 * 1024 );
+    }
+
+    /**
+     * Appends a block of bytes to the file.
+     *
+     * @param  buf  buffer containing bytes
+     * @param  off  offset into buffer of first byte to write
+     * @param  len  number of bytes to write
+     * @return   offset into file at which the block was written
+     */
+    public long write( byte[] buf, int off, int len ) throws IOException {
+        if ( out_ == null ) {
+            throw new IllegalStateException( "Writing finished" );
+        }
+        long pos = length_;
+        out_.write( buf, off, len );
+        length_ += len;
+        return pos;
+    }
+
+    /**
+     * Signals that no more blocks will be written,
+     * and that reads may be made.
+     */
+    public void endWrite() throws IOException {
+        out_.close();
+        out_ = null;
+        raf_ = new RandomAccessFile( file_, "r" );
+        chan_ = raf_.getChannel();
+    }
+
+    /**
+     * Reads a block of bytes from the file.
+     * This method may be called concurrently from multiple threads.
+     *
+     * @param  pos   offset into file of first byte to read
+     * @param  len   number of bytes to read
+     * @return  new buffer containing the requested bytes,
+     *          positioned at its start
+     */
+    public ByteBuffer read( long pos, int len ) throws IOException {
+        ByteBuffer bbuf = ByteBuffer.allocate( len );
+        while ( bbuf.hasRemaining() ) {
+            if ( chan_.read( bbuf, pos + bbuf.position() ) < 0 ) {
+                throw new EOFException();
+            }
+        }
+        bbuf.flip();
+        return bbuf;
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     *
+     * @return  file length
+     */
+    public long getLength() {
+        return length_;
+    }
+
+    /**
+     * Releases resources.  This object may not subsequently be used.
+     * Calling this method more than once has no further effect.
+     */
+    public void close() {
+        try {
+            if ( out_ != null ) {
+                out_.close();
+            }
+            if ( raf_ != null ) {
+                raf_.close();
+            }
+        }
+        catch ( IOException e ) {
+        }
+        out_ = null;
+        raf_ = null;
+        chan_ = null;
+    }
+
+    protected void finalize() throws Throwable {
+        try {
+            close();
+        }
+        finally {
+            super.finalize();
+        }
+    }
+}
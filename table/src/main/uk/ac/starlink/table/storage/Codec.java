@@ -3,6 +3,7 @@ package uk.ac.starlink.table.storage;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 import uk.ac.starlink.table.ValueInfo;
 
@@ -20,6 +21,10 @@ import uk.ac.starlink.table.ValueInfo;
  * arrays of same, but new Codec instances for different classes
  * can be added.
  *
+ * <p>A codec instance may be shared between several readers of the
+ * same column, which may be used concurrently from different threads,
+ * so decoding must not make use of per-instance working storage.
+ *
  * @author   Mark Taylor (Starlink)
  * @since    3 Aug 2004
  */
@@ -55,6 +60,40 @@ abstract class Codec {
      */
     abstract int getItemSize();
 
+    /**
+     * Indicates whether this codec can decode values as primitive doubles
+     * using the {@link #decodeDouble} method without creating any objects.
+     * The default implementation returns false.
+     *
+     * @return  true iff <code>decodeDouble</code> is efficient
+     */
+    boolean canDecodeDouble() {
+        return false;
+    }
+
+    /**
+     * Deserializes a value from a byte buffer as a primitive double.
+     * Null and non-numeric values are returned as NaN.
+     * This method reads the buffer using absolute positioning,
+     * so does not affect its current position.
+     *
+     * <p>The default implementation decodes the value as an object
+     * and converts it.  Codecs which return true from
+     * {@link #canDecodeDouble} override it to read the value directly
+     * without creating any objects.
+     *
+     * @param  buf  buffer containing serialized data
+     * @param  pos  offset into <code>buf</code> of the start of the item
+     * @return  deserialized value
+     */
+    double decodeDouble( ByteBuffer buf, int pos ) throws IOException {
+        ByteBuffer dup = buf.duplicate();
+        dup.position( pos );
+        Object value = decode( new SingleNioAccess( dup ) );
+        return value instanceof Number ? ((Number) value).doubleValue()
+                                       : Double.NaN;
+    }
+
     /**
      * Returns a codec suitable for serializing/deserializing the contents
      * of a given ValueInfo.  If no codec can be supplied to match
@@ -171,6 +210,12 @@ abstract class Codec {
         public int getItemSize() {
             return 1;
         }
+        boolean canDecodeDouble() {
+            return true;
+        }
+        double decodeDouble( ByteBuffer buf, int pos ) {
+            return buf.get( pos );
+        }
     }
 
     private static class ShortCodec extends Codec {
@@ -184,6 +229,12 @@ abstract class Codec {
         public int getItemSize() {
             return 2;
         }
+        boolean canDecodeDouble() {
+            return true;
+        }
+        double decodeDouble( ByteBuffer buf, int pos ) {
+            return buf.getShort( pos );
+        }
     }
 
     private static class IntCodec extends Codec {
@@ -197,6 +248,12 @@ abstract class Codec {
         public int getItemSize() {
             return 4;
         }
+        boolean canDecodeDouble() {
+            return true;
+        }
+        double decodeDouble( ByteBuffer buf, int pos ) {
+            return buf.getInt( pos );
+        }
     }
 
     private static class LongCodec extends Codec {
@@ -237,6 +294,12 @@ abstract class Codec {
         public int getItemSize() {
             return 4;
         }
+        boolean canDecodeDouble() {
+            return true;
+        }
+        double decodeDouble( ByteBuffer buf, int pos ) {
+            return buf.getFloat( pos );
+        }
     }
 
     private static class DoubleCodec extends Codec {
@@ -251,6 +314,12 @@ abstract class Codec {
         public int getItemSize() {
             return 8;
         }
+        boolean canDecodeDouble() {
+            return true;
+        }
+        double decodeDouble( ByteBuffer buf, int pos ) {
+            return buf.getDouble( pos );
+        }
     }
 
     private static class BooleanCodec extends Codec {
@@ -324,6 +393,21 @@ abstract class Codec {
         public int getItemSize() {
             return itemSize_;
         }
+
+        boolean canDecodeDouble() {
+            return baseCodec_.canDecodeDouble();
+        }
+
+        double decodeDouble( ByteBuffer buf, int pos ) throws IOException {
+            switch ( buf.get( pos ) ) {
+                case OK:
+                    return baseCodec_.decodeDouble( buf, pos + 1 );
+                case BAD:
+                    return Double.NaN;
+            }
+            this.warnCorrupt();
+            return Double.NaN;
+        }
     }
 
     /**
@@ -407,11 +491,9 @@ abstract class Codec {
     private static class FixedStringCodec extends Codec {
 
         final int nchar_;
-        final char[] cbuf_;
 
         FixedStringCodec( int nchar ) {
             nchar_ = nchar;
-            cbuf_ = new char[ nchar_ ];
         }
 
         public int encode( Object value, DataOutput out ) throws IOException {
@@ -430,16 +512,20 @@ abstract class Codec {
         }
 
         public Object decode( ByteStoreAccess in ) throws IOException {
+
+            /* Use a new buffer for each call; codec instances are shared
+             * between readers which may be used from different threads. */
+            char[] cbuf = new char[ nchar_ ];
             int lastNonZero = -1;
             for ( int ic = 0; ic < nchar_; ic++ ) {
                 char c = in.readChar();
                 if ( c != 0 ) {
                     lastNonZero = ic;
                 }
-                cbuf_[ ic ] = c;
+                cbuf[ ic ] = c;
             }
             return lastNonZero < 0 ? null
-                                   : new String( cbuf_, 0, lastNonZero + 1 );
+                                   : new String( cbuf, 0, lastNonZero + 1 );
         }
         public int getItemSize() {
             return nchar_ * 2;
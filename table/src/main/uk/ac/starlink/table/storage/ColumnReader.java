@@ -0,0 +1,23 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.IOException;
+
+/**
+ * Provides random access to the data in a {@link ColumnStore}.
+ * An instance of this class has its own read position, so that
+ * different instances may be used concurrently from different threads,
+ * though a single instance is not safe for concurrent use.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+interface ColumnReader {
+
+    /**
+     * Retrieves a datum from the column store.
+     *
+     * @param  lrow  index of datum to retrieve
+     * @return  the <code>lrow</code><sup>th</sup> written value
+     */
+    Object readCell( long lrow ) throws IOException;
+}
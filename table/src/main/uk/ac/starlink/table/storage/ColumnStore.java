@@ -11,7 +11,7 @@ import java.io.IOException;
  * <ol>
  * <li>Zero or more calls of {@link #acceptCell}</li>
  * <li>A call of {@link #endCells}</li>
- * <li>Zero or more calls of {@link #readCell}</li>
+ * <li>Zero or more calls of {@link #readCell} or {@link #createReader}</li>
  * <li>Optionally, a call to {@link #dispose}</li>
  * <ol>
  * Behaviour will be undefined if you violate this sequence.
@@ -44,6 +44,15 @@ interface ColumnStore {
      */
     Object readCell( long lrow ) throws IOException;
 
+    /**
+     * Returns a new object which can read data from this store
+     * independently of other readers.
+     * May only be called after {@link #endCells}.
+     *
+     * @return  new column reader
+     */
+    ColumnReader createReader();
+
     /**
      * Releases any resources.  This object may not subsequently be used.
      */
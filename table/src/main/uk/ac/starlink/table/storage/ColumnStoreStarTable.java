@@ -1,7 +1,8 @@
 package uk.ac.starlink.table.storage;
 
 import java.io.IOException;
-import uk.ac.starlink.table.RandomRowSequence;
+import uk.ac.starlink.table.BlockRowSequence;
+import uk.ac.starlink.table.RowAccess;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.WrapperStarTable;
@@ -10,6 +11,11 @@ import uk.ac.starlink.table.WrapperStarTable;
  * StarTable implementation which retrieves its data from 
  * {@link ColumnStore} objects.
  *
+ * <p>Row sequences implement {@link uk.ac.starlink.table.BlockRowSequence};
+ * where a column store provides a {@link DoubleColumnReader},
+ * blocks of numeric column values are read straight from the
+ * underlying buffer without creating an object for each cell.
+ *
  * @author   Mark Taylor
  * @since    21 Jun 2006
  */
@@ -55,7 +61,152 @@ class ColumnStoreStarTable extends WrapperStarTable {
         return row;
     }
 
-    public RowSequence getRowSequence() throws IOException {
-        return new RandomRowSequence( this );
+    /**
+     * Returns a row sequence which uses its own column readers,
+     * and which implements {@link uk.ac.starlink.table.BlockRowSequence}.
+     */
+    public RowSequence getRowSequence() {
+        return new ColumnStoreRowSequence();
+    }
+
+    /**
+     * Returns a row access which uses its own column readers,
+     * so that it does not contend with other row accesses.
+     */
+    public RowAccess getRowAccess() {
+        final ColumnReader[] colReaders = new ColumnReader[ ncol_ ];
+        return new RowAccess() {
+            private long irow_ = -1;
+            public void setRowIndex( long irow ) {
+                irow_ = irow;
+            }
+            public Object getCell( int icol ) throws IOException {
+                if ( irow_ < 0 ) {
+                    throw new IllegalStateException( "No current row" );
+                }
+                ColumnReader colReader = colReaders[ icol ];
+                if ( colReader == null ) {
+                    colReader = colStores_[ icol ].createReader();
+                    colReaders[ icol ] = colReader;
+                }
+                return colReader.readCell( irow_ );
+            }
+            public Object[] getRow() throws IOException {
+                Object[] row = new Object[ ncol_ ];
+                for ( int icol = 0; icol < ncol_; icol++ ) {
+                    row[ icol ] = getCell( icol );
+                }
+                return row;
+            }
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Row sequence implementation for this table.
+     */
+    private class ColumnStoreRowSequence implements BlockRowSequence {
+        private final ColumnReader[] colReaders_;
+        private long irow_;
+        private long blockStart_;
+        private int nblock_;
+        private boolean inBlock_;
+
+        ColumnStoreRowSequence() {
+            colReaders_ = new ColumnReader[ ncol_ ];
+            irow_ = -1;
+        }
+
+        public boolean next() {
+            inBlock_ = false;
+            if ( irow_ < nrow_ - 1 ) {
+                irow_++;
+                return true;
+            }
+            else {
+                irow_ = nrow_;
+                return false;
+            }
+        }
+
+        public Object getCell( int icol ) throws IOException {
+            if ( inBlock_ || irow_ < 0 || irow_ >= nrow_ ) {
+                throw new IllegalStateException( "No current row" );
+            }
+            return getReader( icol ).readCell( irow_ );
+        }
+
+        public Object[] getRow() throws IOException {
+            Object[] row = new Object[ ncol_ ];
+            for ( int icol = 0; icol < ncol_; icol++ ) {
+                row[ icol ] = getCell( icol );
+            }
+            return row;
+        }
+
+        public int nextBlock( int maxRows ) {
+            blockStart_ = Math.min( irow_ + 1, nrow_ );
+            nblock_ = (int) Math.min( (long) maxRows, nrow_ - blockStart_ );
+            irow_ = blockStart_ + nblock_ - 1;
+            inBlock_ = true;
+            return nblock_;
+        }
+
+        public void getDoubleBlock( int icol, double[] buf, int off )
+                throws IOException {
+            checkBlock();
+            ColumnReader reader = getReader( icol );
+            if ( reader instanceof DoubleColumnReader ) {
+                DoubleColumnReader dReader = (DoubleColumnReader) reader;
+                for ( int i = 0; i < nblock_; i++ ) {
+                    buf[ off + i ] = dReader.readDouble( blockStart_ + i );
+                }
+            }
+            else {
+                for ( int i = 0; i < nblock_; i++ ) {
+                    Object value = reader.readCell( blockStart_ + i );
+                    buf[ off + i ] = value instanceof Number
+                                   ? ((Number) value).doubleValue()
+                                   : Double.NaN;
+                }
+            }
+        }
+
+        public void getObjectBlock( int icol, Object[] buf, int off )
+                throws IOException {
+            checkBlock();
+            ColumnReader reader = getReader( icol );
+            for ( int i = 0; i < nblock_; i++ ) {
+                buf[ off + i ] = reader.readCell( blockStart_ + i );
+            }
+        }
+
+        public void close() {
+        }
+
+        /**
+         * Returns the reader for a given column, creating it if necessary.
+         *
+         * @param  icol  column index
+         * @return  column reader
+         */
+        private ColumnReader getReader( int icol ) {
+            ColumnReader reader = colReaders_[ icol ];
+            if ( reader == null ) {
+                reader = colStores_[ icol ].createReader();
+                colReaders_[ icol ] = reader;
+            }
+            return reader;
+        }
+
+        /**
+         * Throws an exception if there is no current block.
+         */
+        private void checkBlock() {
+            if ( ! inBlock_ ) {
+                throw new IllegalStateException( "No current block" );
+            }
+        }
     }
 }
@@ -0,0 +1,283 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ColumnStore implementation which stores data in compressed chunks.
+ * Values are accumulated until a chunk of a fixed number of rows is
+ * full; the chunk is then serialized using a {@link ChunkCodec},
+ * compressed, and appended to a {@link ChunkFile}.
+ * Reading a value requires decompressing the chunk that contains it,
+ * but each reader keeps its most recently decoded chunk,
+ * so sequential or local access is efficient.
+ *
+ * <p>Each chunk is written as a flag byte indicating whether the
+ * data is compressed, an int giving the uncompressed length,
+ * and the data bytes.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+class CompressedColumnStore implements ColumnStore {
+
+    private final ChunkCodec codec_;
+    private final ChunkFile chunkFile_;
+    private final int chunkRows_;
+    private final Object[] buf_;
+    private final ChunkOutput dout_;
+    private final Deflater deflater_;
+    private byte[] zbuf_;
+    private int nbuf_;
+    private long nrow_;
+    private int nchunk_;
+    private long[] chunkOffsets_;
+    private int[] chunkLengths_;
+    private ColumnReader reader_;
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATED = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param  codec  chunk serializer for the type of data stored in
+     *                this column
+     * @param  chunkFile  file to which compressed chunks are written;
+     *                    may be shared with other column stores
+     * @param  chunkRows  number of rows in each chunk
+     */
+    public CompressedColumnStore( ChunkCodec codec, ChunkFile chunkFile,
+                                  int chunkRows ) {
+        codec_ = codec;
+        chunkFile_ = chunkFile;
+        chunkRows_ = chunkRows;
+        buf_ = new Object[ chunkRows ];
+        dout_ = new ChunkOutput();
+        deflater_ = new Deflater( Deflater.BEST_SPEED, true );
+        chunkOffsets_ = new long[ 16 ];
+        chunkLengths_ = new int[ 16 ];
+    }
+
+    public void acceptCell( Object value ) throws IOException {
+        buf_[ nbuf_++ ] = value;
+        nrow_++;
+        if ( nbuf_ == chunkRows_ ) {
+            writeChunk();
+        }
+    }
+
+    /**
+     * Writes any buffered values as a final chunk.
+     * The chunk file must subsequently be readied for reading
+     * by calling its {@link ChunkFile#endWrite} method before any of the
+     * reading methods of this object are called.
+     */
+    public void endCells() throws IOException {
+        if ( nbuf_ > 0 ) {
+            writeChunk();
+        }
+        deflater_.end();
+        zbuf_ = null;
+    }
+
+    public synchronized Object readCell( long lrow ) throws IOException {
+        if ( reader_ == null ) {
+            reader_ = createReader();
+        }
+        return reader_.readCell( lrow );
+    }
+
+    public ColumnReader createReader() {
+        return new ColumnReader() {
+            private int ichunk_ = -1;
+            private Object[] values_;
+            public Object readCell( long lrow ) throws IOException {
+                if ( lrow < 0 || lrow >= nrow_ ) {
+                    throw new IllegalArgumentException( "Row " + lrow
+                                                      + " out of range" );
+                }
+                int ichunk = (int) ( lrow / chunkRows_ );
+                if ( ichunk != ichunk_ ) {
+                    values_ = readChunk( ichunk );
+                    ichunk_ = ichunk;
+                }
+                return values_[ (int) ( lrow % chunkRows_ ) ];
+            }
+        };
+    }
+
+    public void dispose() {
+        deflater_.end();
+    }
+
+    /**
+     * Serializes, compresses and writes the currently buffered values.
+     */
+    private void writeChunk() throws IOException {
+
+        /* Serialize the values, leaving room for the header. */
+        dout_.reset();
+        dout_.writeByte( RAW );
+        dout_.writeInt( 0 );
+        codec_.encodeChunk( buf_, nbuf_, dout_ );
+        dout_.flush();
+        byte[] raw = dout_.getBuffer();
+        int nhead = 5;
+        int nraw = dout_.size() - nhead;
+
+        /* Compress them.  If that doesn't save space, store them raw. */
+        if ( zbuf_ == null || zbuf_.length < nraw + nhead ) {
+            zbuf_ = new byte[ nraw + nhead ];
+        }
+        deflater_.reset();
+        deflater_.setInput( raw, nhead, nraw );
+        deflater_.finish();
+        int nz = nhead;
+        while ( ! deflater_.finished() && nz < nraw ) {
+            nz += deflater_.deflate( zbuf_, nz, nraw + nhead - nz );
+        }
+        byte[] record;
+        int nrec;
+        if ( deflater_.finished() && nz < nraw + nhead ) {
+            record = zbuf_;
+            nrec = nz;
+            record[ 0 ] = DEFLATED;
+        }
+        else {
+            record = raw;
+            nrec = nraw + nhead;
+            record[ 0 ] = RAW;
+        }
+        record[ 1 ] = (byte) ( nraw >>> 24 );
+        record[ 2 ] = (byte) ( nraw >>> 16 );
+        record[ 3 ] = (byte) ( nraw >>> 8 );
+        record[ 4 ] = (byte) nraw;
+
+        /* Write the chunk and note its position. */
+        if ( nchunk_ == chunkOffsets_.length ) {
+            int nc = nchunk_ * 2;
+            long[] offsets = new long[ nc ];
+            int[] lengths = new int[ nc ];
+            System.arraycopy( chunkOffsets_, 0, offsets, 0, nchunk_ );
+            System.arraycopy( chunkLengths_, 0, lengths, 0, nchunk_ );
+            chunkOffsets_ = offsets;
+            chunkLengths_ = lengths;
+        }
+        chunkOffsets_[ nchunk_ ] = chunkFile_.write( record, 0, nrec );
+        chunkLengths_[ nchunk_ ] = nrec;
+        nchunk_++;
+        Arrays.fill( buf_, 0, nbuf_, null );
+        nbuf_ = 0;
+    }
+
+    /**
+     * Reads, decompresses and deserializes a chunk.
+     * May be called concurrently from different threads.
+     *
+     * @param  ichunk  chunk index
+     * @return  array of values in the chunk
+     */
+    private Object[] readChunk( int ichunk ) throws IOException {
+        ByteBuffer record = chunkFile_.read( chunkOffsets_[ ichunk ],
+                                             chunkLengths_[ ichunk ] );
+        byte flag = record.get();
+        int nraw = record.getInt();
+        ByteBuffer data;
+        if ( flag == RAW ) {
+            data = record;
+        }
+        else if ( flag == DEFLATED ) {
+            byte[] raw = new byte[ nraw ];
+            Inflater inflater = new Inflater( true );
+            try {
+                inflater.setInput( record.array(), record.position(),
+                                   record.remaining() );
+                int n = 0;
+                while ( n < nraw ) {
+                    int nr = inflater.inflate( raw, n, nraw - n );
+                    if ( nr == 0 && ( inflater.finished() ||
+                                      inflater.needsInput() ) ) {
+                        throw new IOException( "Truncated chunk" );
+                    }
+                    n += nr;
+                }
+            }
+            catch ( DataFormatException e ) {
+                throw (IOException) new IOException( "Corrupt chunk" )
+                                   .initCause( e );
+            }
+            finally {
+                inflater.end();
+            }
+            data = ByteBuffer.wrap( raw );
+        }
+        else {
+            throw new IOException( "Corrupt chunk" );
+        }
+        int nval = (int) Math.min( chunkRows_,
+                                   nrow_ - (long) ichunk * chunkRows_ );
+        return codec_.decodeChunk( data, nval );
+    }
+
+    /**
+     * DataOutputStream writing to an expandable byte array,
+     * which provides access to the array without copying.
+     */
+    private static class ChunkOutput extends DataOutputStream {
+
+        /**
+         * Constructor.
+         */
+        ChunkOutput() {
+            super( new ExposedByteArrayOutputStream() );
+        }
+
+        /**
+         * Discards the content of this stream.
+         */
+        void reset() {
+            ((ExposedByteArrayOutputStream) out).reset();
+            written = 0;
+        }
+
+        /**
+         * Returns the buffer containing the bytes written.
+         * Only the first {@link #size} bytes are meaningful.
+         *
+         * @return  byte buffer
+         */
+        byte[] getBuffer() {
+            return ((ExposedByteArrayOutputStream) out).getBuffer();
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream which exposes its buffer.
+     */
+    private static class ExposedByteArrayOutputStream
+            extends ByteArrayOutputStream {
+
+        /**
+         * Constructor.
+         */
+        ExposedByteArrayOutputStream() {
+            super( 64 * 1024 );
+        }
+
+        /**
+         * Returns the buffer containing the bytes written.
+         *
+         * @return  byte buffer
+         */
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
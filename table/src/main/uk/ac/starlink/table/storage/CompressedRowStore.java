@@ -0,0 +1,194 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowStore;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.TableFormatException;
+
+/**
+ * RowStore implementation which stores cell data in a column-oriented
+ * and compressed fashion.
+ * The data for each column is divided into chunks of a fixed number
+ * of rows, and each chunk is encoded in a way suited to the column's
+ * data type (differences between successive values for sorted integers,
+ * byte-shuffled floating point values, dictionaries for strings with
+ * few distinct values), then compressed.
+ * All the chunks are written to a single scratch file.
+ *
+ * <p>Compared to {@link SidewaysRowStore} this usually requires much
+ * less disk space, and therefore less I/O when scanning the data,
+ * at the cost of some CPU time for compression and decompression.
+ * Random access remains usable, since only the chunk containing
+ * a requested cell needs to be decompressed.
+ *
+ * <p>When the stored table is no longer required, {@link #close}
+ * may be called to close and delete the scratch file straight away.
+ * If that is not done, the file is deleted when this store is
+ * garbage collected, or failing that when the JVM exits.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class CompressedRowStore implements RowStore {
+
+    private final File file_;
+    private final int chunkRows_;
+    private int ncol_;
+    private StarTable template_;
+    private long lrow_;
+    private ChunkFile chunkFile_;
+    private ColumnStore[] colStores_;
+    private StarTable storedTable_;
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.table.storage" );
+
+    /** Default number of rows in each compressed chunk. */
+    public static final int DEFAULT_CHUNK_ROWS = 16384;
+
+    /**
+     * Constructs a new row store with a given scratch file and chunk size.
+     *
+     * @param   file  scratch file
+     * @param   chunkRows  number of rows in each compressed chunk
+     */
+    public CompressedRowStore( File file, int chunkRows ) {
+        if ( chunkRows <= 0 ) {
+            throw new IllegalArgumentException( "Bad chunk size "
+                                              + chunkRows );
+        }
+        file_ = file;
+        chunkRows_ = chunkRows;
+    }
+
+    /**
+     * Constructs a new row store with an automatically chosen (and
+     * guaranteed unique) scratch file and the default chunk size.
+     */
+    public CompressedRowStore() throws IOException {
+        this( File.createTempFile( "CompressedRowStore", ".bin" ),
+              DEFAULT_CHUNK_ROWS );
+        file_.deleteOnExit();
+    }
+
+    public void acceptMetadata( StarTable meta ) throws TableFormatException {
+        if ( template_ != null ) {
+            throw new IllegalStateException( "Metadata already submitted" );
+        }
+        ncol_ = meta.getColumnCount();
+        ChunkCodec[] codecs = new ChunkCodec[ ncol_ ];
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            ColumnInfo cinfo = meta.getColumnInfo( icol );
+            ChunkCodec codec = ChunkCodec.getChunkCodec( cinfo );
+            if ( codec == null ) {
+                tidy();
+                throw new TableFormatException( "No codec available for " +
+                                                cinfo );
+            }
+            codecs[ icol ] = codec;
+        }
+        logger_.info( "Storing compressed table data in " + file_ );
+        file_.deleteOnExit();
+        try {
+            chunkFile_ = new ChunkFile( file_ );
+        }
+        catch ( IOException e ) {
+            tidy();
+            throw new TableFormatException( "I/O trouble during RowStore setup",
+                                            e );
+        }
+        colStores_ = new ColumnStore[ ncol_ ];
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            colStores_[ icol ] =
+                new CompressedColumnStore( codecs[ icol ], chunkFile_,
+                                           chunkRows_ );
+        }
+        template_ = meta;
+    }
+
+    public void acceptRow( Object[] row ) throws IOException {
+        if ( template_ == null ) {
+            throw new IllegalStateException( "acceptMetadata not called" );
+        }
+        if ( storedTable_ != null ) {
+            throw new IllegalStateException( "endRows already called" );
+        }
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            colStores_[ icol ].acceptCell( row[ icol ] );
+        }
+        lrow_++;
+    }
+
+    public void endRows() throws IOException {
+        if ( template_ == null ) {
+            throw new IllegalStateException( "acceptMetadata not called" );
+        }
+        if ( storedTable_ != null ) {
+            throw new IllegalStateException( "endRows already called" );
+        }
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            colStores_[ icol ].endCells();
+        }
+        chunkFile_.endWrite();
+        logger_.info( "Compressed table data: " + lrow_ + " rows, "
+                    + chunkFile_.getLength() + " bytes" );
+        storedTable_ = new ColumnStoreStarTable( template_, lrow_, colStores_ );
+    }
+
+    public StarTable getStarTable() {
+        if ( storedTable_ == null ) {
+            throw new IllegalStateException( "endRows not called" );
+        }
+        return storedTable_;
+    }
+
+    /**
+     * Releases the resources held by this store, closing and deleting
+     * its scratch file.
+     * Neither this object nor the table returned by
+     * {@link #getStarTable} may be used following a call to this method.
+     * Calling it more than once has no further effect.
+     */
+    public void close() {
+        tidy();
+        if ( chunkFile_ != null ) {
+            chunkFile_.close();
+        }
+    }
+
+    /**
+     * Tidies up resources associated with this store.
+     * This object may no longer be used following a call to this method.
+     * The chunk file is not closed here, since it may still be in use
+     * by the stored table; it closes itself when no longer referenced.
+     */
+    private void tidy() {
+        if ( colStores_ != null ) {
+            for ( int icol = 0; icol < ncol_; icol++ ) {
+                ColumnStore cs = colStores_[ icol ];
+                if ( cs != null ) {
+                    cs.dispose();
+                }
+            }
+        }
+        if ( file_.exists() ) {
+            if ( file_.delete() ) {
+                logger_.info( "Deleted temporary file " + file_ );
+            }
+            else {
+                logger_.warning( "Failed to delete temporary file " + file_ );
+            }
+        }
+    }
+
+    protected void finalize() throws Throwable {
+        try {
+            tidy();
+        }
+        finally {
+            super.finalize();
+        }
+    }
+}
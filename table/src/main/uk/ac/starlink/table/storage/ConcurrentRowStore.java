@@ -0,0 +1,435 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import uk.ac.starlink.table.RowStore;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.TableFormatException;
+
+/**
+ * RowStore which can accept rows from multiple threads concurrently.
+ * Each writing thread accumulates rows in its own buffer,
+ * so that writers do not contend with each other;
+ * the buffered rows are passed on to a base RowStore,
+ * which does the actual storage.
+ *
+ * <p>The store may be unordered or ordered.
+ * In an unordered store, rows end up in the base store in an order
+ * which is unpredictable between threads, but which preserves the
+ * order in which any single thread submitted them.
+ * Each thread's buffer is passed to the base store whenever it fills up,
+ * so only a limited number of rows per thread is held in memory.
+ * In an ordered store, each row is submitted with a distinct
+ * sequence number using {@link #acceptRow(long,java.lang.Object[])},
+ * and the rows end up in the base store sorted by sequence number.
+ * Each thread's buffer is sorted and set aside when it fills up,
+ * and whenever the rows set aside include a contiguous run of
+ * sequence numbers following those already stored, that run is
+ * passed to the base store.
+ * If the sequence numbers are the integers from zero upwards, then,
+ * rows are only held in memory until all the rows before them
+ * have been submitted.  Rows following a gap in the sequence
+ * are held until {@link #endRows} is called.
+ *
+ * <p>Usage is as for other row stores, except that <code>acceptRow</code>
+ * may be called from any number of threads.
+ * {@link #acceptMetadata} must be called before any rows are submitted.
+ * All the writing threads must have finished before
+ * <code>endRows</code> is called, and in such a way that their writes
+ * are visible to the thread calling it, for instance by joining
+ * the writing threads or waiting for the completion of executor tasks.
+ * Rows still being submitted when <code>endRows</code> is called
+ * may be lost.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class ConcurrentRowStore implements RowStore {
+
+    private final RowStore baseStore_;
+    private final boolean ordered_;
+    private final int flushRows_;
+    private final Queue buffers_;
+    private final ThreadLocal localBuffer_;
+    private final PriorityQueue pending_;
+    private long nextSeq_;
+    private volatile boolean hasMeta_;
+    private volatile boolean ended_;
+
+    /** Default number of rows per thread buffered before flushing. */
+    public static final int DEFAULT_FLUSH_ROWS = 1024;
+
+    /**
+     * Constructs a store with a given per-thread buffer size.
+     *
+     * @param  baseStore  store to which rows are finally written;
+     *                    it need not be thread-safe
+     * @param  ordered   true to store rows in order of sequence number,
+     *                   false to store them in order of arrival
+     * @param  flushRows  number of rows each thread buffers before
+     *                    passing them on, or for an ordered store
+     *                    setting them aside to be passed on in order
+     */
+    public ConcurrentRowStore( RowStore baseStore, boolean ordered,
+                               int flushRows ) {
+        baseStore_ = baseStore;
+        ordered_ = ordered;
+        flushRows_ = Math.max( 1, flushRows );
+        buffers_ = new ConcurrentLinkedQueue();
+        pending_ = new PriorityQueue();
+        localBuffer_ = new ThreadLocal() {
+            protected Object initialValue() {
+                RowBuffer buf = new RowBuffer( ordered_ );
+                buffers_.add( buf );
+                return buf;
+            }
+        };
+    }
+
+    /**
+     * Constructs a store with the default per-thread buffer size.
+     *
+     * @param  baseStore  store to which rows are finally written;
+     *                    it need not be thread-safe
+     * @param  ordered   true to store rows in order of sequence number,
+     *                   false to store them in order of arrival
+     */
+    public ConcurrentRowStore( RowStore baseStore, boolean ordered ) {
+        this( baseStore, ordered, DEFAULT_FLUSH_ROWS );
+    }
+
+    /**
+     * Indicates whether this store orders rows by sequence number.
+     *
+     * @return  true for ordered, false for unordered
+     */
+    public boolean isOrdered() {
+        return ordered_;
+    }
+
+    public void acceptMetadata( StarTable meta ) throws TableFormatException {
+        if ( hasMeta_ ) {
+            throw new IllegalStateException( "Metadata already submitted" );
+        }
+        baseStore_.acceptMetadata( meta );
+        hasMeta_ = true;
+    }
+
+    /**
+     * Accepts a row.  May be called from any thread.
+     * For an ordered store, the sequence number form of this method
+     * must be used instead.
+     *
+     * @param  row  row data
+     * @throws  IllegalStateException  if this store is ordered
+     */
+    public void acceptRow( Object[] row ) throws IOException {
+        if ( ordered_ ) {
+            throw new IllegalStateException( "Ordered store requires "
+                                           + "sequence numbers" );
+        }
+        acceptRow( 0L, row );
+    }
+
+    /**
+     * Accepts a row with a given sequence number.  May be called from
+     * any thread.  For an ordered store, rows are stored in order of
+     * sequence number, and each row must have a different one;
+     * rows are passed on to the base store soonest if the sequence
+     * numbers run from zero without gaps.
+     * For an unordered store the sequence number is ignored.
+     *
+     * @param  iseq  sequence number
+     * @param  row  row data
+     */
+    public void acceptRow( long iseq, Object[] row ) throws IOException {
+        if ( ! hasMeta_ ) {
+            throw new IllegalStateException( "acceptMetadata not yet called" );
+        }
+        if ( ended_ ) {
+            throw new IllegalStateException( "endRows has been called" );
+        }
+        RowBuffer buf = (RowBuffer) localBuffer_.get();
+        buf.add( iseq, row );
+        if ( buf.nrow_ >= flushRows_ ) {
+            if ( ordered_ ) {
+                flushOrdered( buf );
+            }
+            else {
+                flush( buf );
+            }
+        }
+    }
+
+    /**
+     * Passes all buffered rows to the base store.
+     * Must only be called once all writing threads have finished
+     * (for instance, been joined).
+     */
+    public void endRows() throws IOException {
+        if ( ! hasMeta_ ) {
+            throw new IllegalStateException( "acceptMetadata not yet called" );
+        }
+        ended_ = true;
+        RowBuffer[] bufs =
+            (RowBuffer[]) buffers_.toArray( new RowBuffer[ 0 ] );
+        buffers_.clear();
+        if ( ordered_ ) {
+            for ( int ib = 0; ib < bufs.length; ib++ ) {
+                if ( bufs[ ib ].nrow_ > 0 ) {
+                    pending_.add( bufs[ ib ].takeRun() );
+                }
+            }
+            writePending();
+        }
+        else {
+            for ( int ib = 0; ib < bufs.length; ib++ ) {
+                flush( bufs[ ib ] );
+            }
+        }
+        baseStore_.endRows();
+    }
+
+    public StarTable getStarTable() {
+        if ( ended_ ) {
+            return baseStore_.getStarTable();
+        }
+        else {
+            throw new IllegalStateException( "endRows not called yet" );
+        }
+    }
+
+    /**
+     * Passes the contents of a buffer to the base store and empties it.
+     *
+     * @param  buf  buffer
+     */
+    private void flush( RowBuffer buf ) throws IOException {
+        synchronized ( baseStore_ ) {
+            for ( int ir = 0; ir < buf.nrow_; ir++ ) {
+                baseStore_.acceptRow( buf.rows_[ ir ] );
+            }
+        }
+        buf.clear();
+    }
+
+    /**
+     * Sets aside the contents of a buffer for an ordered store,
+     * and passes on to the base store any rows which are now
+     * next in sequence.
+     *
+     * @param  buf  buffer
+     */
+    private void flushOrdered( RowBuffer buf ) throws IOException {
+        SeqRun run = buf.takeRun();
+        synchronized ( baseStore_ ) {
+            pending_.add( run );
+            for ( SeqRun next;
+                  ( next = (SeqRun) pending_.peek() ) != null &&
+                  next.getSeq() == nextSeq_; ) {
+                pending_.poll();
+                do {
+                    baseStore_.acceptRow( next.takeRow() );
+                    nextSeq_++;
+                } while ( next.hasRows() && next.getSeq() == nextSeq_ );
+                if ( next.hasRows() ) {
+                    pending_.add( next );
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes all the rows set aside for an ordered store to the base
+     * store in order of sequence number, whether or not there are gaps.
+     */
+    private void writePending() throws IOException {
+        synchronized ( baseStore_ ) {
+            for ( SeqRun next; ( next = (SeqRun) pending_.poll() ) != null; ) {
+                baseStore_.acceptRow( next.takeRow() );
+                if ( next.hasRows() ) {
+                    pending_.add( next );
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulates rows, and optionally sequence numbers,
+     * submitted by a single thread.
+     */
+    private static class RowBuffer {
+        final boolean hasSeqs_;
+        Object[][] rows_;
+        long[] seqs_;
+        int nrow_;
+
+        /**
+         * Constructor.
+         *
+         * @param  hasSeqs  whether sequence numbers are recorded
+         */
+        RowBuffer( boolean hasSeqs ) {
+            hasSeqs_ = hasSeqs;
+            rows_ = new Object[ 16 ][];
+            seqs_ = hasSeqs ? new long[ 16 ] : null;
+        }
+
+        /**
+         * Adds a row.
+         *
+         * @param  iseq  sequence number
+         * @param  row   row data
+         */
+        void add( long iseq, Object[] row ) {
+            if ( nrow_ == rows_.length ) {
+                int size = nrow_ * 2;
+                Object[][] rows = new Object[ size ][];
+                System.arraycopy( rows_, 0, rows, 0, nrow_ );
+                rows_ = rows;
+                if ( hasSeqs_ ) {
+                    long[] seqs = new long[ size ];
+                    System.arraycopy( seqs_, 0, seqs, 0, nrow_ );
+                    seqs_ = seqs;
+                }
+            }
+            rows_[ nrow_ ] = row;
+            if ( hasSeqs_ ) {
+                seqs_[ nrow_ ] = iseq;
+            }
+            nrow_++;
+        }
+
+        /**
+         * Sorts the rows in this buffer by sequence number.
+         * Since a single thread will often submit rows in order,
+         * this does no work if they are already sorted.
+         */
+        void sort() {
+            boolean sorted = true;
+            for ( int ir = 1; ir < nrow_ && sorted; ir++ ) {
+                sorted = seqs_[ ir - 1 ] <= seqs_[ ir ];
+            }
+            if ( ! sorted ) {
+                SeqRow[] srows = new SeqRow[ nrow_ ];
+                for ( int ir = 0; ir < nrow_; ir++ ) {
+                    srows[ ir ] = new SeqRow( seqs_[ ir ], rows_[ ir ] );
+                }
+                Arrays.sort( srows );
+                for ( int ir = 0; ir < nrow_; ir++ ) {
+                    seqs_[ ir ] = srows[ ir ].iseq_;
+                    rows_[ ir ] = srows[ ir ].row_;
+                }
+            }
+        }
+
+        /**
+         * Sorts this buffer's rows and hands them over as a run,
+         * leaving the buffer empty.
+         *
+         * @return  run containing the rows of this buffer
+         */
+        SeqRun takeRun() {
+            sort();
+            SeqRun run = new SeqRun( seqs_, rows_, nrow_ );
+            rows_ = new Object[ 16 ][];
+            seqs_ = new long[ 16 ];
+            nrow_ = 0;
+            return run;
+        }
+
+        /**
+         * Discards the contents of this buffer.
+         */
+        void clear() {
+            Arrays.fill( rows_, 0, nrow_, null );
+            nrow_ = 0;
+        }
+    }
+
+    /**
+     * Sorted run of rows which have been set aside by an ordered store.
+     * Runs are ordered by the sequence number of their next row.
+     */
+    private static class SeqRun implements Comparable {
+        final long[] seqs_;
+        final Object[][] rows_;
+        final int nrow_;
+        int ipos_;
+
+        /**
+         * Constructor.
+         *
+         * @param  seqs  sequence numbers in ascending order
+         * @param  rows  rows corresponding to sequence numbers
+         * @param  nrow  number of rows used from the arrays
+         */
+        SeqRun( long[] seqs, Object[][] rows, int nrow ) {
+            seqs_ = seqs;
+            rows_ = rows;
+            nrow_ = nrow;
+        }
+
+        /**
+         * Indicates whether any rows remain in this run.
+         *
+         * @return  true iff there is a next row
+         */
+        boolean hasRows() {
+            return ipos_ < nrow_;
+        }
+
+        /**
+         * Returns the sequence number of the next row.
+         *
+         * @return  next sequence number
+         */
+        long getSeq() {
+            return seqs_[ ipos_ ];
+        }
+
+        /**
+         * Returns the next row and advances past it.
+         *
+         * @return  next row
+         */
+        Object[] takeRow() {
+            Object[] row = rows_[ ipos_ ];
+            rows_[ ipos_++ ] = null;
+            return row;
+        }
+
+        public int compareTo( Object o ) {
+            long seq = getSeq();
+            long other = ((SeqRun) o).getSeq();
+            return seq < other ? -1 : ( seq > other ? 1 : 0 );
+        }
+    }
+
+    /**
+     * Aggregates a row with its sequence number, for sorting.
+     */
+    private static class SeqRow implements Comparable {
+        final long iseq_;
+        final Object[] row_;
+
+        /**
+         * Constructor.
+         *
+         * @param  iseq  sequence number
+         * @param  row   row data
+         */
+        SeqRow( long iseq, Object[] row ) {
+            iseq_ = iseq;
+            row_ = row;
+        }
+
+        public int compareTo( Object o ) {
+            long other = ((SeqRow) o).iseq_;
+            return iseq_ < other ? -1 : ( iseq_ > other ? 1 : 0 );
+        }
+    }
+}
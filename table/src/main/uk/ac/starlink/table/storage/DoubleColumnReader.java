@@ -0,0 +1,24 @@
+package uk.ac.starlink.table.storage;
+
+import java.io.IOException;
+
+/**
+ * ColumnReader which can additionally read numeric values as
+ * primitive doubles without creating any objects.
+ * Column stores may return an instance of this interface from
+ * {@link ColumnStore#createReader} if their data permits it.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+interface DoubleColumnReader extends ColumnReader {
+
+    /**
+     * Retrieves a numeric datum from the column store as a double.
+     * Null values are returned as NaN.
+     *
+     * @param  lrow  index of datum to retrieve
+     * @return  the <code>lrow</code><sup>th</sup> written value
+     */
+    double readDouble( long lrow ) throws IOException;
+}
@@ -22,6 +22,7 @@ class IndexedMappedColumnStore implements ColumnStore {
     private final LongBuffer indexBuf_;
     private long auxOffset_;
     private long nrow_;
+    private ByteBuffer auxBuf_;
     private ByteStoreAccess auxAccess_;
 
     /**
@@ -50,9 +51,9 @@ class IndexedMappedColumnStore implements ColumnStore {
     }
 
     public void endCells() throws IOException {
-        ByteBuffer auxBuf = auxRaf_.getChannel()
-                           .map( FileChannel.MapMode.READ_ONLY, 0, auxOffset_ );
-        auxAccess_ = new SingleNioAccess( auxBuf );
+        auxBuf_ = auxRaf_.getChannel()
+                 .map( FileChannel.MapMode.READ_ONLY, 0, auxOffset_ );
+        auxAccess_ = new SingleNioAccess( auxBuf_ );
         auxRaf_.close();
     }
 
@@ -61,6 +62,18 @@ class IndexedMappedColumnStore implements ColumnStore {
         return codec_.decode( auxAccess_ );
     }
 
+    public ColumnReader createReader() {
+        final ByteStoreAccess auxAccess =
+            new SingleNioAccess( auxBuf_.duplicate() );
+        return new ColumnReader() {
+            public Object readCell( long lrow ) throws IOException {
+                auxAccess.seek( indexBuf_
+                               .get( Tables.checkedLongToInt( lrow ) ) );
+                return codec_.decode( auxAccess );
+            }
+        };
+    }
+
     public void dispose() {
         try {
             auxRaf_.close();
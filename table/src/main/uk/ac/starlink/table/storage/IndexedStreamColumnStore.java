@@ -27,6 +27,7 @@ class IndexedStreamColumnStore implements ColumnStore {
     private final DataOutputStream indexOut_;
     private long dataOffset_;
     private long nrow_;
+    private ByteBuffer dataBuf_;
     private ByteStoreAccess dataIn_;
     private LongBuffer indexIn_;
 
@@ -62,11 +63,10 @@ class IndexedStreamColumnStore implements ColumnStore {
     public void endCells() throws IOException {
         dataOut_.close();
         indexOut_.close();
-        ByteBuffer dataBuf = new RandomAccessFile( dataFile_, "r" )
-                            .getChannel()
-                            .map( FileChannel.MapMode.READ_ONLY,
-                                  0, dataOffset_ );
-        dataIn_ = new SingleNioAccess( dataBuf );
+        dataBuf_ = new RandomAccessFile( dataFile_, "r" )
+                  .getChannel()
+                  .map( FileChannel.MapMode.READ_ONLY, 0, dataOffset_ );
+        dataIn_ = new SingleNioAccess( dataBuf_ );
         ByteBuffer indexBuf = new RandomAccessFile( indexFile_, "r" )
                              .getChannel()
                              .map( FileChannel.MapMode.READ_ONLY,
@@ -79,6 +79,17 @@ class IndexedStreamColumnStore implements ColumnStore {
         return codec_.decode( dataIn_ );
     }
 
+    public ColumnReader createReader() {
+        final ByteStoreAccess dataIn =
+            new SingleNioAccess( dataBuf_.duplicate() );
+        return new ColumnReader() {
+            public Object readCell( long lrow ) throws IOException {
+                dataIn.seek( indexIn_.get( Tables.checkedLongToInt( lrow ) ) );
+                return codec_.decode( dataIn );
+            }
+        };
+    }
+
     public void dispose() {
         try {
             dataOut_.close();
@@ -16,6 +16,7 @@ class MappedColumnStore implements ColumnStore {
 
     private final Codec codec_;
     private final int itemSize_;
+    private final ByteBuffer bbuf_;
     private final BufferIOAccess access_;
 
     /**
@@ -29,6 +30,7 @@ class MappedColumnStore implements ColumnStore {
     public MappedColumnStore( Codec codec, ByteBuffer bbuf ) {
         codec_ = codec;
         itemSize_ = codec.getItemSize();
+        bbuf_ = bbuf;
         access_ = new BufferIOAccess( bbuf );
         if ( itemSize_ < 0 ) {
             throw new IllegalArgumentException( "Must have fixed size codec" );
@@ -48,6 +50,31 @@ class MappedColumnStore implements ColumnStore {
         return codec_.decode( access_ );
     }
 
+    public ColumnReader createReader() {
+        final ByteBuffer buf = bbuf_.duplicate();
+        final ByteStoreAccess access = new SingleNioAccess( buf );
+        if ( codec_.canDecodeDouble() ) {
+            return new DoubleColumnReader() {
+                public Object readCell( long lrow ) throws IOException {
+                    access.seek( lrow * itemSize_ );
+                    return codec_.decode( access );
+                }
+                public double readDouble( long lrow ) throws IOException {
+                    int pos = (int) ( lrow * itemSize_ );
+                    return codec_.decodeDouble( buf, pos );
+                }
+            };
+        }
+        else {
+            return new ColumnReader() {
+                public Object readCell( long lrow ) throws IOException {
+                    access.seek( lrow * itemSize_ );
+                    return codec_.decode( access );
+                }
+            };
+        }
+    }
+
     public void dispose() {
     }
 
@@ -23,6 +23,7 @@ class StreamColumnStore implements ColumnStore {
     private final DataOutputStream dataOut_;
     private final int itemSize_;
     private long nrow_;
+    private ByteBuffer dataBuf_;
     private ByteStoreAccess dataIn_;
 
     /**
@@ -53,11 +54,10 @@ class StreamColumnStore implements ColumnStore {
 
     public void endCells() throws IOException {
         dataOut_.close();
-        ByteBuffer bbuf = new RandomAccessFile( dataFile_, "r" )
-                         .getChannel()
-                         .map( FileChannel.MapMode.READ_ONLY, 0,
-                               itemSize_ * nrow_ );
-        dataIn_ = new SingleNioAccess( bbuf );
+        dataBuf_ = new RandomAccessFile( dataFile_, "r" )
+                  .getChannel()
+                  .map( FileChannel.MapMode.READ_ONLY, 0, itemSize_ * nrow_ );
+        dataIn_ = new SingleNioAccess( dataBuf_ );
     }
 
     public synchronized Object readCell( long lrow ) throws IOException {
@@ -65,6 +65,31 @@ class StreamColumnStore implements ColumnStore {
         return codec_.decode( dataIn_ );
     }
 
+    public ColumnReader createReader() {
+        final ByteBuffer buf = dataBuf_.duplicate();
+        final ByteStoreAccess dataIn = new SingleNioAccess( buf );
+        if ( codec_.canDecodeDouble() ) {
+            return new DoubleColumnReader() {
+                public Object readCell( long lrow ) throws IOException {
+                    dataIn.seek( lrow * itemSize_ );
+                    return codec_.decode( dataIn );
+                }
+                public double readDouble( long lrow ) throws IOException {
+                    int pos = (int) ( lrow * itemSize_ );
+                    return codec_.decodeDouble( buf, pos );
+                }
+            };
+        }
+        else {
+            return new ColumnReader() {
+                public Object readCell( long lrow ) throws IOException {
+                    dataIn.seek( lrow * itemSize_ );
+                    return codec_.decode( dataIn );
+                }
+            };
+        }
+    }
+
     public void dispose() {
         try {
             dataOut_.close();
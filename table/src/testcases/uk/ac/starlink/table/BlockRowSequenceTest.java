@@ -0,0 +1,157 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import uk.ac.starlink.util.TestCase;
+
+public class BlockRowSequenceTest extends TestCase {
+
+    public BlockRowSequenceTest( String name ) {
+        super( name );
+    }
+
+    public void testDefault() throws IOException {
+        StarTable table = createTable( 1000 );
+        BlockRowSequence bseq =
+            Tables.getBlockRowSequence( table.getRowSequence() );
+        assertTrue( bseq instanceof DefaultBlockRowSequence );
+        checkBlocks( table, bseq, 64 );
+        bseq = Tables.getBlockRowSequence( table.getRowSequence() );
+        checkBlocks( table, bseq, 5000 );
+        assertSame( bseq, Tables.getBlockRowSequence( bseq ) );
+
+        /* Mix rows and blocks. */
+        bseq = Tables.getBlockRowSequence( table.getRowSequence() );
+        assertTrue( bseq.next() );
+        assertEquals( new Integer( 0 ), bseq.getCell( 1 ) );
+        assertEquals( 10, bseq.nextBlock( 10 ) );
+        Object[] obuf = new Object[ 10 ];
+        bseq.getObjectBlock( 1, obuf, 0 );
+        assertEquals( new Integer( 1 ), obuf[ 0 ] );
+        assertEquals( new Integer( 10 ), obuf[ 9 ] );
+        try {
+            bseq.getCell( 1 );
+            fail();
+        }
+        catch ( IllegalStateException e ) {
+        }
+        assertTrue( bseq.next() );
+        assertEquals( new Integer( 11 ), bseq.getCell( 1 ) );
+        bseq.close();
+    }
+
+    public void testBuffered() throws IOException {
+        StarTable table = createTable( 1000 );
+        int[] sizes = new int[] { 1, 7, 1024 };
+        for ( int is = 0; is < sizes.length; is++ ) {
+            BlockRowSequence bseq =
+                Tables.getBlockRowSequence( table.getRowSequence() );
+            BufferedRowSequence rseq =
+                new BufferedRowSequence( table, bseq, sizes[ is ] );
+            assertTrue( rseq.isDoubleColumn( 0 ) );
+            assertTrue( rseq.isDoubleColumn( 1 ) );
+            assertTrue( ! rseq.isDoubleColumn( 2 ) );
+            assertTrue( ! rseq.isDoubleColumn( 3 ) );
+            RowSequence tseq = table.getRowSequence();
+            long nrow = 0;
+            while ( rseq.next() ) {
+                assertTrue( tseq.next() );
+                Object[] row = tseq.getRow();
+                Object dval = row[ 0 ];
+                if ( nrow % 3 == 0 ) {
+                    Object[] brow = rseq.getRow();
+                    assertEquals( dval == null ? new Double( Double.NaN )
+                                               : dval,
+                                  brow[ 0 ] );
+                    for ( int icol = 1; icol < row.length; icol++ ) {
+                        assertEquals( row[ icol ], brow[ icol ] );
+                    }
+                }
+                Object ival = row[ 1 ];
+                assertEquals( dval == null ? Double.NaN
+                                           : ((Number) dval).doubleValue(),
+                              rseq.getDoubleCell( 0 ) );
+                assertEquals( ival, rseq.getCell( 1 ) );
+                assertEquals( row[ 3 ], rseq.getCell( 3 ) );
+                nrow++;
+            }
+            assertTrue( ! tseq.next() );
+            assertEquals( 1000, nrow );
+            rseq.close();
+            tseq.close();
+        }
+    }
+
+    public void testDoubles() {
+        assertTrue( Tables.isDoubleExact( Integer.class ) );
+        assertTrue( Tables.isDoubleExact( Float.class ) );
+        assertTrue( ! Tables.isDoubleExact( Long.class ) );
+        assertTrue( ! Tables.isDoubleExact( String.class ) );
+        assertEquals( new Short( (short) -3 ),
+                      Tables.doubleToNumber( -3.0, Short.class ) );
+        assertEquals( new Float( 2.5f ),
+                      Tables.doubleToNumber( 2.5, Float.class ) );
+        assertNull( Tables.doubleToNumber( Double.NaN, Integer.class ) );
+        assertEquals( new Double( Double.NaN ),
+                      Tables.doubleToNumber( Double.NaN, Double.class ) );
+    }
+
+    private void checkBlocks( StarTable table, BlockRowSequence bseq,
+                              int blockRows )
+            throws IOException {
+        RowSequence tseq = table.getRowSequence();
+        int ncol = table.getColumnCount();
+        double[] dbuf = new double[ blockRows + 2 ];
+        Object[] obuf = new Object[ blockRows + 2 ];
+        long nrow = 0;
+        for ( int n; ( n = bseq.nextBlock( blockRows ) ) > 0; ) {
+            Object[][] rows = new Object[ n ][];
+            for ( int ir = 0; ir < n; ir++ ) {
+                assertTrue( tseq.next() );
+                rows[ ir ] = (Object[]) tseq.getRow().clone();
+            }
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                if ( icol % 2 == 0 ) {
+                    bseq.getDoubleBlock( icol, dbuf, 2 );
+                    for ( int ir = 0; ir < n; ir++ ) {
+                        Object val = rows[ ir ][ icol ];
+                        assertEquals( val instanceof Number
+                                          ? ((Number) val).doubleValue()
+                                          : Double.NaN,
+                                      dbuf[ 2 + ir ] );
+                    }
+                }
+                else {
+                    bseq.getObjectBlock( icol, obuf, 1 );
+                    for ( int ir = 0; ir < n; ir++ ) {
+                        assertEquals( rows[ ir ][ icol ], obuf[ 1 + ir ] );
+                    }
+                }
+            }
+            nrow += n;
+        }
+        assertTrue( ! tseq.next() );
+        assertEquals( table.getRowCount(), nrow );
+        assertEquals( 0, bseq.nextBlock( blockRows ) );
+        bseq.close();
+        tseq.close();
+    }
+
+    private static StarTable createTable( int nrow ) {
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        Double[] dvals = new Double[ nrow ];
+        Integer[] ivals = new Integer[ nrow ];
+        String[] svals = new String[ nrow ];
+        long[] lvals = new long[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            dvals[ i ] = i % 10 == 0 ? null : new Double( i * 0.25 );
+            ivals[ i ] = i % 17 == 5 ? null : new Integer( i );
+            svals[ i ] = "r" + i;
+            lvals[ i ] = Long.MAX_VALUE - i;
+        }
+        table.addColumn( ArrayColumn.makeColumn( "d", dvals ) );
+        table.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        table.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+        table.addColumn( ArrayColumn.makeColumn( "l", lvals ) );
+        return table;
+    }
+}
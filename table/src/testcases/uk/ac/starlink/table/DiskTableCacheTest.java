@@ -0,0 +1,147 @@
+package uk.ac.starlink.table;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import uk.ac.starlink.util.FileDataSource;
+import uk.ac.starlink.util.TestCase;
+import uk.ac.starlink.util.URLDataSource;
+
+public class DiskTableCacheTest extends TestCase {
+
+    public DiskTableCacheTest( String name ) {
+        super( name );
+    }
+
+    public void testCache() throws IOException {
+        File dir = createTempDir();
+        File csv = File.createTempFile( "tcache", ".csv" );
+        csv.deleteOnExit();
+        writeCsv( csv, 100 );
+
+        DiskTableCache cache = new DiskTableCache( dir, 1024 * 1024 );
+        StarTableFactory tfact = new StarTableFactory();
+        tfact.setTableCache( cache );
+        StarTableFactory plainFact = new StarTableFactory();
+        plainFact.setTableCache( null );
+        StarTable plain = plainFact.makeStarTable( csv.toString(), "csv" );
+        assertTrue( ! plain.isRandom() );
+
+        /* First load populates the cache, second load reuses it. */
+        StarTable t1 = tfact.makeStarTable( csv.toString(), "csv" );
+        assertEquals( 1, countEntries( dir ) );
+        StarTable t2 = tfact.makeStarTable( csv.toString(), "csv" );
+        assertEquals( 1, countEntries( dir ) );
+        assertTrue( t1.isRandom() );
+        assertTrue( t2.isRandom() );
+        String key = cache.getTableKey( t2 );
+        assertNotNull( key );
+        assertEquals( key, cache.getSourceKey(
+                               new FileDataSource( csv ),
+                               "csv" ) );
+        checkSame( plain, t1 );
+        checkSame( plain, t2 );
+
+        /* Different format name gives a different entry. */
+        tfact.makeStarTable( csv.toString(), "ascii" );
+        assertEquals( 2, countEntries( dir ) );
+
+        /* Derived tables. */
+        String dkey = cache.extendKey( key, "head 10" );
+        assertNull( cache.getTable( dkey ) );
+        StarTable d1 = cache.putTable( dkey, plain );
+        assertEquals( 3, countEntries( dir ) );
+        checkSame( plain, d1 );
+        assertEquals( dkey, cache.getTableKey( cache.getTable( dkey ) ) );
+
+        /* Non-file sources are not cached. */
+        assertNull( cache.getSourceKey(
+                        new URLDataSource(
+                            new URL( "http://localhost/x.csv" ) ),
+                        "csv" ) );
+
+        /* Changing the file invalidates the entry. */
+        writeCsv( csv, 50 );
+        csv.setLastModified( csv.lastModified() + 5000 );
+        assertFalse( key.equals( cache.getSourceKey(
+                         new FileDataSource( csv ),
+                         "csv" ) ) );
+        StarTable t3 = tfact.makeStarTable( csv.toString(), "csv" );
+        assertEquals( 50, t3.getRowCount() );
+        assertEquals( 4, countEntries( dir ) );
+    }
+
+    public void testEviction() throws IOException {
+        File dir = createTempDir();
+        File csv = File.createTempFile( "tcache", ".csv" );
+        csv.deleteOnExit();
+        writeCsv( csv, 1000 );
+        StarTableFactory tfact = new StarTableFactory();
+        StarTable t0 = tfact.makeStarTable( csv.toString(), "csv" );
+
+        /* Cache big enough for only one entry. */
+        DiskTableCache cache = new DiskTableCache( dir, 1 );
+        cache.putTable( "a", t0 );
+        assertEquals( 1, countEntries( dir ) );
+        cache.putTable( "b", t0 );
+        assertEquals( 1, countEntries( dir ) );
+        assertNull( cache.getTable( "a" ) );
+        assertNotNull( cache.getTable( "b" ) );
+    }
+
+    public void testParseSize() {
+        assertEquals( 99L, DiskTableCache.parseSize( "99" ) );
+        assertEquals( 2048L, DiskTableCache.parseSize( "2k" ) );
+        assertEquals( 3L * 1024 * 1024, DiskTableCache.parseSize( "3M" ) );
+        assertEquals( 16L * 1024 * 1024 * 1024,
+                      DiskTableCache.parseSize( "16g" ) );
+        try {
+            DiskTableCache.parseSize( "lots" );
+            fail();
+        }
+        catch ( NumberFormatException e ) {
+        }
+    }
+
+    private static void writeCsv( File file, int nrow ) throws IOException {
+        Writer out = new FileWriter( file );
+        out.write( "i,x,s\n" );
+        for ( int i = 0; i < nrow; i++ ) {
+            out.write( i + "," + ( i * 0.25 ) + ",s" + i + "\n" );
+        }
+        out.close();
+    }
+
+    private static int countEntries( File dir ) {
+        int n = 0;
+        File[] files = dir.listFiles();
+        for ( int i = 0; i < files.length; i++ ) {
+            if ( files[ i ].getName().endsWith( ".colfits" ) ) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile( "tcache", "" );
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private void checkSame( StarTable t1, StarTable t2 ) throws IOException {
+        RowSequence rs1 = t1.getRowSequence();
+        RowSequence rs2 = t2.getRowSequence();
+        while ( rs1.next() ) {
+            assertTrue( rs2.next() );
+            assertArrayEquals( rs1.getRow(), rs2.getRow() );
+        }
+        assertFalse( rs2.next() );
+        rs1.close();
+        rs2.close();
+    }
+}
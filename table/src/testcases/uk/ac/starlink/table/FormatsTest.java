@@ -20,8 +20,10 @@ import org.xml.sax.SAXException;
 import uk.ac.starlink.fits.BintableStarTable;
 import uk.ac.starlink.fits.ColFitsTableWriter;
 import uk.ac.starlink.fits.ColFitsTableBuilder;
+import uk.ac.starlink.fits.CompressedFitsTableWriter;
 import uk.ac.starlink.fits.FitsTableBuilder;
 import uk.ac.starlink.fits.FitsTableWriter;
+import uk.ac.starlink.fits.TileCompression;
 import uk.ac.starlink.fits.VariableFitsTableWriter;
 import uk.ac.starlink.table.storage.AdaptiveByteStore;
 import uk.ac.starlink.table.storage.ByteStoreRowStore;
@@ -260,6 +262,7 @@ public class FormatsTest extends TableCase {
             "fits-plus",
             "fits-basic",
             "fits-var",
+            "fits-compressed",
             "colfits-plus",
             "colfits-basic",
             "votable-tabledata",
@@ -437,6 +440,15 @@ public class FormatsTest extends TableCase {
                            new FitsTableBuilder(), "fitsv" );
         exerciseReadWrite( new VariableFitsTableWriter( true, false ),
                            new FitsTableBuilder(), "fitsv" );
+        TileCompression[] comps = TileCompression.getKnownCompressions();
+        for ( int ic = 0; ic < comps.length; ic++ ) {
+            CompressedFitsTableWriter zwriter =
+                new CompressedFitsTableWriter( comps[ ic ], true );
+            zwriter.setTileRows( 7 );
+            exerciseReadWrite( zwriter, new FitsTableBuilder(), "fits" );
+        }
+        exerciseReadWrite( new CompressedFitsTableWriter(),
+                           new FitsTableBuilder(), "fits" );
         exerciseReadWrite( new VOTableWriter(),
                            new VOTableBuilder(), "votable" );
         exerciseReadWrite( new AsciiTableWriter(),
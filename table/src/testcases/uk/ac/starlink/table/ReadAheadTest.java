@@ -0,0 +1,128 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import uk.ac.starlink.util.TestCase;
+
+public class ReadAheadTest extends TestCase {
+
+    public ReadAheadTest( String name ) {
+        super( name );
+    }
+
+    public void testRows() throws IOException {
+        int[] nrows = new int[] { 0, 1, 9, 10, 11, 1000 };
+        for ( int i = 0; i < nrows.length; i++ ) {
+            StarTable base = createTable( nrows[ i ] );
+            checkSame( base, new ReadAheadStarTable( base, 10, 3 ) );
+            checkSame( base, new ReadAheadStarTable( base, 1, 1 ) );
+            checkSame( base, new ReadAheadStarTable( base ) );
+        }
+    }
+
+    public void testError() throws IOException {
+        Throwable[] errors = new Throwable[] {
+            new IOException( "broken" ),
+            new IllegalStateException( "broken" ),
+            new AssertionError( "broken" ),
+        };
+        for ( int i = 0; i < errors.length; i++ ) {
+            RowSequence rseq =
+                new ReadAheadStarTable( createBrokenTable( errors[ i ] ),
+                                        10, 2 ).getRowSequence();
+            int nrow = 0;
+            try {
+                while ( rseq.next() ) {
+                    assertEquals( new Integer( nrow ), rseq.getCell( 0 ) );
+                    nrow++;
+                }
+                fail();
+            }
+            catch ( IOException e ) {
+                assertSame( errors[ i ], e.getCause() );
+            }
+            assertEquals( 50, nrow );
+            rseq.close();
+        }
+    }
+
+    public void testClose() throws IOException {
+        StarTable base = createTable( 100000 );
+        StarTable rtable = new ReadAheadStarTable( base, 16, 2 );
+        for ( int i = 0; i < 20; i++ ) {
+            RowSequence rseq = rtable.getRowSequence();
+            for ( int j = 0; j < i; j++ ) {
+                assertTrue( rseq.next() );
+                assertEquals( new Integer( j ), rseq.getCell( 0 ) );
+            }
+            rseq.close();
+            assertTrue( ! rseq.next() );
+        }
+    }
+
+    public void testFactory() {
+        StarTableFactory fact = new StarTableFactory();
+        assertTrue( ! fact.getReadAhead() );
+        fact.setReadAhead( true );
+        assertTrue( new StarTableFactory( fact ).getReadAhead() );
+    }
+
+    private void checkSame( StarTable base, StarTable rtable )
+            throws IOException {
+        assertTrue( ! rtable.isRandom() );
+        for ( int i = 0; i < 2; i++ ) {
+            RowSequence bseq = base.getRowSequence();
+            RowSequence rseq = rtable.getRowSequence();
+            while ( bseq.next() ) {
+                assertTrue( rseq.next() );
+                assertArrayEquals( bseq.getRow(), rseq.getRow() );
+                assertEquals( bseq.getCell( 1 ), rseq.getCell( 1 ) );
+            }
+            assertTrue( ! rseq.next() );
+            assertTrue( ! rseq.next() );
+            bseq.close();
+            rseq.close();
+        }
+    }
+
+    private static StarTable createBrokenTable( final Throwable error ) {
+        final StarTable base = createTable( 100 );
+        return new WrapperStarTable( base ) {
+            public RowSequence getRowSequence() throws IOException {
+                return new WrapperRowSequence( base.getRowSequence() ) {
+                    int irow_;
+                    public boolean next() throws IOException {
+                        if ( irow_++ == 55 ) {
+                            if ( error instanceof IOException ) {
+                                throw (IOException) error;
+                            }
+                            else if ( error instanceof RuntimeException ) {
+                                throw (RuntimeException) error;
+                            }
+                            else {
+                                throw (Error) error;
+                            }
+                        }
+                        return super.next();
+                    }
+                };
+            }
+        };
+    }
+
+    private static StarTable createTable( int nrow ) {
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        int[] ivals = new int[ nrow ];
+        String[] svals = new String[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ivals[ i ] = i;
+            svals[ i ] = "r" + i;
+        }
+        table.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        table.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+        return new WrapperStarTable( table ) {
+            public boolean isRandom() {
+                return false;
+            }
+        };
+    }
+}
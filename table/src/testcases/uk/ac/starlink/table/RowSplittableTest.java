@@ -0,0 +1,126 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import uk.ac.starlink.util.TestCase;
+
+public class RowSplittableTest extends TestCase {
+
+    public RowSplittableTest( String name ) {
+        super( name );
+    }
+
+    public void testSplits() throws IOException {
+        StarTable t1 = createTable( 10000, 0 );
+        StarTable t2 = createTable( 3000, 10000 );
+        StarTable t3 = createTable( 10, 20000 );
+        StarTable empty = createTable( 0, 0 );
+
+        checkSplittable( t1, true );
+        checkSplittable( t3, false );
+        checkSplittable( empty, false );
+
+        BitSet mask = new BitSet();
+        for ( int i = 0; i < 10000; i += 3 ) {
+            mask.set( i );
+        }
+        mask.set( 5000, 6000 );
+        checkSplittable( new RowSubsetStarTable( t1, mask ), true );
+        checkSplittable( new RowSubsetStarTable( t3, new BitSet() ), false );
+
+        checkSplittable( new ColumnPermutedStarTable( t1,
+                                                      new int[] { 1, 0, 1 } ),
+                         true );
+
+        StarTable concat =
+            new ConcatStarTable( t1, new StarTable[] { t1, t3, t2, empty } );
+        checkSplittable( concat, true );
+        checkSplittable( new ConcatStarTable( t1, new StarTable[] { t3, t3 } ),
+                         false );
+
+        checkSplittable( new WrapperStarTable( concat ), true );
+        checkSplittable( new RowSubsetStarTable( concat, mask ), true );
+    }
+
+    public void testSequential() throws IOException {
+        StarTable t1 = createTable( 5000, 0 );
+        StarTable seq = new WrapperStarTable( t1 ) {
+            public boolean isRandom() {
+                return false;
+            }
+        };
+        RowSplittable rsplit = seq.getRowSplittable();
+        assertEquals( 5000, rsplit.splittableSize() );
+        assertNull( rsplit.split() );
+        checkSplittable( seq, false );
+    }
+
+    public void testStarted() throws IOException {
+        RowSplittable rsplit = createTable( 10000, 0 ).getRowSplittable();
+        assertEquals( 10000, rsplit.splittableSize() );
+        assertTrue( rsplit.next() );
+        assertEquals( 0L, rsplit.getRowIndex() );
+        assertNull( rsplit.split() );
+        rsplit.close();
+    }
+
+    /**
+     * Splits a table's splittable recursively, and checks that the
+     * rows read from all the parts match those read from the table's
+     * row sequence.
+     */
+    private void checkSplittable( StarTable table, boolean canSplit )
+            throws IOException {
+        List splits = new ArrayList();
+        addSplits( table.getRowSplittable(), splits );
+        assertEquals( canSplit, splits.size() > 1 );
+        RowSequence rseq = table.getRowSequence();
+        long irow = 0;
+        for ( int is = 0; is < splits.size(); is++ ) {
+            RowSplittable rsplit = (RowSplittable) splits.get( is );
+            long size = rsplit.splittableSize();
+            long n = 0;
+            while ( rsplit.next() ) {
+                assertTrue( rseq.next() );
+                assertEquals( irow++, rsplit.getRowIndex() );
+                assertArrayEquals( rseq.getRow(), rsplit.getRow() );
+                int ncol = table.getColumnCount();
+                for ( int icol = ncol - 1; icol >= 0; icol-- ) {
+                    assertEquals( rseq.getCell( icol ),
+                                  rsplit.getCell( icol ) );
+                }
+                n++;
+            }
+            assertTrue( size < 0 || size >= n );
+            rsplit.close();
+        }
+        assertTrue( ! rseq.next() );
+        rseq.close();
+    }
+
+    private static void addSplits( RowSplittable rsplit, List splits ) {
+        RowSplittable prefix = rsplit.split();
+        if ( prefix != null ) {
+            addSplits( prefix, splits );
+            addSplits( rsplit, splits );
+        }
+        else {
+            splits.add( rsplit );
+        }
+    }
+
+    private static StarTable createTable( int nrow, int offset ) {
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        int[] ivals = new int[ nrow ];
+        String[] svals = new String[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ivals[ i ] = offset + i;
+            svals[ i ] = "r" + ( offset + i );
+        }
+        table.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        table.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+        return table;
+    }
+}
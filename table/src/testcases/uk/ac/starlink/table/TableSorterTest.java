@@ -0,0 +1,280 @@
+package uk.ac.starlink.table;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import uk.ac.starlink.util.TestCase;
+
+public class TableSorterTest extends TestCase {
+
+    private final StarTable table_;
+
+    public TableSorterTest( String name ) {
+        super( name );
+        table_ = createTable( 40000 );
+    }
+
+    public void testSort() throws IOException {
+        int[][] keySets = new int[][] {
+            { 0 }, { 1 }, { 2 }, { 3 }, { 1, 0 }, { 3, 2, 1 }, { 2, 0, 3 },
+        };
+        boolean[] flags = new boolean[] { true, false };
+        for ( int iks = 0; iks < keySets.length; iks++ ) {
+            StarTable keyTable =
+                new ColumnPermutedStarTable( table_, keySets[ iks ] );
+            for ( int iu = 0; iu < 2; iu++ ) {
+                boolean up = flags[ iu ];
+                for ( int in = 0; in < 2; in++ ) {
+                    boolean nullsLast = flags[ in ];
+                    long[] expected = getSlowOrder( keyTable, up, nullsLast );
+
+                    TableSorter sorter =
+                        new TableSorter( keyTable, up, nullsLast );
+                    assertArrayEquals( expected, sorter.getSortedOrder() );
+                    sorter.setParallelism( 1 );
+                    assertArrayEquals( expected, sorter.getSortedOrder() );
+                    sorter.setParallelism( 5 );
+                    assertArrayEquals( expected, sorter.getSortedOrder() );
+
+                    sorter.setParallelism( 3 );
+                    sorter.setMaxMemoryRows( 1000 );
+                    sorter.setChunkSize( 7001 );
+                    StarTable sorted = sorter.sortTable( table_ );
+                    assertArrayEquals( expected, getRowMap( sorted ) );
+
+                    for ( int ih = 0; ih < 2; ih++ ) {
+                        boolean keepHead = flags[ ih ];
+                        int nhead = 57;
+                        long[] head = new long[ nhead ];
+                        System.arraycopy( expected,
+                                          keepHead ? 0
+                                                   : expected.length - nhead,
+                                          head, 0, nhead );
+                        assertArrayEquals( head,
+                                           sorter.getHeadOrder( nhead,
+                                                                keepHead ) );
+                    }
+                }
+            }
+        }
+    }
+
+    public void testMemoryBudget() throws IOException {
+        StarTable keyTable =
+            new ColumnPermutedStarTable( table_, new int[] { 1, 0 } );
+        long[] expected = getSlowOrder( keyTable, true, true );
+
+        /* The sort goes external if the keys won't fit in the budget. */
+        TableSorter sorter = new TableSorter( keyTable, true, true );
+        sorter.setMaxMemoryBytes( 100000 );
+        assertArrayEquals( expected,
+                           getRowMap( sorter.sortTable( table_ ) ) );
+
+        /* External sorting needs random access to the keys. */
+        StarTable seqKeyTable = new WrapperStarTable( keyTable ) {
+            public boolean isRandom() {
+                return false;
+            }
+        };
+        TableSorter seqSorter = new TableSorter( seqKeyTable, true, true );
+        assertArrayEquals( expected,
+                           getRowMap( seqSorter.sortTable( table_ ) ) );
+        seqSorter.setMaxMemoryBytes( 100000 );
+        try {
+            seqSorter.sortTable( table_ );
+            fail();
+        }
+        catch ( IOException e ) {
+        }
+
+        /* Keys which can't be written to run files are sorted in memory
+         * whatever the budget. */
+        int nrow = (int) table_.getRowCount();
+        Object[] objs = new Object[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            objs[ i ] = table_.getCell( i, 1 );
+        }
+        ColumnStarTable objTable = ColumnStarTable.makeTableWithRows( nrow );
+        objTable.addColumn( ArrayColumn.makeColumn( "obj", objs ) );
+        TableSorter objSorter = new TableSorter( objTable, true, true );
+        objSorter.setMaxMemoryBytes( 100000 );
+        long[] objExpected = getSlowOrder( objTable, true, true );
+        assertArrayEquals( objExpected,
+                           getRowMap( objSorter.sortTable( table_ ) ) );
+    }
+
+    public void testTables() throws IOException {
+        int[] keys = new int[] { 2, 1 };
+        StarTable keyTable = new ColumnPermutedStarTable( table_, keys );
+        long[] expected = getSlowOrder( keyTable, false, true );
+        StarTable sorted = Tables.sortTable( table_, keys, false, true );
+        assertEquals( table_.getRowCount(), sorted.getRowCount() );
+        assertArrayEquals( expected, getRowMap( sorted ) );
+
+        StarTable head = Tables.sortHeadTable( table_, keyTable, 10000000,
+                                               true, false, true );
+        assertArrayEquals( expected, getRowMap( head ) );
+
+        try {
+            Tables.sortTable( table_, new int[] { 4 }, true, true );
+            fail();
+        }
+        catch ( IOException e ) {
+            // no sort order for array column
+        }
+    }
+
+    public void testTypeMismatch() throws IOException {
+        int nrow = 5000;
+        Object[] mixed = new Object[ nrow ];
+        final Object[] badNums = new Object[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            mixed[ i ] = i % 2 == 0 ? (Object) new Integer( i )
+                                    : (Object) ( "s" + i );
+            badNums[ i ] = i == nrow / 2 ? (Object) "NaN"
+                                         : (Object) new Double( i );
+        }
+        ColumnStarTable mixedTable = ColumnStarTable.makeTableWithRows( nrow );
+        mixedTable.addColumn( ArrayColumn.makeColumn( "mixed", mixed ) );
+        ColumnStarTable numTable = ColumnStarTable.makeTableWithRows( nrow );
+        ColumnInfo numInfo = new ColumnInfo( "num", Double.class, null );
+        numTable.addColumn( new ColumnData( numInfo ) {
+            public Object readValue( long irow ) {
+                return badNums[ (int) irow ];
+            }
+        } );
+        StarTable[] keyTables = new StarTable[] { mixedTable, numTable };
+        for ( int it = 0; it < keyTables.length; it++ ) {
+            TableSorter sorter = new TableSorter( keyTables[ it ], true, true );
+            for ( int np = 1; np <= 3; np += 2 ) {
+                sorter.setParallelism( np );
+                try {
+                    sorter.getSortedOrder();
+                    fail();
+                }
+                catch ( IOException e ) {
+                    assertTrue( e.getCause() instanceof ClassCastException );
+                }
+                try {
+                    sorter.getHeadOrder( 10, true );
+                    fail();
+                }
+                catch ( IOException e ) {
+                    assertTrue( e.getCause() instanceof ClassCastException );
+                }
+            }
+        }
+
+        /* External sort (not available for Object keys). */
+        TableSorter sorter = new TableSorter( numTable, true, true );
+        sorter.setMaxMemoryRows( 1000 );
+        sorter.setChunkSize( 700 );
+        try {
+            sorter.sortTable( numTable );
+            fail();
+        }
+        catch ( IOException e ) {
+            assertTrue( e.getCause() instanceof ClassCastException );
+        }
+    }
+
+    /**
+     * Recovers the row map from a sorted table by looking at the
+     * unique index column.
+     */
+    private static long[] getRowMap( StarTable sorted ) throws IOException {
+        int nrow = (int) sorted.getRowCount();
+        long[] map = new long[ nrow ];
+        RowSequence rseq = sorted.getRowSequence();
+        for ( int i = 0; i < nrow; i++ ) {
+            assertTrue( rseq.next() );
+            map[ i ] = ((Integer) rseq.getCell( 0 )).longValue();
+        }
+        assertTrue( ! rseq.next() );
+        rseq.close();
+        return map;
+    }
+
+    /**
+     * Sorts row indices using a boxed comparator.
+     */
+    private static long[] getSlowOrder( final StarTable keyTable,
+                                        final boolean up,
+                                        final boolean nullsLast ) {
+        int nrow = (int) keyTable.getRowCount();
+        Long[] order = new Long[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            order[ i ] = new Long( i );
+        }
+        final int nkey = keyTable.getColumnCount();
+        Arrays.sort( order, new Comparator() {
+            public int compare( Object o1, Object o2 ) {
+                try {
+                    long i1 = ((Long) o1).longValue();
+                    long i2 = ((Long) o2).longValue();
+                    for ( int ik = 0; ik < nkey; ik++ ) {
+                        Object v1 = keyTable.getCell( i1, ik );
+                        Object v2 = keyTable.getCell( i2, ik );
+                        boolean null1 = Tables.isBlank( v1 );
+                        boolean null2 = Tables.isBlank( v2 );
+                        int c;
+                        if ( null1 || null2 ) {
+                            c = null1 == null2
+                              ? 0
+                              : ( null1 == nullsLast ? +1 : -1 );
+                        }
+                        else {
+                            c = ((Comparable) v1).compareTo( v2 );
+                        }
+                        if ( c != 0 ) {
+                            return up ? c : -c;
+                        }
+                    }
+                    return 0;
+                }
+                catch ( IOException e ) {
+                    throw new RuntimeException( e );
+                }
+            }
+        } );
+        long[] lorder = new long[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            lorder[ i ] = order[ i ].longValue();
+        }
+        return lorder;
+    }
+
+    /**
+     * Returns a table with an index column, and columns of various
+     * types with plenty of ties and blanks.
+     */
+    private static StarTable createTable( int nrow ) {
+        Random rnd = new Random( 232301L );
+        int[] index = new int[ nrow ];
+        double[] dvals = new double[ nrow ];
+        Integer[] ivals = new Integer[ nrow ];
+        String[] svals = new String[ nrow ];
+        double[][] avals = new double[ nrow ][];
+        for ( int i = 0; i < nrow; i++ ) {
+            index[ i ] = i;
+            dvals[ i ] = rnd.nextInt( 50 ) == 0
+                       ? Double.NaN
+                       : ( rnd.nextInt( 200 ) - 100 ) * 0.25;
+            ivals[ i ] = rnd.nextInt( 30 ) == 0
+                       ? null
+                       : new Integer( rnd.nextInt( 20 ) - 10 );
+            svals[ i ] = rnd.nextInt( 40 ) == 0
+                       ? ( rnd.nextBoolean() ? null : "" )
+                       : "s" + rnd.nextInt( 300 );
+            avals[ i ] = new double[] { i };
+        }
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        table.addColumn( ArrayColumn.makeColumn( "index", index ) );
+        table.addColumn( ArrayColumn.makeColumn( "d", dvals ) );
+        table.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        table.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+        table.addColumn( ArrayColumn.makeColumn( "a", avals ) );
+        return table;
+    }
+}
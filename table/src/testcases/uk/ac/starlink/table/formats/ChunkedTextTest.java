@@ -0,0 +1,207 @@
+package uk.ac.starlink.table.formats;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.RowSplittable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.TableFormatException;
+import uk.ac.starlink.util.FileDataSource;
+import uk.ac.starlink.util.TestCase;
+
+public class ChunkedTextTest extends TestCase {
+
+    private static final int NROW = 3000;
+
+    public ChunkedTextTest( String name ) {
+        super( name );
+    }
+
+    public void tearDown() {
+        StreamStarTable.setReadParallelism( Runtime.getRuntime()
+                                                   .availableProcessors() );
+        StreamStarTable.setChunkSize( StreamStarTable.DEFAULT_CHUNK_SIZE );
+        StoragePolicy.setCopyParallelism( Runtime.getRuntime()
+                                                 .availableProcessors() );
+    }
+
+    public void testCsv() throws IOException {
+        File file = createTempFile( ".csv" );
+        Writer out = new FileWriter( file );
+        out.write( "index,value,\"text, quoted\"\r\n" );
+        for ( int i = 0; i < NROW; i++ ) {
+            out.write( i + "," + ( i * 0.5 ) + "," );
+            if ( i % 7 == 0 ) {
+                out.write( "\"line\n\"\"break\"\"\r\n" + i + "\"" );
+            }
+            else {
+                out.write( "t" + i );
+            }
+            out.write( i % 11 == 0 ? "\n\n" : "\r\n" );
+        }
+        out.close();
+
+        StarTable seq = readSequential( file, true );
+        StarTable par = readChunked( file, true );
+        assertTrue( ((StreamStarTable) par).getRowSplittable().split()
+                    != null );
+        assertEquals( "text, quoted", par.getColumnInfo( 2 ).getName() );
+        assertEquals( Short.class, par.getColumnInfo( 0 ).getContentClass() );
+        assertEquals( Float.class, par.getColumnInfo( 1 ).getContentClass() );
+        RowSequence rseq = par.getRowSequence();
+        for ( int i = 0; i <= 14; i++ ) {
+            assertTrue( rseq.next() );
+        }
+        assertEquals( "line\n\"break\"\r\n14", rseq.getCell( 2 ) );
+        rseq.close();
+        checkSame( seq, par );
+    }
+
+    public void testAscii() throws IOException {
+        File file = createTempFile( ".txt" );
+        Writer out = new FileWriter( file );
+        out.write( "# Some description\n" );
+        out.write( "#\n" );
+        out.write( "# index value name\n" );
+        for ( int i = 0; i < NROW; i++ ) {
+            out.write( i + " " + ( i == 2000 ? "1e40" : ( i + ".25" ) )
+                     + " 'str " + i + "'\n" );
+            if ( i % 100 == 0 ) {
+                out.write( "# comment " + i + "\n" );
+            }
+        }
+        out.close();
+
+        StarTable seq = readSequential( file, false );
+        StarTable par = readChunked( file, false );
+        assertEquals( "name", par.getColumnInfo( 2 ).getName() );
+        assertEquals( " Some description",
+                      par.getParameterByName( "Description" ).getValue() );
+        assertEquals( Short.class, par.getColumnInfo( 0 ).getContentClass() );
+
+        /* The only value too large for a float is in a later chunk. */
+        assertEquals( Double.class, par.getColumnInfo( 1 ).getContentClass() );
+        checkSame( seq, par );
+    }
+
+    public void testErrors() throws IOException {
+        File file = createTempFile( ".csv" );
+        Writer out = new FileWriter( file );
+        out.write( "a,b\n" );
+        for ( int i = 0; i < NROW; i++ ) {
+            out.write( i == 2500 ? "1,2,3\n" : ( i + "," + i + "\n" ) );
+        }
+        out.close();
+        try {
+            readChunked( file, true );
+            fail();
+        }
+        catch ( TableFormatException e ) {
+            assertTrue( e.getMessage().indexOf( "byte offset" ) > 0 );
+        }
+        try {
+            readSequential( file, true );
+            fail();
+        }
+        catch ( TableFormatException e ) {
+        }
+    }
+
+    private StarTable readSequential( File file, boolean isCsv )
+            throws IOException {
+        StreamStarTable.setReadParallelism( 1 );
+        StarTable table = readTable( file, isCsv );
+        RowSplittable rsplit = table.getRowSplittable();
+        assertNull( rsplit.split() );
+        rsplit.close();
+        return table;
+    }
+
+    private StarTable readChunked( File file, boolean isCsv )
+            throws IOException {
+        StreamStarTable.setReadParallelism( 4 );
+        StreamStarTable.setChunkSize( 4096 );
+        return readTable( file, isCsv );
+    }
+
+    private StarTable readTable( File file, boolean isCsv )
+            throws IOException {
+        FileDataSource datsrc = new FileDataSource( file );
+        return isCsv ? (StarTable) new CsvStarTable( datsrc )
+                     : (StarTable) new AsciiStarTable( datsrc );
+    }
+
+    private void checkSame( StarTable seq, StarTable par ) throws IOException {
+        int ncol = seq.getColumnCount();
+        long nrow = seq.getRowCount();
+        assertEquals( ncol, par.getColumnCount() );
+        assertEquals( NROW, nrow );
+        assertEquals( nrow, par.getRowCount() );
+        for ( int icol = 0; icol < ncol; icol++ ) {
+            assertEquals( seq.getColumnInfo( icol ).toString(),
+                          par.getColumnInfo( icol ).toString() );
+            assertEquals( seq.getColumnInfo( icol ).getContentClass(),
+                          par.getColumnInfo( icol ).getContentClass() );
+        }
+
+        /* Sequential access. */
+        List rows = new ArrayList();
+        RowSequence rseq = seq.getRowSequence();
+        while ( rseq.next() ) {
+            rows.add( rseq.getRow() );
+        }
+        rseq.close();
+        RowSequence pseq = par.getRowSequence();
+        for ( int ir = 0; ir < nrow; ir++ ) {
+            assertTrue( pseq.next() );
+            assertArrayEquals( (Object[]) rows.get( ir ), pseq.getRow() );
+        }
+        assertTrue( ! pseq.next() );
+        pseq.close();
+
+        /* Split access. */
+        List splits = new ArrayList();
+        RowSplittable rsplit = par.getRowSplittable();
+        assertEquals( nrow, rsplit.splittableSize() );
+        splits.add( rsplit );
+        for ( RowSplittable s; ( s = rsplit.split() ) != null; ) {
+            splits.add( splits.size() - 1, s );
+        }
+        assertTrue( splits.size() > 2 );
+        long irow = 0;
+        for ( int is = 0; is < splits.size(); is++ ) {
+            RowSplittable split = (RowSplittable) splits.get( is );
+            long n = split.splittableSize();
+            while ( split.next() ) {
+                assertEquals( irow, split.getRowIndex() );
+                assertArrayEquals( (Object[]) rows.get( (int) irow ),
+                                   split.getRow() );
+                irow++;
+                n--;
+            }
+            assertEquals( 0, n );
+            split.close();
+        }
+        assertEquals( nrow, irow );
+
+        /* Parallel copy. */
+        StoragePolicy.setCopyParallelism( 4 );
+        StarTable copy = StoragePolicy.PREFER_MEMORY.copyTable( par );
+        assertTrue( copy.isRandom() );
+        assertEquals( nrow, copy.getRowCount() );
+        for ( int ir = 0; ir < nrow; ir++ ) {
+            assertArrayEquals( (Object[]) rows.get( ir ), copy.getRow( ir ) );
+        }
+    }
+
+    private static File createTempFile( String suffix ) throws IOException {
+        File file = File.createTempFile( "chunked", suffix );
+        file.deleteOnExit();
+        return file;
+    }
+}
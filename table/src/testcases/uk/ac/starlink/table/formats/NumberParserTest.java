@@ -0,0 +1,236 @@
+package uk.ac.starlink.table.formats;
+
+import java.io.IOException;
+import java.util.Random;
+import uk.ac.starlink.table.BlockRowSequence;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.util.ByteArrayDataSource;
+import uk.ac.starlink.util.DataSource;
+import uk.ac.starlink.util.TestCase;
+
+public class NumberParserTest extends TestCase {
+
+    public NumberParserTest( String name ) {
+        super( name );
+    }
+
+    public void testInteger() {
+        assertInteger( 0, "0" );
+        assertInteger( 23, "  +23\t" );
+        assertInteger( -99, "-99" );
+        assertInteger( Long.MAX_VALUE, "9223372036854775807" );
+        assertInteger( Long.MIN_VALUE, "-9223372036854775808" );
+        String[] bad = new String[] {
+            "", " ", "-", "+", "1.0", "1e3", "x", "12 3",
+            "9223372036854775808", "-9223372036854775809",
+        };
+        for ( int i = 0; i < bad.length; i++ ) {
+            String txt = bad[ i ];
+            assertTrue( ! NumberParser.isInteger( txt, 0, txt.length(),
+                                                  Long.MIN_VALUE,
+                                                  Long.MAX_VALUE ) );
+            try {
+                NumberParser.parseInteger( txt, 0, txt.length() );
+                fail( txt );
+            }
+            catch ( NumberFormatException e ) {
+            }
+        }
+        assertTrue( NumberParser.isInteger( "32767", 0, 5,
+                                            Short.MIN_VALUE,
+                                            Short.MAX_VALUE ) );
+        assertTrue( ! NumberParser.isInteger( "32768", 0, 5,
+                                              Short.MIN_VALUE,
+                                              Short.MAX_VALUE ) );
+        assertTrue( NumberParser.isInteger( "-32768", 0, 6,
+                                            Short.MIN_VALUE,
+                                            Short.MAX_VALUE ) );
+        assertTrue( ! NumberParser.isInteger( "-32769", 0, 6,
+                                              Short.MIN_VALUE,
+                                              Short.MAX_VALUE ) );
+        assertEquals( 34, NumberParser.parseInteger( "12345678", 2, 4 ) );
+    }
+
+    public void testDecimal() {
+        String[] good = new String[] {
+            "0", "-0", "-0.0", "1", "1.", ".5", "+.5e-3", "3.25", "  17.5 ",
+            "1e22", "1e23", "123456789012345678", "1234567890123456789",
+            "0.1", "0.3", "2.2250738585072014E-308", "4.9e-324", "1e-400",
+            "1.7976931348623157e308", "1e400", "-1.5E+10",
+            "100000000000000000000000",
+            "0.000000000000000000000000001", "9007199254740993",
+            "3.4028235e38", "1.4e-45", "16777217", "0.1f",
+        };
+        for ( int i = 0; i < good.length; i++ ) {
+            String txt = good[ i ];
+            if ( txt.endsWith( "f" ) ) {
+                assertTrue( ! isDecimal( txt ) );
+            }
+            else {
+                assertDecimal( txt );
+            }
+        }
+        assertEquals( 1.5e3,
+                      NumberParser.parseDecimal( "1.5d3", 0, 5, true ) );
+        assertTrue( ! NumberParser.isDecimal( "1.5d3", 0, 5, false ) );
+        String[] bad = new String[] {
+            "", ".", "-", "e3", "1e", "1e+", "1.2.3", "NaN", "Infinity",
+            "0x10", "1,000", "1 2",
+        };
+        for ( int i = 0; i < bad.length; i++ ) {
+            assertTrue( bad[ i ], ! isDecimal( bad[ i ] ) );
+        }
+        assertEquals( 1.0 / Double.NEGATIVE_INFINITY,
+                      NumberParser.parseDecimal( "-0", 0, 2, false ) );
+
+        Random rnd = new Random( 2301L );
+        for ( int i = 0; i < 20000; i++ ) {
+            double d;
+            switch ( i % 4 ) {
+                case 0:
+                    d = rnd.nextDouble();
+                    break;
+                case 1:
+                    d = rnd.nextInt( 100000 ) * 0.001;
+                    break;
+                case 2:
+                    d = Double.longBitsToDouble( rnd.nextLong() );
+                    break;
+                default:
+                    d = rnd.nextFloat() * 1e6;
+            }
+            if ( ! Double.isNaN( d ) && ! Double.isInfinite( d ) ) {
+                assertDecimal( Double.toString( d ) );
+                if ( ! Float.isInfinite( (float) d ) ) {
+                    assertDecimal( Float.toString( (float) d ) );
+                }
+                assertDecimal( Long.toString( rnd.nextInt( 100000 ) ) + "."
+                             + Integer.toString( rnd.nextInt( 1000 ) ) );
+            }
+        }
+    }
+
+    public void testBlocks() throws IOException {
+        StringBuffer sbuf = new StringBuffer( "i,x,s\n" );
+        for ( int i = 0; i < 100; i++ ) {
+            sbuf.append( i ).append( ',' )
+                .append( i % 10 == 0 ? "" : Double.toString( i * 0.1 ) )
+                .append( ',' ).append( "s" + i ).append( '\n' );
+        }
+        StarTable csv =
+            new CsvStarTable( new ByteArrayDataSource( "t.csv",
+                                                       sbuf.toString()
+                                                           .getBytes() ) );
+        checkBlocks( csv );
+
+        String ipac = new StringBuffer()
+            .append( "\\fixlen = T\n" )
+            .append( "|  i  |    x     |   f   |  s  |\n" )
+            .append( "| int | double   | float | char|\n" )
+            .append( "|     |          |       |     |\n" )
+            .append( "| 999 |          |       | nil |\n" )
+            .append( "  1     0.1        2.5     a    \n" )
+            .append( "  999   -1e3       2.5     b    \n" )
+            .append( "  3     null       NaN     nil  \n" )
+            .append( "  4     7.25       x       d    \n" )
+            .toString();
+        DataSource datsrc =
+            new ByteArrayDataSource( "t.tbl", ipac.getBytes() );
+        StarTable itable = new IpacTableBuilder()
+                          .makeStarTable( datsrc, false,
+                                          StoragePolicy.PREFER_MEMORY );
+        RowSequence rseq = itable.getRowSequence();
+        assertTrue( rseq.next() );
+        assertArrayEquals( new Object[] { new Integer( 1 ), new Double( 0.1 ),
+                                          new Float( 2.5f ), "a" },
+                           rseq.getRow() );
+        assertTrue( rseq.next() );
+        assertArrayEquals( new Object[] { null, new Double( -1e3 ),
+                                          new Float( 2.5f ), "b" },
+                           rseq.getRow() );
+        assertTrue( rseq.next() );
+        assertArrayEquals( new Object[] { new Integer( 3 ), null,
+                                          new Float( Float.NaN ), null },
+                           rseq.getRow() );
+        rseq.close();
+        checkBlocks( itable );
+    }
+
+    private void checkBlocks( StarTable table ) throws IOException {
+        int ncol = table.getColumnCount();
+        RowSequence rseq = table.getRowSequence();
+        RowSequence bseq0 = table.getRowSequence();
+        assertTrue( bseq0 instanceof BlockRowSequence );
+        BlockRowSequence bseq = (BlockRowSequence) bseq0;
+        double[] dbuf = new double[ 7 ];
+        Object[] obuf = new Object[ 7 ];
+        long nrow = 0;
+        for ( int n; ( n = bseq.nextBlock( 7 ) ) > 0; ) {
+            Object[][] rows = new Object[ n ][];
+            for ( int i = 0; i < n; i++ ) {
+                assertTrue( rseq.next() );
+                rows[ i ] = rseq.getRow();
+            }
+            for ( int icol = 0; icol < ncol; icol++ ) {
+                boolean isNum = Number.class.isAssignableFrom(
+                                    table.getColumnInfo( icol )
+                                         .getContentClass() );
+                if ( isNum ) {
+                    bseq.getDoubleBlock( icol, dbuf, 0 );
+                }
+                else {
+                    bseq.getObjectBlock( icol, obuf, 0 );
+                }
+                for ( int i = 0; i < n; i++ ) {
+                    Object value = rows[ i ][ icol ];
+                    if ( isNum ) {
+                        assertEquals( value == null
+                                      ? Double.NaN
+                                      : ((Number) value).doubleValue(),
+                                      dbuf[ i ] );
+                    }
+                    else {
+                        assertEquals( value, obuf[ i ] );
+                    }
+                }
+            }
+            nrow += n;
+            try {
+                bseq.getRow();
+                fail();
+            }
+            catch ( IllegalStateException e ) {
+            }
+        }
+        assertTrue( ! rseq.next() );
+        rseq.close();
+        bseq.close();
+        assertTrue( nrow > 0 );
+    }
+
+    private static boolean isDecimal( String txt ) {
+        return NumberParser.isDecimal( txt, 0, txt.length(), false );
+    }
+
+    private void assertDecimal( String txt ) {
+        int leng = txt.length();
+        assertTrue( txt, NumberParser.isDecimal( txt, 0, leng, false ) );
+        double d = NumberParser.parseDecimal( txt, 0, leng, false );
+        assertEquals( txt,
+                      Double.doubleToLongBits( Double.parseDouble( txt ) ),
+                      Double.doubleToLongBits( d ) );
+        float f = NumberParser.parseDecimalFloat( txt, 0, leng, false );
+        assertEquals( txt,
+                      Float.floatToIntBits( Float.parseFloat( txt ) ),
+                      Float.floatToIntBits( f ) );
+    }
+
+    private void assertInteger( long value, String txt ) {
+        int leng = txt.length();
+        assertTrue( NumberParser.isInteger( txt, 0, leng,
+                                            Long.MIN_VALUE, Long.MAX_VALUE ) );
+        assertEquals( value, NumberParser.parseInteger( txt, 0, leng ) );
+    }
+}
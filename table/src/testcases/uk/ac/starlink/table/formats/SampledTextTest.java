@@ -0,0 +1,163 @@
+package uk.ac.starlink.table.formats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.table.StoragePolicy;
+import uk.ac.starlink.table.TableFormatException;
+import uk.ac.starlink.util.ByteArrayDataSource;
+import uk.ac.starlink.util.DataSource;
+import uk.ac.starlink.util.FileDataSource;
+import uk.ac.starlink.util.TestCase;
+
+public class SampledTextTest extends TestCase {
+
+    public SampledTextTest( String name ) {
+        super( name );
+    }
+
+    public void testMisfit() throws IOException {
+        StringBuffer sbuf = new StringBuffer( "a,b,c,d\n" );
+        int nrow = 2000;
+        for ( int i = 0; i < nrow; i++ ) {
+            sbuf.append( i == 1500 ? "1.5" : Integer.toString( i ) )
+                .append( ',' )
+                .append( i == 1800 ? "3000000000" : Integer.toString( i ) )
+                .append( ',' )
+                .append( i * 0.25 )
+                .append( ',' )
+                .append( i % 2 == 0 ? "true" : "false" )
+                .append( '\n' );
+        }
+        DataSource datsrc =
+            new ByteArrayDataSource( "t.csv", sbuf.toString().getBytes() );
+
+        StarTable t0 = new CsvStarTable( datsrc, 100 );
+        assertEquals( -1, t0.getRowCount() );
+        assertSampledTypes( t0 );
+        assertEquals( "b", t0.getColumnInfo( 1 ).getName() );
+
+        /* Reading a value which does not fit fails, and leaves the
+         * metadata alone. */
+        RowSequence rseq = t0.getRowSequence();
+        long irow = 0;
+        try {
+            while ( rseq.next() ) {
+                assertTrue( rseq.getCell( 0 ) instanceof Integer );
+                irow++;
+            }
+            fail();
+        }
+        catch ( TableFormatException e ) {
+            assertTrue( e.getMessage().indexOf( "1.5" ) >= 0 );
+        }
+        rseq.close();
+        assertEquals( 1500, irow );
+        assertSampledTypes( t0 );
+
+        /* So does writing it through a streaming output handler. */
+        StarTable t1 = new CsvStarTable( datsrc, 100 );
+        try {
+            new CsvTableWriter().writeStarTable( t1,
+                                                 new ByteArrayOutputStream() );
+            fail();
+        }
+        catch ( TableFormatException e ) {
+        }
+        assertSampledTypes( t1 );
+
+        /* And making a random copy. */
+        StarTable t2 = new CsvStarTable( datsrc, 100 );
+        try {
+            StoragePolicy.PREFER_MEMORY.randomTable( t2 );
+            fail();
+        }
+        catch ( TableFormatException e ) {
+        }
+        assertSampledTypes( t2 );
+
+        /* A sample which covers the whole table is a full evaluation. */
+        StarTable t3 = new CsvStarTable( datsrc, nrow + 10 );
+        StarTable t4 = new CsvStarTable( datsrc );
+        assertEquals( nrow, t3.getRowCount() );
+        assertEquals( Long.class, t3.getColumnInfo( 1 ).getContentClass() );
+        for ( int icol = 0; icol < 4; icol++ ) {
+            assertEquals( t4.getColumnInfo( icol ).getContentClass(),
+                          t3.getColumnInfo( icol ).getContentClass() );
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CsvTableWriter().writeStarTable( t3, out );
+        assertTrue( out.toString().indexOf( "3000000000" ) >= 0 );
+    }
+
+    public void testStream() throws IOException {
+        StringBuffer sbuf = new StringBuffer( "a,b\n" );
+        int nrow = 2000;
+        for ( int i = 0; i < nrow; i++ ) {
+            sbuf.append( i ).append( ',' ).append( i * 0.5 ).append( '\n' );
+        }
+        DataSource datsrc =
+            new ByteArrayDataSource( "t.csv", sbuf.toString().getBytes() );
+
+        /* Values which fit the sampled types are written unchanged. */
+        StarTable table = new CsvStarTable( datsrc, 100 );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CsvTableWriter().writeStarTable( table, out );
+        String[] lines = out.toString().split( "\n" );
+        assertEquals( nrow + 1, lines.length );
+        assertEquals( "1999,999.5", lines[ nrow ].trim() );
+        StarTable rtable = StoragePolicy.PREFER_MEMORY.randomTable( table );
+        assertEquals( nrow, rtable.getRowCount() );
+        assertEquals( new Integer( 1999 ), rtable.getCell( 1999, 0 ) );
+    }
+
+    public void testProbes() throws IOException {
+        File file = File.createTempFile( "sampled", ".txt" );
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream( file );
+        StringBuffer sbuf = new StringBuffer( "# i s\n" );
+        int nrow = 5000;
+        for ( int i = 0; i < nrow; i++ ) {
+            sbuf.append( i ).append( ' ' );
+            sbuf.append( i > 1000 && i % 3 == 0 ? "'s " + i + "'"
+                                                : Integer.toString( i ) );
+            sbuf.append( '\n' );
+        }
+        out.write( sbuf.toString().getBytes() );
+        out.close();
+
+        /* The sample from the start sees only integers, but the probes
+         * find the strings. */
+        StarTable table = new AsciiStarTable( new FileDataSource( file ), 100 );
+        assertEquals( "s", table.getColumnInfo( 1 ).getName() );
+        assertEquals( Integer.class,
+                      table.getColumnInfo( 0 ).getContentClass() );
+        assertEquals( String.class,
+                      table.getColumnInfo( 1 ).getContentClass() );
+        StarTable rtable = StoragePolicy.PREFER_MEMORY.randomTable( table );
+        assertEquals( nrow, rtable.getRowCount() );
+        assertEquals( "s 1002", rtable.getCell( 1002, 1 ) );
+    }
+
+    private static void assertSampledTypes( StarTable table ) {
+        assertEquals( Integer.class,
+                      table.getColumnInfo( 0 ).getContentClass() );
+        assertEquals( Integer.class,
+                      table.getColumnInfo( 1 ).getContentClass() );
+        assertEquals( Double.class,
+                      table.getColumnInfo( 2 ).getContentClass() );
+        assertEquals( Boolean.class,
+                      table.getColumnInfo( 3 ).getContentClass() );
+    }
+
+    public void testBuilder() {
+        CsvTableBuilder builder = new CsvTableBuilder();
+        assertEquals( 0, builder.getSampleSize() );
+        builder.setSampleSize( 1000 );
+        assertEquals( 1000, builder.getSampleSize() );
+    }
+}
@@ -0,0 +1,195 @@
+package uk.ac.starlink.table.join;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.TestCase;
+
+public class AdaptiveBinTest extends TestCase {
+
+    private final Random rnd_;
+
+    public AdaptiveBinTest( String name ) {
+        super( name );
+        rnd_ = new Random( 9902231L );
+        Logger.getLogger( "uk.ac.starlink.table.join" )
+              .setLevel( Level.WARNING );
+    }
+
+    public void testSharedBins() {
+        double err = 0.01;
+        AbstractCartesianMatchEngine[] engines =
+                new AbstractCartesianMatchEngine[] {
+            new IsotropicCartesianMatchEngine( 2, err, false ),
+            new CuboidCartesianMatchEngine( new double[] { err, 2 * err } ),
+            new AnisotropicCartesianMatchEngine( new double[] { err, err } ),
+        };
+        Object[][] tuples = clusterTuples( 5000 );
+        double[] weights = new double[ tuples.length ];
+        Arrays.fill( weights, 1.0 );
+        for ( int ie = 0; ie < engines.length; ie++ ) {
+            AbstractCartesianMatchEngine engine = engines[ ie ];
+            assertEquals( 0, engine.getSampleSize() );
+            engine.setBinFactor( 0 );
+            assertTrue( engine.isAdaptive() );
+            assertTrue( engine.getSampleSize() > 0 );
+            engine.setSample( tuples, weights );
+
+            /* Bins in the dense cluster are refined. */
+            Object[] centre = new Object[] { new Double( 0.5 ),
+                                             new Double( 0.5 ) };
+            Cell cell = (Cell) engine.getBins( centre )[ 0 ];
+            assertEquals( 3, cell.getLabel().length );
+
+            /* Every matching pair must share a bin. */
+            int nmatch = 0;
+            int nt = 1000;
+            for ( int i = 0; i < nt; i++ ) {
+                Object[] bins1 = engine.getBins( tuples[ i ] );
+                Set bins = new HashSet( Arrays.asList( bins1 ) );
+                for ( int j = 0; j < nt; j++ ) {
+                    if ( engine.matchScore( tuples[ i ], tuples[ j ] ) >= 0 ) {
+                        nmatch++;
+                        boolean shared = false;
+                        Object[] bins2 = engine.getBins( tuples[ j ] );
+                        for ( int k = 0; k < bins2.length && ! shared; k++ ) {
+                            shared = bins.contains( bins2[ k ] );
+                        }
+                        assertTrue( shared );
+                    }
+                }
+            }
+            assertTrue( nmatch > 2 * nt );
+
+            /* Changing the configuration discards the refinement. */
+            engine.setBinFactor( 8 );
+            assertEquals( 0, engine.getSampleSize() );
+        }
+    }
+
+    public void testLargeCoords() {
+        double err = 1e-4;
+        double origin = 60000;
+        IsotropicCartesianMatchEngine engine =
+            new IsotropicCartesianMatchEngine( 2, err, false );
+        engine.setBinFactor( 0 );
+        Object[][] tuples = clusterTuples( 5000, origin, err / 0.01 );
+
+        /* Weight the sample as if from a large table, so that the
+         * cost model asks for deep refinement in the cluster. */
+        double[] weights = new double[ tuples.length ];
+        Arrays.fill( weights, 1e4 );
+        engine.setSample( tuples, weights );
+
+        /* The cluster is refined, but only as far as the refined cell
+         * labels can be represented. */
+        Object[] centre = new Object[] { new Double( origin + 0.5 * err ),
+                                         new Double( origin + 0.5 * err ) };
+        int[] label = ((Cell) engine.getBins( centre )[ 0 ]).getLabel();
+        assertEquals( 3, label.length );
+        assertTrue( label[ 2 ] > 0 && label[ 2 ] < 8 );
+        for ( int i = 0; i < tuples.length; i++ ) {
+            assertTrue( engine.getBins( tuples[ i ] ).length <= 16 );
+        }
+
+        /* Every matching pair must share a bin. */
+        int nmatch = 0;
+        int nt = 1000;
+        for ( int i = 0; i < nt; i++ ) {
+            Object[] bins1 = engine.getBins( tuples[ i ] );
+            Set bins = new HashSet( Arrays.asList( bins1 ) );
+            for ( int j = 0; j < nt; j++ ) {
+                if ( engine.matchScore( tuples[ i ], tuples[ j ] ) >= 0 ) {
+                    nmatch++;
+                    Set bins2 =
+                        new HashSet( Arrays.asList( engine
+                                                   .getBins( tuples[ j ] ) ) );
+                    bins2.retainAll( bins );
+                    assertTrue( bins2.size() > 0 );
+                }
+            }
+        }
+        assertTrue( nmatch > 2 * nt );
+    }
+
+    public void testMatch() throws Exception {
+        double err = 0.01;
+        IsotropicCartesianMatchEngine engine =
+            new IsotropicCartesianMatchEngine( 2, err, false );
+        StarTable t1 = createTable( clusterTuples( 3000 ) );
+        StarTable t2 = createTable( clusterTuples( 3000 ) );
+        StarTable[] tables = new StarTable[] { t1, t2 };
+        Set fixedPairs = getPairs( engine, tables );
+        engine.setBinFactor( 0 );
+        Set adaptPairs = getPairs( engine, tables );
+        assertTrue( fixedPairs.size() > 1000 );
+        assertEquals( fixedPairs, adaptPairs );
+    }
+
+    private Set getPairs( MatchEngine engine, StarTable[] tables )
+            throws Exception {
+        Set pairs = new HashSet();
+        for ( Iterator it = new RowMatcher( engine, tables )
+                           .findPairMatches( PairMode.ALL ).iterator();
+              it.hasNext(); ) {
+            RowLink2 link = (RowLink2) it.next();
+            pairs.add( link.getRef( 0 ).getRowIndex() + ","
+                     + link.getRef( 1 ).getRowIndex() + ","
+                     + link.getScore() );
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns 2-d tuples, half of them uniformly spread over the unit
+     * square and half in a dense cluster.
+     */
+    private Object[][] clusterTuples( int n ) {
+        return clusterTuples( n, 0, 1 );
+    }
+
+    /**
+     * Returns 2-d tuples like those of {@link #clusterTuples(int)},
+     * but scaled and then offset by a given amount in each dimension.
+     */
+    private Object[][] clusterTuples( int n, double origin, double scale ) {
+        Object[][] tuples = new Object[ n ][];
+        for ( int i = 0; i < n; i++ ) {
+            double x;
+            double y;
+            if ( i % 2 == 0 ) {
+                x = rnd_.nextDouble();
+                y = rnd_.nextDouble();
+            }
+            else {
+                x = 0.5 + rnd_.nextGaussian() * 0.02;
+                y = 0.5 + rnd_.nextGaussian() * 0.02;
+            }
+            x = origin + x * scale;
+            y = origin + y * scale;
+            tuples[ i ] = new Object[] { new Double( x ), new Double( y ) };
+        }
+        return tuples;
+    }
+
+    private static StarTable createTable( Object[][] tuples ) {
+        int n = tuples.length;
+        double[] xs = new double[ n ];
+        double[] ys = new double[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            xs[ i ] = ((Number) tuples[ i ][ 0 ]).doubleValue();
+            ys[ i ] = ((Number) tuples[ i ][ 1 ]).doubleValue();
+        }
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( n );
+        table.addColumn( ArrayColumn.makeColumn( "x", xs ) );
+        table.addColumn( ArrayColumn.makeColumn( "y", ys ) );
+        return table;
+    }
+}
@@ -1,10 +1,20 @@
 package uk.ac.starlink.table.join;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.ColumnStarTable;
 import uk.ac.starlink.util.TestCase;
 
 public class BinnerTest extends TestCase {
@@ -45,4 +55,260 @@ public class BinnerTest extends TestCase {
         }
         assertEquals( new HashSet( Arrays.asList( keys ) ), kset );
     }
+
+    public void testLongKeys() {
+        LongBinner binner = Binners.createLongBinner( 1000 );
+        Map expect = new HashMap();
+        for ( int i = 0; i < 1000; i++ ) {
+            Object key = ( i % 7 == 0 ) ? (Object) ( "k" + ( i % 5 ) )
+                                        : (Object) new Long( i % 37 - 18 );
+            binner.addItem( key, i );
+            List list = (List) expect.get( key );
+            if ( list == null ) {
+                list = new ArrayList();
+                expect.put( key, list );
+            }
+            list.add( new Long( i ) );
+        }
+        assertEquals( expect.size(), binner.getBinCount() );
+        for ( Iterator it = expect.keySet().iterator(); it.hasNext(); ) {
+            Object key = it.next();
+            List list = (List) expect.get( key );
+            long[] items = binner.getLongs( key );
+            assertEquals( list.size(), items.length );
+            for ( int j = 0; j < items.length; j++ ) {
+                assertEquals( ((Long) list.get( j )).longValue(), items[ j ] );
+            }
+        }
+        assertNull( binner.getLongs( new Long( 99 ) ) );
+        int nkey = 0;
+        for ( Iterator it = binner.getKeyIterator(); it.hasNext(); ) {
+            assertTrue( expect.containsKey( it.next() ) );
+            it.remove();
+            nkey++;
+        }
+        assertEquals( expect.size(), nkey );
+        assertEquals( 0, binner.getBinCount() );
+    }
+
+    public void testRowRefBinner() {
+        ObjectBinner binner = Binners.createRowRefBinner();
+        RowRef big = new RowRef( 3, 1L << 40 );
+        binner.addItem( new Long( -5 ), big );
+        binner.addItem( new Long( -5 ), new RowRef( 0, 23 ) );
+        binner.addItem( "x", new RowRef( 1, 2 ) );
+        binner.addItem( new Long( 77 ), new RowRef( 1, 2 ) );
+        assertEquals( 3, binner.getBinCount() );
+        assertEquals( 4, binner.getItemCount() );
+        assertEquals( Arrays.asList( new RowRef[] { big,
+                                                    new RowRef( 0, 23 ) } ),
+                      binner.getList( new Long( -5 ) ) );
+        assertEquals( Arrays.asList( new RowRef[] { new RowRef( 1, 2 ) } ),
+                      binner.getList( "x" ) );
+        assertTrue( binner.containsKey( new Long( 77 ) ) );
+        assertTrue( ! binner.containsKey( new Long( 78 ) ) );
+        assertNull( binner.getList( new Long( 78 ) ) );
+        binner.remove( new Long( 77 ) );
+        assertEquals( 2, binner.getBinCount() );
+        for ( Iterator it = binner.getKeyIterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+        assertEquals( 0, binner.getBinCount() );
+    }
+
+    public void testPixelIndex() throws Exception {
+        int nrow = 20000;
+        double[] ras = new double[ nrow ];
+        double[] decs = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ras[ i ] = rnd_.nextDouble() * 2 * Math.PI;
+            decs[ i ] = Math.asin( rnd_.nextDouble() * 2 - 1 );
+        }
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        table.addColumn( ArrayColumn.makeColumn( "ra", ras ) );
+        table.addColumn( ArrayColumn.makeColumn( "dec", decs ) );
+        HealpixSkyPixellator pixer = new PixtoolsHealpixSkyPixellator();
+        MatchEngine engine = new FixedSkyMatchEngine( pixer, 0.01 );
+        long nbin = 12L << ( 2 * pixer.getHealpixK() );
+        LongBinner binner = Binners.createLongBinner( nrow );
+        for ( int i = 0; i < nrow; i++ ) {
+            Object[] keys = engine.getBins( table.getRow( i ) );
+            for ( int ik = 0; ik < keys.length; ik++ ) {
+                binner.addItem( keys[ ik ], i );
+            }
+        }
+
+        File file = File.createTempFile( "pixidx", ".idx" );
+        file.deleteOnExit();
+        String sig = PixelIndex.createSignature( engine, "test" );
+        PixelIndex.writeIndex( table, engine, nbin, sig, file, null );
+        PixelIndex index = PixelIndex.open( file );
+        assertEquals( sig, index.getSignature() );
+        assertEquals( nrow, index.getTableRowCount() );
+        assertEquals( binner.getBinCount(), index.getBinCount() );
+        LongBinner ibinner = index.createBinner();
+        long lastKey = -1;
+        long nref = 0;
+        for ( Iterator it = ibinner.getKeyIterator(); it.hasNext(); ) {
+            long key = ((Number) it.next()).longValue();
+            assertTrue( key > lastKey );
+            lastKey = key;
+            long[] rows = ibinner.getLongs( new Long( key ) );
+            assertArrayEquals( binner.getLongs( new Long( key ) ), rows );
+            nref += rows.length;
+        }
+        assertEquals( nref, index.getRefCount() );
+        assertNull( index.getRows( -1 ) );
+        assertNull( index.getRows( nbin ) );
+
+        /* A small sort limit forces buckets to be split, and gives
+         * the same result.  No temporary files are left behind. */
+        File dir = new File( System.getProperty( "java.io.tmpdir" ) );
+        int ntmp = countTempFiles( dir );
+        File file2 = File.createTempFile( "pixidx", ".idx" );
+        file2.deleteOnExit();
+        PixelIndex.writeIndex( table, engine, nbin, sig, file2, null, 100 );
+        assertEquals( ntmp, countTempFiles( dir ) );
+        assertArrayEquals( readBytes( file ), readBytes( file2 ) );
+
+        /* Rows all in one bin are copied without sorting. */
+        ColumnStarTable table1 = ColumnStarTable.makeTableWithRows( 500 );
+        table1.addColumn( ArrayColumn.makeColumn( "ra", new double[ 500 ] ) );
+        table1.addColumn( ArrayColumn.makeColumn( "dec", new double[ 500 ] ) );
+        PixelIndex.writeIndex( table1, engine, nbin, sig, file, null );
+        PixelIndex.writeIndex( table1, engine, nbin, sig, file2, null, 10 );
+        assertArrayEquals( readBytes( file ), readBytes( file2 ) );
+        assertEquals( ntmp, countTempFiles( dir ) );
+        assertTrue( file.delete() );
+        assertTrue( file2.delete() );
+
+        long[] keys = new long[ 1000 ];
+        long[] values = new long[ 1000 ];
+        for ( int i = 0; i < keys.length; i++ ) {
+            keys[ i ] = rnd_.nextInt( 50 );
+            values[ i ] = i;
+        }
+        PixelIndex.sortPairs( keys, values );
+        for ( int i = 1; i < keys.length; i++ ) {
+            assertTrue( keys[ i ] > keys[ i - 1 ] ||
+                        keys[ i ] == keys[ i - 1 ] &&
+                        values[ i ] > values[ i - 1 ] );
+        }
+    }
+
+    public void testLongListMap() {
+        exerciseLongListMap( new LongListMap() );
+
+        /* Zero heap limit forces value storage into mapped temp files,
+         * which are deleted on close. */
+        File tmpdir = new File( System.getProperty( "java.io.tmpdir" ) );
+        int nfile = countMapFiles( tmpdir );
+        LongListMap map = new LongListMap( 0 );
+        exerciseLongListMap( map );
+        assertEquals( nfile + 1, countMapFiles( tmpdir ) );
+        map.close();
+        assertEquals( nfile, countMapFiles( tmpdir ) );
+
+        /* Maps sharing a budget only use the heap it allows between them,
+         * and give it back on close. */
+        long pageBytes = 2 * 8 * 65536;
+        LongListMap.HeapBudget budget =
+            new LongListMap.HeapBudget( 3 * pageBytes );
+        LongListMap map1 = new LongListMap( budget );
+        LongListMap map2 = new LongListMap( budget );
+        for ( int i = 0; i < 150000; i++ ) {
+            map1.add( i % 100, i );
+        }
+        assertEquals( nfile, countMapFiles( tmpdir ) );
+        for ( int i = 0; i < 150000; i++ ) {
+            map2.add( i % 100, i );
+        }
+        assertEquals( nfile + 1, countMapFiles( tmpdir ) );
+        assertEquals( 150000, map2.get( 99 ).length * 100 );
+        assertTrue( budget.getUsed() > 3 * pageBytes );
+        map1.close();
+        map2.close();
+        assertEquals( 0, budget.getUsed() );
+        assertEquals( nfile, countMapFiles( tmpdir ) );
+    }
+
+    private static int countMapFiles( File dir ) {
+        int n = 0;
+        String[] names = dir.list();
+        for ( int i = 0; i < names.length; i++ ) {
+            if ( names[ i ].startsWith( "LongListMap" ) ) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int countTempFiles( File dir ) {
+        int n = 0;
+        String[] names = dir.list();
+        for ( int i = 0; i < names.length; i++ ) {
+            if ( names[ i ].startsWith( "pix" ) &&
+                 names[ i ].endsWith( ".tmp" ) ) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static byte[] readBytes( File file ) throws IOException {
+        byte[] buf = new byte[ (int) file.length() ];
+        DataInputStream in =
+            new DataInputStream( new FileInputStream( file ) );
+        try {
+            in.readFully( buf );
+        }
+        finally {
+            in.close();
+        }
+        return buf;
+    }
+
+    private void exerciseLongListMap( LongListMap map ) {
+        int nkey = 5000;
+        int nitem = 200000;
+        long[] counts = new long[ nkey ];
+        for ( int i = 0; i < nitem; i++ ) {
+            int ik = rnd_.nextInt( nkey );
+            map.add( ik * 1000003L, i * (long) ik );
+            counts[ ik ]++;
+        }
+        assertEquals( nitem, map.getItemCount() );
+        int nk = 0;
+        for ( int ik = 0; ik < nkey; ik++ ) {
+            long key = ik * 1000003L;
+            if ( counts[ ik ] > 0 ) {
+                nk++;
+                long[] values = map.get( key );
+                assertEquals( counts[ ik ], values.length );
+                assertEquals( counts[ ik ], map.getCount( key ) );
+                for ( int j = 0; j < values.length; j++ ) {
+                    assertEquals( 0, ik == 0 ? values[ j ]
+                                             : values[ j ] % ik );
+                    if ( j > 0 ) {
+                        assertTrue( values[ j ] > values[ j - 1 ] || ik == 0 );
+                    }
+                }
+            }
+            else {
+                assertNull( map.get( key ) );
+                assertTrue( ! map.containsKey( key ) );
+            }
+        }
+        assertEquals( nk, map.getKeyCount() );
+        for ( int ik = 0; ik < nkey; ik += 2 ) {
+            map.remove( ik * 1000003L );
+        }
+        for ( Iterator it = map.keyIterator(); it.hasNext(); ) {
+            long key = ((Long) it.next()).longValue();
+            assertTrue( ( key / 1000003L ) % 2 == 1 );
+            it.remove();
+        }
+        assertEquals( 0, map.getKeyCount() );
+    }
 }
@@ -0,0 +1,102 @@
+package uk.ac.starlink.table.join;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import uk.ac.starlink.util.TestCase;
+
+public class CombinedMatchEngineTest extends TestCase {
+
+    public CombinedMatchEngineTest( String name ) {
+        super( name );
+    }
+
+    public void testConcurrent() throws InterruptedException {
+        double sep = 1e-3;
+        final CombinedMatchEngine engine =
+            new CombinedMatchEngine( new MatchEngine[] {
+                new FixedSkyMatchEngine( new PixtoolsHealpixSkyPixellator(),
+                                         sep ),
+                new IsotropicCartesianMatchEngine( 1, 0.3, false ),
+            } );
+        Random rnd = new Random( 9920331L );
+        int ntup = 400;
+        final Object[][] tuples = new Object[ ntup ][];
+        for ( int i = 0; i < ntup; i++ ) {
+            tuples[ i ] = new Object[] {
+                new Double( 1.0 + rnd.nextDouble() * 10 * sep ),
+                new Double( 0.5 + rnd.nextDouble() * 10 * sep ),
+                new Double( rnd.nextDouble() ),
+            };
+        }
+        final double[][] scores = calculateScores( engine, tuples );
+        final Set[] bins = calculateBins( engine, tuples );
+        int nmatch = 0;
+        for ( int i = 0; i < ntup; i++ ) {
+            for ( int j = 0; j < ntup; j++ ) {
+                if ( scores[ i ][ j ] >= 0 ) {
+                    nmatch++;
+                }
+            }
+        }
+        assertTrue( nmatch > ntup );
+
+        int nthread = 8;
+        final Throwable[] errors = new Throwable[ nthread ];
+        Thread[] threads = new Thread[ nthread ];
+        for ( int it = 0; it < nthread; it++ ) {
+            final int it0 = it;
+            threads[ it ] = new Thread( "Combined " + it ) {
+                public void run() {
+                    try {
+                        for ( int ip = 0; ip < 4; ip++ ) {
+                            assertTrue( Arrays.deepEquals(
+                                scores, calculateScores( engine, tuples ) ) );
+                            assertTrue( Arrays.equals(
+                                bins, calculateBins( engine, tuples ) ) );
+                        }
+                    }
+                    catch ( Throwable e ) {
+                        errors[ it0 ] = e;
+                    }
+                }
+            };
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            threads[ it ].start();
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            threads[ it ].join();
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            if ( errors[ it ] != null ) {
+                throw new AssertionError( errors[ it ] );
+            }
+        }
+    }
+
+    private static double[][] calculateScores( MatchEngine engine,
+                                               Object[][] tuples ) {
+        int n = tuples.length;
+        double[][] scores = new double[ n ][ n ];
+        for ( int i = 0; i < n; i++ ) {
+            for ( int j = 0; j < n; j++ ) {
+                scores[ i ][ j ] = engine.matchScore( tuples[ i ],
+                                                      tuples[ j ] );
+            }
+        }
+        return scores;
+    }
+
+    private static Set[] calculateBins( MatchEngine engine,
+                                        Object[][] tuples ) {
+        int n = tuples.length;
+        Set[] bins = new Set[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            Object[] ibins = engine.getBins( tuples[ i ] );
+            bins[ i ] = new HashSet( Arrays.asList( ibins ) );
+        }
+        return bins;
+    }
+}
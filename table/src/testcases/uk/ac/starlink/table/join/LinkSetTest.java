@@ -0,0 +1,159 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.TestCase;
+
+public class LinkSetTest extends TestCase {
+
+    private final Random rnd_;
+
+    public LinkSetTest( String name ) {
+        super( name );
+        rnd_ = new Random( 2300192L );
+    }
+
+    public void testCompact() {
+        LinkSet tset = new TreeSetLinkSet();
+        LinkSet cset = new CompactLinkSet();
+        for ( int i = 0; i < 20000; i++ ) {
+            RowLink link = randomLink();
+            assertEquals( tset.containsLink( link ),
+                          cset.containsLink( link ) );
+            tset.addLink( link );
+            cset.addLink( link );
+            if ( i % 5 == 0 ) {
+                RowLink rlink = randomLink();
+                assertEquals( tset.removeLink( rlink ),
+                              cset.removeLink( rlink ) );
+            }
+            if ( i % 4000 == 0 ) {
+                assertEquals( tset.size(), cset.size() );
+            }
+        }
+        for ( int i = 0; i < 5000; i++ ) {
+            cset.addLink( randomLink() );
+        }
+        for ( Iterator it = cset.iterator(); it.hasNext(); ) {
+            RowLink link = (RowLink) it.next();
+            if ( ! tset.containsLink( link ) ) {
+                it.remove();
+            }
+        }
+        assertEquals( tset.size(), cset.size() );
+        assertTrue( cset.sort() );
+        assertSameLinks( tset, cset );
+    }
+
+    public void testMatcher() throws Exception {
+        StarTable t1 = randomTable( 800 );
+        StarTable t2 = randomTable( 1000 );
+        StarTable t3 = randomTable( 600 );
+        MatchEngine engine =
+            new IsotropicCartesianMatchEngine( 2, 0.02, false );
+        RowMatcher tMatcher =
+            new RowMatcher( engine, new StarTable[] { t1, t2 } );
+        RowMatcher cMatcher =
+            new RowMatcher( engine, new StarTable[] { t1, t2 } );
+        tMatcher.setCompactThreshold( Long.MAX_VALUE );
+        cMatcher.setCompactThreshold( 0 );
+        assertTrue( tMatcher.createLinkSet() instanceof TreeSetLinkSet );
+        assertTrue( cMatcher.createLinkSet() instanceof CompactLinkSet );
+        PairMode[] modes = PairMode.values();
+        for ( int im = 0; im < modes.length; im++ ) {
+            LinkSet tLinks = tMatcher.findPairMatches( modes[ im ] );
+            LinkSet cLinks = cMatcher.findPairMatches( modes[ im ] );
+            assertTrue( tLinks.size() > 100 );
+            assertTrue( cLinks.sort() );
+            assertSameLinks( tLinks, cLinks );
+        }
+
+        StarTable[] tables3 = new StarTable[] { t1, t2, t3 };
+        MultiJoinType[] joins = new MultiJoinType[] {
+            MultiJoinType.DEFAULT,
+            MultiJoinType.DEFAULT,
+            MultiJoinType.DEFAULT,
+        };
+        tMatcher = new RowMatcher( engine, tables3 );
+        cMatcher = new RowMatcher( engine, tables3 );
+        tMatcher.setCompactThreshold( Long.MAX_VALUE );
+        cMatcher.setCompactThreshold( 0 );
+        LinkSet tGroups = tMatcher.findGroupMatches( joins );
+        LinkSet cGroups = cMatcher.findGroupMatches( joins );
+        assertTrue( cGroups.sort() );
+        assertSameLinks( tGroups, cGroups );
+        LinkSet tMulti = tMatcher.findMultiPairMatches( 0, true, joins );
+        LinkSet cMulti = cMatcher.findMultiPairMatches( 0, true, joins );
+        assertTrue( cMulti.sort() );
+        assertSameLinks( tMulti, cMulti );
+
+        tMatcher = new RowMatcher( engine, new StarTable[] { t2 } );
+        cMatcher = new RowMatcher( engine, new StarTable[] { t2 } );
+        tMatcher.setCompactThreshold( Long.MAX_VALUE );
+        cMatcher.setCompactThreshold( 0 );
+        LinkSet tInternal = tMatcher.findInternalMatches( false );
+        LinkSet cInternal = cMatcher.findInternalMatches( false );
+        assertTrue( cInternal.sort() );
+        assertSameLinks( tInternal, cInternal );
+    }
+
+    private void assertSameLinks( LinkSet expected, LinkSet actual ) {
+        assertEquals( expected.size(), actual.size() );
+        List eList = toList( expected );
+        List aList = toList( actual );
+        assertEquals( eList, aList );
+        for ( int i = 0; i < eList.size(); i++ ) {
+            Object eLink = eList.get( i );
+            Object aLink = aList.get( i );
+            assertEquals( eLink.getClass(), aLink.getClass() );
+            if ( eLink instanceof RowLink2 ) {
+                assertEquals( ((RowLink2) eLink).getScore(),
+                              ((RowLink2) aLink).getScore() );
+            }
+        }
+    }
+
+    private static List toList( LinkSet linkSet ) {
+        List list = new ArrayList();
+        for ( Iterator it = linkSet.iterator(); it.hasNext(); ) {
+            list.add( it.next() );
+        }
+        return list;
+    }
+
+    private RowLink randomLink() {
+        int nref = rnd_.nextInt( 8 ) == 0 ? 3 : 2;
+        RowRef[] refs = new RowRef[ nref ];
+        for ( int i = 0; i < nref; i++ ) {
+            refs[ i ] = new RowRef( rnd_.nextInt( 3 ), rnd_.nextInt( 60 ) );
+        }
+        if ( nref == 2 && rnd_.nextBoolean() ) {
+            RowLink2 link = new RowLink2( refs[ 0 ], refs[ 1 ] );
+            link.setScore( rnd_.nextInt( 4 ) == 0 ? Double.NaN
+                                                  : rnd_.nextDouble() );
+            return link;
+        }
+        else {
+            return new RowLink( refs );
+        }
+    }
+
+    private StarTable randomTable( int nrow ) throws IOException {
+        double[] xs = new double[ nrow ];
+        double[] ys = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            xs[ i ] = rnd_.nextDouble();
+            ys[ i ] = rnd_.nextDouble();
+        }
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        table.addColumn( ArrayColumn.makeColumn( "x", xs ) );
+        table.addColumn( ArrayColumn.makeColumn( "y", ys ) );
+        return table;
+    }
+}
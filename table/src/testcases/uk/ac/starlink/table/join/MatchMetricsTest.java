@@ -0,0 +1,92 @@
+package uk.ac.starlink.table.join;
+
+import java.io.IOException;
+import java.util.Random;
+import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.TestCase;
+
+public class MatchMetricsTest extends TestCase {
+
+    public MatchMetricsTest( String name ) {
+        super( name );
+    }
+
+    public void testFailedMatch() throws Exception {
+        int nrow = 2000;
+        BreakableEngine engine = new BreakableEngine();
+        StarTable[] tables = new StarTable[] {
+            createTable( nrow, 2201L ),
+            createTable( nrow, 2202L ),
+        };
+        MatchMetrics metrics = new MatchMetrics();
+        RowMatcher matcher = new RowMatcher( engine, tables );
+        matcher.setMetrics( metrics );
+
+        engine.nGood_ = nrow + nrow / 2;
+        try {
+            matcher.findPairMatches( PairMode.ALL );
+            fail();
+        }
+        catch ( IllegalStateException e ) {
+        }
+        assertEquals( 0, metrics.getMatchCount() );
+        assertEquals( 1, metrics.getFailedCount() );
+        assertTrue( metrics.getPhases().length > 0 );
+        assertEquals( new Integer( 1 ), metrics.toMap().get( "failedCount" ) );
+
+        /* Phases left open by the failure must not leak into the next
+         * match. */
+        engine.nGood_ = Integer.MAX_VALUE;
+        LinkSet links = matcher.findPairMatches( PairMode.ALL );
+        assertTrue( links.size() > 0 );
+        assertEquals( 1, metrics.getMatchCount() );
+        assertEquals( 1, metrics.getFailedCount() );
+
+        engine.nGood_ = nrow / 2;
+        try {
+            matcher.findGroupMatches( new MultiJoinType[] {
+                MultiJoinType.MATCH, MultiJoinType.MATCH,
+            } );
+            fail();
+        }
+        catch ( IllegalStateException e ) {
+        }
+        assertEquals( 1, metrics.getMatchCount() );
+        assertEquals( 2, metrics.getFailedCount() );
+    }
+
+    private static StarTable createTable( int nrow, long seed )
+            throws IOException {
+        Random rnd = new Random( seed );
+        double[] data = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            data[ i ] = rnd.nextDouble() * nrow;
+        }
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( nrow );
+        table.addColumn( ArrayColumn.makeColumn( "X", data ) );
+        return table;
+    }
+
+    /**
+     * Match engine which fails after a given number of bin requests.
+     */
+    private static class BreakableEngine
+            extends IsotropicCartesianMatchEngine {
+        int nGood_;
+        int nCall_;
+
+        BreakableEngine() {
+            super( 1, 0.5, false );
+        }
+
+        public Object[] getBins( Object[] tuple ) {
+            if ( nCall_++ >= nGood_ ) {
+                nCall_ = 0;
+                throw new IllegalStateException( "Broken" );
+            }
+            return super.getBins( tuple );
+        }
+    }
+}
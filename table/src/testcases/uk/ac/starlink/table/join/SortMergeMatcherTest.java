@@ -0,0 +1,138 @@
+package uk.ac.starlink.table.join;
+
+import gov.fnal.eag.healpix.PixTools;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.ColumnStarTable;
+import uk.ac.starlink.table.StarTable;
+import uk.ac.starlink.util.TestCase;
+
+public class SortMergeMatcherTest extends TestCase {
+
+    private final Random rnd_;
+
+    public SortMergeMatcherTest( String name ) {
+        super( name );
+        rnd_ = new Random( 4409812L );
+    }
+
+    public void testRings() {
+        PixTools pixTools = PixTools.getInstance();
+        for ( int k = 0; k < 6; k++ ) {
+            SortMergeMatcher matcher =
+                new SortMergeMatcher( null, 0, k, new StarTable[ 2 ] );
+            long nside = 1L << k;
+            long lastRing = 1;
+            for ( long ipix = 0; ipix < 12 * nside * nside; ipix++ ) {
+                long ring = matcher.pixelRing( ipix );
+                assertTrue( ring == lastRing || ring == lastRing + 1 );
+                lastRing = ring;
+                double theta = pixTools.pix2ang_ring( nside, ipix )[ 0 ];
+                assertEquals( theta, matcher.ringTheta( ring ), 1e-10 );
+            }
+            assertEquals( 4 * nside - 1, lastRing );
+        }
+    }
+
+    public void testMatch() throws Exception {
+        double sep = 0.002;
+        FixedSkyMatchEngine engine =
+            new FixedSkyMatchEngine( new PixtoolsHealpixSkyPixellator(),
+                                     sep );
+        int sortK = 5;
+        StarTable t1 = sortedTable( 3000, sortK );
+        StarTable t2 = sortedTable( 4000, sortK );
+
+        RowMatcher rowMatcher =
+            new RowMatcher( engine, new StarTable[] { t1, t2 } );
+        List expected = new ArrayList();
+        for ( Iterator it = rowMatcher.findPairMatches( PairMode.ALL )
+                                      .iterator(); it.hasNext(); ) {
+            RowLink2 link = (RowLink2) it.next();
+            expected.add( link.getRef( 0 ).getRowIndex() + ","
+                        + link.getRef( 1 ).getRowIndex() + ","
+                        + (float) link.getScore() );
+        }
+        assertTrue( expected.size() > 100 );
+
+        final List actual = new ArrayList();
+        SortMergeMatcher smMatcher =
+            new SortMergeMatcher( engine, sep, sortK,
+                                  new StarTable[] { t1, t2 } );
+        long npair = smMatcher.findPairMatches( new PairSink() {
+            public void acceptPair( long irow1, long irow2, double score ) {
+                actual.add( irow1 + "," + irow2 + "," + (float) score );
+            }
+        } );
+        assertEquals( expected.size(), (int) npair );
+        Collections.sort( expected );
+        Collections.sort( actual );
+        assertEquals( expected, actual );
+
+        StarTable t3 = randomTable( 1000 );
+        try {
+            new SortMergeMatcher( engine, sep, sortK,
+                                  new StarTable[] { t1, t3 } )
+               .findPairMatches( new PairSink() {
+                    public void acceptPair( long irow1, long irow2,
+                                            double score ) {
+                    }
+                } );
+            fail();
+        }
+        catch ( IOException e ) {
+            assertTrue( e.getMessage().indexOf( "not sorted" ) > 0 );
+        }
+    }
+
+    private StarTable sortedTable( int nrow, int sortK ) throws IOException {
+        PixTools pixTools = PixTools.getInstance();
+        long nside = 1L << sortK;
+        List rows = new ArrayList();
+        for ( int i = 0; i < nrow; i++ ) {
+            double ra = 1.0 + rnd_.nextDouble() * 0.2;
+            double dec = -0.1 + rnd_.nextDouble() * 0.2;
+            long pix =
+                pixTools.ang2pix_ring( nside, 0.5 * Math.PI - dec, ra );
+            rows.add( new double[] { pix, ra, dec } );
+        }
+        Collections.sort( rows, new Comparator() {
+            public int compare( Object o1, Object o2 ) {
+                double p1 = ((double[]) o1)[ 0 ];
+                double p2 = ((double[]) o2)[ 0 ];
+                return p1 < p2 ? -1 : ( p1 > p2 ? 1 : 0 );
+            }
+        } );
+        double[] ras = new double[ nrow ];
+        double[] decs = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            double[] row = (double[]) rows.get( i );
+            ras[ i ] = row[ 1 ];
+            decs[ i ] = row[ 2 ];
+        }
+        return createTable( ras, decs );
+    }
+
+    private StarTable randomTable( int nrow ) {
+        double[] ras = new double[ nrow ];
+        double[] decs = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ras[ i ] = 1.0 + rnd_.nextDouble() * 0.2;
+            decs[ i ] = -0.1 + rnd_.nextDouble() * 0.2;
+        }
+        return createTable( ras, decs );
+    }
+
+    private static StarTable createTable( double[] ras, double[] decs ) {
+        ColumnStarTable table = ColumnStarTable.makeTableWithRows( ras.length );
+        table.addColumn( ArrayColumn.makeColumn( "ra", ras ) );
+        table.addColumn( ArrayColumn.makeColumn( "dec", decs ) );
+        return table;
+    }
+}
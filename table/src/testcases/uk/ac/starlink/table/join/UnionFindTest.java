@@ -0,0 +1,59 @@
+package uk.ac.starlink.table.join;
+
+import java.util.Random;
+import uk.ac.starlink.util.TestCase;
+
+public class UnionFindTest extends TestCase {
+
+    public UnionFindTest( String name ) {
+        super( name );
+    }
+
+    public void testSerial() {
+        UnionFind uf = new UnionFind( 10 );
+        assertEquals( 10, uf.getSize() );
+        for ( int i = 0; i < 10; i++ ) {
+            assertEquals( i, uf.find( i ) );
+        }
+        assertTrue( uf.union( 7, 3 ) );
+        assertTrue( uf.union( 9, 7 ) );
+        assertFalse( uf.union( 3, 9 ) );
+        assertTrue( uf.union( 5, 6 ) );
+        assertEquals( 3, uf.find( 9 ) );
+        assertEquals( 5, uf.find( 6 ) );
+        assertTrue( uf.union( 6, 9 ) );
+        assertEquals( 3, uf.find( 5 ) );
+        assertEquals( 0, uf.find( 0 ) );
+    }
+
+    public void testConcurrent() throws InterruptedException {
+        final int n = 100000;
+        final int nchain = 100;
+        final UnionFind uf = new UnionFind( n );
+        Thread[] threads = new Thread[ 4 ];
+        for ( int it = 0; it < threads.length; it++ ) {
+            final Random rnd = new Random( 23L * it );
+            threads[ it ] = new Thread() {
+                public void run() {
+                    for ( int i = 0; i < 2 * n; i++ ) {
+                        int j = rnd.nextInt( n );
+                        int k = ( j + nchain * ( 1 + rnd.nextInt( 3 ) ) ) % n;
+                        uf.union( j, k );
+                    }
+                }
+            };
+        }
+        for ( int it = 0; it < threads.length; it++ ) {
+            threads[ it ].start();
+        }
+        for ( int it = 0; it < threads.length; it++ ) {
+            threads[ it ].join();
+        }
+
+        /* All elements with the same value modulo nchain are linked,
+         * and no others. */
+        for ( int i = 0; i < n; i++ ) {
+            assertEquals( i % nchain, uf.find( i ) );
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package uk.ac.starlink.table.join;
+
+import java.util.Random;
+import uk.ac.starlink.util.TestCase;
+
+public class VectorScorerTest extends TestCase {
+
+    private final Random rnd_;
+
+    public VectorScorerTest( String name ) {
+        super( name );
+        rnd_ = new Random( 2300541L );
+    }
+
+    public void testSky() {
+        SkyPixellator pixer = new PixtoolsHealpixSkyPixellator();
+        double sep = 1e-4;
+        checkScorer( new FixedSkyMatchEngine( pixer, sep ), new SkyGen( sep ) );
+        checkScorer( new ErrorSkyMatchEngine( pixer, sep ),
+                     new SkyGen( sep ) {
+            public Object[] createTuple() {
+                Object[] t = super.createTuple();
+                return new Object[] { t[ 0 ], t[ 1 ],
+                                      new Double( rnd_.nextDouble() * sep_ ) };
+            }
+        } );
+        assertNull( new EllipseSkyMatchEngine( pixer, sep )
+                   .getVectorScorer() );
+
+        /* Subclasses may score differently, so get no vector scorer. */
+        assertNull( new FixedSkyMatchEngine( pixer, sep ) {
+            public double matchScore( Object[] tuple1, Object[] tuple2 ) {
+                return 0;
+            }
+        }.getVectorScorer() );
+    }
+
+    public void testSkyLimit() {
+        SkyPixellator pixer = new PixtoolsHealpixSkyPixellator();
+        double sep = 1e-4;
+        FixedSkyMatchEngine fixed = new FixedSkyMatchEngine( pixer, sep );
+        ErrorSkyMatchEngine errored = new ErrorSkyMatchEngine( pixer, sep );
+        VectorScorer fixedScorer = fixed.getVectorScorer();
+        VectorScorer errorScorer = errored.getVectorScorer();
+        double[] fvecs = new double[ 2 * fixedScorer.getVectorLength() ];
+        double[] evecs = new double[ 2 * errorScorer.getVectorLength() ];
+        int nin = 0;
+        int nout = 0;
+
+        /* Pairs separated by very nearly the maximum separation,
+         * where chord and arc lengths differ in the last few bits. */
+        for ( int i = 0; i < 5000; i++ ) {
+            double alpha = rnd_.nextDouble() * 2 * Math.PI;
+            double delta = ( rnd_.nextDouble() - 0.5 ) * Math.PI * 0.99;
+            double pa = rnd_.nextDouble() * 2 * Math.PI;
+            double dist = sep * ( 1 + ( rnd_.nextDouble() - 0.5 ) * 1e-12 );
+            double delta2 = delta + dist * Math.cos( pa );
+            double alpha2 = alpha + dist * Math.sin( pa ) / Math.cos( delta );
+            Object[] t1 = new Object[] { new Double( alpha ),
+                                         new Double( delta ) };
+            Object[] t2 = new Object[] { new Double( alpha2 ),
+                                         new Double( delta2 ) };
+            double score = fixed.matchScore( t1, t2 );
+            fixedScorer.toVector( t1, fvecs, 0 );
+            fixedScorer.toVector( t2, fvecs, fixedScorer.getVectorLength() );
+            assertEquals( score,
+                          fixedScorer.score( fvecs, 0, fvecs,
+                                             fixedScorer.getVectorLength() ),
+                          0.0 );
+            if ( score >= 0 ) {
+                nin++;
+            }
+            else {
+                nout++;
+            }
+            Double err = new Double( 0.5 * sep );
+            Object[] e1 = new Object[] { t1[ 0 ], t1[ 1 ], err };
+            Object[] e2 = new Object[] { t2[ 0 ], t2[ 1 ], err };
+            errorScorer.toVector( e1, evecs, 0 );
+            errorScorer.toVector( e2, evecs, errorScorer.getVectorLength() );
+            assertEquals( errored.matchScore( e1, e2 ),
+                          errorScorer.score( evecs, 0, evecs,
+                                             errorScorer.getVectorLength() ),
+                          0.0 );
+        }
+        assertTrue( nin > 100 );
+        assertTrue( nout > 100 );
+    }
+
+    public void testCartesian() {
+        checkScorer( new IsotropicCartesianMatchEngine( 3, 0.2, false ),
+                     new CartesianGen( 3 ) );
+        checkScorer( new AnisotropicCartesianMatchEngine(
+                         new double[] { 0.1, 0.3 } ),
+                     new CartesianGen( 2 ) );
+        checkScorer( new CuboidCartesianMatchEngine(
+                         new double[] { 0.2, 0.1, 0.3 } ),
+                     new CartesianGen( 3 ) );
+        checkScorer( new ErrorCartesianMatchEngine( 2, 0.1 ),
+                     new CartesianGen( 2 ) {
+            public Object[] createTuple() {
+                return new Object[] { createValue( 1.0 ), createValue( 1.0 ),
+                                      createValue( 0.1 ) };
+            }
+        } );
+        checkScorer( new SphericalPolarMatchEngine( 0.05 ), new TupleGen() {
+            public Object[] createTuple() {
+                return new Object[] { new Double( rnd_.nextDouble() * 0.5 ),
+                                      new Double( rnd_.nextDouble() * 0.5 ),
+                                      new Double( 1 + rnd_.nextDouble() ) };
+            }
+        } );
+        assertNull( new EllipseCartesianMatchEngine( 1.0 ).getVectorScorer() );
+        assertNull( new IsotropicCartesianMatchEngine( 2, 0.1, false ) {
+        }.getVectorScorer() );
+        assertNull( new EqualsMatchEngine().getVectorScorer() );
+    }
+
+    public void testCombined() {
+        SkyPixellator pixer = new PixtoolsHealpixSkyPixellator();
+        final double sep = 1e-4;
+        final SkyGen skyGen = new SkyGen( sep );
+        final CartesianGen cartGen = new CartesianGen( 1 );
+        MatchEngine[] engines = new MatchEngine[] {
+            new FixedSkyMatchEngine( pixer, sep ),
+            new IsotropicCartesianMatchEngine( 1, 0.3, false ),
+        };
+        checkScorer( new CombinedMatchEngine( engines ), new TupleGen() {
+            public Object[] createTuple() {
+                Object[] t1 = skyGen.createTuple();
+                Object[] t2 = cartGen.createTuple();
+                return new Object[] { t1[ 0 ], t1[ 1 ], t2[ 0 ] };
+            }
+        } );
+        assertNull( new CombinedMatchEngine( new MatchEngine[] {
+                        engines[ 0 ], new EqualsMatchEngine(),
+                    } ).getVectorScorer() );
+        assertNull( new CombinedMatchEngine( engines ) {
+        }.getVectorScorer() );
+    }
+
+    private void checkScorer( MatchEngine engine, TupleGen gen ) {
+        VectorScorer scorer = engine.getVectorScorer();
+        int vlen = scorer.getVectorLength();
+        int ntup = 200;
+        Object[][] tuples = new Object[ ntup ][];
+        double[] vecs = new double[ ntup * vlen + 1 ];
+        for ( int i = 0; i < ntup; i++ ) {
+            tuples[ i ] = gen.createTuple();
+            scorer.toVector( tuples[ i ], vecs, 1 + i * vlen );
+        }
+        tuples[ 0 ] = (Object[]) tuples[ 0 ].clone();
+        tuples[ 0 ][ 0 ] = null;
+        scorer.toVector( tuples[ 0 ], vecs, 1 );
+        int nmatch = 0;
+        for ( int i = 0; i < ntup; i++ ) {
+            for ( int j = 0; j < ntup; j++ ) {
+                double score = engine.matchScore( tuples[ i ], tuples[ j ] );
+                double vscore = scorer.score( vecs, 1 + i * vlen,
+                                              vecs, 1 + j * vlen );
+                assertEquals( score >= 0, vscore >= 0 );
+                if ( score >= 0 ) {
+                    nmatch++;
+                    assertEquals( score, vscore, 0.0 );
+                }
+            }
+        }
+        assertTrue( nmatch > ntup );
+    }
+
+    private abstract class TupleGen {
+        abstract Object[] createTuple();
+        Double createValue( double range ) {
+            return new Double( rnd_.nextDouble() * range );
+        }
+    }
+
+    private class SkyGen extends TupleGen {
+        final double sep_;
+        SkyGen( double sep ) {
+            sep_ = sep;
+        }
+        Object[] createTuple() {
+            return new Object[] { new Double( 1.0 + createValue( 10 * sep_ )
+                                                   .doubleValue() ),
+                                  new Double( 0.5 + createValue( 10 * sep_ )
+                                                   .doubleValue() ) };
+        }
+    }
+
+    private class CartesianGen extends TupleGen {
+        final int ndim_;
+        CartesianGen( int ndim ) {
+            ndim_ = ndim;
+        }
+        Object[] createTuple() {
+            Object[] tuple = new Object[ ndim_ ];
+            for ( int i = 0; i < ndim_; i++ ) {
+                tuple[ i ] = createValue( 1.0 );
+            }
+            return tuple;
+        }
+    }
+}
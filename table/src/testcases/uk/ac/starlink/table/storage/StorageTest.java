@@ -1,21 +1,29 @@
 package uk.ac.starlink.table.storage;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.Random;
 import junit.framework.AssertionFailedError;
 import uk.ac.starlink.table.ArrayColumn;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ByteStore;
 import uk.ac.starlink.table.ColumnData;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.ColumnStarTable;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.FormatsTest;
+import uk.ac.starlink.table.RowAccess;
+import uk.ac.starlink.table.RowPermutedStarTable;
+import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.RowStore;
 import uk.ac.starlink.table.StoragePolicy;
 import uk.ac.starlink.table.TableFormatException;
 import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.table.WrapperStarTable;
 import uk.ac.starlink.util.TestCase;
 
 /*
@@ -38,6 +46,8 @@ public class StorageTest extends TestCase {
         assertEquals( StoragePolicy.PREFER_MEMORY, getPolicy( "memory" ) );
         assertEquals( StoragePolicy.PREFER_DISK, getPolicy( "disk" ) );
         assertEquals( StoragePolicy.SIDEWAYS, getPolicy( "sideways" ) );
+        assertEquals( StoragePolicy.COMPRESSED, getPolicy( "compressed" ) );
+        assertEquals( StoragePolicy.BUDGET, getPolicy( "budget" ) );
         assertEquals( StoragePolicy.DISCARD, getPolicy( "discard" ) );
         assertEquals( StoragePolicy.ADAPTIVE, getPolicy( "adaptive" ) );
 
@@ -47,6 +57,10 @@ public class StorageTest extends TestCase {
                        StoragePolicy.PREFER_DISK.toString() );
         assertEquals( "StoragePolicy.SIDEWAYS",
                        StoragePolicy.SIDEWAYS.toString() );
+        assertEquals( "StoragePolicy.COMPRESSED",
+                       StoragePolicy.COMPRESSED.toString() );
+        assertEquals( "StoragePolicy.BUDGET",
+                       StoragePolicy.BUDGET.toString() );
         assertEquals( "StoragePolicy.DISCARD",
                        StoragePolicy.DISCARD.toString() );
         assertEquals( "StoragePolicy.ADAPTIVE",
@@ -58,6 +72,10 @@ public class StorageTest extends TestCase {
                     instanceof DiskRowStore );
         assertTrue( StoragePolicy.SIDEWAYS.makeRowStore()
                     instanceof SidewaysRowStore );
+        assertTrue( StoragePolicy.COMPRESSED.makeRowStore()
+                    instanceof CompressedRowStore );
+        assertTrue( StoragePolicy.BUDGET.makeRowStore()
+                    instanceof ByteStoreRowStore );
         assertTrue( StoragePolicy.DISCARD.makeRowStore()
                     instanceof DiscardRowStore );
         assertTrue( StoragePolicy.ADAPTIVE.makeRowStore()
@@ -73,6 +91,8 @@ public class StorageTest extends TestCase {
                     instanceof DiscardByteStore );
         assertTrue( StoragePolicy.ADAPTIVE.makeByteStore()
                     instanceof AdaptiveByteStore );
+        assertTrue( StoragePolicy.BUDGET.makeByteStore()
+                    instanceof BudgetByteStore );
     }
 
     public StoragePolicy getPolicy( String policyName ) {
@@ -154,6 +174,13 @@ public class StorageTest extends TestCase {
         fTest_.assertTableEquals( t3, mt3 );
         fTest_.assertTableEquals( t3, st3 );
 
+        fTest_.assertTableEquals( t1, fillStore( new CompressedRowStore(), t1 )
+                                     .getStarTable() );
+        fTest_.assertTableEquals( t2, fillStore( new CompressedRowStore(), t2 )
+                                     .getStarTable() );
+        fTest_.assertTableEquals( t3, fillStore( new CompressedRowStore(), t3 )
+                                     .getStarTable() );
+
         String err;
         try {
             fTest_.assertTableEquals( t2, mt2 );
@@ -166,11 +193,535 @@ public class StorageTest extends TestCase {
         assertTrue( err.indexOf( "sky-blue" ) > 0 );
     }
 
+    public void testRowAccess() throws Exception {
+        int nrow = 2000;
+        ColumnStarTable t1 = ColumnStarTable.makeTableWithRows( (long) nrow );
+        int[] ivals = new int[ nrow ];
+        double[] dvals = new double[ nrow ];
+        String[] svals = new String[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ivals[ i ] = i;
+            dvals[ i ] = i * 0.25;
+            svals[ i ] = i % 7 == 0 ? null : "row " + i;
+        }
+        t1.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "d", dvals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+        StarTable t1u = new WrapperStarTable( t1 ) {
+            public long getRowCount() {
+                return -1L;
+            }
+        };
+
+        /* Sideways storage uses different column store implementations
+         * according to whether the row count is known. */
+        StarTable st1 = fillStore( new SidewaysRowStore(), t1 ).getStarTable();
+        StarTable st1u = fillStore( new SidewaysRowStore(), t1u )
+                        .getStarTable();
+        checkRowAccess( t1, st1, 4 );
+        checkRowAccess( t1, st1u, 4 );
+
+        File cfile = File.createTempFile( "ctest", ".bin" );
+        cfile.deleteOnExit();
+        CompressedRowStore cstore =
+            (CompressedRowStore)
+            fillStore( new CompressedRowStore( cfile, 300 ), t1u );
+        checkRowAccess( t1, cstore.getStarTable(), 4 );
+        assertTrue( cfile.exists() );
+        cstore.close();
+        assertTrue( ! cfile.exists() );
+        cstore.close();
+
+        long[] rowMap = new long[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            rowMap[ i ] = nrow - 1 - i;
+        }
+        checkRowAccess( new RowPermutedStarTable( t1, rowMap ),
+                        new RowPermutedStarTable( st1, rowMap ), 4 );
+    }
+
+    public void testFixedStringRowAccess() throws Exception {
+        int nrow = 3000;
+        ColumnStarTable t1 = ColumnStarTable.makeTableWithRows( (long) nrow );
+        String[] svals = new String[ nrow ];
+        String[] tvals = new String[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            svals[ i ] = i % 11 == 0 ? null : "s" + i;
+            tvals[ i ] = "t" + ( i * 7919 ) % 100000;
+        }
+        ArrayColumn scol = ArrayColumn.makeColumn( "s", svals );
+        ArrayColumn tcol = ArrayColumn.makeColumn( "t", tvals );
+        scol.getColumnInfo().setElementSize( 8 );
+        tcol.getColumnInfo().setElementSize( 8 );
+        t1.addColumn( scol );
+        t1.addColumn( tcol );
+        StarTable t1u = new WrapperStarTable( t1 ) {
+            public long getRowCount() {
+                return -1L;
+            }
+        };
+
+        /* Fixed-length strings are decoded by a codec shared between
+         * all the readers of a column. */
+        checkRowAccess( t1, fillStore( new SidewaysRowStore(), t1 )
+                           .getStarTable(), 8 );
+        checkRowAccess( t1, fillStore( new SidewaysRowStore(), t1u )
+                           .getStarTable(), 8 );
+    }
+
+    public void testBlockAccess() throws IOException {
+        int nrow = 1000;
+        ColumnStarTable t1 = ColumnStarTable.makeTableWithRows( (long) nrow );
+        Integer[] ivals = new Integer[ nrow ];
+        short[] svals = new short[ nrow ];
+        long[] lvals = new long[ nrow ];
+        double[] dvals = new double[ nrow ];
+        String[] strvals = new String[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ivals[ i ] = i % 11 == 0 ? null : new Integer( i * 3 );
+            svals[ i ] = (short) -i;
+            lvals[ i ] = 1000000L * i;
+            dvals[ i ] = i % 13 == 0 ? Double.NaN : i * 0.5;
+            strvals[ i ] = "s" + i;
+        }
+        t1.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "l", lvals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "d", dvals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "str", strvals ) );
+        StarTable t1u = new WrapperStarTable( t1 ) {
+            public long getRowCount() {
+                return -1L;
+            }
+        };
+
+        StarTable st1 = fillStore( new SidewaysRowStore(), t1 ).getStarTable();
+        StarTable st1u = fillStore( new SidewaysRowStore(), t1u )
+                        .getStarTable();
+        File cfile = File.createTempFile( "ctest", ".bin" );
+        cfile.deleteOnExit();
+        StarTable ct1 = fillStore( new CompressedRowStore( cfile, 300 ), t1u )
+                       .getStarTable();
+
+        /* Check that primitive reads are available where expected. */
+        for ( int icol = 0; icol < 4; icol++ ) {
+            Codec codec = Codec.getCodec( t1.getColumnInfo( icol ) );
+            ColumnStore cstore =
+                new MappedColumnStore( codec, ByteBuffer.allocate( 16 ) );
+            assertEquals( icol != 2,
+                          cstore.createReader() instanceof DoubleColumnReader );
+        }
+
+        checkBlocks( t1, st1 );
+        checkBlocks( t1, st1u );
+        checkBlocks( t1, ct1 );
+        fTest_.assertTableEquals( t1, st1 );
+        fTest_.assertTableEquals( t1, st1u );
+    }
+
+    public void testConcurrentSequences() throws Exception {
+        int nrow = 3000;
+        ColumnStarTable t1 = ColumnStarTable.makeTableWithRows( (long) nrow );
+        String[] svals = new String[ nrow ];
+        double[] dvals = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            svals[ i ] = i % 13 == 0 ? null : "v" + ( i * 7919 ) % 100000;
+            dvals[ i ] = i * 0.5;
+        }
+        ArrayColumn scol = ArrayColumn.makeColumn( "s", svals );
+        scol.getColumnInfo().setElementSize( 8 );
+        t1.addColumn( scol );
+        t1.addColumn( ArrayColumn.makeColumn( "d", dvals ) );
+        final StarTable expected = t1;
+        final StarTable table = fillStore( new SidewaysRowStore(), t1 )
+                               .getStarTable();
+        int nthread = 8;
+        final Throwable[] errors = new Throwable[ nthread ];
+        Thread[] threads = new Thread[ nthread ];
+        for ( int it = 0; it < nthread; it++ ) {
+            final int it0 = it;
+            threads[ it ] = new Thread() {
+                public void run() {
+                    try {
+                        for ( int ipass = 0; ipass < 4; ipass++ ) {
+                            RowSequence rseq = table.getRowSequence();
+                            for ( long irow = 0; rseq.next(); irow++ ) {
+                                assertArrayEquals( expected.getRow( irow ),
+                                                   rseq.getRow() );
+                            }
+                            rseq.close();
+                        }
+                    }
+                    catch ( Throwable e ) {
+                        errors[ it0 ] = e;
+                    }
+                }
+            };
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            threads[ it ].start();
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            threads[ it ].join();
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            if ( errors[ it ] != null ) {
+                throw new AssertionFailedError( "Thread " + it + ": "
+                                              + errors[ it ] );
+            }
+        }
+    }
+
+    public void testParallelCopy() throws IOException {
+        int nrow = 20000;
+        ColumnStarTable t1 = ColumnStarTable.makeTableWithRows( (long) nrow );
+        String[] svals = new String[ nrow ];
+        int[] ivals = new int[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            svals[ i ] = i % 17 == 0 ? null : "c" + ( i * 7919 ) % 100000;
+            ivals[ i ] = i;
+        }
+        ArrayColumn scol = ArrayColumn.makeColumn( "s", svals );
+        scol.getColumnInfo().setElementSize( 8 );
+        t1.addColumn( scol );
+        t1.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+
+        /* Random-access sources are copied in parallel through
+         * separate RowAccess instances. */
+        StarTable st1 = fillStore( new SidewaysRowStore(), t1 )
+                       .getStarTable();
+        StoragePolicy.setCopyParallelism( 8 );
+        try {
+            for ( int i = 0; i < 4; i++ ) {
+                fTest_.assertTableEquals( t1, StoragePolicy.PREFER_MEMORY
+                                             .copyTable( st1 ) );
+                fTest_.assertTableEquals( t1, StoragePolicy.SIDEWAYS
+                                             .copyTable( st1 ) );
+            }
+        }
+        finally {
+            StoragePolicy.setCopyParallelism( Runtime.getRuntime()
+                                             .availableProcessors() );
+        }
+    }
+
+    public void testDecodeDouble() throws IOException {
+        ColumnInfo linfo = new ColumnInfo( "l", Long.class, null );
+        ColumnInfo sinfo = new ColumnInfo( "s", String.class, null );
+        sinfo.setElementSize( 4 );
+        Codec lcodec = Codec.getCodec( linfo );
+        Codec scodec = Codec.getCodec( sinfo );
+        assertTrue( ! lcodec.canDecodeDouble() );
+        assertTrue( ! scodec.canDecodeDouble() );
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream( bout );
+        int l1 = lcodec.encode( new Long( 123456789012L ), dout );
+        int l2 = lcodec.encode( null, dout );
+        scodec.encode( "99", dout );
+        dout.flush();
+        ByteBuffer buf = ByteBuffer.wrap( bout.toByteArray() );
+        assertEquals( 123456789012.0, lcodec.decodeDouble( buf, 0 ) );
+        assertTrue( Double.isNaN( lcodec.decodeDouble( buf, l1 ) ) );
+        assertTrue( Double.isNaN( scodec.decodeDouble( buf, l1 + l2 ) ) );
+        assertEquals( 0, buf.position() );
+    }
+
+    public void testCompressedStorage() throws IOException {
+        int nrow = 5000;
+        Random rnd = new Random( 99001L );
+        long[] ids = new long[ nrow ];
+        Integer[] ivals = new Integer[ nrow ];
+        short[] svals = new short[ nrow ];
+        double[] dvals = new double[ nrow ];
+        float[] fvals = new float[ nrow ];
+        String[] cats = new String[ nrow ];
+        String[] names = new String[ nrow ];
+        Boolean[] flags = new Boolean[ nrow ];
+        char[] chars = new char[ nrow ];
+        int[][] arrays = new int[ nrow ][];
+        String[] catValues = { "STAR", "GALAXY", "QSO", "", null };
+        double[] specials = { Double.NaN, Double.POSITIVE_INFINITY,
+                              Double.NEGATIVE_INFINITY, -0.0, 0.0,
+                              Double.MAX_VALUE, -Double.MIN_VALUE };
+        for ( int i = 0; i < nrow; i++ ) {
+            ids[ i ] = i < 10 ? Long.MIN_VALUE + i
+                              : 1000000000000L + i * 3 + rnd.nextInt( 3 );
+            ivals[ i ] = rnd.nextInt( 10 ) == 0
+                       ? null
+                       : new Integer( rnd.nextInt() );
+            svals[ i ] = (short) ( rnd.nextInt( 100 ) - 50 );
+            dvals[ i ] = i % 97 == 0
+                       ? specials[ ( i / 97 ) % specials.length ]
+                       : 180.0 + rnd.nextGaussian();
+            fvals[ i ] = (float) rnd.nextGaussian();
+            cats[ i ] = catValues[ rnd.nextInt( catValues.length ) ];
+            names[ i ] = i % 13 == 0 ? null : "J" + rnd.nextLong() + "\u00e9";
+            flags[ i ] = i % 5 == 0 ? null : Boolean.valueOf( i % 3 == 0 );
+            chars[ i ] = (char) ( 'a' + rnd.nextInt( 26 ) );
+            arrays[ i ] = i % 4 == 0 ? null : new int[] { i, -i };
+        }
+        ColumnStarTable t1 = ColumnStarTable.makeTableWithRows( nrow );
+        t1.addColumn( ArrayColumn.makeColumn( "id", ids ) );
+        t1.addColumn( ArrayColumn.makeColumn( "ival", ivals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "sval", svals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "dval", dvals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "fval", fvals ) );
+        t1.addColumn( ArrayColumn.makeColumn( "cat", cats ) );
+        t1.addColumn( ArrayColumn.makeColumn( "name", names ) );
+        t1.addColumn( ArrayColumn.makeColumn( "flag", flags ) );
+        t1.addColumn( ArrayColumn.makeColumn( "char", chars ) );
+        t1.addColumn( ArrayColumn.makeColumn( "array", arrays ) );
+
+        int[] chunkSizes = { 1, 7, 1000, 5000, 100000 };
+        for ( int ic = 0; ic < chunkSizes.length; ic++ ) {
+            File file = File.createTempFile( "ctest", ".bin" );
+            file.deleteOnExit();
+            StarTable ct1 =
+                fillStore( new CompressedRowStore( file, chunkSizes[ ic ] ),
+                           t1 ).getStarTable();
+            assertEquals( nrow, ct1.getRowCount() );
+            for ( int irow = 0; irow < nrow; irow++ ) {
+                assertArrayEquals( t1.getRow( irow ), ct1.getRow( irow ) );
+            }
+            RowSequence rseq = ct1.getRowSequence();
+            for ( int irow = 0; irow < nrow; irow++ ) {
+                assertTrue( rseq.next() );
+                assertArrayEquals( t1.getRow( irow ), rseq.getRow() );
+            }
+            assertTrue( ! rseq.next() );
+            rseq.close();
+        }
+
+        /* Check that compression actually saves some space for the
+         * kind of data it's designed for. */
+        ColumnStarTable t2 = ColumnStarTable.makeTableWithRows( nrow );
+        t2.addColumn( ArrayColumn.makeColumn( "id", ids ) );
+        t2.addColumn( ArrayColumn.makeColumn( "sval", svals ) );
+        t2.addColumn( ArrayColumn.makeColumn( "cat", cats ) );
+        t2.addColumn( ArrayColumn.makeColumn( "flag", flags ) );
+        File cfile = File.createTempFile( "ctest", ".bin" );
+        cfile.deleteOnExit();
+        fillStore( new CompressedRowStore( cfile, 1000 ), t2 );
+        File sfile = File.createTempFile( "stest", ".bin" );
+        sfile.deleteOnExit();
+        fillStore( new SidewaysRowStore( sfile ), t2 );
+        long ssize = sfile.length();
+        for ( int icol = 0; icol < t2.getColumnCount(); icol++ ) {
+            ssize += new File( sfile + "_" + icol ).length();
+        }
+        assertTrue( cfile.length() * 4 < ssize );
+    }
+
+    public void testBudgetStorage() throws IOException {
+        int nrow = 1000;
+        ColumnStarTable table =
+            ColumnStarTable.makeTableWithRows( (long) nrow );
+        int[] ivals = new int[ nrow ];
+        double[] dvals = new double[ nrow ];
+        String[] svals = new String[ nrow ];
+        fillRandom( ivals, -1000, 1000 );
+        fillRandom( dvals, -1000, 1000 );
+        fillCycle( svals, new String[] { "red", "green", "blue", null, } );
+        table.addColumn( ArrayColumn.makeColumn( "i", ivals ) );
+        table.addColumn( ArrayColumn.makeColumn( "d", dvals ) );
+        table.addColumn( ArrayColumn.makeColumn( "s", svals ) );
+
+        /* Budget is enough to hold two copies of the table, but not three. */
+        long tsize = ((ByteStoreRowStore)
+                      fillStore( StoragePolicy.ADAPTIVE.makeRowStore(),
+                                 table ))
+                    .getByteStore().getLength();
+        BudgetStoragePolicy policy = new BudgetStoragePolicy( tsize * 5 / 2 );
+        assertEquals( tsize * 5 / 2, policy.getBudget() );
+        assertEquals( 0, policy.getMemoryUsage() );
+
+        int nstore = 4;
+        ByteStoreRowStore[] stores = new ByteStoreRowStore[ nstore ];
+        StarTable[] tables = new StarTable[ nstore ];
+        for ( int is = 0; is < nstore; is++ ) {
+            stores[ is ] = (ByteStoreRowStore)
+                           fillStore( policy.makeRowStore(), table );
+            tables[ is ] = stores[ is ].getStarTable();
+            assertTrue( policy.getMemoryUsage() <= policy.getBudget() );
+        }
+        assertEquals( nstore, policy.getStoreCount() );
+        assertTrue( policy.getSpillCount() > 0 );
+        assertTrue( ! getBudgetStore( stores[ 0 ] ).isInMemory() );
+        assertTrue( getBudgetStore( stores[ nstore - 1 ] ).isInMemory() );
+        for ( int is = 0; is < nstore; is++ ) {
+            fTest_.assertTableEquals( table, tables[ is ] );
+        }
+
+        /* Reading a table makes it recently used, so another store
+         * will be spilled in preference to it. */
+        StarTable t1 = tables[ nstore - 1 ];
+        RowSequence rseq = t1.getRowSequence();
+        for ( int ir = 0; ir < nrow / 2; ir++ ) {
+            assertTrue( rseq.next() );
+            assertArrayEquals( table.getRow( ir ), rseq.getRow() );
+        }
+        ByteStoreRowStore extra = (ByteStoreRowStore)
+                                  fillStore( policy.makeRowStore(), table );
+        assertTrue( getBudgetStore( stores[ nstore - 1 ] ).isInMemory() );
+        assertTrue( getBudgetStore( extra ).isInMemory() );
+        assertTrue( ! getBudgetStore( stores[ nstore - 2 ] ).isInMemory() );
+
+        /* Spilling while a table is being read does not affect the data. */
+        getBudgetStore( stores[ nstore - 1 ] ).spill();
+        assertTrue( ! getBudgetStore( stores[ nstore - 1 ] ).isInMemory() );
+        for ( int ir = nrow / 2; ir < nrow; ir++ ) {
+            assertTrue( rseq.next() );
+            assertArrayEquals( table.getRow( ir ), rseq.getRow() );
+        }
+        assertTrue( ! rseq.next() );
+        rseq.close();
+        fTest_.assertTableEquals( table, t1 );
+
+        /* Closing stores releases their budget. */
+        long usage = policy.getMemoryUsage();
+        assertTrue( usage > 0 );
+        getBudgetStore( extra ).close();
+        assertTrue( policy.getMemoryUsage() < usage );
+        for ( int is = 0; is < nstore; is++ ) {
+            getBudgetStore( stores[ is ] ).close();
+        }
+        assertEquals( 0, policy.getMemoryUsage() );
+        assertEquals( 0, policy.getStoreCount() );
+    }
+
+    public void testConcurrentRowStore() throws Exception {
+        final int nthread = 4;
+        final int nper = 2500;
+        ColumnStarTable meta = ColumnStarTable.makeTableWithRows( 0 );
+        meta.addColumn( ArrayColumn.makeColumn( "seq", new long[ 0 ] ) );
+        meta.addColumn( ArrayColumn.makeColumn( "thread", new int[ 0 ] ) );
+        for ( int io = 0; io < 2; io++ ) {
+            final boolean ordered = io == 1;
+            RowStore[] bases = new RowStore[] {
+                new ListRowStore(),
+                StoragePolicy.PREFER_DISK.makeRowStore(),
+            };
+            for ( int ib = 0; ib < bases.length; ib++ ) {
+                final ConcurrentRowStore store =
+                    new ConcurrentRowStore( bases[ ib ], ordered, 100 );
+                store.acceptMetadata( meta );
+                final Exception[] errors = new Exception[ nthread ];
+                Thread[] threads = new Thread[ nthread ];
+                for ( int it = 0; it < nthread; it++ ) {
+                    final int ithread = it;
+                    threads[ it ] = new Thread() {
+                        public void run() {
+                            try {
+                                for ( int i = 0; i < nper; i++ ) {
+
+                                    /* Interleave sequence numbers between
+                                     * threads, and write one thread's
+                                     * rows in reverse order. */
+                                    int j = ithread == 0 ? nper - 1 - i : i;
+                                    long iseq = j * nthread + ithread;
+                                    Object[] row = new Object[] {
+                                        new Long( iseq ),
+                                        new Integer( ithread ),
+                                    };
+                                    if ( ordered ) {
+                                        store.acceptRow( iseq, row );
+                                    }
+                                    else {
+                                        store.acceptRow( row );
+                                    }
+                                }
+                            }
+                            catch ( Exception e ) {
+                                errors[ ithread ] = e;
+                            }
+                        }
+                    };
+                    threads[ it ].start();
+                }
+                for ( int it = 0; it < nthread; it++ ) {
+                    threads[ it ].join();
+                    assertNull( errors[ it ] );
+                }
+                store.endRows();
+                StarTable table = store.getStarTable();
+                long nrow = nthread * nper;
+                assertEquals( nrow, table.getRowCount() );
+                boolean[] seen = new boolean[ (int) nrow ];
+                long[] lastSeq = new long[ nthread ];
+                RowSequence rseq = table.getRowSequence();
+                for ( int ir = 0; rseq.next(); ir++ ) {
+                    int iseq = ((Number) rseq.getCell( 0 )).intValue();
+                    int ithread = ((Number) rseq.getCell( 1 )).intValue();
+                    assertEquals( ithread, iseq % nthread );
+                    assertTrue( ! seen[ iseq ] );
+                    seen[ iseq ] = true;
+                    if ( ordered ) {
+                        assertEquals( ir, iseq );
+                    }
+                    else if ( ithread != 0 ) {
+
+                        /* Order within a thread is preserved. */
+                        assertTrue( iseq > lastSeq[ ithread ] ||
+                                    lastSeq[ ithread ] == 0 );
+                        lastSeq[ ithread ] = iseq;
+                    }
+                }
+                rseq.close();
+            }
+        }
+
+        ConcurrentRowStore ostore =
+            new ConcurrentRowStore( new ListRowStore(), true );
+        ostore.acceptMetadata( meta );
+        try {
+            ostore.acceptRow( new Object[ 2 ] );
+            fail();
+        }
+        catch ( IllegalStateException e ) {
+        }
+
+        /* An ordered store passes on contiguous runs of rows as they
+         * complete, rather than holding them all until endRows. */
+        final int[] nbase = new int[ 1 ];
+        RowStore countStore = new ListRowStore() {
+            public void acceptRow( Object[] row ) throws IOException {
+                nbase[ 0 ]++;
+                super.acceptRow( row );
+            }
+        };
+        ConcurrentRowStore cstore =
+            new ConcurrentRowStore( countStore, true, 10 );
+        cstore.acceptMetadata( meta );
+        for ( int i = 0; i < 50; i++ ) {
+            cstore.acceptRow( 50 + i, new Object[] { new Long( 50 + i ),
+                                                     new Integer( 0 ) } );
+        }
+        assertEquals( 0, nbase[ 0 ] );
+        for ( int i = 0; i < 50; i++ ) {
+            cstore.acceptRow( 49 - i, new Object[] { new Long( 49 - i ),
+                                                     new Integer( 0 ) } );
+        }
+        assertEquals( 100, nbase[ 0 ] );
+        cstore.acceptRow( 101, new Object[] { new Long( 101 ),
+                                              new Integer( 0 ) } );
+        cstore.endRows();
+        assertEquals( 101, nbase[ 0 ] );
+        StarTable ctable = cstore.getStarTable();
+        assertEquals( 101, ctable.getRowCount() );
+        for ( int ir = 0; ir < 100; ir++ ) {
+            assertEquals( new Long( ir ), ctable.getCell( ir, 0 ) );
+        }
+        assertEquals( new Long( 101 ), ctable.getCell( 100, 0 ) );
+    }
+
     public void testByteStorage() throws IOException {
         testByteStore( StoragePolicy.PREFER_MEMORY.makeByteStore() );
         testByteStore( StoragePolicy.PREFER_DISK.makeByteStore() );
         testByteStore( StoragePolicy.SIDEWAYS.makeByteStore() );
         testByteStore( StoragePolicy.ADAPTIVE.makeByteStore() );
+        testByteStore( StoragePolicy.BUDGET.makeByteStore() );
+        testByteStore( new BudgetStoragePolicy( 0 ).makeByteStore() );
+        testByteStore( new BudgetStoragePolicy( 500 ).makeByteStore() );
         int[] limits = new int[] { 331, 332, 333, 334,
                                    998, 999, 1000, 1001,
                                    Integer.MAX_VALUE };
@@ -270,6 +821,12 @@ public class StorageTest extends TestCase {
         }
         catch ( TableFormatException e ) {
         }
+        try {
+            new CompressedRowStore().acceptMetadata( table );
+            fail();
+        }
+        catch ( TableFormatException e ) {
+        }
         try {
             new ByteStoreRowStore( new MemoryByteStore() )
                                   .acceptMetadata( table );
@@ -292,12 +849,124 @@ public class StorageTest extends TestCase {
         fTest_.checkStarTable( tab4 );
     }
 
+    /**
+     * Reads rows at random from a test table using several threads
+     * concurrently, each with its own RowAccess,
+     * and checks them against the rows of a reference table.
+     */
+    private void checkRowAccess( final StarTable expected,
+                                 final StarTable table, int nthread )
+            throws Exception {
+        final long nrow = expected.getRowCount();
+        assertEquals( nrow, table.getRowCount() );
+        final Throwable[] errors = new Throwable[ nthread ];
+        Thread[] threads = new Thread[ nthread ];
+        for ( int it = 0; it < nthread; it++ ) {
+            final int it0 = it;
+            threads[ it ] = new Thread() {
+                public void run() {
+                    try {
+                        Random rnd = new Random( 23L + it0 );
+                        RowAccess racc = table.getRowAccess();
+                        for ( int i = 0; i < 5000; i++ ) {
+                            long irow = rnd.nextInt( (int) nrow );
+                            racc.setRowIndex( irow );
+                            assertArrayEquals( expected.getRow( irow ),
+                                               racc.getRow() );
+                            int icol =
+                                rnd.nextInt( expected.getColumnCount() );
+                            assertEquals( expected.getCell( irow, icol ),
+                                          racc.getCell( icol ) );
+                        }
+                        racc.close();
+                    }
+                    catch ( Throwable e ) {
+                        errors[ it0 ] = e;
+                    }
+                }
+            };
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            threads[ it ].start();
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            threads[ it ].join();
+        }
+        for ( int it = 0; it < nthread; it++ ) {
+            if ( errors[ it ] != null ) {
+                throw new AssertionFailedError( "Thread " + it + ": "
+                                              + errors[ it ] );
+            }
+        }
+    }
+
+    /**
+     * Reads a test table using a mixture of block and row reads,
+     * and checks the results against a reference table.
+     */
+    private void checkBlocks( StarTable expected, StarTable table )
+            throws IOException {
+        int ncol = expected.getColumnCount();
+        long nrow = expected.getRowCount();
+        RowSequence rseq = table.getRowSequence();
+        assertTrue( rseq instanceof BlockRowSequence );
+        BlockRowSequence bseq = (BlockRowSequence) rseq;
+        double[] dbuf = new double[ 40 ];
+        Object[] obuf = new Object[ 40 ];
+        long irow = 0;
+        for ( int iblock = 0; true; iblock++ ) {
+            if ( iblock % 5 == 4 ) {
+                if ( ! bseq.next() ) {
+                    break;
+                }
+                assertArrayEquals( expected.getRow( irow ), bseq.getRow() );
+                irow++;
+            }
+            else {
+                int n = bseq.nextBlock( 33 );
+                if ( n == 0 ) {
+                    break;
+                }
+                for ( int icol = 0; icol < ncol; icol++ ) {
+                    if ( Number.class.isAssignableFrom( expected
+                                                       .getColumnInfo( icol )
+                                                       .getContentClass() ) ) {
+                        bseq.getDoubleBlock( icol, dbuf, 3 );
+                        for ( int i = 0; i < n; i++ ) {
+                            Object val = expected.getCell( irow + i, icol );
+                            assertEquals( val == null
+                                              ? Double.NaN
+                                              : ((Number) val).doubleValue(),
+                                          dbuf[ 3 + i ] );
+                        }
+                    }
+                    else {
+                        bseq.getObjectBlock( icol, obuf, 3 );
+                        for ( int i = 0; i < n; i++ ) {
+                            assertEquals( expected.getCell( irow + i, icol ),
+                                          obuf[ 3 + i ] );
+                        }
+                    }
+                }
+                irow += n;
+            }
+        }
+        assertEquals( nrow, irow );
+        assertFalse( bseq.next() );
+        assertEquals( 0, bseq.nextBlock( 10 ) );
+        bseq.close();
+    }
+
     private RowStore fillStore( RowStore store, StarTable table )
             throws IOException {
         Tables.streamStarTable( table, store );
         return store;
     }
 
+    private BudgetByteStore getBudgetStore( ByteStoreRowStore store ) {
+        return (BudgetByteStore) store.getByteStore();
+    }
+
     private boolean fixedRows( DiskRowStore dstore ) {
         return dstore.getOffsets().isFixed();
     }
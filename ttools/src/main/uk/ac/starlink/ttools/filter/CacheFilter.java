@@ -35,6 +35,15 @@ public class CacheFilter extends BasicFilter implements ProcessingStep {
             "</p>",
             "<p>The result of this filter is guaranteed to be random-access.",
             "</p>",
+            "<p>If a persistent table cache has been configured",
+            "using the <code>startable.cachedir</code> system property,",
+            "and the input table is a local file,",
+            "the cached copy is also kept on disk for use by later",
+            "invocations with the same input table and filter commands.",
+            "In that case the filters up to and including this one",
+            "are not re-run, so they should not include anything",
+            "whose result may vary between runs.",
+            "</p>",
             "<p>See also the <ref id='random'><code>random</code></ref>",
             "filter, which caches only when the input table is not",
             "random-access.",
@@ -13,6 +13,7 @@ import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.ttools.Tokenizer;
+import uk.ac.starlink.ttools.jel.JELTable;
 import uk.ac.starlink.ttools.jel.JELUtils;
 import uk.ac.starlink.ttools.jel.SequentialJELRowReader;
 import uk.ac.starlink.ttools.jel.StarTableJELRowReader;
@@ -144,7 +145,23 @@ public class SortHeadFilter extends BasicFilter {
 
         public StarTable wrap( StarTable baseTable ) throws IOException {
 
-            /* Compile expressions for the specified sort keys. */
+            /* If the table has random access, the sort keys can be read
+             * by several threads and only the row indices need be kept. */
+            if ( baseTable.isRandom() ) {
+                StarTable keyTable;
+                try {
+                    keyTable = JELTable.createJELTable( baseTable, keys_ );
+                }
+                catch ( CompilationException e ) {
+                    throw (IOException) new IOException( "Bad sort key(s)" )
+                                       .initCause( e );
+                }
+                return Tables.sortHeadTable( baseTable, keyTable, nrows_,
+                                             keepHead_, up_, nullsLast_ );
+            }
+
+            /* Otherwise, compile expressions for the specified sort keys
+             * and make a single pass through the table. */
             SequentialJELRowReader rseq =
                 new SequentialJELRowReader( baseTable );
             Library lib = JELUtils.getLibrary( rseq );
@@ -208,16 +225,19 @@ public class SortHeadFilter extends BasicFilter {
 
         /**
          * Helper class used as the sort key for table rows.
+         * Rows with equal key values are ordered by row index,
+         * as for a stable sort.
          */
         private class SortKey implements Comparable {
-            final int nkey1_;
+            final int nkey_;
             final Object[] keyVals_;
+            final long irow_;
 
             SortKey( StarTableJELRowReader jelly, CompiledExpression[] compExs )
                     throws IOException {
-                nkey1_ = compExs.length + 1;
-                keyVals_ = new Object[ nkey1_ ];
-                for ( int i = 0; i < nkey1_ - 1; i++ ) {
+                nkey_ = compExs.length;
+                keyVals_ = new Object[ nkey_ ];
+                for ( int i = 0; i < nkey_; i++ ) {
                     try {
                         keyVals_[ i ] = jelly.evaluate( compExs[ i ] );
                     }
@@ -229,17 +249,20 @@ public class SortHeadFilter extends BasicFilter {
                                            .initCause( e );
                     }
                 }
-                keyVals_[ nkey1_ - 1 ] = new Long( jelly.getCurrentRow() );
+                irow_ = jelly.getCurrentRow();
             }
 
             public int compareTo( Object other ) {
                 SortKey o = (SortKey) other;
                 int c = 0;
-                for ( int i = 0; i < nkey1_ && c == 0; i++ ) {
+                for ( int i = 0; i < nkey_ && c == 0; i++ ) {
                     c = compareValues( (Comparable) this.keyVals_[ i ],
                                        (Comparable) o.keyVals_[ i ] );
                 }
-                return up_ ? c : -c;
+                if ( c != 0 ) {
+                    return up_ ? c : -c;
+                }
+                return irow_ < o.irow_ ? -1 : ( irow_ > o.irow_ ? +1 : 0 );
             }
         }
 
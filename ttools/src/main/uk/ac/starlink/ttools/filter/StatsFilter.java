@@ -14,10 +14,10 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.xml.sax.SAXException;
 import uk.ac.starlink.table.AbstractStarTable;
+import uk.ac.starlink.table.BlockRowSequence;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.RandomStarTable;
-import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.ValueInfo;
@@ -36,6 +36,9 @@ public class StatsFilter extends BasicFilter {
     /** Maximum value for cardinality counters. */
     private static final int MAX_CARDINALITY = 100;
 
+    /** Number of rows read at a time. */
+    private static final int BLOCK_ROWS = 1024;
+
     /*
      * Metadata for calculated quantities.
      */
@@ -286,23 +289,46 @@ public class StatsFilter extends BasicFilter {
             }
         }
 
-        /* Populate them with the the data read from the table. */
-        RowSequence rseq = table.getRowSequence();
+        /* Work out which columns can be read as primitive values.
+         * That is only possible if nothing needs the value objects. */
+        boolean[] isDouble = new boolean[ ncol ];
+        for ( int icol = 0; icol < ncol; icol++ ) {
+            isDouble[ icol ] =
+                ! doCard && quantCalcs[ icol ] == null &&
+                Tables.isDoubleExact( table.getColumnInfo( icol )
+                                           .getContentClass() );
+        }
+
+        /* Populate them with the the data read from the table.
+         * Reading it a block at a time allows numeric values to be
+         * retrieved without object creation where the table supports it. */
+        BlockRowSequence rseq =
+            Tables.getBlockRowSequence( table.getRowSequence() );
+        double[] dbuf = new double[ BLOCK_ROWS ];
+        Object[] obuf = new Object[ BLOCK_ROWS ];
         long irow = 0L;
         try {
-            while ( rseq.next() ) {
-                Object[] row = rseq.getRow();
+            for ( int nr; ( nr = rseq.nextBlock( BLOCK_ROWS ) ) > 0; ) {
                 for ( int icol = 0; icol < ncol; icol++ ) {
-                    Object datum = row[ icol ];
-                    colStats[ icol ].acceptDatum( datum );
-                    if ( doCard ) {
-                        cardCheckers[ icol ].acceptDatum( datum );
+                    if ( isDouble[ icol ] ) {
+                        rseq.getDoubleBlock( icol, dbuf, 0 );
+                        colStats[ icol ].acceptDoubles( dbuf, 0, nr );
                     }
-                    if ( quantCalcs[ icol ] != null ) {
-                        quantCalcs[ icol ].acceptDatum( datum );
+                    else {
+                        rseq.getObjectBlock( icol, obuf, 0 );
+                        for ( int ir = 0; ir < nr; ir++ ) {
+                            Object datum = obuf[ ir ];
+                            colStats[ icol ].acceptDatum( datum );
+                            if ( doCard ) {
+                                cardCheckers[ icol ].acceptDatum( datum );
+                            }
+                            if ( quantCalcs[ icol ] != null ) {
+                                quantCalcs[ icol ].acceptDatum( datum );
+                            }
+                        }
                     }
                 }
-                irow++;
+                irow += nr;
             }
 
             /* Get a MapGroup representing column metadata (the option is 
@@ -6,8 +6,8 @@ import uk.ac.starlink.table.Tables;
 /**
  * Calculates univariate statistics for a variable.
  * Feed data to an instance of this object by repeatedly calling 
- * {@link #acceptDatum} and then call the various accessor methods to 
- * get accumulated values.
+ * {@link #acceptDatum} or {@link #acceptDoubles} and then call
+ * the various accessor methods to get accumulated values.
  *
  * @author   Mark Taylor
  * @since    27 Apr 2006
@@ -23,6 +23,24 @@ public abstract class UnivariateStats {
      */
     public abstract void acceptDatum( Object value );
 
+    /**
+     * Submits a number of numeric values to the statistics accumulator.
+     * NaN values count as nulls.  The effect should be the same as
+     * calling {@link #acceptDatum} on each value in turn; this
+     * implementation does exactly that, but subclasses may override it
+     * to avoid creating objects.
+     *
+     * @param   values  array containing values
+     * @param   off   index of first value in <code>values</code>
+     * @param   count  number of values to submit
+     */
+    public void acceptDoubles( double[] values, int off, int count ) {
+        for ( int i = 0; i < count; i++ ) {
+            double dval = values[ off + i ];
+            acceptDatum( Double.isNaN( dval ) ? null : new Double( dval ) );
+        }
+    }
+
     /**
      * Returns the number of good (non-null) values accumulated.
      *
@@ -97,7 +115,7 @@ public abstract class UnivariateStats {
      */
     public static UnivariateStats createStats( Class clazz ) {
         if ( Number.class.isAssignableFrom( clazz ) ) {
-            return new NumberStats();
+            return new NumberStats( clazz );
         }
         else if ( clazz == Boolean.class ) {
             return new BooleanStats();
@@ -213,6 +231,7 @@ public abstract class UnivariateStats {
      * Stats implementation for Number objects.
      */
     private static class NumberStats extends UnivariateStats {
+        private final Class clazz_;
         private long iDatum_;
         private long nGood_;
         private double sum1_;
@@ -225,36 +244,73 @@ public abstract class UnivariateStats {
         private Number max_;
         private long minPos_ = -1L;
         private long maxPos_ = -1L;
-        
+
+        /**
+         * Constructor.
+         *
+         * @param  clazz  class of submitted values
+         */
+        NumberStats( Class clazz ) {
+            clazz_ = clazz;
+        }
+
         public void acceptDatum( Object obj ) {
             if ( obj instanceof Number ) {
                 Number val = (Number) obj;
-                double dval = val.doubleValue();
-                if ( ! Double.isNaN( dval ) ) {
-                    nGood_++;
-                    double s1 = dval;
-                    double s2 = dval * s1;
-                    double s3 = dval * s2;
-                    double s4 = dval * s3;
-                    sum1_ += s1;
-                    sum2_ += s2;
-                    sum3_ += s3;
-                    sum4_ += s4;
-                    if ( ! ( dval >= dmin_ ) ) {  // note NaN handling
-                        dmin_ = dval;
-                        min_ = val;
-                        minPos_ = iDatum_;
-                    }
-                    if ( ! ( dval <= dmax_ ) ) {  // note NaN handling
-                        dmax_ = dval;
-                        max_ = val;
-                        maxPos_ = iDatum_;
-                    }
+                acceptDouble( val.doubleValue() );
+                if ( minPos_ == iDatum_ ) {
+                    min_ = val;
+                }
+                if ( maxPos_ == iDatum_ ) {
+                    max_ = val;
                 }
             }
             iDatum_++;
         }
 
+        public void acceptDoubles( double[] values, int off, int count ) {
+            if ( ! Tables.isDoubleExact( clazz_ ) ) {
+                super.acceptDoubles( values, off, count );
+                return;
+            }
+            for ( int i = 0; i < count; i++ ) {
+                acceptDouble( values[ off + i ] );
+                iDatum_++;
+            }
+        }
+
+        /**
+         * Accumulates a value at the current datum position.
+         * Extrema are recorded only as primitives here; the corresponding
+         * objects are supplied by the caller or created when they are
+         * requested.  The datum position is not advanced.
+         *
+         * @param  dval  value, may be NaN
+         */
+        private void acceptDouble( double dval ) {
+            if ( ! Double.isNaN( dval ) ) {
+                nGood_++;
+                double s1 = dval;
+                double s2 = dval * s1;
+                double s3 = dval * s2;
+                double s4 = dval * s3;
+                sum1_ += s1;
+                sum2_ += s2;
+                sum3_ += s3;
+                sum4_ += s4;
+                if ( ! ( dval >= dmin_ ) ) {  // note NaN handling
+                    dmin_ = dval;
+                    min_ = null;
+                    minPos_ = iDatum_;
+                }
+                if ( ! ( dval <= dmax_ ) ) {  // note NaN handling
+                    dmax_ = dval;
+                    max_ = null;
+                    maxPos_ = iDatum_;
+                }
+            }
+        }
+
         public long getCount() {
             return nGood_;
         }
@@ -276,10 +332,16 @@ public abstract class UnivariateStats {
         }
 
         public Number getMinimum() {
+            if ( min_ == null && minPos_ >= 0 ) {
+                min_ = Tables.doubleToNumber( dmin_, clazz_ );
+            }
             return min_;
         }
 
         public Number getMaximum() {
+            if ( max_ == null && maxPos_ >= 0 ) {
+                max_ = Tables.doubleToNumber( dmax_, clazz_ );
+            }
             return max_;
         }
 
@@ -6,6 +6,7 @@ import gnu.jel.CompiledExpression;
 import gnu.jel.Evaluator;
 import gnu.jel.Library;
 import uk.ac.starlink.table.ColumnInfo;
+import uk.ac.starlink.table.RowAccess;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.ValueInfo;
@@ -183,6 +184,63 @@ public class JELTable extends WrapperStarTable {
         };
     }
 
+    /**
+     * Returns a row access with its own JEL evaluation context,
+     * based on a row access of the base table.
+     * Unlike the random access methods of this table, instances
+     * may therefore be used concurrently from different threads.
+     */
+    public RowAccess getRowAccess() throws IOException {
+        final RowAccess baseAcc = baseTable_.getRowAccess();
+        final AccessJELRowReader accReader =
+            new AccessJELRowReader( baseTable_, baseAcc );
+        Library lib = JELUtils.getLibrary( accReader );
+        final CompiledExpression[] accCompexs = new CompiledExpression[ ncol_ ];
+        for ( int icol = 0; icol < ncol_; icol++ ) {
+            String expr = exprs_[ icol ];
+            try {
+                accCompexs[ icol ] = JELUtils.compile( lib, baseTable, expr );
+            }
+            catch ( CompilationException e ) {
+                throw (IOException) new IOException( "Bad expression: " + expr )
+                                   .initCause( e );
+            }
+        }
+        return new RowAccess() {
+            public void setRowIndex( long irow ) throws IOException {
+                accReader.setRowIndex( irow );
+            }
+            public Object getCell( int icol ) throws IOException {
+                try {
+                    return accReader.evaluate( accCompexs[ icol ] );
+                }
+                catch ( IOException e ) {
+                    throw e;
+                }
+                catch ( RuntimeException e ) {
+                    throw e;
+                }
+                catch ( Error e ) {
+                    throw e;
+                }
+                catch ( Throwable e ) {
+                    throw (IOException) new IOException( e.getMessage() )
+                                       .initCause( e );
+                }
+            }
+            public Object[] getRow() throws IOException {
+                Object[] row = new Object[ ncol_ ];
+                for ( int icol = 0; icol < ncol_; icol++ ) {
+                    row[ icol ] = getCell( icol );
+                }
+                return row;
+            }
+            public void close() throws IOException {
+                baseAcc.close();
+            }
+        };
+    }
+
     /**
      * Convenience factory method.  It turns all the supplied <code>infos</code>
      * into ColumnInfos and rethrows any CompilationException as an
@@ -243,4 +301,43 @@ public class JELTable extends WrapperStarTable {
         }
         return new JELTable( baseTable, infos, exprs );
     }
+
+    /**
+     * JELRowReader implementation which reads data from a RowAccess.
+     */
+    private static class AccessJELRowReader extends StarTableJELRowReader {
+
+        private final RowAccess racc_;
+        private long lrow_;
+
+        /**
+         * Constructor.
+         *
+         * @param  table  table supplying the evaluation context
+         * @param  racc  row access for <code>table</code>
+         */
+        AccessJELRowReader( StarTable table, RowAccess racc ) {
+            super( table );
+            racc_ = racc;
+            lrow_ = -1L;
+        }
+
+        /**
+         * Sets the current row for evaluations.
+         *
+         * @param  lrow  row index
+         */
+        void setRowIndex( long lrow ) throws IOException {
+            racc_.setRowIndex( lrow );
+            lrow_ = lrow;
+        }
+
+        public long getCurrentRow() {
+            return lrow_;
+        }
+
+        protected Object getCell( int icol ) throws IOException {
+            return racc_.getCell( icol );
+        }
+    }
 }
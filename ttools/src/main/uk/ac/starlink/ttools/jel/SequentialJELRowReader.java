@@ -1,6 +1,8 @@
 package uk.ac.starlink.ttools.jel;
 
 import java.io.IOException;
+import uk.ac.starlink.table.BlockRowSequence;
+import uk.ac.starlink.table.BufferedRowSequence;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 
@@ -11,6 +13,10 @@ import uk.ac.starlink.table.StarTable;
  * taken out on its table, that is iteration should proceed using the
  * <tt>next</tt> and <tt>close</tt> methods.
  *
+ * <p>If the table's row sequence can supply blocks of column data,
+ * it is read through a {@link uk.ac.starlink.table.BufferedRowSequence},
+ * so that numeric column values are obtained without object creation.
+ *
  * @author   Mark Taylor (Starlink)
  * @since    8 Feb 2005
  */
@@ -19,6 +25,7 @@ public class SequentialJELRowReader extends StarTableJELRowReader
 
     
     private final RowSequence rseq_;
+    private final BufferedRowSequence bseq_;
     private long lrow_ = -1L;
 
     /**
@@ -29,7 +36,11 @@ public class SequentialJELRowReader extends StarTableJELRowReader
      */
     public SequentialJELRowReader( StarTable table ) throws IOException {
         super( table );
-        rseq_ = table.getRowSequence();
+        RowSequence rseq = table.getRowSequence();
+        bseq_ = rseq instanceof BlockRowSequence
+              ? new BufferedRowSequence( table, (BlockRowSequence) rseq )
+              : null;
+        rseq_ = bseq_ == null ? rseq : bseq_;
     }
 
     public Object getCell( int icol ) throws IOException {
@@ -52,4 +63,8 @@ public class SequentialJELRowReader extends StarTableJELRowReader
     public void close() throws IOException {
         rseq_.close();
     }
+
+    protected BufferedRowSequence getBufferedSequence() {
+        return bseq_;
+    }
 }
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import uk.ac.starlink.table.BufferedRowSequence;
 import uk.ac.starlink.table.ColumnInfo;
 import uk.ac.starlink.table.DescribedValue;
 import uk.ac.starlink.table.StarTable;
@@ -129,7 +130,26 @@ public abstract class StarTableJELRowReader extends JELRowReader {
      */
     public abstract long getCurrentRow();
 
+    /**
+     * Returns a buffered sequence from which the current row's numeric
+     * cell values can be obtained as primitives, if one is available.
+     * If a non-null value is returned, it must be positioned at the
+     * same row as {@link #getCell} refers to, and it will be used
+     * in preference to <code>getCell</code> to read the values of
+     * suitable numeric columns, which avoids object creation.
+     *
+     * <p>The default implementation returns null.
+     *
+     * @return  buffered sequence at the current row, or null
+     */
+    protected BufferedRowSequence getBufferedSequence() {
+        return null;
+    }
+
     protected boolean isBlank( int icol ) {
+        if ( isDoubleColumn( icol ) ) {
+            return Double.isNaN( getDoubleCell( icol ) );
+        }
         try {
             return Tables.isBlank( getCell( icol ) );
         }
@@ -337,25 +357,53 @@ public abstract class StarTableJELRowReader extends JELRowReader {
         return getBooleanValue( (Boolean) getCellValue( icol ) );
     }
     protected byte getByteColumnValue( int icol ) {
+        if ( isDoubleColumn( icol ) ) {
+            double dval = getDoubleCell( icol );
+            if ( Double.isNaN( dval ) ) {
+                foundNull();
+                return (byte) 0;
+            }
+            return (byte) dval;
+        }
         return getByteValue( (Byte) getCellValue( icol ) );
     }
     protected char getCharColumnValue( int icol ) {
         return getCharValue( (Character) getCellValue( icol ) );
     }
     protected short getShortColumnValue( int icol ) {
+        if ( isDoubleColumn( icol ) ) {
+            double dval = getDoubleCell( icol );
+            if ( Double.isNaN( dval ) ) {
+                foundNull();
+                return (short) 0;
+            }
+            return (short) dval;
+        }
         return getShortValue( (Short) getCellValue( icol ) );
     }
     protected int getIntColumnValue( int icol ) {
+        if ( isDoubleColumn( icol ) ) {
+            double dval = getDoubleCell( icol );
+            if ( Double.isNaN( dval ) ) {
+                foundNull();
+                return 0;
+            }
+            return (int) dval;
+        }
         return getIntValue( (Integer) getCellValue( icol ) );
     }
     protected long getLongColumnValue( int icol ) {
         return getLongValue( (Long) getCellValue( icol ) );
     }
     protected float getFloatColumnValue( int icol ) {
-        return getFloatValue( (Float) getCellValue( icol ) );
+        return isDoubleColumn( icol )
+             ? (float) getDoubleCell( icol )
+             : getFloatValue( (Float) getCellValue( icol ) );
     }
     protected double getDoubleColumnValue( int icol ) {
-        return getDoubleValue( (Double) getCellValue( icol ) );
+        return isDoubleColumn( icol )
+             ? getDoubleCell( icol )
+             : getDoubleValue( (Double) getCellValue( icol ) );
     }
     protected Object getObjectColumnValue( int icol ) {
         return getCellValue( icol );
@@ -378,6 +426,35 @@ public abstract class StarTableJELRowReader extends JELRowReader {
         }
     }
 
+    /**
+     * Indicates whether the value of a given column in the current row
+     * can be obtained using {@link #getDoubleCell}.
+     *
+     * @param   icol  column index
+     * @return  true iff the column is available as primitive values
+     */
+    private boolean isDoubleColumn( int icol ) {
+        BufferedRowSequence bseq = getBufferedSequence();
+        return bseq != null && bseq.isDoubleColumn( icol );
+    }
+
+    /**
+     * Returns the value of a numeric cell in the current row from the
+     * buffered sequence without throwing checked errors.
+     *
+     * @param   icol  column index
+     * @return  cell value, NaN for null
+     */
+    private double getDoubleCell( int icol ) {
+        try {
+            return getBufferedSequence().getDoubleCell( icol );
+        }
+        catch ( IOException e ) {
+            logger_.warning( "Expression evaluation error: " + e );
+            return Double.NaN;
+        }
+    }
+
     /**
      * Takes a (non-prefixed) UCD specification and returns a Pattern
      * actual UCDs should match if they represent the same thing.
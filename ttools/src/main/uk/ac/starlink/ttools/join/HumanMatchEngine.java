@@ -4,8 +4,10 @@ import java.util.logging.Logger;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.DescribedValue;
 import uk.ac.starlink.table.ValueInfo;
+import uk.ac.starlink.table.join.AdaptiveMatchEngine;
 import uk.ac.starlink.table.join.MatchEngine;
 import uk.ac.starlink.table.join.NdRange;
+import uk.ac.starlink.table.join.VectorScorer;
 import uk.ac.starlink.ttools.func.CoordsRadians;
 
 /**
@@ -20,7 +22,7 @@ import uk.ac.starlink.ttools.func.CoordsRadians;
  * @author   Mark Taylor
  * @since    2 Sep 2005
  */
-public class HumanMatchEngine implements MatchEngine {
+public class HumanMatchEngine implements AdaptiveMatchEngine {
 
     private final MatchEngine baseEngine_;
     private final ValueInfo[] tupleInfos_;
@@ -85,6 +87,15 @@ public class HumanMatchEngine implements MatchEngine {
         }
     }
 
+    /**
+     * Returns the engine which this one wraps.
+     *
+     * @return  base engine
+     */
+    public MatchEngine getBaseEngine() {
+        return baseEngine_;
+    }
+
     public DescribedValue[] getMatchParameters() {
         return matchParams_;
     }
@@ -107,6 +118,44 @@ public class HumanMatchEngine implements MatchEngine {
                                                    unwrapTuple( tuple2 ) ) );
     }
 
+    public VectorScorer getVectorScorer() {
+        final VectorScorer baseScorer = baseEngine_.getVectorScorer();
+        if ( baseScorer == null ) {
+            return null;
+        }
+        return new VectorScorer() {
+            public int getVectorLength() {
+                return baseScorer.getVectorLength();
+            }
+            public void toVector( Object[] tuple, double[] buf, int off ) {
+                baseScorer.toVector( unwrapTuple( tuple ), buf, off );
+            }
+            public double score( double[] buf1, int off1,
+                                 double[] buf2, int off2 ) {
+                return scoreWrapper_
+                      .wrapDouble( baseScorer.score( buf1, off1,
+                                                     buf2, off2 ) );
+            }
+        };
+    }
+
+    public int getSampleSize() {
+        return baseEngine_ instanceof AdaptiveMatchEngine
+             ? ((AdaptiveMatchEngine) baseEngine_).getSampleSize()
+             : 0;
+    }
+
+    public void setSample( Object[][] tuples, double[] weights ) {
+        if ( baseEngine_ instanceof AdaptiveMatchEngine ) {
+            AdaptiveMatchEngine aEngine = (AdaptiveMatchEngine) baseEngine_;
+            Object[][] baseTuples = new Object[ tuples.length ][];
+            for ( int i = 0; i < tuples.length; i++ ) {
+                baseTuples[ i ] = unwrapTuple( tuples[ i ] );
+            }
+            aEngine.setSample( baseTuples, weights );
+        }
+    }
+
     public double getScoreScale() {
         return scoreWrapper_.wrapDouble( baseEngine_.getScoreScale() );
     }
@@ -136,6 +185,10 @@ public class HumanMatchEngine implements MatchEngine {
                                                      .getMaxs() ) ) );
     }
 
+    public String toString() {
+        return baseEngine_.toString();
+    }
+
     /**
      * Unwraps a tuple of objects from a client of this engine, providing
      * one suitable for the base engine.
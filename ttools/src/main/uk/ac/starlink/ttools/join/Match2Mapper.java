@@ -10,7 +10,9 @@ import uk.ac.starlink.table.join.ProgressIndicator;
 import uk.ac.starlink.task.ChoiceParameter;
 import uk.ac.starlink.task.Environment;
 import uk.ac.starlink.task.ExecutionException;
+import uk.ac.starlink.task.LongParameter;
 import uk.ac.starlink.task.Parameter;
+import uk.ac.starlink.task.StringParameter;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.task.UsageException;
 import uk.ac.starlink.ttools.task.InputTableSpec;
@@ -33,6 +35,10 @@ public class Match2Mapper implements TableMapper {
     private final FindModeParameter modeParam_;
     private final JoinFixActionParameter fixcolParam_;
     private final ProgressIndicatorParameter progressParam_;
+    private final ThreadCountParameter nthreadParam_;
+    private final LongParameter partrowsParam_;
+    private final StringParameter[] indexParams_;
+    private final MetricsParameter metricsParam_;
 
     /**
      * Constructor.
@@ -47,6 +53,36 @@ public class Match2Mapper implements TableMapper {
         joinParam_ = new JoinTypeParameter( "join" );
         modeParam_ = new FindModeParameter( "find" );
         progressParam_ = new ProgressIndicatorParameter( "progress" );
+        nthreadParam_ = new ThreadCountParameter( "nthread" );
+
+        partrowsParam_ = new LongParameter( "partrows" );
+        partrowsParam_.setNullPermitted( true );
+        partrowsParam_.setMinimum( 1 );
+        partrowsParam_.setUsage( "<nrow>" );
+        partrowsParam_.setPrompt( "Maximum rows matched in memory at once" );
+        partrowsParam_.setDescription( new String[] {
+            "<p>If set, the match is performed out of core.",
+            "Both input tables are first partitioned on disk according to",
+            "the match bins of their rows, and the partitions are then",
+            "matched one group at a time, where each group contains",
+            "no more than about this many rows from the two tables together.",
+            "For sky matches the partitions are HEALPix pixels,",
+            "so that each group covers a contiguous region of sky,",
+            "and rows near group boundaries are included in all the",
+            "groups they might match in.",
+            "This bounds the amount of memory needed for the match itself,",
+            "so that tables too large for the available heap can be matched;",
+            "a few hundred bytes per row is a reasonable estimate.",
+            "The result is the same as for an in-memory match.",
+            "</p>",
+            "<p>If left blank, the whole match is done in memory.",
+            "</p>",
+        } );
+        indexParams_ = new StringParameter[] {
+            createIndexParameter( "1" ),
+            createIndexParameter( "2" ),
+        };
+        metricsParam_ = new MetricsParameter( "metrics" );
     }
 
     public Parameter[] getParameters() {
@@ -63,6 +99,11 @@ public class Match2Mapper implements TableMapper {
             fixcolParam_.createSuffixParameter( "2" ),
             matcherParam_.getScoreParameter(),
             progressParam_,
+            nthreadParam_,
+            partrowsParam_,
+            indexParams_[ 0 ],
+            indexParams_[ 1 ],
+            metricsParam_,
         };
     }
 
@@ -88,10 +129,60 @@ public class Match2Mapper implements TableMapper {
         ValueInfo scoreInfo = matcherParam_.getScoreInfo( env );
         ProgressIndicator progger =
             progressParam_.progressIndicatorValue( env );
+        int nthread = nthreadParam_.intValue( env );
+        Long partRowsObj = partrowsParam_.objectValue( env );
+        long partRows = partRowsObj == null ? 0 : partRowsObj.longValue();
+        String[] indexLocs = new String[] {
+            indexParams_[ 0 ].stringValue( env ),
+            indexParams_[ 1 ].stringValue( env ),
+        };
+        String metricsLoc = metricsParam_.stringValue( env );
 
         /* Construct and return a mapping based on this lot. */
         return new Match2Mapping( matcher, tupleExprs[ 0 ], tupleExprs[ 1 ],
                                   join, pairMode, fixacts[ 0 ], fixacts[ 1 ],
-                                  scoreInfo, progger );
+                                  scoreInfo, progger, nthread, partRows,
+                                  indexLocs, metricsLoc );
+    }
+
+    /**
+     * Creates a parameter giving the location of a persistent bin index
+     * file for one of the input tables of a pair match.
+     *
+     * @param  label  input table label, e.g. "1"
+     * @return  new parameter
+     */
+    static StringParameter createIndexParameter( String label ) {
+        StringParameter param = new StringParameter( "binindex" + label );
+        param.setNullPermitted( true );
+        param.setUsage( "<filename>" );
+        param.setPrompt( "Bin index file for table " + label );
+        param.setDescription( new String[] {
+            "<p>Name of a file containing a pre-built index of the match",
+            "bins for table " + label + ".",
+            "This is useful when the same large catalogue is matched",
+            "repeatedly against different tables.",
+            "If the file does not exist, the table's rows are binned",
+            "and the index is written to it before the match;",
+            "if it does exist, it is read instead of binning the rows,",
+            "and only the index entries for the bins touched by",
+            "the other table are consulted.",
+            "The index is only valid for the same table and the same",
+            "match parameters (including the tuning parameter)",
+            "as were used when it was written;",
+            "if these differ, the match fails and the file",
+            "must be deleted so that it can be rebuilt.",
+            "The table is identified by its file name, modification time",
+            "and size if it is read unmodified from a local file,",
+            "and otherwise by a checksum of the matched values,",
+            "which costs an extra pass through the table.",
+            "This option is currently only available for",
+            "HEALPix-based sky matches, and if used the",
+            "<code>partrows</code> parameter is ignored.",
+            "</p>",
+            "<p>If left blank, no index is used.",
+            "</p>",
+        } );
+        return param;
     }
 }
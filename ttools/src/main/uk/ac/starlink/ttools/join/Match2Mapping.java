@@ -1,19 +1,29 @@
 package uk.ac.starlink.ttools.join;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 import uk.ac.starlink.table.JoinFixAction;
+import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.ValueInfo;
+import uk.ac.starlink.table.join.AbstractSkyMatchEngine;
+import uk.ac.starlink.table.join.HealpixSkyPixellator;
 import uk.ac.starlink.table.join.JoinType;
 import uk.ac.starlink.table.join.LinkSet;
 import uk.ac.starlink.table.join.MatchEngine;
+import uk.ac.starlink.table.join.MatchMetrics;
 import uk.ac.starlink.table.join.MatchStarTables;
 import uk.ac.starlink.table.join.PairMode;
+import uk.ac.starlink.table.join.PartitionMatcher;
+import uk.ac.starlink.table.join.PixelIndex;
 import uk.ac.starlink.table.join.ProgressIndicator;
 import uk.ac.starlink.table.join.RowMatcher;
+import uk.ac.starlink.table.join.SkyPixellator;
 import uk.ac.starlink.task.ExecutionException;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.ttools.jel.JELTable;
@@ -36,6 +46,10 @@ public class Match2Mapping implements TableMapping {
     final JoinType join_;
     final ValueInfo scoreInfo_;
     final ProgressIndicator progger_;
+    final int nthread_;
+    final long partRows_;
+    final String[] indexLocs_;
+    final String metricsLoc_;
 
     private static final Logger logger =
         Logger.getLogger( "uk.ac.starlink.ttools.task" );
@@ -59,11 +73,22 @@ public class Match2Mapping implements TableMapping {
      * @param   scoreInfo  column description for inter-table match score
      *                     values, or null for no score column
      * @param   progger    progress indicator for matching
+     * @param   nthread    number of threads to use for matching
+     * @param   partRows   maximum number of rows matched in memory at once
+     *                     using disk partitioning, or 0 to do the whole
+     *                     match in memory
+     * @param   indexLocs  2-element array giving the filenames of
+     *                     persistent bin index files for each input table;
+     *                     null elements mean no index
+     * @param   metricsLoc  filename for JSON match performance report,
+     *                      or null for no report
      */
     Match2Mapping( MatchEngine matchEngine, String[] exprTuple1,
                    String[] exprTuple2, JoinType join, PairMode pairMode,
                    JoinFixAction fixact1, JoinFixAction fixact2,
-                   ValueInfo scoreInfo, ProgressIndicator progger ) {
+                   ValueInfo scoreInfo, ProgressIndicator progger,
+                   int nthread, long partRows, String[] indexLocs,
+                   String metricsLoc ) {
         matchEngine_ = matchEngine;
         exprTuple1_ = exprTuple1;
         exprTuple2_ = exprTuple2;
@@ -72,6 +97,10 @@ public class Match2Mapping implements TableMapping {
         fixacts_ = new JoinFixAction[] { fixact1, fixact2, };
         scoreInfo_ = scoreInfo;
         progger_ = progger;
+        nthread_ = nthread;
+        partRows_ = partRows;
+        indexLocs_ = indexLocs;
+        metricsLoc_ = metricsLoc;
     }
 
     public StarTable mapTables( InputTableSpec[] inSpecs )
@@ -94,21 +123,60 @@ public class Match2Mapping implements TableMapping {
         StarTable subTable2 = makeSubTable( inTable2, exprTuple2_ );
 
         /* Do the match. */
-        RowMatcher matcher =
-            new RowMatcher( matchEngine_,
-                            new StarTable[] { subTable1, subTable2 } );
-        matcher.setIndicator( progger_ );
+        StarTable[] subTables = new StarTable[] { subTable1, subTable2 };
+        String[][] exprTuples = new String[][] { exprTuple1_, exprTuple2_ };
         LinkSet matches;
+        MatchMetrics metrics = metricsLoc_ == null ? null : new MatchMetrics();
+        boolean done = false;
         try {
-            matches = matcher.findPairMatches( pairMode_ );
+            PixelIndex[] indexes = new PixelIndex[ 2 ];
+            boolean hasIndex = false;
+            for ( int i = 0; i < 2; i++ ) {
+                if ( indexLocs_[ i ] != null ) {
+                    indexes[ i ] =
+                        getPixelIndex( subTables[ i ], exprTuples[ i ],
+                                       inSpecs[ i ],
+                                       new File( indexLocs_[ i ] ) );
+                    hasIndex = true;
+                }
+            }
+            if ( partRows_ > 0 && ! hasIndex ) {
+                PartitionMatcher matcher =
+                    new PartitionMatcher( matchEngine_,
+                                          getSkyPixellator( matchEngine_ ),
+                                          subTables, partRows_ );
+                matcher.setIndicator( progger_ );
+                matcher.setParallelism( nthread_ );
+                matcher.setMetrics( metrics );
+                matches = matcher.findPairMatches( pairMode_ );
+            }
+            else {
+                RowMatcher matcher = new RowMatcher( matchEngine_, subTables );
+                matcher.setIndicator( progger_ );
+                matcher.setParallelism( nthread_ );
+                for ( int i = 0; i < 2; i++ ) {
+                    matcher.setPixelIndex( i, indexes[ i ] );
+                }
+                matcher.setMetrics( metrics );
+                matches = matcher.findPairMatches( pairMode_ );
+            }
             if ( ! matches.sort() ) {
                 logger.warning( "Implementation can't sort rows - "
                               + "matched table rows may not be ordered" );
             }
+            done = true;
         }
         catch ( InterruptedException e ) {
             throw new ExecutionException( e.getMessage(), e );  
         }
+        finally {
+            if ( metrics != null && ! done ) {
+                MetricsParameter.writeFailedMetrics( metrics, metricsLoc_ );
+            }
+        }
+        if ( metrics != null ) {
+            MetricsParameter.writeMetrics( metrics, metricsLoc_ );
+        }
         boolean addGroups = pairMode_.mayProduceGroups();
 
         /* Create a new table from the result and return. */
@@ -117,6 +185,143 @@ public class Match2Mapping implements TableMapping {
                                               scoreInfo_ );
     }
 
+    /**
+     * Returns a persistent bin index for a match table, writing it first
+     * if it does not already exist.
+     *
+     * <p>The index is tied to the table it was written for by a signature
+     * which includes the match configuration, the tuple expressions
+     * and an identity for the table data (see {@link #getTableIdentity}).
+     *
+     * @param  subTable  table containing match tuples
+     * @param  exprTuple  expressions from which the tuples were generated
+     * @param  inSpec   specification of the input table
+     * @param  file   index file
+     * @return  index for <code>subTable</code>
+     */
+    private PixelIndex getPixelIndex( StarTable subTable, String[] exprTuple,
+                                      InputTableSpec inSpec, File file )
+            throws IOException, TaskException, InterruptedException {
+        SkyPixellator pixer = getSkyPixellator( matchEngine_ );
+        if ( ! ( pixer instanceof HealpixSkyPixellator ) ) {
+            throw new ExecutionException( "Bin index files only available "
+                                        + "for HEALPix-based sky matches" );
+        }
+        int k = ((HealpixSkyPixellator) pixer).getHealpixK();
+        long nbin = 12L << ( 2 * k );
+        String signature =
+            PixelIndex.createSignature( matchEngine_, "tuple="
+                                      + Arrays.asList( exprTuple ) + "; "
+                                      + getTableIdentity( subTable,
+                                                          inSpec ) );
+        if ( ! file.exists() ) {
+            logger.info( "Writing bin index file " + file );
+            PixelIndex.writeIndex( subTable, matchEngine_, nbin, signature,
+                                   file, progger_ );
+        }
+        PixelIndex index = PixelIndex.open( file );
+        if ( ! signature.equals( index.getSignature() ) ||
+             index.getTableRowCount() != subTable.getRowCount() ) {
+            throw new ExecutionException( "Bin index file " + file
+                                        + " was written for a different"
+                                        + " table or match configuration"
+                                        + " - delete it to rebuild" );
+        }
+        return index;
+    }
+
+    /**
+     * Returns a string identifying the data of an input table,
+     * for use in a bin index signature.
+     * If the table is read unmodified from a local file, the identity
+     * is the file's canonical path, modification time and size.
+     * Otherwise, for instance if the table comes from a stream or
+     * a URL or has been through processing steps, a checksum of the
+     * match tuple values is calculated, which requires a pass through
+     * the data.
+     *
+     * @param  subTable  table containing match tuples
+     * @param  inSpec   specification of the input table
+     * @return  table identity string
+     */
+    private static String getTableIdentity( StarTable subTable,
+                                            InputTableSpec inSpec )
+            throws IOException {
+        String loc = inSpec.getLocation();
+        File file = loc == null ? null : new File( loc );
+        if ( file != null && file.isFile() &&
+             inSpec.getSteps().length == 0 ) {
+            return new StringBuffer()
+                  .append( "file=" )
+                  .append( file.getCanonicalPath() )
+                  .append( "; mtime=" )
+                  .append( file.lastModified() )
+                  .append( "; size=" )
+                  .append( file.length() )
+                  .toString();
+        }
+        else {
+            logger.info( "Calculating checksum of match tuples for "
+                       + "bin index signature" );
+            return "crc=" + Long.toHexString( getTupleChecksum( subTable ) );
+        }
+    }
+
+    /**
+     * Calculates a checksum of all the cell values in a table.
+     * Numeric values contribute their double precision bit patterns,
+     * and other values their string representations.
+     *
+     * @param  table  table
+     * @return  CRC-32 checksum
+     */
+    private static long getTupleChecksum( StarTable table )
+            throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[ 8 ];
+        RowSequence rseq = table.getRowSequence();
+        try {
+            while ( rseq.next() ) {
+                Object[] row = rseq.getRow();
+                for ( int ic = 0; ic < row.length; ic++ ) {
+                    Object value = row[ ic ];
+                    if ( value instanceof Number ) {
+                        long bits = Double.doubleToLongBits(
+                                        ((Number) value).doubleValue() );
+                        for ( int ib = 0; ib < 8; ib++ ) {
+                            buf[ ib ] = (byte) ( bits >>> ( 8 * ib ) );
+                        }
+                        crc.update( buf );
+                    }
+                    else if ( value != null ) {
+                        crc.update( value.toString().getBytes( "UTF-8" ) );
+                    }
+                    crc.update( 0 );
+                }
+            }
+        }
+        finally {
+            rseq.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the sky pixellator which generates the bins for a given
+     * match engine, if there is one.
+     *
+     * @param  engine  match engine
+     * @return  pixellator, or null
+     */
+    private static SkyPixellator getSkyPixellator( MatchEngine engine ) {
+        while ( engine instanceof HumanMatchEngine ) {
+            engine = ((HumanMatchEngine) engine).getBaseEngine();
+        }
+        return engine instanceof AbstractSkyMatchEngine
+             ? ((AbstractSkyMatchEngine) engine).getPixellator()
+             : null;
+    }
+
     /**
      * Creates a table containing the values which are required by the
      * matcher.  This typically consists of a few of the columns from
@@ -7,6 +7,7 @@ import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
 import uk.ac.starlink.table.join.LinkSet;
 import uk.ac.starlink.table.join.MatchEngine;
+import uk.ac.starlink.table.join.MatchMetrics;
 import uk.ac.starlink.table.join.MatchStarTables;
 import uk.ac.starlink.table.join.MultiJoinType;
 import uk.ac.starlink.table.join.ProgressIndicator;
@@ -38,6 +39,8 @@ public class MatchMapper implements TableMapper {
     private final ChoiceParameter<String> mmodeParam_;
     private final IntegerParameter irefParam_;
     private final ProgressIndicatorParameter progressParam_;
+    private final ThreadCountParameter nthreadParam_;
+    private final MetricsParameter metricsParam_;
 
     private static final String PAIRS_MODE = "pairs";
     private static final String GROUP_MODE = "group";
@@ -118,6 +121,8 @@ public class MatchMapper implements TableMapper {
         matcherParam_ = new MatchEngineParameter( "matcher" );
         fixcolsParam_ = new JoinFixActionParameter( "fixcols" );
         progressParam_ = new ProgressIndicatorParameter( "progress" );
+        nthreadParam_ = new ThreadCountParameter( "nthread" );
+        metricsParam_ = new MetricsParameter( "metrics" );
     }
 
     public Parameter[] getParameters() {
@@ -132,6 +137,8 @@ public class MatchMapper implements TableMapper {
             fixcolsParam_,
             fixcolsParam_.createSuffixParameter( "N" ),
             progressParam_,
+            nthreadParam_,
+            metricsParam_,
         };
     }
 
@@ -166,13 +173,16 @@ public class MatchMapper implements TableMapper {
         }
         ProgressIndicator progger =
             progressParam_.progressIndicatorValue( env );
+        int nthread = nthreadParam_.intValue( env );
+        String metricsLoc = metricsParam_.stringValue( env );
         if ( GROUP_MODE.equalsIgnoreCase( mmode ) ) {
             return new GroupMatchMapping( matcher, exprTuples, fixActs, progger,
-                                          joinTypes );
+                                          nthread, metricsLoc, joinTypes );
         }
         else if ( PAIRS_MODE.equalsIgnoreCase( mmode ) ) {
             return new PairsMatchMapping( matcher, exprTuples, fixActs, progger,
-                                          iref, joinTypes );
+                                          nthread, metricsLoc, iref,
+                                          joinTypes );
         }
         else {
             throw new AssertionError( "Unknown multimode " + mmode + "???" );
@@ -189,6 +199,8 @@ public class MatchMapper implements TableMapper {
         private final String[][] exprTuples_;
         private final JoinFixAction[] fixActs_;
         private final ProgressIndicator progger_;
+        private final int nthread_;
+        private final String metricsLoc_;
 
         /**
          * Constructor.
@@ -199,13 +211,19 @@ public class MatchMapper implements TableMapper {
          * @param   fixActs   nin-element array of actions for fixing up 
          *                    duplicated table columns
          * @param   progger   progress indicator
+         * @param   nthread   number of threads to use for matching
+         * @param   metricsLoc  filename for JSON match performance report,
+         *                      or null
          */
         MatchMapping( MatchEngine matchEngine, String[][] exprTuples,
-                      JoinFixAction[] fixActs, ProgressIndicator progger ) {
+                      JoinFixAction[] fixActs, ProgressIndicator progger,
+                      int nthread, String metricsLoc ) {
             matchEngine_ = matchEngine;
             exprTuples_ = exprTuples;
             fixActs_ = fixActs;
             progger_ = progger;
+            nthread_ = nthread;
+            metricsLoc_ = metricsLoc;
             nin_ = exprTuples_.length;
         }
 
@@ -235,17 +253,32 @@ public class MatchMapper implements TableMapper {
             /* Do the match. */
             RowMatcher matcher = new RowMatcher( matchEngine_, subTables );
             matcher.setIndicator( progger_ );
+            matcher.setParallelism( nthread_ );
+            MatchMetrics metrics = metricsLoc_ == null ? null
+                                                       : new MatchMetrics();
+            matcher.setMetrics( metrics );
             LinkSet matches;
+            boolean done = false;
             try { 
                 matches = findMatches( matcher );
                 if ( ! matches.sort() ) {
                     logger.warning( "Implementation can't sort rows - "
                                   + "matched table rows may not be sorted" );
                 }
+                done = true;
             }
             catch ( InterruptedException e ) {
                 throw new ExecutionException( e.getMessage(), e );
             }
+            finally {
+                if ( metrics != null && ! done ) {
+                    MetricsParameter.writeFailedMetrics( metrics,
+                                                         metricsLoc_ );
+                }
+            }
+            if ( metrics != null ) {
+                MetricsParameter.writeMetrics( metrics, metricsLoc_ );
+            }
 
             /* Create a new table based on the matched rows. */
             return createJoinTable( inTables, matches, fixActs_ );
@@ -314,13 +347,18 @@ public class MatchMapper implements TableMapper {
          * @param   fixActs   nin-element array of actions for fixing up 
          *                    duplicated table columns
          * @param   progger   progress indicator
+         * @param   nthread   number of threads to use for matching
+         * @param   metricsLoc  filename for JSON match performance report,
+         *                      or null
          * @param   iref      index (0-based) of reference table
          * @param   joinTypes inclusion criteria for links in output table
          */
         PairsMatchMapping( MatchEngine matchEngine, String[][] exprTuples,
                            JoinFixAction[] fixActs, ProgressIndicator progger,
-                           int iref, MultiJoinType[] joinTypes ) {
-            super( matchEngine, exprTuples, fixActs, progger );
+                           int nthread, String metricsLoc, int iref,
+                           MultiJoinType[] joinTypes ) {
+            super( matchEngine, exprTuples, fixActs, progger, nthread,
+                   metricsLoc );
             iref_ = iref;
             joinTypes_ = joinTypes;
         }
@@ -354,12 +392,17 @@ public class MatchMapper implements TableMapper {
          * @param   fixActs   nin-element array of actions for fixing up 
          *                    duplicated table columns
          * @param   progger   progress indicator
+         * @param   nthread   number of threads to use for matching
+         * @param   metricsLoc  filename for JSON match performance report,
+         *                      or null
          * @param   joinTypes inclusion criteria for links in output table
          */
         GroupMatchMapping( MatchEngine matchEngine, String[][] exprTuples,
                            JoinFixAction[] fixActs, ProgressIndicator progger,
+                           int nthread, String metricsLoc,
                            MultiJoinType[] joinTypes ) {
-            super( matchEngine, exprTuples, fixActs, progger );
+            super( matchEngine, exprTuples, fixActs, progger, nthread,
+                   metricsLoc );
             joinTypes_ = joinTypes;
         }
 
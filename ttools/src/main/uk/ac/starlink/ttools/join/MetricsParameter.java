@@ -0,0 +1,104 @@
+package uk.ac.starlink.ttools.join;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import uk.ac.starlink.table.join.MatchMetrics;
+import uk.ac.starlink.task.StringParameter;
+import uk.ac.starlink.ttools.taplint.JsonWriter;
+
+/**
+ * Parameter giving the location of a file to which performance
+ * metrics for a match are written in JSON format.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class MetricsParameter extends StringParameter {
+
+    private static final Logger logger_ =
+        Logger.getLogger( "uk.ac.starlink.ttools.join" );
+
+    /**
+     * Constructor.
+     *
+     * @param  name  parameter name
+     */
+    public MetricsParameter( String name ) {
+        super( name );
+        setNullPermitted( true );
+        setUsage( "<filename>" );
+        setPrompt( "File for match performance report" );
+        setDescription( new String[] {
+            "<p>If set, a report on the performance of the match",
+            "is written in JSON format to the named file",
+            "when the match has completed.",
+            "The report contains the wall-clock and CPU time spent in",
+            "each of the processing phases",
+            "(the same ones reported by the <code>progress</code>",
+            "parameter),",
+            "the number of bins created and a histogram of",
+            "how many rows each bin contains,",
+            "the number of candidate row pairs tested by the match criteria",
+            "and the number of those accepted,",
+            "and the peak heap memory used.",
+            "This can be useful for tracking the effect of match",
+            "parameters, tuning and input data on match performance.",
+            "</p>",
+            "<p>If the match fails or is interrupted,",
+            "a partial report covering the work done up to that point",
+            "is still written, with a non-zero <code>failedCount</code>",
+            "entry, so that the cost of an abandoned match",
+            "can be examined too.",
+            "</p>",
+            "<p>If left blank, no report is written.",
+            "</p>",
+        } );
+    }
+
+    /**
+     * Writes the content of a metrics object as JSON to a file.
+     *
+     * @param  metrics  match metrics
+     * @param  loc   filename
+     */
+    public static void writeMetrics( MatchMetrics metrics, String loc )
+            throws IOException {
+        String json = new JsonWriter().toJson( metrics.toMap() );
+        Writer out =
+            new BufferedWriter(
+                new OutputStreamWriter( new FileOutputStream( loc ),
+                                        "UTF-8" ) );
+        try {
+            out.write( json );
+            out.write( '\n' );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the metrics for a match that did not complete.
+     * Any error writing the report is logged rather than thrown,
+     * so that it does not mask the exception that caused the
+     * match to fail.
+     *
+     * @param  metrics  match metrics
+     * @param  loc   filename
+     */
+    public static void writeFailedMetrics( MatchMetrics metrics,
+                                           String loc ) {
+        try {
+            writeMetrics( metrics, loc );
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.WARNING,
+                         "Failed to write match metrics to " + loc, e );
+        }
+    }
+}
@@ -16,6 +16,7 @@ import uk.ac.starlink.task.Environment;
 import uk.ac.starlink.task.IntegerParameter;
 import uk.ac.starlink.task.Parameter;
 import uk.ac.starlink.task.ParameterValueException;
+import uk.ac.starlink.task.StringParameter;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.ttools.func.CoordsRadians;
 import uk.ac.starlink.ttools.task.SkyCoordParameter;
@@ -36,6 +37,7 @@ public class SkyMatch2Mapper implements TableMapper {
     private final JoinTypeParameter joinParam_;
     private final FindModeParameter modeParam_;
     private final IntegerParameter healpixkParam_;
+    private final StringParameter[] indexParams_;
 
     /**
      * Constructor.
@@ -90,6 +92,10 @@ public class SkyMatch2Mapper implements TableMapper {
 
         joinParam_ = new JoinTypeParameter( "join" );
         modeParam_ = new FindModeParameter( "find" );
+        indexParams_ = new StringParameter[] {
+            Match2Mapper.createIndexParameter( "1" ),
+            Match2Mapper.createIndexParameter( "2" ),
+        };
     }
 
     public Parameter[] getParameters() {
@@ -102,6 +108,8 @@ public class SkyMatch2Mapper implements TableMapper {
             healpixkParam_,
             joinParam_,
             modeParam_,
+            indexParams_[ 0 ],
+            indexParams_[ 1 ],
         }; 
     }
 
@@ -137,7 +145,12 @@ public class SkyMatch2Mapper implements TableMapper {
             err == null
                 ? (ProgressIndicator) new NullProgressIndicator()
                 : (ProgressIndicator) new TextProgressIndicator( err, false );
+        String[] indexLocs = new String[] {
+            indexParams_[ 0 ].stringValue( env ),
+            indexParams_[ 1 ].stringValue( env ),
+        };
         return new SkyMatch2Mapping( matcher, ra1, dec1, ra2, dec2, join,
-                                     pairMode, fixact1, fixact2, progger );
+                                     pairMode, fixact1, fixact2, progger,
+                                     indexLocs );
     }
 }
@@ -34,18 +34,23 @@ public class SkyMatch2Mapping extends Match2Mapping {
      * @param   fixact1    deduplication fix action for first input table
      * @param   fixact2    deduplication fix action for second input table
      * @param   progger    progress indicator for match process
+     * @param   indexLocs  2-element array giving the filenames of
+     *                     persistent bin index files for each input table;
+     *                     null elements mean no index
      */
     public SkyMatch2Mapping( FixedSkyMatchEngine matcher, 
                              String raExpr1, String decExpr1,
                              String raExpr2, String decExpr2,
                              JoinType join, PairMode pairMode,
                              JoinFixAction fixact1, JoinFixAction fixact2,
-                             ProgressIndicator progger ) {
+                             ProgressIndicator progger,
+                             String[] indexLocs ) {
         super( new HumanMatchEngine( matcher ),
                new String[] { raExpr1, decExpr1, }, 
                new String[] { raExpr2, decExpr2, }, join, pairMode,
                fixact1, fixact2, 
-               new HumanMatchEngine( matcher ).getMatchScoreInfo(), progger );
+               new HumanMatchEngine( matcher ).getMatchScoreInfo(), progger,
+               1, 0, indexLocs, null );
     }
 
     protected StarTable makeSubTable( StarTable inTable, String[] exprTuple )
@@ -0,0 +1,42 @@
+package uk.ac.starlink.ttools.join;
+
+import uk.ac.starlink.task.IntegerParameter;
+
+/**
+ * Parameter for selecting the number of threads used by a match.
+ *
+ * @author   agent
+ * @since    18 Oct 2026
+ */
+public class ThreadCountParameter extends IntegerParameter {
+
+    /**
+     * Constructor.
+     *
+     * @param  name  parameter name
+     */
+    public ThreadCountParameter( String name ) {
+        super( name );
+        setIntDefault( 1 );
+        setMinimum( 1 );
+        setUsage( "<n>" );
+        setPrompt( "Number of threads to use for matching" );
+        setDescription( new String[] {
+            "<p>Determines how many threads are used to perform the match.",
+            "If set to the default value, 1, all the work is done",
+            "in a single thread.",
+            "If set to a larger value, the CPU-intensive parts of",
+            "the match (calculating bins and assessing candidate pairs)",
+            "are shared between that many threads,",
+            "which may make the match run faster on a multi-core machine.",
+            "The result is exactly the same whatever value is used.",
+            "</p>",
+            "<p>A sensible value is the number of processors available",
+            "on the machine.",
+            "The speedup is limited by the rate at which the input tables",
+            "can be read, so for tables with expensive row access",
+            "it may be modest.",
+            "</p>",
+        } );
+    }
+}
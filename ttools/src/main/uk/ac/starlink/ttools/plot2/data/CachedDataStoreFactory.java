@@ -8,6 +8,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import uk.ac.starlink.table.BlockRowSequence;
+import uk.ac.starlink.table.BufferedRowSequence;
 import uk.ac.starlink.table.DomainMapper;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
@@ -120,7 +122,13 @@ public class CachedDataStoreFactory implements DataStoreFactory {
             coordCols[ ic ] =
                 colFact.createColumn( coords[ ic ].getStorageType(), nrow );
         }
+
+        /* If the table can supply column data in blocks, read it through
+         * a buffer so that numeric expression inputs are cheap to get. */
         RowSequence rseq = table.getRowSequence();
+        if ( rseq instanceof BlockRowSequence ) {
+            rseq = new BufferedRowSequence( table, (BlockRowSequence) rseq );
+        }
         try {
             for ( long irow = 0; rseq.next(); irow++ ) {
                 if ( Thread.currentThread().isInterrupted() ) {
@@ -3,8 +3,11 @@ package uk.ac.starlink.ttools.plot2.data;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import uk.ac.starlink.table.BlockRowSequence;
+import uk.ac.starlink.table.BufferedRowSequence;
 import uk.ac.starlink.table.DomainMapper;
 import uk.ac.starlink.table.RowSequence;
+import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.ValueInfo;
 import uk.ac.starlink.ttools.plot2.PlotUtil;
 
@@ -36,7 +39,12 @@ public class SimpleDataStoreFactory implements DataStoreFactory, DataStore {
 
     public TupleSequence getTupleSequence( DataSpec spec ) {
         try {
-            RowSequence rseq = spec.getSourceTable().getRowSequence();
+            StarTable table = spec.getSourceTable();
+            RowSequence rseq = table.getRowSequence();
+            if ( rseq instanceof BlockRowSequence ) {
+                rseq = new BufferedRowSequence( table,
+                                                (BlockRowSequence) rseq );
+            }
             return new SimpleTupleSequence( spec, rseq );
         }
         catch ( IOException e ) {
@@ -5,6 +5,7 @@ import gnu.jel.CompiledExpression;
 import gnu.jel.Library;
 import java.io.IOException;
 import java.util.Arrays;
+import uk.ac.starlink.table.BufferedRowSequence;
 import uk.ac.starlink.table.DefaultValueInfo;
 import uk.ac.starlink.table.RowSequence;
 import uk.ac.starlink.table.StarTable;
@@ -409,6 +410,13 @@ public class JELDataSpec extends AbstractDataSpec {
             return rseq_.getCell( icol );
         }
 
+        @Override
+        protected BufferedRowSequence getBufferedSequence() {
+            return rseq_ instanceof BufferedRowSequence
+                 ? (BufferedRowSequence) rseq_
+                 : null;
+        }
+
         /**
          * Evaluates a compiled expression at the current row of a given
          * RowSequence.
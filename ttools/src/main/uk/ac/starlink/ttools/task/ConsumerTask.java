@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import uk.ac.starlink.table.DiskTableCache;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.WrapperStarTable;
 import uk.ac.starlink.task.LineEnvironment;
@@ -14,6 +15,7 @@ import uk.ac.starlink.task.Task;
 import uk.ac.starlink.task.TaskException;
 import uk.ac.starlink.task.UsageException;
 import uk.ac.starlink.ttools.TableConsumer;
+import uk.ac.starlink.ttools.filter.CacheFilter;
 import uk.ac.starlink.ttools.filter.ProcessingFilter;
 import uk.ac.starlink.ttools.filter.ProcessingStep;
 import uk.ac.starlink.ttools.mode.ProcessingMode;
@@ -165,6 +167,13 @@ public abstract class ConsumerTask implements Task {
      * Tables which are generated by equal input parameters will evaluate
      * as equal in the sense of Object.equals().
      *
+     * <p>If the table factory has a persistent table cache,
+     * and the input table was obtained from it, the result of any
+     * <code>cache</code> step is stored in the cache too,
+     * keyed by the input table and the text of the filter parameter.
+     * A later invocation with the same input and filters can then
+     * start from the cached table without repeating the upstream steps.
+     *
      * @param   env  execution environment
      * @param   filterParam  parameter giving filter steps (or null)
      * @param   inParam  parameter giving input table
@@ -186,17 +195,75 @@ public abstract class ConsumerTask implements Task {
             inParam.stringValue( env ),
             filterParam.stringValue( env ),
         };
+        final DiskTableCache tcache =
+            LineTableEnvironment.getTableFactory( env ).getTableCache();
         return new TableProducer() {
             public StarTable getTable() throws IOException {
-                StarTable table = inTable;
-                for ( int i = 0; i < steps.length; i++ ) {
-                    table = steps[ i ].wrap( table );
-                }
+                StarTable table = tcache == null
+                                ? applySteps( inTable, steps )
+                                : applySteps( inTable, steps, tcache,
+                                              identity[ 1 ] );
                 return new IdentifiedStarTable( table, identity );
             }
         };
     }
 
+    /**
+     * Applies a sequence of processing steps to a table.
+     *
+     * @param  table  input table
+     * @param  steps  processing steps
+     * @return   processed table
+     */
+    private static StarTable applySteps( StarTable table,
+                                         ProcessingStep[] steps )
+            throws IOException {
+        for ( int i = 0; i < steps.length; i++ ) {
+            table = steps[ i ].wrap( table );
+        }
+        return table;
+    }
+
+    /**
+     * Applies a sequence of processing steps to a table,
+     * using a persistent table cache for the last cache step if possible.
+     *
+     * @param  table  input table
+     * @param  steps  processing steps
+     * @param  tcache   persistent table cache
+     * @param  filterText  text from which the steps were parsed
+     * @return   processed table
+     */
+    private static StarTable applySteps( StarTable table,
+                                         ProcessingStep[] steps,
+                                         DiskTableCache tcache,
+                                         String filterText )
+            throws IOException {
+        int icache = -1;
+        for ( int i = 0; i < steps.length; i++ ) {
+            if ( steps[ i ] instanceof CacheFilter ) {
+                icache = i;
+            }
+        }
+        String key = tcache.getTableKey( table );
+        if ( icache < 0 || key == null || filterText == null ) {
+            return applySteps( table, steps );
+        }
+        String ckey = tcache.extendKey( key, filterText.trim() );
+        StarTable cached = tcache.getTable( ckey );
+        if ( cached == null ) {
+
+            /* The cached copy stands in for the cache step itself. */
+            ProcessingStep[] upSteps = new ProcessingStep[ icache ];
+            System.arraycopy( steps, 0, upSteps, 0, icache );
+            cached = tcache.putTable( ckey, applySteps( table, upSteps ) );
+        }
+        ProcessingStep[] downSteps =
+            new ProcessingStep[ steps.length - icache - 1 ];
+        System.arraycopy( steps, icache + 1, downSteps, 0, downSteps.length );
+        return applySteps( cached, downSteps );
+    }
+
     /**
      * Wrapper table which is capable of marking different table instances
      * as equal.
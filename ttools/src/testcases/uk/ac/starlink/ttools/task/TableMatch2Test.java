@@ -1,10 +1,18 @@
 package uk.ac.starlink.ttools.task;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import uk.ac.starlink.table.ColumnData;
 import uk.ac.starlink.table.StarTable;
 import uk.ac.starlink.table.Tables;
+import uk.ac.starlink.task.ExecutionException;
 import uk.ac.starlink.task.UsageException;
 import uk.ac.starlink.ttools.QuickTable;
 import uk.ac.starlink.ttools.TableTestCase;
@@ -284,6 +292,337 @@ public class TableMatch2Test extends TableTestCase {
         assertEquals( 1, resultErr.getRowCount() );
     }
 
+    public void testParallel() throws Exception {
+        int nrow = 5000;
+        Random rnd = new Random( 230101L );
+        double[] x1 = new double[ nrow ];
+        double[] y1 = new double[ nrow ];
+        double[] x2 = new double[ nrow ];
+        double[] y2 = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            x1[ i ] = rnd.nextDouble() * 100;
+            y1[ i ] = rnd.nextDouble() * 100;
+            x2[ i ] = rnd.nextDouble() * 100;
+            y2[ i ] = rnd.nextDouble() * 100;
+        }
+        StarTable ta = new QuickTable( nrow, new ColumnData[] {
+            col( "X", x1 ),
+            col( "Y", y1 ),
+        } );
+        StarTable tb = new QuickTable( nrow, new ColumnData[] {
+            col( "X", x2 ),
+            col( "Y", y2 ),
+        } );
+        String[] finds = new String[] { "all", "best", "best1", "best2" };
+        for ( int i = 0; i < finds.length; i++ ) {
+            StarTable seq = joinParallel( ta, tb, finds[ i ], 1 );
+            StarTable par = joinParallel( ta, tb, finds[ i ], 3 );
+            assertTrue( seq.getRowCount() > 100 );
+            assertEquals( seq.getRowCount(), par.getRowCount() );
+            for ( long irow = 0; irow < seq.getRowCount(); irow++ ) {
+                assertArrayEquals( seq.getRow( irow ), par.getRow( irow ) );
+            }
+        }
+    }
+
+    public void testPartition() throws Exception {
+        int nrow = 5000;
+        Random rnd = new Random( 8810021L );
+        double[] ra1 = new double[ nrow ];
+        double[] dec1 = new double[ nrow ];
+        double[] ra2 = new double[ nrow ];
+        double[] dec2 = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            ra1[ i ] = 10 + rnd.nextDouble() * 10;
+            dec1[ i ] = -5 + rnd.nextDouble() * 10;
+            ra2[ i ] = 10 + rnd.nextDouble() * 10;
+            dec2[ i ] = -5 + rnd.nextDouble() * 10;
+        }
+        StarTable ta = new QuickTable( nrow, new ColumnData[] {
+            col( "RA", ra1 ),
+            col( "DEC", dec1 ),
+        } );
+        StarTable tb = new QuickTable( nrow, new ColumnData[] {
+            col( "RA", ra2 ),
+            col( "DEC", dec2 ),
+        } );
+        String[] finds = new String[] { "all", "best", "best1", "best2" };
+        for ( int i = 0; i < finds.length; i++ ) {
+            String find = finds[ i ];
+            assertSameRows( joinPartition( ta, tb, "sky", "RA DEC", "60",
+                                           find, null ),
+                            joinPartition( ta, tb, "sky", "RA DEC", "60",
+                                           find, "500" ) );
+            assertSameRows( joinPartition( ta, tb, "2d", "RA DEC", "0.02",
+                                           find, null ),
+                            joinPartition( ta, tb, "2d", "RA DEC", "0.02",
+                                           find, "700" ) );
+        }
+    }
+
+    public void testPartitionAdaptive() throws Exception {
+
+        /* Clustered data, so that adaptive binning refines some cells. */
+        int nrow = 6000;
+        Random rnd = new Random( 4417620L );
+        double[][] xs = new double[ 2 ][ nrow ];
+        double[][] ys = new double[ 2 ][ nrow ];
+        for ( int it = 0; it < 2; it++ ) {
+            for ( int i = 0; i < nrow; i++ ) {
+                boolean dense = i % 3 != 0;
+                double size = dense ? 0.3 : 10;
+                xs[ it ][ i ] = ( dense ? 4 : 0 ) + rnd.nextDouble() * size;
+                ys[ it ][ i ] = ( dense ? 6 : 0 ) + rnd.nextDouble() * size;
+            }
+        }
+        StarTable ta = new QuickTable( nrow, new ColumnData[] {
+            col( "X", xs[ 0 ] ),
+            col( "Y", ys[ 0 ] ),
+        } );
+        StarTable tb = new QuickTable( nrow, new ColumnData[] {
+            col( "X", xs[ 1 ] ),
+            col( "Y", ys[ 1 ] ),
+        } );
+        StarTable plain =
+            joinPartition( ta, tb, "2d", "X Y", "0.02", "0", "all", null );
+        assertTrue( plain.getRowCount() > 1000 );
+        String[] partrows = new String[] { "800", "3000" };
+        for ( int ip = 0; ip < partrows.length; ip++ ) {
+            assertSameRows( plain,
+                            joinPartition( ta, tb, "2d", "X Y", "0.02", "0",
+                                           "all", partrows[ ip ] ) );
+        }
+    }
+
+    public void testBinIndex() throws Exception {
+        int nrow = 4000;
+        Random rnd = new Random( 2239001L );
+        double[] ra1 = new double[ nrow / 4 ];
+        double[] dec1 = new double[ nrow / 4 ];
+        double[] ra2 = new double[ nrow ];
+        double[] dec2 = new double[ nrow ];
+        for ( int i = 0; i < nrow / 4; i++ ) {
+            ra1[ i ] = 12 + rnd.nextDouble() * 2;
+            dec1[ i ] = -1 + rnd.nextDouble() * 2;
+        }
+        for ( int i = 0; i < nrow; i++ ) {
+            ra2[ i ] = 10 + rnd.nextDouble() * 10;
+            dec2[ i ] = -5 + rnd.nextDouble() * 10;
+        }
+        StarTable ta = new QuickTable( nrow / 4, new ColumnData[] {
+            col( "RA", ra1 ),
+            col( "DEC", dec1 ),
+        } );
+        StarTable tb = new QuickTable( nrow, new ColumnData[] {
+            col( "RA", ra2 ),
+            col( "DEC", dec2 ),
+        } );
+        File indexFile = File.createTempFile( "match", ".idx" );
+        indexFile.deleteOnExit();
+        indexFile.delete();
+        String index = indexFile.toString();
+        String[] finds = new String[] { "all", "best", "best1", "best2" };
+        for ( int i = 0; i < finds.length; i++ ) {
+            String find = finds[ i ];
+            StarTable plain = joinIndex( ta, tb, "180", find, null, 1 );
+            assertSameRows( plain, joinIndex( ta, tb, "180", find, index, 1 ) );
+            assertTrue( indexFile.exists() );
+            assertSameRows( plain, joinIndex( ta, tb, "180", find, index, 3 ) );
+        }
+        try {
+            joinIndex( ta, tb, "60", "best", index, 1 );
+            fail();
+        }
+        catch ( ExecutionException e ) {
+        }
+
+        /* Same shape, different data. */
+        double[] dec3 = (double[]) dec2.clone();
+        dec3[ nrow / 2 ] += 0.5;
+        StarTable tc = new QuickTable( nrow, new ColumnData[] {
+            col( "RA", ra2 ),
+            col( "DEC", dec3 ),
+        } );
+        try {
+            joinIndex( ta, tc, "180", "all", index, 1 );
+            fail();
+        }
+        catch ( ExecutionException e ) {
+        }
+        indexFile.delete();
+        assertSameRows( joinIndex( ta, tc, "180", "all", null, 1 ),
+                        joinIndex( ta, tc, "180", "all", index, 1 ) );
+        indexFile.delete();
+    }
+
+    public void testMetrics() throws Exception {
+        int nrow = 3000;
+        Random rnd = new Random( 5520913L );
+        double[] x1 = new double[ nrow ];
+        double[] y1 = new double[ nrow ];
+        double[] x2 = new double[ nrow ];
+        double[] y2 = new double[ nrow ];
+        for ( int i = 0; i < nrow; i++ ) {
+            x1[ i ] = rnd.nextDouble() * 100;
+            y1[ i ] = rnd.nextDouble() * 100;
+            x2[ i ] = rnd.nextDouble() * 100;
+            y2[ i ] = rnd.nextDouble() * 100;
+        }
+        StarTable ta = new QuickTable( nrow, new ColumnData[] {
+            col( "X", x1 ),
+            col( "Y", y1 ),
+        } );
+        StarTable tb = new QuickTable( nrow, new ColumnData[] {
+            col( "X", x2 ),
+            col( "Y", y2 ),
+        } );
+        File metricsFile = File.createTempFile( "match", ".json" );
+        metricsFile.deleteOnExit();
+        for ( int nthread = 1; nthread <= 3; nthread += 2 ) {
+            metricsFile.delete();
+            MapEnvironment env = new MapEnvironment()
+                                .setValue( "in1", ta )
+                                .setValue( "in2", tb )
+                                .setValue( "matcher", "2d" )
+                                .setValue( "values1", "X Y" )
+                                .setValue( "values2", "X Y" )
+                                .setValue( "params", "0.5" )
+                                .setValue( "find", "all" )
+                                .setValue( "progress", "none" )
+                                .setValue( "nthread",
+                                           Integer.toString( nthread ) )
+                                .setValue( "metrics", metricsFile.toString() );
+            new TableMatch2().createExecutable( env ).execute();
+            long nmatch = Tables.randomTable( env.getOutputTable( "omode" ) )
+                         .getRowCount();
+            assertTrue( nmatch > 100 );
+            String json = readFile( metricsFile );
+            assertTrue( json.trim().startsWith( "{" ) );
+            assertTrue( json.indexOf( "\"phases\"" ) >= 0 );
+            assertTrue( json.indexOf( "\"occupancy\"" ) >= 0 );
+            assertTrue( json.indexOf( "\"peakHeapBytes\"" ) >= 0 );
+            assertEquals( nmatch, getJsonLong( json, "accepted" ) );
+            assertTrue( getJsonLong( json, "tested" ) > nmatch );
+        }
+        metricsFile.delete();
+    }
+
+    private static String readFile( File file ) throws IOException {
+        BufferedReader in = new BufferedReader( new FileReader( file ) );
+        StringBuffer sbuf = new StringBuffer();
+        try {
+            for ( String line; ( line = in.readLine() ) != null; ) {
+                sbuf.append( line ).append( '\n' );
+            }
+        }
+        finally {
+            in.close();
+        }
+        return sbuf.toString();
+    }
+
+    private static long getJsonLong( String json, String key ) {
+        Matcher matcher =
+            Pattern.compile( "\"" + key + "\"\\s*:\\s*([0-9]+)" )
+                   .matcher( json );
+        assertTrue( matcher.find() );
+        return Long.parseLong( matcher.group( 1 ) );
+    }
+
+    private void assertSameRows( StarTable t1, StarTable t2 )
+            throws IOException {
+        assertTrue( t1.getRowCount() > 100 );
+        assertEquals( t1.getRowCount(), t2.getRowCount() );
+        for ( long irow = 0; irow < t1.getRowCount(); irow++ ) {
+            Object[] row1 = t1.getRow( irow );
+            Object[] row2 = t2.getRow( irow );
+            assertEquals( row1.length, row2.length );
+            for ( int icol = 0; icol < row1.length; icol++ ) {
+
+                /* Scores may differ by rounding, since the pair may be
+                 * presented to the match engine in either order. */
+                if ( row1[ icol ] instanceof Double ) {
+                    double d1 = ((Double) row1[ icol ]).doubleValue();
+                    double d2 = ((Double) row2[ icol ]).doubleValue();
+                    assertEquals( d1, d2, Math.abs( d1 ) * 1e-12 );
+                }
+                else {
+                    assertEquals( row1[ icol ], row2[ icol ] );
+                }
+            }
+        }
+    }
+
+    private StarTable joinPartition( StarTable ta, StarTable tb,
+                                     String matcher, String values,
+                                     String params, String find,
+                                     String partrows )
+            throws Exception {
+        return joinPartition( ta, tb, matcher, values, params, null, find,
+                              partrows );
+    }
+
+    private StarTable joinPartition( StarTable ta, StarTable tb,
+                                     String matcher, String values,
+                                     String params, String tuning,
+                                     String find, String partrows )
+            throws Exception {
+        MapEnvironment env = new MapEnvironment()
+                            .setValue( "in1", ta )
+                            .setValue( "in2", tb )
+                            .setValue( "matcher", matcher )
+                            .setValue( "values1", values )
+                            .setValue( "values2", values )
+                            .setValue( "params", params )
+                            .setValue( "find", find )
+                            .setValue( "progress", "none" );
+        if ( tuning != null ) {
+            env.setValue( "tuning", tuning );
+        }
+        if ( partrows != null ) {
+            env.setValue( "partrows", partrows );
+        }
+        new TableMatch2().createExecutable( env ).execute();
+        return Tables.randomTable( env.getOutputTable( "omode" ) );
+    }
+
+    private StarTable joinIndex( StarTable ta, StarTable tb, String params,
+                                 String find, String index2, int nthread )
+            throws Exception {
+        MapEnvironment env = new MapEnvironment()
+                            .setValue( "in1", ta )
+                            .setValue( "in2", tb )
+                            .setValue( "matcher", "sky" )
+                            .setValue( "values1", "RA DEC" )
+                            .setValue( "values2", "RA DEC" )
+                            .setValue( "params", params )
+                            .setValue( "find", find )
+                            .setValue( "progress", "none" )
+                            .setValue( "nthread", Integer.toString( nthread ) );
+        if ( index2 != null ) {
+            env.setValue( "binindex2", index2 );
+        }
+        new TableMatch2().createExecutable( env ).execute();
+        return Tables.randomTable( env.getOutputTable( "omode" ) );
+    }
+
+    private StarTable joinParallel( StarTable ta, StarTable tb, String find,
+                                    int nthread )
+            throws Exception {
+        MapEnvironment env = new MapEnvironment()
+                            .setValue( "in1", ta )
+                            .setValue( "in2", tb )
+                            .setValue( "matcher", "2d" )
+                            .setValue( "values1", "X Y" )
+                            .setValue( "values2", "X Y" )
+                            .setValue( "params", "0.5" )
+                            .setValue( "find", find )
+                            .setValue( "progress", "none" )
+                            .setValue( "nthread", Integer.toString( nthread ) );
+        new TableMatch2().createExecutable( env ).execute();
+        return Tables.randomTable( env.getOutputTable( "omode" ) );
+    }
+
     private StarTable join12( String join, String find, double err )
             throws Exception {
         return join12( join, find, err, null, null );
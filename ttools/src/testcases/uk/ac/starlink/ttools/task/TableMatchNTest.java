@@ -61,6 +61,73 @@ public class TableMatchNTest extends TableTestCase {
                                          0.00001 ).getRowCount() );
     }
 
+    public void testParallelGroupMatchN() throws IOException, TaskException {
+        int np = 200;
+        StarTable[] tables = new StarTable[] {
+            createNumberTable( np, 1 ),
+            createNumberTable( np, 2 ),
+            createNumberTable( np, 1 ),
+            createNumberTable( np, 3 ),
+            createNumberTable( np, 1 ),
+        };
+        double[] errs = new double[] { 0.5, 0.2, 0.1, 0.05, 0.00001 };
+        boolean[][] useAlls = new boolean[][] {
+            new boolean[ 5 ],
+            new boolean[] { false, true, false, false, true },
+        };
+        for ( int ie = 0; ie < errs.length; ie++ ) {
+            for ( int iu = 0; iu < useAlls.length; iu++ ) {
+                StarTable serial =
+                    groupMatchN( tables, useAlls[ iu ], errs[ ie ], 1 );
+                for ( int nthread = 2; nthread <= 4; nthread += 2 ) {
+                    assertSameData( serial,
+                                    groupMatchN( tables, useAlls[ iu ],
+                                                 errs[ ie ], nthread ) );
+                }
+            }
+        }
+
+        /* Matcher with no vector scoring capability. */
+        StarTable exact1 =
+            groupMatchN( tables, useAlls[ 1 ], "exact", "INDEX", null, 1 );
+        assertEquals( 400L, exact1.getRowCount() );
+        assertSameData( exact1,
+                        groupMatchN( tables, useAlls[ 1 ], "exact", "INDEX",
+                                     null, 3 ) );
+
+        /* Combined matchers, with and without vector scoring.
+         * Use enough rows that binning and scoring are split over
+         * several concurrent tasks. */
+        int nc = 6000;
+        tables = new StarTable[] {
+            createNumberTable( nc, 1 ),
+            createNumberTable( nc, 2 ),
+            createNumberTable( nc, 1 ),
+        };
+        useAlls = new boolean[][] {
+            new boolean[ 3 ],
+            new boolean[] { false, true, false },
+        };
+        String[] combMatchers = new String[] { "1d+1d", "1d+exact" };
+        String[] combParams = new String[] { "0.2 0.5", "0.2" };
+        for ( int ic = 0; ic < combMatchers.length; ic++ ) {
+            for ( int iu = 0; iu < useAlls.length; iu++ ) {
+                StarTable serial =
+                    groupMatchN( tables, useAlls[ iu ], combMatchers[ ic ],
+                                 "DATA INDEX", combParams[ ic ], 1 );
+                assertTrue( serial.getRowCount() > 0 );
+                for ( int nthread = 2; nthread <= 8; nthread *= 2 ) {
+                    assertSameData( serial,
+                                    groupMatchN( tables, useAlls[ iu ],
+                                                 combMatchers[ ic ],
+                                                 "DATA INDEX",
+                                                 combParams[ ic ],
+                                                 nthread ) );
+                }
+            }
+        }
+    }
+
     public void testPairsMatchN() throws IOException, TaskException {
         int np = 100;
         StarTable t1a = createNumberTable( np, 1 );
@@ -122,18 +189,35 @@ public class TableMatchNTest extends TableTestCase {
     private StarTable groupMatchN( StarTable[] tables, boolean[] useAll,
                                    double err )
             throws IOException, TaskException {
+        return groupMatchN( tables, useAll, err, 1 );
+    }
+
+    private StarTable groupMatchN( StarTable[] tables, boolean[] useAll,
+                                   double err, int nthread )
+            throws IOException, TaskException {
+        return groupMatchN( tables, useAll, "1d", "DATA",
+                            Double.toString( err ), nthread );
+    }
+
+    private StarTable groupMatchN( StarTable[] tables, boolean[] useAll,
+                                   String matcher, String values,
+                                   String params, int nthread )
+            throws IOException, TaskException {
         int nin= tables.length;
         MapEnvironment env = new MapEnvironment();
         env.setValue( "nin", Integer.toString( nin ) );
         env.setValue( "multimode", "group" );
-        env.setValue( "matcher", "1d" );
+        env.setValue( "nthread", Integer.toString( nthread ) );
+        env.setValue( "matcher", matcher );
         for ( int i = 0; i < nin; i++ ) {
             int i1 = i + 1;
             env.setValue( "in" + i1, tables[ i ] );
-            env.setValue( "values" + i1, "DATA" );
+            env.setValue( "values" + i1, values );
             env.setValue( "join" + i1, useAll[ i ] ? "always" : "match" );
         }
-        env.setValue( "params", Double.toString( err ) );
+        if ( params != null ) {
+            env.setValue( "params", params );
+        }
         new TableMatchN().createExecutable( env ).execute();
         StarTable result = env.getOutputTable( "omode" );
         if ( result != null ) {